@@ -17,12 +17,14 @@
  */
 package org.apache.hadoop.metrics2.sink.timeline;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.ConnectException;
 
+import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.methods.PostMethod;
-import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.apache.commons.httpclient.methods.RequestEntity;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.codehaus.jackson.map.AnnotationIntrospector;
@@ -36,9 +38,30 @@ public abstract class AbstractTimelineMetricsSink {
   public static final String METRICS_SEND_INTERVAL = "sendInterval";
   public static final String COLLECTOR_HOST_PROPERTY = "collector";
   public static final String COLLECTOR_PORT_PROPERTY = "port";
+  public static final String SENDER_ASYNC_PROPERTY = "sender.async";
+  public static final String SENDER_QUEUE_SIZE_PROPERTY = "sender.queue.size";
+  public static final String SENDER_COMPRESS_PROPERTY = "sender.compress";
+  public static final String SENDER_MAX_BACKOFF_PROPERTY = "sender.maxBackoff";
+  public static final String SENDER_SPOOL_DIR_PROPERTY = "sender.spool.dir";
+  public static final String SENDER_SPOOL_SIZE_PROPERTY = "sender.spool.size";
+
+  /**
+   * Response header in which the collector lists the content types it
+   * accepts for posted metrics.
+   */
+  public static final String ACCEPT_POST_HEADER = "Accept-Post";
+
+  public static final long SENDER_QUEUE_SIZE_DEFAULT = 16 * 1024 * 1024;
+  public static final long SENDER_MAX_BACKOFF_DEFAULT = 60000;
+  public static final long SENDER_SPOOL_SIZE_DEFAULT = 256 * 1024 * 1024;
+  private static final long SENDER_INITIAL_BACKOFF = 1000;
+  private static final int SENDER_MAX_RETRIES = 3;
 
   protected final Log LOG;
   private HttpClient httpClient = new HttpClient();
+  private volatile TimelineMetricsSender sender;
+  // whether the collector advertised the binary format
+  private volatile boolean binaryAccepted = false;
 
   protected static ObjectMapper mapper;
 
@@ -54,24 +77,152 @@ public abstract class AbstractTimelineMetricsSink {
     LOG = LogFactory.getLog(this.getClass());
   }
 
+  /**
+   * Send metrics to the collector. With a sender started, the metrics are
+   * queued and sent by the sender thread; otherwise they are posted on the
+   * calling thread.
+   */
   protected void emitMetrics(TimelineMetrics metrics) throws IOException {
+    if (sender != null) {
+      sender.send(metrics);
+      return;
+    }
+
     String connectUrl = getCollectorUri();
+    PostMethod postMethod = createPostMethod(connectUrl, metrics, false);
     try {
-      String jsonData = mapper.writeValueAsString(metrics);
-
-      StringRequestEntity requestEntity = new StringRequestEntity(jsonData, "application/json", "UTF-8");
-
-      PostMethod postMethod = new PostMethod(connectUrl);
-      postMethod.setRequestEntity(requestEntity);
       int statusCode = httpClient.executeMethod(postMethod);
-      if (statusCode != 200) {
+      if (retryAsJson(postMethod, statusCode)) {
+        postMethod.releaseConnection();
+        postMethod = createPostMethod(connectUrl, metrics, false);
+        statusCode = httpClient.executeMethod(postMethod);
+      }
+      if (statusCode == 503) {
+        // the collector is writing slower than metrics are posted
+        LOG.info("Collector is busy, metrics not accepted by " + connectUrl);
+      } else if (statusCode != 200) {
         LOG.info("Unable to POST metrics to collector, " + connectUrl);
       } else {
         LOG.debug("Metrics posted to Collector " + connectUrl);
       }
     } catch (ConnectException e) {
       throw new UnableToConnectException(e).setConnectUrl(connectUrl);
+    } finally {
+      postMethod.releaseConnection();
+    }
+  }
+
+  /**
+   * Start sending metrics on a background thread.
+   *
+   * @param maxQueueBytes     maximum estimated size of the metrics waiting to
+   *                          be sent
+   * @param compress          true to gzip the requests
+   * @param maxBackoffMillis  maximum wait between retries
+   * @param spoolDir          directory to buffer metrics in while the
+   *                          collector is unavailable; null for none
+   * @param maxSpoolBytes     maximum size of the buffered metrics
+   */
+  protected synchronized void startSender(long maxQueueBytes, boolean compress,
+                                          long maxBackoffMillis,
+                                          String spoolDir, long maxSpoolBytes) {
+    if (sender != null) {
+      return;
+    }
+    TimelineMetricsSpool spool = null;
+    if (spoolDir != null && !spoolDir.trim().isEmpty()) {
+      try {
+        spool = new TimelineMetricsSpool(new File(spoolDir.trim()),
+          maxSpoolBytes, mapper);
+      } catch (IOException e) {
+        LOG.warn("Metrics are not spooled while the collector is unavailable.", e);
+      }
+    }
+    TimelineMetricsSender metricsSender = new TimelineMetricsSender(this,
+      maxQueueBytes, compress, SENDER_INITIAL_BACKOFF, maxBackoffMillis,
+      SENDER_MAX_RETRIES, spool);
+    metricsSender.start();
+    sender = metricsSender;
+  }
+
+  /**
+   * Stop the background sender, giving it time to send what is queued.
+   */
+  protected synchronized void stopSender(long timeoutMillis) {
+    if (sender == null) {
+      return;
+    }
+    try {
+      sender.stop(timeoutMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
+    sender = null;
+  }
+
+  /**
+   * Get the background sender.
+   *
+   * @return the sender; null if metrics are posted by the emitting thread
+   */
+  public TimelineMetricsSender getSender() {
+    return sender;
+  }
+
+  /**
+   * Create the post of metrics, in the binary format once the collector has
+   * advertised it and as JSON otherwise.
+   */
+  PostMethod createPostMethod(String connectUrl, TimelineMetrics metrics,
+                              boolean compress) {
+    PostMethod postMethod = new PostMethod(connectUrl);
+    postMethod.setRequestEntity(new TimelineMetricsRequestEntity(mapper,
+      metrics, compress, binaryAccepted));
+    if (compress) {
+      postMethod.setRequestHeader("Content-Encoding", "gzip");
+    }
+    return postMethod;
+  }
+
+  /**
+   * Note the content types the collector advertised in its response to a
+   * post.
+   *
+   * @return true if the post was binary and the collector turned it down as
+   *         an unsupported media type, in which case it should be posted
+   *         again as JSON
+   */
+  boolean retryAsJson(PostMethod postMethod, int statusCode) {
+    RequestEntity entity = postMethod.getRequestEntity();
+    if (statusCode == 415 && entity instanceof TimelineMetricsRequestEntity &&
+        ((TimelineMetricsRequestEntity) entity).isBinary()) {
+      LOG.info("Collector doesn't accept binary metrics, posting JSON.");
+      binaryAccepted = false;
+      return true;
+    }
+    Header header = postMethod.getResponseHeader(ACCEPT_POST_HEADER);
+    if (header != null && header.getValue() != null) {
+      boolean accepted =
+        header.getValue().contains(TimelineMetricsBinaryFormat.CONTENT_TYPE);
+      if (accepted != binaryAccepted) {
+        LOG.info(accepted ? "Collector accepts binary metrics." :
+          "Collector doesn't accept binary metrics, posting JSON.");
+        binaryAccepted = accepted;
+      }
+    }
+    return false;
+  }
+
+  boolean isBinaryAccepted() {
+    return binaryAccepted;
+  }
+
+  void setBinaryAccepted(boolean binaryAccepted) {
+    this.binaryAccepted = binaryAccepted;
+  }
+
+  HttpClient getHttpClient() {
+    return httpClient;
   }
 
   public void setHttpClient(HttpClient httpClient) {
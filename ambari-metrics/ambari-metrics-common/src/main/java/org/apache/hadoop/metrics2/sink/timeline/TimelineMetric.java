@@ -18,7 +18,6 @@
 package org.apache.hadoop.metrics2.sink.timeline;
 
 import java.util.Map;
-import java.util.TreeMap;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
@@ -41,7 +40,7 @@ public class TimelineMetric implements Comparable<TimelineMetric> {
   private long timestamp;
   private long startTime;
   private String type;
-  private Map<Long, Double> metricValues = new TreeMap<Long, Double>();
+  private TimelineMetricSeries metricValues = new TimelineMetricSeries();
 
   @XmlElement(name = "metricname")
   public String getMetricName() {
@@ -106,13 +105,34 @@ public class TimelineMetric implements Comparable<TimelineMetric> {
     this.type = type;
   }
 
+  /**
+   * Get the metric values keyed by timestamp, in timestamp order.  The map
+   * is a view of {@link #getMetricSeries()}.
+   */
   @XmlElement(name = "metrics")
   public Map<Long, Double> getMetricValues() {
     return metricValues;
   }
 
+  /**
+   * Set the metric values.  A {@link TimelineMetricSeries} is used as is,
+   * the values of any other map are copied.
+   */
   public void setMetricValues(Map<Long, Double> metricValues) {
-    this.metricValues = metricValues;
+    if (metricValues instanceof TimelineMetricSeries) {
+      this.metricValues = (TimelineMetricSeries) metricValues;
+    } else if (metricValues == null) {
+      this.metricValues = new TimelineMetricSeries();
+    } else {
+      this.metricValues = new TimelineMetricSeries(metricValues);
+    }
+  }
+
+  /**
+   * Get the metric values as arrays of timestamps and values.
+   */
+  public TimelineMetricSeries getMetricSeries() {
+    return metricValues;
   }
 
   public void addMetricValues(Map<Long, Double> metricValues) {
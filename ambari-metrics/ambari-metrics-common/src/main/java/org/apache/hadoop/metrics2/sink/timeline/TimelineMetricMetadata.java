@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Describes a metric known to the collector: a metric of an app instance
+ * on a host, its type and the time range of the values posted for it.
+ */
+@XmlRootElement(name = "metricmetadata")
+@XmlAccessorType(XmlAccessType.NONE)
+@InterfaceAudience.Public
+@InterfaceStability.Unstable
+public class TimelineMetricMetadata {
+
+  private String metricName;
+  private String appId;
+  private String instanceId;
+  private String hostName;
+  private String type;
+  private long firstSeen;
+  private long lastSeen;
+
+  public TimelineMetricMetadata() {
+  }
+
+  public TimelineMetricMetadata(String metricName, String appId,
+                                String instanceId, String hostName,
+                                String type, long firstSeen, long lastSeen) {
+    this.metricName = metricName;
+    this.appId = appId;
+    this.instanceId = instanceId;
+    this.hostName = hostName;
+    this.type = type;
+    this.firstSeen = firstSeen;
+    this.lastSeen = lastSeen;
+  }
+
+  @XmlElement(name = "metricname")
+  public String getMetricName() {
+    return metricName;
+  }
+
+  public void setMetricName(String metricName) {
+    this.metricName = metricName;
+  }
+
+  @XmlElement(name = "appid")
+  public String getAppId() {
+    return appId;
+  }
+
+  public void setAppId(String appId) {
+    this.appId = appId;
+  }
+
+  @XmlElement(name = "instanceid")
+  public String getInstanceId() {
+    return instanceId;
+  }
+
+  public void setInstanceId(String instanceId) {
+    this.instanceId = instanceId;
+  }
+
+  @XmlElement(name = "hostname")
+  public String getHostName() {
+    return hostName;
+  }
+
+  public void setHostName(String hostName) {
+    this.hostName = hostName;
+  }
+
+  @XmlElement(name = "type")
+  public String getType() {
+    return type;
+  }
+
+  public void setType(String type) {
+    this.type = type;
+  }
+
+  /**
+   * Get the time of the oldest value posted for the metric, or the time it
+   * was received by the collector if that is earlier.
+   */
+  @XmlElement(name = "firstseen")
+  public long getFirstSeen() {
+    return firstSeen;
+  }
+
+  public void setFirstSeen(long firstSeen) {
+    this.firstSeen = firstSeen;
+  }
+
+  /**
+   * Get the time of the newest value posted for the metric, or the time it
+   * was received by the collector if that is later.
+   */
+  @XmlElement(name = "lastseen")
+  public long getLastSeen() {
+    return lastSeen;
+  }
+
+  public void setLastSeen(long lastSeen) {
+    this.lastSeen = lastSeen;
+  }
+
+  @Override
+  public String toString() {
+    return "TimelineMetricMetadata{" +
+      "metricName='" + metricName + '\'' +
+      ", appId='" + appId + '\'' +
+      ", instanceId='" + instanceId + '\'' +
+      ", hostName='" + hostName + '\'' +
+      ", type='" + type + '\'' +
+      ", firstSeen=" + firstSeen +
+      ", lastSeen=" + lastSeen +
+      '}';
+  }
+}
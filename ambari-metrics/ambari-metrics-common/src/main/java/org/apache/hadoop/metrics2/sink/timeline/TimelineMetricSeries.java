@@ -0,0 +1,570 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Time series of metric values kept in parallel arrays of timestamps and
+ * values, sorted by timestamp.  Appending a value newer than the last one
+ * is the fast path; older values are inserted in place.
+ * <p/>
+ * The series is also a {@code Map<Long, Double>} in timestamp order, so that
+ * it can stand in for the map of metric values.  Entries of the map view are
+ * created as they are iterated.  A missing value is held as {@link #MISSING},
+ * a NaN with its own bit pattern, and shows as null in the map view; any
+ * other NaN is a value like any other, so that both null and NaN values map
+ * back to themselves.  A series is not synchronized.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Unstable
+public class TimelineMetricSeries extends AbstractMap<Long, Double> {
+
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private static final long MISSING_BITS = 0x7ff80000000000a1L;
+
+  /**
+   * The value held for a missing value; a NaN which is told apart from other
+   * NaN values by {@link #isMissing}.
+   */
+  public static final double MISSING = Double.longBitsToDouble(MISSING_BITS);
+
+  private long[] timestamps;
+  private double[] values;
+  private int size;
+
+  /**
+   * Incremented on each structural change to detect concurrent changes
+   * while iterating.
+   */
+  private int modCount;
+
+  private Set<Map.Entry<Long, Double>> entrySet;
+
+
+  // ----- Constructors ------------------------------------------------------
+
+  public TimelineMetricSeries() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public TimelineMetricSeries(int capacity) {
+    timestamps = new long[capacity];
+    values     = new double[capacity];
+  }
+
+  /**
+   * Create a series holding the values of the given map.
+   *
+   * @param metricValues  the values keyed by timestamp
+   */
+  public TimelineMetricSeries(Map<Long, Double> metricValues) {
+    this(metricValues.size());
+    putAll(metricValues);
+  }
+
+  /**
+   * Create a series which takes over the given arrays.  The timestamps must
+   * be strictly increasing.
+   */
+  private TimelineMetricSeries(long[] timestamps, double[] values, int size) {
+    this.timestamps = timestamps;
+    this.values     = values;
+    this.size       = size;
+  }
+
+
+  // ----- TimelineMetricSeries ----------------------------------------------
+
+  /**
+   * Get the timestamp at the given index.
+   *
+   * @param index  the index, from 0 to size() - 1
+   *
+   * @return the timestamp
+   */
+  public long getTimestamp(int index) {
+    checkIndex(index);
+    return timestamps[index];
+  }
+
+  /**
+   * Get the value at the given index.
+   *
+   * @param index  the index, from 0 to size() - 1
+   *
+   * @return the value; {@link #MISSING} if the value is missing
+   */
+  public double getValue(int index) {
+    checkIndex(index);
+    return values[index];
+  }
+
+  /**
+   * Set the value at the given index.
+   *
+   * @param index  the index, from 0 to size() - 1
+   * @param value  the value
+   */
+  public void setValue(int index, double value) {
+    checkIndex(index);
+    values[index] = value;
+  }
+
+  /**
+   * Get the index of the given timestamp.
+   *
+   * @param timestamp  the timestamp
+   *
+   * @return the index of the timestamp if it is in the series; otherwise
+   *         (-(insertion point) - 1) as for {@link Arrays#binarySearch}
+   */
+  public int indexOf(long timestamp) {
+    if (size > 0 && timestamp == timestamps[size - 1]) {
+      return size - 1;
+    }
+    return Arrays.binarySearch(timestamps, 0, size, timestamp);
+  }
+
+  /**
+   * Set the value of the given timestamp.  Appending a timestamp newer than
+   * the last one doesn't need a search or a copy.
+   *
+   * @param timestamp  the timestamp
+   * @param value      the value
+   */
+  public void append(long timestamp, double value) {
+    if (size == 0 || timestamp > timestamps[size - 1]) {
+      ensureCapacity(size + 1);
+      timestamps[size] = timestamp;
+      values[size++]   = value;
+      modCount++;
+      return;
+    }
+
+    int index = indexOf(timestamp);
+    if (index >= 0) {
+      values[index] = value;
+    } else {
+      insertAt(-index - 1, timestamp, value);
+    }
+  }
+
+  /**
+   * Set all of the values of the given series, replacing the values of
+   * equal timestamps.
+   *
+   * @param other  the series to merge into this one
+   */
+  public void putAll(TimelineMetricSeries other) {
+    if (other.size == 0) {
+      return;
+    }
+    if (size == 0 || other.timestamps[0] > timestamps[size - 1]) {
+      ensureCapacity(size + other.size);
+      System.arraycopy(other.timestamps, 0, timestamps, size, other.size);
+      System.arraycopy(other.values, 0, values, size, other.size);
+      size += other.size;
+      modCount++;
+      return;
+    }
+
+    // merge the two sorted series
+    long[] mergedTimestamps = new long[size + other.size];
+    double[] mergedValues   = new double[size + other.size];
+    int i = 0, j = 0, k = 0;
+    while (i < size || j < other.size) {
+      if (j == other.size || (i < size && timestamps[i] < other.timestamps[j])) {
+        mergedTimestamps[k] = timestamps[i];
+        mergedValues[k++]   = values[i++];
+      } else {
+        if (i < size && timestamps[i] == other.timestamps[j]) {
+          i++;
+        }
+        mergedTimestamps[k] = other.timestamps[j];
+        mergedValues[k++]   = other.values[j++];
+      }
+    }
+    timestamps = mergedTimestamps;
+    values     = mergedValues;
+    size       = k;
+    modCount++;
+  }
+
+  /**
+   * Get a copy of the values between the given timestamps.
+   *
+   * @param startTime  the first timestamp to include
+   * @param endTime    the last timestamp to include
+   *
+   * @return a new series
+   */
+  public TimelineMetricSeries subSeries(long startTime, long endTime) {
+    int from = insertionPoint(startTime);
+    int to   = endTime == Long.MAX_VALUE ? size : insertionPoint(endTime + 1);
+    int length = Math.max(0, to - from);
+
+    return new TimelineMetricSeries(
+      Arrays.copyOfRange(timestamps, from, from + length),
+      Arrays.copyOfRange(values, from, from + length), length);
+  }
+
+  /**
+   * Get the first timestamp.
+   *
+   * @throws NoSuchElementException if the series is empty
+   */
+  public long getFirstTimestamp() {
+    if (size == 0) {
+      throw new NoSuchElementException();
+    }
+    return timestamps[0];
+  }
+
+  /**
+   * Get the last timestamp.
+   *
+   * @throws NoSuchElementException if the series is empty
+   */
+  public long getLastTimestamp() {
+    if (size == 0) {
+      throw new NoSuchElementException();
+    }
+    return timestamps[size - 1];
+  }
+
+
+  /**
+   * Determine whether the given value is the value held for a missing value.
+   *
+   * @param value  the value
+   *
+   * @return true if the value is {@link #MISSING}
+   */
+  public static boolean isMissing(double value) {
+    return Double.doubleToRawLongBits(value) == MISSING_BITS;
+  }
+
+
+  // ----- Map ---------------------------------------------------------------
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key instanceof Long && indexOf((Long) key) >= 0;
+  }
+
+  @Override
+  public Double get(Object key) {
+    if (!(key instanceof Long)) {
+      return null;
+    }
+    int index = indexOf((Long) key);
+    return index < 0 ? null : box(values[index]);
+  }
+
+  @Override
+  public Double put(Long key, Double value) {
+    int index = indexOf(key);
+    Double previous = index < 0 ? null : box(values[index]);
+    append(key, unbox(value));
+    return previous;
+  }
+
+  @Override
+  public Double remove(Object key) {
+    if (!(key instanceof Long)) {
+      return null;
+    }
+    int index = indexOf((Long) key);
+    if (index < 0) {
+      return null;
+    }
+    Double previous = box(values[index]);
+    removeAt(index);
+    return previous;
+  }
+
+  @Override
+  public void putAll(Map<? extends Long, ? extends Double> m) {
+    if (m instanceof TimelineMetricSeries) {
+      putAll((TimelineMetricSeries) m);
+      return;
+    }
+    ensureCapacity(size + m.size());
+    for (Map.Entry<? extends Long, ? extends Double> entry : m.entrySet()) {
+      append(entry.getKey(), unbox(entry.getValue()));
+    }
+  }
+
+  @Override
+  public void clear() {
+    size = 0;
+    modCount++;
+  }
+
+  @Override
+  public Set<Map.Entry<Long, Double>> entrySet() {
+    if (entrySet == null) {
+      entrySet = new EntrySet();
+    }
+    return entrySet;
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private static Double box(double value) {
+    return isMissing(value) ? null : value;
+  }
+
+  private static double unbox(Double value) {
+    if (value == null) {
+      return MISSING;
+    }
+    double d = value;
+    // don't let a NaN value pass for a missing one
+    return isMissing(d) ? Double.NaN : d;
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+
+  private int insertionPoint(long timestamp) {
+    int index = Arrays.binarySearch(timestamps, 0, size, timestamp);
+    return index < 0 ? -index - 1 : index;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > timestamps.length) {
+      int newCapacity = Math.max(capacity, timestamps.length + (timestamps.length >> 1) + 1);
+      timestamps = Arrays.copyOf(timestamps, newCapacity);
+      values     = Arrays.copyOf(values, newCapacity);
+    }
+  }
+
+  private void insertAt(int index, long timestamp, double value) {
+    ensureCapacity(size + 1);
+    System.arraycopy(timestamps, index, timestamps, index + 1, size - index);
+    System.arraycopy(values, index, values, index + 1, size - index);
+    timestamps[index] = timestamp;
+    values[index]     = value;
+    size++;
+    modCount++;
+  }
+
+  private void removeAt(int index) {
+    System.arraycopy(timestamps, index + 1, timestamps, index, size - index - 1);
+    System.arraycopy(values, index + 1, values, index, size - index - 1);
+    size--;
+    modCount++;
+  }
+
+
+  // ----- inner classes -----------------------------------------------------
+
+  /**
+   * Collects the values of a series, typically in timestamp order, and
+   * builds the series without searching or copying when they are.
+   */
+  public static class Builder {
+    private long[] timestamps;
+    private double[] values;
+    private int size;
+    private boolean sorted = true;
+
+    public Builder() {
+      this(DEFAULT_CAPACITY);
+    }
+
+    public Builder(int capacity) {
+      timestamps = new long[capacity];
+      values     = new double[capacity];
+    }
+
+    /**
+     * Add a value.  A later value for the same timestamp replaces an
+     * earlier one.
+     *
+     * @param timestamp  the timestamp
+     * @param value      the value; {@link #MISSING} for a missing value
+     *
+     * @return this builder
+     */
+    public Builder add(long timestamp, double value) {
+      if (size == timestamps.length) {
+        int newCapacity = timestamps.length + (timestamps.length >> 1) + 1;
+        timestamps = Arrays.copyOf(timestamps, newCapacity);
+        values     = Arrays.copyOf(values, newCapacity);
+      }
+      if (size > 0 && timestamp <= timestamps[size - 1]) {
+        sorted = false;
+      }
+      timestamps[size] = timestamp;
+      values[size++]   = value;
+      return this;
+    }
+
+    /**
+     * Build the series.  The builder can't be used afterwards.
+     *
+     * @return the series
+     */
+    public TimelineMetricSeries build() {
+      TimelineMetricSeries series;
+      if (sorted) {
+        series = new TimelineMetricSeries(timestamps, values, size);
+      } else {
+        series = new TimelineMetricSeries(size);
+        for (int i = 0; i < size; i++) {
+          series.append(timestamps[i], values[i]);
+        }
+      }
+      timestamps = null;
+      values     = null;
+      return series;
+    }
+  }
+
+  private class EntrySet extends AbstractSet<Map.Entry<Long, Double>> {
+    @Override
+    public Iterator<Map.Entry<Long, Double>> iterator() {
+      return new EntryIterator();
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public void clear() {
+      TimelineMetricSeries.this.clear();
+    }
+  }
+
+  private class EntryIterator implements Iterator<Map.Entry<Long, Double>> {
+    private int next = 0;
+    private int last = -1;
+    private int expectedModCount = modCount;
+
+    @Override
+    public boolean hasNext() {
+      return next < size;
+    }
+
+    @Override
+    public Map.Entry<Long, Double> next() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (next >= size) {
+        throw new NoSuchElementException();
+      }
+      last = next++;
+      return new Entry(last);
+    }
+
+    @Override
+    public void remove() {
+      if (last < 0) {
+        throw new IllegalStateException();
+      }
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      removeAt(last);
+      next = last;
+      last = -1;
+      expectedModCount = modCount;
+    }
+  }
+
+  /**
+   * Entry of the map view; reads and writes through to the series.
+   */
+  private class Entry implements Map.Entry<Long, Double> {
+    private final int index;
+
+    private Entry(int index) {
+      this.index = index;
+    }
+
+    @Override
+    public Long getKey() {
+      return timestamps[index];
+    }
+
+    @Override
+    public Double getValue() {
+      return box(values[index]);
+    }
+
+    @Override
+    public Double setValue(Double value) {
+      Double previous = box(values[index]);
+      values[index] = unbox(value);
+      return previous;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+      Double value = getValue();
+      return getKey().equals(e.getKey()) &&
+        (value == null ? e.getValue() == null : value.equals(e.getValue()));
+    }
+
+    @Override
+    public int hashCode() {
+      Double value = getValue();
+      return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+    }
+
+    @Override
+    public String toString() {
+      return getKey() + "=" + getValue();
+    }
+  }
+}
@@ -0,0 +1,309 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of {@link TimelineMetrics}, posted to the
+ * collector as an alternative to JSON.
+ * <p/>
+ * A body starts with a magic number and version, followed by a dictionary
+ * of all the names, app ids, host names, instance ids and types of the
+ * batch, each written once. Every metric then refers to its strings by
+ * their index in the dictionary. Timestamps are written as zig-zag varint
+ * deltas to the previous timestamp, values as the 8 bytes of the double.
+ * <pre>
+ * body       := magic(4) version(1) varint(#strings) string* varint(#metrics) metric*
+ * string     := varint(#bytes) utf8-byte*
+ * metric     := varint(name) varint(appId) varint(hostName) varint(instanceId)
+ *               varint(type) zigzag(startTime) zigzag(timestamp - startTime)
+ *               varint(#values) value*
+ * value      := zigzag(timestamp - previous timestamp) double(8)
+ * </pre>
+ * A string is written as its index in the dictionary plus one, zero meaning
+ * null. The first value's delta is to the start time.
+ * <p/>
+ * A body is read with a {@link Reader}, one metric at a time, straight into
+ * the arrays of a {@link TimelineMetricSeries}.
+ */
+public class TimelineMetricsBinaryFormat {
+
+  /**
+   * The content type of a binary body.
+   */
+  public static final String CONTENT_TYPE = "application/vnd.ambari.timeline-metrics";
+
+  // "AMTM"
+  private static final int MAGIC = 0x414d544d;
+  private static final int VERSION = 1;
+
+  /**
+   * The longest string a body may hold, in bytes.
+   */
+  private static final int MAX_STRING_LENGTH = 65536;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private TimelineMetricsBinaryFormat() {
+  }
+
+  /**
+   * Write metrics. The stream is flushed but not closed.
+   *
+   * @param metrics  the metrics
+   * @param out      the stream to write to
+   */
+  public static void write(TimelineMetrics metrics, OutputStream out)
+    throws IOException {
+    List<TimelineMetric> list = metrics.getMetrics();
+
+    Map<String, Integer> dictionary = new LinkedHashMap<String, Integer>();
+    for (TimelineMetric metric : list) {
+      addString(dictionary, metric.getMetricName());
+      addString(dictionary, metric.getAppId());
+      addString(dictionary, metric.getHostName());
+      addString(dictionary, metric.getInstanceId());
+      addString(dictionary, metric.getType());
+    }
+
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 8192));
+    data.writeInt(MAGIC);
+    data.writeByte(VERSION);
+
+    writeVarLong(data, dictionary.size());
+    for (String string : dictionary.keySet()) {
+      byte[] bytes = string.getBytes(UTF8);
+      writeVarLong(data, bytes.length);
+      data.write(bytes);
+    }
+
+    writeVarLong(data, list.size());
+    for (TimelineMetric metric : list) {
+      writeVarLong(data, indexOf(dictionary, metric.getMetricName()));
+      writeVarLong(data, indexOf(dictionary, metric.getAppId()));
+      writeVarLong(data, indexOf(dictionary, metric.getHostName()));
+      writeVarLong(data, indexOf(dictionary, metric.getInstanceId()));
+      writeVarLong(data, indexOf(dictionary, metric.getType()));
+      writeVarLong(data, zigZag(metric.getStartTime()));
+      writeVarLong(data, zigZag(metric.getTimestamp() - metric.getStartTime()));
+
+      TimelineMetricSeries series = metric.getMetricSeries();
+      int size = series.size();
+      writeVarLong(data, size);
+      long previousTime = metric.getStartTime();
+      for (int i = 0; i < size; i++) {
+        long time = series.getTimestamp(i);
+        writeVarLong(data, zigZag(time - previousTime));
+        data.writeDouble(series.getValue(i));
+        previousTime = time;
+      }
+    }
+    data.flush();
+  }
+
+  /**
+   * Reads the metrics of a binary body one at a time. The dictionary is read
+   * when the reader is created.
+   */
+  public static class Reader {
+    private final DataInputStream data;
+    private final List<String> dictionary;
+    private final int metricCount;
+    private int metricsRead = 0;
+
+    /**
+     * Create a reader.
+     *
+     * @param in  the body; not closed by the reader
+     *
+     * @throws IOException if the body can't be read or isn't a binary body
+     */
+    public Reader(InputStream in) throws IOException {
+      data = new DataInputStream(new BufferedInputStream(in, 8192));
+      if (data.readInt() != MAGIC) {
+        throw new IOException("Not a binary timeline metrics body.");
+      }
+      int version = data.readUnsignedByte();
+      if (version != VERSION) {
+        throw new IOException("Unsupported binary timeline metrics version " +
+          version + ".");
+      }
+
+      // the counts aren't trusted for more than a modest preallocation, the
+      // dictionary only grows as its strings are read
+      int stringCount = readCount();
+      dictionary = new ArrayList<String>(Math.min(stringCount, 1024));
+      for (int i = 0; i < stringCount; i++) {
+        int length = readCount();
+        if (length > MAX_STRING_LENGTH) {
+          throw new IOException("String length " + length + " is out of range.");
+        }
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        dictionary.add(new String(bytes, UTF8));
+      }
+      metricCount = readCount();
+    }
+
+    /**
+     * Get the number of metrics in the body.
+     */
+    public int getMetricCount() {
+      return metricCount;
+    }
+
+    public boolean hasNext() {
+      return metricsRead < metricCount;
+    }
+
+    /**
+     * Read the next metric.
+     *
+     * @return the metric
+     *
+     * @throws IOException if the body can't be read or is malformed
+     */
+    public TimelineMetric next() throws IOException {
+      if (!hasNext()) {
+        throw new IOException("No more metrics in the body.");
+      }
+      TimelineMetric metric = new TimelineMetric();
+      String metricName = readString();
+      if (metricName == null) {
+        throw new IOException("Metric without a name.");
+      }
+      metric.setMetricName(metricName);
+      metric.setAppId(readString());
+      metric.setHostName(readString());
+      metric.setInstanceId(readString());
+      metric.setType(readString());
+      long startTime = unZigZag(readVarLong(data));
+      metric.setStartTime(startTime);
+      metric.setTimestamp(startTime + unZigZag(readVarLong(data)));
+
+      int size = readCount();
+      // the count isn't trusted for more than a modest preallocation
+      TimelineMetricSeries.Builder builder =
+        new TimelineMetricSeries.Builder(Math.min(size, 1024));
+      long time = startTime;
+      for (int i = 0; i < size; i++) {
+        time += unZigZag(readVarLong(data));
+        builder.add(time, data.readDouble());
+      }
+      metric.setMetricValues(builder.build());
+
+      metricsRead++;
+      return metric;
+    }
+
+    /**
+     * Read the rest of the metrics.
+     *
+     * @return the metrics
+     */
+    public TimelineMetrics readAll() throws IOException {
+      List<TimelineMetric> list =
+        new ArrayList<TimelineMetric>(Math.min(metricCount - metricsRead, 1024));
+      while (hasNext()) {
+        list.add(next());
+      }
+      TimelineMetrics metrics = new TimelineMetrics();
+      metrics.setMetrics(list);
+      return metrics;
+    }
+
+    private String readString() throws IOException {
+      long index = readVarLong(data);
+      if (index == 0) {
+        return null;
+      }
+      if (index < 0 || index > dictionary.size()) {
+        throw new IOException("String index " + index + " is out of range.");
+      }
+      return dictionary.get((int) index - 1);
+    }
+
+    /**
+     * Read a count, which must fit in the rest of a sane body.
+     */
+    private int readCount() throws IOException {
+      long count = readVarLong(data);
+      if (count < 0 || count > Integer.MAX_VALUE / 16) {
+        throw new IOException("Count " + count + " is out of range.");
+      }
+      return (int) count;
+    }
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private static void addString(Map<String, Integer> dictionary, String string) {
+    if (string != null && !dictionary.containsKey(string)) {
+      dictionary.put(string, dictionary.size());
+    }
+  }
+
+  /**
+   * @return the index of the string plus one; zero for null
+   */
+  private static int indexOf(Map<String, Integer> dictionary, String string) {
+    return string == null ? 0 : dictionary.get(string) + 1;
+  }
+
+  private static long zigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static void writeVarLong(DataOutputStream out, long value)
+    throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  private static long readVarLong(DataInputStream in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint.");
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Request body which writes metrics as JSON, or in the
+ * {@link TimelineMetricsBinaryFormat binary format}, straight to the
+ * connection, optionally gzip compressed, instead of building the whole
+ * body as a String first. The body is sent chunked.
+ */
+public class TimelineMetricsRequestEntity implements RequestEntity {
+
+  private final ObjectMapper mapper;
+  private final TimelineMetrics metrics;
+  private final boolean compressed;
+  private final boolean binary;
+
+  public TimelineMetricsRequestEntity(ObjectMapper mapper,
+                                      TimelineMetrics metrics,
+                                      boolean compressed) {
+    this(mapper, metrics, compressed, false);
+  }
+
+  public TimelineMetricsRequestEntity(ObjectMapper mapper,
+                                      TimelineMetrics metrics,
+                                      boolean compressed,
+                                      boolean binary) {
+    this.mapper = mapper;
+    this.metrics = metrics;
+    this.compressed = compressed;
+    this.binary = binary;
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return true;
+  }
+
+  @Override
+  public void writeRequest(OutputStream out) throws IOException {
+    GZIPOutputStream gzipOut = null;
+    if (compressed) {
+      gzipOut = new GZIPOutputStream(out, 8192);
+      out = gzipOut;
+    }
+    if (binary) {
+      TimelineMetricsBinaryFormat.write(metrics, out);
+    } else {
+      JsonGenerator generator = mapper.getJsonFactory()
+        .createJsonGenerator(out, JsonEncoding.UTF8);
+      // the connection stream is closed by the http client
+      generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      mapper.writeValue(generator, metrics);
+      generator.flush();
+    }
+    if (gzipOut != null) {
+      gzipOut.finish();
+    }
+  }
+
+  @Override
+  public long getContentLength() {
+    return -1;
+  }
+
+  @Override
+  public String getContentType() {
+    return binary ? TimelineMetricsBinaryFormat.CONTENT_TYPE :
+      "application/json; charset=UTF-8";
+  }
+
+  public boolean isCompressed() {
+    return compressed;
+  }
+
+  public boolean isBinary() {
+    return binary;
+  }
+}
@@ -0,0 +1,435 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends metrics to the collector on a background thread, so that the
+ * thread emitting the metrics never waits for the collector.
+ * <p/>
+ * Emitted metrics are queued in memory. The queue is bounded by the
+ * estimated size of the queued metrics; metrics which don't fit are
+ * dropped. The sender thread posts the queued metrics, coalescing
+ * everything queued into one request, with the body streamed and
+ * optionally gzip compressed.
+ * <p/>
+ * If the collector can't be reached or is busy, the post is retried with
+ * exponential backoff, waiting at least as long as the collector asks for
+ * with a Retry-After header. With a spool, a failed batch is written to
+ * local disk instead and replayed once the collector accepts metrics
+ * again, so that outages longer than the retries lose nothing up to the
+ * spool size.
+ */
+public class TimelineMetricsSender {
+  private static final Log LOG = LogFactory.getLog(TimelineMetricsSender.class);
+
+  private static final long POLL_INTERVAL_MILLIS = 1000;
+
+  private final AbstractTimelineMetricsSink sink;
+  private final long maxQueueBytes;
+  private final boolean compressed;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+  private final int maxRetries;
+  private final TimelineMetricsSpool spool;
+
+  private final BlockingQueue<QueuedMetrics> queue =
+    new LinkedBlockingQueue<QueuedMetrics>();
+  private final AtomicLong queuedBytes = new AtomicLong();
+  private final AtomicLong queuedMetrics = new AtomicLong();
+  private final AtomicLong sentMetrics = new AtomicLong();
+  private final AtomicLong droppedMetrics = new AtomicLong();
+  private final AtomicLong spooledMetrics = new AtomicLong();
+
+  private final CountDownLatch stopped = new CountDownLatch(1);
+  private volatile boolean running = false;
+  private Thread thread;
+
+  // only used by the sender thread
+  private long backoffMillis = 0;
+  private long nextAttemptTime = 0;
+
+  /**
+   * @param sink                  the sink which posts the metrics
+   * @param maxQueueBytes         maximum estimated size of queued metrics
+   * @param compressed            true to gzip request bodies
+   * @param initialBackoffMillis  wait after the first failed post
+   * @param maxBackoffMillis      maximum wait between retries
+   * @param maxRetries            retries of a batch before it is dropped,
+   *                              if there is no spool
+   * @param spool                 disk buffer for batches which couldn't be
+   *                              sent; may be null
+   */
+  public TimelineMetricsSender(AbstractTimelineMetricsSink sink,
+                               long maxQueueBytes, boolean compressed,
+                               long initialBackoffMillis,
+                               long maxBackoffMillis, int maxRetries,
+                               TimelineMetricsSpool spool) {
+    this.sink = sink;
+    this.maxQueueBytes = maxQueueBytes;
+    this.compressed = compressed;
+    this.initialBackoffMillis = Math.max(1, initialBackoffMillis);
+    this.maxBackoffMillis = Math.max(this.initialBackoffMillis, maxBackoffMillis);
+    this.maxRetries = maxRetries;
+    this.spool = spool;
+  }
+
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        sendLoop();
+      }
+    }, "timeline-metrics-sender");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stop the sender, giving it time to send what is queued. Metrics
+   * which can't be sent in time are spooled if there is a spool.
+   *
+   * @param timeoutMillis  the maximum time to wait for the sender thread
+   */
+  public synchronized void stop(long timeoutMillis) throws InterruptedException {
+    if (!running) {
+      return;
+    }
+    running = false;
+    stopped.countDown();
+    thread.join(timeoutMillis);
+  }
+
+  /**
+   * Queue metrics to be sent.
+   *
+   * @return false if the metrics were dropped because the queue is full
+   */
+  public boolean send(TimelineMetrics metrics) {
+    int count = metrics.getMetrics().size();
+    if (count == 0) {
+      return true;
+    }
+    if (!running) {
+      droppedMetrics.addAndGet(count);
+      return false;
+    }
+
+    long bytes = estimateBytes(metrics);
+    while (true) {
+      long current = queuedBytes.get();
+      if (current + bytes > maxQueueBytes) {
+        droppedMetrics.addAndGet(count);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Metrics send queue is full, dropped " + count + " metrics.");
+        }
+        return false;
+      }
+      if (queuedBytes.compareAndSet(current, current + bytes)) {
+        break;
+      }
+    }
+    queuedMetrics.addAndGet(count);
+    queue.add(new QueuedMetrics(metrics, bytes));
+    return true;
+  }
+
+  /**
+   * Get the number of metrics waiting in memory to be sent.
+   */
+  public long getQueuedMetrics() {
+    return queuedMetrics.get();
+  }
+
+  /**
+   * Get the number of metrics the collector accepted.
+   */
+  public long getSentMetrics() {
+    return sentMetrics.get();
+  }
+
+  /**
+   * Get the number of metrics which were given up on.
+   */
+  public long getDroppedMetrics() {
+    return droppedMetrics.get();
+  }
+
+  /**
+   * Get the number of metrics written to the spool.
+   */
+  public long getSpooledMetrics() {
+    return spooledMetrics.get();
+  }
+
+  private void sendLoop() {
+    while (running || !queue.isEmpty()) {
+      TimelineMetrics batch;
+      try {
+        batch = takeBatch();
+      } catch (InterruptedException e) {
+        LOG.info("Metrics sender interrupted, " + queuedMetrics.get() +
+          " metrics are not sent.");
+        return;
+      }
+      if (batch != null) {
+        deliver(batch);
+      } else {
+        replaySpool();
+      }
+    }
+  }
+
+  /**
+   * Take everything queued as one batch, waiting up to the poll interval
+   * for metrics to arrive.
+   *
+   * @return the batch; null if nothing was queued
+   */
+  TimelineMetrics takeBatch() throws InterruptedException {
+    QueuedMetrics first = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    if (first == null) {
+      return null;
+    }
+    List<QueuedMetrics> taken = new ArrayList<QueuedMetrics>();
+    taken.add(first);
+    queue.drainTo(taken);
+
+    TimelineMetrics batch = new TimelineMetrics();
+    long bytes = 0;
+    for (QueuedMetrics queued : taken) {
+      batch.getMetrics().addAll(queued.metrics.getMetrics());
+      bytes += queued.bytes;
+    }
+    queuedBytes.addAndGet(-bytes);
+    queuedMetrics.addAndGet(-batch.getMetrics().size());
+    return batch;
+  }
+
+  /**
+   * Send a batch, retrying or spooling it if the collector doesn't take it.
+   */
+  void deliver(TimelineMetrics batch) {
+    int count = batch.getMetrics().size();
+    for (int attempt = 0; ; attempt++) {
+      if (spool != null && System.currentTimeMillis() < nextAttemptTime) {
+        // the collector was unavailable moments ago, keep up with the
+        // queue instead of waiting for it
+        spoolOrDrop(batch);
+        return;
+      }
+      if (!awaitNextAttempt()) {
+        // stopping, don't wait for the collector any more
+        spoolOrDrop(batch);
+        return;
+      }
+      PostResult result = post(batch);
+      if (result == PostResult.SENT) {
+        sentMetrics.addAndGet(count);
+        replaySpool();
+        return;
+      }
+      if (result == PostResult.REJECTED) {
+        droppedMetrics.addAndGet(count);
+        return;
+      }
+      if (spool != null || attempt >= maxRetries) {
+        spoolOrDrop(batch);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Send the spooled batches, oldest first, until the spool is empty or a
+   * post fails.
+   */
+  void replaySpool() {
+    if (spool == null || System.currentTimeMillis() < nextAttemptTime) {
+      return;
+    }
+    File file;
+    while ((file = spool.getOldest()) != null) {
+      TimelineMetrics metrics;
+      try {
+        metrics = spool.read(file);
+      } catch (IOException e) {
+        LOG.warn("Discarding unreadable spooled metrics " + file, e);
+        spool.delete(file);
+        continue;
+      }
+      PostResult result = post(metrics);
+      if (result == PostResult.RETRY) {
+        return;
+      }
+      if (result == PostResult.SENT) {
+        sentMetrics.addAndGet(metrics.getMetrics().size());
+      } else {
+        droppedMetrics.addAndGet(metrics.getMetrics().size());
+      }
+      spool.delete(file);
+    }
+  }
+
+  private void spoolOrDrop(TimelineMetrics batch) {
+    int count = batch.getMetrics().size();
+    if (spool != null) {
+      try {
+        if (spool.write(batch)) {
+          spooledMetrics.addAndGet(count);
+          return;
+        }
+        LOG.warn("Metrics spool is full, dropped " + count + " metrics.");
+      } catch (IOException e) {
+        LOG.warn("Unable to spool " + count + " metrics.", e);
+      }
+    }
+    droppedMetrics.addAndGet(count);
+  }
+
+  /**
+   * Wait until the backoff after the last failed post has passed.
+   *
+   * @return false if the sender was stopped while waiting
+   */
+  private boolean awaitNextAttempt() {
+    long wait = nextAttemptTime - System.currentTimeMillis();
+    if (wait <= 0) {
+      return true;
+    }
+    try {
+      return !stopped.await(wait, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  PostResult post(TimelineMetrics metrics) {
+    String connectUrl = sink.getCollectorUri();
+    if (connectUrl == null) {
+      LOG.debug("No collector configured, metrics not sent.");
+      return PostResult.REJECTED;
+    }
+    PostMethod postMethod = sink.createPostMethod(connectUrl, metrics, compressed);
+    try {
+      int statusCode = sink.getHttpClient().executeMethod(postMethod);
+      if (sink.retryAsJson(postMethod, statusCode)) {
+        postMethod.releaseConnection();
+        postMethod = sink.createPostMethod(connectUrl, metrics, compressed);
+        statusCode = sink.getHttpClient().executeMethod(postMethod);
+      }
+      if (statusCode == 200) {
+        backoffMillis = 0;
+        nextAttemptTime = 0;
+        LOG.debug("Metrics posted to Collector " + connectUrl);
+        return PostResult.SENT;
+      }
+      if (statusCode >= 500) {
+        if (statusCode == 503) {
+          LOG.info("Collector is busy, metrics not accepted by " + connectUrl);
+        } else {
+          LOG.info("Unable to POST metrics to collector, " + connectUrl +
+            ", status code " + statusCode);
+        }
+        backOff(getRetryAfterMillis(postMethod));
+        return PostResult.RETRY;
+      }
+      LOG.info("Unable to POST metrics to collector, " + connectUrl +
+        ", status code " + statusCode);
+      return PostResult.REJECTED;
+    } catch (IOException e) {
+      LOG.info("Unable to POST metrics to collector, " + connectUrl + ": " +
+        e.getMessage());
+      backOff(0);
+      return PostResult.RETRY;
+    } finally {
+      postMethod.releaseConnection();
+    }
+  }
+
+  private void backOff(long retryAfterMillis) {
+    backoffMillis = backoffMillis == 0 ? initialBackoffMillis :
+      Math.min(maxBackoffMillis, backoffMillis * 2);
+    nextAttemptTime = System.currentTimeMillis() +
+      Math.max(backoffMillis, retryAfterMillis);
+  }
+
+  private static long getRetryAfterMillis(PostMethod postMethod) {
+    Header header = postMethod.getResponseHeader("Retry-After");
+    if (header != null) {
+      try {
+        return TimeUnit.SECONDS.toMillis(Long.parseLong(header.getValue().trim()));
+      } catch (NumberFormatException e) {
+        // an HTTP date, use the backoff
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Estimate the heap size of metrics, which is dominated by the names and
+   * the values.
+   */
+  static long estimateBytes(TimelineMetrics metrics) {
+    long bytes = 0;
+    for (TimelineMetric metric : metrics.getMetrics()) {
+      bytes += 128 + 16L * metric.getMetricSeries().size();
+      if (metric.getMetricName() != null) {
+        bytes += 2L * metric.getMetricName().length();
+      }
+    }
+    return bytes;
+  }
+
+  enum PostResult {
+    SENT,
+    // the collector can't take the metrics now
+    RETRY,
+    // the collector won't ever take the metrics
+    REJECTED
+  }
+
+  private static class QueuedMetrics {
+    private final TimelineMetrics metrics;
+    private final long bytes;
+
+    QueuedMetrics(TimelineMetrics metrics, long bytes) {
+      this.metrics = metrics;
+      this.bytes = bytes;
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local disk buffer for metrics which couldn't be sent while the collector
+ * was unavailable. Each batch is written to its own gzip compressed JSON
+ * file; the files are replayed oldest first. Files left by a previous run
+ * are replayed too.
+ * <p/>
+ * Only used by the sender thread, so it isn't thread safe.
+ */
+public class TimelineMetricsSpool {
+  private static final Log LOG = LogFactory.getLog(TimelineMetricsSpool.class);
+
+  private static final String FILE_PREFIX = "timeline-metrics-";
+  private static final String FILE_SUFFIX = ".json.gz";
+
+  private final File directory;
+  private final long maxBytes;
+  private final ObjectMapper mapper;
+  private long usedBytes = 0;
+  private long sequence = 0;
+
+  public TimelineMetricsSpool(File directory, long maxBytes,
+                              ObjectMapper mapper) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create metrics spool directory " +
+        directory);
+    }
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    this.mapper = mapper;
+    for (File file : listFiles()) {
+      usedBytes += file.length();
+    }
+  }
+
+  /**
+   * Write a batch to the spool.
+   *
+   * @return false if the spool is full
+   */
+  public boolean write(TimelineMetrics metrics) throws IOException {
+    if (usedBytes >= maxBytes) {
+      return false;
+    }
+    // zero padded so that the names sort in the order of writing
+    File file = new File(directory, String.format("%s%013d-%06d%s",
+      FILE_PREFIX, System.currentTimeMillis(), sequence++ % 1000000,
+      FILE_SUFFIX));
+    OutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+    boolean written = false;
+    try {
+      mapper.writeValue(out, metrics);
+      written = true;
+    } finally {
+      out.close();
+      if (!written) {
+        file.delete();
+      }
+    }
+    usedBytes += file.length();
+    return true;
+  }
+
+  /**
+   * Get the oldest spooled batch file.
+   *
+   * @return the file; null if the spool is empty
+   */
+  public File getOldest() {
+    File[] files = listFiles();
+    if (files.length == 0) {
+      return null;
+    }
+    Arrays.sort(files);
+    return files[0];
+  }
+
+  /**
+   * Read a batch file written by {@link #write}.
+   */
+  public TimelineMetrics read(File file) throws IOException {
+    InputStream in = new GZIPInputStream(new FileInputStream(file));
+    try {
+      return mapper.readValue(in, TimelineMetrics.class);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Remove a batch file once it was sent or can't be read.
+   */
+  public void delete(File file) {
+    long length = file.length();
+    if (file.delete()) {
+      usedBytes = Math.max(0, usedBytes - length);
+    } else {
+      LOG.warn("Unable to delete spooled metrics " + file);
+    }
+  }
+
+  public boolean isEmpty() {
+    return listFiles().length == 0;
+  }
+
+  public long getUsedBytes() {
+    return usedBytes;
+  }
+
+  private File[] listFiles() {
+    File[] files = directory.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+      }
+    });
+    return files == null ? new File[0] : files;
+  }
+}
@@ -22,158 +22,391 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
 
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Buffers the values of each metric until they span the eviction time and
+ * can be sent as one {@link TimelineMetric}.
+ * <p/>
+ * The values of a metric are kept in a ring of primitive arrays which grows
+ * up to a fixed number of values; once full, the oldest values are
+ * overwritten. The cache is bounded by the estimated memory of all buffers
+ * rather than by the number of metric names. When the bound is exceeded the
+ * least recently written metrics are dropped, together with their duplicate
+ * detection and counter state.
+ * <p/>
+ * Safe for use by concurrent producers. Each metric is locked on its own, so
+ * producers only contend when they write the same metric.
+ */
 @InterfaceAudience.Public
 @InterfaceStability.Evolving
 public class TimelineMetricsCache {
 
-  private final TimelineMetricHolder timelineMetricCache = new TimelineMetricHolder();
-  private static final Log LOG = LogFactory.getLog(TimelineMetric.class);
+  private static final Log LOG = LogFactory.getLog(TimelineMetricsCache.class);
   public static final int MAX_RECS_PER_NAME_DEFAULT = 10000;
   public static final int MAX_EVICTION_TIME_MILLIS = 59000; // ~ 1 min
-  private final int maxRecsPerName;
+  public static final int MAX_VALUES_PER_METRIC_DEFAULT = 1024;
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * Estimated size of a buffer without its name and values: the object,
+   * its arrays and metadata strings, and the map entry.
+   */
+  private static final int BUFFER_OVERHEAD_BYTES = 256;
+
+  /**
+   * Estimated size of a metric with a 64 character name and 64 values; used
+   * to turn a number of metric names into a memory bound.
+   */
+  static final long AVERAGE_METRIC_WEIGHT = weight(64, 64);
+
+  /**
+   * Evicting stops once the weight is below this share of the maximum, so
+   * that eviction doesn't run for every new metric.
+   */
+  private static final double EVICTION_WATERMARK = 0.9;
+
+  private final ConcurrentMap<String, MetricBuffer> buffers =
+    new ConcurrentHashMap<String, MetricBuffer>();
+  private final AtomicLong weight = new AtomicLong();
+  private final AtomicBoolean evicting = new AtomicBoolean();
+  private final long maxWeight;
   private final int maxEvictionTimeInMillis;
-  private final Map<String, Double> counterMetricLastValue = new HashMap<String, Double>();
+  private final int maxValuesPerMetric;
+  private volatile boolean gotOverflow = false;
+  private volatile boolean gotValueOverflow = false;
 
+  /**
+   * Create a cache holding roughly the given number of metric names.
+   *
+   * @param maxRecsPerName           the number of metric names
+   * @param maxEvictionTimeInMillis  the time span of a metric's values
+   *                                 before it can be evicted
+   */
   public TimelineMetricsCache(int maxRecsPerName, int maxEvictionTimeInMillis) {
-    this.maxRecsPerName = maxRecsPerName;
-    this.maxEvictionTimeInMillis = maxEvictionTimeInMillis;
+    this(maxRecsPerName * AVERAGE_METRIC_WEIGHT, maxEvictionTimeInMillis,
+      MAX_VALUES_PER_METRIC_DEFAULT);
   }
 
-  class TimelineMetricWrapper {
-    private long timeDiff = -1;
-    private long oldestTimestamp = -1;
-    private TimelineMetric timelineMetric;
-
-    TimelineMetricWrapper(TimelineMetric timelineMetric) {
-      this.timelineMetric = timelineMetric;
-      this.oldestTimestamp = timelineMetric.getStartTime();
+  /**
+   * Create a cache bounded by memory.
+   *
+   * @param maxWeightInBytes         the estimated memory of all buffers
+   * @param maxEvictionTimeInMillis  the time span of a metric's values
+   *                                 before it can be evicted
+   * @param maxValuesPerMetric       the number of values kept per metric
+   */
+  public TimelineMetricsCache(long maxWeightInBytes, int maxEvictionTimeInMillis,
+                              int maxValuesPerMetric) {
+    if (maxValuesPerMetric <= 0) {
+      throw new IllegalArgumentException("maxValuesPerMetric must be positive");
     }
+    this.maxWeight = maxWeightInBytes;
+    this.maxEvictionTimeInMillis = maxEvictionTimeInMillis;
+    this.maxValuesPerMetric = maxValuesPerMetric;
+  }
 
-    private void updateTimeDiff(long timestamp) {
-      if (oldestTimestamp != -1 && timestamp > oldestTimestamp) {
-        timeDiff = timestamp - oldestTimestamp;
-      } else {
-        oldestTimestamp = timestamp;
+  /**
+   * Get the buffered values of a metric once they span the eviction time.
+   * The values are removed from the cache.
+   *
+   * @param metricName  the metric name
+   *
+   * @return the metric; null if the values aren't ready to be sent
+   */
+  public TimelineMetric getTimelineMetric(String metricName) {
+    MetricBuffer buffer = buffers.get(metricName);
+    if (buffer == null) {
+      return null;
+    }
+    synchronized (buffer) {
+      if (buffer.removed || buffer.timeDiff < getMaxEvictionTimeInMillis()) {
+        return null;
       }
+      return buffer.drain();
     }
+  }
 
-    public void putMetric(TimelineMetric metric) {
-      this.timelineMetric.addMetricValues(metric.getMetricValues());
-      updateTimeDiff(metric.getStartTime());
-    }
+  /**
+   * Getter method to help testing eviction
+   * @return @int
+   */
+  public int getMaxEvictionTimeInMillis() {
+    return maxEvictionTimeInMillis;
+  }
 
-    public long getTimeDiff() {
-      return timeDiff;
-    }
+  public void putTimelineMetric(TimelineMetric timelineMetric) {
+    putTimelineMetric(timelineMetric, false);
+  }
 
-    public TimelineMetric getTimelineMetric() {
-      return timelineMetric;
+  /**
+   * Buffer the values of a metric. The values of a counter are replaced by
+   * the difference to the previous value as they are buffered; the metric
+   * itself isn't changed.
+   *
+   * @param timelineMetric  the metric
+   * @param isCounter       whether the metric is a counter
+   */
+  public void putTimelineMetric(TimelineMetric timelineMetric, boolean isCounter) {
+    String metricName = timelineMetric.getMetricName();
+    long addedWeight = 0;
+    while (true) {
+      MetricBuffer buffer = buffers.get(metricName);
+      if (buffer == null) {
+        MetricBuffer newBuffer = new MetricBuffer(metricName);
+        buffer = buffers.putIfAbsent(metricName, newBuffer);
+        if (buffer == null) {
+          buffer = newBuffer;
+          weight.addAndGet(newBuffer.weight);
+        }
+      }
+      synchronized (buffer) {
+        if (buffer.removed) {
+          // evicted while we weren't holding the lock, use a new buffer
+          continue;
+        }
+        addedWeight += buffer.put(timelineMetric, isCounter);
+      }
+      break;
+    }
+    if (weight.addAndGet(addedWeight) > maxWeight) {
+      evict();
     }
   }
 
-  // TODO: Change to ConcurentHashMap with weighted eviction
-  class TimelineMetricHolder extends LinkedHashMap<String, TimelineMetricWrapper> {
-    private static final long serialVersionUID = 1L;
-    private boolean gotOverflow = false;
-    // To avoid duplication at the end of the buffer and beginning of the next
-    // segment of values
-    private Map<String, Long> endOfBufferTimestamps = new HashMap<String, Long>();
+  /**
+   * Get the estimated memory of the buffered metrics.
+   */
+  long getWeightInBytes() {
+    return weight.get();
+  }
+
+  /**
+   * Get the number of buffered metric names.
+   */
+  int size() {
+    return buffers.size();
+  }
 
-    @Override
-    protected boolean removeEldestEntry(Map.Entry<String, TimelineMetricWrapper> eldest) {
-      boolean overflow = size() > maxRecsPerName;
-      if (overflow && !gotOverflow) {
-        LOG.warn("Metrics cache overflow at "+ size() +" for "+ eldest);
+  /**
+   * Drop the least recently written metrics until the weight is below the
+   * watermark. Producers which find eviction running don't wait for it.
+   */
+  private void evict() {
+    if (!evicting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      if (!gotOverflow) {
+        LOG.warn("Metrics cache overflow at " + buffers.size() + " metrics, " +
+          weight.get() + " bytes");
         gotOverflow = true;
       }
-      return overflow;
+      List<MetricBuffer> candidates = new ArrayList<MetricBuffer>(buffers.values());
+      Collections.sort(candidates, new Comparator<MetricBuffer>() {
+        @Override
+        public int compare(MetricBuffer b1, MetricBuffer b2) {
+          // nano times may overflow, compare the difference
+          long diff = b1.lastAccess - b2.lastAccess;
+          return diff < 0 ? -1 : diff == 0 ? 0 : 1;
+        }
+      });
+      long target = (long) (maxWeight * EVICTION_WATERMARK);
+      for (MetricBuffer buffer : candidates) {
+        if (weight.get() <= target) {
+          break;
+        }
+        synchronized (buffer) {
+          if (!buffer.removed) {
+            buffer.removed = true;
+            buffers.remove(buffer.metricName, buffer);
+            weight.addAndGet(-buffer.weight);
+          }
+        }
+      }
+    } finally {
+      evicting.set(false);
     }
+  }
 
-    public TimelineMetric evict(String metricName) {
-      TimelineMetricWrapper metricWrapper = this.get(metricName);
+  private static long weight(int nameLength, int capacity) {
+    return BUFFER_OVERHEAD_BYTES + 2L * nameLength + 16L * capacity;
+  }
 
-      if (metricWrapper == null
-        || metricWrapper.getTimeDiff() < getMaxEvictionTimeInMillis()) {
-        return null;
-      }
+  /**
+   * The buffered values and state of one metric. Guarded by its own lock.
+   */
+  private final class MetricBuffer {
+    private final String metricName;
+    private String appId;
+    private String hostName;
+    private String instanceId;
+    private String type;
+    private long timestamp;
+    private long startTime;
 
-      TimelineMetric timelineMetric = metricWrapper.getTimelineMetric();
-      this.remove(metricName);
+    private long[] timestamps;
+    private double[] values;
+    // index of the oldest value
+    private int head = 0;
+    private int size = 0;
 
-      return timelineMetric;
+    private long oldestTimestamp = -1;
+    private long timeDiff = -1;
+    // To avoid duplication at the end of the buffer and beginning of the next
+    // segment of values
+    private long endOfBufferTimestamp;
+    private boolean hasEndOfBufferTimestamp = false;
+    private double counterLastValue = Double.NaN;
+
+    private volatile long lastAccess;
+    private boolean removed = false;
+    private long weight;
+
+    private MetricBuffer(String metricName) {
+      this.metricName = metricName;
+      int capacity = Math.min(INITIAL_CAPACITY, maxValuesPerMetric);
+      this.timestamps = new long[capacity];
+      this.values = new double[capacity];
+      this.weight = TimelineMetricsCache.weight(metricName.length(), capacity);
     }
 
-    public void put(String metricName, TimelineMetric timelineMetric) {
-      if (isDuplicate(timelineMetric)) {
-        return;
+    /**
+     * @return the weight added by growing the buffer
+     */
+    private long put(TimelineMetric metric, boolean isCounter) {
+      lastAccess = System.nanoTime();
+      long metricStartTime = metric.getStartTime();
+      if (hasEndOfBufferTimestamp && endOfBufferTimestamp == metricStartTime) {
+        return 0;
       }
-      TimelineMetricWrapper metric = this.get(metricName);
-      if (metric == null) {
-        this.put(metricName, new TimelineMetricWrapper(timelineMetric));
+      if (oldestTimestamp == -1) {
+        // first values since the last eviction
+        appId = metric.getAppId();
+        hostName = metric.getHostName();
+        instanceId = metric.getInstanceId();
+        type = metric.getType();
+        timestamp = metric.getTimestamp();
+        startTime = metricStartTime;
+        oldestTimestamp = metricStartTime;
+      } else if (metricStartTime > oldestTimestamp) {
+        timeDiff = metricStartTime - oldestTimestamp;
       } else {
-        metric.putMetric(timelineMetric);
+        oldestTimestamp = metricStartTime;
       }
-      // Buffer last ts value
-      endOfBufferTimestamps.put(metricName, timelineMetric.getStartTime());
-    }
 
-    /**
-     * Test whether last buffered timestamp is same as the newly received.
-     * @param timelineMetric @TimelineMetric
-     * @return true/false
-     */
-    private boolean isDuplicate(TimelineMetric timelineMetric) {
-      return endOfBufferTimestamps.containsKey(timelineMetric.getMetricName())
-        && endOfBufferTimestamps.get(timelineMetric.getMetricName()).equals(timelineMetric.getStartTime());
-    }
-  }
+      TimelineMetricSeries series = metric.getMetricSeries();
+      int count = series.size();
+      long addedWeight = ensureCapacity(size + count);
+      if (isCounter && count > 0 && Double.isNaN(counterLastValue)) {
+        counterLastValue = series.getValue(0);
+      }
+      for (int i = 0; i < count; i++) {
+        double value = series.getValue(i);
+        if (isCounter) {
+          double currentValue = value;
+          value = currentValue - counterLastValue;
+          counterLastValue = currentValue;
+        }
+        append(series.getTimestamp(i), value);
+      }
 
-  public TimelineMetric getTimelineMetric(String metricName) {
-    if (timelineMetricCache.containsKey(metricName)) {
-      return timelineMetricCache.evict(metricName);
+      endOfBufferTimestamp = metricStartTime;
+      hasEndOfBufferTimestamp = true;
+      return addedWeight;
     }
 
-    return null;
-  }
+    private void append(long valueTimestamp, double value) {
+      int capacity = timestamps.length;
+      int index = head + size;
+      if (index >= capacity) {
+        index -= capacity;
+      }
+      timestamps[index] = valueTimestamp;
+      values[index] = value;
+      if (size < capacity) {
+        size++;
+      } else {
+        // full, the oldest value was overwritten
+        head = head + 1 == capacity ? 0 : head + 1;
+        if (!gotValueOverflow) {
+          LOG.warn("Metrics cache overflow, dropping values of " + metricName);
+          gotValueOverflow = true;
+        }
+      }
+    }
 
-  /**
-   * Getter method to help testing eviction
-   * @return @int
-   */
-  public int getMaxEvictionTimeInMillis() {
-    return maxEvictionTimeInMillis;
-  }
+    /**
+     * Grow the arrays, up to the maximum number of values, to hold the given
+     * number of values.
+     *
+     * @return the added weight
+     */
+    private long ensureCapacity(int required) {
+      int capacity = timestamps.length;
+      if (required <= capacity || capacity >= maxValuesPerMetric) {
+        return 0;
+      }
+      int newCapacity = capacity;
+      while (newCapacity < required) {
+        newCapacity <<= 1;
+      }
+      newCapacity = Math.min(newCapacity, maxValuesPerMetric);
 
-  public void putTimelineMetric(TimelineMetric timelineMetric) {
-    timelineMetricCache.put(timelineMetric.getMetricName(), timelineMetric);
-  }
+      long[] newTimestamps = new long[newCapacity];
+      double[] newValues = new double[newCapacity];
+      int tail = Math.min(size, capacity - head);
+      System.arraycopy(timestamps, head, newTimestamps, 0, tail);
+      System.arraycopy(values, head, newValues, 0, tail);
+      System.arraycopy(timestamps, 0, newTimestamps, tail, size - tail);
+      System.arraycopy(values, 0, newValues, tail, size - tail);
+      timestamps = newTimestamps;
+      values = newValues;
+      head = 0;
 
-  private void transformMetricValuesToDerivative(TimelineMetric timelineMetric) {
-    String metricName = timelineMetric.getMetricName();
-    double firstValue = timelineMetric.getMetricValues().size() > 0
-        ? timelineMetric.getMetricValues().entrySet().iterator().next().getValue() : 0;
-    Double value = counterMetricLastValue.get(metricName);
-    double previousValue = value != null ? value : firstValue;
-    Map<Long, Double> metricValues = timelineMetric.getMetricValues();
-    Map<Long, Double>   newMetricValues = new TreeMap<Long, Double>();
-    for (Map.Entry<Long, Double> entry : metricValues.entrySet()) {
-      newMetricValues.put(entry.getKey(), entry.getValue() - previousValue);
-      previousValue = entry.getValue();
+      long addedWeight = 16L * (newCapacity - capacity);
+      weight += addedWeight;
+      return addedWeight;
     }
-    timelineMetric.setMetricValues(newMetricValues);
-    counterMetricLastValue.put(metricName, previousValue);
-  }
 
-  public void putTimelineMetric(TimelineMetric timelineMetric, boolean isCounter) {
-    if (isCounter) {
-      transformMetricValuesToDerivative(timelineMetric);
+    /**
+     * Take the buffered values. The duplicate detection and counter state
+     * are kept for the next values.
+     */
+    private TimelineMetric drain() {
+      TimelineMetricSeries.Builder builder = new TimelineMetricSeries.Builder(size);
+      int capacity = timestamps.length;
+      for (int i = 0, index = head; i < size; i++) {
+        builder.add(timestamps[index], values[index]);
+        if (++index == capacity) {
+          index = 0;
+        }
+      }
+      TimelineMetric metric = new TimelineMetric();
+      metric.setMetricName(metricName);
+      metric.setAppId(appId);
+      metric.setHostName(hostName);
+      metric.setInstanceId(instanceId);
+      metric.setType(type);
+      metric.setTimestamp(timestamp);
+      metric.setStartTime(startTime);
+      metric.setMetricValues(builder.build());
+
+      head = 0;
+      size = 0;
+      oldestTimestamp = -1;
+      timeDiff = -1;
+      return metric;
     }
-    putTimelineMetric(timelineMetric);
   }
 }
@@ -0,0 +1,215 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import org.codehaus.jackson.map.AnnotationIntrospector;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.xc.JaxbAnnotationIntrospector;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TimelineMetricSeriesTest {
+
+  private static final double delta = 0.00001;
+
+  @Test
+  public void testAppendAndInsert() throws Exception {
+    TimelineMetricSeries series = new TimelineMetricSeries(2);
+    series.append(20L, 2.0);
+    series.append(30L, 3.0);
+    series.append(10L, 1.0);
+    series.append(40L, 4.0);
+    series.append(20L, 2.5);
+
+    assertEquals(4, series.size());
+    assertEquals(10L, series.getFirstTimestamp());
+    assertEquals(40L, series.getLastTimestamp());
+    assertEquals(2.5, series.getValue(series.indexOf(20L)), delta);
+    assertTrue(series.indexOf(25L) < 0);
+
+    TreeMap<Long, Double> expected = new TreeMap<Long, Double>();
+    expected.put(10L, 1.0);
+    expected.put(20L, 2.5);
+    expected.put(30L, 3.0);
+    expected.put(40L, 4.0);
+    assertEquals(expected, series);
+    assertEquals(expected.hashCode(), series.hashCode());
+    assertEquals(expected.toString(), series.toString());
+  }
+
+  @Test
+  public void testNullAndNaN() throws Exception {
+    TimelineMetricSeries series = new TimelineMetricSeries();
+    series.put(1L, null);
+    series.put(2L, Double.NaN);
+    series.put(3L, 3.0);
+
+    assertTrue(series.containsKey(1L));
+    assertNull(series.get(1L));
+    assertTrue(series.containsKey(2L));
+    assertTrue(series.get(2L).isNaN());
+    assertTrue(TimelineMetricSeries.isMissing(series.getValue(0)));
+    assertFalse(TimelineMetricSeries.isMissing(series.getValue(1)));
+
+    Map<Long, Double> expected = new TreeMap<Long, Double>();
+    expected.put(1L, null);
+    expected.put(2L, Double.NaN);
+    expected.put(3L, 3.0);
+    assertEquals(expected, series);
+    assertEquals(expected, new TreeMap<Long, Double>(series));
+    assertEquals(expected, new TimelineMetricSeries(expected));
+
+    Iterator<Map.Entry<Long, Double>> iterator = series.entrySet().iterator();
+    assertNull(iterator.next().getValue());
+    Map.Entry<Long, Double> entry = iterator.next();
+    assertTrue(entry.getValue().isNaN());
+
+    // a NaN value set through the map view is still not missing
+    assertTrue(entry.setValue(TimelineMetricSeries.MISSING).isNaN());
+    assertNotNull(series.get(2L));
+  }
+
+  @Test
+  public void testMapView() throws Exception {
+    TimelineMetricSeries series = new TimelineMetricSeries();
+    assertNull(series.put(2L, 2.0));
+    assertEquals(2.0, series.put(2L, 3.0), delta);
+    series.put(1L, null);
+    series.put(3L, 4.0);
+
+    assertTrue(series.containsKey(1L));
+    assertNull(series.get(1L));
+    assertTrue(TimelineMetricSeries.isMissing(series.getValue(0)));
+    assertNull(series.get("2"));
+
+    Iterator<Map.Entry<Long, Double>> iterator = series.entrySet().iterator();
+    assertEquals(Long.valueOf(1L), iterator.next().getKey());
+    iterator.remove();
+    Map.Entry<Long, Double> entry = iterator.next();
+    entry.setValue(5.0);
+    assertEquals(5.0, series.getValue(0), delta);
+
+    assertEquals(4.0, series.remove(3L), delta);
+    assertEquals(1, series.size());
+    assertFalse(series.containsKey(3L));
+  }
+
+  @Test
+  public void testPutAll() throws Exception {
+    TimelineMetricSeries series = new TimelineMetricSeries();
+    series.append(10L, 1.0);
+    series.append(30L, 3.0);
+
+    TimelineMetricSeries other = new TimelineMetricSeries();
+    other.append(20L, 2.0);
+    other.append(30L, 3.5);
+    other.append(50L, 5.0);
+    series.putAll(other);
+
+    assertEquals(4, series.size());
+    assertEquals(20L, series.getTimestamp(1));
+    assertEquals(3.5, series.getValue(2), delta);
+    assertEquals(50L, series.getLastTimestamp());
+
+    // appending a newer series
+    TimelineMetricSeries newer = new TimelineMetricSeries();
+    newer.append(60L, 6.0);
+    series.putAll((Map<Long, Double>) newer);
+    assertEquals(5, series.size());
+    assertEquals(60L, series.getLastTimestamp());
+  }
+
+  @Test
+  public void testSubSeries() throws Exception {
+    TimelineMetricSeries series = new TimelineMetricSeries();
+    for (long t = 10L; t <= 100L; t += 10L) {
+      series.append(t, t / 10.0);
+    }
+
+    TimelineMetricSeries sub = series.subSeries(20L, 45L);
+    assertEquals(3, sub.size());
+    assertEquals(20L, sub.getFirstTimestamp());
+    assertEquals(40L, sub.getLastTimestamp());
+
+    assertEquals(10, series.subSeries(0L, Long.MAX_VALUE).size());
+    assertEquals(0, series.subSeries(200L, 300L).size());
+
+    // the sub series is a copy
+    sub.setValue(0, 9.0);
+    assertEquals(2.0, series.getValue(1), delta);
+  }
+
+  @Test
+  public void testBuilder() throws Exception {
+    TimelineMetricSeries.Builder builder = new TimelineMetricSeries.Builder(1);
+    builder.add(1L, 1.0).add(2L, 2.0).add(3L, 3.0);
+    TimelineMetricSeries series = builder.build();
+    assertEquals(3, series.size());
+    assertEquals(3L, series.getLastTimestamp());
+
+    series = new TimelineMetricSeries.Builder().add(3L, 3.0).add(1L, 1.0)
+      .add(3L, 3.5).build();
+    assertEquals(2, series.size());
+    assertEquals(1L, series.getFirstTimestamp());
+    assertEquals(3.5, series.getValue(1), delta);
+  }
+
+  @Test
+  public void testTimelineMetric() throws Exception {
+    TimelineMetric metric = new TimelineMetric();
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>();
+    values.put(2L, 2.0);
+    values.put(1L, 1.0);
+    metric.setMetricValues(values);
+    assertEquals(values, metric.getMetricValues());
+    assertEquals(1L, metric.getMetricSeries().getFirstTimestamp());
+
+    TimelineMetricSeries series = new TimelineMetricSeries();
+    metric.setMetricValues(series);
+    assertSame(series, metric.getMetricValues());
+  }
+
+  @Test
+  public void testJson() throws Exception {
+    ObjectMapper mapper = new ObjectMapper();
+    AnnotationIntrospector introspector = new JaxbAnnotationIntrospector();
+    mapper.setAnnotationIntrospector(introspector);
+
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName("cpu_user");
+    metric.getMetricValues().put(1L, 1.5);
+    metric.getMetricValues().put(2L, 2.5);
+
+    String json = mapper.writeValueAsString(metric);
+    assertTrue(json, json.contains("\"metrics\":{\"1\":1.5,\"2\":2.5}"));
+
+    TimelineMetric read = mapper.readValue(json, TimelineMetric.class);
+    assertEquals(metric.getMetricValues(), read.getMetricValues());
+    assertEquals(2.5, read.getMetricSeries().getValue(1), delta);
+  }
+}
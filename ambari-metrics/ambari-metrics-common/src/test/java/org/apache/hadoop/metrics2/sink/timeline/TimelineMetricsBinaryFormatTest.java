@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class TimelineMetricsBinaryFormatTest {
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.getMetrics().add(createMetric("cpu_user", "host1", 1000L,
+      new long[] { 1000L, 11000L, 21000L }, new double[] { 1.5, Double.NaN, -3 }));
+    TimelineMetric metric = createMetric("cpu_user", "host2", 2000L,
+      new long[] { 2000L }, new double[] { 42 });
+    metric.setInstanceId("instance1");
+    metric.setType("Long");
+    metrics.getMetrics().add(metric);
+    // no values and timestamps before the start time
+    metrics.getMetrics().add(createMetric("mem_free", "host1", 5000L,
+      new long[0], new double[0]));
+    metrics.getMetrics().add(createMetric("disk_free", "host1", 5000L,
+      new long[] { 100L, 200L }, new double[] { 1, 2 }));
+
+    TimelineMetrics read = roundTrip(metrics);
+
+    Assert.assertEquals(metrics.getMetrics().size(), read.getMetrics().size());
+    for (int i = 0; i < metrics.getMetrics().size(); i++) {
+      TimelineMetric expected = metrics.getMetrics().get(i);
+      TimelineMetric actual = read.getMetrics().get(i);
+      Assert.assertEquals(expected, actual);
+      Assert.assertEquals(expected.getTimestamp(), actual.getTimestamp());
+      Assert.assertEquals(expected.getType(), actual.getType());
+      Assert.assertEquals(expected.getInstanceId(), actual.getInstanceId());
+      Assert.assertEquals(expected.getMetricValues(), actual.getMetricValues());
+    }
+    Assert.assertNull(read.getMetrics().get(0).getInstanceId());
+    Assert.assertTrue(Double.isNaN(
+      read.getMetrics().get(0).getMetricSeries().getValue(1)));
+  }
+
+  @Test
+  public void testNamesAreWrittenOnce() throws Exception {
+    TimelineMetrics metrics = new TimelineMetrics();
+    for (int i = 0; i < 100; i++) {
+      metrics.getMetrics().add(createMetric("a.rather.long.metric.name.for.a.test",
+        "host1.example.com", 1000L, new long[] { 1000L }, new double[] { i }));
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TimelineMetricsBinaryFormat.write(metrics, out);
+
+    // the strings once, then less than 20 bytes per metric
+    Assert.assertTrue(out.size() < 100 + 100 * 20);
+    Assert.assertEquals(100, roundTrip(metrics).getMetrics().size());
+  }
+
+  @Test
+  public void testStreaming() throws Exception {
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.getMetrics().add(createMetric("m1", "host1", 1000L,
+      new long[] { 1000L }, new double[] { 1 }));
+    metrics.getMetrics().add(createMetric("m2", "host1", 1000L,
+      new long[] { 1000L }, new double[] { 2 }));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TimelineMetricsBinaryFormat.write(metrics, out);
+
+    TimelineMetricsBinaryFormat.Reader reader = new TimelineMetricsBinaryFormat.Reader(
+      new ByteArrayInputStream(out.toByteArray()));
+    Assert.assertEquals(2, reader.getMetricCount());
+    Assert.assertTrue(reader.hasNext());
+    Assert.assertEquals("m1", reader.next().getMetricName());
+    Assert.assertEquals("m2", reader.next().getMetricName());
+    Assert.assertFalse(reader.hasNext());
+  }
+
+  @Test(expected = IOException.class)
+  public void testNotBinary() throws Exception {
+    new TimelineMetricsBinaryFormat.Reader(
+      new ByteArrayInputStream("{\"metrics\":[]}".getBytes("UTF-8")));
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncated() throws Exception {
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.getMetrics().add(createMetric("m1", "host1", 1000L,
+      new long[] { 1000L, 2000L }, new double[] { 1, 2 }));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TimelineMetricsBinaryFormat.write(metrics, out);
+    byte[] bytes = out.toByteArray();
+
+    new TimelineMetricsBinaryFormat.Reader(new ByteArrayInputStream(
+      Arrays.copyOf(bytes, bytes.length - 4))).readAll();
+  }
+
+  @Test(expected = IOException.class)
+  public void testNegativeCount() throws Exception {
+    // 2^63 reads as a negative count
+    read(createBody(Long.MIN_VALUE));
+  }
+
+  @Test(expected = IOException.class)
+  public void testNegativeValueCount() throws Exception {
+    // one string "m", one metric named "m" without values but a count of -1
+    read(createBody(1, 1, 'm', 1, 1, 0, 0, 0, 0, 0, 0, -1L));
+  }
+
+  @Test(expected = IOException.class)
+  public void testLargeCountsAreNotPreallocated() throws Exception {
+    // 100 million strings of 64K in a body of a few bytes
+    read(createBody(100000000, 65536));
+  }
+
+  @Test(expected = IOException.class)
+  public void testStringTooLong() throws Exception {
+    read(createBody(1, 100000000));
+  }
+
+  /**
+   * Create a body of the given varints after the magic number and version.
+   */
+  private static byte[] createBody(long... varints) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(0x414d544d);
+    data.writeByte(1);
+    for (long value : varints) {
+      while ((value & ~0x7FL) != 0) {
+        data.writeByte((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      data.writeByte((int) value);
+    }
+    data.flush();
+    return out.toByteArray();
+  }
+
+  private static TimelineMetrics read(byte[] body) throws IOException {
+    return new TimelineMetricsBinaryFormat.Reader(
+      new ByteArrayInputStream(body)).readAll();
+  }
+
+  private static TimelineMetrics roundTrip(TimelineMetrics metrics)
+    throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TimelineMetricsBinaryFormat.write(metrics, out);
+    return new TimelineMetricsBinaryFormat.Reader(
+      new ByteArrayInputStream(out.toByteArray())).readAll();
+  }
+
+  private static TimelineMetric createMetric(String metricName, String hostName,
+                                             long startTime, long[] timestamps,
+                                             double[] values) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(metricName);
+    metric.setHostName(hostName);
+    metric.setAppId("app1");
+    metric.setStartTime(startTime);
+    metric.setTimestamp(startTime + 10);
+    TimelineMetricSeries.Builder builder = new TimelineMetricSeries.Builder();
+    for (int i = 0; i < timestamps.length; i++) {
+      builder.add(timestamps[i], values[i]);
+    }
+    metric.setMetricValues(builder.build());
+    return metric;
+  }
+}
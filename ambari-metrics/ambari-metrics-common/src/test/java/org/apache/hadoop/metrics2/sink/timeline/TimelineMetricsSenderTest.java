@@ -0,0 +1,226 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.net.ConnectException;
+import java.util.zip.GZIPInputStream;
+
+public class TimelineMetricsSenderTest {
+  private static final String COLLECTOR_URL = "http://collector:6188/ws/v1/timeline/metrics";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private HttpClient client;
+  private TestTimelineMetricsSink sink;
+
+  @Before
+  public void init() {
+    client = Mockito.mock(HttpClient.class);
+    sink = new TestTimelineMetricsSink();
+    sink.setHttpClient(client);
+  }
+
+  @Test
+  public void testSendInBackground() throws Exception {
+    Mockito.when(client.executeMethod(Mockito.<HttpMethod>any())).thenReturn(200);
+
+    TimelineMetricsSender sender =
+      new TimelineMetricsSender(sink, 1024 * 1024, true, 10, 100, 3, null);
+    sender.start();
+    Assert.assertTrue(sender.send(createMetrics("m1", "m2")));
+    sender.stop(5000);
+
+    Assert.assertEquals(2, sender.getSentMetrics());
+    Assert.assertEquals(0, sender.getQueuedMetrics());
+    Assert.assertEquals(0, sender.getDroppedMetrics());
+
+    ArgumentCaptor<HttpMethod> method = ArgumentCaptor.forClass(HttpMethod.class);
+    Mockito.verify(client).executeMethod(method.capture());
+    Assert.assertEquals("gzip",
+      method.getValue().getRequestHeader("Content-Encoding").getValue());
+  }
+
+  @Test
+  public void testCompressedBody() throws Exception {
+    TimelineMetricsRequestEntity entity = new TimelineMetricsRequestEntity(
+      AbstractTimelineMetricsSink.mapper, createMetrics("m1"), true);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    entity.writeRequest(out);
+
+    TimelineMetrics metrics = AbstractTimelineMetricsSink.mapper.readValue(
+      new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())),
+      TimelineMetrics.class);
+    Assert.assertEquals(1, metrics.getMetrics().size());
+    Assert.assertEquals("m1", metrics.getMetrics().get(0).getMetricName());
+    Assert.assertEquals(1.0,
+      metrics.getMetrics().get(0).getMetricValues().get(1000L), 0.0);
+  }
+
+  @Test
+  public void testRetryWhenBusy() throws Exception {
+    Mockito.when(client.executeMethod(Mockito.<HttpMethod>any()))
+      .thenReturn(503).thenReturn(503).thenReturn(200);
+
+    TimelineMetricsSender sender =
+      new TimelineMetricsSender(sink, 1024 * 1024, false, 10, 100, 3, null);
+    sender.deliver(createMetrics("m1"));
+
+    Mockito.verify(client, Mockito.times(3)).executeMethod(Mockito.<HttpMethod>any());
+    Assert.assertEquals(1, sender.getSentMetrics());
+    Assert.assertEquals(0, sender.getDroppedMetrics());
+  }
+
+  @Test
+  public void testDropAfterRetries() throws Exception {
+    Mockito.when(client.executeMethod(Mockito.<HttpMethod>any()))
+      .thenThrow(new ConnectException());
+
+    TimelineMetricsSender sender =
+      new TimelineMetricsSender(sink, 1024 * 1024, false, 10, 20, 2, null);
+    sender.deliver(createMetrics("m1", "m2"));
+
+    Mockito.verify(client, Mockito.times(3)).executeMethod(Mockito.<HttpMethod>any());
+    Assert.assertEquals(0, sender.getSentMetrics());
+    Assert.assertEquals(2, sender.getDroppedMetrics());
+  }
+
+  @Test
+  public void testBadRequestIsNotRetried() throws Exception {
+    Mockito.when(client.executeMethod(Mockito.<HttpMethod>any())).thenReturn(400);
+
+    TimelineMetricsSender sender =
+      new TimelineMetricsSender(sink, 1024 * 1024, false, 10, 20, 2, null);
+    sender.deliver(createMetrics("m1"));
+
+    Mockito.verify(client, Mockito.times(1)).executeMethod(Mockito.<HttpMethod>any());
+    Assert.assertEquals(1, sender.getDroppedMetrics());
+  }
+
+  @Test
+  public void testSpoolAndReplay() throws Exception {
+    Mockito.when(client.executeMethod(Mockito.<HttpMethod>any()))
+      .thenThrow(new ConnectException()).thenReturn(200);
+
+    TimelineMetricsSpool spool = new TimelineMetricsSpool(folder.newFolder(),
+      1024 * 1024, AbstractTimelineMetricsSink.mapper);
+    TimelineMetricsSender sender =
+      new TimelineMetricsSender(sink, 1024 * 1024, false, 10, 20, 2, spool);
+
+    sender.deliver(createMetrics("m1", "m2"));
+    Assert.assertEquals(2, sender.getSpooledMetrics());
+    Assert.assertFalse(spool.isEmpty());
+
+    // nothing is replayed until the backoff has passed
+    Thread.sleep(50);
+    sender.replaySpool();
+
+    Mockito.verify(client, Mockito.times(2)).executeMethod(Mockito.<HttpMethod>any());
+    Assert.assertEquals(2, sender.getSentMetrics());
+    Assert.assertTrue(spool.isEmpty());
+    Assert.assertEquals(0, spool.getUsedBytes());
+  }
+
+  @Test
+  public void testDropWhenQueueIsFull() throws Exception {
+    TimelineMetricsSender sender =
+      new TimelineMetricsSender(sink, 100, false, 10, 20, 2, null);
+    sender.start();
+    Assert.assertFalse(sender.send(createMetrics("m1")));
+    sender.stop(5000);
+
+    Assert.assertEquals(1, sender.getDroppedMetrics());
+    Mockito.verifyZeroInteractions(client);
+  }
+
+  @Test
+  public void testBinaryAdvertisedByCollector() throws Exception {
+    PostMethod postMethod = new PostMethod(COLLECTOR_URL) {
+      @Override
+      public Header getResponseHeader(String headerName) {
+        return AbstractTimelineMetricsSink.ACCEPT_POST_HEADER.equals(headerName) ?
+          new Header(headerName, "application/json, " +
+            TimelineMetricsBinaryFormat.CONTENT_TYPE) : null;
+      }
+    };
+    Assert.assertFalse(sink.isBinaryAccepted());
+    Assert.assertFalse(sink.retryAsJson(postMethod, 200));
+    Assert.assertTrue(sink.isBinaryAccepted());
+
+    PostMethod binaryPost = sink.createPostMethod(COLLECTOR_URL, createMetrics("m1"), false);
+    Assert.assertEquals(TimelineMetricsBinaryFormat.CONTENT_TYPE,
+      binaryPost.getRequestEntity().getContentType());
+  }
+
+  @Test
+  public void testBinaryFallsBackToJson() throws Exception {
+    Mockito.when(client.executeMethod(Mockito.<HttpMethod>any()))
+      .thenReturn(415).thenReturn(200);
+    sink.setBinaryAccepted(true);
+
+    TimelineMetricsSender sender =
+      new TimelineMetricsSender(sink, 1024 * 1024, false, 10, 100, 3, null);
+    sender.deliver(createMetrics("m1"));
+
+    ArgumentCaptor<HttpMethod> method = ArgumentCaptor.forClass(HttpMethod.class);
+    Mockito.verify(client, Mockito.times(2)).executeMethod(method.capture());
+    Assert.assertTrue(getEntity(method.getAllValues().get(0)).isBinary());
+    Assert.assertFalse(getEntity(method.getAllValues().get(1)).isBinary());
+    Assert.assertFalse(sink.isBinaryAccepted());
+    Assert.assertEquals(1, sender.getSentMetrics());
+  }
+
+  private static TimelineMetricsRequestEntity getEntity(HttpMethod method) {
+    return (TimelineMetricsRequestEntity) ((PostMethod) method).getRequestEntity();
+  }
+
+  private static TimelineMetrics createMetrics(String... metricNames) {
+    TimelineMetrics metrics = new TimelineMetrics();
+    for (String metricName : metricNames) {
+      TimelineMetric metric = new TimelineMetric();
+      metric.setMetricName(metricName);
+      metric.setHostName("host1");
+      metric.setAppId("app1");
+      metric.setStartTime(1000L);
+      metric.getMetricValues().put(1000L, 1.0);
+      metrics.getMetrics().add(metric);
+    }
+    return metrics;
+  }
+
+  private static class TestTimelineMetricsSink extends AbstractTimelineMetricsSink {
+    @Override
+    protected String getCollectorUri() {
+      return COLLECTOR_URL;
+    }
+  }
+}
@@ -20,10 +20,16 @@ package org.apache.hadoop.metrics2.sink.timeline.cache;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class TimelineMetricsCacheTest {
 
@@ -72,6 +78,107 @@ public class TimelineMetricsCacheTest {
     assertEquals(70, cachedMetric.getMetricValues().get(8L), delta);
   }
 
+  @Test
+  public void testDuplicateIsIgnored() throws Exception {
+    timelineMetricsCache.putTimelineMetric(createTimelineMetric(
+        new TreeMap<Long, Double>() {{ put(1L, 1.0); }}, DEFAULT_START_TIME));
+    timelineMetricsCache.putTimelineMetric(createTimelineMetric(
+        new TreeMap<Long, Double>() {{ put(2L, 2.0); }}, DEFAULT_START_TIME));
+    timelineMetricsCache.putTimelineMetric(createTimelineMetric(
+        new TreeMap<Long, Double>() {{ put(3L, 3.0); }},
+        DEFAULT_START_TIME + TimelineMetricsCache.MAX_EVICTION_TIME_MILLIS));
+
+    TimelineMetric cachedMetric = timelineMetricsCache.getTimelineMetric(METRIC_NAME);
+    assertEquals(2, cachedMetric.getMetricValues().size());
+    assertNull(cachedMetric.getMetricValues().get(2L));
+    assertEquals(DEFAULT_START_TIME, cachedMetric.getStartTime());
+    assertEquals("Test hostName", cachedMetric.getHostName());
+  }
+
+  @Test
+  public void testOldestValuesAreOverwritten() throws Exception {
+    TimelineMetricsCache cache = new TimelineMetricsCache(1024 * 1024,
+        TimelineMetricsCache.MAX_EVICTION_TIME_MILLIS, 4);
+    for (long i = 0; i < 10; i++) {
+      final long time = i;
+      cache.putTimelineMetric(createTimelineMetric(
+          new TreeMap<Long, Double>() {{ put(time, (double) time); }},
+          DEFAULT_START_TIME + i * 10000));
+    }
+
+    TimelineMetric cachedMetric = cache.getTimelineMetric(METRIC_NAME);
+    assertEquals(4, cachedMetric.getMetricValues().size());
+    assertEquals(6L, cachedMetric.getMetricSeries().getFirstTimestamp());
+    assertEquals(9L, cachedMetric.getMetricSeries().getLastTimestamp());
+  }
+
+  @Test
+  public void testWeightedEviction() throws Exception {
+    TimelineMetricsCache cache = new TimelineMetricsCache(
+        10 * TimelineMetricsCache.AVERAGE_METRIC_WEIGHT,
+        TimelineMetricsCache.MAX_EVICTION_TIME_MILLIS,
+        TimelineMetricsCache.MAX_VALUES_PER_METRIC_DEFAULT);
+    for (int i = 0; i < 100; i++) {
+      TimelineMetric metric = createTimelineMetric(
+          new TreeMap<Long, Double>() {{ put(1L, 1.0); }}, DEFAULT_START_TIME);
+      metric.setMetricName("metric" + i);
+      cache.putTimelineMetric(metric);
+    }
+    assertTrue(cache.getWeightInBytes()
+        <= 10 * TimelineMetricsCache.AVERAGE_METRIC_WEIGHT);
+    assertTrue(cache.size() < 100);
+
+    // the most recently written metric is kept
+    TimelineMetric metric = createTimelineMetric(
+        new TreeMap<Long, Double>() {{ put(2L, 2.0); }},
+        DEFAULT_START_TIME + TimelineMetricsCache.MAX_EVICTION_TIME_MILLIS);
+    metric.setMetricName("metric99");
+    cache.putTimelineMetric(metric);
+    assertNotNull(cache.getTimelineMetric("metric99"));
+  }
+
+  @Test
+  public void testConcurrentPuts() throws Exception {
+    final int threadCount = 4;
+    final int valueCount = 1000;
+    final TimelineMetricsCache cache = new TimelineMetricsCache(1024 * 1024,
+        TimelineMetricsCache.MAX_EVICTION_TIME_MILLIS, threadCount * valueCount + 1);
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < threadCount; t++) {
+      final long offset = t * valueCount;
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (long i = 0; i < valueCount; i++) {
+            final long time = offset + i;
+            cache.putTimelineMetric(createTimelineMetric(
+                new TreeMap<Long, Double>() {{ put(time, 1.0); }},
+                DEFAULT_START_TIME + time));
+          }
+        }
+      };
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    // no value was lost
+    cache.putTimelineMetric(createTimelineMetric(
+        new TreeMap<Long, Double>() {{ put(-1L, 1.0); }},
+        DEFAULT_START_TIME + 2 * TimelineMetricsCache.MAX_EVICTION_TIME_MILLIS));
+    TimelineMetric cachedMetric = cache.getTimelineMetric(METRIC_NAME);
+    assertEquals(threadCount * valueCount + 1, cachedMetric.getMetricValues().size());
+  }
+
   private TimelineMetric createTimelineMetric(Map<Long, Double> metricValues,
                                               long startTime) {
     TimelineMetric timelineMetric = new TimelineMetric();
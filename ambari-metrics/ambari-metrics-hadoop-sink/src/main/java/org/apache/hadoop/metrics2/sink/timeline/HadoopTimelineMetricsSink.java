@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.metrics2.sink.timeline;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.net.UnknownHostException;
@@ -47,7 +48,7 @@ import org.apache.hadoop.net.DNS;
 
 @InterfaceAudience.Public
 @InterfaceStability.Evolving
-public class HadoopTimelineMetricsSink extends AbstractTimelineMetricsSink implements MetricsSink {
+public class HadoopTimelineMetricsSink extends AbstractTimelineMetricsSink implements MetricsSink, Closeable {
   private Map<String, Set<String>> useTagsMap = new HashMap<String, Set<String>>();
   private TimelineMetricsCache metricsCache;
   private String hostName = "UNKNOWN.example.com";
@@ -56,6 +57,7 @@ public class HadoopTimelineMetricsSink extends AbstractTimelineMetricsSink imple
   private String collectorUri;
   private static final String SERVICE_NAME_PREFIX = "serviceName-prefix";
   private static final String SERVICE_NAME = "serviceName";
+  private static final long SENDER_STOP_TIMEOUT_MILLIS = 10000;
 
   @Override
   public void init(SubsetConfiguration conf) {
@@ -97,6 +99,16 @@ public class HadoopTimelineMetricsSink extends AbstractTimelineMetricsSink imple
       TimelineMetricsCache.MAX_EVICTION_TIME_MILLIS); // ~ 1 min
     metricsCache = new TimelineMetricsCache(maxRowCacheSize, metricsSendInterval);
 
+    // Send on a background thread, the metrics system thread must not wait
+    // for the collector
+    if (conf.getBoolean(SENDER_ASYNC_PROPERTY, true)) {
+      startSender(conf.getLong(SENDER_QUEUE_SIZE_PROPERTY, SENDER_QUEUE_SIZE_DEFAULT),
+        conf.getBoolean(SENDER_COMPRESS_PROPERTY, true),
+        conf.getLong(SENDER_MAX_BACKOFF_PROPERTY, SENDER_MAX_BACKOFF_DEFAULT),
+        conf.getString(SENDER_SPOOL_DIR_PROPERTY),
+        conf.getLong(SENDER_SPOOL_SIZE_PROPERTY, SENDER_SPOOL_SIZE_DEFAULT));
+    }
+
     conf.setListDelimiter(',');
     Iterator<String> it = (Iterator<String>) conf.getKeys();
     while (it.hasNext()) {
@@ -236,4 +248,9 @@ public class HadoopTimelineMetricsSink extends AbstractTimelineMetricsSink imple
   public void flush() {
     // TODO: Buffering implementation
   }
+
+  @Override
+  public void close() throws IOException {
+    stopSender(SENDER_STOP_TIMEOUT_MILLIS);
+  }
 }
@@ -62,6 +62,7 @@ public class KafkaTimelineMetricsReporter extends AbstractTimelineMetricsSink im
   private static final String TIMELINE_HOST_PROPERTY = "kafka.timeline.metrics.host";
   private static final String TIMELINE_PORT_PROPERTY = "kafka.timeline.metrics.port";
   private static final String TIMELINE_REPORTER_ENABLED_PROPERTY = "kafka.timeline.metrics.reporter.enabled";
+  private static final String TIMELINE_SENDER_PROPERTY_PREFIX = "kafka.timeline.metrics.";
   private static final String TIMELINE_DEFAULT_HOST = "localhost";
   private static final String TIMELINE_DEFAULT_PORT = "8188";
 
@@ -101,6 +102,18 @@ public class KafkaTimelineMetricsReporter extends AbstractTimelineMetricsSink im
         String metricCollectorPort = props.getString(TIMELINE_PORT_PROPERTY, TIMELINE_DEFAULT_PORT);
         setMetricsCache(new TimelineMetricsCache(maxRowCacheSize, metricsSendInterval));
         collectorUri = "http://" + metricCollectorHost + ":" + metricCollectorPort + "/ws/v1/timeline/metrics";
+        // Send on a background thread, so that the reporter thread doesn't
+        // wait for the collector
+        if (props.getBoolean(TIMELINE_SENDER_PROPERTY_PREFIX + SENDER_ASYNC_PROPERTY, true)) {
+          startSender(props.getLong(TIMELINE_SENDER_PROPERTY_PREFIX + SENDER_QUEUE_SIZE_PROPERTY,
+              SENDER_QUEUE_SIZE_DEFAULT),
+            props.getBoolean(TIMELINE_SENDER_PROPERTY_PREFIX + SENDER_COMPRESS_PROPERTY, true),
+            props.getLong(TIMELINE_SENDER_PROPERTY_PREFIX + SENDER_MAX_BACKOFF_PROPERTY,
+              SENDER_MAX_BACKOFF_DEFAULT),
+            props.getString(TIMELINE_SENDER_PROPERTY_PREFIX + SENDER_SPOOL_DIR_PROPERTY, null),
+            props.getLong(TIMELINE_SENDER_PROPERTY_PREFIX + SENDER_SPOOL_SIZE_PROPERTY,
+              SENDER_SPOOL_SIZE_DEFAULT));
+        }
         initializeReporter();
         if (props.getBoolean(TIMELINE_REPORTER_ENABLED_PROPERTY, false)) {
           startReporter(metricsConfig.pollingIntervalSecs());
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.data.DashboardQuery;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.net.MetricsReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * DashboardReader plays a user watching dashboards: it keeps sending
+ * dashboard queries picked at random, over the last timeRangeMillis, and
+ * records how long they take.
+ */
+public class DashboardReader implements Runnable {
+  private final static Logger LOG = LoggerFactory.getLogger(DashboardReader.class);
+
+  private final MetricsReader reader;
+  private final List<DashboardQuery> queries;
+  private final LoadStatistics statistics;
+  private final long timeRangeMillis;
+  private final int readIntervalMillis;
+  private final Random random;
+
+  /**
+   * @param reader             reader of the metrics
+   * @param queries            the dashboard queries to pick from
+   * @param statistics         records the latency of the queries
+   * @param timeRangeMillis    time range of the queries, ending now
+   * @param readIntervalMillis pause between two queries
+   * @param seed               seed of the query picks, for reproducible runs
+   */
+  public DashboardReader(MetricsReader reader, List<DashboardQuery> queries,
+                         LoadStatistics statistics, long timeRangeMillis,
+                         int readIntervalMillis, long seed) {
+    this.reader = reader;
+    this.queries = queries;
+    this.statistics = statistics;
+    this.timeRangeMillis = timeRangeMillis;
+    this.readIntervalMillis = readIntervalMillis;
+    this.random = new Random(seed);
+  }
+
+  @Override
+  public void run() {
+    while (!Thread.currentThread().isInterrupted()) {
+      runOnce();
+      try {
+        Thread.sleep(readIntervalMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Send a single query.
+   */
+  public void runOnce() {
+    DashboardQuery query = queries.get(random.nextInt(queries.size()));
+    String hostName = query.pickHostName(random);
+    long endTime = System.currentTimeMillis();
+    long start = System.nanoTime();
+
+    try {
+      TimelineMetrics metrics = reader.readMetrics(query.getMetricNames(),
+        query.getAppId().getId(), hostName, endTime - timeRangeMillis, endTime);
+
+      int values = 0;
+      if (metrics.getMetrics() != null) {
+        for (TimelineMetric metric : metrics.getMetrics()) {
+          values += metric.getMetricValues().size();
+        }
+      }
+      statistics.recordGet(System.nanoTime() - start, values, true);
+    } catch (Exception e) {
+      statistics.recordGet(System.nanoTime() - start, 0, false);
+      LOG.warn("Query of " + query.getMetricNames() + " failed: " + e);
+    }
+  }
+}
@@ -0,0 +1,208 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.data.AppID;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.data.AppMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.data.ApplicationInstance;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.data.Metric;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.net.MetricsReader;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.net.MetricsSender;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.util.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .timeline.TimelineMetricConfiguration.COLLECTOR_APP_ID;
+
+/**
+ * LagProbe measures how far the metrics service is behind the load:
+ * <ul>
+ * <li>the ingest lag, the time between posting a value and reading it
+ * back, measured with a probe metric;</li>
+ * <li>the aggregator lag, read from the aggregator.&lt;name&gt;.lag
+ * metrics the collector publishes about its own aggregators. The collector
+ * hosts are found through the metric metadata, so nothing is recorded when
+ * the collector doesn't keep metadata or doesn't publish these metrics.</li>
+ * </ul>
+ */
+public class LagProbe implements Runnable {
+  private final static Logger LOG = LoggerFactory.getLogger(LagProbe.class);
+
+  static final String PROBE_METRIC_NAME = "loadsimulator.ingest.probe";
+  static final String AGGREGATOR_LAG_METRICS = "aggregator.%.lag";
+
+  private static final long AGGREGATOR_LAG_WINDOW_MILLIS = 10 * 60 * 1000;
+
+  private final MetricsSender sender;
+  private final MetricsReader reader;
+  private final LoadStatistics statistics;
+  private final ApplicationInstance probeInstance;
+  private final long timeoutMillis;
+  private final long pollIntervalMillis;
+
+  /**
+   * Last value timestamp recorded for every aggregator lag metric, so that
+   * a value is recorded once.
+   */
+  private final Map<String, Long> aggregatorLagSeen = new HashMap<String, Long>();
+
+  /**
+   * @param sender             sender of the probe metric
+   * @param reader             reader of the probe metric and of the
+   *                           aggregator lag
+   * @param statistics         records the lags
+   * @param probeHostName      host the probe metric is posted for
+   * @param timeoutMillis      time after which a probe value that can't be
+   *                           read back is counted as missed
+   * @param pollIntervalMillis pause between two reads of the probe metric
+   */
+  public LagProbe(MetricsSender sender, MetricsReader reader,
+                  LoadStatistics statistics, String probeHostName,
+                  long timeoutMillis, long pollIntervalMillis) {
+    this.sender = sender;
+    this.reader = reader;
+    this.statistics = statistics;
+    this.probeInstance = new ApplicationInstance(probeHostName, AppID.HOST, "");
+    this.timeoutMillis = timeoutMillis;
+    this.pollIntervalMillis = pollIntervalMillis;
+  }
+
+  @Override
+  public void run() {
+    try {
+      probeIngestLag();
+      probeAggregatorLag();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Post a probe value and poll until it can be read back.
+   */
+  public void probeIngestLag() throws InterruptedException {
+    long timestamp = System.currentTimeMillis();
+    AppMetrics probe = new AppMetrics(probeInstance, timestamp);
+    Metric metric = probe.createMetric(PROBE_METRIC_NAME);
+    metric.putMetric(timestamp, "1.0");
+    probe.addMetric(metric);
+
+    String response;
+    try {
+      response = sender.pushMetrics(new Json().serialize(probe));
+    } catch (IOException e) {
+      response = "";
+    }
+    if (response.length() == 0) {
+      statistics.recordIngestProbeMissed();
+      return;
+    }
+
+    List<String> metricNames = Collections.singletonList(PROBE_METRIC_NAME);
+    while (System.currentTimeMillis() - timestamp < timeoutMillis) {
+      try {
+        TimelineMetrics metrics = reader.readMetrics(metricNames,
+          AppID.HOST.getId(), probeInstance.getHostName(),
+          timestamp - pollIntervalMillis, timestamp + timeoutMillis);
+        if (metrics.getMetrics() != null) {
+          for (TimelineMetric found : metrics.getMetrics()) {
+            if (found.getMetricValues().containsKey(timestamp)) {
+              statistics.recordIngestLag(System.currentTimeMillis() - timestamp);
+              return;
+            }
+          }
+        }
+      } catch (Exception e) {
+        LOG.debug("Reading the probe metric failed: " + e);
+      }
+      Thread.sleep(pollIntervalMillis);
+    }
+    statistics.recordIngestProbeMissed();
+  }
+
+  /**
+   * Record the aggregator lag values published since the last probe.
+   */
+  public void probeAggregatorLag() {
+    List<TimelineMetricMetadata> lagMetrics;
+    try {
+      lagMetrics = reader.readMetadata(AGGREGATOR_LAG_METRICS, COLLECTOR_APP_ID)
+        .getMetadata();
+    } catch (Exception e) {
+      LOG.debug("Reading the aggregator lag metadata failed: " + e);
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    for (TimelineMetricMetadata lagMetric : lagMetrics) {
+      String key = lagMetric.getMetricName() + "@" + lagMetric.getHostName();
+      Long seen = aggregatorLagSeen.get(key);
+      long from = seen != null ? seen + 1 : now - AGGREGATOR_LAG_WINDOW_MILLIS;
+      try {
+        TimelineMetrics metrics = reader.readMetrics(
+          Collections.singletonList(lagMetric.getMetricName()),
+          COLLECTOR_APP_ID, lagMetric.getHostName(), from, now);
+        if (metrics.getMetrics() == null) {
+          continue;
+        }
+        String aggregator = getAggregatorName(lagMetric.getMetricName());
+        for (TimelineMetric metric : metrics.getMetrics()) {
+          for (Map.Entry<Long, Double> value :
+              metric.getMetricValues().entrySet()) {
+            if (value.getKey() >= from) {
+              statistics.recordAggregatorLag(aggregator,
+                value.getValue().longValue());
+              if (seen == null || value.getKey() > seen) {
+                seen = value.getKey();
+              }
+            }
+          }
+        }
+        if (seen != null) {
+          aggregatorLagSeen.put(key, seen);
+        }
+      } catch (Exception e) {
+        LOG.debug("Reading " + key + " failed: " + e);
+      }
+    }
+  }
+
+  static String getAggregatorName(String lagMetricName) {
+    // aggregator.<name>.lag
+    return lagMetricName.substring("aggregator.".length(),
+      lagMetricName.length() - ".lag".length());
+  }
+}
@@ -0,0 +1,325 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.data.DashboardQuery;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.net.MetricsReader;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.net.MetricsSender;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.net.RestMetricsReader;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.net.RestMetricsSender;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.net.StoreMetricsReader;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.net.StoreMetricsSender;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.util.Json;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .timeline.TimelineMetricConfiguration;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .timeline.local.LocalTimelineMetricStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.data.AppID.MASTER_APPS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.data.AppID.SLAVE_APPS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .timeline.TimelineMetricConfiguration.LOCAL_STORE_DIR;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .timeline.TimelineMetricConfiguration.LOCAL_STORE_FLUSH_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .timeline.TimelineMetricConfiguration.LOCAL_STORE_TYPE;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .timeline.TimelineMetricConfiguration.STORE_TYPE;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .timeline.TimelineMetricConfiguration.TIMELINE_METRICS_AGGREGATOR_CHECKPOINT_DIR;
+
+/**
+ * LoadBenchmark runs the load simulator for a fixed time, together with
+ * dashboard readers and lag probes, and writes what it measured as a JSON
+ * report. The run is described by its options, which are part of the
+ * report, so that it can be repeated against other collector hardware.
+ * <p/>
+ * Sample Usage:
+ * <pre>
+ * $ java -cp ambari-metrics-timelineservice-simulator.jar \
+ * org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.LoadBenchmark \
+ * -m "collector.example.com" -n 3000 -s 60000 -r 8 -d 1800 -o report.json</pre>
+ * With -e true the metrics are not sent to a collector but to a local metric
+ * store started in the benchmark process, which measures the store without
+ * the network and the web tier.
+ */
+public class LoadBenchmark {
+  private final static Logger LOG = LoggerFactory.getLogger(LoadBenchmark.class);
+
+  private static final int METRICS_PER_DASHBOARD_QUERY = 4;
+  private static final long PROBE_POLL_INTERVAL_MILLIS = 1000;
+
+  private final Map<String, String> options;
+
+  public LoadBenchmark(Map<String, String> options) {
+    this.options = options;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = parseArgs(args);
+    Map<String, Object> report = new LoadBenchmark(options).run();
+
+    String json = new Json(true).serialize(report);
+    String reportFile = options.get("report");
+    if (reportFile == null) {
+      System.out.println(json);
+    } else {
+      Writer writer = new OutputStreamWriter(
+        new FileOutputStream(reportFile), "UTF-8");
+      try {
+        writer.write(json);
+      } finally {
+        writer.close();
+      }
+      LOG.info("Report written to " + reportFile);
+    }
+    System.exit(0);
+  }
+
+  /**
+   * Run the benchmark: warm up, measure for the configured duration, stop.
+   *
+   * @return the report, with the options of the run and the results
+   */
+  public Map<String, Object> run() throws Exception {
+    String hostName = options.get("hostName");
+    int hostCount = getInt("numberOfHosts");
+    int sendInterval = getInt("sendInterval");
+    boolean master = Boolean.valueOf(options.get("master"));
+    int readers = getInt("readers");
+
+    LoadStatistics statistics = new LoadStatistics();
+    MetricsSender sender;
+    MetricsReader reader;
+    LocalTimelineMetricStore store = null;
+    File storeDir = null;
+
+    if (Boolean.valueOf(options.get("embedded"))) {
+      storeDir = File.createTempFile("ams-benchmark", "");
+      if (!storeDir.delete() || !storeDir.mkdir()) {
+        throw new IOException("Cannot create " + storeDir);
+      }
+      store = startEmbeddedStore(storeDir);
+      sender = new StoreMetricsSender(store);
+      reader = new StoreMetricsReader(store);
+    } else {
+      sender = new RestMetricsSender(options.get("metricsHostName"));
+      reader = new RestMetricsReader(options.get("metricsHostName"));
+    }
+
+    LoadRunner runner = new LoadRunner(hostName, hostCount, sender,
+      getInt("senderThreads"), getInt("collectInterval"), sendInterval,
+      master, getInt("instances"), getInt("metricFanOut"), statistics);
+
+    ExecutorService readerPool = null;
+    List<DashboardQuery> queries = createDashboardQueries(hostName, hostCount,
+      master);
+    if (readers > 0 && !queries.isEmpty()) {
+      readerPool = Executors.newFixedThreadPool(readers);
+      long seed = Long.parseLong(options.get("seed"));
+      long timeRange = TimeUnit.MINUTES.toMillis(getInt("queryRange"));
+      for (int i = 0; i < readers; i++) {
+        readerPool.submit(new DashboardReader(reader, queries, statistics,
+          timeRange, getInt("readInterval"), seed + i));
+      }
+    }
+
+    ScheduledExecutorService probes = Executors.newSingleThreadScheduledExecutor();
+    probes.scheduleWithFixedDelay(new LagProbe(sender, reader, statistics,
+        hostName + ".probe", TimeUnit.SECONDS.toMillis(getInt("probeTimeout")),
+        PROBE_POLL_INTERVAL_MILLIS),
+      0, getInt("probeInterval"), TimeUnit.SECONDS);
+
+    try {
+      runner.start();
+
+      LOG.info("Warming up for " + getInt("warmup") + " seconds");
+      Thread.sleep(TimeUnit.SECONDS.toMillis(getInt("warmup")));
+      statistics.startRecording();
+      LOG.info("Measuring for " + getInt("duration") + " seconds");
+      Thread.sleep(TimeUnit.SECONDS.toMillis(getInt("duration")));
+      statistics.stopRecording();
+    } finally {
+      probes.shutdownNow();
+      if (readerPool != null) {
+        readerPool.shutdownNow();
+      }
+      runner.shutdown();
+      if (store != null) {
+        store.stop();
+        FileUtil.fullyDelete(storeDir);
+      }
+    }
+
+    Map<String, Object> report = new LinkedHashMap<String, Object>();
+    report.put("options", new TreeMap<String, String>(options));
+    report.put("results", statistics.toReport());
+    return report;
+  }
+
+  private int getInt(String option) {
+    return Integer.parseInt(options.get(option));
+  }
+
+  private static List<DashboardQuery> createDashboardQueries(String hostName,
+                                                             int hostCount,
+                                                             boolean master) {
+    List<DashboardQuery> queries = new ArrayList<DashboardQuery>();
+    List<String> slaveHosts = new ArrayList<String>();
+    for (int i = master ? 1 : 0; i < hostCount; i++) {
+      slaveHosts.add(hostName + "." + i);
+    }
+
+    if (master) {
+      List<String> masterHosts = new ArrayList<String>();
+      masterHosts.add(hostName + ".0");
+      queries.addAll(DashboardQuery.createQueries(MASTER_APPS, masterHosts,
+        METRICS_PER_DASHBOARD_QUERY));
+    }
+    if (!slaveHosts.isEmpty()) {
+      queries.addAll(DashboardQuery.createQueries(SLAVE_APPS, slaveHosts,
+        METRICS_PER_DASHBOARD_QUERY));
+    }
+    return queries;
+  }
+
+  private static LocalTimelineMetricStore startEmbeddedStore(File directory) {
+    final Configuration metricsConf = new Configuration(false);
+    metricsConf.set(STORE_TYPE, LOCAL_STORE_TYPE);
+    metricsConf.set(LOCAL_STORE_DIR, new File(directory, "store").getPath());
+    metricsConf.set(TIMELINE_METRICS_AGGREGATOR_CHECKPOINT_DIR,
+      directory.getPath());
+    metricsConf.setInt(LOCAL_STORE_FLUSH_INTERVAL, 10);
+
+    LocalTimelineMetricStore store = new LocalTimelineMetricStore(
+      new TimelineMetricConfiguration() {
+        @Override
+        public Configuration getMetricsConf() {
+          return metricsConf;
+        }
+      });
+    store.init(new Configuration(false));
+    store.start();
+    LOG.info("Started an embedded local metric store in " + directory);
+    return store;
+  }
+
+  private static Map<String, String> parseArgs(String[] args) {
+    Map<String, String> mapProps = new LinkedHashMap<String, String>();
+    mapProps.put("hostName", "host");
+    mapProps.put("numberOfHosts", "20");
+    mapProps.put("metricsHostName", "localhost");
+    mapProps.put("collectInterval", "10000");
+    mapProps.put("sendInterval", "60000");
+    mapProps.put("master", "true");
+    mapProps.put("instances", "1");
+    mapProps.put("metricFanOut", "1");
+    mapProps.put("senderThreads", "64");
+    mapProps.put("readers", "4");
+    mapProps.put("readInterval", "1000");
+    mapProps.put("queryRange", "60");
+    mapProps.put("probeInterval", "30");
+    mapProps.put("probeTimeout", "300");
+    mapProps.put("warmup", "120");
+    mapProps.put("duration", "600");
+    mapProps.put("seed", "0");
+    mapProps.put("embedded", "false");
+
+    Map<String, String> switches = new LinkedHashMap<String, String>();
+    switches.put("-h", "hostName");
+    switches.put("-n", "numberOfHosts");
+    switches.put("-m", "metricsHostName");
+    switches.put("-c", "collectInterval");
+    switches.put("-s", "sendInterval");
+    switches.put("-M", "master");
+    switches.put("-i", "instances");
+    switches.put("-f", "metricFanOut");
+    switches.put("-p", "senderThreads");
+    switches.put("-r", "readers");
+    switches.put("-q", "readInterval");
+    switches.put("-g", "queryRange");
+    switches.put("-l", "probeInterval");
+    switches.put("-x", "probeTimeout");
+    switches.put("-u", "warmup");
+    switches.put("-d", "duration");
+    switches.put("-S", "seed");
+    switches.put("-e", "embedded");
+    switches.put("-o", "report");
+
+    for (int i = 0; i < args.length; i += 2) {
+      String option = switches.get(args[i]);
+      if (option == null || i + 1 >= args.length) {
+        printUsage();
+        throw new RuntimeException("Unexpected argument, See usage message.");
+      }
+      mapProps.put(option, args[i + 1]);
+    }
+
+    LOG.info("Recognized options: {}", mapProps);
+    return mapProps;
+  }
+
+  public static void printUsage() {
+    System.err.println("Usage: java LoadBenchmark [OPTIONS]");
+    System.err.println("Options: ");
+    System.err.println("[-h hostName] [-n numberOfHosts {20}] "
+      + "[-m metricsHostName {localhost}] [-c collectIntervalMillis {10 sec}] "
+      + "[-s sendIntervalMillis {60 sec}] [-M simulateMaster {true, false}] "
+      + "[-i instancesPerApp {1}] [-f metricFanOut {1}] "
+      + "[-p senderThreads {64}] [-r dashboardReaders {4}] "
+      + "[-q readIntervalMillis {1 sec}] [-g queryRangeMinutes {60}] "
+      + "[-l probeIntervalSeconds {30}] [-x probeTimeoutSeconds {300}] "
+      + "[-u warmupSeconds {120}] [-d durationSeconds {600}] [-S seed {0}] "
+      + "[-e embeddedStore {true, false}] [-o reportFile {stdout}]");
+    System.err.println();
+    System.err.println("Every simulated host sends the metrics of its apps each");
+    System.err.println("send interval; with a metric fan out of n every metric");
+    System.err.println("name is sent n times. The dashboard readers query 4");
+    System.err.println("metrics of an app at a time, of a host or of the cluster.");
+  }
+}
@@ -60,6 +60,9 @@ public class LoadRunner {
   private final long startTime = new Date().getTime();
   private final int collectIntervalMillis;
   private final int sendIntervalMillis;
+  private final int instancesPerApp;
+  private final int metricFanOut;
+  private final LoadStatistics statistics;
 
   public LoadRunner(String hostName,
                     int threadCount,
@@ -67,31 +70,63 @@ public class LoadRunner {
                     int collectIntervalMillis,
                     int sendIntervalMillis,
                     boolean createMaster) {
+    this(hostName, threadCount, new RestMetricsSender(metricsHostName),
+      threadCount, collectIntervalMillis, sendIntervalMillis, createMaster,
+      1, 1, null);
+  }
+
+  /**
+   * @param hostName              base name of the simulated hosts
+   * @param hostCount             number of simulated hosts
+   * @param sender                sender shared by the simulated hosts
+   * @param threadCount           number of threads sending the metrics
+   * @param collectIntervalMillis interval between two values of a metric
+   * @param sendIntervalMillis    interval between two sends of a host
+   * @param createMaster          whether the first host runs the master apps
+   * @param instancesPerApp       number of instances of every app on a host
+   * @param metricFanOut          number of metrics sent for every metric
+   *                              name defined for an app
+   * @param statistics            records the latency of the sends, may be
+   *                              null
+   */
+  public LoadRunner(String hostName,
+                    int hostCount,
+                    MetricsSender sender,
+                    int threadCount,
+                    int collectIntervalMillis,
+                    int sendIntervalMillis,
+                    boolean createMaster,
+                    int instancesPerApp,
+                    int metricFanOut,
+                    LoadStatistics statistics) {
     this.collectIntervalMillis = collectIntervalMillis;
     this.workersPool = Executors.newFixedThreadPool(threadCount);
     this.timer = Executors.newScheduledThreadPool(1);
     this.sendIntervalMillis = sendIntervalMillis;
+    this.instancesPerApp = instancesPerApp;
+    this.metricFanOut = metricFanOut;
+    this.statistics = statistics;
 
-    workers = prepareWorkers(hostName, threadCount, metricsHostName, createMaster);
+    workers = prepareWorkers(hostName, hostCount, sender, createMaster);
   }
 
   private Collection<Callable<String>> prepareWorkers(String hostName,
-                                                      int threadCount,
-                                                      String metricsHost,
+                                                      int hostCount,
+                                                      MetricsSender sender,
                                                       Boolean createMaster) {
     Collection<Callable<String>> senderWorkers =
-      new ArrayList<Callable<String>>(threadCount);
+      new ArrayList<Callable<String>>(hostCount);
 
     int startIndex = 0;
     if (createMaster) {
       String simHost = hostName + ".0";
-      addMetricsWorkers(senderWorkers, simHost, metricsHost, MASTER_APPS);
+      addMetricsWorkers(senderWorkers, simHost, sender, MASTER_APPS);
       startIndex++;
     }
 
-    for (int i = startIndex; i < threadCount; i++) {
+    for (int i = startIndex; i < hostCount; i++) {
       String simHost = hostName + "." + i;
-      addMetricsWorkers(senderWorkers, simHost, metricsHost, SLAVE_APPS);
+      addMetricsWorkers(senderWorkers, simHost, sender, SLAVE_APPS);
     }
 
     return senderWorkers;
@@ -99,23 +134,30 @@ public class LoadRunner {
 
   private void addMetricsWorkers(Collection<Callable<String>> senderWorkers,
                                  String specificHostName,
-                                 String metricsHostName,
+                                 MetricsSender sender,
                                  AppID[] apps) {
     for (AppID app : apps) {
-      HostMetricsGenerator metricsGenerator =
-        createApplicationMetrics(specificHostName, app);
-      MetricsSender sender = new RestMetricsSender(metricsHostName);
-      senderWorkers.add(new MetricsSenderWorker(sender, metricsGenerator));
+      for (int instance = 0; instance < instancesPerApp; instance++) {
+        // a single instance is sent without instance id, like the sinks do
+        String instanceId = instancesPerApp > 1 ? Integer.toString(instance) : "";
+        HostMetricsGenerator metricsGenerator =
+          createApplicationMetrics(specificHostName, app, instanceId);
+        senderWorkers.add(
+          new MetricsSenderWorker(sender, metricsGenerator, statistics));
+      }
     }
   }
 
-  private HostMetricsGenerator createApplicationMetrics(String simHost, AppID host) {
-    ApplicationInstance appInstance = new ApplicationInstance(simHost, host, "");
+  private HostMetricsGenerator createApplicationMetrics(String simHost,
+                                                        AppID host,
+                                                        String instanceId) {
+    ApplicationInstance appInstance =
+      new ApplicationInstance(simHost, host, instanceId);
     TimeStampProvider timeStampProvider = new TimeStampProvider(startTime,
       collectIntervalMillis, sendIntervalMillis);
 
     return MetricsGeneratorConfigurer
-      .createMetricsForHost(appInstance, timeStampProvider);
+      .createMetricsForHost(appInstance, timeStampProvider, metricFanOut);
   }
 
   public void start() {
@@ -136,13 +178,30 @@ public class LoadRunner {
       sendIntervalMillis / 2,
       TimeUnit.MILLISECONDS);
     int done = 0;
+    int failed = 0;
+    int timedOut = 0;
 
-    // TODO: correctly count the failed tasks
     for (Future<String> future : futures) {
-      done += future.isDone() ? 1 : 0;
+      if (future.isCancelled()) {
+        timedOut++;
+        if (statistics != null) {
+          statistics.recordPostTimeout();
+        }
+        continue;
+      }
+      try {
+        if (future.get().length() > 0) {
+          done++;
+        } else {
+          failed++;
+        }
+      } catch (ExecutionException e) {
+        failed++;
+      }
     }
 
-    LOG.info("Finished successfully " + done + " tasks ");
+    LOG.info("Finished successfully " + done + " tasks, failed " + failed +
+      ", timed out " + timedOut);
   }
 
   public void shutdown() {
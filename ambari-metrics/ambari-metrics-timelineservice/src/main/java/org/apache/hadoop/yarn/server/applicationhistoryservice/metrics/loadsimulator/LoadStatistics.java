@@ -0,0 +1,266 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator;
+
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.util.LatencyHistogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LoadStatistics collects what the load simulator measures while it runs:
+ * the latency of the metric POSTs and of the dashboard GETs in microseconds,
+ * the time it takes for a posted value to become readable (ingest lag) and
+ * the lag of the collector aggregators, both in milliseconds.
+ * <p/>
+ * Nothing is recorded until {@link #startRecording()} is called, so that a
+ * warm-up period can be left out of the results.
+ */
+public class LoadStatistics {
+  private final LatencyHistogram postLatency = new LatencyHistogram();
+  private final AtomicLong postErrors = new AtomicLong();
+  private final AtomicLong postTimeouts = new AtomicLong();
+  private final AtomicLong postedMetrics = new AtomicLong();
+  private final AtomicLong postedValues = new AtomicLong();
+
+  private final LatencyHistogram getLatency = new LatencyHistogram();
+  private final AtomicLong getErrors = new AtomicLong();
+  private final AtomicLong readValues = new AtomicLong();
+
+  private final LatencyHistogram ingestLag = new LatencyHistogram();
+  private final AtomicLong ingestProbesMissed = new AtomicLong();
+
+  private final ConcurrentMap<String, LatencyHistogram> aggregatorLag =
+    new ConcurrentHashMap<String, LatencyHistogram>();
+
+  private volatile boolean recording = false;
+  private volatile long recordingStart;
+  private volatile long recordingEnd;
+
+  /**
+   * Forget everything recorded so far and start recording.
+   */
+  public void startRecording() {
+    postLatency.reset();
+    postErrors.set(0);
+    postTimeouts.set(0);
+    postedMetrics.set(0);
+    postedValues.set(0);
+    getLatency.reset();
+    getErrors.set(0);
+    readValues.set(0);
+    ingestLag.reset();
+    ingestProbesMissed.set(0);
+    aggregatorLag.clear();
+
+    recordingStart = System.currentTimeMillis();
+    recordingEnd = 0;
+    recording = true;
+  }
+
+  /**
+   * Stop recording; the results are kept.
+   */
+  public void stopRecording() {
+    if (recording) {
+      recording = false;
+      recordingEnd = System.currentTimeMillis();
+    }
+  }
+
+  public boolean isRecording() {
+    return recording;
+  }
+
+  /**
+   * Record a POST of metrics.
+   *
+   * @param elapsedNanos the time the POST took
+   * @param metrics      the number of metrics posted
+   * @param values       the number of values of the posted metrics
+   * @param success      whether the collector accepted the metrics
+   */
+  public void recordPost(long elapsedNanos, int metrics, int values,
+                         boolean success) {
+    if (!recording) {
+      return;
+    }
+    postLatency.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+    if (success) {
+      postedMetrics.addAndGet(metrics);
+      postedValues.addAndGet(values);
+    } else {
+      postErrors.incrementAndGet();
+    }
+  }
+
+  /**
+   * Record a POST that didn't complete within the send interval.
+   */
+  public void recordPostTimeout() {
+    if (recording) {
+      postTimeouts.incrementAndGet();
+    }
+  }
+
+  /**
+   * Record a GET of metrics.
+   *
+   * @param elapsedNanos the time the GET took
+   * @param values       the number of values read
+   * @param success      whether the collector answered the query
+   */
+  public void recordGet(long elapsedNanos, int values, boolean success) {
+    if (!recording) {
+      return;
+    }
+    getLatency.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+    if (success) {
+      readValues.addAndGet(values);
+    } else {
+      getErrors.incrementAndGet();
+    }
+  }
+
+  /**
+   * Record the time between posting a value and reading it back.
+   */
+  public void recordIngestLag(long lagMillis) {
+    if (recording) {
+      ingestLag.record(lagMillis);
+    }
+  }
+
+  /**
+   * Record a posted value that couldn't be read back in time.
+   */
+  public void recordIngestProbeMissed() {
+    if (recording) {
+      ingestProbesMissed.incrementAndGet();
+    }
+  }
+
+  /**
+   * Record the lag reported by an aggregator of the collector.
+   *
+   * @param aggregator the name of the aggregator
+   * @param lagMillis  how far the aggregator is behind
+   */
+  public void recordAggregatorLag(String aggregator, long lagMillis) {
+    if (!recording) {
+      return;
+    }
+    LatencyHistogram histogram = aggregatorLag.get(aggregator);
+    if (histogram == null) {
+      LatencyHistogram created = new LatencyHistogram();
+      histogram = aggregatorLag.putIfAbsent(aggregator, created);
+      if (histogram == null) {
+        histogram = created;
+      }
+    }
+    histogram.record(lagMillis);
+  }
+
+  public LatencyHistogram getPostLatency() {
+    return postLatency;
+  }
+
+  public long getPostErrors() {
+    return postErrors.get();
+  }
+
+  public long getPostTimeouts() {
+    return postTimeouts.get();
+  }
+
+  public long getPostedValues() {
+    return postedValues.get();
+  }
+
+  public LatencyHistogram getGetLatency() {
+    return getLatency;
+  }
+
+  public long getGetErrors() {
+    return getErrors.get();
+  }
+
+  public LatencyHistogram getIngestLag() {
+    return ingestLag;
+  }
+
+  public long getIngestProbesMissed() {
+    return ingestProbesMissed.get();
+  }
+
+  public Map<String, LatencyHistogram> getAggregatorLag() {
+    return new TreeMap<String, LatencyHistogram>(aggregatorLag);
+  }
+
+  /**
+   * @return the recorded results, as the "results" section of a report
+   */
+  public Map<String, Object> toReport() {
+    long end = recording || recordingEnd == 0 ?
+      System.currentTimeMillis() : recordingEnd;
+    long durationMillis = Math.max(1, end - recordingStart);
+
+    Map<String, Object> post = new LinkedHashMap<String, Object>();
+    post.put("requests", postLatency.getCount());
+    post.put("errors", postErrors.get());
+    post.put("timeouts", postTimeouts.get());
+    post.put("metrics", postedMetrics.get());
+    post.put("values", postedValues.get());
+    post.put("valuesPerSecond", postedValues.get() * 1000 / durationMillis);
+    post.put("latencyMicros", postLatency.toMap());
+
+    Map<String, Object> get = new LinkedHashMap<String, Object>();
+    get.put("requests", getLatency.getCount());
+    get.put("errors", getErrors.get());
+    get.put("values", readValues.get());
+    get.put("requestsPerSecond", getLatency.getCount() * 1000 / durationMillis);
+    get.put("latencyMicros", getLatency.toMap());
+
+    Map<String, Object> ingest = new LinkedHashMap<String, Object>();
+    ingest.put("probes", ingestLag.getCount() + ingestProbesMissed.get());
+    ingest.put("missed", ingestProbesMissed.get());
+    ingest.put("lagMillis", ingestLag.toMap());
+
+    Map<String, Object> aggregators = new LinkedHashMap<String, Object>();
+    for (Map.Entry<String, LatencyHistogram> entry :
+        getAggregatorLag().entrySet()) {
+      aggregators.put(entry.getKey(), entry.getValue().toMap());
+    }
+
+    Map<String, Object> report = new LinkedHashMap<String, Object>();
+    report.put("startTime", recordingStart);
+    report.put("durationMillis", durationMillis);
+    report.put("post", post);
+    report.put("get", get);
+    report.put("ingestLag", ingest);
+    report.put("aggregatorLagMillis", aggregators);
+    return report;
+  }
+}
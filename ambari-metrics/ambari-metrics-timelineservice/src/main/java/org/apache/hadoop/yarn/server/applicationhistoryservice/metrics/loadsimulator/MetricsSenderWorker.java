@@ -22,6 +22,8 @@ import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
   .loadsimulator.data.AppMetrics;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
   .loadsimulator.data.HostMetricsGenerator;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.data.Metric;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
   .loadsimulator.net.MetricsSender;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
@@ -41,10 +43,23 @@ public class MetricsSenderWorker implements Callable<String> {
 
   MetricsSender sender;
   HostMetricsGenerator hmg;
+  LoadStatistics statistics;
 
   public MetricsSenderWorker(MetricsSender sender, HostMetricsGenerator metricsGenerator) {
+    this(sender, metricsGenerator, null);
+  }
+
+  /**
+   * @param sender           sender of the metrics
+   * @param metricsGenerator generator of the metrics
+   * @param statistics       records the latency of every push, may be null
+   */
+  public MetricsSenderWorker(MetricsSender sender,
+                             HostMetricsGenerator metricsGenerator,
+                             LoadStatistics statistics) {
     this.sender = sender;
     hmg = metricsGenerator;
+    this.statistics = statistics;
   }
 
   @Override
@@ -53,8 +68,19 @@ public class MetricsSenderWorker implements Callable<String> {
 
     try {
       String request = new Json().serialize(hostMetrics);
+      long start = System.nanoTime();
       String response = sender.pushMetrics(request);
 
+      if (statistics != null) {
+        int values = 0;
+        for (Metric metric : hostMetrics.getMetrics()) {
+          values += metric.getMetrics().size();
+        }
+        // senders answer with an empty response when the push failed
+        statistics.recordPost(System.nanoTime() - start,
+          hostMetrics.getMetrics().size(), values, response.length() > 0);
+      }
+
       return response;
     } catch (IOException e) {
       LOG.error("Error while pushing metrics: ", e);
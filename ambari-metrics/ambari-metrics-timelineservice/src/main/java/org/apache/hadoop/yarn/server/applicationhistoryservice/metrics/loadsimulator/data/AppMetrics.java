@@ -45,4 +45,8 @@ public class AppMetrics {
     metrics.add(metric);
   }
 
+  public Collection<Metric> getMetrics() {
+    return metrics;
+  }
+
 }
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * DashboardQuery is a query a dashboard widget sends to the metrics service:
+ * a few metrics of an application, either of one host or aggregated across
+ * the cluster.
+ */
+public final class DashboardQuery {
+
+  private final List<String> metricNames;
+  private final AppID appId;
+  private final List<String> hostNames;
+
+  /**
+   * @param metricNames names of the queried metrics
+   * @param appId       application of the metrics
+   * @param hostNames   hosts one of which is queried, empty to query the
+   *                    cluster aggregates
+   */
+  public DashboardQuery(List<String> metricNames, AppID appId,
+                        List<String> hostNames) {
+    this.metricNames = Collections.unmodifiableList(
+      new ArrayList<String>(metricNames));
+    this.appId = appId;
+    this.hostNames = Collections.unmodifiableList(
+      new ArrayList<String>(hostNames));
+  }
+
+  public List<String> getMetricNames() {
+    return metricNames;
+  }
+
+  public AppID getAppId() {
+    return appId;
+  }
+
+  public boolean isClusterQuery() {
+    return hostNames.isEmpty();
+  }
+
+  /**
+   * @return one of the hosts of the query picked at random, null for a
+   * cluster query
+   */
+  public String pickHostName(Random random) {
+    return hostNames.isEmpty() ? null :
+      hostNames.get(random.nextInt(hostNames.size()));
+  }
+
+  /**
+   * Creates the queries of the dashboards of some applications. The metrics
+   * defined for an application are split into widgets of metricsPerQuery
+   * metrics, each queried for a single host and for the cluster.
+   *
+   * @param apps            the applications
+   * @param hostNames       the hosts the applications run on
+   * @param metricsPerQuery the number of metrics of a widget
+   * @return the queries
+   */
+  public static List<DashboardQuery> createQueries(AppID[] apps,
+                                                   List<String> hostNames,
+                                                   int metricsPerQuery) {
+    List<DashboardQuery> queries = new ArrayList<DashboardQuery>();
+    List<String> noHosts = Collections.emptyList();
+
+    for (AppID app : apps) {
+      List<String> metricNames =
+        MetricsGeneratorConfigurer.readMetricNames(app, 1);
+      for (int from = 0; from < metricNames.size(); from += metricsPerQuery) {
+        List<String> widget = metricNames.subList(from,
+          Math.min(from + metricsPerQuery, metricNames.size()));
+        queries.add(new DashboardQuery(widget, app, hostNames));
+        queries.add(new DashboardQuery(widget, app, noHosts));
+      }
+    }
+
+    return queries;
+  }
+}
@@ -29,7 +29,10 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -59,10 +62,52 @@ public class MetricsGeneratorConfigurer {
     return new HostMetricsGenerator(id, timeStamps, readMetrics(id.getAppId()));
   }
 
+  /**
+   * Creates HostMetricsGenerator configured with metric names loaded from
+   * file, each name replicated metricFanOut times.
+   *
+   * @param id           ApplicationInstance descriptor, cannot be null
+   * @param timeStamps   configured TimeStampProvider, cannot be null
+   * @param metricFanOut how many metrics to generate for each metric name of
+   *                     the file; the copies are named ${name}.${copy}
+   * @return HostMetricsGenerator with given ApplicationInstance id
+   */
+  public static HostMetricsGenerator createMetricsForHost(
+    ApplicationInstance id,
+    TimeStampProvider timeStamps,
+    int metricFanOut) {
+    Map<String, RandomMetricsProvider> metrics =
+      new HashMap<String, RandomMetricsProvider>();
+    for (String metricName : readMetricNames(id.getAppId(), metricFanOut)) {
+      metrics.put(metricName, new RandomMetricsProvider(100, 200));
+    }
+    return new HostMetricsGenerator(id, timeStamps, metrics);
+  }
+
+  /**
+   * Reads the metric names defined for an application, each name replicated
+   * metricFanOut times.
+   *
+   * @param type         the application
+   * @param metricFanOut how many metrics to generate for each metric name of
+   *                     the file
+   * @return the metric names, in file order
+   */
+  public static List<String> readMetricNames(AppID type, int metricFanOut) {
+    List<String> names = new ArrayList<String>();
+    for (String metricName : readMetrics(type).keySet()) {
+      names.add(metricName);
+      for (int copy = 1; copy < metricFanOut; copy++) {
+        names.add(metricName + "." + copy);
+      }
+    }
+    return names;
+  }
+
   private static Map<String, RandomMetricsProvider> readMetrics(AppID type) {
     InputStream input = null;
     Map<String, RandomMetricsProvider> metrics =
-      new HashMap<String, RandomMetricsProvider>();
+      new LinkedHashMap<String, RandomMetricsProvider>();
     String fileName = "metrics_def/" + type.toString() + ".dat";
 
     try {
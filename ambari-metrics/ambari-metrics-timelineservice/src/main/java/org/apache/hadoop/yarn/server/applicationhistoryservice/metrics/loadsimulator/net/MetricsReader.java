@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.net;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricsMetadata;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * MetricsReader reads metrics back from the metric service, the way a
+ * dashboard does.
+ */
+public interface MetricsReader {
+  /**
+   * Read the values of metrics.
+   *
+   * @param metricNames names of the metrics, may contain '%' wildcards
+   * @param appId       application id of the metrics
+   * @param hostName    host of the metrics, null for the cluster aggregates
+   * @param startTime   start of the time range in milliseconds, null with
+   *                    endTime for the latest values
+   * @param endTime     end of the time range in milliseconds
+   * @return the metrics read
+   * @throws IOException if the metric service failed to answer the query
+   */
+  TimelineMetrics readMetrics(List<String> metricNames, String appId,
+                              String hostName, Long startTime, Long endTime)
+    throws IOException;
+
+  /**
+   * Read what the metric service knows about the metrics it received.
+   *
+   * @param metricName name of the metrics, may contain '%' wildcards
+   * @param appId      application id of the metrics
+   * @return the metadata of the matching metrics
+   * @throws IOException if the metric service failed to answer the query
+   */
+  TimelineMetricsMetadata readMetadata(String metricName, String appId)
+    throws IOException;
+}
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.net;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricsMetadata;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.util.Json;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.List;
+
+/**
+ * RestMetricsReader queries the REST endpoint of the metrics collector.
+ * Connection is always open and closed on every call.
+ */
+public class RestMetricsReader implements MetricsReader {
+  private final static Logger LOG = LoggerFactory.getLogger(RestMetricsReader.class);
+
+  private final static String COLLECTOR_URL = "http://%s:6188/ws/v1/timeline/metrics";
+  private final static ObjectMapper MAPPER = Json.createTimelineMapper();
+  private final String collectorServiceAddress;
+
+  /**
+   * Creates RestMetricsReader with endpoint configured as
+   * http://${metricsHost}:6188/ws/v1/timeline/metrics.
+   *
+   * @param metricsHost the hostname of the metrics collector
+   */
+  public RestMetricsReader(String metricsHost) {
+    collectorServiceAddress = String.format(COLLECTOR_URL, metricsHost);
+  }
+
+  @Override
+  public TimelineMetrics readMetrics(List<String> metricNames, String appId,
+                                     String hostName, Long startTime,
+                                     Long endTime) throws IOException {
+    StringBuilder names = new StringBuilder();
+    for (String metricName : metricNames) {
+      if (names.length() > 0) {
+        names.append(',');
+      }
+      names.append(metricName);
+    }
+
+    StringBuilder query = new StringBuilder(collectorServiceAddress);
+    query.append("?metricNames=").append(encode(names.toString()));
+    query.append("&appId=").append(encode(appId));
+    if (hostName != null) {
+      query.append("&hostname=").append(encode(hostName));
+    }
+    if (startTime != null && endTime != null) {
+      query.append("&startTime=").append(startTime);
+      query.append("&endTime=").append(endTime);
+    }
+
+    return MAPPER.readValue(get(query.toString()), TimelineMetrics.class);
+  }
+
+  @Override
+  public TimelineMetricsMetadata readMetadata(String metricName, String appId)
+    throws IOException {
+    String query = collectorServiceAddress + "/metadata?metricName=" +
+      encode(metricName) + "&appId=" + encode(appId);
+
+    return MAPPER.readValue(get(query), TimelineMetricsMetadata.class);
+  }
+
+  /**
+   * Relaxed to protected for testing.
+   */
+  protected UrlService getConnectedUrlService(String address) throws IOException {
+    return UrlService.newGetConnection(address);
+  }
+
+  private String get(String address) throws IOException {
+    UrlService svc = null;
+    try {
+      LOG.debug("GET {}", address);
+      svc = getConnectedUrlService(address);
+      return svc.receive();
+    } finally {
+      if (svc != null) {
+        svc.disconnect();
+      }
+    }
+  }
+
+  private static String encode(String value) throws IOException {
+    return URLEncoder.encode(value, "UTF-8");
+  }
+}
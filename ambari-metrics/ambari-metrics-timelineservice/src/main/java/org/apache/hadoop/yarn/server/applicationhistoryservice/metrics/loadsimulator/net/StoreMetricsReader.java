@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.net;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricsMetadata;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .timeline.TimelineMetricStore;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * StoreMetricsReader queries a metric store running in the same process,
+ * the way the REST endpoint of the collector does.
+ */
+public class StoreMetricsReader implements MetricsReader {
+  private final TimelineMetricStore store;
+
+  /**
+   * @param store the store the metrics are read from
+   */
+  public StoreMetricsReader(TimelineMetricStore store) {
+    this.store = store;
+  }
+
+  @Override
+  public TimelineMetrics readMetrics(List<String> metricNames, String appId,
+                                     String hostName, Long startTime,
+                                     Long endTime) throws IOException {
+    try {
+      return store.getTimelineMetrics(metricNames, hostName, appId, null,
+        startTime, endTime, null, null, false);
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public TimelineMetricsMetadata readMetadata(String metricName, String appId)
+    throws IOException {
+    return store.getTimelineMetricMetadata(metricName, appId, null, null);
+  }
+}
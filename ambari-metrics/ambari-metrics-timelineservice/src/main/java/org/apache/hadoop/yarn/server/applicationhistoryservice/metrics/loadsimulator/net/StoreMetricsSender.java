@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.net;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.api.records.timeline.TimelinePutResponse;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.util.Json;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .timeline.TimelineMetricStore;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * StoreMetricsSender hands the metrics directly to a metric store running
+ * in the same process, the way the REST endpoint of the collector does.
+ */
+public class StoreMetricsSender implements MetricsSender {
+  private final static Logger LOG = LoggerFactory.getLogger(StoreMetricsSender.class);
+
+  private final static ObjectMapper MAPPER = Json.createTimelineMapper();
+  private final TimelineMetricStore store;
+
+  /**
+   * @param store the store the metrics are put into
+   */
+  public StoreMetricsSender(TimelineMetricStore store) {
+    this.store = store;
+  }
+
+  /**
+   * Put metrics into the store.
+   *
+   * @param payload the metrics, as posted to the metrics service
+   * @return the put response, empty on exception
+   */
+  @Override
+  public String pushMetrics(String payload) {
+    try {
+      TimelineMetrics metrics = MAPPER.readValue(payload, TimelineMetrics.class);
+      TimelinePutResponse response = store.putMetrics(metrics);
+
+      return MAPPER.writeValueAsString(response);
+    } catch (Exception e) {
+      LOG.error("", e);
+    }
+
+    return "";
+  }
+}
@@ -30,10 +30,12 @@ public class UrlService {
   public static final int CONNECT_TIMEOUT = 20000;
   public static final int READ_TIMEOUT = 20000;
   private final String address;
+  private final String method;
   private HttpURLConnection conn;
 
-  private UrlService(String address) {
+  private UrlService(String address, String method) {
     this.address = address;
+    this.method = method;
   }
 
   /**
@@ -44,7 +46,22 @@ public class UrlService {
    * @throws IOException
    */
   public static UrlService newConnection(String address) throws IOException {
-    UrlService svc = new UrlService(address);
+    UrlService svc = new UrlService(address, "POST");
+    svc.connect();
+
+    return svc;
+  }
+
+  /**
+   * Returns a new UrlService connected to specified address, that reads the
+   * address with a GET.
+   *
+   * @param address
+   * @return
+   * @throws IOException
+   */
+  public static UrlService newGetConnection(String address) throws IOException {
+    UrlService svc = new UrlService(address, "GET");
     svc.connect();
 
     return svc;
@@ -58,9 +75,11 @@ public class UrlService {
     conn.setConnectTimeout(CONNECT_TIMEOUT);
     conn.setReadTimeout(READ_TIMEOUT);
     conn.setDoInput(true);
-    conn.setDoOutput(true);
-    conn.setRequestMethod("POST");
-    conn.setRequestProperty("Content-Type", "application/json");
+    conn.setDoOutput("POST".equals(method));
+    conn.setRequestMethod(method);
+    if (conn.getDoOutput()) {
+      conn.setRequestProperty("Content-Type", "application/json");
+    }
     conn.setRequestProperty("Accept", "*/*");
 
     return conn;
@@ -74,6 +93,13 @@ public class UrlService {
     return read();
   }
 
+  public String receive() throws IOException {
+    if (conn == null)
+      throw new IllegalStateException("Cannot use unconnected UrlService");
+
+    return read();
+  }
+
   private String read() throws IOException {
     StringBuilder response = new StringBuilder();
 
@@ -22,6 +22,7 @@ import org.codehaus.jackson.annotate.JsonAutoDetect;
 import org.codehaus.jackson.annotate.JsonMethod;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.SerializationConfig;
+import org.codehaus.jackson.xc.JaxbAnnotationIntrospector;
 
 import java.io.IOException;
 
@@ -52,6 +53,16 @@ public class Json {
     }
   }
 
+  /**
+   * Creates an ObjectMapper that maps the timeline metrics classes through
+   * their JAXB annotations, like the metrics service does.
+   */
+  public static ObjectMapper createTimelineMapper() {
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.setAnnotationIntrospector(new JaxbAnnotationIntrospector());
+    return mapper;
+  }
+
   public String serialize(Object o) throws IOException {
     return myObjectMapper.writeValueAsString(o);
   }
@@ -22,25 +22,43 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricsMetadata;
 import org.apache.hadoop.service.AbstractService;
 import org.apache.hadoop.yarn.api.records.timeline.TimelinePutResponse;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.AbstractTimelineAggregator;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.AggregatorSelfMetrics;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
-import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAggregator;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAggregatorFactory;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricClusterAggregator;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricClusterAggregatorHourly;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_SELF_METRICS_ENABLED;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_WORKER_THREADS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.INGEST_QUEUE_ENABLED;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METADATA_ENABLED;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.READ_CACHE_ENABLED;
 
 public class HBaseTimelineMetricStore extends AbstractService
     implements TimelineMetricStore {
@@ -48,6 +66,11 @@ public class HBaseTimelineMetricStore extends AbstractService
   static final Log LOG = LogFactory.getLog(HBaseTimelineMetricStore.class);
   private final TimelineMetricConfiguration configuration;
   private PhoenixHBaseAccessor hBaseAccessor;
+  private TimelineMetricIngestQueue ingestQueue;
+  private ExecutorService aggregatorWorkerPool;
+  private TimelineMetricReadCache readCache;
+  private ScheduledExecutorService readCacheReporter;
+  private TimelineMetricMetadataManager metadataManager;
 
   /**
    * Construct the service.
@@ -69,43 +92,122 @@ public class HBaseTimelineMetricStore extends AbstractService
     hBaseAccessor = new PhoenixHBaseAccessor(hbaseConf, metricsConf);
     hBaseAccessor.initMetricSchema();
 
-    // Start the cluster aggregator
-    TimelineMetricClusterAggregator minuteClusterAggregator =
-      new TimelineMetricClusterAggregator(hBaseAccessor, metricsConf);
-    if (!minuteClusterAggregator.isDisabled()) {
-      Thread aggregatorThread = new Thread(minuteClusterAggregator);
-      aggregatorThread.start();
+    // Registry of the written metrics
+    if (metricsConf.getBoolean(METADATA_ENABLED, true)) {
+      metadataManager = new TimelineMetricMetadataManager(metricsConf);
+      metadataManager.start();
+      hBaseAccessor.setMetadataManager(metadataManager);
     }
 
-    // Start the cluster aggregator hourly
-    TimelineMetricClusterAggregatorHourly hourlyClusterAggregator =
-      new TimelineMetricClusterAggregatorHourly(hBaseAccessor, metricsConf);
-    if (!hourlyClusterAggregator.isDisabled()) {
-      Thread aggregatorThread = new Thread(hourlyClusterAggregator);
-      aggregatorThread.start();
+    // Start the writers of posted metrics
+    if (metricsConf.getBoolean(INGEST_QUEUE_ENABLED, true)) {
+      ingestQueue = new TimelineMetricIngestQueue(hBaseAccessor, metricsConf);
+      ingestQueue.start();
     }
 
-    // Start the 5 minute aggregator
-    TimelineMetricAggregator minuteHostAggregator =
-      TimelineMetricAggregatorFactory.createTimelineMetricAggregatorMinute
-        (hBaseAccessor, metricsConf);
-    if (!minuteHostAggregator.isDisabled()) {
-      Thread minuteAggregatorThread = new Thread(minuteHostAggregator);
-      minuteAggregatorThread.start();
+    // Pool shared by the aggregators to aggregate metric name partitions
+    aggregatorWorkerPool = Executors.newFixedThreadPool(
+      Math.max(1, metricsConf.getInt(AGGREGATOR_WORKER_THREADS, 4)),
+      new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r,
+            "timeline-metrics-aggregator-" + count.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    AggregatorSelfMetrics selfMetrics = null;
+    if (metricsConf.getBoolean(AGGREGATOR_SELF_METRICS_ENABLED, true)) {
+      selfMetrics = new AggregatorSelfMetrics(hBaseAccessor, getHostName());
+    }
+
+    // Cache of recently read series
+    if (metricsConf.getBoolean(READ_CACHE_ENABLED, true)) {
+      readCache = new TimelineMetricReadCache(metricsConf);
+      if (selfMetrics != null) {
+        startReadCacheReporter(selfMetrics);
+      }
     }
 
+    // Start the cluster aggregator
+    startAggregator(new TimelineMetricClusterAggregator(hBaseAccessor,
+      metricsConf), selfMetrics);
+
+    // Start the cluster aggregator hourly
+    startAggregator(new TimelineMetricClusterAggregatorHourly(hBaseAccessor,
+      metricsConf), selfMetrics);
+
+    // Start the 5 minute aggregator
+    startAggregator(TimelineMetricAggregatorFactory
+      .createTimelineMetricAggregatorMinute(hBaseAccessor, metricsConf),
+      selfMetrics);
+
     // Start hourly host aggregator
-    TimelineMetricAggregator hourlyHostAggregator =
-      TimelineMetricAggregatorFactory.createTimelineMetricAggregatorHourly
-        (hBaseAccessor, metricsConf);
-    if (!hourlyHostAggregator.isDisabled()) {
-      Thread aggregatorHourlyThread = new Thread(hourlyHostAggregator);
-      aggregatorHourlyThread.start();
+    startAggregator(TimelineMetricAggregatorFactory
+      .createTimelineMetricAggregatorHourly(hBaseAccessor, metricsConf),
+      selfMetrics);
+  }
+
+  private void startAggregator(AbstractTimelineAggregator aggregator,
+                               AggregatorSelfMetrics selfMetrics) {
+    if (!aggregator.isDisabled()) {
+      aggregator.setWorkerPool(aggregatorWorkerPool);
+      aggregator.setSelfMetrics(selfMetrics);
+      Thread aggregatorThread = new Thread(aggregator);
+      aggregatorThread.start();
+    }
+  }
+
+  private void startReadCacheReporter(final AggregatorSelfMetrics selfMetrics) {
+    readCacheReporter = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "timeline-metrics-read-cache-reporter");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    readCacheReporter.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        Map<String, Double> values = new LinkedHashMap<String, Double>();
+        values.put("readcache.hits", (double) readCache.getHitCount());
+        values.put("readcache.partialhits",
+          (double) readCache.getPartialHitCount());
+        values.put("readcache.misses", (double) readCache.getMissCount());
+        values.put("readcache.points", (double) readCache.getCachedPoints());
+        selfMetrics.publish(System.currentTimeMillis(), values);
+      }
+    }, 1, 1, TimeUnit.MINUTES);
+  }
+
+  private static String getHostName() {
+    try {
+      return InetAddress.getLocalHost().getCanonicalHostName();
+    } catch (UnknownHostException e) {
+      LOG.warn("Unable to determine the host name of the collector.", e);
+      return "localhost";
     }
   }
 
   @Override
   protected void serviceStop() throws Exception {
+    if (ingestQueue != null) {
+      ingestQueue.stop(TimeUnit.SECONDS.toMillis(30));
+    }
+    if (metadataManager != null) {
+      metadataManager.stop();
+    }
+    if (aggregatorWorkerPool != null) {
+      aggregatorWorkerPool.shutdownNow();
+    }
+    if (readCacheReporter != null) {
+      readCacheReporter.shutdownNow();
+    }
     super.serviceStop();
   }
 
@@ -125,55 +227,97 @@ public class HBaseTimelineMetricStore extends AbstractService
     if (limit != null && limit > PhoenixHBaseAccessor.RESULTSET_LIMIT){
       throw new IllegalArgumentException("Limit too big");
     }
-    Map<String, List<Function>> metricFunctions =
-      parseMetricNamesToAggregationFunctions(metricNames);
+    Map<String, List<Function>> metricFunctions = resolvePatterns(
+      parseMetricNamesToAggregationFunctions(metricNames), hostname,
+      applicationId, instanceId, startTime, endTime);
+    if (metricFunctions.isEmpty()) {
+      return new TimelineMetrics();
+    }
 
     Condition condition = new DefaultCondition(
       new ArrayList<String>(metricFunctions.keySet()),
       hostname, applicationId, instanceId, startTime, endTime,
       precision, limit, groupedByHosts);
 
-    if (hostname == null) {
-      TimelineMetrics metrics = hBaseAccessor.getAggregateMetricRecords
-        (condition,  metricFunctions);
+    if (readCache != null && limit == null && startTime != null) {
+      // the precision is part of the cache key, resolve it the way the
+      // query would
+      if (condition.getPrecision() == null) {
+        condition.setPrecision(hostname == null ?
+          PhoenixTransactSQL.getDefaultAggregatePrecision(startTime, endTime) :
+          PhoenixTransactSQL.getDefaultMetricPrecision(startTime, endTime));
+      }
+      if (TimelineMetricReadCache.isCacheable(condition)) {
+        return postProcessMetrics(readCache.getTimelineMetrics(condition,
+          metricFunctions, new TimelineMetricReadCache.MetricsReader() {
+            @Override
+            public TimelineMetrics read(Condition readCondition,
+                Map<String, List<Function>> readFunctions)
+              throws SQLException, IOException {
+              return readMetricRecords(readCondition, readFunctions);
+            }
+          }));
+      }
+    }
 
-      return postProcessMetrics(metrics);
+    return postProcessMetrics(readMetricRecords(condition, metricFunctions));
+  }
+
+  /**
+   * Resolve the wildcard metric names of a query with the metric registry.
+   * A cluster query which resolves to nothing keeps its wildcards, since the
+   * cluster series are also written by the aggregators.
+   */
+  private Map<String, List<Function>> resolvePatterns(
+      Map<String, List<Function>> metricFunctions, String hostname,
+      String applicationId, String instanceId, Long startTime, Long endTime) {
+    if (metadataManager == null) {
+      return metricFunctions;
     }
+    Map<String, List<Function>> resolved = metadataManager.resolvePatterns(
+      new DefaultCondition(new ArrayList<String>(metricFunctions.keySet()),
+        hostname, applicationId, instanceId, startTime, endTime, null, null,
+        false), metricFunctions);
+    if (resolved.isEmpty() && hostname == null) {
+      return metricFunctions;
+    }
+    return resolved;
+  }
 
-    return postProcessMetrics(
-      hBaseAccessor.getMetricRecords(condition, metricFunctions));
+  private TimelineMetrics readMetricRecords(Condition condition,
+      Map<String, List<Function>> metricFunctions)
+    throws SQLException, IOException {
+    if (condition.getHostname() == null) {
+      return hBaseAccessor.getAggregateMetricRecords(condition, metricFunctions);
+    }
+    return hBaseAccessor.getMetricRecords(condition, metricFunctions);
   }
 
-  private TimelineMetrics postProcessMetrics(TimelineMetrics metrics) {
+  /**
+   * Apply the post processing functions of the read metrics, i.e. turn the
+   * values of {@code ._rate} metrics into rates.
+   */
+  public static TimelineMetrics postProcessMetrics(TimelineMetrics metrics) {
     List<TimelineMetric> metricsList = metrics.getMetrics();
 
     for (TimelineMetric metric: metricsList){
       String name = metric.getMetricName();
       if (name.contains("._rate")){
-        updateValueAsRate(metric.getMetricValues());
+        updateValueAsRate(metric.getMetricSeries());
       }
     }
 
     return metrics;
   }
 
-  private Map<Long, Double> updateValueAsRate(Map<Long, Double> metricValues) {
-    Long prevTime = null;
-    long step;
-
-    for (Map.Entry<Long, Double> timeValueEntry : metricValues.entrySet()) {
-      Long currTime = timeValueEntry.getKey();
-      Double currVal = timeValueEntry.getValue();
-
-      if (prevTime != null) {
-        step = currTime - prevTime;
-        Double rate = currVal / step;
-        timeValueEntry.setValue(rate);
+  private static TimelineMetricSeries updateValueAsRate(TimelineMetricSeries metricValues) {
+    for (int i = metricValues.size() - 1; i >= 0; i--) {
+      if (i > 0) {
+        long step = metricValues.getTimestamp(i) - metricValues.getTimestamp(i - 1);
+        metricValues.setValue(i, metricValues.getValue(i) / step);
       } else {
-        timeValueEntry.setValue(0.0);
+        metricValues.setValue(i, 0.0);
       }
-
-      prevTime = currTime;
     }
 
     return metricValues;
@@ -232,8 +376,12 @@ public class HBaseTimelineMetricStore extends AbstractService
       throw new IllegalArgumentException("Limit too big");
     }
 
-    Map<String, List<Function>> metricFunctions =
-      parseMetricNamesToAggregationFunctions(Collections.singletonList(metricName));
+    Map<String, List<Function>> metricFunctions = resolvePatterns(
+      parseMetricNamesToAggregationFunctions(Collections.singletonList(metricName)),
+      hostname, applicationId, instanceId, startTime, endTime);
+    if (metricFunctions.isEmpty()) {
+      return new TimelineMetric();
+    }
 
     Condition condition = new DefaultCondition(
       new ArrayList<String>(metricFunctions.keySet()), hostname, applicationId,
@@ -253,9 +401,9 @@ public class HBaseTimelineMetricStore extends AbstractService
       metric.setHostName(metricList.get(0).getHostName());
       // Assumption that metrics are ordered by start time
       metric.setStartTime(metricList.get(0).getStartTime());
-      Map<Long, Double> metricRecords = new TreeMap<Long, Double>();
+      TimelineMetricSeries metricRecords = new TimelineMetricSeries();
       for (TimelineMetric timelineMetric : metricList) {
-        metricRecords.putAll(timelineMetric.getMetricValues());
+        metricRecords.putAll(timelineMetric.getMetricSeries());
       }
       metric.setMetricValues(metricRecords);
     }
@@ -271,8 +419,25 @@ public class HBaseTimelineMetricStore extends AbstractService
     // Error indicated by the Sql exception
     TimelinePutResponse response = new TimelinePutResponse();
 
-    hBaseAccessor.insertMetricRecords(metrics);
+    if (ingestQueue != null) {
+      ingestQueue.put(metrics);
+    } else {
+      hBaseAccessor.insertMetricRecords(metrics);
+    }
+    if (readCache != null) {
+      readCache.putMetrics(metrics);
+    }
 
     return response;
   }
+
+  @Override
+  public TimelineMetricsMetadata getTimelineMetricMetadata(String metricName,
+      String applicationId, String instanceId, String hostname) {
+    if (metadataManager == null) {
+      return new TimelineMetricsMetadata();
+    }
+    return metadataManager.getMetadata(metricName, applicationId, instanceId,
+      hostname);
+  }
 }
@@ -0,0 +1,238 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+
+/**
+ * Encodes the values of a metric record for the METRICS column.
+ * <p/>
+ * The column is a VARCHAR which has always held the values as a JSON
+ * object. The binary encoding writes the timestamps as zig-zag varint
+ * deltas and each value as the varint of its bits xor-ed with the bits of
+ * the previous value, which is a few bytes for slowly changing metrics.
+ * The bytes are stored Base64 encoded, so that the column type doesn't
+ * change. A JSON object always starts with '{', which is not a Base64
+ * character, so both encodings can be read back from the same table.
+ * <p/>
+ * Both encodings are read and written straight from and to the arrays of a
+ * {@link TimelineMetricSeries}, without boxing the samples.
+ */
+public class MetricValuesCodec {
+
+  /**
+   * Version byte written at the start of the binary encoding.
+   */
+  private static final int BINARY_VERSION = 1;
+
+  private static final JsonFactory jsonFactory = new JsonFactory();
+
+  private MetricValuesCodec() {
+  }
+
+  /**
+   * Encode metric values.
+   *
+   * @param metricValues  the values keyed by timestamp
+   * @param binary        true for the binary encoding; false for JSON
+   *
+   * @return the encoded values
+   */
+  public static String encode(Map<Long, Double> metricValues, boolean binary)
+    throws IOException {
+    TimelineMetricSeries series = metricValues instanceof TimelineMetricSeries ?
+      (TimelineMetricSeries) metricValues : new TimelineMetricSeries(metricValues);
+
+    if (!binary) {
+      return encodeJson(series);
+    }
+
+    ByteArrayOutputStream out =
+      new ByteArrayOutputStream(4 + series.size() * 6);
+    out.write(BINARY_VERSION);
+    writeVarLong(out, series.size());
+
+    long previousTime = 0L;
+    long previousBits = 0L;
+    for (int i = 0; i < series.size(); i++) {
+      long time = series.getTimestamp(i);
+      long bits = Double.doubleToRawLongBits(series.getValue(i));
+
+      writeVarLong(out, zigZag(time - previousTime));
+      // integral values differ in the high bits of the mantissa, reverse
+      // them so that the varint stays short
+      writeVarLong(out, Long.reverse(bits ^ previousBits));
+
+      previousTime = time;
+      previousBits = bits;
+    }
+    return DatatypeConverter.printBase64Binary(out.toByteArray());
+  }
+
+  /**
+   * Decode metric values written by {@link #encode}.
+   *
+   * @param encoded  the encoded values in either encoding
+   *
+   * @return the values keyed by timestamp
+   *
+   * @throws IOException if the values can't be decoded
+   */
+  public static TimelineMetricSeries decode(String encoded) throws IOException {
+    if (!isBinary(encoded)) {
+      return decodeJson(encoded);
+    }
+
+    byte[] bytes;
+    try {
+      bytes = DatatypeConverter.parseBase64Binary(encoded);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Invalid metric values: " + encoded, e);
+    }
+    if (bytes.length == 0 || bytes[0] != BINARY_VERSION) {
+      throw new IOException("Unsupported metric values encoding: " + encoded);
+    }
+
+    int[] position = new int[] {1};
+    int count = (int) readVarLong(bytes, position);
+
+    TimelineMetricSeries.Builder builder = new TimelineMetricSeries.Builder(count);
+    long time = 0L;
+    long bits = 0L;
+    for (int i = 0; i < count; i++) {
+      time += unZigZag(readVarLong(bytes, position));
+      bits ^= Long.reverse(readVarLong(bytes, position));
+      builder.add(time, Double.longBitsToDouble(bits));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Determine whether the given value is binary encoded.
+   *
+   * @param encoded  the encoded values
+   *
+   * @return true if the values are binary encoded; false if they are JSON
+   */
+  public static boolean isBinary(String encoded) {
+    return encoded != null && !encoded.isEmpty() && encoded.charAt(0) != '{';
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private static String encodeJson(TimelineMetricSeries series)
+    throws IOException {
+    StringWriter writer = new StringWriter(16 + series.size() * 24);
+    JsonGenerator generator = jsonFactory.createJsonGenerator(writer);
+    generator.writeStartObject();
+    for (int i = 0; i < series.size(); i++) {
+      generator.writeFieldName(Long.toString(series.getTimestamp(i)));
+      double value = series.getValue(i);
+      if (TimelineMetricSeries.isMissing(value)) {
+        generator.writeNull();
+      } else if (Double.isNaN(value)) {
+        // JSON has no NaN; read back by Double.parseDouble
+        generator.writeString("NaN");
+      } else {
+        generator.writeNumber(value);
+      }
+    }
+    generator.writeEndObject();
+    generator.close();
+    return writer.toString();
+  }
+
+  private static TimelineMetricSeries decodeJson(String json)
+    throws IOException {
+    JsonParser parser = jsonFactory.createJsonParser(json);
+    try {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Invalid metric values: " + json);
+      }
+      TimelineMetricSeries.Builder builder = new TimelineMetricSeries.Builder();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        long time;
+        try {
+          time = Long.parseLong(parser.getCurrentName());
+        } catch (NumberFormatException e) {
+          throw new IOException("Invalid metric timestamp: " +
+            parser.getCurrentName(), e);
+        }
+        JsonToken token = parser.nextToken();
+        double value;
+        if (token == JsonToken.VALUE_NUMBER_FLOAT ||
+            token == JsonToken.VALUE_NUMBER_INT) {
+          value = parser.getDoubleValue();
+        } else if (token == JsonToken.VALUE_STRING) {
+          value = Double.parseDouble(parser.getText());
+        } else if (token == JsonToken.VALUE_NULL) {
+          value = TimelineMetricSeries.MISSING;
+        } else {
+          throw new IOException("Invalid metric value: " + parser.getText());
+        }
+        builder.add(time, value);
+      }
+      return builder.build();
+    } finally {
+      parser.close();
+    }
+  }
+
+  private static long zigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static void writeVarLong(ByteArrayOutputStream out, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  private static long readVarLong(byte[] bytes, int[] position)
+    throws IOException {
+    long value = 0L;
+    for (int shift = 0; shift < 64; shift += 7) {
+      if (position[0] >= bytes.length) {
+        throw new IOException("Truncated metric values.");
+      }
+      byte b = bytes[position[0]++];
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed metric values.");
+  }
+}
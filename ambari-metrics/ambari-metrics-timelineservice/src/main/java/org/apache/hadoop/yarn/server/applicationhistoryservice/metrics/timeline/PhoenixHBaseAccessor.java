@@ -23,6 +23,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.util.RetryCounter;
 import org.apache.hadoop.hbase.util.RetryCounterFactory;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.AggregatorUtils;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
@@ -35,23 +36,18 @@ import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultPhoenixDataSource;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.SplitByMetricNamesCondition;
-import org.apache.hadoop.yarn.util.timeline.TimelineUtils;
 import org.apache.phoenix.exception.SQLExceptionCode;
-import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.type.TypeReference;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.BINARY_ENCODING_ENABLED;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_HOUR_TABLE_TTL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_MINUTE_TABLE_TTL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.GLOBAL_MAX_RETRIES;
@@ -98,11 +94,9 @@ public class PhoenixHBaseAccessor {
   private static final int METRICS_PER_MINUTE = 4;
   public static int RESULTSET_LIMIT = (int)TimeUnit.DAYS.toMinutes(1) *
     METRICS_PER_MINUTE;
-  private static ObjectMapper mapper = new ObjectMapper();
-
-  private static TypeReference<Map<Long, Double>> metricValuesTypeRef =
-    new TypeReference<Map<Long, Double>>() {};
   private final ConnectionProvider dataSource;
+  private final boolean binaryEncoding;
+  private volatile TimelineMetricMetadataManager metadataManager;
 
   public PhoenixHBaseAccessor(Configuration hbaseConf,
                               Configuration metricsConf){
@@ -122,12 +116,20 @@ public class PhoenixHBaseAccessor {
       throw new IllegalStateException(e);
     }
     this.dataSource = dataSource;
+    this.binaryEncoding = metricsConf.getBoolean(BINARY_ENCODING_ENABLED, false);
     this.retryCounterFactory = new RetryCounterFactory(
       metricsConf.getInt(GLOBAL_MAX_RETRIES, 10),
       (int) SECONDS.toMillis(metricsConf.getInt(GLOBAL_RETRY_INTERVAL, 5)));
   }
 
 
+  /**
+   * Set the registry which the written metric records are added to.
+   */
+  public void setMetadataManager(TimelineMetricMetadataManager metadataManager) {
+    this.metadataManager = metadataManager;
+  }
+
   private Connection getConnectionRetryingOnException()
     throws SQLException, InterruptedException {
     RetryCounter retryCounter = retryCounterFactory.create();
@@ -201,26 +203,31 @@ public class PhoenixHBaseAccessor {
 
     metric.setMetricName(rs.getString("METRIC_NAME") + f.getSuffix());
 
-    Map<Long, Double> valueMap = new TreeMap<Long, Double>();
-    valueMap.put(rs.getLong("SERVER_TIME"), value);
-    metric.setMetricValues(valueMap);
+    TimelineMetricSeries valueSeries = new TimelineMetricSeries(1);
+    valueSeries.append(rs.getLong("SERVER_TIME"), value);
+    metric.setMetricValues(valueSeries);
     return metric;
   }
 
-  private static Map<Long, Double> readLastMetricValueFromJSON(String json)
+  private static TimelineMetricSeries readLastMetricValueFromJSON(String json)
     throws IOException {
-    Map<Long, Double> values = readMetricFromJSON(json);
-    Long lastTimeStamp = Collections.max(values.keySet());
+    TimelineMetricSeries values = readMetricValues(json);
+    int last = values.size() - 1;
 
-    HashMap<Long, Double> valueMap = new HashMap<Long, Double>(1);
-    valueMap.put(lastTimeStamp, values.get(lastTimeStamp));
-    return valueMap;
+    TimelineMetricSeries lastValue = new TimelineMetricSeries(1);
+    if (last >= 0) {
+      lastValue.append(values.getTimestamp(last), values.getValue(last));
+    }
+    return lastValue;
   }
 
-  @SuppressWarnings("unchecked")
-  public static Map<Long, Double>  readMetricFromJSON(String json)
+  /**
+   * Read the values of a METRICS column in either the JSON or the binary
+   * encoding.
+   */
+  public static TimelineMetricSeries readMetricValues(String encoded)
     throws IOException {
-    return (Map<Long, Double>) mapper.readValue(json, metricValuesTypeRef);
+    return MetricValuesCodec.decode(encoded);
   }
 
   public static TimelineMetric getTimelineMetricKeyFromResultSet(ResultSet rs)
@@ -345,16 +352,21 @@ public class PhoenixHBaseAccessor {
       LOG.debug("Empty metrics insert request.");
       return;
     }
+    if (metadataManager != null) {
+      metadataManager.update(metrics);
+    }
 
     Connection conn = getConnection();
     PreparedStatement metricRecordStmt = null;
     long currentTime = System.currentTimeMillis();
+    int rowCount = 0;
 
     try {
       metricRecordStmt = conn.prepareStatement(String.format(
         UPSERT_METRICS_SQL, METRICS_RECORD_TABLE_NAME));
 
       for (TimelineMetric metric : timelineMetrics) {
+        rowCount++;
         metricRecordStmt.clearParameters();
 
         if (LOG.isTraceEnabled()) {
@@ -363,7 +375,7 @@ public class PhoenixHBaseAccessor {
             "values: " + metric.getMetricValues());
         }
         double[] aggregates =  AggregatorUtils.calculateAggregates(
-          metric.getMetricValues());
+          metric.getMetricSeries());
 
         metricRecordStmt.setString(1, metric.getMetricName());
         metricRecordStmt.setString(2, metric.getHostName());
@@ -376,15 +388,19 @@ public class PhoenixHBaseAccessor {
         metricRecordStmt.setDouble(9, aggregates[1]);
         metricRecordStmt.setDouble(10, aggregates[2]);
         metricRecordStmt.setLong(11, (long)aggregates[3]);
-        String json =
-          TimelineUtils.dumpTimelineRecordtoJSON(metric.getMetricValues());
-        metricRecordStmt.setString(12, json);
+        metricRecordStmt.setString(12,
+          MetricValuesCodec.encode(metric.getMetricSeries(), binaryEncoding));
 
         try {
           metricRecordStmt.executeUpdate();
         } catch (SQLException sql) {
           LOG.error(sql);
         }
+
+        if (rowCount >= PHOENIX_MAX_MUTATION_STATE_SIZE - 1) {
+          conn.commit();
+          rowCount = 0;
+        }
       }
 
       conn.commit();
@@ -677,9 +693,9 @@ public class PhoenixHBaseAccessor {
 
     metric.setMetricName(rs.getString("METRIC_NAME") + f.getSuffix());
 
-    Map<Long, Double> valueMap = new TreeMap<Long, Double>();
-    valueMap.put(rs.getLong("SERVER_TIME"), value);
-    metric.setMetricValues(valueMap);
+    TimelineMetricSeries valueSeries = new TimelineMetricSeries(1);
+    valueSeries.append(rs.getLong("SERVER_TIME"), value);
+    metric.setMetricValues(valueSeries);
 
     return metric;
   }
@@ -713,9 +729,9 @@ public class PhoenixHBaseAccessor {
 
     metric.setMetricName(rs.getString("METRIC_NAME") + f.getSuffix());
 
-    Map<Long, Double> valueMap = new TreeMap<Long, Double>();
-    valueMap.put(rs.getLong("SERVER_TIME"), value);
-    metric.setMetricValues(valueMap);
+    TimelineMetricSeries valueSeries = new TimelineMetricSeries(1);
+    valueSeries.append(rs.getLong("SERVER_TIME"), value);
+    metric.setMetricValues(valueSeries);
 
     return metric;
   }
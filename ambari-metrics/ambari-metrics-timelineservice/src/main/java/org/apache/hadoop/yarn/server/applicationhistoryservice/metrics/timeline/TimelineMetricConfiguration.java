@@ -132,8 +132,77 @@ public class TimelineMetricConfiguration {
   public static final String CLUSTER_AGGREGATOR_APP_IDS =
     "timeline.metrics.service.cluster.aggregator.appIds";
 
+  public static final String INGEST_QUEUE_ENABLED =
+    "timeline.metrics.service.ingest.queue.enabled";
+
+  public static final String INGEST_QUEUE_SIZE =
+    "timeline.metrics.service.ingest.queue.size";
+
+  public static final String INGEST_WRITER_THREADS =
+    "timeline.metrics.service.ingest.writer.threads";
+
+  public static final String INGEST_BATCH_SIZE =
+    "timeline.metrics.service.ingest.batch.size";
+
+  public static final String INGEST_BATCH_INTERVAL =
+    "timeline.metrics.service.ingest.batch.interval";
+
+  public static final String INGEST_WRITE_RETRIES =
+    "timeline.metrics.service.ingest.write.retries";
+
+  public static final String BINARY_ENCODING_ENABLED =
+    "timeline.metrics.service.binary.encoding.enabled";
+
+  public static final String AGGREGATOR_PARTITION_SPLITS =
+    "timeline.metrics.service.aggregator.partition.splits";
+
+  public static final String AGGREGATOR_WORKER_THREADS =
+    "timeline.metrics.service.aggregator.worker.threads";
+
+  public static final String AGGREGATOR_SELF_METRICS_ENABLED =
+    "timeline.metrics.service.aggregator.selfmetrics.enabled";
+
+  public static final String READ_CACHE_ENABLED =
+    "timeline.metrics.service.read.cache.enabled";
+
+  public static final String READ_CACHE_MAX_POINTS =
+    "timeline.metrics.service.read.cache.max.points";
+
+  public static final String READ_CACHE_SETTLE_DELAY =
+    "timeline.metrics.service.read.cache.settle.delay";
+
+  public static final String READ_CACHE_TTL =
+    "timeline.metrics.service.read.cache.ttl";
+
+  public static final String STORE_TYPE =
+    "timeline.metrics.service.store.type";
+
+  public static final String LOCAL_STORE_DIR =
+    "timeline.metrics.service.local.store.dir";
+
+  public static final String LOCAL_STORE_FLUSH_INTERVAL =
+    "timeline.metrics.service.local.store.flush.interval";
+
+  public static final String LOCAL_STORE_PARTITIONS =
+    "timeline.metrics.service.local.store.partitions";
+
+  public static final String METADATA_ENABLED =
+    "timeline.metrics.service.metadata.enabled";
+
+  public static final String METADATA_PERSIST_INTERVAL =
+    "timeline.metrics.service.metadata.persist.interval";
+
+  public static final String METADATA_TTL =
+    "timeline.metrics.service.metadata.ttl";
+
+  public static final String HBASE_STORE_TYPE = "hbase";
+
+  public static final String LOCAL_STORE_TYPE = "local";
+
   public static final String HOST_APP_ID = "HOST";
 
+  public static final String COLLECTOR_APP_ID = "ams-collector";
+
   private Configuration hbaseConf;
   private Configuration metricsConf;
   private volatile boolean isInitialized = false;
@@ -148,20 +217,24 @@ public class TimelineMetricConfiguration {
     LOG.info("Found hbase site configuration: " + hbaseResUrl);
     LOG.info("Found metric service configuration: " + amsResUrl);
 
-    if (hbaseResUrl == null) {
-      throw new IllegalStateException("Unable to initialize the metrics " +
-        "subsystem. No hbase-site present in the classpath.");
-    }
-
     if (amsResUrl == null) {
       throw new IllegalStateException("Unable to initialize the metrics " +
         "subsystem. No ams-site present in the classpath.");
     }
 
-    hbaseConf = new Configuration(true);
-    hbaseConf.addResource(hbaseResUrl.toURI().toURL());
     metricsConf = new Configuration(true);
     metricsConf.addResource(amsResUrl.toURI().toURL());
+
+    // the local store doesn't need HBase
+    if (hbaseResUrl == null && !isLocalStore(metricsConf)) {
+      throw new IllegalStateException("Unable to initialize the metrics " +
+        "subsystem. No hbase-site present in the classpath.");
+    }
+
+    hbaseConf = new Configuration(true);
+    if (hbaseResUrl != null) {
+      hbaseConf.addResource(hbaseResUrl.toURI().toURL());
+    }
     isInitialized = true;
   }
 
@@ -179,6 +252,19 @@ public class TimelineMetricConfiguration {
     return metricsConf;
   }
 
+  /**
+   * Determine whether metrics are kept in the embedded local store rather
+   * than in HBase.
+   */
+  public boolean isLocalStore() throws URISyntaxException, MalformedURLException {
+    return isLocalStore(getMetricsConf());
+  }
+
+  private static boolean isLocalStore(Configuration metricsConf) {
+    return LOCAL_STORE_TYPE.equalsIgnoreCase(
+      metricsConf.getTrimmed(STORE_TYPE, HBASE_STORE_TYPE));
+  }
+
   public String getWebappAddress() {
     String defaultHttpAddress = "0.0.0.0:8188";
     if (metricsConf != null) {
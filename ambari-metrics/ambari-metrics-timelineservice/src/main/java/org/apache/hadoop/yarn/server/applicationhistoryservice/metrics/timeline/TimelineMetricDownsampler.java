@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+
+/**
+ * Reduces the number of values of metric series to the number of points a
+ * caller can draw, so that long time ranges aren't sent at full precision.
+ * <p/>
+ * The time range of a series is divided into buckets of equal length. The
+ * values in a bucket are replaced by their average at the time of the
+ * first value in the bucket. Missing values are skipped.
+ */
+public class TimelineMetricDownsampler {
+
+  private TimelineMetricDownsampler() {
+  }
+
+  /**
+   * Downsample the series of all metrics which have more values than
+   * requested.
+   *
+   * @param metrics    the metrics to downsample in place
+   * @param maxPoints  the maximum number of values per series
+   */
+  public static void downsample(TimelineMetrics metrics, int maxPoints) {
+    for (TimelineMetric metric : metrics.getMetrics()) {
+      if (metric.getMetricSeries().size() > maxPoints) {
+        metric.setMetricValues(downsample(metric.getMetricSeries(), maxPoints));
+      }
+    }
+  }
+
+  /**
+   * Downsample a series.
+   *
+   * @param series     the series, which isn't modified
+   * @param maxPoints  the maximum number of values
+   *
+   * @return the downsampled series; the given series if it has no more
+   *         values than requested
+   */
+  public static TimelineMetricSeries downsample(TimelineMetricSeries series,
+                                                int maxPoints) {
+    if (maxPoints <= 0) {
+      throw new IllegalArgumentException("Invalid number of points: " +
+        maxPoints);
+    }
+    if (series.size() <= maxPoints) {
+      return series;
+    }
+
+    long startTime = series.getFirstTimestamp();
+    // one bucket more than the range divides into, so that the last value
+    // falls into the last bucket
+    long bucketLength = (series.getLastTimestamp() - startTime) / maxPoints + 1;
+
+    TimelineMetricSeries.Builder builder =
+      new TimelineMetricSeries.Builder(maxPoints);
+    long bucket = -1;
+    long bucketTime = 0;
+    double sum = 0.0;
+    int count = 0;
+    for (int i = 0; i < series.size(); i++) {
+      double value = series.getValue(i);
+      if (Double.isNaN(value)) {
+        continue;
+      }
+      long timestamp = series.getTimestamp(i);
+      long valueBucket = (timestamp - startTime) / bucketLength;
+      if (valueBucket != bucket) {
+        if (count > 0) {
+          builder.add(bucketTime, sum / count);
+        }
+        bucket = valueBucket;
+        bucketTime = timestamp;
+        sum = 0.0;
+        count = 0;
+      }
+      sum += value;
+      count++;
+    }
+    if (count > 0) {
+      builder.add(bucketTime, sum / count);
+    }
+    return builder.build();
+  }
+}
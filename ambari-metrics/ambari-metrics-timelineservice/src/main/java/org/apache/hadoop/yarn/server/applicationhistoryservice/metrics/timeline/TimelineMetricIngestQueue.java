@@ -0,0 +1,243 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.INGEST_BATCH_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.INGEST_BATCH_SIZE;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.INGEST_QUEUE_SIZE;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.INGEST_WRITE_RETRIES;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.INGEST_WRITER_THREADS;
+
+/**
+ * Bounded in-memory queue of metric records posted by the sinks.
+ * <p/>
+ * Writer threads take the records off the queue and upsert them in batches,
+ * each batch with a single statement and commit, so that many small posts
+ * don't each open a connection and commit. A batch is written once it has
+ * reached the batch size or the batch interval has passed since its first
+ * record was taken. The queue is bounded by the number of records; a post
+ * which doesn't fit is rejected as a whole so that the sink can send it
+ * again later.
+ * <p/>
+ * A batch which fails to be written is retried a bounded number of times,
+ * waiting a little longer each time, and keeps its room in the queue while
+ * it is retried. Posts are rejected in the same way as when the queue is
+ * full until the wait after the last failed write has passed, so that the
+ * sinks keep their metrics while the store is failing.
+ */
+public class TimelineMetricIngestQueue {
+
+  private static final Log LOG = LogFactory.getLog(TimelineMetricIngestQueue.class);
+
+  private final PhoenixHBaseAccessor hBaseAccessor;
+  private final BlockingQueue<TimelineMetric> queue =
+    new LinkedBlockingQueue<TimelineMetric>();
+
+  /**
+   * One permit for each record which may still be queued.
+   */
+  private final Semaphore capacity;
+  private final int writerThreads;
+  private final int batchSize;
+  private final long batchIntervalMillis;
+  private final int writeRetries;
+  private final List<Thread> writers = new ArrayList<Thread>();
+  private volatile boolean running = false;
+
+  /**
+   * Posts are rejected until this time after a write has failed.
+   */
+  private volatile long rejectUntil = 0L;
+
+  public TimelineMetricIngestQueue(PhoenixHBaseAccessor hBaseAccessor,
+                                   Configuration metricsConf) {
+    this(hBaseAccessor,
+      metricsConf.getInt(INGEST_QUEUE_SIZE, 100000),
+      Math.max(1, metricsConf.getInt(INGEST_WRITER_THREADS, 2)),
+      metricsConf.getInt(INGEST_BATCH_SIZE, 5000),
+      TimeUnit.SECONDS.toMillis(metricsConf.getInt(INGEST_BATCH_INTERVAL, 1)),
+      Math.max(0, metricsConf.getInt(INGEST_WRITE_RETRIES, 3)));
+  }
+
+  TimelineMetricIngestQueue(PhoenixHBaseAccessor hBaseAccessor, int queueSize,
+                            int writerThreads, int batchSize,
+                            long batchIntervalMillis, int writeRetries) {
+    this.hBaseAccessor = hBaseAccessor;
+    this.capacity = new Semaphore(queueSize);
+    this.writerThreads = writerThreads;
+    this.batchSize = Math.max(1, batchSize);
+    this.batchIntervalMillis = batchIntervalMillis;
+    this.writeRetries = writeRetries;
+  }
+
+  /**
+   * Start the writer threads.
+   */
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    for (int i = 0; i < writerThreads; i++) {
+      Thread writer = new Thread(new Writer(), "timeline-metrics-writer-" + i);
+      writer.setDaemon(true);
+      writer.start();
+      writers.add(writer);
+    }
+  }
+
+  /**
+   * Stop accepting metrics and wait for the writers to write the records
+   * which are still queued.
+   *
+   * @param timeoutMillis  the maximum time to wait for each writer
+   */
+  public synchronized void stop(long timeoutMillis) throws InterruptedException {
+    running = false;
+    for (Thread writer : writers) {
+      writer.join(timeoutMillis);
+    }
+    writers.clear();
+  }
+
+  /**
+   * Queue the given metrics to be written.
+   *
+   * @param metrics  the metrics posted by a sink
+   *
+   * @throws MetricsQueueFullException if the queue has no room for all of
+   *                                   the records
+   */
+  public void put(TimelineMetrics metrics) throws MetricsQueueFullException {
+    List<TimelineMetric> records = metrics.getMetrics();
+    if (records == null || records.isEmpty()) {
+      return;
+    }
+    if (!running) {
+      throw new MetricsQueueFullException("Metrics ingest queue is stopped.");
+    }
+    if (System.currentTimeMillis() < rejectUntil) {
+      throw new MetricsQueueFullException("Metrics store is failing writes, " +
+        "rejected " + records.size() + " metric records.");
+    }
+    if (!capacity.tryAcquire(records.size())) {
+      throw new MetricsQueueFullException("Metrics ingest queue is full, " +
+        "rejected " + records.size() + " metric records.");
+    }
+    queue.addAll(records);
+  }
+
+  /**
+   * Get the number of records waiting to be written.
+   */
+  public int size() {
+    return queue.size();
+  }
+
+  /**
+   * Take the next batch off the queue, waiting up to the batch interval for
+   * the batch to fill up.
+   *
+   * @return the batch; empty if no records arrived in the batch interval
+   */
+  List<TimelineMetric> takeBatch() throws InterruptedException {
+    List<TimelineMetric> batch = new ArrayList<TimelineMetric>();
+    TimelineMetric first = queue.poll(batchIntervalMillis, TimeUnit.MILLISECONDS);
+    if (first == null) {
+      return batch;
+    }
+    batch.add(first);
+
+    long deadline = System.currentTimeMillis() + batchIntervalMillis;
+    while (batch.size() < batchSize) {
+      queue.drainTo(batch, batchSize - batch.size());
+      long wait = deadline - System.currentTimeMillis();
+      if (batch.size() >= batchSize || wait <= 0) {
+        break;
+      }
+      TimelineMetric next = queue.poll(wait, TimeUnit.MILLISECONDS);
+      if (next == null) {
+        break;
+      }
+      batch.add(next);
+    }
+    return batch;
+  }
+
+  /**
+   * Write a batch of records, retrying failed writes, and free their room in
+   * the queue. The batch is dropped once the retries are used up.
+   */
+  void writeBatch(List<TimelineMetric> batch) throws InterruptedException {
+    if (batch.isEmpty()) {
+      return;
+    }
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.setMetrics(batch);
+    try {
+      for (int attempt = 0; ; attempt++) {
+        try {
+          hBaseAccessor.insertMetricRecords(metrics);
+          rejectUntil = 0L;
+          return;
+        } catch (Exception e) {
+          long wait = batchIntervalMillis * (attempt + 1);
+          rejectUntil = System.currentTimeMillis() + wait;
+          if (attempt >= writeRetries) {
+            LOG.error("Error writing " + batch.size() + " metric records, " +
+              "dropping them after " + attempt + " retries.", e);
+            return;
+          }
+          LOG.warn("Error writing " + batch.size() + " metric records, " +
+            "retrying in " + wait + " ms.", e);
+          Thread.sleep(wait);
+        }
+      }
+    } finally {
+      capacity.release(batch.size());
+    }
+  }
+
+  private class Writer implements Runnable {
+    @Override
+    public void run() {
+      while (running || !queue.isEmpty()) {
+        try {
+          writeBatch(takeBatch());
+        } catch (InterruptedException e) {
+          LOG.info("Metrics writer interrupted, " + queue.size() +
+            " metric records are not written.");
+          return;
+        }
+      }
+    }
+  }
+}
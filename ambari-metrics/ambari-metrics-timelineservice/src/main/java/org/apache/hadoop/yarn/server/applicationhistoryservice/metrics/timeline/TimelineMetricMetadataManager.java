@@ -0,0 +1,606 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricsMetadata;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local.SeriesFilter;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local.SeriesKey;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_APP_IDS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_MINUTE_TABLE_TTL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.DEFAULT_CHECKPOINT_LOCATION;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_APP_ID;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METADATA_PERSIST_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METADATA_TTL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.PRECISION_TABLE_TTL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_AGGREGATOR_CHECKPOINT_DIR;
+
+/**
+ * Registry of the metrics posted to the collector: the metric names of
+ * every app instance on every host, with their type and the time range in
+ * which they were posted.
+ * <p/>
+ * The registry is updated as metrics are written and kept in memory. It is
+ * written to a file in the checkpoint directory at the persist interval and
+ * when the collector stops, and read back when the collector starts. Metrics
+ * which haven't been posted for the registry TTL are dropped.
+ * <p/>
+ * The registry resolves the wildcard metric names of a query into the exact
+ * names which were posted for its host, app id and instance id in its time
+ * range, so that the query reads rows by key instead of scanning the table
+ * with LIKE. It can only do so for time ranges it has seen all metrics of:
+ * after it started tracking metrics, after the metrics it dropped and, when
+ * the collector didn't stop cleanly, after the collector was restarted.
+ * Other queries are left as they are.
+ */
+public class TimelineMetricMetadataManager {
+
+  private static final Log LOG =
+    LogFactory.getLog(TimelineMetricMetadataManager.class);
+
+  static final String METADATA_FILE_NAME = "timeline-metrics-metadata.json";
+
+  /**
+   * Time after which the aggregates of a written value are written at the
+   * latest; the time range of a metric is widened by it when it is matched.
+   */
+  static final long AGGREGATE_DELAY_MILLIS = TimeUnit.HOURS.toMillis(2);
+
+  /**
+   * Wildcards which resolve to more names are left to the query.
+   */
+  static final int MAX_RESOLVED_NAMES = 1000;
+
+  private static final JsonFactory jsonFactory = new JsonFactory();
+
+  private final ConcurrentMap<SeriesKey, TimelineMetricMetadata> metadata =
+    new ConcurrentHashMap<SeriesKey, TimelineMetricMetadata>();
+  private final File file;
+  private final long ttlMillis;
+  private final long precisionTtlMillis;
+  private final long clusterTtlMillis;
+  private final long persistIntervalMillis;
+
+  /**
+   * App ids whose cluster series also aggregate the host metrics of the
+   * hosts the app runs on.
+   */
+  private final List<String> aggregatedAppIds;
+
+  /**
+   * Time since which all posted metrics are in the registry.
+   */
+  private volatile long trackedSince;
+
+  /**
+   * Time before which metrics have been dropped from the registry.
+   */
+  private volatile long expiredBefore = 0L;
+
+  private ScheduledExecutorService persister;
+
+  public TimelineMetricMetadataManager(Configuration metricsConf) {
+    this(new File(metricsConf.get(TIMELINE_METRICS_AGGREGATOR_CHECKPOINT_DIR,
+        DEFAULT_CHECKPOINT_LOCATION), METADATA_FILE_NAME),
+      TimeUnit.SECONDS.toMillis(metricsConf.getLong(METADATA_TTL, 2592000)),
+      TimeUnit.SECONDS.toMillis(metricsConf.getLong(PRECISION_TABLE_TTL, 86400)),
+      TimeUnit.SECONDS.toMillis(metricsConf.getLong(CLUSTER_MINUTE_TABLE_TTL, 2592000)),
+      TimeUnit.SECONDS.toMillis(metricsConf.getLong(METADATA_PERSIST_INTERVAL, 300)),
+      Arrays.asList(metricsConf.getTrimmedStrings(CLUSTER_AGGREGATOR_APP_IDS)));
+  }
+
+  TimelineMetricMetadataManager(File file, long ttlMillis,
+                                long precisionTtlMillis, long clusterTtlMillis,
+                                long persistIntervalMillis,
+                                List<String> aggregatedAppIds) {
+    this.file = file;
+    this.ttlMillis = ttlMillis;
+    this.precisionTtlMillis = precisionTtlMillis;
+    this.clusterTtlMillis = clusterTtlMillis;
+    this.persistIntervalMillis = persistIntervalMillis;
+    this.aggregatedAppIds = aggregatedAppIds;
+    this.trackedSince = System.currentTimeMillis();
+  }
+
+  /**
+   * Read the registry written by the previous run and start writing it at
+   * the persist interval.
+   */
+  public void start() {
+    load();
+
+    persister = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "timeline-metrics-metadata-persister");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    persister.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          expire();
+          persist(false);
+        } catch (IOException e) {
+          LOG.warn("Unable to write the metric metadata to " + file, e);
+        } catch (RuntimeException e) {
+          LOG.warn("Unable to write the metric metadata to " + file, e);
+        }
+      }
+    }, persistIntervalMillis, persistIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stop writing the registry at the persist interval and write it a last
+   * time. Metrics must no longer be written.
+   */
+  public void stop() {
+    if (persister != null) {
+      persister.shutdown();
+      try {
+        persister.awaitTermination(30, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    try {
+      persist(true);
+    } catch (IOException e) {
+      LOG.warn("Unable to write the metric metadata to " + file, e);
+    }
+  }
+
+  /**
+   * Add written metrics to the registry.
+   *
+   * @param metrics  the metrics
+   */
+  public void update(TimelineMetrics metrics) {
+    long now = currentTimeMillis();
+    for (TimelineMetric metric : metrics.getMetrics()) {
+      if (metric.getMetricName() == null) {
+        continue;
+      }
+      SeriesKey key = new SeriesKey(metric.getMetricName(),
+        metric.getHostName(), metric.getAppId(), metric.getInstanceId());
+
+      long firstSeen = now;
+      long lastSeen = now;
+      TimelineMetricSeries series = metric.getMetricSeries();
+      if (series.size() > 0) {
+        firstSeen = Math.min(firstSeen, series.getTimestamp(0));
+        lastSeen = Math.max(lastSeen, series.getTimestamp(series.size() - 1));
+      }
+
+      while (true) {
+        TimelineMetricMetadata entry = metadata.get(key);
+        if (entry == null) {
+          TimelineMetricMetadata created = new TimelineMetricMetadata(
+            metric.getMetricName(), metric.getAppId(), metric.getInstanceId(),
+            metric.getHostName(), metric.getType(), firstSeen, lastSeen);
+          entry = metadata.putIfAbsent(key, created);
+          if (entry == null) {
+            break;
+          }
+        }
+        synchronized (entry) {
+          // retry if the entry has just expired
+          if (metadata.get(key) != entry) {
+            continue;
+          }
+          if (metric.getType() != null) {
+            entry.setType(metric.getType());
+          }
+          entry.setFirstSeen(Math.min(entry.getFirstSeen(), firstSeen));
+          entry.setLastSeen(Math.max(entry.getLastSeen(), lastSeen));
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the metrics in the registry.
+   *
+   * @param metricName  name or LIKE pattern of the metrics; null for all
+   * @param appId       app id of the metrics, ignoring case; null for all
+   * @param instanceId  instance id of the metrics; null for all
+   * @param hostname    host of the metrics; null for all
+   *
+   * @return the metrics, ordered by metric name, host name, app id and
+   *         instance id
+   */
+  public TimelineMetricsMetadata getMetadata(String metricName, String appId,
+                                             String instanceId,
+                                             String hostname) {
+    SeriesFilter filter = new SeriesFilter(Collections.singletonList(
+      metricName == null || metricName.isEmpty() ? "%" : metricName),
+      hostname, null, instanceId);
+
+    Map<SeriesKey, TimelineMetricMetadata> matches =
+      new TreeMap<SeriesKey, TimelineMetricMetadata>();
+    for (Map.Entry<SeriesKey, TimelineMetricMetadata> entry : metadata.entrySet()) {
+      SeriesKey key = entry.getKey();
+      if (filter.matches(key) && (appId == null ||
+          appId.equalsIgnoreCase(key.getAppId()))) {
+        matches.put(key, copy(entry.getValue()));
+      }
+    }
+
+    TimelineMetricsMetadata result = new TimelineMetricsMetadata();
+    result.setMetadata(new ArrayList<TimelineMetricMetadata>(matches.values()));
+    return result;
+  }
+
+  /**
+   * Resolve the wildcard metric names of a query into the names posted for
+   * its host, app id and instance id in its time range. Functions of a
+   * wildcard apply to every name it resolves to; for the cluster series of
+   * an app whose hosts' metrics are aggregated, they include host metrics.
+   * Wildcards are left as they are when the registry hasn't seen all
+   * metrics of the time range, or when they match too many names.
+   *
+   * @param condition        the condition of the query, with the wildcards
+   * @param metricFunctions  the functions of the names of the query
+   *
+   * @return the functions of the resolved names; empty if no metric matches
+   *         any name of the query
+   */
+  public Map<String, List<Function>> resolvePatterns(Condition condition,
+      Map<String, List<Function>> metricFunctions) {
+    List<String> patterns = new ArrayList<String>();
+    for (String metricName : metricFunctions.keySet()) {
+      if (metricName.contains("%")) {
+        patterns.add(metricName);
+      }
+    }
+    if (patterns.isEmpty()) {
+      return metricFunctions;
+    }
+
+    long startTime;
+    long endTime;
+    if (condition.isPointInTime()) {
+      // the latest values may be as old as the table keeps them
+      endTime = currentTimeMillis();
+      startTime = endTime - (condition.getHostname() == null ?
+        clusterTtlMillis : precisionTtlMillis);
+    } else if (condition.getStartTime() != null &&
+        condition.getEndTime() != null) {
+      startTime = condition.getStartTime();
+      endTime = condition.getEndTime();
+    } else {
+      return metricFunctions;
+    }
+    if (startTime < getCoverageStart()) {
+      return metricFunctions;
+    }
+
+    SeriesFilter filter = new SeriesFilter(patterns, condition.getHostname(),
+      condition.getAppId(), condition.getInstanceId());
+    // the app aggregator writes the host metrics of the hosts of these apps
+    // into the cluster series of the app
+    SeriesFilter hostFilter = null;
+    if (condition.getHostname() == null && isAggregatedAppId(condition.getAppId())) {
+      hostFilter = new SeriesFilter(patterns, null, HOST_APP_ID,
+        condition.getInstanceId());
+    }
+    List<Set<String>> resolved = new ArrayList<Set<String>>(patterns.size());
+    for (int i = 0; i < filter.getNameCount(); i++) {
+      resolved.add(new TreeSet<String>());
+    }
+    for (Map.Entry<SeriesKey, TimelineMetricMetadata> entry : metadata.entrySet()) {
+      SeriesKey key = entry.getKey();
+      TimelineMetricMetadata value = entry.getValue();
+      synchronized (value) {
+        if (value.getLastSeen() + AGGREGATE_DELAY_MILLIS < startTime ||
+            value.getFirstSeen() - AGGREGATE_DELAY_MILLIS > endTime) {
+          continue;
+        }
+      }
+      for (int i = 0; i < filter.getNameCount(); i++) {
+        if (filter.matches(i, key) ||
+            (hostFilter != null && hostFilter.matches(i, key))) {
+          resolved.get(i).add(key.getMetricName());
+        }
+      }
+    }
+
+    Map<String, List<Function>> result =
+      new LinkedHashMap<String, List<Function>>();
+    for (Map.Entry<String, List<Function>> entry : metricFunctions.entrySet()) {
+      if (!entry.getKey().contains("%")) {
+        addFunctions(result, entry.getKey(), entry.getValue());
+      }
+    }
+    for (int i = 0; i < filter.getNameCount(); i++) {
+      String pattern = filter.getMetricName(i);
+      List<Function> functions = metricFunctions.get(pattern);
+      if (resolved.get(i).size() > MAX_RESOLVED_NAMES) {
+        addFunctions(result, pattern, functions);
+      } else {
+        for (String metricName : resolved.get(i)) {
+          addFunctions(result, metricName, functions);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Determine whether the cluster series of an app id include host metrics.
+   */
+  private boolean isAggregatedAppId(String appId) {
+    if (appId == null) {
+      return false;
+    }
+    for (String aggregatedAppId : aggregatedAppIds) {
+      if (appId.equalsIgnoreCase(aggregatedAppId)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get the number of metrics in the registry.
+   */
+  public int size() {
+    return metadata.size();
+  }
+
+  /**
+   * Get the time after which the registry knows all posted metrics.
+   */
+  long getCoverageStart() {
+    return Math.max(trackedSince, expiredBefore) + AGGREGATE_DELAY_MILLIS;
+  }
+
+  /**
+   * Drop the metrics which haven't been posted for the TTL.
+   */
+  void expire() {
+    long cutoff = currentTimeMillis() - ttlMillis;
+    if (cutoff > expiredBefore) {
+      expiredBefore = cutoff;
+    }
+    for (Map.Entry<SeriesKey, TimelineMetricMetadata> entry : metadata.entrySet()) {
+      TimelineMetricMetadata value = entry.getValue();
+      synchronized (value) {
+        if (value.getLastSeen() < cutoff) {
+          metadata.remove(entry.getKey(), value);
+        }
+      }
+    }
+  }
+
+  /**
+   * Write the registry. The file says whether it was written by a collector
+   * which stopped; only then is its tracking time taken over when it is
+   * read, as metrics may have been written after an earlier write.
+   *
+   * @param complete  true if no more metrics are written
+   */
+  void persist(boolean complete) throws IOException {
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.exists() && !parent.mkdirs()) {
+      throw new IOException("Unable to create " + parent);
+    }
+    File tmp = new File(file.getPath() + ".tmp");
+    FileOutputStream out = new FileOutputStream(tmp);
+    try {
+      JsonGenerator generator =
+        jsonFactory.createJsonGenerator(out, JsonEncoding.UTF8);
+      generator.writeStartObject();
+      generator.writeBooleanField("complete", complete);
+      generator.writeNumberField("trackedSince", trackedSince);
+      generator.writeNumberField("expiredBefore", expiredBefore);
+      generator.writeArrayFieldStart("metadata");
+      for (TimelineMetricMetadata value : metadata.values()) {
+        TimelineMetricMetadata entry = copy(value);
+        generator.writeStartObject();
+        writeStringField(generator, "metricname", entry.getMetricName());
+        writeStringField(generator, "appid", entry.getAppId());
+        writeStringField(generator, "instanceid", entry.getInstanceId());
+        writeStringField(generator, "hostname", entry.getHostName());
+        writeStringField(generator, "type", entry.getType());
+        generator.writeNumberField("firstseen", entry.getFirstSeen());
+        generator.writeNumberField("lastseen", entry.getLastSeen());
+        generator.writeEndObject();
+      }
+      generator.writeEndArray();
+      generator.writeEndObject();
+      generator.flush();
+      out.getFD().sync();
+    } finally {
+      out.close();
+    }
+    if (!tmp.renameTo(file)) {
+      // renaming over an existing file fails on some platforms
+      if (!file.delete() || !tmp.renameTo(file)) {
+        throw new IOException("Unable to rename " + tmp + " to " + file);
+      }
+    }
+  }
+
+  /**
+   * Read the registry written by the previous run, if there is one.
+   */
+  void load() {
+    trackedSince = currentTimeMillis();
+    if (!file.exists()) {
+      return;
+    }
+    try {
+      JsonParser parser = jsonFactory.createJsonParser(file);
+      try {
+        boolean complete = false;
+        long previousTrackedSince = trackedSince;
+        long previousExpiredBefore = 0L;
+        List<TimelineMetricMetadata> entries =
+          new ArrayList<TimelineMetricMetadata>();
+
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+          throw new IOException("Expected an object.");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String field = parser.getCurrentName();
+          parser.nextToken();
+          if ("complete".equals(field)) {
+            complete = parser.getBooleanValue();
+          } else if ("trackedSince".equals(field)) {
+            previousTrackedSince = parser.getLongValue();
+          } else if ("expiredBefore".equals(field)) {
+            previousExpiredBefore = parser.getLongValue();
+          } else if ("metadata".equals(field)) {
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+              entries.add(readEntry(parser));
+            }
+          } else {
+            parser.skipChildren();
+          }
+        }
+
+        for (TimelineMetricMetadata entry : entries) {
+          metadata.put(new SeriesKey(entry.getMetricName(),
+            entry.getHostName(), entry.getAppId(), entry.getInstanceId()),
+            entry);
+        }
+        if (complete) {
+          trackedSince = previousTrackedSince;
+          expiredBefore = previousExpiredBefore;
+        }
+        LOG.info("Read " + entries.size() + " metrics from " + file +
+          (complete ? "" : ", the collector didn't stop cleanly"));
+      } finally {
+        parser.close();
+      }
+    } catch (IOException e) {
+      metadata.clear();
+      LOG.warn("Unable to read the metric metadata from " + file +
+        ", starting with an empty registry.", e);
+    } catch (IllegalArgumentException e) {
+      metadata.clear();
+      LOG.warn("Unable to read the metric metadata from " + file +
+        ", starting with an empty registry.", e);
+    }
+  }
+
+  /**
+   * Get the current time in milliseconds.
+   */
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private static void addFunctions(Map<String, List<Function>> metricFunctions,
+                                   String metricName, List<Function> functions) {
+    List<Function> existing = metricFunctions.get(metricName);
+    if (existing == null) {
+      metricFunctions.put(metricName, new ArrayList<Function>(functions));
+    } else {
+      for (Function function : functions) {
+        if (!existing.contains(function)) {
+          existing.add(function);
+        }
+      }
+    }
+  }
+
+  private static TimelineMetricMetadata copy(TimelineMetricMetadata entry) {
+    synchronized (entry) {
+      return new TimelineMetricMetadata(entry.getMetricName(),
+        entry.getAppId(), entry.getInstanceId(), entry.getHostName(),
+        entry.getType(), entry.getFirstSeen(), entry.getLastSeen());
+    }
+  }
+
+  private static TimelineMetricMetadata readEntry(JsonParser parser)
+    throws IOException {
+    TimelineMetricMetadata entry = new TimelineMetricMetadata();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+      String text = token == JsonToken.VALUE_NULL ? null : parser.getText();
+      if ("metricname".equals(field)) {
+        entry.setMetricName(text);
+      } else if ("appid".equals(field)) {
+        entry.setAppId(text);
+      } else if ("instanceid".equals(field)) {
+        entry.setInstanceId(text);
+      } else if ("hostname".equals(field)) {
+        entry.setHostName(text);
+      } else if ("type".equals(field)) {
+        entry.setType(text);
+      } else if ("firstseen".equals(field)) {
+        entry.setFirstSeen(parser.getLongValue());
+      } else if ("lastseen".equals(field)) {
+        entry.setLastSeen(parser.getLongValue());
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return entry;
+  }
+
+  private static void writeStringField(JsonGenerator generator, String name,
+                                       String value) throws IOException {
+    if (value != null) {
+      generator.writeStringField(name, value);
+    }
+  }
+}
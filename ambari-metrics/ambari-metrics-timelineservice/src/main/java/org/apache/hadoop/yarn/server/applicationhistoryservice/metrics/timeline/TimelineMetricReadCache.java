@@ -0,0 +1,456 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.READ_CACHE_MAX_POINTS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.READ_CACHE_SETTLE_DELAY;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.READ_CACHE_TTL;
+
+/**
+ * Cache of recently read time series, so that dashboards which poll the
+ * same metrics over a sliding time range only read the new tail of the
+ * range from HBase.
+ * <p/>
+ * A segment is cached for each metric name, functions, host, app id,
+ * instance id and precision. It holds the series read for the time range
+ * it covers. A query whose start lies in a cached segment is answered from
+ * the segment, and the part of the range after the segment is read with a
+ * single query for all metric names. Data which may still change, because
+ * sinks post late or the aggregate isn't written yet, is served but not
+ * cached: a segment only covers the time up to the settle delay before
+ * now. Values posted later than that cut the segments of their metric
+ * name back to the time of the values, see {@link #putMetrics}.
+ * <p/>
+ * The cache is bounded by the number of cached data points; the least
+ * recently used segments are evicted first. Segments also expire a while
+ * after they were cached, which bounds how long values written by other
+ * collectors, or between a post and its write, are missed.
+ */
+public class TimelineMetricReadCache {
+
+  /**
+   * Reads metrics for the part of a query which isn't cached.
+   */
+  public interface MetricsReader {
+    TimelineMetrics read(Condition condition,
+                         Map<String, List<Function>> metricFunctions)
+      throws SQLException, IOException;
+  }
+
+  private final Cache<CacheKey, Segment> cache;
+  private final long settleDelayMillis;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong partialHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public TimelineMetricReadCache(Configuration metricsConf) {
+    this(metricsConf.getLong(READ_CACHE_MAX_POINTS, 2000000),
+      TimeUnit.SECONDS.toMillis(metricsConf.getLong(READ_CACHE_SETTLE_DELAY, 300)),
+      TimeUnit.SECONDS.toMillis(metricsConf.getLong(READ_CACHE_TTL, 3600)));
+  }
+
+  TimelineMetricReadCache(long maxPoints, long settleDelayMillis,
+                          long ttlMillis) {
+    this.settleDelayMillis = settleDelayMillis;
+    // a single segment so that the least recently used series are evicted
+    // across all keys, queries don't write often enough to contend
+    this.cache = CacheBuilder.newBuilder()
+      .concurrencyLevel(1)
+      .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+      .maximumWeight(maxPoints)
+      .weigher(new Weigher<CacheKey, Segment>() {
+        @Override
+        public int weigh(CacheKey key, Segment segment) {
+          return segment.points;
+        }
+      })
+      .build();
+  }
+
+  /**
+   * Determine whether the result of a query may be cached. Queries for the
+   * latest values, with open time ranges, with wildcard metric names or
+   * with results not grouped by host are always read from HBase.
+   */
+  public static boolean isCacheable(Condition condition) {
+    if (condition.getStartTime() == null || condition.getEndTime() == null ||
+        !condition.isGrouped() || condition.getPrecision() == null) {
+      return false;
+    }
+    for (String metricName : condition.getMetricNames()) {
+      if (metricName.contains("%")) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get the metrics of a query, reading the part which isn't cached.
+   *
+   * @param condition        the query; must be cacheable
+   * @param metricFunctions  the functions to read, keyed by metric name
+   * @param reader           reads the metrics which aren't cached
+   *
+   * @return the metrics; the caller may modify them
+   */
+  public TimelineMetrics getTimelineMetrics(Condition condition,
+      Map<String, List<Function>> metricFunctions, MetricsReader reader)
+    throws SQLException, IOException {
+
+    long startTime = condition.getStartTime();
+    long endTime = condition.getEndTime();
+    long cacheableEndTime = Math.min(endTime,
+      currentTimeMillis() - getSettleDelay(condition.getPrecision()));
+
+    Map<String, CacheKey> keys = new HashMap<String, CacheKey>();
+    Map<String, Segment> segments = new HashMap<String, Segment>();
+    List<String> uncachedNames = new ArrayList<String>();
+    long readStartTime = endTime;
+
+    for (String metricName : condition.getMetricNames()) {
+      CacheKey key = new CacheKey(metricName, metricFunctions.get(metricName),
+        condition);
+      keys.put(metricName, key);
+
+      Segment segment = cache.getIfPresent(key);
+      if (segment != null && segment.covers(startTime)) {
+        segments.put(metricName, segment);
+        if (segment.endTime >= endTime) {
+          hits.incrementAndGet();
+          continue;
+        }
+        partialHits.incrementAndGet();
+        readStartTime = Math.min(readStartTime, segment.endTime);
+      } else {
+        misses.incrementAndGet();
+        readStartTime = startTime;
+      }
+      uncachedNames.add(metricName);
+    }
+
+    Map<String, List<TimelineMetric>> readMetrics = Collections.emptyMap();
+    boolean cacheRead = false;
+    if (!uncachedNames.isEmpty()) {
+      Condition readCondition = new DefaultCondition(uncachedNames,
+        condition.getHostname(), condition.getAppId(),
+        condition.getInstanceId(), readStartTime, endTime,
+        condition.getPrecision(), null, true);
+      TimelineMetrics metrics = reader.read(readCondition, metricFunctions);
+      readMetrics = groupByMetricName(metrics.getMetrics(), metricFunctions);
+      // a result hitting the limit may have been cut off
+      cacheRead = countPoints(metrics.getMetrics()) <
+        PhoenixHBaseAccessor.RESULTSET_LIMIT;
+    }
+
+    TimelineMetrics result = new TimelineMetrics();
+    for (String metricName : condition.getMetricNames()) {
+      Segment segment = segments.get(metricName);
+      List<TimelineMetric> read = readMetrics.get(metricName);
+
+      List<TimelineMetric> merged = new ArrayList<TimelineMetric>();
+      if (segment != null) {
+        copyMetrics(segment.metrics, merged, startTime, endTime);
+      }
+      if (read != null) {
+        copyMetrics(read, merged, startTime, endTime);
+      }
+      result.getMetrics().addAll(merged);
+
+      if (cacheRead && uncachedNames.contains(metricName) &&
+          cacheableEndTime > startTime) {
+        List<TimelineMetric> cached = new ArrayList<TimelineMetric>();
+        copyMetrics(merged, cached, startTime, cacheableEndTime);
+        cache.put(keys.get(metricName),
+          new Segment(startTime, cacheableEndTime, cached));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Cut the cached segments of the posted metric names back to the time of
+   * the earliest posted value, if that is before the settle delay and so
+   * may be in a segment. Values posted on time don't touch the cache.
+   *
+   * @param metrics  the posted metrics
+   */
+  public void putMetrics(TimelineMetrics metrics) {
+    long settledTime = currentTimeMillis() - settleDelayMillis;
+    Map<String, Long> lateTimes = new HashMap<String, Long>();
+    for (TimelineMetric metric : metrics.getMetrics()) {
+      TimelineMetricSeries values = metric.getMetricSeries();
+      long time = values.isEmpty() ? metric.getStartTime() :
+        values.getFirstTimestamp();
+      if (time >= settledTime) {
+        continue;
+      }
+      Long lateTime = lateTimes.get(metric.getMetricName());
+      if (lateTime == null || time < lateTime) {
+        lateTimes.put(metric.getMetricName(), time);
+      }
+    }
+    if (lateTimes.isEmpty()) {
+      return;
+    }
+
+    // keys of all hosts, apps and precisions of the name, the aggregates
+    // of a late value change as well
+    for (Map.Entry<CacheKey, Segment> entry : cache.asMap().entrySet()) {
+      Long lateTime = lateTimes.get(entry.getKey().metricName);
+      Segment segment = entry.getValue();
+      if (lateTime == null || lateTime >= segment.endTime) {
+        continue;
+      }
+      if (lateTime <= segment.startTime) {
+        cache.asMap().remove(entry.getKey(), segment);
+      } else {
+        List<TimelineMetric> trimmed = new ArrayList<TimelineMetric>();
+        copyMetrics(segment.metrics, trimmed, segment.startTime, lateTime);
+        cache.asMap().replace(entry.getKey(), segment,
+          new Segment(segment.startTime, lateTime, trimmed));
+      }
+    }
+  }
+
+  /**
+   * Get the number of metrics which were answered from the cache.
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * Get the number of metrics of which only the tail was read.
+   */
+  public long getPartialHitCount() {
+    return partialHits.get();
+  }
+
+  /**
+   * Get the number of metrics which were read completely.
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * Get the number of cached data points.
+   */
+  public long getCachedPoints() {
+    long points = 0;
+    for (Segment segment : cache.asMap().values()) {
+      points += segment.points;
+    }
+    return points;
+  }
+
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+  long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * Get the time before now in which values may still change. Aggregates
+   * are written a while after their time range has passed, so the delay is
+   * at least two aggregation intervals for them.
+   */
+  long getSettleDelay(Precision precision) {
+    switch (precision) {
+      case HOURS:
+        return Math.max(settleDelayMillis, TimeUnit.HOURS.toMillis(2));
+      case MINUTES:
+        return Math.max(settleDelayMillis, TimeUnit.MINUTES.toMillis(10));
+      default:
+        return settleDelayMillis;
+    }
+  }
+
+  /**
+   * Group the read metrics by the metric names of the query. The read
+   * metrics are named after the metric name and function suffix.
+   */
+  private static Map<String, List<TimelineMetric>> groupByMetricName(
+      List<TimelineMetric> metrics, Map<String, List<Function>> metricFunctions) {
+    Map<String, List<TimelineMetric>> grouped =
+      new HashMap<String, List<TimelineMetric>>();
+    for (TimelineMetric metric : metrics) {
+      String metricName = metric.getMetricName();
+      if (!metricFunctions.containsKey(metricName)) {
+        int functionStartIndex = metricName.indexOf("._");
+        if (functionStartIndex > 0) {
+          metricName = metricName.substring(0, functionStartIndex);
+        }
+      }
+      List<TimelineMetric> metricList = grouped.get(metricName);
+      if (metricList == null) {
+        metricList = new ArrayList<TimelineMetric>();
+        grouped.put(metricName, metricList);
+      }
+      metricList.add(metric);
+    }
+    return grouped;
+  }
+
+  /**
+   * Copy the values in [startTime, endTime) of the source metrics, merging
+   * them into the target metrics of the same name, host, app and instance.
+   * Values of a source metric replace those of the target metric.
+   */
+  private static void copyMetrics(List<TimelineMetric> source,
+                                  List<TimelineMetric> target,
+                                  long startTime, long endTime) {
+    for (TimelineMetric metric : source) {
+      TimelineMetricSeries values =
+        metric.getMetricSeries().subSeries(startTime, endTime - 1);
+      if (values.isEmpty()) {
+        continue;
+      }
+
+      TimelineMetric targetMetric = null;
+      for (TimelineMetric candidate : target) {
+        if (candidate.equalsExceptTime(metric)) {
+          targetMetric = candidate;
+          break;
+        }
+      }
+
+      if (targetMetric == null) {
+        targetMetric = new TimelineMetric();
+        targetMetric.setMetricName(metric.getMetricName());
+        targetMetric.setAppId(metric.getAppId());
+        targetMetric.setInstanceId(metric.getInstanceId());
+        targetMetric.setHostName(metric.getHostName());
+        targetMetric.setType(metric.getType());
+        targetMetric.setTimestamp(values.getFirstTimestamp());
+        targetMetric.setStartTime(values.getFirstTimestamp());
+        targetMetric.setMetricValues(values);
+        target.add(targetMetric);
+      } else {
+        targetMetric.getMetricSeries().putAll(values);
+        if (targetMetric.getStartTime() > values.getFirstTimestamp()) {
+          targetMetric.setStartTime(values.getFirstTimestamp());
+          targetMetric.setTimestamp(values.getFirstTimestamp());
+        }
+      }
+    }
+  }
+
+  private static int countPoints(List<TimelineMetric> metrics) {
+    int points = 0;
+    for (TimelineMetric metric : metrics) {
+      points += metric.getMetricSeries().size();
+    }
+    return points;
+  }
+
+  /**
+   * Identifies the series of one metric name read with the same functions
+   * and filters.
+   */
+  static class CacheKey {
+    private final String metricName;
+    private final String functions;
+    private final String hostname;
+    private final String appId;
+    private final String instanceId;
+    private final Precision precision;
+
+    CacheKey(String metricName, List<Function> functions, Condition condition) {
+      this.metricName = metricName;
+      this.functions = String.valueOf(functions);
+      this.hostname = condition.getHostname();
+      this.appId = condition.getAppId();
+      this.instanceId = condition.getInstanceId();
+      this.precision = condition.getPrecision();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      CacheKey that = (CacheKey) o;
+
+      return metricName.equals(that.metricName) &&
+        functions.equals(that.functions) &&
+        precision == that.precision &&
+        (hostname == null ? that.hostname == null : hostname.equals(that.hostname)) &&
+        (appId == null ? that.appId == null : appId.equals(that.appId)) &&
+        (instanceId == null ? that.instanceId == null : instanceId.equals(that.instanceId));
+    }
+
+    @Override
+    public int hashCode() {
+      int result = metricName.hashCode();
+      result = 31 * result + functions.hashCode();
+      result = 31 * result + (hostname != null ? hostname.hashCode() : 0);
+      result = 31 * result + (appId != null ? appId.hashCode() : 0);
+      result = 31 * result + (instanceId != null ? instanceId.hashCode() : 0);
+      result = 31 * result + precision.hashCode();
+      return result;
+    }
+  }
+
+  /**
+   * The metrics read for [startTime, endTime). Never modified once cached.
+   */
+  static class Segment {
+    private final long startTime;
+    private final long endTime;
+    private final List<TimelineMetric> metrics;
+    private final int points;
+
+    Segment(long startTime, long endTime, List<TimelineMetric> metrics) {
+      this.startTime = startTime;
+      this.endTime = endTime;
+      this.metrics = metrics;
+      // count the metrics too, so that empty results have a weight
+      this.points = countPoints(metrics) + metrics.size() + 1;
+    }
+
+    boolean covers(long time) {
+      return startTime <= time && time < endTime;
+    }
+  }
+}
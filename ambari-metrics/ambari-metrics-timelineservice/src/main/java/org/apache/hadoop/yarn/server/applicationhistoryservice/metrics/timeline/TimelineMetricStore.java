@@ -19,6 +19,7 @@ package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline
 
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricsMetadata;
 import org.apache.hadoop.yarn.api.records.timeline.TimelinePutResponse;
 import java.io.IOException;
 import java.sql.SQLException;
@@ -68,4 +69,18 @@ public interface TimelineMetricStore {
    */
   TimelinePutResponse putMetrics(TimelineMetrics metrics)
     throws SQLException, IOException;
+
+  /**
+   * Return the metrics which were posted to the store, from the metric
+   * registry. All filters are optional.
+   *
+   * @param metricName Name of the metrics, may be a LIKE pattern
+   * @param applicationId Id of the application of the metrics, ignoring case
+   * @param instanceId Application instance id.
+   * @param hostname Name of the host where the metrics originated from
+   *
+   * @return {@link TimelineMetricsMetadata}; empty if the registry is disabled
+   */
+  TimelineMetricsMetadata getTimelineMetricMetadata(String metricName,
+      String applicationId, String instanceId, String hostname);
 }
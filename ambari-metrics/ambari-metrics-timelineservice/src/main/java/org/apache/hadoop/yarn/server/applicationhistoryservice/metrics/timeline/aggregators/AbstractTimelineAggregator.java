@@ -18,6 +18,7 @@
 package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -32,14 +33,27 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_CHECKPOINT_DELAY;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_PARTITION_SPLITS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.RESULTSET_FETCH_SIZE;
 
 /**
  * Base class for all runnable aggregators. Provides common functions like
  * check pointing and scheduling.
+ * <p/>
+ * If metric name split points are configured, each window is aggregated
+ * per metric name partition. The partitions run on the worker pool shared
+ * by all aggregators, or one after another if there is none, and each
+ * partition keeps its own checkpoint so that a failed partition is retried
+ * without aggregating the others again.
  */
 public abstract class AbstractTimelineAggregator implements Runnable {
   protected final PhoenixHBaseAccessor hBaseAccessor;
@@ -49,6 +63,9 @@ public abstract class AbstractTimelineAggregator implements Runnable {
   protected final long checkpointDelayMillis;
   protected final Integer resultsetFetchSize;
   protected Configuration metricsConf;
+  private final List<MetricNamePartition> partitions;
+  private ExecutorService workerPool;
+  private AggregatorSelfMetrics selfMetrics;
 
   public AbstractTimelineAggregator(PhoenixHBaseAccessor hBaseAccessor,
                                     Configuration metricsConf) {
@@ -64,6 +81,27 @@ public abstract class AbstractTimelineAggregator implements Runnable {
     this.resultsetFetchSize = metricsConf.getInt(RESULTSET_FETCH_SIZE, 2000);
     this.LOG = LogFactory.getLog(this.getClass());
     this.clock = clk;
+    this.partitions = MetricNamePartition.fromSplits(
+      metricsConf.get(AGGREGATOR_PARTITION_SPLITS, ""));
+  }
+
+  /**
+   * Set the pool to aggregate the metric name partitions on.
+   *
+   * @param workerPool  the pool shared by the aggregators; null to aggregate
+   *                    the partitions in the aggregator thread
+   */
+  public void setWorkerPool(ExecutorService workerPool) {
+    this.workerPool = workerPool;
+  }
+
+  /**
+   * Set where to record the lag and run time of each aggregation cycle.
+   *
+   * @param selfMetrics  the self metrics; null to not record them
+   */
+  public void setSelfMetrics(AggregatorSelfMetrics selfMetrics) {
+    this.selfMetrics = selfMetrics;
   }
 
   @Override
@@ -87,17 +125,14 @@ public abstract class AbstractTimelineAggregator implements Runnable {
    */
   public long runOnce(Long SLEEP_INTERVAL) {
     long currentTime = clock.getTime();
-    long lastCheckPointTime = readLastCheckpointSavingOnFirstRun(currentTime);
     long sleepTime = SLEEP_INTERVAL;
 
-    if (lastCheckPointTime != -1) {
-      LOG.info("Last check point time: " + lastCheckPointTime + ", lagBy: "
-        + ((clock.getTime() - lastCheckPointTime) / 1000)
-        + " seconds.");
+    long startTime = clock.getTime();
+    long lag = partitions.size() > 1 ?
+      runPartitions(currentTime, SLEEP_INTERVAL) :
+      runPartition(null, currentTime, SLEEP_INTERVAL);
 
-      long startTime = clock.getTime();
-      boolean success = doWork(lastCheckPointTime,
-        lastCheckPointTime + SLEEP_INTERVAL);
+    if (lag != -1) {
       long executionTime = clock.getTime() - startTime;
       long delta = SLEEP_INTERVAL - executionTime;
 
@@ -113,30 +148,105 @@ public abstract class AbstractTimelineAggregator implements Runnable {
 
       LOG.debug("Aggregator sleep interval = " + sleepTime);
 
-      if (success) {
-        try {
-          // Comment to bug fix:
-          // cannot just save lastCheckPointTime + SLEEP_INTERVAL,
-          // it has to be verified so it is not a time in the future
-          // checkpoint says what was aggregated, and there is no way
-          // the future metrics were aggregated!
-          saveCheckPoint(Math.min(currentTime, lastCheckPointTime +
-            SLEEP_INTERVAL));
-        } catch (IOException io) {
-          LOG.warn("Error saving checkpoint, restarting aggregation at " +
-            "previous checkpoint.");
-        }
+      if (selfMetrics != null) {
+        selfMetrics.publish(getName(), currentTime, lag, executionTime);
       }
     }
 
     return sleepTime;
   }
 
-  private long readLastCheckpointSavingOnFirstRun(long currentTime) {
+  /**
+   * Aggregate the next window of each partition.
+   *
+   * @return the largest lag of the partitions; -1 if none was aggregated
+   */
+  private long runPartitions(final long currentTime, final long sleepInterval) {
+    long lag = -1;
+    if (workerPool == null) {
+      for (MetricNamePartition partition : partitions) {
+        lag = Math.max(lag, runPartition(partition, currentTime, sleepInterval));
+      }
+      return lag;
+    }
+
+    List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+    for (final MetricNamePartition partition : partitions) {
+      tasks.add(new Callable<Long>() {
+        @Override
+        public Long call() throws Exception {
+          return runPartition(partition, currentTime, sleepInterval);
+        }
+      });
+    }
+
+    List<Future<Long>> results;
+    try {
+      results = workerPool.invokeAll(tasks);
+    } catch (InterruptedException e) {
+      LOG.info("Interrupted while aggregating partitions.");
+      Thread.currentThread().interrupt();
+      return lag;
+    }
+    for (Future<Long> result : results) {
+      try {
+        lag = Math.max(lag, result.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        LOG.error("Exception during aggregating metrics.", e.getCause());
+      }
+    }
+    return lag;
+  }
+
+  /**
+   * Aggregate the window after the checkpoint of a partition and move the
+   * checkpoint forward.
+   *
+   * @param partition  the partition; null if the aggregator isn't partitioned
+   *
+   * @return the lag of the checkpoint; -1 if nothing was aggregated
+   */
+  private long runPartition(MetricNamePartition partition, long currentTime,
+                            long sleepInterval) {
+    long lastCheckPointTime =
+      readLastCheckpointSavingOnFirstRun(partition, currentTime);
+    if (lastCheckPointTime == -1) {
+      return -1;
+    }
+
+    long lag = Math.max(0, clock.getTime() - lastCheckPointTime);
+    LOG.info("Last check point time: " + lastCheckPointTime + ", lagBy: "
+      + (lag / 1000) + " seconds." + (partition == null ? "" : " " + partition));
+
+    boolean success = partition == null ?
+      doWork(lastCheckPointTime, lastCheckPointTime + sleepInterval) :
+      doWork(lastCheckPointTime, lastCheckPointTime + sleepInterval, partition);
+
+    if (success) {
+      try {
+        // Comment to bug fix:
+        // cannot just save lastCheckPointTime + SLEEP_INTERVAL,
+        // it has to be verified so it is not a time in the future
+        // checkpoint says what was aggregated, and there is no way
+        // the future metrics were aggregated!
+        saveCheckPoint(partition, Math.min(currentTime, lastCheckPointTime +
+          sleepInterval));
+      } catch (IOException io) {
+        LOG.warn("Error saving checkpoint, restarting aggregation at " +
+          "previous checkpoint.");
+      }
+    }
+    return lag;
+  }
+
+  private long readLastCheckpointSavingOnFirstRun(MetricNamePartition partition,
+                                                  long currentTime) {
     long lastCheckPointTime = -1;
 
     try {
-      lastCheckPointTime = readCheckPoint();
+      lastCheckPointTime = readCheckPoint(partition);
       if (isLastCheckPointTooOld(lastCheckPointTime)) {
         LOG.warn("Last Checkpoint is too old, discarding last checkpoint. " +
           "lastCheckPointTime = " + lastCheckPointTime);
@@ -148,7 +258,7 @@ public abstract class AbstractTimelineAggregator implements Runnable {
         // agents/collectors to catch up
         LOG.info("Saving checkpoint time on first run." +
           (currentTime - checkpointDelayMillis));
-        saveCheckPoint(currentTime - checkpointDelayMillis);
+        saveCheckPoint(partition, currentTime - checkpointDelayMillis);
       }
     } catch (IOException io) {
       LOG.warn("Unable to write last checkpoint time. Resuming sleep.", io);
@@ -164,9 +274,41 @@ public abstract class AbstractTimelineAggregator implements Runnable {
         getCheckpointCutOffIntervalMillis());
   }
 
+  /**
+   * Read the checkpoint of a partition. A partition without a checkpoint
+   * starts at the checkpoint of the whole aggregator, so that turning on
+   * partitioning doesn't skip a window.
+   */
+  private long readCheckPoint(MetricNamePartition partition) {
+    if (partition != null) {
+      long checkpoint = readCheckPoint(getCheckpointLocation(partition));
+      if (checkpoint != -1) {
+        return checkpoint;
+      }
+    }
+    return readCheckPoint();
+  }
+
+  private void saveCheckPoint(MetricNamePartition partition,
+                              long checkpointTime) throws IOException {
+    if (partition == null) {
+      saveCheckPoint(checkpointTime);
+    } else {
+      saveCheckPoint(getCheckpointLocation(partition), checkpointTime);
+    }
+  }
+
+  private String getCheckpointLocation(MetricNamePartition partition) {
+    return getCheckpointLocation() + "-" + partition.getIndex();
+  }
+
   protected long readCheckPoint() {
+    return readCheckPoint(getCheckpointLocation());
+  }
+
+  private long readCheckPoint(String checkpointLocation) {
     try {
-      File checkpoint = new File(getCheckpointLocation());
+      File checkpoint = new File(checkpointLocation);
       if (checkpoint.exists()) {
         String contents = FileUtils.readFileToString(checkpoint);
         if (contents != null && !contents.isEmpty()) {
@@ -180,12 +322,17 @@ public abstract class AbstractTimelineAggregator implements Runnable {
   }
 
   protected void saveCheckPoint(long checkpointTime) throws IOException {
-    File checkpoint = new File(getCheckpointLocation());
+    saveCheckPoint(getCheckpointLocation(), checkpointTime);
+  }
+
+  private void saveCheckPoint(String checkpointLocation, long checkpointTime)
+    throws IOException {
+    File checkpoint = new File(checkpointLocation);
     if (!checkpoint.exists()) {
       boolean done = checkpoint.createNewFile();
       if (!done) {
         throw new IOException("Could not create checkpoint at location, " +
-          getCheckpointLocation());
+          checkpointLocation);
       }
     }
     FileUtils.writeStringToFile(checkpoint, String.valueOf(checkpointTime));
@@ -199,11 +346,28 @@ public abstract class AbstractTimelineAggregator implements Runnable {
    * @param endTime Sample end time
    */
   public boolean doWork(long startTime, long endTime) {
+    return doWork(startTime, endTime, null);
+  }
+
+  /**
+   * Read metrics of a metric name partition written during the time
+   * interval and save the sum and total in the aggregate table.
+   *
+   * @param startTime Sample start time
+   * @param endTime Sample end time
+   * @param partition the metric names to aggregate; null for all
+   */
+  protected boolean doWork(long startTime, long endTime,
+                           MetricNamePartition partition) {
     LOG.info("Start aggregation cycle @ " + new Date() + ", " +
-      "startTime = " + new Date(startTime) + ", endTime = " + new Date(endTime));
+      "startTime = " + new Date(startTime) + ", endTime = " + new Date(endTime) +
+      (partition == null ? "" : ", " + partition));
 
     boolean success = true;
     Condition condition = prepareMetricQueryCondition(startTime, endTime);
+    if (partition != null) {
+      condition.setMetricNameRange(partition.getFrom(), partition.getTo());
+    }
 
     Connection conn = null;
     PreparedStatement stmt = null;
@@ -271,4 +435,19 @@ public abstract class AbstractTimelineAggregator implements Runnable {
   public abstract boolean isDisabled();
 
   protected abstract String getCheckpointLocation();
+
+  /**
+   * Name of the aggregator in its self metrics, derived from the name of
+   * the checkpoint file.
+   */
+  protected String getName() {
+    String name = FilenameUtils.getName(getCheckpointLocation());
+    if (name.startsWith("timeline-metrics-")) {
+      name = name.substring("timeline-metrics-".length());
+    }
+    if (name.endsWith("-checkpoint")) {
+      name = name.substring(0, name.length() - "-checkpoint".length());
+    }
+    return name;
+  }
 }
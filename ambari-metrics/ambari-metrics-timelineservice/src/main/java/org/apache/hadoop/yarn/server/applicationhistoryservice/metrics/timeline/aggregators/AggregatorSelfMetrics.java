@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.COLLECTOR_APP_ID;
+
+/**
+ * Records the lag and run time of the aggregators as metrics of the
+ * collector itself, so that they can be queried and graphed like any
+ * other metric.
+ * <p/>
+ * The metrics are named aggregator.&lt;aggregator name&gt;.lag and
+ * aggregator.&lt;aggregator name&gt;.runtime, both in milliseconds. Other
+ * parts of the collector publish their metrics with {@link #publish(long, Map)}.
+ */
+public class AggregatorSelfMetrics {
+  private static final Log LOG = LogFactory.getLog(AggregatorSelfMetrics.class);
+
+  private final PhoenixHBaseAccessor hBaseAccessor;
+  private final String hostName;
+
+  public AggregatorSelfMetrics(PhoenixHBaseAccessor hBaseAccessor,
+                               String hostName) {
+    this.hBaseAccessor = hBaseAccessor;
+    this.hostName = hostName;
+  }
+
+  /**
+   * Record the metrics of an aggregation cycle.
+   *
+   * @param aggregatorName  the name of the aggregator
+   * @param timestamp       the start time of the cycle
+   * @param lagMillis       the time between the checkpoint and the start of
+   *                        the cycle
+   * @param runtimeMillis   the run time of the cycle
+   */
+  public void publish(String aggregatorName, long timestamp, long lagMillis,
+                      long runtimeMillis) {
+    Map<String, Double> values = new LinkedHashMap<String, Double>(2);
+    values.put("aggregator." + aggregatorName + ".lag", (double) lagMillis);
+    values.put("aggregator." + aggregatorName + ".runtime",
+      (double) runtimeMillis);
+    publish(timestamp, values);
+  }
+
+  /**
+   * Record metrics of the collector.
+   *
+   * @param timestamp  the time of the values
+   * @param values     the values keyed by metric name
+   */
+  public void publish(long timestamp, Map<String, Double> values) {
+    List<TimelineMetric> metricList =
+      new ArrayList<TimelineMetric>(values.size());
+    for (Map.Entry<String, Double> entry : values.entrySet()) {
+      metricList.add(createMetric(entry.getKey(), timestamp, entry.getValue()));
+    }
+
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.setMetrics(metricList);
+    try {
+      hBaseAccessor.insertMetricRecords(metrics);
+    } catch (Exception e) {
+      // never fail the caller because its metrics can't be written
+      LOG.warn("Unable to save collector metrics " + values.keySet(), e);
+    }
+  }
+
+  private TimelineMetric createMetric(String metricName, long timestamp,
+                                      double value) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(metricName);
+    metric.setAppId(COLLECTOR_APP_ID);
+    metric.setHostName(hostName);
+    metric.setStartTime(timestamp);
+    metric.setMetricValues(
+      new TimelineMetricSeries.Builder(1).add(timestamp, value).build());
+    return metric;
+  }
+}
@@ -18,6 +18,8 @@
 package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators;
 
 
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+
 import java.util.Map;
 
 /**
@@ -26,6 +28,13 @@ import java.util.Map;
 public class AggregatorUtils {
 
   public static double[] calculateAggregates(Map<Long, Double> metricValues) {
+    if (metricValues instanceof TimelineMetricSeries || metricValues == null) {
+      return calculateAggregates((TimelineMetricSeries) metricValues);
+    }
+    return calculateAggregates(new TimelineMetricSeries(metricValues));
+  }
+
+  public static double[] calculateAggregates(TimelineMetricSeries metricValues) {
     double[] values = new double[4];
     double max = Double.MIN_VALUE;
     double min = Double.MAX_VALUE;
@@ -33,9 +42,10 @@ public class AggregatorUtils {
     int metricCount = 0;
 
     if (metricValues != null && !metricValues.isEmpty()) {
-      for (Double value : metricValues.values()) {
+      for (int i = 0; i < metricValues.size(); i++) {
+        double value = metricValues.getValue(i);
         // TODO: Some nulls in data - need to investigate null values from host
-        if (value != null) {
+        if (!Double.isNaN(value)) {
           if (value > max) {
             max = value;
           }
@@ -45,7 +55,7 @@ public class AggregatorUtils {
           sum += value;
         }
       }
-      metricCount = metricValues.values().size();
+      metricCount = metricValues.size();
     }
     // BR: WHY ZERO is a good idea?
     values[0] = sum;
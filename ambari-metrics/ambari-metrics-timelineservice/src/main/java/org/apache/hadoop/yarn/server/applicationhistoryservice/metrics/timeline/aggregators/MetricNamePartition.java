@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * A range of metric names aggregated independently of the other ranges.
+ * <p/>
+ * The row keys of all metric tables start with the metric name and all
+ * aggregates are per metric, so the metric names can be split into ranges
+ * which are read and aggregated in parallel, each with its own checkpoint.
+ */
+public class MetricNamePartition {
+  private final int index;
+  private final String from;
+  private final String to;
+
+  public MetricNamePartition(int index, String from, String to) {
+    this.index = index;
+    this.from = from;
+    this.to = to;
+  }
+
+  /**
+   * Create the partitions for a list of split points. Each split point is
+   * the first metric name of a partition.
+   *
+   * @param splits  comma separated metric names; may be empty
+   *
+   * @return the partitions ordered by metric name; a single unbounded
+   *         partition if there are no split points
+   */
+  public static List<MetricNamePartition> fromSplits(String splits) {
+    TreeSet<String> splitPoints = new TreeSet<String>();
+    if (!StringUtils.isEmpty(splits)) {
+      for (String split : splits.split(",")) {
+        if (!split.trim().isEmpty()) {
+          splitPoints.add(split.trim());
+        }
+      }
+    }
+    if (splitPoints.isEmpty()) {
+      return Collections.singletonList(new MetricNamePartition(0, null, null));
+    }
+
+    List<MetricNamePartition> partitions = new ArrayList<MetricNamePartition>();
+    String from = null;
+    for (String split : splitPoints) {
+      partitions.add(new MetricNamePartition(partitions.size(), from, split));
+      from = split;
+    }
+    partitions.add(new MetricNamePartition(partitions.size(), from, null));
+    return partitions;
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  /**
+   * The first metric name in the partition; null for no lower bound.
+   */
+  public String getFrom() {
+    return from;
+  }
+
+  /**
+   * The first metric name after the partition; null for no upper bound.
+   */
+  public String getTo() {
+    return to;
+  }
+
+  @Override
+  public String toString() {
+    return "MetricNamePartition{" +
+      "index=" + index +
+      ", from='" + from + '\'' +
+      ", to='" + to + '\'' +
+      '}';
+  }
+}
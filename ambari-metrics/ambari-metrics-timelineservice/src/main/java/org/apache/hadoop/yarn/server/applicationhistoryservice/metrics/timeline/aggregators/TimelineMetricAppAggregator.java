@@ -21,12 +21,14 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_APP_IDS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_APP_ID;
 
@@ -40,16 +42,28 @@ public class TimelineMetricAppAggregator {
   private static final Log LOG = LogFactory.getLog(TimelineMetricAppAggregator.class);
   // Lookup to check candidacy of an app
   private final List<String> appIdsToAggregate;
-  // Map to lookup apps on a host
-  private Map<String, List<String>> hostedAppsMap = new HashMap<String, List<String>>();
+  // Map to lookup apps on a host, shared by the aggregators of all partitions
+  private final ConcurrentMap<String, CopyOnWriteArrayList<String>> hostedAppsMap;
 
   Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics;
 
   public TimelineMetricAppAggregator(Configuration metricsConf) {
     appIdsToAggregate = getAppIdsForHostAggregation(metricsConf);
+    hostedAppsMap = new ConcurrentHashMap<String, CopyOnWriteArrayList<String>>();
     LOG.info("AppIds configured for aggregation: " + appIdsToAggregate);
   }
 
+  /**
+   * Create an aggregator for one aggregation cycle of a metric name
+   * partition. It shares the configuration and the apps found on each host
+   * with the given aggregator, but has its own aggregates, so that the
+   * partitions can be aggregated at the same time.
+   */
+  public TimelineMetricAppAggregator(TimelineMetricAppAggregator aggregator) {
+    appIdsToAggregate = aggregator.appIdsToAggregate;
+    hostedAppsMap = aggregator.hostedAppsMap;
+  }
+
   /**
    * Lifecycle method to initialize aggregation cycle.
    */
@@ -72,7 +86,7 @@ public class TimelineMetricAppAggregator {
   public void destroy() {
     LOG.debug("Cleanup aggregated data as well as in-memory state.");
     aggregateClusterMetrics = null;
-    hostedAppsMap = new HashMap<String, List<String>>();
+    hostedAppsMap.clear();
   }
 
   /**
@@ -87,7 +101,7 @@ public class TimelineMetricAppAggregator {
                                            String hostname, Double metricValue) {
 
     String appId = clusterMetric.getAppId();
-    if (appId == null) {
+    if (appId == null || hostname == null) {
       return; // No real use case except tests
     }
 
@@ -101,13 +115,12 @@ public class TimelineMetricAppAggregator {
       // Build the hostedapps map if not a host metric
       // Check app candidacy for host aggregation
       if (appIdsToAggregate.contains(appId)) {
-        List<String> appIds = hostedAppsMap.get(hostname);
+        CopyOnWriteArrayList<String> appIds = hostedAppsMap.get(hostname);
         if (appIds == null) {
-          appIds = new ArrayList<String>();
-          hostedAppsMap.put(hostname, appIds);
+          hostedAppsMap.putIfAbsent(hostname, new CopyOnWriteArrayList<String>());
+          appIds = hostedAppsMap.get(hostname);
         }
-        if (!appIds.contains(appId)) {
-          appIds.add(appId);
+        if (appIds.addIfAbsent(appId)) {
           LOG.info("Adding appId to hosted apps: appId = " +
             clusterMetric.getAppId() + ", hostname = " + hostname);
         }
@@ -22,7 +22,6 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
@@ -30,9 +29,6 @@ import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.
 import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_MINUTE_CHECKPOINT_CUTOFF_MULTIPLIER;
@@ -51,6 +47,10 @@ import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.ti
  */
 public class TimelineMetricClusterAggregator extends AbstractTimelineAggregator {
   private static final Log LOG = LogFactory.getLog(TimelineMetricClusterAggregator.class);
+  /**
+   * Number of finished aggregates to collect before saving them.
+   */
+  private static final int AGGREGATE_FLUSH_SIZE = 10000;
   private static final String CLUSTER_AGGREGATOR_CHECKPOINT_FILE =
     "timeline-metrics-cluster-aggregator-checkpoint";
   private final String checkpointLocation;
@@ -89,15 +89,20 @@ public class TimelineMetricClusterAggregator extends AbstractTimelineAggregator
   @Override
   protected void aggregate(ResultSet rs, long startTime, long endTime)
     throws SQLException, IOException {
-    List<Long[]> timeSlices = getTimeSlices(startTime, endTime);
-    // Initialize app aggregates for host metrics
-    appAggregator.init();
-    Map<TimelineClusterMetric, MetricClusterAggregate>
-      aggregateClusterMetrics = aggregateMetricsFromResultSet(rs, timeSlices);
-
-    LOG.info("Saving " + aggregateClusterMetrics.size() + " metric aggregates.");
-    hBaseAccessor.saveClusterAggregateRecords(aggregateClusterMetrics);
-    appAggregator.cleanup();
+    long start = System.currentTimeMillis();
+    // Initialize app aggregates for host metrics, partitions of the window
+    // may be aggregated at the same time
+    TimelineMetricAppAggregator cycleAppAggregator =
+      new TimelineMetricAppAggregator(appAggregator);
+    cycleAppAggregator.init();
+    try {
+      int saved = aggregateMetricsFromResultSet(rs, startTime, endTime,
+        cycleAppAggregator);
+      LOG.info("Saved " + saved + " metric aggregates in " +
+        (System.currentTimeMillis() - start) + " ms.");
+    } finally {
+      cycleAppAggregator.cleanup();
+    }
   }
 
   @Override
@@ -116,55 +121,47 @@ public class TimelineMetricClusterAggregator extends AbstractTimelineAggregator
     return condition;
   }
 
-  private List<Long[]> getTimeSlices(long startTime, long endTime) {
-    List<Long[]> timeSlices = new ArrayList<Long[]>();
-    long sliceStartTime = startTime;
-    while (sliceStartTime < endTime) {
-      timeSlices.add(new Long[] { sliceStartTime, sliceStartTime + timeSliceIntervalMillis});
-      sliceStartTime += timeSliceIntervalMillis;
-    }
-    return timeSlices;
-  }
-
-  private Map<TimelineClusterMetric, MetricClusterAggregate> aggregateMetricsFromResultSet(ResultSet rs, List<Long[]> timeSlices)
+  /**
+   * Aggregate the rows in a single pass. The rows are ordered by metric, so
+   * the aggregates of a metric are complete once the next metric starts and
+   * are saved in batches of {@link #AGGREGATE_FLUSH_SIZE} instead of being
+   * held until the whole window has been read.
+   *
+   * @return the number of saved aggregates
+   */
+  private int aggregateMetricsFromResultSet(ResultSet rs, long startTime,
+                                            long endTime,
+                                            TimelineMetricAppAggregator cycleAppAggregator)
       throws SQLException, IOException {
-    Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics =
-      new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
-    // Create time slices
+    TimelineMetricClusterSliceAggregator sliceAggregator =
+      new TimelineMetricClusterSliceAggregator(startTime, endTime,
+        timeSliceIntervalMillis, cycleAppAggregator);
+    int saved = 0;
 
     while (rs.next()) {
-      TimelineMetric metric = timelineMetricReadHelper.getTimelineMetricFromResultSet(rs);
-
-      Map<TimelineClusterMetric, Double> clusterMetrics =
-        sliceFromTimelineMetric(metric, timeSlices);
-
-      if (clusterMetrics != null && !clusterMetrics.isEmpty()) {
-        for (Map.Entry<TimelineClusterMetric, Double> clusterMetricEntry :
-            clusterMetrics.entrySet()) {
-
-          TimelineClusterMetric clusterMetric = clusterMetricEntry.getKey();
-          Double avgValue = clusterMetricEntry.getValue();
-
-          MetricClusterAggregate aggregate = aggregateClusterMetrics.get(clusterMetric);
-
-          if (aggregate == null) {
-            aggregate = new MetricClusterAggregate(avgValue, 1, null, avgValue, avgValue);
-            aggregateClusterMetrics.put(clusterMetric, aggregate);
-          } else {
-            aggregate.updateSum(avgValue);
-            aggregate.updateNumberOfHosts(1);
-            aggregate.updateMax(avgValue);
-            aggregate.updateMin(avgValue);
-          }
-          // Update app level aggregates
-          appAggregator.processTimelineClusterMetric(clusterMetric,
-            metric.getHostName(), avgValue);
-        }
+      sliceAggregator.add(
+        timelineMetricReadHelper.getTimelineMetricFromResultSet(rs));
+
+      if (sliceAggregator.getPendingCount() >= AGGREGATE_FLUSH_SIZE) {
+        saved += saveAggregates(sliceAggregator.drainPending());
       }
     }
+    sliceAggregator.finish();
+
+    Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics =
+      sliceAggregator.drainPending();
     // Add app level aggregates to save
-    aggregateClusterMetrics.putAll(appAggregator.getAggregateClusterMetrics());
-    return aggregateClusterMetrics;
+    aggregateClusterMetrics.putAll(cycleAppAggregator.getAggregateClusterMetrics());
+    saved += saveAggregates(aggregateClusterMetrics);
+    return saved;
+  }
+
+  private int saveAggregates(
+      Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics)
+      throws SQLException {
+    LOG.debug("Saving " + aggregateClusterMetrics.size() + " metric aggregates.");
+    hBaseAccessor.saveClusterAggregateRecords(aggregateClusterMetrics);
+    return aggregateClusterMetrics.size();
   }
 
   @Override
@@ -181,55 +178,4 @@ public class TimelineMetricClusterAggregator extends AbstractTimelineAggregator
   public boolean isDisabled() {
     return metricsConf.getBoolean(CLUSTER_AGGREGATOR_MINUTE_DISABLED, false);
   }
-
-  private Map<TimelineClusterMetric, Double> sliceFromTimelineMetric(
-        TimelineMetric timelineMetric, List<Long[]> timeSlices) {
-
-    if (timelineMetric.getMetricValues().isEmpty()) {
-      return null;
-    }
-
-    Map<TimelineClusterMetric, Double> timelineClusterMetricMap =
-      new HashMap<TimelineClusterMetric, Double>();
-
-    for (Map.Entry<Long, Double> metric : timelineMetric.getMetricValues().entrySet()) {
-      // TODO: investigate null values - pre filter
-      if (metric.getValue() == null) {
-        continue;
-      }
-      Long timestamp = getSliceTimeForMetric(timeSlices,
-                       Long.parseLong(metric.getKey().toString()));
-      if (timestamp != -1) {
-        // Metric is within desired time range
-        TimelineClusterMetric clusterMetric = new TimelineClusterMetric(
-          timelineMetric.getMetricName(),
-          timelineMetric.getAppId(),
-          timelineMetric.getInstanceId(),
-          timestamp,
-          timelineMetric.getType());
-        if (!timelineClusterMetricMap.containsKey(clusterMetric)) {
-          timelineClusterMetricMap.put(clusterMetric, metric.getValue());
-        } else {
-          Double oldValue = timelineClusterMetricMap.get(clusterMetric);
-          Double newValue = (oldValue + metric.getValue()) / 2;
-          timelineClusterMetricMap.put(clusterMetric, newValue);
-        }
-      }
-    }
-
-    return timelineClusterMetricMap;
-  }
-
-  /**
-   * Return beginning of the time slice into which the metric fits.
-   */
-  private Long getSliceTimeForMetric(List<Long[]> timeSlices, Long timestamp) {
-    for (Long[] timeSlice : timeSlices) {
-      if (timestamp >= timeSlice[0] && timestamp < timeSlice[1]) {
-        return timeSlice[0];
-      }
-    }
-    return -1l;
-  }
-
 }
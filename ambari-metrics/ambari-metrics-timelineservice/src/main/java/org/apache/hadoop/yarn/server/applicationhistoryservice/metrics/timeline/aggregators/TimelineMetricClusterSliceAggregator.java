@@ -0,0 +1,216 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Slices host metrics into the time slices of a cluster aggregation window
+ * and aggregates each slice across hosts.
+ * <p/>
+ * The metrics must be added ordered by metric name, app id and instance id,
+ * as returned by the cluster aggregator query. The aggregates of a metric
+ * only become pending once the next metric starts, so that only the slices
+ * of one metric are held while it is being aggregated. The pending
+ * aggregates are taken by the caller with {@link #drainPending()}.
+ * <p/>
+ * All values of a host that fall into the same slice are averaged first,
+ * the average is then added to the aggregate of the slice.
+ */
+public class TimelineMetricClusterSliceAggregator {
+  private final long startTime;
+  private final long sliceIntervalMillis;
+  private final TimelineMetricAppAggregator appAggregator;
+
+  // Aggregates of the current metric, indexed by time slice
+  private final MetricClusterAggregate[] slices;
+  private String metricName;
+  private String appId;
+  private String instanceId;
+  private String type;
+  private boolean hasSlices = false;
+
+  private Map<TimelineClusterMetric, MetricClusterAggregate> pending =
+    new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
+
+  /**
+   * Create a slice aggregator for an aggregation window. The last slice
+   * starts before the end time and may extend past it.
+   *
+   * @param startTime            start of the window
+   * @param endTime              end of the window
+   * @param sliceIntervalMillis  length of a time slice
+   * @param appAggregator        app level aggregator to pass the sliced
+   *                             host values to; may be null
+   */
+  public TimelineMetricClusterSliceAggregator(long startTime, long endTime,
+                                              long sliceIntervalMillis,
+                                              TimelineMetricAppAggregator appAggregator) {
+    if (sliceIntervalMillis <= 0) {
+      throw new IllegalArgumentException("Invalid time slice interval: " +
+        sliceIntervalMillis);
+    }
+    this.startTime = startTime;
+    this.sliceIntervalMillis = sliceIntervalMillis;
+    this.appAggregator = appAggregator;
+
+    long numberOfSlices = endTime > startTime ?
+      (endTime - startTime + sliceIntervalMillis - 1) / sliceIntervalMillis : 0;
+    slices = new MetricClusterAggregate[(int) numberOfSlices];
+  }
+
+  /**
+   * Add the values of a host metric.
+   *
+   * @param metric  the metric read from the precision table
+   */
+  public void add(TimelineMetric metric) {
+    if (!isCurrentMetric(metric)) {
+      finishMetric();
+      metricName = metric.getMetricName();
+      appId = metric.getAppId();
+      instanceId = metric.getInstanceId();
+      type = metric.getType();
+    }
+
+    TimelineMetricSeries metricValues = metric.getMetricSeries();
+    int slice = -1;
+    double sliceValue = 0.0;
+
+    // the series is sorted, so the values of a slice are contiguous
+    for (int i = 0; i < metricValues.size(); i++) {
+      double value = metricValues.getValue(i);
+      // TODO: investigate null values - pre filter
+      if (Double.isNaN(value)) {
+        continue;
+      }
+      int valueSlice = getSliceIndex(metricValues.getTimestamp(i));
+      if (valueSlice < 0) {
+        continue;
+      }
+      if (valueSlice == slice) {
+        sliceValue = (sliceValue + value) / 2;
+      } else {
+        if (slice >= 0) {
+          addHostValue(slice, metric.getHostName(), sliceValue);
+        }
+        slice = valueSlice;
+        sliceValue = value;
+      }
+    }
+    if (slice >= 0) {
+      addHostValue(slice, metric.getHostName(), sliceValue);
+    }
+  }
+
+  /**
+   * Make the aggregates of the last added metric pending. To be called
+   * after the last metric was added.
+   */
+  public void finish() {
+    finishMetric();
+    metricName = null;
+    appId = null;
+    instanceId = null;
+    type = null;
+  }
+
+  /**
+   * Get the number of aggregates waiting to be taken.
+   */
+  public int getPendingCount() {
+    return pending.size();
+  }
+
+  /**
+   * Take the pending aggregates.
+   *
+   * @return the aggregates of the metrics finished since the last call
+   */
+  public Map<TimelineClusterMetric, MetricClusterAggregate> drainPending() {
+    Map<TimelineClusterMetric, MetricClusterAggregate> drained = pending;
+    pending = new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
+    return drained;
+  }
+
+  /**
+   * Return the index of the time slice into which the timestamp fits.
+   *
+   * @return the slice index; -1 if the timestamp is outside the window
+   */
+  int getSliceIndex(long timestamp) {
+    if (timestamp < startTime) {
+      return -1;
+    }
+    long index = (timestamp - startTime) / sliceIntervalMillis;
+    return index < slices.length ? (int) index : -1;
+  }
+
+  private boolean isCurrentMetric(TimelineMetric metric) {
+    return metricName != null &&
+      metricName.equals(metric.getMetricName()) &&
+      equal(appId, metric.getAppId()) &&
+      equal(instanceId, metric.getInstanceId());
+  }
+
+  private void addHostValue(int slice, String hostName, double value) {
+    MetricClusterAggregate aggregate = slices[slice];
+    if (aggregate == null) {
+      slices[slice] = new MetricClusterAggregate(value, 1, null, value, value);
+      hasSlices = true;
+    } else {
+      aggregate.updateSum(value);
+      aggregate.updateNumberOfHosts(1);
+      aggregate.updateMax(value);
+      aggregate.updateMin(value);
+    }
+
+    if (appAggregator != null) {
+      appAggregator.processTimelineClusterMetric(
+        new TimelineClusterMetric(metricName, appId, instanceId,
+          getSliceStartTime(slice), type), hostName, value);
+    }
+  }
+
+  private void finishMetric() {
+    if (!hasSlices) {
+      return;
+    }
+    for (int i = 0; i < slices.length; i++) {
+      if (slices[i] != null) {
+        pending.put(new TimelineClusterMetric(metricName, appId, instanceId,
+          getSliceStartTime(i), type), slices[i]);
+      }
+    }
+    Arrays.fill(slices, null);
+    hasSlices = false;
+  }
+
+  private long getSliceStartTime(int slice) {
+    return startTime + slice * sliceIntervalMillis;
+  }
+
+  private static boolean equal(String a, String b) {
+    return a == null ? b == null : a.equals(b);
+  }
+}
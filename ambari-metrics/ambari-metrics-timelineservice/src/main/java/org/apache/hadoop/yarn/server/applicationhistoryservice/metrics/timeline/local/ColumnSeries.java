@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local;
+
+import java.util.Arrays;
+
+/**
+ * The values of one series, column by column: a column of timestamps and
+ * one or more columns of values, e.g. the sum, count, max and min of an
+ * aggregate. Rows are appended in any order; {@link #normalize()} sorts them
+ * by timestamp, the row added last winning for a duplicate timestamp.
+ */
+public class ColumnSeries {
+  private final int columnCount;
+  private long[] timestamps;
+  private double[][] columns;
+  private int size = 0;
+  private boolean sorted = true;
+  private String type;
+
+  public ColumnSeries(int columnCount, int capacity) {
+    this.columnCount = columnCount;
+    capacity = Math.max(capacity, 4);
+    timestamps = new long[capacity];
+    columns = new double[columnCount][capacity];
+  }
+
+  /**
+   * Append a row; its values are set with {@link #set}.
+   *
+   * @return the index of the row
+   */
+  public int addRow(long timestamp) {
+    if (size == timestamps.length) {
+      int newCapacity = size + (size >> 1) + 1;
+      timestamps = Arrays.copyOf(timestamps, newCapacity);
+      for (int c = 0; c < columnCount; c++) {
+        columns[c] = Arrays.copyOf(columns[c], newCapacity);
+      }
+    }
+    if (size > 0 && timestamp <= timestamps[size - 1]) {
+      sorted = false;
+    }
+    timestamps[size] = timestamp;
+    return size++;
+  }
+
+  public void set(int column, int index, double value) {
+    columns[column][index] = value;
+  }
+
+  /**
+   * Append a row of a single column series.
+   */
+  public void add(long timestamp, double value) {
+    int index = addRow(timestamp);
+    columns[0][index] = value;
+  }
+
+  /**
+   * Append the rows of another series with the same columns.
+   */
+  public void addAll(ColumnSeries other) {
+    for (int i = 0; i < other.size; i++) {
+      int index = addRow(other.timestamps[i]);
+      for (int c = 0; c < columnCount; c++) {
+        columns[c][index] = other.columns[c][i];
+      }
+    }
+    if (other.type != null) {
+      type = other.type;
+    }
+  }
+
+  /**
+   * Sort the rows by timestamp and drop all but the last added row of a
+   * timestamp.
+   */
+  public void normalize() {
+    if (sorted) {
+      return;
+    }
+    Integer[] order = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    // stable, so rows of the same timestamp stay in the order of adding
+    Arrays.sort(order, new java.util.Comparator<Integer>() {
+      @Override
+      public int compare(Integer i1, Integer i2) {
+        long t1 = timestamps[i1];
+        long t2 = timestamps[i2];
+        return t1 < t2 ? -1 : t1 == t2 ? 0 : 1;
+      }
+    });
+
+    long[] newTimestamps = new long[size];
+    double[][] newColumns = new double[columnCount][size];
+    int newSize = 0;
+    for (int i = 0; i < size; i++) {
+      int row = order[i];
+      int index = newSize > 0 && newTimestamps[newSize - 1] == timestamps[row] ?
+        newSize - 1 : newSize++;
+      newTimestamps[index] = timestamps[row];
+      for (int c = 0; c < columnCount; c++) {
+        newColumns[c][index] = columns[c][row];
+      }
+    }
+    timestamps = newTimestamps;
+    columns = newColumns;
+    size = newSize;
+    sorted = true;
+  }
+
+  /**
+   * Get the index of the first row at or after the timestamp. The series
+   * must be normalized.
+   */
+  public int indexOf(long timestamp) {
+    int index = Arrays.binarySearch(timestamps, 0, size, timestamp);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int getColumnCount() {
+    return columnCount;
+  }
+
+  public long getTimestamp(int index) {
+    return timestamps[index];
+  }
+
+  public double getValue(int column, int index) {
+    return columns[column][index];
+  }
+
+  public long getFirstTimestamp() {
+    return timestamps[0];
+  }
+
+  public long getLastTimestamp() {
+    return timestamps[size - 1];
+  }
+
+  /**
+   * Get the units of the series.
+   */
+  public String getType() {
+    return type;
+  }
+
+  public void setType(String type) {
+    this.type = type;
+  }
+}
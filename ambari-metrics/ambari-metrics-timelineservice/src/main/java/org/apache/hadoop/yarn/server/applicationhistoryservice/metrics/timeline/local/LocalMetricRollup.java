@@ -0,0 +1,214 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.MetricClusterAggregate;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineClusterMetric;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricClusterSliceAggregator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local.SegmentTable.COUNT;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local.SegmentTable.MAX;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local.SegmentTable.MIN;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local.SegmentTable.SUM;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local.SegmentTable.VALUE;
+
+/**
+ * The aggregations of the local store, which roll the series of one table
+ * up into the coarser rows of another, the way the aggregators of the HBase
+ * store do.
+ */
+public class LocalMetricRollup {
+
+  private LocalMetricRollup() {
+  }
+
+  /**
+   * Aggregate the values of host series into buckets.
+   *
+   * @param source        the series of the precision table, normalized
+   * @param bucketMillis  length of a bucket
+   *
+   * @return the sum, count, max and min of every bucket, by series
+   */
+  public static Map<SeriesKey, ColumnSeries> aggregate(
+      Map<SeriesKey, ColumnSeries> source, long bucketMillis) {
+    Map<SeriesKey, ColumnSeries> result =
+      new HashMap<SeriesKey, ColumnSeries>(source.size());
+    for (Map.Entry<SeriesKey, ColumnSeries> entry : source.entrySet()) {
+      ColumnSeries values = entry.getValue();
+      ColumnSeries buckets = new ColumnSeries(4, values.size() / 8);
+      int row = -1;
+      long bucket = Long.MIN_VALUE;
+      for (int i = 0; i < values.size(); i++) {
+        double value = values.getValue(VALUE, i);
+        if (Double.isNaN(value)) {
+          continue;
+        }
+        long time = values.getTimestamp(i);
+        long valueBucket = time - SegmentTable.floorMod(time, bucketMillis);
+        if (row < 0 || valueBucket != bucket) {
+          bucket = valueBucket;
+          row = buckets.addRow(bucket);
+          buckets.set(SUM, row, value);
+          buckets.set(COUNT, row, 1);
+          buckets.set(MAX, row, value);
+          buckets.set(MIN, row, value);
+        } else {
+          buckets.set(SUM, row, buckets.getValue(SUM, row) + value);
+          buckets.set(COUNT, row, buckets.getValue(COUNT, row) + 1);
+          buckets.set(MAX, row, Math.max(buckets.getValue(MAX, row), value));
+          buckets.set(MIN, row, Math.min(buckets.getValue(MIN, row), value));
+        }
+      }
+      if (buckets.size() > 0) {
+        buckets.setType(values.getType());
+        result.put(entry.getKey(), buckets);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Combine the rows of aggregated series into coarser buckets.
+   *
+   * @param source        the aggregated series, normalized
+   * @param bucketMillis  length of a bucket
+   *
+   * @return the combined sum, count, max and min of every bucket, by series
+   */
+  public static Map<SeriesKey, ColumnSeries> combine(
+      Map<SeriesKey, ColumnSeries> source, long bucketMillis) {
+    Map<SeriesKey, ColumnSeries> result =
+      new HashMap<SeriesKey, ColumnSeries>(source.size());
+    for (Map.Entry<SeriesKey, ColumnSeries> entry : source.entrySet()) {
+      ColumnSeries values = entry.getValue();
+      ColumnSeries buckets = new ColumnSeries(4, values.size() / 8);
+      int row = -1;
+      long bucket = Long.MIN_VALUE;
+      for (int i = 0; i < values.size(); i++) {
+        long time = values.getTimestamp(i);
+        long valueBucket = time - SegmentTable.floorMod(time, bucketMillis);
+        if (row < 0 || valueBucket != bucket) {
+          bucket = valueBucket;
+          row = buckets.addRow(bucket);
+          buckets.set(SUM, row, values.getValue(SUM, i));
+          buckets.set(COUNT, row, values.getValue(COUNT, i));
+          buckets.set(MAX, row, values.getValue(MAX, i));
+          buckets.set(MIN, row, values.getValue(MIN, i));
+        } else {
+          buckets.set(SUM, row,
+            buckets.getValue(SUM, row) + values.getValue(SUM, i));
+          buckets.set(COUNT, row,
+            buckets.getValue(COUNT, row) + values.getValue(COUNT, i));
+          buckets.set(MAX, row,
+            Math.max(buckets.getValue(MAX, row), values.getValue(MAX, i)));
+          buckets.set(MIN, row,
+            Math.min(buckets.getValue(MIN, row), values.getValue(MIN, i)));
+        }
+      }
+      if (buckets.size() > 0) {
+        buckets.setType(values.getType());
+        result.put(entry.getKey(), buckets);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Aggregate host series across hosts into the time slices of a window,
+   * with the slice aggregator of the cluster aggregator.
+   *
+   * @param source       the series of the precision table, normalized
+   * @param startTime    start of the window
+   * @param endTime      end of the window
+   * @param sliceMillis  length of a time slice
+   *
+   * @return the sum, number of hosts, max and min of every slice, by
+   *         cluster series
+   */
+  public static Map<SeriesKey, ColumnSeries> aggregateCluster(
+      Map<SeriesKey, ColumnSeries> source, long startTime, long endTime,
+      long sliceMillis) {
+    // the slice aggregator takes the metrics ordered by name, app id and
+    // instance id
+    List<SeriesKey> keys = new ArrayList<SeriesKey>(source.keySet());
+    Collections.sort(keys, new Comparator<SeriesKey>() {
+      @Override
+      public int compare(SeriesKey k1, SeriesKey k2) {
+        int result = k1.getMetricName().compareTo(k2.getMetricName());
+        if (result == 0) {
+          result = SeriesKey.compare(k1.getAppId(), k2.getAppId());
+        }
+        if (result == 0) {
+          result = SeriesKey.compare(k1.getInstanceId(), k2.getInstanceId());
+        }
+        return result != 0 ? result : k1.compareTo(k2);
+      }
+    });
+
+    TimelineMetricClusterSliceAggregator sliceAggregator =
+      new TimelineMetricClusterSliceAggregator(startTime, endTime, sliceMillis, null);
+    for (SeriesKey key : keys) {
+      ColumnSeries values = source.get(key);
+      TimelineMetricSeries.Builder builder =
+        new TimelineMetricSeries.Builder(values.size());
+      for (int i = 0; i < values.size(); i++) {
+        builder.add(values.getTimestamp(i), values.getValue(VALUE, i));
+      }
+      TimelineMetric metric = new TimelineMetric();
+      metric.setMetricName(key.getMetricName());
+      metric.setHostName(key.getHostName());
+      metric.setAppId(key.getAppId());
+      metric.setInstanceId(key.getInstanceId());
+      metric.setType(values.getType());
+      metric.setMetricValues(builder.build());
+      sliceAggregator.add(metric);
+    }
+    sliceAggregator.finish();
+
+    Map<SeriesKey, ColumnSeries> result = new HashMap<SeriesKey, ColumnSeries>();
+    for (Map.Entry<TimelineClusterMetric, MetricClusterAggregate> entry :
+        sliceAggregator.drainPending().entrySet()) {
+      TimelineClusterMetric clusterMetric = entry.getKey();
+      MetricClusterAggregate aggregate = entry.getValue();
+      SeriesKey key = new SeriesKey(clusterMetric.getMetricName(), null,
+        clusterMetric.getAppId(), clusterMetric.getInstanceId());
+      ColumnSeries slices = result.get(key);
+      if (slices == null) {
+        slices = new ColumnSeries(4, 16);
+        slices.setType(clusterMetric.getType());
+        result.put(key, slices);
+      }
+      int row = slices.addRow(clusterMetric.getTimestamp());
+      slices.set(SUM, row, aggregate.getSum());
+      slices.set(COUNT, row, aggregate.getNumberOfHosts());
+      slices.set(MAX, row, aggregate.getMax());
+      slices.set(MIN, row, aggregate.getMin());
+    }
+    return result;
+  }
+}
@@ -0,0 +1,766 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The files of the local store.
+ * <p/>
+ * Every table is a directory with a directory per time window, holding the
+ * immutable {@link MetricSegment segment} files of the window. Metrics are
+ * partitioned by the hash of their name, a segment holds one partition of a
+ * window and is named after the partition and its generation:
+ * <pre>
+ * &lt;dir&gt;/&lt;table&gt;/&lt;window start&gt;/p&lt;partition&gt;-&lt;generation&gt;.seg
+ * </pre>
+ * Every write creates segments of a new generation; when a series has
+ * values with the same timestamp in several segments, the value of the
+ * newest generation wins.
+ * <p/>
+ * Posted values are buffered in memory and written to segments of the
+ * precision table by {@link #flush}. The aggregate tables are written by
+ * {@link #rollup}, which aggregates a partition of a source window again
+ * whenever it has segments newer than the last rollup, so that late values
+ * are rolled up too. The segments of a partition of a window are merged by
+ * {@link #compact} and expired windows are deleted by {@link #expire}.
+ * These methods are called from a single maintenance thread; queries and
+ * puts may run concurrently with them.
+ */
+public class LocalMetricStorage {
+  private static final Log LOG = LogFactory.getLog(LocalMetricStorage.class);
+
+  static final String TMP_SUFFIX = ".tmp";
+  private static final String ROLLUP_SUFFIX = ".rollup";
+  private static final Pattern SEGMENT_NAME = Pattern.compile("p(\\d+)-(\\d+)\\.seg");
+
+  /**
+   * Number of segments of a partition of a window, at which the segments
+   * are compacted before the window ends.
+   */
+  static final int COMPACTION_THRESHOLD = 8;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final File directory;
+  private final int partitionCount;
+  private final long sliceMillis;
+  private final Map<SegmentTable, Long> ttlMillis;
+  private final AtomicLong generations = new AtomicLong();
+
+  // segments by window start, ordered by generation; the maps are guarded
+  // by the lock, the lists are replaced rather than modified
+  private final Map<SegmentTable, TreeMap<Long, List<MetricSegment>>> segments =
+    new EnumMap<SegmentTable, TreeMap<Long, List<MetricSegment>>>(SegmentTable.class);
+
+  // posted values by window start; guarded by the lock
+  private TreeMap<Long, Map<SeriesKey, ColumnSeries>> head =
+    new TreeMap<Long, Map<SeriesKey, ColumnSeries>>();
+
+  // values being written by a flush, read by queries until their segments
+  // are added; guarded by the lock
+  private TreeMap<Long, Map<SeriesKey, ColumnSeries>> flushing = null;
+
+  private final Object lock = new Object();
+
+  /**
+   * Create the storage.
+   *
+   * @param directory       the directory of the store
+   * @param partitionCount  number of metric name partitions
+   * @param sliceMillis     length of the time slices of the cluster
+   *                        aggregates; must divide an hour
+   * @param ttlMillis       the time to keep the data of each table
+   */
+  public LocalMetricStorage(File directory, int partitionCount, long sliceMillis,
+                            Map<SegmentTable, Long> ttlMillis) {
+    if (partitionCount <= 0) {
+      throw new IllegalArgumentException("Invalid number of partitions: " +
+        partitionCount);
+    }
+    if (sliceMillis <= 0 ||
+        SegmentTable.AGGREGATE.getWindowMillis() % sliceMillis != 0) {
+      throw new IllegalArgumentException("Invalid time slice interval: " +
+        sliceMillis);
+    }
+    this.directory = directory;
+    this.partitionCount = partitionCount;
+    this.sliceMillis = sliceMillis;
+    this.ttlMillis = new EnumMap<SegmentTable, Long>(ttlMillis);
+    for (SegmentTable table : SegmentTable.values()) {
+      segments.put(table, new TreeMap<Long, List<MetricSegment>>());
+    }
+  }
+
+  /**
+   * Open the segments on disk. Files left behind by an interrupted write
+   * are deleted; segments which can't be read are skipped.
+   */
+  public void open() throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create the store directory " + directory);
+    }
+    long maxGeneration = 0L;
+    for (SegmentTable table : SegmentTable.values()) {
+      for (File windowDir : listFiles(new File(directory, table.getDirectoryName()))) {
+        long windowStart;
+        try {
+          windowStart = Long.parseLong(windowDir.getName());
+        } catch (NumberFormatException e) {
+          LOG.warn("Ignoring unknown file " + windowDir);
+          continue;
+        }
+        List<MetricSegment> windowSegments = new ArrayList<MetricSegment>();
+        for (File file : listFiles(windowDir)) {
+          if (file.getName().endsWith(TMP_SUFFIX)) {
+            LOG.info("Deleting incomplete file " + file);
+            file.delete();
+            continue;
+          }
+          Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+          if (!matcher.matches()) {
+            continue;
+          }
+          long generation = Long.parseLong(matcher.group(2));
+          maxGeneration = Math.max(maxGeneration, generation);
+          try {
+            windowSegments.add(MetricSegment.open(file,
+              Integer.parseInt(matcher.group(1)), generation));
+          } catch (IOException e) {
+            LOG.error("Skipping unreadable segment " + file, e);
+          }
+        }
+        if (!windowSegments.isEmpty()) {
+          Collections.sort(windowSegments, GENERATION_ORDER);
+          segments.get(table).put(windowStart,
+            Collections.unmodifiableList(windowSegments));
+        }
+      }
+    }
+    generations.set(maxGeneration);
+  }
+
+  /**
+   * Get the partition of a metric name.
+   */
+  public int getPartition(String metricName) {
+    return (metricName.hashCode() & 0x7fffffff) % partitionCount;
+  }
+
+  /**
+   * Buffer the values of a metric until the next flush.
+   */
+  public void put(TimelineMetric metric) {
+    SeriesKey key = new SeriesKey(metric.getMetricName(), metric.getHostName(),
+      metric.getAppId(), metric.getInstanceId());
+    TimelineMetricSeries values = metric.getMetricSeries();
+
+    synchronized (lock) {
+      long windowStart = Long.MIN_VALUE;
+      ColumnSeries series = null;
+      for (int i = 0; i < values.size(); i++) {
+        long timestamp = values.getTimestamp(i);
+        if (series == null ||
+            timestamp - windowStart >= SegmentTable.RECORD.getWindowMillis() ||
+            timestamp < windowStart) {
+          windowStart = SegmentTable.RECORD.getWindowStart(timestamp);
+          series = getSeries(getWindow(head, windowStart), key, 1);
+          if (metric.getType() != null) {
+            series.setType(metric.getType());
+          }
+        }
+        series.add(timestamp, values.getValue(i));
+      }
+    }
+  }
+
+  /**
+   * Write the buffered values to new segments of the precision table.
+   *
+   * @param now  the current time; values older than the retention of the
+   *             precision table are dropped
+   *
+   * @return the number of written segments
+   */
+  public int flush(long now) throws IOException {
+    TreeMap<Long, Map<SeriesKey, ColumnSeries>> windows;
+    synchronized (lock) {
+      if (head.isEmpty()) {
+        return 0;
+      }
+      windows = head;
+      flushing = head;
+      head = new TreeMap<Long, Map<SeriesKey, ColumnSeries>>();
+    }
+
+    long generation = generations.incrementAndGet();
+    List<MetricSegment> written = new ArrayList<MetricSegment>();
+    try {
+      long expiry = getExpiry(SegmentTable.RECORD, now);
+      for (Map.Entry<Long, Map<SeriesKey, ColumnSeries>> window : windows.entrySet()) {
+        if (window.getKey() + SegmentTable.RECORD.getWindowMillis() <= expiry) {
+          continue;
+        }
+        for (Map.Entry<Integer, Map<SeriesKey, ColumnSeries>> partition :
+            partition(window.getValue()).entrySet()) {
+          written.add(writeSegment(SegmentTable.RECORD, window.getKey(),
+            partition.getKey(), generation, partition.getValue()));
+        }
+      }
+    } catch (IOException e) {
+      // keep the values for the next flush, the values posted in the
+      // meantime are newer
+      synchronized (lock) {
+        for (Map.Entry<Long, Map<SeriesKey, ColumnSeries>> window : head.entrySet()) {
+          Map<SeriesKey, ColumnSeries> flushingWindow = getWindow(windows, window.getKey());
+          for (Map.Entry<SeriesKey, ColumnSeries> entry : window.getValue().entrySet()) {
+            getSeries(flushingWindow, entry.getKey(), 1).addAll(entry.getValue());
+          }
+        }
+        head = windows;
+        flushing = null;
+        addSegments(SegmentTable.RECORD, written);
+      }
+      throw e;
+    }
+
+    synchronized (lock) {
+      addSegments(SegmentTable.RECORD, written);
+      flushing = null;
+    }
+    return written.size();
+  }
+
+  /**
+   * Read the series of a table in a time range.
+   *
+   * @param table      the table
+   * @param filter     the series to read
+   * @param startTime  start of the time range, inclusive
+   * @param endTime    end of the time range, exclusive
+   *
+   * @return the normalized series by key
+   */
+  public TreeMap<SeriesKey, ColumnSeries> read(SegmentTable table,
+      SeriesFilter filter, long startTime, long endTime) throws IOException {
+    long firstWindow = table.getWindowStart(startTime);
+    NavigableMap<Long, List<MetricSegment>> windowSegments;
+    Map<SeriesKey, ColumnSeries> buffered = new HashMap<SeriesKey, ColumnSeries>();
+    synchronized (lock) {
+      windowSegments = new TreeMap<Long, List<MetricSegment>>(
+        segments.get(table).subMap(firstWindow, true, endTime, false));
+      if (table == SegmentTable.RECORD) {
+        if (flushing != null) {
+          readBuffered(flushing.subMap(firstWindow, true, endTime, false),
+            filter, startTime, endTime, buffered);
+        }
+        readBuffered(head.subMap(firstWindow, true, endTime, false),
+          filter, startTime, endTime, buffered);
+      }
+    }
+
+    TreeMap<SeriesKey, ColumnSeries> result = new TreeMap<SeriesKey, ColumnSeries>();
+    for (List<MetricSegment> window : windowSegments.values()) {
+      for (MetricSegment segment : window) {
+        readSegment(segment, filter, startTime, endTime, result);
+      }
+    }
+    // the buffered values are newer than those of any segment
+    for (Map.Entry<SeriesKey, ColumnSeries> entry : buffered.entrySet()) {
+      getSeries(result, entry.getKey(), table.getColumnCount())
+        .addAll(entry.getValue());
+    }
+    for (ColumnSeries series : result.values()) {
+      series.normalize();
+    }
+    return result;
+  }
+
+  /**
+   * Read the latest row of the series of a table.
+   *
+   * @param table   the table
+   * @param filter  the series to read
+   *
+   * @return a series of the latest row by key
+   */
+  public TreeMap<SeriesKey, ColumnSeries> readLatest(SegmentTable table,
+      SeriesFilter filter) throws IOException {
+    List<Long> windowStarts;
+    synchronized (lock) {
+      windowStarts = new ArrayList<Long>(segments.get(table).keySet());
+      if (table == SegmentTable.RECORD) {
+        windowStarts.addAll(head.keySet());
+        if (flushing != null) {
+          windowStarts.addAll(flushing.keySet());
+        }
+      }
+    }
+    Collections.sort(windowStarts, Collections.reverseOrder());
+
+    TreeMap<SeriesKey, ColumnSeries> result = new TreeMap<SeriesKey, ColumnSeries>();
+    long previousWindow = Long.MIN_VALUE;
+    for (long windowStart : windowStarts) {
+      if (windowStart == previousWindow) {
+        continue;
+      }
+      previousWindow = windowStart;
+      Map<SeriesKey, ColumnSeries> window = read(table, filter, windowStart,
+        windowStart + table.getWindowMillis());
+      for (Map.Entry<SeriesKey, ColumnSeries> entry : window.entrySet()) {
+        ColumnSeries values = entry.getValue();
+        if (values.size() == 0 || result.containsKey(entry.getKey())) {
+          continue;
+        }
+        ColumnSeries latest = new ColumnSeries(values.getColumnCount(), 1);
+        int last = values.size() - 1;
+        int row = latest.addRow(values.getTimestamp(last));
+        for (int c = 0; c < values.getColumnCount(); c++) {
+          latest.set(c, row, values.getValue(c, last));
+        }
+        latest.setType(values.getType());
+        result.put(entry.getKey(), latest);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Roll the precision table up into the aggregate tables, and those into
+   * the hourly tables.
+   *
+   * @param now  the current time; only buckets which ended before it are
+   *             rolled up
+   *
+   * @return the number of rolled up partitions of source windows
+   */
+  public int rollup(long now) throws IOException {
+    int count = rollup(SegmentTable.RECORD, SegmentTable.RECORD_MINUTE, now);
+    count += rollup(SegmentTable.RECORD, SegmentTable.AGGREGATE, now);
+    count += rollup(SegmentTable.RECORD_MINUTE, SegmentTable.RECORD_HOURLY, now);
+    count += rollup(SegmentTable.AGGREGATE, SegmentTable.AGGREGATE_HOURLY, now);
+    return count;
+  }
+
+  /**
+   * Merge the segments of a partition of a window into one, once the window
+   * has ended or the partition has {@link #COMPACTION_THRESHOLD} segments.
+   * The merged segment replaces the newest of the segments and keeps its
+   * generation, so that a compaction interrupted before the older segments
+   * are deleted leaves the same data behind.
+   *
+   * @param now  the current time
+   *
+   * @return the number of merged segments
+   */
+  public int compact(long now) throws IOException {
+    int count = 0;
+    for (SegmentTable table : SegmentTable.values()) {
+      for (Map.Entry<Long, List<MetricSegment>> window : getWindows(table).entrySet()) {
+        boolean ended = window.getKey() + table.getWindowMillis() <= now;
+        for (List<MetricSegment> partition : byPartition(window.getValue()).values()) {
+          if (partition.size() > 1 &&
+              (ended || partition.size() >= COMPACTION_THRESHOLD)) {
+            compact(table, window.getKey(), partition);
+            count += partition.size();
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Delete the windows which ended before the retention of their table.
+   *
+   * @param now  the current time
+   *
+   * @return the number of deleted windows
+   */
+  public int expire(long now) {
+    int count = 0;
+    for (SegmentTable table : SegmentTable.values()) {
+      long expiry = getExpiry(table, now);
+      for (File windowDir : listFiles(new File(directory, table.getDirectoryName()))) {
+        long windowStart;
+        try {
+          windowStart = Long.parseLong(windowDir.getName());
+        } catch (NumberFormatException e) {
+          continue;
+        }
+        if (windowStart + table.getWindowMillis() > expiry) {
+          continue;
+        }
+        // queries which already took the segments can still read the
+        // mappings of the deleted files
+        synchronized (lock) {
+          segments.get(table).remove(windowStart);
+        }
+        delete(windowDir);
+        count++;
+      }
+    }
+    return count;
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private int rollup(SegmentTable source, SegmentTable target, long now)
+    throws IOException {
+    long bucketMillis = target == SegmentTable.AGGREGATE ?
+      sliceMillis : target.getBucketMillis();
+    long targetExpiry = getExpiry(target, now);
+    int count = 0;
+
+    for (Map.Entry<Long, List<MetricSegment>> window : getWindows(source).entrySet()) {
+      long windowStart = window.getKey();
+      long windowEnd = windowStart + source.getWindowMillis();
+      long targetWindow = target.getWindowStart(windowStart);
+      if (targetWindow + target.getWindowMillis() <= targetExpiry) {
+        continue;
+      }
+      // complete buckets only
+      long rollupEnd = Math.min(windowEnd,
+        now - SegmentTable.floorMod(now, bucketMillis));
+      if (rollupEnd <= windowStart) {
+        continue;
+      }
+
+      for (Map.Entry<Integer, List<MetricSegment>> partition :
+          byPartition(window.getValue()).entrySet()) {
+        List<MetricSegment> partitionSegments = partition.getValue();
+        long generation =
+          partitionSegments.get(partitionSegments.size() - 1).getGeneration();
+        File marker = new File(getWindowDir(source, windowStart),
+          "p" + partition.getKey() + "." + target.getDirectoryName() + ROLLUP_SUFFIX);
+        long[] rolledUp = readMarker(marker);
+        if (rolledUp != null && rolledUp[0] >= generation &&
+            rolledUp[1] >= rollupEnd) {
+          continue;
+        }
+
+        Map<SeriesKey, ColumnSeries> values =
+          readAll(partitionSegments, source.getColumnCount(), windowStart, rollupEnd);
+        Map<SeriesKey, ColumnSeries> rows;
+        if (target == SegmentTable.AGGREGATE) {
+          rows = LocalMetricRollup.aggregateCluster(values, windowStart,
+            rollupEnd, sliceMillis);
+        } else if (source == SegmentTable.RECORD) {
+          rows = LocalMetricRollup.aggregate(values, bucketMillis);
+        } else {
+          rows = LocalMetricRollup.combine(values, bucketMillis);
+        }
+        if (!rows.isEmpty()) {
+          MetricSegment segment = writeSegment(target, targetWindow,
+            partition.getKey(), generations.incrementAndGet(), rows);
+          synchronized (lock) {
+            addSegments(target, Collections.singletonList(segment));
+          }
+        }
+        writeMarker(marker, generation, rollupEnd);
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private void compact(SegmentTable table, long windowStart,
+                       List<MetricSegment> partition) throws IOException {
+    MetricSegment newest = partition.get(partition.size() - 1);
+    Map<SeriesKey, ColumnSeries> values = readAll(partition,
+      table.getColumnCount(), Long.MIN_VALUE, Long.MAX_VALUE);
+    MetricSegment merged = writeSegment(table, windowStart,
+      newest.getPartition(), newest.getGeneration(), values);
+
+    synchronized (lock) {
+      List<MetricSegment> windowSegments = new ArrayList<MetricSegment>();
+      List<MetricSegment> current = segments.get(table).get(windowStart);
+      if (current != null) {
+        for (MetricSegment segment : current) {
+          if (!partition.contains(segment)) {
+            windowSegments.add(segment);
+          }
+        }
+      }
+      windowSegments.add(merged);
+      Collections.sort(windowSegments, GENERATION_ORDER);
+      segments.get(table).put(windowStart,
+        Collections.unmodifiableList(windowSegments));
+    }
+    for (MetricSegment segment : partition) {
+      if (segment != newest && !segment.getFile().delete()) {
+        LOG.warn("Unable to delete compacted segment " + segment.getFile());
+      }
+    }
+  }
+
+  private MetricSegment writeSegment(SegmentTable table, long windowStart,
+                                     int partition, long generation,
+                                     Map<SeriesKey, ColumnSeries> values)
+    throws IOException {
+    File windowDir = getWindowDir(table, windowStart);
+    if (!windowDir.isDirectory() && !windowDir.mkdirs()) {
+      throw new IOException("Unable to create the window directory " + windowDir);
+    }
+    File file = new File(windowDir, "p" + partition + "-" + generation + ".seg");
+    MetricSegment.write(file, table, windowStart, values);
+    return MetricSegment.open(file, partition, generation);
+  }
+
+  /**
+   * Add written segments to their windows. Called with the lock held.
+   */
+  private void addSegments(SegmentTable table, List<MetricSegment> written) {
+    TreeMap<Long, List<MetricSegment>> windows = segments.get(table);
+    for (MetricSegment segment : written) {
+      long windowStart = getWindowStart(segment);
+      List<MetricSegment> current = windows.get(windowStart);
+      List<MetricSegment> windowSegments = current == null ?
+        new ArrayList<MetricSegment>(1) : new ArrayList<MetricSegment>(current);
+      windowSegments.add(segment);
+      Collections.sort(windowSegments, GENERATION_ORDER);
+      windows.put(windowStart, Collections.unmodifiableList(windowSegments));
+    }
+  }
+
+  private static long getWindowStart(MetricSegment segment) {
+    return Long.parseLong(segment.getFile().getParentFile().getName());
+  }
+
+  private TreeMap<Long, List<MetricSegment>> getWindows(SegmentTable table) {
+    synchronized (lock) {
+      return new TreeMap<Long, List<MetricSegment>>(segments.get(table));
+    }
+  }
+
+  private Map<Integer, Map<SeriesKey, ColumnSeries>> partition(
+      Map<SeriesKey, ColumnSeries> values) {
+    Map<Integer, Map<SeriesKey, ColumnSeries>> partitions =
+      new TreeMap<Integer, Map<SeriesKey, ColumnSeries>>();
+    for (Map.Entry<SeriesKey, ColumnSeries> entry : values.entrySet()) {
+      getWindow(partitions, getPartition(entry.getKey().getMetricName()))
+        .put(entry.getKey(), entry.getValue());
+    }
+    return partitions;
+  }
+
+  private static Map<Integer, List<MetricSegment>> byPartition(
+      List<MetricSegment> windowSegments) {
+    Map<Integer, List<MetricSegment>> partitions =
+      new TreeMap<Integer, List<MetricSegment>>();
+    for (MetricSegment segment : windowSegments) {
+      List<MetricSegment> partition = partitions.get(segment.getPartition());
+      if (partition == null) {
+        partition = new ArrayList<MetricSegment>();
+        partitions.put(segment.getPartition(), partition);
+      }
+      partition.add(segment);
+    }
+    return partitions;
+  }
+
+  private static Map<SeriesKey, ColumnSeries> readAll(
+      List<MetricSegment> partition, int columnCount, long startTime,
+      long endTime) throws IOException {
+    Map<SeriesKey, ColumnSeries> result = new HashMap<SeriesKey, ColumnSeries>();
+    for (MetricSegment segment : partition) {
+      for (int i = 0; i < segment.size(); i++) {
+        if (segment.overlaps(i, startTime, endTime)) {
+          segment.read(i, startTime, endTime,
+            getSeries(result, segment.getKey(i), columnCount));
+        }
+      }
+    }
+    for (ColumnSeries series : result.values()) {
+      series.normalize();
+    }
+    return result;
+  }
+
+  private static void readSegment(MetricSegment segment, SeriesFilter filter,
+                                  long startTime, long endTime,
+                                  Map<SeriesKey, ColumnSeries> result)
+    throws IOException {
+    // a series may match several patterns, but is read once
+    BitSet read = filter.getNameCount() > 1 ? new BitSet(segment.size()) : null;
+    for (int n = 0; n < filter.getNameCount(); n++) {
+      String prefix = filter.getPrefix(n);
+      boolean pattern = filter.isPattern(n);
+      for (int i = segment.indexOf(prefix); i < segment.size(); i++) {
+        SeriesKey key = segment.getKey(i);
+        if (pattern ? !key.getMetricName().startsWith(prefix) :
+            !key.getMetricName().equals(prefix)) {
+          break;
+        }
+        if ((read == null || !read.get(i)) && filter.matches(n, key) &&
+            segment.overlaps(i, startTime, endTime)) {
+          segment.read(i, startTime, endTime, getSeries(result, key,
+            segment.getTable().getColumnCount()));
+          if (read != null) {
+            read.set(i);
+          }
+        }
+      }
+    }
+  }
+
+  private static void readBuffered(
+      Map<Long, Map<SeriesKey, ColumnSeries>> windows, SeriesFilter filter,
+      long startTime, long endTime, Map<SeriesKey, ColumnSeries> result) {
+    for (Map<SeriesKey, ColumnSeries> window : windows.values()) {
+      for (Map.Entry<SeriesKey, ColumnSeries> entry : window.entrySet()) {
+        if (!filter.matches(entry.getKey())) {
+          continue;
+        }
+        ColumnSeries values = entry.getValue();
+        ColumnSeries series = null;
+        for (int i = 0; i < values.size(); i++) {
+          long timestamp = values.getTimestamp(i);
+          if (timestamp >= startTime && timestamp < endTime) {
+            if (series == null) {
+              series = getSeries(result, entry.getKey(), 1);
+              series.setType(values.getType());
+            }
+            series.add(timestamp, values.getValue(SegmentTable.VALUE, i));
+          }
+        }
+      }
+    }
+  }
+
+  private long getExpiry(SegmentTable table, long now) {
+    Long ttl = ttlMillis.get(table);
+    return ttl == null ? Long.MIN_VALUE : now - ttl;
+  }
+
+  private File getWindowDir(SegmentTable table, long windowStart) {
+    return new File(new File(directory, table.getDirectoryName()),
+      Long.toString(windowStart));
+  }
+
+  private static <K> Map<SeriesKey, ColumnSeries> getWindow(
+      Map<K, Map<SeriesKey, ColumnSeries>> windows, K windowStart) {
+    Map<SeriesKey, ColumnSeries> window = windows.get(windowStart);
+    if (window == null) {
+      window = new HashMap<SeriesKey, ColumnSeries>();
+      windows.put(windowStart, window);
+    }
+    return window;
+  }
+
+  private static ColumnSeries getSeries(Map<SeriesKey, ColumnSeries> series,
+                                        SeriesKey key, int columnCount) {
+    ColumnSeries values = series.get(key);
+    if (values == null) {
+      values = new ColumnSeries(columnCount, 16);
+      series.put(key, values);
+    }
+    return values;
+  }
+
+  /**
+   * @return the generation and end time of the last rollup; null if the
+   *         window wasn't rolled up yet
+   */
+  private static long[] readMarker(File marker) {
+    if (!marker.isFile()) {
+      return null;
+    }
+    try {
+      InputStream in = new FileInputStream(marker);
+      try {
+        byte[] bytes = new byte[(int) Math.min(marker.length(), 64)];
+        int length = in.read(bytes);
+        String[] fields = new String(bytes, 0, Math.max(length, 0), UTF8)
+          .trim().split(" ");
+        return new long[] {Long.parseLong(fields[0]), Long.parseLong(fields[1])};
+      } finally {
+        in.close();
+      }
+    } catch (Exception e) {
+      LOG.warn("Rolling up again, unable to read " + marker, e);
+      return null;
+    }
+  }
+
+  private static void writeMarker(File marker, long generation, long endTime)
+    throws IOException {
+    File tmpFile = new File(marker.getPath() + TMP_SUFFIX);
+    OutputStream out = new FileOutputStream(tmpFile);
+    try {
+      out.write((generation + " " + endTime + "\n").getBytes(UTF8));
+    } finally {
+      out.close();
+    }
+    if (!tmpFile.renameTo(marker)) {
+      tmpFile.delete();
+      throw new IOException("Unable to rename " + tmpFile + " to " + marker);
+    }
+  }
+
+  private static File[] listFiles(File dir) {
+    File[] files = dir.listFiles();
+    return files == null ? new File[0] : files;
+  }
+
+  private static void delete(File file) {
+    if (file.isDirectory()) {
+      for (File child : listFiles(file)) {
+        delete(child);
+      }
+    }
+    if (!file.delete() && file.exists()) {
+      LOG.warn("Unable to delete " + file);
+    }
+  }
+
+  private static final Comparator<MetricSegment> GENERATION_ORDER =
+    new Comparator<MetricSegment>() {
+      @Override
+      public int compare(MetricSegment s1, MetricSegment s2) {
+        long g1 = s1.getGeneration();
+        long g2 = s2.getGeneration();
+        return g1 < g2 ? -1 : g1 == g2 ? 0 : 1;
+      }
+    };
+}
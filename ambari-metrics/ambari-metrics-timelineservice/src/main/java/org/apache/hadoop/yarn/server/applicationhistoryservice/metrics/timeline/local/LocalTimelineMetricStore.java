@@ -0,0 +1,391 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricsMetadata;
+import org.apache.hadoop.service.AbstractService;
+import org.apache.hadoop.yarn.api.records.timeline.TimelinePutResponse;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.HBaseTimelineMetricStore;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.Precision;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricMetadataManager;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricStore;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_TIMESLICE_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.DEFAULT_CHECKPOINT_LOCATION;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.GLOBAL_RESULT_LIMIT;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.LOCAL_STORE_DIR;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.LOCAL_STORE_FLUSH_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.LOCAL_STORE_PARTITIONS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METADATA_ENABLED;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local.SegmentTable.COUNT;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local.SegmentTable.MAX;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local.SegmentTable.MIN;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local.SegmentTable.SUM;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local.SegmentTable.VALUE;
+
+/**
+ * Metric store which keeps the metrics in memory mapped segment files on
+ * the local disk of the collector, for clusters which run the collector
+ * without HBase.
+ * <p/>
+ * Queries are answered the way the HBase store answers them: host metrics
+ * are read from the precision, minute or hourly table and cluster metrics
+ * from the cluster or hourly cluster aggregates, by the precision of the
+ * query or the default precision of its time range. Posted metrics are
+ * written to segment files at the flush interval; rollups into the
+ * aggregate tables, compaction of the segments and the deletion of expired
+ * windows run after every flush.
+ */
+public class LocalTimelineMetricStore extends AbstractService
+    implements TimelineMetricStore {
+
+  static final Log LOG = LogFactory.getLog(LocalTimelineMetricStore.class);
+  private final TimelineMetricConfiguration configuration;
+  private LocalMetricStorage storage;
+  private ScheduledExecutorService maintenanceExecutor;
+  private TimelineMetricMetadataManager metadataManager;
+  private int resultLimit;
+  private final Object maintenanceLock = new Object();
+
+  /**
+   * Construct the service.
+   *
+   */
+  public LocalTimelineMetricStore(TimelineMetricConfiguration configuration) {
+    super(LocalTimelineMetricStore.class.getName());
+    this.configuration = configuration;
+  }
+
+  @Override
+  protected void serviceInit(Configuration conf) throws Exception {
+    super.serviceInit(conf);
+    Configuration metricsConf = configuration.getMetricsConf();
+
+    File directory = new File(metricsConf.get(LOCAL_STORE_DIR,
+      new File(DEFAULT_CHECKPOINT_LOCATION, "ams-local-store").getPath()));
+    Map<SegmentTable, Long> ttlMillis =
+      new EnumMap<SegmentTable, Long>(SegmentTable.class);
+    for (SegmentTable table : SegmentTable.values()) {
+      ttlMillis.put(table, table.getTtlMillis(metricsConf));
+    }
+    long sliceMillis = TimeUnit.SECONDS.toMillis(
+      metricsConf.getInt(CLUSTER_AGGREGATOR_TIMESLICE_INTERVAL, 15));
+    if (sliceMillis <= 0 ||
+        SegmentTable.AGGREGATE.getWindowMillis() % sliceMillis != 0) {
+      LOG.warn("The cluster time slice interval doesn't divide an hour, " +
+        "using 15 seconds.");
+      sliceMillis = TimeUnit.SECONDS.toMillis(15);
+    }
+    resultLimit = metricsConf.getInt(GLOBAL_RESULT_LIMIT, 5760);
+
+    storage = new LocalMetricStorage(directory,
+      Math.max(1, metricsConf.getInt(LOCAL_STORE_PARTITIONS, 4)),
+      sliceMillis, ttlMillis);
+    storage.open();
+    LOG.info("Opened the local metric store in " + directory);
+
+    // wildcards are matched against the index of the segments, the
+    // registry only answers metadata queries
+    if (metricsConf.getBoolean(METADATA_ENABLED, true)) {
+      metadataManager = new TimelineMetricMetadataManager(metricsConf);
+      metadataManager.start();
+    }
+
+    long flushInterval = Math.max(1,
+      metricsConf.getLong(LOCAL_STORE_FLUSH_INTERVAL, 60));
+    maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "timeline-metrics-local-store");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    maintenanceExecutor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        runMaintenance();
+      }
+    }, flushInterval, flushInterval, TimeUnit.SECONDS);
+  }
+
+  @Override
+  protected void serviceStop() throws Exception {
+    if (maintenanceExecutor != null) {
+      maintenanceExecutor.shutdown();
+      maintenanceExecutor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+    if (storage != null) {
+      synchronized (maintenanceLock) {
+        storage.flush(currentTimeMillis());
+      }
+    }
+    if (metadataManager != null) {
+      metadataManager.stop();
+    }
+    super.serviceStop();
+  }
+
+  /**
+   * Write the posted metrics, roll them up, compact the segments and delete
+   * the expired windows.
+   */
+  void runMaintenance() {
+    synchronized (maintenanceLock) {
+      long now = currentTimeMillis();
+      try {
+        storage.flush(now);
+      } catch (IOException e) {
+        LOG.error("Unable to write the posted metrics, retrying with the " +
+          "next flush.", e);
+      }
+      try {
+        int rolledUp = storage.rollup(now);
+        int compacted = storage.compact(now);
+        int expired = storage.expire(now);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Rolled up " + rolledUp + " partitions, compacted " +
+            compacted + " segments, deleted " + expired + " windows.");
+        }
+      } catch (Exception e) {
+        LOG.error("Unable to roll up or compact the local metric store.", e);
+      }
+    }
+  }
+
+  /**
+   * Get the current time, overridden by tests.
+   */
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  @Override
+  public TimelineMetrics getTimelineMetrics(List<String> metricNames,
+      String hostname, String applicationId, String instanceId,
+      Long startTime, Long endTime, Precision precision, Integer limit,
+      boolean groupedByHosts) throws SQLException, IOException {
+
+    if (metricNames == null || metricNames.isEmpty()) {
+      throw new IllegalArgumentException("No metric name filter specified.");
+    }
+    validateQuery(startTime, endTime, limit);
+
+    return HBaseTimelineMetricStore.postProcessMetrics(readMetrics(metricNames,
+      hostname == null, hostname, applicationId, instanceId, startTime,
+      endTime, precision, limit));
+  }
+
+  @Override
+  public TimelineMetric getTimelineMetric(String metricName, String hostname,
+      String applicationId, String instanceId, Long startTime,
+      Long endTime, Precision precision, Integer limit)
+      throws SQLException, IOException {
+
+    if (metricName == null || metricName.isEmpty()) {
+      throw new IllegalArgumentException("No metric name filter specified.");
+    }
+    validateQuery(startTime, endTime, limit);
+
+    TimelineMetrics metrics = HBaseTimelineMetricStore.postProcessMetrics(
+      readMetrics(Collections.singletonList(metricName), false, hostname,
+        applicationId, instanceId, startTime, endTime, precision, limit));
+
+    TimelineMetric metric = new TimelineMetric();
+    List<TimelineMetric> metricList = metrics.getMetrics();
+
+    if (metricList != null && !metricList.isEmpty()) {
+      metric.setMetricName(metricList.get(0).getMetricName());
+      metric.setAppId(metricList.get(0).getAppId());
+      metric.setInstanceId(metricList.get(0).getInstanceId());
+      metric.setHostName(metricList.get(0).getHostName());
+      metric.setStartTime(metricList.get(0).getStartTime());
+      TimelineMetricSeries metricRecords = new TimelineMetricSeries();
+      for (TimelineMetric timelineMetric : metricList) {
+        metricRecords.putAll(timelineMetric.getMetricSeries());
+      }
+      metric.setMetricValues(metricRecords);
+    }
+
+    return metric;
+  }
+
+  @Override
+  public TimelinePutResponse putMetrics(TimelineMetrics metrics)
+    throws SQLException, IOException {
+    for (TimelineMetric metric : metrics.getMetrics()) {
+      storage.put(metric);
+    }
+    if (metadataManager != null) {
+      metadataManager.update(metrics);
+    }
+    return new TimelinePutResponse();
+  }
+
+  @Override
+  public TimelineMetricsMetadata getTimelineMetricMetadata(String metricName,
+      String applicationId, String instanceId, String hostname) {
+    if (metadataManager == null) {
+      return new TimelineMetricsMetadata();
+    }
+    return metadataManager.getMetadata(metricName, applicationId, instanceId,
+      hostname);
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private void validateQuery(Long startTime, Long endTime, Integer limit) {
+    if ((startTime == null && endTime != null)
+        || (startTime != null && endTime == null)) {
+      throw new IllegalArgumentException("Open ended query not supported ");
+    }
+    if (limit != null && limit > resultLimit) {
+      throw new IllegalArgumentException("Limit too big");
+    }
+  }
+
+  private TimelineMetrics readMetrics(List<String> metricNames, boolean cluster,
+      String hostname, String applicationId, String instanceId, Long startTime,
+      Long endTime, Precision precision, Integer limit) throws IOException {
+    Map<String, List<Function>> metricFunctions =
+      HBaseTimelineMetricStore.parseMetricNamesToAggregationFunctions(metricNames);
+
+    if (precision == null) {
+      if (startTime == null) {
+        precision = Precision.SECONDS;
+      } else {
+        precision = cluster ?
+          PhoenixTransactSQL.getDefaultAggregatePrecision(startTime, endTime) :
+          PhoenixTransactSQL.getDefaultMetricPrecision(startTime, endTime);
+      }
+    }
+    SegmentTable table = SegmentTable.getTable(cluster, precision);
+    SeriesFilter filter = new SeriesFilter(
+      new ArrayList<String>(metricFunctions.keySet()), hostname,
+      applicationId, instanceId);
+
+    Map<SeriesKey, ColumnSeries> series = startTime == null ?
+      storage.readLatest(table, filter) :
+      storage.read(table, filter, startTime, endTime);
+
+    TimelineMetrics metrics = new TimelineMetrics();
+    for (Map.Entry<SeriesKey, ColumnSeries> entry : series.entrySet()) {
+      SeriesKey key = entry.getKey();
+      ColumnSeries values = entry.getValue();
+      // the latest values within the limit
+      int from = limit == null ? 0 : Math.max(0, values.size() - limit);
+      if (from >= values.size()) {
+        continue;
+      }
+
+      if (table == SegmentTable.RECORD) {
+        metrics.getMetrics().add(createMetric(key, key.getMetricName(),
+          values, from, null));
+      } else {
+        for (Function function : getFunctions(metricFunctions, key, filter)) {
+          metrics.getMetrics().add(createMetric(key,
+            key.getMetricName() + function.getSuffix(), values, from,
+            function.getReadFunction()));
+        }
+      }
+    }
+    return metrics;
+  }
+
+  /**
+   * Get the functions requested for a series, which may match a pattern
+   * rather than a name of the query.
+   */
+  private static List<Function> getFunctions(
+      Map<String, List<Function>> metricFunctions, SeriesKey key,
+      SeriesFilter filter) {
+    List<Function> functions = metricFunctions.get(key.getMetricName());
+    if (functions == null) {
+      for (Map.Entry<String, List<Function>> entry : metricFunctions.entrySet()) {
+        if (new SeriesFilter(Collections.singletonList(entry.getKey()),
+            null, null, null).matches(key)) {
+          return entry.getValue();
+        }
+      }
+      functions = Collections.singletonList(Function.DEFAULT_VALUE_FUNCTION);
+    }
+    return functions;
+  }
+
+  private static TimelineMetric createMetric(SeriesKey key, String metricName,
+      ColumnSeries values, int from, Function.ReadFunction readFunction) {
+    TimelineMetricSeries.Builder builder =
+      new TimelineMetricSeries.Builder(values.size() - from);
+    for (int i = from; i < values.size(); i++) {
+      double value;
+      if (readFunction == null) {
+        value = values.getValue(VALUE, i);
+      } else {
+        switch (readFunction) {
+          case MIN:
+            value = values.getValue(MIN, i);
+            break;
+          case MAX:
+            value = values.getValue(MAX, i);
+            break;
+          case SUM:
+            value = values.getValue(SUM, i);
+            break;
+          default:
+            value = values.getValue(SUM, i) / values.getValue(COUNT, i);
+        }
+      }
+      builder.add(values.getTimestamp(i), value);
+    }
+
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(metricName);
+    metric.setHostName(key.getHostName());
+    metric.setAppId(key.getAppId());
+    metric.setInstanceId(key.getInstanceId());
+    metric.setType(values.getType());
+    metric.setStartTime(values.getTimestamp(from));
+    metric.setTimestamp(values.getTimestamp(from));
+    metric.setMetricValues(builder.build());
+    return metric;
+  }
+}
@@ -0,0 +1,477 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An immutable segment file of the local store, holding the series of one
+ * metric name partition of one time window of a table.
+ * <p/>
+ * The series are written one after the other, ordered by {@link SeriesKey},
+ * followed by an index of the keys. A series is stored column by column:
+ * the timestamps as zig-zag varint deltas of deltas, which is a single
+ * byte for regularly sampled metrics, and every value column as the varint
+ * of the bits of a value xor-ed with the bits of the previous value, as in
+ * the binary encoding of the METRICS column.
+ * <pre>
+ * segment := header series* index footer
+ * header  := magic(4) version(1) table(1) windowStart(8)
+ * series  := varint(#rows) timestamps column*
+ * index   := varint(#series) entry*
+ * entry   := string(name) string(host) string(appId) string(instanceId)
+ *            string(type) varint(offset) varint(length) varint(#rows)
+ *            zigzag(minTime) zigzag(maxTime)
+ * footer  := indexOffset(8) magic(4)
+ * </pre>
+ * A string is written as its length plus one in bytes, zero meaning null.
+ * <p/>
+ * A segment is read through a memory mapping of the file. Only the index
+ * is read when it is opened; the series are decoded when they are read.
+ */
+public class MetricSegment {
+  // "AMLS"
+  private static final int MAGIC = 0x414d4c53;
+  private static final int VERSION = 1;
+  private static final int HEADER_LENGTH = 14;
+  private static final int FOOTER_LENGTH = 12;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final File file;
+  private final SegmentTable table;
+  private final int partition;
+  private final long generation;
+  private final MappedByteBuffer buffer;
+
+  // index, ordered by key
+  private final SeriesKey[] keys;
+  private final String[] types;
+  private final int[] offsets;
+  private final int[] lengths;
+  private final long[] minTimes;
+  private final long[] maxTimes;
+
+  private MetricSegment(File file, SegmentTable table, int partition,
+                        long generation, MappedByteBuffer buffer, int count) {
+    this.file = file;
+    this.table = table;
+    this.partition = partition;
+    this.generation = generation;
+    this.buffer = buffer;
+    keys = new SeriesKey[count];
+    types = new String[count];
+    offsets = new int[count];
+    lengths = new int[count];
+    minTimes = new long[count];
+    maxTimes = new long[count];
+  }
+
+  /**
+   * Write a segment. The file is written under a temporary name and renamed
+   * when complete, replacing an existing file, so that a segment file is
+   * either complete or absent.
+   *
+   * @param file         the segment file
+   * @param table        the table of the segment
+   * @param windowStart  start of the time window of the segment
+   * @param series       the series by key; normalized by this method
+   */
+  public static void write(File file, SegmentTable table, long windowStart,
+                           Map<SeriesKey, ColumnSeries> series)
+    throws IOException {
+    SeriesKey[] keys = series.keySet().toArray(new SeriesKey[series.size()]);
+    Arrays.sort(keys);
+
+    Output out = new Output(HEADER_LENGTH + keys.length * 64);
+    out.writeInt(MAGIC);
+    out.write(VERSION);
+    out.write(table.ordinal());
+    out.writeLong(windowStart);
+
+    int[] offsets = new int[keys.length];
+    int[] lengths = new int[keys.length];
+    for (int k = 0; k < keys.length; k++) {
+      ColumnSeries values = series.get(keys[k]);
+      if (values.getColumnCount() != table.getColumnCount()) {
+        throw new IllegalArgumentException("Series " + keys[k] + " has " +
+          values.getColumnCount() + " columns, the " + table +
+          " table has " + table.getColumnCount() + ".");
+      }
+      values.normalize();
+      offsets[k] = out.size();
+      writeSeries(out, values);
+      lengths[k] = out.size() - offsets[k];
+    }
+
+    long indexOffset = out.size();
+    out.writeVarLong(keys.length);
+    for (int k = 0; k < keys.length; k++) {
+      ColumnSeries values = series.get(keys[k]);
+      out.writeString(keys[k].getMetricName());
+      out.writeString(keys[k].getHostName());
+      out.writeString(keys[k].getAppId());
+      out.writeString(keys[k].getInstanceId());
+      out.writeString(values.getType());
+      out.writeVarLong(offsets[k]);
+      out.writeVarLong(lengths[k]);
+      out.writeVarLong(values.size());
+      out.writeVarLong(zigZag(values.size() > 0 ? values.getFirstTimestamp() : 0L));
+      out.writeVarLong(zigZag(values.size() > 0 ? values.getLastTimestamp() : 0L));
+    }
+    out.writeLong(indexOffset);
+    out.writeInt(MAGIC);
+
+    File tmpFile = new File(file.getPath() + LocalMetricStorage.TMP_SUFFIX);
+    FileOutputStream fileOut = new FileOutputStream(tmpFile);
+    try {
+      out.writeTo(fileOut);
+      fileOut.getFD().sync();
+    } finally {
+      fileOut.close();
+    }
+    if (!tmpFile.renameTo(file)) {
+      tmpFile.delete();
+      throw new IOException("Unable to rename " + tmpFile + " to " + file);
+    }
+  }
+
+  /**
+   * Open a segment file.
+   *
+   * @param file        the segment file
+   * @param partition   the metric name partition of the segment
+   * @param generation  the generation of the segment
+   *
+   * @throws IOException if the file can't be read or isn't a segment
+   */
+  public static MetricSegment open(File file, int partition, long generation)
+    throws IOException {
+    MappedByteBuffer buffer;
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      long length = randomAccessFile.length();
+      if (length < HEADER_LENGTH + FOOTER_LENGTH || length > Integer.MAX_VALUE) {
+        throw new IOException("Invalid segment size " + length + " of " + file);
+      }
+      // the mapping stays valid after the channel is closed
+      buffer = randomAccessFile.getChannel().map(
+        FileChannel.MapMode.READ_ONLY, 0, length);
+    } finally {
+      randomAccessFile.close();
+    }
+
+    try {
+      if (buffer.getInt(0) != MAGIC ||
+          buffer.getInt(buffer.limit() - 4) != MAGIC) {
+        throw new IOException("Not a segment file: " + file);
+      }
+      if (buffer.get(4) != VERSION) {
+        throw new IOException("Unsupported segment version " + buffer.get(4) +
+          " of " + file);
+      }
+      int tableOrdinal = buffer.get(5);
+      if (tableOrdinal < 0 || tableOrdinal >= SegmentTable.values().length) {
+        throw new IOException("Invalid table of segment " + file);
+      }
+      SegmentTable table = SegmentTable.values()[tableOrdinal];
+
+      long indexOffset = buffer.getLong(buffer.limit() - FOOTER_LENGTH);
+      if (indexOffset < HEADER_LENGTH || indexOffset > buffer.limit() - FOOTER_LENGTH) {
+        throw new IOException("Invalid index offset of segment " + file);
+      }
+      ByteBuffer index = buffer.duplicate();
+      index.position((int) indexOffset);
+      int count = readCount(index, file);
+
+      MetricSegment segment =
+        new MetricSegment(file, table, partition, generation, buffer, count);
+      for (int k = 0; k < count; k++) {
+        String metricName = readString(index, file);
+        if (metricName == null) {
+          throw new IOException("Series without a name in segment " + file);
+        }
+        segment.keys[k] = new SeriesKey(metricName, readString(index, file),
+          readString(index, file), readString(index, file));
+        segment.types[k] = readString(index, file);
+        segment.offsets[k] = readCount(index, file);
+        segment.lengths[k] = readCount(index, file);
+        readCount(index, file);
+        segment.minTimes[k] = unZigZag(readVarLong(index, file));
+        segment.maxTimes[k] = unZigZag(readVarLong(index, file));
+        if (segment.offsets[k] < HEADER_LENGTH ||
+            segment.offsets[k] + (long) segment.lengths[k] > indexOffset) {
+          throw new IOException("Invalid series offset in segment " + file);
+        }
+      }
+      return segment;
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated segment " + file, e);
+    }
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public SegmentTable getTable() {
+    return table;
+  }
+
+  public int getPartition() {
+    return partition;
+  }
+
+  public long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Get the number of series in the segment.
+   */
+  public int size() {
+    return keys.length;
+  }
+
+  public SeriesKey getKey(int index) {
+    return keys[index];
+  }
+
+  /**
+   * Get the index of the first series of a metric name.
+   *
+   * @return the index; {@link #size()} if there is no series of the name
+   */
+  public int indexOf(String metricName) {
+    int low = 0;
+    int high = keys.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (keys[mid].getMetricName().compareTo(metricName) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Determine whether a series has values in a time range.
+   *
+   * @param index      the index of the series
+   * @param startTime  start of the time range, inclusive
+   * @param endTime    end of the time range, exclusive
+   */
+  public boolean overlaps(int index, long startTime, long endTime) {
+    return minTimes[index] < endTime && maxTimes[index] >= startTime;
+  }
+
+  public long getMaxTime(int index) {
+    return maxTimes[index];
+  }
+
+  /**
+   * Decode the rows of a series in a time range and append them.
+   *
+   * @param index      the index of the series
+   * @param startTime  start of the time range, inclusive
+   * @param endTime    end of the time range, exclusive
+   * @param values     the series to append the rows to
+   */
+  public void read(int index, long startTime, long endTime, ColumnSeries values)
+    throws IOException {
+    ByteBuffer in = buffer.duplicate();
+    in.position(offsets[index]);
+    in.limit(offsets[index] + lengths[index]);
+    try {
+      int count = readCount(in, file);
+      long[] timestamps = new long[count];
+      long time = 0L;
+      long delta = 0L;
+      for (int i = 0; i < count; i++) {
+        delta += unZigZag(readVarLong(in, file));
+        time += delta;
+        timestamps[i] = time;
+      }
+
+      int from = 0;
+      while (from < count && timestamps[from] < startTime) {
+        from++;
+      }
+      int to = from;
+      while (to < count && timestamps[to] < endTime) {
+        to++;
+      }
+      int first = -1;
+      for (int i = from; i < to; i++) {
+        int row = values.addRow(timestamps[i]);
+        if (first < 0) {
+          first = row;
+        }
+      }
+
+      for (int c = 0; c < table.getColumnCount(); c++) {
+        long bits = 0L;
+        // the columns are decoded up to the last row in the time range
+        for (int i = 0; i < to; i++) {
+          bits ^= Long.reverse(readVarLong(in, file));
+          if (i >= from) {
+            values.set(c, first + i - from, Double.longBitsToDouble(bits));
+          }
+        }
+        // skip the rest of the column
+        for (int i = to; i < count && c < table.getColumnCount() - 1; i++) {
+          readVarLong(in, file);
+        }
+      }
+      if (types[index] != null) {
+        values.setType(types[index]);
+      }
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated series in segment " + file, e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "MetricSegment{" +
+      "file=" + file +
+      ", table=" + table +
+      ", generation=" + generation +
+      ", series=" + keys.length +
+      '}';
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private static void writeSeries(Output out, ColumnSeries values) {
+    int count = values.size();
+    out.writeVarLong(count);
+    long previousTime = 0L;
+    long previousDelta = 0L;
+    for (int i = 0; i < count; i++) {
+      long time = values.getTimestamp(i);
+      long delta = time - previousTime;
+      out.writeVarLong(zigZag(delta - previousDelta));
+      previousTime = time;
+      previousDelta = delta;
+    }
+    for (int c = 0; c < values.getColumnCount(); c++) {
+      long previousBits = 0L;
+      for (int i = 0; i < count; i++) {
+        long bits = Double.doubleToRawLongBits(values.getValue(c, i));
+        // integral values differ in the high bits of the mantissa, reverse
+        // them so that the varint stays short
+        out.writeVarLong(Long.reverse(bits ^ previousBits));
+        previousBits = bits;
+      }
+    }
+  }
+
+  private static String readString(ByteBuffer in, File file) throws IOException {
+    int length = readCount(in, file);
+    if (length == 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length - 1];
+    in.get(bytes);
+    return new String(bytes, UTF8);
+  }
+
+  private static int readCount(ByteBuffer in, File file) throws IOException {
+    long count = readVarLong(in, file);
+    if (count < 0 || count > in.limit()) {
+      throw new IOException("Count " + count + " is out of range in segment " +
+        file);
+    }
+    return (int) count;
+  }
+
+  private static long readVarLong(ByteBuffer in, File file) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.get();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint in segment " + file);
+  }
+
+  private static long zigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Growable buffer a segment is written into.
+   */
+  private static class Output extends ByteArrayOutputStream {
+
+    Output(int size) {
+      super(size);
+    }
+
+    void writeInt(int value) {
+      write(value >>> 24);
+      write(value >>> 16);
+      write(value >>> 8);
+      write(value);
+    }
+
+    void writeLong(long value) {
+      writeInt((int) (value >>> 32));
+      writeInt((int) value);
+    }
+
+    void writeVarLong(long value) {
+      while ((value & ~0x7FL) != 0) {
+        write((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      write((int) value);
+    }
+
+    void writeString(String string) {
+      if (string == null) {
+        writeVarLong(0);
+        return;
+      }
+      byte[] bytes = string.getBytes(UTF8);
+      writeVarLong(bytes.length + 1);
+      write(bytes, 0, bytes.length);
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.Precision;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_HOUR_TABLE_TTL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_MINUTE_TABLE_TTL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_HOUR_TABLE_TTL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_MINUTE_TABLE_TTL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.PRECISION_TABLE_TTL;
+
+/**
+ * The tables of the local store, the counterparts of the HBase tables.
+ * <p/>
+ * The segment files of a table are partitioned by time into windows; a
+ * window is a directory of its own, so that expired data is dropped by
+ * deleting the directory. The aggregate tables hold one row per bucket
+ * with the {@link #SUM}, {@link #COUNT}, {@link #MAX} and {@link #MIN}
+ * columns; the count of the cluster precision table is the number of hosts.
+ * Buckets never span windows.
+ */
+public enum SegmentTable {
+  RECORD("record", false, Precision.SECONDS, 1,
+    TimeUnit.HOURS.toMillis(1), 0L, PRECISION_TABLE_TTL, 86400),
+  RECORD_MINUTE("record_minute", false, Precision.MINUTES, 4,
+    TimeUnit.DAYS.toMillis(1), TimeUnit.MINUTES.toMillis(5),
+    HOST_MINUTE_TABLE_TTL, 604800),
+  RECORD_HOURLY("record_hourly", false, Precision.HOURS, 4,
+    TimeUnit.DAYS.toMillis(7), TimeUnit.HOURS.toMillis(1),
+    HOST_HOUR_TABLE_TTL, 2592000),
+  AGGREGATE("aggregate", true, Precision.SECONDS, 4,
+    TimeUnit.HOURS.toMillis(1), 0L, CLUSTER_MINUTE_TABLE_TTL, 2592000),
+  AGGREGATE_HOURLY("aggregate_hourly", true, Precision.HOURS, 4,
+    TimeUnit.DAYS.toMillis(7), TimeUnit.HOURS.toMillis(1),
+    CLUSTER_HOUR_TABLE_TTL, 31536000);
+
+  public static final int VALUE = 0;
+  public static final int SUM = 0;
+  public static final int COUNT = 1;
+  public static final int MAX = 2;
+  public static final int MIN = 3;
+
+  private final String directoryName;
+  private final boolean cluster;
+  private final Precision precision;
+  private final int columnCount;
+  private final long windowMillis;
+  private final long bucketMillis;
+  private final String ttlProperty;
+  private final long defaultTtl;
+
+  SegmentTable(String directoryName, boolean cluster, Precision precision,
+               int columnCount, long windowMillis, long bucketMillis,
+               String ttlProperty, long defaultTtl) {
+    this.directoryName = directoryName;
+    this.cluster = cluster;
+    this.precision = precision;
+    this.columnCount = columnCount;
+    this.windowMillis = windowMillis;
+    this.bucketMillis = bucketMillis;
+    this.ttlProperty = ttlProperty;
+    this.defaultTtl = defaultTtl;
+  }
+
+  /**
+   * Get the table of host metrics or cluster aggregates of a precision.
+   *
+   * @param cluster    true for the cluster aggregates
+   * @param precision  the precision
+   */
+  public static SegmentTable getTable(boolean cluster, Precision precision) {
+    if (cluster) {
+      return precision == Precision.HOURS ? AGGREGATE_HOURLY : AGGREGATE;
+    }
+    switch (precision) {
+      case HOURS:
+        return RECORD_HOURLY;
+      case MINUTES:
+        return RECORD_MINUTE;
+      default:
+        return RECORD;
+    }
+  }
+
+  public String getDirectoryName() {
+    return directoryName;
+  }
+
+  public boolean isCluster() {
+    return cluster;
+  }
+
+  public Precision getPrecision() {
+    return precision;
+  }
+
+  public int getColumnCount() {
+    return columnCount;
+  }
+
+  /**
+   * Get the length of a time window of the table.
+   */
+  public long getWindowMillis() {
+    return windowMillis;
+  }
+
+  /**
+   * Get the start of the time window of a timestamp.
+   */
+  public long getWindowStart(long timestamp) {
+    return timestamp - floorMod(timestamp, windowMillis);
+  }
+
+  /**
+   * Get the length of an aggregation bucket; 0 for the tables which aren't
+   * rolled up from another table at a fixed interval.
+   */
+  public long getBucketMillis() {
+    return bucketMillis;
+  }
+
+  /**
+   * Get the time to keep the data of the table.
+   */
+  public long getTtlMillis(Configuration metricsConf) {
+    return TimeUnit.SECONDS.toMillis(metricsConf.getLong(ttlProperty, defaultTtl));
+  }
+
+  static long floorMod(long value, long divisor) {
+    long mod = value % divisor;
+    return mod < 0 ? mod + divisor : mod;
+  }
+}
@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Selects the series read from the local store, like the WHERE clause of a
+ * metrics query. A metric name containing '%' is a LIKE pattern.
+ */
+public class SeriesFilter {
+  private final List<String> metricNames;
+  private final List<Pattern> patterns;
+  private final List<String> prefixes;
+  private final String hostName;
+  private final String appId;
+  private final String instanceId;
+
+  /**
+   * Create a filter.
+   *
+   * @param metricNames  names or LIKE patterns of the metrics
+   * @param hostName     host of the series; null for any host
+   * @param appId        app id of the series; null for any app
+   * @param instanceId   instance id of the series; null for any instance
+   */
+  public SeriesFilter(List<String> metricNames, String hostName,
+                      String appId, String instanceId) {
+    this.metricNames = new ArrayList<String>(metricNames);
+    Collections.sort(this.metricNames);
+    patterns = new ArrayList<Pattern>(metricNames.size());
+    prefixes = new ArrayList<String>(metricNames.size());
+    for (String metricName : this.metricNames) {
+      if (metricName.contains("%")) {
+        patterns.add(toPattern(metricName));
+        prefixes.add(getPrefix(metricName));
+      } else {
+        patterns.add(null);
+        prefixes.add(metricName);
+      }
+    }
+    this.hostName = hostName;
+    this.appId = appId;
+    this.instanceId = instanceId;
+  }
+
+  /**
+   * Get the number of metric names of the filter.
+   */
+  public int getNameCount() {
+    return metricNames.size();
+  }
+
+  /**
+   * Get a metric name or pattern of the filter. Names are indexed in sort
+   * order.
+   */
+  public String getMetricName(int nameIndex) {
+    return metricNames.get(nameIndex);
+  }
+
+  /**
+   * Get the prefix every metric name matching a name of the filter starts
+   * with; the name itself if it isn't a pattern.
+   */
+  public String getPrefix(int nameIndex) {
+    return prefixes.get(nameIndex);
+  }
+
+  /**
+   * Determine whether a name of the filter is a pattern.
+   */
+  public boolean isPattern(int nameIndex) {
+    return patterns.get(nameIndex) != null;
+  }
+
+  /**
+   * Determine whether a series matches a name of the filter and the host,
+   * app id and instance id of the filter.
+   */
+  public boolean matches(int nameIndex, SeriesKey key) {
+    Pattern pattern = patterns.get(nameIndex);
+    if (pattern == null) {
+      if (!metricNames.get(nameIndex).equals(key.getMetricName())) {
+        return false;
+      }
+    } else if (!pattern.matcher(key.getMetricName()).matches()) {
+      return false;
+    }
+    return (hostName == null || hostName.equals(key.getHostName())) &&
+      (appId == null || appId.equals(key.getAppId())) &&
+      (instanceId == null || instanceId.equals(key.getInstanceId()));
+  }
+
+  /**
+   * Determine whether a series matches the filter.
+   */
+  public boolean matches(SeriesKey key) {
+    for (int i = 0; i < metricNames.size(); i++) {
+      if (matches(i, key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private static Pattern toPattern(String like) {
+    StringBuilder regex = new StringBuilder();
+    StringBuilder literal = new StringBuilder();
+    for (char c : like.toCharArray()) {
+      if (c == '%' || c == '_') {
+        if (literal.length() > 0) {
+          regex.append(Pattern.quote(literal.toString()));
+          literal.setLength(0);
+        }
+        regex.append(c == '%' ? ".*" : ".");
+      } else {
+        literal.append(c);
+      }
+    }
+    if (literal.length() > 0) {
+      regex.append(Pattern.quote(literal.toString()));
+    }
+    return Pattern.compile(regex.toString(), Pattern.DOTALL);
+  }
+
+  private static String getPrefix(String like) {
+    int end = 0;
+    while (end < like.length() && like.charAt(end) != '%' &&
+        like.charAt(end) != '_') {
+      end++;
+    }
+    return like.substring(0, end);
+  }
+}
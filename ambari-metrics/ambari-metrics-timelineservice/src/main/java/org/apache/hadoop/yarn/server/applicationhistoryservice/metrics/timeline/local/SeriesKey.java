@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local;
+
+/**
+ * Identifies a series in the local store: a metric of an app instance on a
+ * host, or of an app instance across the cluster when the host name is
+ * null. Keys are ordered by metric name, host name, app id and instance id,
+ * nulls first, which is the order of the series in a segment.
+ */
+public class SeriesKey implements Comparable<SeriesKey> {
+  private final String metricName;
+  private final String hostName;
+  private final String appId;
+  private final String instanceId;
+
+  public SeriesKey(String metricName, String hostName, String appId,
+                   String instanceId) {
+    if (metricName == null) {
+      throw new IllegalArgumentException("Series without a metric name.");
+    }
+    this.metricName = metricName;
+    this.hostName = hostName;
+    this.appId = appId;
+    this.instanceId = instanceId;
+  }
+
+  public String getMetricName() {
+    return metricName;
+  }
+
+  public String getHostName() {
+    return hostName;
+  }
+
+  public String getAppId() {
+    return appId;
+  }
+
+  public String getInstanceId() {
+    return instanceId;
+  }
+
+  @Override
+  public int compareTo(SeriesKey other) {
+    int result = metricName.compareTo(other.metricName);
+    if (result == 0) {
+      result = compare(hostName, other.hostName);
+    }
+    if (result == 0) {
+      result = compare(appId, other.appId);
+    }
+    if (result == 0) {
+      result = compare(instanceId, other.instanceId);
+    }
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    return compareTo((SeriesKey) o) == 0;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = metricName.hashCode();
+    result = 31 * result + (hostName != null ? hostName.hashCode() : 0);
+    result = 31 * result + (appId != null ? appId.hashCode() : 0);
+    result = 31 * result + (instanceId != null ? instanceId.hashCode() : 0);
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "SeriesKey{" +
+      "metricName='" + metricName + '\'' +
+      ", hostName='" + hostName + '\'' +
+      ", appId='" + appId + '\'' +
+      ", instanceId='" + instanceId + '\'' +
+      '}';
+  }
+
+  static int compare(String a, String b) {
+    if (a == null) {
+      return b == null ? 0 : -1;
+    }
+    return b == null ? 1 : a.compareTo(b);
+  }
+}
@@ -25,6 +25,9 @@ public interface Condition {
   boolean isEmpty();
 
   List<String> getMetricNames();
+  String getMetricNameFrom();
+  String getMetricNameTo();
+  void setMetricNameRange(String from, String to);
   boolean isPointInTime();
   boolean isGrouped();
   void setStatement(String statement);
@@ -25,6 +25,8 @@ import java.util.Set;
 
 public class DefaultCondition implements Condition {
   List<String> metricNames;
+  String metricNameFrom;
+  String metricNameTo;
   String hostname;
   String appId;
   String instanceId;
@@ -64,6 +66,25 @@ public class DefaultCondition implements Condition {
     return metricNames == null || metricNames.isEmpty() ? null : metricNames;
   }
 
+  public String getMetricNameFrom() {
+    return metricNameFrom == null || metricNameFrom.isEmpty() ? null : metricNameFrom;
+  }
+
+  public String getMetricNameTo() {
+    return metricNameTo == null || metricNameTo.isEmpty() ? null : metricNameTo;
+  }
+
+  /**
+   * Restrict the condition to metric names in a range.
+   *
+   * @param from  the first metric name in the range; null for no lower bound
+   * @param to    the metric name after the range; null for no upper bound
+   */
+  public void setMetricNameRange(String from, String to) {
+    this.metricNameFrom = from;
+    this.metricNameTo = to;
+  }
+
   public StringBuilder getConditionClause() {
     StringBuilder sb = new StringBuilder();
     boolean appendConjunction = false;
@@ -107,6 +128,8 @@ public class DefaultCondition implements Condition {
       }
     }
 
+    appendConjunction = append(sb, appendConjunction, getMetricNameFrom(), " METRIC_NAME >= ?");
+    appendConjunction = append(sb, appendConjunction, getMetricNameTo(), " METRIC_NAME < ?");
     appendConjunction = append(sb, appendConjunction, getHostname(), " HOSTNAME = ?");
     appendConjunction = append(sb, appendConjunction, getAppId(), " APP_ID = ?");
     appendConjunction = append(sb, appendConjunction, getInstanceId(), " INSTANCE_ID = ?");
@@ -244,6 +267,8 @@ public class DefaultCondition implements Condition {
   public String toString() {
     return "Condition{" +
       "metricNames=" + metricNames +
+      ", metricNameFrom='" + metricNameFrom + '\'' +
+      ", metricNameTo='" + metricNameTo + '\'' +
       ", hostname='" + hostname + '\'' +
       ", appId='" + appId + '\'' +
       ", instanceId='" + instanceId + '\'' +
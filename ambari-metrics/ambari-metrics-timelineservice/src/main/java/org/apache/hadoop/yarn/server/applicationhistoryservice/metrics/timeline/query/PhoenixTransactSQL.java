@@ -247,36 +247,21 @@ public class PhoenixTransactSQL {
       String metricsTable;
       String query;
       if (condition.getPrecision() == null) {
-        long endTime = condition.getEndTime() == null ? System.currentTimeMillis() : condition.getEndTime();
-        long startTime = condition.getStartTime() == null ? 0 : condition.getStartTime();
-        Long timeRange = endTime - startTime;
-        if (timeRange > 5 * DAY) {
+        condition.setPrecision(getDefaultMetricPrecision(
+          condition.getStartTime(), condition.getEndTime()));
+      }
+      switch (condition.getPrecision()) {
+        case HOURS:
           metricsTable = METRICS_AGGREGATE_HOURLY_TABLE_NAME;
           query = GET_METRIC_AGGREGATE_ONLY_SQL;
-          condition.setPrecision(Precision.HOURS);
-        } else if (timeRange > 10 * HOUR) {
+          break;
+        case MINUTES:
           metricsTable = METRICS_AGGREGATE_MINUTE_TABLE_NAME;
           query = GET_METRIC_AGGREGATE_ONLY_SQL;
-          condition.setPrecision(Precision.MINUTES);
-        } else {
+          break;
+        default:
           metricsTable = METRICS_RECORD_TABLE_NAME;
           query = GET_METRIC_SQL;
-          condition.setPrecision(Precision.SECONDS);
-        }
-      } else {
-        switch (condition.getPrecision()) {
-          case HOURS:
-            metricsTable = METRICS_AGGREGATE_HOURLY_TABLE_NAME;
-            query = GET_METRIC_AGGREGATE_ONLY_SQL;
-            break;
-          case MINUTES:
-            metricsTable = METRICS_AGGREGATE_MINUTE_TABLE_NAME;
-            query = GET_METRIC_AGGREGATE_ONLY_SQL;
-            break;
-          default:
-            metricsTable = METRICS_RECORD_TABLE_NAME;
-            query = GET_METRIC_SQL;
-        }
       }
 
       stmtStr = String.format(query,
@@ -311,6 +296,7 @@ public class PhoenixTransactSQL {
         stmt.setString(pos, condition.getMetricNames().get(pos - 1));
       }
     }
+    pos = setMetricNameRangeParameters(stmt, condition, pos);
     if (condition.getHostname() != null) {
       if (LOG.isDebugEnabled()) {
         LOG.debug("Setting pos: " + pos + ", value: " + condition.getHostname());
@@ -348,12 +334,71 @@ public class PhoenixTransactSQL {
     return stmt;
   }
 
+  private static int setMetricNameRangeParameters(PreparedStatement stmt,
+                                                  Condition condition, int pos)
+    throws SQLException {
+    if (condition.getMetricNameFrom() != null) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Setting pos: " + pos + ", value: " + condition.getMetricNameFrom());
+      }
+      stmt.setString(pos++, condition.getMetricNameFrom());
+    }
+    if (condition.getMetricNameTo() != null) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Setting pos: " + pos + ", value: " + condition.getMetricNameTo());
+      }
+      stmt.setString(pos++, condition.getMetricNameTo());
+    }
+    return pos;
+  }
+
   private static void validateConditionIsNotEmpty(Condition condition) {
     if (condition.isEmpty()) {
       throw new IllegalArgumentException("Condition is empty.");
     }
   }
 
+  /**
+   * Get the precision of host metrics read for a time range without an
+   * explicit precision.
+   *
+   * @param startTime  start of the time range; may be null
+   * @param endTime    end of the time range; may be null
+   *
+   * @return the precision of the table to read from
+   */
+  public static Precision getDefaultMetricPrecision(Long startTime,
+                                                   Long endTime) {
+    long timeRange = getTimeRange(startTime, endTime);
+    if (timeRange > 5 * DAY) {
+      return Precision.HOURS;
+    } else if (timeRange > 10 * HOUR) {
+      return Precision.MINUTES;
+    }
+    return Precision.SECONDS;
+  }
+
+  /**
+   * Get the precision of cluster aggregates read for a time range without
+   * an explicit precision.
+   *
+   * @param startTime  start of the time range; may be null
+   * @param endTime    end of the time range; may be null
+   *
+   * @return the precision of the table to read from
+   */
+  public static Precision getDefaultAggregatePrecision(Long startTime,
+                                                      Long endTime) {
+    return getTimeRange(startTime, endTime) > 5 * DAY ?
+      Precision.HOURS : Precision.SECONDS;
+  }
+
+  private static long getTimeRange(Long startTime, Long endTime) {
+    long end = endTime == null ? System.currentTimeMillis() : endTime;
+    long start = startTime == null ? 0 : startTime;
+    return end - start;
+  }
+
   private static void validateRowCountLimit(Condition condition) {
     if (condition.getMetricNames() == null
       || condition.getMetricNames().size() ==0 ) {
@@ -425,6 +470,7 @@ public class PhoenixTransactSQL {
         stmt.setString(pos, condition.getMetricNames().get(pos - 1));
       }
     }
+    pos = setMetricNameRangeParameters(stmt, condition, pos);
     if (condition.getHostname() != null) {
       if (LOG.isDebugEnabled()) {
         LOG.debug("Setting pos: " + pos + ", value: " + condition.getHostname());
@@ -459,28 +505,17 @@ public class PhoenixTransactSQL {
     String metricsAggregateTable;
     String queryStmt;
     if (condition.getPrecision() == null) {
-      long endTime = condition.getEndTime() == null ? System.currentTimeMillis() : condition.getEndTime();
-      long startTime = condition.getStartTime() == null ? 0 : condition.getStartTime();
-      Long timeRange = endTime - startTime;
-      if (timeRange > 5 * DAY) {
+      condition.setPrecision(getDefaultAggregatePrecision(
+        condition.getStartTime(), condition.getEndTime()));
+    }
+    switch (condition.getPrecision()) {
+      case HOURS:
         metricsAggregateTable = METRICS_CLUSTER_AGGREGATE_HOURLY_TABLE_NAME;
         queryStmt = GET_CLUSTER_AGGREGATE_HOURLY_SQL;
-        condition.setPrecision(Precision.HOURS);
-      } else {
+        break;
+      default:
         metricsAggregateTable = METRICS_CLUSTER_AGGREGATE_TABLE_NAME;
         queryStmt = GET_CLUSTER_AGGREGATE_SQL;
-        condition.setPrecision(Precision.SECONDS);
-      }
-    } else {
-      switch (condition.getPrecision()) {
-        case HOURS:
-          metricsAggregateTable = METRICS_CLUSTER_AGGREGATE_HOURLY_TABLE_NAME;
-          queryStmt = GET_CLUSTER_AGGREGATE_HOURLY_SQL;
-          break;
-        default:
-          metricsAggregateTable = METRICS_CLUSTER_AGGREGATE_TABLE_NAME;
-          queryStmt = GET_CLUSTER_AGGREGATE_SQL;
-      }
     }
 
     StringBuilder sb = new StringBuilder(queryStmt);
@@ -504,6 +539,7 @@ public class PhoenixTransactSQL {
         stmt.setString(pos, condition.getMetricNames().get(pos - 1));
       }
     }
+    pos = setMetricNameRangeParameters(stmt, condition, pos);
     // TODO: Upper case all strings on POST
     if (condition.getAppId() != null) {
       stmt.setString(pos++, condition.getAppId());
@@ -558,6 +594,7 @@ public class PhoenixTransactSQL {
         stmt.setString(pos, condition.getMetricNames().get(pos - 1));
       }
     }
+    pos = setMetricNameRangeParameters(stmt, condition, pos);
     if (condition.getAppId() != null) {
       if (LOG.isDebugEnabled()) {
         LOG.debug("Setting pos: " + pos + ", value: " + condition.getAppId());
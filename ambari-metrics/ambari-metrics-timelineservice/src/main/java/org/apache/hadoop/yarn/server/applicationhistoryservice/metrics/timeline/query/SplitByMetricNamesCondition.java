@@ -40,6 +40,21 @@ public class SplitByMetricNamesCondition implements Condition {
     return Collections.singletonList(currentMetric);
   }
 
+  @Override
+  public String getMetricNameFrom() {
+    return adaptee.getMetricNameFrom();
+  }
+
+  @Override
+  public String getMetricNameTo() {
+    return adaptee.getMetricNameTo();
+  }
+
+  @Override
+  public void setMetricNameRange(String from, String to) {
+    adaptee.setMetricNameRange(from, to);
+  }
+
   @Override
   public boolean isPointInTime() {
     return adaptee.isPointInTime();
@@ -96,6 +111,10 @@ public class SplitByMetricNamesCondition implements Condition {
       appendConjunction = true;
     }
 
+    appendConjunction = DefaultCondition.append(sb, appendConjunction,
+      getMetricNameFrom(), " METRIC_NAME >= ?");
+    appendConjunction = DefaultCondition.append(sb, appendConjunction,
+      getMetricNameTo(), " METRIC_NAME < ?");
     appendConjunction = DefaultCondition.append(sb, appendConjunction,
       getHostname(), " HOSTNAME = ?");
     appendConjunction = DefaultCondition.append(sb, appendConjunction,
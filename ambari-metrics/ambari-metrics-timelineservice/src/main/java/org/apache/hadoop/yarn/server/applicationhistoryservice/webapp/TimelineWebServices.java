@@ -30,8 +30,12 @@ import org.apache.hadoop.yarn.api.records.timeline.TimelineEntity;
 import org.apache.hadoop.yarn.api.records.timeline.TimelineEvents;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricsBinaryFormat;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricsMetadata;
 import org.apache.hadoop.yarn.api.records.timeline.TimelinePutResponse;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.MetricsQueueFullException;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.Precision;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricDownsampler;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricStore;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.EntityIdentifier;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.GenericObjectMapper;
@@ -59,6 +63,7 @@ import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import java.io.IOException;
+import java.io.InputStream;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -79,6 +84,18 @@ public class TimelineWebServices {
 
   private static final Log LOG = LogFactory.getLog(TimelineWebServices.class);
 
+  /**
+   * Seconds a sink is asked to wait before posting rejected metrics again.
+   */
+  private static final int RETRY_AFTER_SECONDS = 10;
+
+  /**
+   * Content types accepted for posted metrics, advertised to the sinks in
+   * the Accept-Post header of the responses.
+   */
+  private static final String ACCEPTED_METRICS_TYPES =
+    MediaType.APPLICATION_JSON + ", " + TimelineMetricsBinaryFormat.CONTENT_TYPE;
+
   private TimelineStore store;
   private TimelineMetricStore timelineMetricStore;
 
@@ -248,7 +265,9 @@ public class TimelineWebServices {
 
   /**
    * Store the given metrics into the timeline store, and return errors that
-   * happened during storing.
+   * happened during storing. Responds with 503 (Service Unavailable) if the
+   * store can't take any more metrics right now, in which case the sink
+   * should post them again later.
    */
   @Path("/metrics")
   @POST
@@ -259,26 +278,76 @@ public class TimelineWebServices {
     TimelineMetrics metrics) {
 
     init(res);
+    res.setHeader("Accept-Post", ACCEPTED_METRICS_TYPES);
     if (metrics == null) {
       return new TimelinePutResponse();
     }
 
-    try {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Storing metrics: " +
+        TimelineUtils.dumpTimelineRecordtoJSON(metrics, true));
+    }
+    return putMetrics(metrics);
+  }
 
-      // TODO: Check ACLs for MetricEntity using the TimelineACLManager.
-      // TODO: Save owner of the MetricEntity.
+  /**
+   * Store metrics posted in the {@link TimelineMetricsBinaryFormat binary
+   * format}. The body is decoded as it is read, straight into the records
+   * taken by the store, without an intermediate JSON tree or boxed values.
+   * Responds like {@link #postMetrics}, and with 400 (Bad Request) if the
+   * body is malformed.
+   */
+  @Path("/metrics")
+  @POST
+  @Consumes({ TimelineMetricsBinaryFormat.CONTENT_TYPE })
+  public TimelinePutResponse postBinaryMetrics(
+    @Context HttpServletRequest req,
+    @Context HttpServletResponse res,
+    InputStream body) {
 
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("Storing metrics: " +
-          TimelineUtils.dumpTimelineRecordtoJSON(metrics, true));
-      }
+    init(res);
+    res.setHeader("Accept-Post", ACCEPTED_METRICS_TYPES);
 
-      return timelineMetricStore.putMetrics(metrics);
+    TimelineMetrics metrics;
+    try {
+      metrics = new TimelineMetricsBinaryFormat.Reader(body).readAll();
+    } catch (IOException e) {
+      LOG.warn("Unable to read binary metrics: " + e.getMessage());
+      throw new BadRequestException("Malformed binary metrics: " + e.getMessage());
+    }
+    return putMetrics(metrics);
+  }
 
-    } catch (Exception e) {
-      LOG.error("Error saving metrics.", e);
-      throw new WebApplicationException(e, Response.Status.INTERNAL_SERVER_ERROR);
+  /**
+   * Query for the metrics known to the collector: their names, app ids,
+   * instance ids, hosts, types and the time range they were posted in.
+   * All query params are optional.
+   *
+   * @param metricName Name of the metrics, may contain '%' wildcards.
+   * @param appId Application Id of the metrics.
+   * @param instanceId Application instance id.
+   * @param hostname Hostname where the metrics originated.
+   * @return {@link TimelineMetricsMetadata}
+   */
+  @GET
+  @Path("/metrics/metadata")
+  @Produces({ MediaType.APPLICATION_JSON /* , MediaType.APPLICATION_XML */})
+  public TimelineMetricsMetadata getTimelineMetricMetadata(
+    @Context HttpServletRequest req,
+    @Context HttpServletResponse res,
+    @QueryParam("metricName") String metricName,
+    @QueryParam("appId") String appId,
+    @QueryParam("instanceId") String instanceId,
+    @QueryParam("hostname") String hostname
+  ) {
+    init(res);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Request for metric metadata => metricName: " + metricName +
+        ", appId: " + appId + ", instanceId: " + instanceId + ", " +
+        "hostname: " + hostname);
     }
+    return timelineMetricStore.getTimelineMetricMetadata(metricName, appId,
+      instanceId, hostname);
   }
 
   /**
@@ -342,6 +411,9 @@ public class TimelineWebServices {
    * @param precision Precision [ seconds, minutes, hours ]
    * @param limit limit on total number of {@link TimelineMetric} records
    *              retrieved.
+   * @param maxPoints maximum number of values returned for each metric, the
+   *                  values are averaged down to this number if there are
+   *                  more.
    * @return {@link TimelineMetrics}
    */
   @GET
@@ -358,7 +430,8 @@ public class TimelineWebServices {
     @QueryParam("endTime") String endTime,
     @QueryParam("precision") String precision,
     @QueryParam("limit") String limit,
-    @QueryParam("grouped") String grouped
+    @QueryParam("grouped") String grouped,
+    @QueryParam("maxPoints") String maxPoints
   ) {
     init(res);
     try {
@@ -370,15 +443,25 @@ public class TimelineWebServices {
           "precision: " + precision);
       }
 
-      return timelineMetricStore.getTimelineMetrics(
+      Integer points = parseIntStr(maxPoints);
+      if (points != null && points <= 0) {
+        throw new BadRequestException("maxPoints should be positive");
+      }
+
+      TimelineMetrics metrics = timelineMetricStore.getTimelineMetrics(
         parseListStr(metricNames, ","), hostname, appId, instanceId,
         parseLongStr(startTime), parseLongStr(endTime),
         Precision.getPrecision(precision), parseIntStr(limit),
         parseBoolean(grouped));
 
+      if (points != null) {
+        TimelineMetricDownsampler.downsample(metrics, points);
+      }
+      return metrics;
+
     } catch (NumberFormatException ne) {
-      throw new BadRequestException("startTime and limit should be numeric " +
-        "values");
+      throw new BadRequestException("startTime, limit and maxPoints should " +
+        "be numeric values");
     } catch (Precision.PrecisionFormatException pfe) {
       throw new BadRequestException("precision should be seconds, minutes " +
         "or hours");
@@ -430,6 +513,25 @@ public class TimelineWebServices {
     }
   }
 
+  private TimelinePutResponse putMetrics(TimelineMetrics metrics) {
+    try {
+
+      // TODO: Check ACLs for MetricEntity using the TimelineACLManager.
+      // TODO: Save owner of the MetricEntity.
+
+      return timelineMetricStore.putMetrics(metrics);
+
+    } catch (MetricsQueueFullException e) {
+      LOG.warn(e.getMessage());
+      throw new WebApplicationException(
+        Response.status(Response.Status.SERVICE_UNAVAILABLE)
+          .header("Retry-After", RETRY_AFTER_SECONDS).build());
+    } catch (Exception e) {
+      LOG.error("Error saving metrics.", e);
+      throw new WebApplicationException(e, Response.Status.INTERNAL_SERVER_ERROR);
+    }
+  }
+
   private void init(HttpServletResponse response) {
     response.setContentType(null);
   }
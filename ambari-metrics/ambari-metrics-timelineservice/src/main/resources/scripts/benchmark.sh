@@ -0,0 +1,32 @@
+#!/usr/bin/env bash
+#
+#
+# Licensed to the Apache Software Foundation (ASF) under one
+# or more contributor license agreements.  See the NOTICE file
+# distributed with this work for additional information
+# regarding copyright ownership.  The ASF licenses this file
+# to you under the Apache License, Version 2.0 (the
+# "License"); you may not use this file except in compliance
+# with the License.  You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing,
+# software distributed under the License is distributed on an
+# "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+# KIND, either express or implied.  See the License for the
+# specific language governing permissions and limitations
+# under the License.
+#
+# set -x
+cd "$(dirname "$0")"
+
+METRICS_HOST=$1
+HOST_COUNT=$2
+REPORT_FILE=${3:-benchmark_report.json}
+shift $(( $# < 3 ? $# : 3 ))
+
+# any further arguments are passed to the benchmark, see LoadBenchmark usage
+exec java -cp ../lib/ambari-metrics/ambari-metrics-timelineservice-simulator*.jar \
+  org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.LoadBenchmark \
+  -m ${METRICS_HOST} -n ${HOST_COUNT} -c 15000 -s 60000 -o ${REPORT_FILE} "$@"
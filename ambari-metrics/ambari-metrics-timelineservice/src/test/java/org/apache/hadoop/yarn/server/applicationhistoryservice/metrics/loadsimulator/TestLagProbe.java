@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricsMetadata;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.net.MetricsReader;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.net.MetricsSender;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.util.Json;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestLagProbe {
+
+  private LoadStatistics statistics;
+  private TestCollector collector;
+
+  @Before
+  public void setUp() {
+    statistics = new LoadStatistics();
+    statistics.startRecording();
+    collector = new TestCollector();
+  }
+
+  @Test
+  public void testIngestLag() throws Exception {
+    LagProbe probe = new LagProbe(collector, collector, statistics,
+      "host.probe", 5000, 10);
+    probe.probeIngestLag();
+
+    assertEquals(1, statistics.getIngestLag().getCount());
+    assertEquals(0, statistics.getIngestProbesMissed());
+    assertTrue(collector.reads >= 3);
+  }
+
+  @Test
+  public void testIngestProbeMissed() throws Exception {
+    collector.visibleAfterReads = Integer.MAX_VALUE;
+    LagProbe probe = new LagProbe(collector, collector, statistics,
+      "host.probe", 50, 10);
+    probe.probeIngestLag();
+
+    assertEquals(0, statistics.getIngestLag().getCount());
+    assertEquals(1, statistics.getIngestProbesMissed());
+  }
+
+  @Test
+  public void testAggregatorLag() throws Exception {
+    long now = System.currentTimeMillis();
+    collector.lag.put(now - 120000L, 30000.0);
+    collector.lag.put(now - 60000L, 45000.0);
+
+    LagProbe probe = new LagProbe(collector, collector, statistics,
+      "host.probe", 50, 10);
+    probe.probeAggregatorLag();
+    // values are recorded once
+    probe.probeAggregatorLag();
+
+    Map<String, ?> lag = statistics.getAggregatorLag();
+    assertEquals(Collections.singleton("TimelineClusterAggregatorMinute"),
+      lag.keySet());
+    assertEquals(2, statistics.getAggregatorLag()
+      .get("TimelineClusterAggregatorMinute").getCount());
+    assertEquals(45000, statistics.getAggregatorLag()
+      .get("TimelineClusterAggregatorMinute").getMax());
+  }
+
+  private static class TestCollector implements MetricsSender, MetricsReader {
+    private final List<TimelineMetric> posted = new ArrayList<TimelineMetric>();
+    private final Map<Long, Double> lag = new TreeMap<Long, Double>();
+    private int visibleAfterReads = 3;
+    private int reads;
+
+    @Override
+    public String pushMetrics(String payload) {
+      try {
+        posted.addAll(Json.createTimelineMapper()
+          .readValue(payload, TimelineMetrics.class).getMetrics());
+      } catch (IOException e) {
+        return "";
+      }
+      return "OK";
+    }
+
+    @Override
+    public TimelineMetrics readMetrics(List<String> metricNames, String appId,
+                                       String hostName, Long startTime,
+                                       Long endTime) throws IOException {
+      TimelineMetrics metrics = new TimelineMetrics();
+      if (metricNames.contains(LagProbe.PROBE_METRIC_NAME)) {
+        if (++reads >= visibleAfterReads) {
+          metrics.setMetrics(new ArrayList<TimelineMetric>(posted));
+        }
+      } else {
+        TimelineMetric metric = new TimelineMetric();
+        metric.setMetricName(metricNames.get(0));
+        for (Map.Entry<Long, Double> value : lag.entrySet()) {
+          if (value.getKey() >= startTime && value.getKey() <= endTime) {
+            metric.getMetricValues().put(value.getKey(), value.getValue());
+          }
+        }
+        metrics.getMetrics().add(metric);
+      }
+      return metrics;
+    }
+
+    @Override
+    public TimelineMetricsMetadata readMetadata(String metricName, String appId) {
+      TimelineMetricMetadata metadata = new TimelineMetricMetadata();
+      metadata.setMetricName("aggregator.TimelineClusterAggregatorMinute.lag");
+      metadata.setAppId(appId);
+      metadata.setHostName("collector");
+      TimelineMetricsMetadata result = new TimelineMetricsMetadata();
+      result.getMetadata().add(metadata);
+      return result;
+    }
+  }
+}
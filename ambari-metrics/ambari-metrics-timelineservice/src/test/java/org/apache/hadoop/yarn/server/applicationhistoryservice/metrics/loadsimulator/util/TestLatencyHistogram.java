@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.util;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestLatencyHistogram {
+
+  @Test
+  public void testEmpty() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMin());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getPercentile(99));
+  }
+
+  @Test
+  public void testSmallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 10; i++) {
+      histogram.record(i);
+    }
+
+    assertEquals(10, histogram.getCount());
+    assertEquals(1, histogram.getMin());
+    assertEquals(10, histogram.getMax());
+    assertEquals(5.5, histogram.getMean(), 0.0);
+    assertEquals(5, histogram.getPercentile(50));
+    assertEquals(9, histogram.getPercentile(90));
+    assertEquals(10, histogram.getPercentile(100));
+  }
+
+  @Test
+  public void testPercentilesWithinRelativeError() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long i = 1; i <= 100000; i++) {
+      histogram.record(i * 10);
+    }
+
+    assertWithin(500000, histogram.getPercentile(50));
+    assertWithin(990000, histogram.getPercentile(99));
+    assertWithin(999000, histogram.getPercentile(99.9));
+    assertEquals(1000000, histogram.getMax());
+    assertTrue(histogram.getPercentile(100) <= histogram.getMax());
+  }
+
+  @Test
+  public void testReset() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(100);
+    histogram.record(-5);
+    assertEquals(0, histogram.getMin());
+
+    histogram.reset();
+    histogram.record(42);
+
+    Map<String, Object> map = histogram.toMap();
+    assertEquals(1L, map.get("count"));
+    assertEquals(42L, map.get("min"));
+    assertEquals(42L, map.get("p999"));
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue("Expected about " + expected + " but was " + actual,
+      Math.abs(actual - expected) <= expected * 0.04);
+  }
+}
@@ -19,21 +19,34 @@ package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.AbstractTimelineAggregator;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.MetricNamePartition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL;
 import org.apache.hadoop.yarn.util.Clock;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.File;
 import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import static junit.framework.Assert.assertEquals;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_CHECKPOINT_DELAY;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_PARTITION_SPLITS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.RESULTSET_FETCH_SIZE;
 
 public class AbstractTimelineAggregatorTest {
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   private AbstractTimelineAggregator agg;
   TestClock clock = new TestClock();
 
@@ -261,6 +274,91 @@ public class AbstractTimelineAggregatorTest {
 
   }
 
+  @Test
+  public void testPartitionedRuns() throws Exception {
+    Configuration metricsConf = new Configuration();
+    metricsConf.setInt(AGGREGATOR_CHECKPOINT_DELAY, 0);
+    metricsConf.set(AGGREGATOR_PARTITION_SPLITS, "mem_");
+    final String checkpointLocation =
+      new File(folder.getRoot(), "ckptFile").getAbsolutePath();
+    final Map<Integer, long[]> windows =
+      new ConcurrentHashMap<Integer, long[]>();
+    final AtomicInteger failures = new AtomicInteger(1);
+
+    AbstractTimelineAggregator partitioned = new AbstractTimelineAggregator(
+      null, metricsConf, clock) {
+      @Override
+      protected boolean doWork(long startTime, long endTime,
+                               MetricNamePartition partition) {
+        windows.put(partition.getIndex(), new long[] {startTime, endTime});
+        // fail the second partition once
+        return partition.getIndex() == 0 || failures.getAndDecrement() <= 0;
+      }
+
+      @Override
+      protected Condition
+      prepareMetricQueryCondition(long startTime, long endTime) {
+        return null;
+      }
+
+      @Override
+      protected void aggregate(ResultSet rs, long startTime,
+                               long endTime) throws IOException, SQLException {
+      }
+
+      @Override
+      protected Long getSleepIntervalMillis() {
+        return sleepIntervalMillis;
+      }
+
+      @Override
+      protected Integer getCheckpointCutOffMultiplier() {
+        return checkpointCutOffMultiplier;
+      }
+
+      @Override
+      public boolean isDisabled() {
+        return false;
+      }
+
+      @Override
+      protected String getCheckpointLocation() {
+        return checkpointLocation;
+      }
+
+      protected long readCheckPoint() {
+        return checkPoint.get();
+      }
+    };
+    ExecutorService workerPool = Executors.newFixedThreadPool(2);
+    partitioned.setWorkerPool(workerPool);
+
+    try {
+      // partitions start at the checkpoint of the whole aggregator
+      checkPoint.set(0);
+      clock.setTime(sleepIntervalMillis);
+      partitioned.runOnce(sleepIntervalMillis);
+      assertEquals(2, windows.size());
+      assertEquals(0, windows.get(0)[0]);
+      assertEquals(sleepIntervalMillis, windows.get(0)[1]);
+      assertEquals(0, windows.get(1)[0]);
+
+      // the failed partition aggregates its window again
+      clock.setTime(2 * sleepIntervalMillis);
+      partitioned.runOnce(sleepIntervalMillis);
+      assertEquals(sleepIntervalMillis, windows.get(0)[0]);
+      assertEquals(0, windows.get(1)[0]);
+
+      clock.setTime(3 * sleepIntervalMillis);
+      partitioned.runOnce(sleepIntervalMillis);
+      assertEquals(2 * sleepIntervalMillis, windows.get(0)[0]);
+      assertEquals(sleepIntervalMillis, windows.get(1)[0]);
+      assertEquals(0, checkPoint.get());
+    } finally {
+      workerPool.shutdownNow();
+    }
+  }
+
   private static class TestClock implements Clock {
 
     private long time;
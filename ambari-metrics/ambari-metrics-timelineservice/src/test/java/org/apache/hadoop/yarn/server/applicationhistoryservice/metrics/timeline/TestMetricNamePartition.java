@@ -0,0 +1,53 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .timeline;
+
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.MetricNamePartition;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestMetricNamePartition {
+
+  @Test
+  public void testNoSplits() throws Exception {
+    List<MetricNamePartition> partitions = MetricNamePartition.fromSplits("");
+
+    assertThat(partitions).hasSize(1);
+    assertThat(partitions.get(0).getFrom()).isNull();
+    assertThat(partitions.get(0).getTo()).isNull();
+  }
+
+  @Test
+  public void testSplitsAreSortedAndTrimmed() throws Exception {
+    List<MetricNamePartition> partitions =
+      MetricNamePartition.fromSplits("regionserver., jvm.,,jvm.");
+
+    assertThat(partitions).hasSize(3);
+    assertThat(partitions.get(0).getFrom()).isNull();
+    assertThat(partitions.get(0).getTo()).isEqualTo("jvm.");
+    assertThat(partitions.get(1).getFrom()).isEqualTo("jvm.");
+    assertThat(partitions.get(1).getTo()).isEqualTo("regionserver.");
+    assertThat(partitions.get(2).getFrom()).isEqualTo("regionserver.");
+    assertThat(partitions.get(2).getTo()).isNull();
+    assertThat(partitions.get(2).getIndex()).isEqualTo(2);
+  }
+}
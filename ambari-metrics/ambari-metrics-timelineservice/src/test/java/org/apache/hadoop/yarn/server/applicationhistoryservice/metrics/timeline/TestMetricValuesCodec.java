@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestMetricValuesCodec {
+
+  @Test
+  public void testJsonRoundTrip() throws Exception {
+    Map<Long, Double> values = createValues();
+
+    String encoded = MetricValuesCodec.encode(values, false);
+
+    assertThat(encoded).startsWith("{");
+    assertThat(MetricValuesCodec.isBinary(encoded)).isFalse();
+    assertThat(MetricValuesCodec.decode(encoded)).isEqualTo(values);
+  }
+
+  @Test
+  public void testBinaryRoundTrip() throws Exception {
+    Map<Long, Double> values = createValues();
+
+    String encoded = MetricValuesCodec.encode(values, true);
+
+    assertThat(MetricValuesCodec.isBinary(encoded)).isTrue();
+    assertThat(MetricValuesCodec.decode(encoded)).isEqualTo(values);
+    assertThat(encoded.length())
+      .isLessThan(MetricValuesCodec.encode(values, false).length());
+  }
+
+  @Test
+  public void testBinaryUnsortedAndSpecialValues() throws Exception {
+    Map<Long, Double> values = new HashMap<Long, Double>();
+    values.put(1407949912000L, -0.0);
+    values.put(1407949812000L, Double.MAX_VALUE);
+    values.put(1407949712000L, Double.NaN);
+    values.put(-5L, Double.NEGATIVE_INFINITY);
+
+    Map<Long, Double> decoded =
+      MetricValuesCodec.decode(MetricValuesCodec.encode(values, true));
+
+    assertThat(decoded).isEqualTo(values);
+  }
+
+  @Test
+  public void testNullAndNaN() throws Exception {
+    Map<Long, Double> values = new TreeMap<Long, Double>();
+    values.put(1407949712000L, null);
+    values.put(1407949812000L, Double.NaN);
+    values.put(1407949912000L, 1.0);
+
+    assertThat(MetricValuesCodec.decode(MetricValuesCodec.encode(values, false)))
+      .isEqualTo(values);
+    assertThat(MetricValuesCodec.decode(MetricValuesCodec.encode(values, true)))
+      .isEqualTo(values);
+  }
+
+  @Test
+  public void testBinaryEmpty() throws Exception {
+    String encoded = MetricValuesCodec.encode(new TreeMap<Long, Double>(), true);
+
+    assertThat(MetricValuesCodec.decode(encoded)).isEmpty();
+  }
+
+  @Test(expected = IOException.class)
+  public void testBinaryTruncated() throws Exception {
+    String encoded = MetricValuesCodec.encode(createValues(), true);
+
+    MetricValuesCodec.decode(encoded.substring(0, 8));
+  }
+
+  private Map<Long, Double> createValues() {
+    Map<Long, Double> values = new TreeMap<Long, Double>();
+    long time = 1407949812000L;
+    for (int i = 0; i < 60; i++) {
+      values.put(time + i * 10000L, (double) (i % 7) + 1024.0);
+    }
+    return values;
+  }
+}
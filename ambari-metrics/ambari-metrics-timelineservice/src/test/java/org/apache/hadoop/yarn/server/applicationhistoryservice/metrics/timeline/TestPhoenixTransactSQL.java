@@ -236,4 +236,38 @@ public class TestPhoenixTransactSQL {
     Assert.assertTrue(stmt.contains("FROM METRIC_RECORD_HOURLY"));
     verify(connection, preparedStatement);
   }
+
+  @Test
+  public void testMetricNameRangeConditionClause() throws Exception {
+    Condition condition = new DefaultCondition(null, null, null, null,
+      1407959718L, 1407959918L, null, null, true);
+    condition.setMetricNameRange("dfs.", "jvm.");
+
+    String preparedClause = condition.getConditionClause().toString();
+    String expectedClause = " METRIC_NAME >= ? AND METRIC_NAME < ? AND " +
+      "SERVER_TIME >= ? AND SERVER_TIME < ?";
+
+    Assert.assertEquals(expectedClause, preparedClause);
+  }
+
+  @Test
+  public void testPrepareGetMetricsWithMetricNameRange() throws SQLException {
+    Condition condition = new DefaultCondition(null, null, null, null,
+      1407959718000L, 1407959918000L, Precision.SECONDS, null, true);
+    condition.setMetricNameRange("dfs.", null);
+    Connection connection = createNiceMock(Connection.class);
+    PreparedStatement preparedStatement = EasyMock.createStrictMock(PreparedStatement.class);
+    Capture<String> stmtCapture = new Capture<String>();
+    expect(connection.prepareStatement(EasyMock.and(EasyMock.anyString(), EasyMock.capture(stmtCapture))))
+        .andReturn(preparedStatement);
+    preparedStatement.setString(1, "dfs.");
+    preparedStatement.setLong(2, 1407959718000L);
+    preparedStatement.setLong(3, 1407959918000L);
+
+    replay(connection, preparedStatement);
+    PhoenixTransactSQL.prepareGetMetricsSqlStmt(connection, condition);
+    String stmt = stmtCapture.getValue();
+    Assert.assertTrue(stmt.contains("WHERE  METRIC_NAME >= ? AND SERVER_TIME >= ?"));
+    verify(connection, preparedStatement);
+  }
 }
@@ -0,0 +1,186 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .timeline;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.MetricClusterAggregate;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineClusterMetric;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAppAggregator;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricClusterSliceAggregator;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_APP_IDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestTimelineMetricClusterSliceAggregator {
+
+  private static final long START_TIME = 1000000L;
+  private static final long END_TIME = START_TIME + 120000L;
+  private static final long SLICE = 15000L;
+
+  @Test
+  public void testAggregateSlicesAcrossHosts() throws Exception {
+    // given
+    TimelineMetricClusterSliceAggregator aggregator =
+      new TimelineMetricClusterSliceAggregator(START_TIME, END_TIME, SLICE, null);
+
+    // when
+    aggregator.add(createMetric("disk_free", "h1",
+      START_TIME, 1.0, START_TIME + 10000, 3.0, START_TIME + SLICE, 5.0));
+    aggregator.add(createMetric("disk_free", "h2",
+      START_TIME + 5000, 4.0, START_TIME + SLICE + 1, 1.0));
+    aggregator.finish();
+    Map<TimelineClusterMetric, MetricClusterAggregate> aggregates =
+      aggregator.drainPending();
+
+    // then
+    assertThat(aggregates).hasSize(2);
+    MetricClusterAggregate first = aggregates.get(
+      new TimelineClusterMetric("disk_free", "host", null, START_TIME, null));
+    assertThat(first.getSum()).isEqualTo(2.0 + 4.0);
+    assertThat(first.getNumberOfHosts()).isEqualTo(2);
+    assertThat(first.getMax()).isEqualTo(4.0);
+    assertThat(first.getMin()).isEqualTo(2.0);
+
+    MetricClusterAggregate second = aggregates.get(
+      new TimelineClusterMetric("disk_free", "host", null, START_TIME + SLICE, null));
+    assertThat(second.getSum()).isEqualTo(6.0);
+    assertThat(second.getNumberOfHosts()).isEqualTo(2);
+  }
+
+  @Test
+  public void testValuesOutsideWindowAreIgnored() throws Exception {
+    // given
+    TimelineMetricClusterSliceAggregator aggregator =
+      new TimelineMetricClusterSliceAggregator(START_TIME, END_TIME, SLICE, null);
+
+    // when
+    aggregator.add(createMetric("disk_free", "h1",
+      START_TIME - 1, 1.0, START_TIME + 8 * SLICE, 2.0, END_TIME - 1, Double.NaN));
+    aggregator.finish();
+
+    // then
+    assertThat(aggregator.getPendingCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testLastSliceExtendsPastEndTime() throws Exception {
+    // given
+    TimelineMetricClusterSliceAggregator aggregator =
+      new TimelineMetricClusterSliceAggregator(START_TIME, START_TIME + 20000,
+        SLICE, null);
+
+    // when
+    aggregator.add(createMetric("disk_free", "h1", START_TIME + 25000, 1.0));
+    aggregator.finish();
+
+    // then
+    assertThat(aggregator.drainPending()).containsKey(
+      new TimelineClusterMetric("disk_free", "host", null, START_TIME + SLICE, null));
+  }
+
+  @Test
+  public void testMetricIsPendingOnceNextMetricStarts() throws Exception {
+    // given
+    TimelineMetricClusterSliceAggregator aggregator =
+      new TimelineMetricClusterSliceAggregator(START_TIME, END_TIME, SLICE, null);
+
+    // when
+    aggregator.add(createMetric("disk_free", "h1", START_TIME, 1.0));
+    aggregator.add(createMetric("disk_free", "h2", START_TIME, 2.0));
+
+    // then
+    assertThat(aggregator.getPendingCount()).isEqualTo(0);
+
+    // when
+    aggregator.add(createMetric("mem_free", "h1", START_TIME, 3.0));
+
+    // then
+    Map<TimelineClusterMetric, MetricClusterAggregate> aggregates =
+      aggregator.drainPending();
+    assertThat(aggregates).hasSize(1);
+    assertThat(aggregates.values().iterator().next().getSum()).isEqualTo(3.0);
+    assertThat(aggregator.getPendingCount()).isEqualTo(0);
+
+    aggregator.finish();
+    assertThat(aggregator.drainPending()).containsKey(
+      new TimelineClusterMetric("mem_free", "host", null, START_TIME, null));
+  }
+
+  @Test
+  public void testAppAggregatesFromHostMetrics() throws Exception {
+    // given
+    Configuration conf = new Configuration();
+    conf.set(CLUSTER_AGGREGATOR_APP_IDS, "datanode");
+    TimelineMetricAppAggregator appAggregator = new TimelineMetricAppAggregator(conf);
+    appAggregator.init();
+    TimelineMetricClusterSliceAggregator aggregator =
+      new TimelineMetricClusterSliceAggregator(START_TIME, END_TIME, SLICE,
+        appAggregator);
+
+    // when
+    TimelineMetric appMetric = createMetric("bytes_read", "h1", START_TIME, 1.0);
+    appMetric.setAppId("datanode");
+    aggregator.add(appMetric);
+    aggregator.add(createMetric("cpu_user", "h1", START_TIME, 4.0, START_TIME + 1, 2.0));
+    aggregator.add(createMetric("cpu_user", "h2", START_TIME, 5.0));
+    aggregator.finish();
+
+    // then
+    MetricClusterAggregate appAggregate = appAggregator.getAggregateClusterMetrics()
+      .get(new TimelineClusterMetric("cpu_user", "datanode", null, START_TIME, null));
+    assertThat(appAggregate.getSum()).isEqualTo(3.0);
+    assertThat(appAggregate.getNumberOfHosts()).isEqualTo(1);
+  }
+
+  @Test
+  public void testSliceIndex() throws Exception {
+    TimelineMetricClusterSliceAggregator aggregator =
+      new TimelineMetricClusterSliceAggregator(START_TIME, END_TIME, SLICE, null);
+
+    aggregator.add(createMetric("m", "h1", START_TIME + 7 * SLICE + SLICE - 1, 1.0));
+    aggregator.add(createMetric("n", "h1", START_TIME + 8 * SLICE, 1.0));
+    aggregator.finish();
+
+    assertThat(aggregator.drainPending().keySet()).containsOnly(
+      new TimelineClusterMetric("m", "host", null, START_TIME + 7 * SLICE, null));
+  }
+
+  private static TimelineMetric createMetric(String metricName, String hostName,
+                                             Object... timesAndValues) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(metricName);
+    metric.setAppId("host");
+    metric.setHostName(hostName);
+    Map<Long, Double> values = new TreeMap<Long, Double>();
+    for (int i = 0; i < timesAndValues.length; i += 2) {
+      values.put(((Number) timesAndValues[i]).longValue(),
+        ((Number) timesAndValues[i + 1]).doubleValue());
+    }
+    metric.setMetricValues(values);
+    if (!values.isEmpty()) {
+      metric.setStartTime(values.keySet().iterator().next());
+    }
+    return metric;
+  }
+}
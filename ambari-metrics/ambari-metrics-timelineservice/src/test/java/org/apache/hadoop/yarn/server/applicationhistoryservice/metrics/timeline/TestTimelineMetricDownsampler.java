@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestTimelineMetricDownsampler {
+
+  @Test
+  public void testDownsample() throws Exception {
+    TimelineMetricSeries.Builder builder = new TimelineMetricSeries.Builder();
+    for (int i = 0; i < 1000; i++) {
+      builder.add(i * 1000L, i);
+    }
+    TimelineMetricSeries series = builder.build();
+
+    TimelineMetricSeries downsampled =
+      TimelineMetricDownsampler.downsample(series, 100);
+    assertThat(downsampled.size()).isEqualTo(100);
+    assertThat(downsampled.getTimestamp(0)).isEqualTo(0L);
+    assertThat(downsampled.getValue(0)).isEqualTo(4.5);
+    assertThat(downsampled.getTimestamp(99)).isEqualTo(990000L);
+    assertThat(downsampled.getValue(99)).isEqualTo(994.5);
+    assertThat(series.size()).isEqualTo(1000);
+  }
+
+  @Test
+  public void testMissingValuesAreSkipped() throws Exception {
+    TimelineMetricSeries series = new TimelineMetricSeries.Builder()
+      .add(0L, 1.0).add(1L, Double.NaN).add(2L, 3.0)
+      .add(3L, Double.NaN).add(4L, Double.NaN).add(5L, 5.0)
+      .build();
+
+    TimelineMetricSeries downsampled =
+      TimelineMetricDownsampler.downsample(series, 2);
+    assertThat(downsampled.size()).isEqualTo(2);
+    assertThat(downsampled.getValue(0)).isEqualTo(2.0);
+    assertThat(downsampled.getTimestamp(1)).isEqualTo(5L);
+    assertThat(downsampled.getValue(1)).isEqualTo(5.0);
+  }
+
+  @Test
+  public void testSmallSeriesAreUnchanged() throws Exception {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName("m1");
+    metric.setMetricValues(new TimelineMetricSeries.Builder()
+      .add(0L, 1.0).add(1L, 2.0).build());
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.getMetrics().add(metric);
+
+    TimelineMetricDownsampler.downsample(metrics, 10);
+    assertThat(metric.getMetricSeries().size()).isEqualTo(2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidPoints() throws Exception {
+    TimelineMetricDownsampler.downsample(new TimelineMetricSeries(), 0);
+  }
+}
@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.fail;
+
+public class TestTimelineMetricIngestQueue {
+
+  // the tests run without writer threads and take the batches themselves
+
+  @Test
+  public void testBatches() throws Exception {
+    PhoenixHBaseAccessor accessor = createMock(PhoenixHBaseAccessor.class);
+    Capture<TimelineMetrics> written = new Capture<TimelineMetrics>(CaptureType.ALL);
+    accessor.insertMetricRecords(capture(written));
+    expectLastCall().times(2);
+    replay(accessor);
+
+    TimelineMetricIngestQueue queue =
+      new TimelineMetricIngestQueue(accessor, 10, 0, 3, 50L, 2);
+    queue.start();
+    queue.put(createMetrics(2));
+    queue.put(createMetrics(3));
+    assertThat(queue.size()).isEqualTo(5);
+
+    // first batch is full, second one is written after the interval
+    queue.writeBatch(queue.takeBatch());
+    queue.writeBatch(queue.takeBatch());
+    queue.stop(1000L);
+
+    verify(accessor);
+    assertThat(written.getValues()).hasSize(2);
+    assertThat(written.getValues().get(0).getMetrics()).hasSize(3);
+    assertThat(written.getValues().get(1).getMetrics()).hasSize(2);
+    assertThat(queue.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void testFull() throws Exception {
+    PhoenixHBaseAccessor accessor = createMock(PhoenixHBaseAccessor.class);
+    accessor.insertMetricRecords(capture(new Capture<TimelineMetrics>()));
+    replay(accessor);
+
+    TimelineMetricIngestQueue queue =
+      new TimelineMetricIngestQueue(accessor, 4, 0, 10, 50L, 2);
+    queue.start();
+    queue.put(createMetrics(3));
+
+    try {
+      queue.put(createMetrics(2));
+      fail("Expected MetricsQueueFullException");
+    } catch (MetricsQueueFullException e) {
+      // expected
+    }
+    // a rejected post is not queued at all
+    assertThat(queue.size()).isEqualTo(3);
+
+    queue.writeBatch(queue.takeBatch());
+    queue.put(createMetrics(4));
+    queue.stop(1000L);
+
+    verify(accessor);
+  }
+
+  @Test
+  public void testRetry() throws Exception {
+    PhoenixHBaseAccessor accessor = createMock(PhoenixHBaseAccessor.class);
+    accessor.insertMetricRecords(capture(new Capture<TimelineMetrics>()));
+    expectLastCall().andThrow(new SQLException("region moved")).times(2);
+    accessor.insertMetricRecords(capture(new Capture<TimelineMetrics>()));
+    replay(accessor);
+
+    TimelineMetricIngestQueue queue =
+      new TimelineMetricIngestQueue(accessor, 10, 0, 10, 50L, 2);
+    queue.start();
+    queue.put(createMetrics(3));
+
+    // written by the second retry
+    queue.writeBatch(queue.takeBatch());
+    queue.put(createMetrics(10));
+    queue.stop(1000L);
+
+    verify(accessor);
+  }
+
+  @Test
+  public void testRetriesUsedUp() throws Exception {
+    PhoenixHBaseAccessor accessor = createMock(PhoenixHBaseAccessor.class);
+    accessor.insertMetricRecords(capture(new Capture<TimelineMetrics>()));
+    expectLastCall().andThrow(new SQLException("store down")).times(2);
+    replay(accessor);
+
+    TimelineMetricIngestQueue queue =
+      new TimelineMetricIngestQueue(accessor, 10, 0, 10, 1000L, 1);
+    queue.start();
+    queue.put(createMetrics(3));
+    queue.writeBatch(queue.takeBatch());
+    verify(accessor);
+
+    // the batch is dropped and its room freed, but posts are rejected for
+    // a while so that the sinks keep their metrics
+    assertThat(queue.size()).isEqualTo(0);
+    try {
+      queue.put(createMetrics(1));
+      fail("Expected MetricsQueueFullException");
+    } catch (MetricsQueueFullException e) {
+      // expected
+    }
+    queue.stop(1000L);
+  }
+
+  @Test(expected = MetricsQueueFullException.class)
+  public void testStopped() throws Exception {
+    PhoenixHBaseAccessor accessor = createMock(PhoenixHBaseAccessor.class);
+    replay(accessor);
+
+    new TimelineMetricIngestQueue(accessor, 4, 0, 10, 50L, 2).put(createMetrics(1));
+  }
+
+  private TimelineMetrics createMetrics(int count) {
+    List<TimelineMetric> list = new ArrayList<TimelineMetric>();
+    for (int i = 0; i < count; i++) {
+      TimelineMetric metric = new TimelineMetric();
+      metric.setMetricName("metric" + i);
+      metric.setHostName("h1");
+      metric.setAppId("HOST");
+      list.add(metric);
+    }
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.setMetrics(list);
+    return metrics;
+  }
+}
@@ -0,0 +1,303 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestTimelineMetricMetadataManager {
+
+  private static final long HOUR = 3600000L;
+  private static final long DAY = 24 * HOUR;
+  private static final long START_TIME = 1420070400000L;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testUpdateAndGetMetadata() throws Exception {
+    TestManager manager = createManager();
+    manager.now = day(10);
+    manager.load();
+
+    manager.update(metrics(
+      metric("regionserver.Server.readRequestCount", "host1", "hbase", day(10) - 60000L),
+      metric("regionserver.Server.writeRequestCount", "host1", "hbase", day(10) - 60000L),
+      metric("cpu_user", "host1", "HOST", day(10) - 30000L)));
+    manager.now += 60000L;
+    manager.update(metrics(
+      metric("regionserver.Server.readRequestCount", "host1", "hbase", day(10))));
+
+    assertThat(manager.size()).isEqualTo(3);
+    List<TimelineMetricMetadata> all =
+      manager.getMetadata(null, null, null, null).getMetadata();
+    assertThat(all).hasSize(3);
+    assertThat(all.get(0).getMetricName()).isEqualTo("cpu_user");
+
+    List<TimelineMetricMetadata> hbase = manager.getMetadata(
+      "regionserver.Server.read%", "HBASE", null, "host1").getMetadata();
+    assertThat(hbase).hasSize(1);
+    assertThat(hbase.get(0).getType()).isEqualTo("Long");
+    assertThat(hbase.get(0).getFirstSeen()).isEqualTo(day(10) - 60000L);
+    assertThat(hbase.get(0).getLastSeen()).isEqualTo(day(10) + 60000L);
+
+    assertThat(manager.getMetadata(null, null, null, "host2").getMetadata()).isEmpty();
+  }
+
+  @Test
+  public void testResolvePatterns() throws Exception {
+    TestManager manager = createManager();
+    manager.now = day(10);
+    manager.load();
+    manager.update(metrics(
+      metric("regionserver.Server.readRequestCount", "host1", "hbase", day(10)),
+      metric("cpu_user", "host1", "HOST", day(10))));
+    manager.now = day(12);
+    manager.update(metrics(
+      metric("regionserver.Server.readRequestCount", "host1", "hbase", day(12)),
+      metric("regionserver.Server.writeRequestCount", "host2", "hbase", day(12))));
+    manager.now = day(13);
+
+    Map<String, List<Function>> functions =
+      HBaseTimelineMetricStore.parseMetricNamesToAggregationFunctions(
+        Arrays.asList("regionserver.Server.%._avg", "cpu_user"));
+
+    // cluster query, the pattern is resolved with its function
+    Map<String, List<Function>> resolved = manager.resolvePatterns(
+      condition(functions, null, "HBASE", day(12) - HOUR, day(13)), functions);
+    assertThat(resolved.size()).isEqualTo(3);
+    assertThat(resolved.get("regionserver.Server.readRequestCount"))
+      .isEqualTo(functions.get("regionserver.Server.%"));
+    assertThat(resolved.get("regionserver.Server.writeRequestCount"))
+      .isEqualTo(functions.get("regionserver.Server.%"));
+    assertThat(resolved.containsKey("cpu_user")).isTrue();
+
+    // host query
+    resolved = manager.resolvePatterns(
+      condition(functions, "host2", "hbase", day(12) - HOUR, day(13)), functions);
+    assertThat(resolved.size()).isEqualTo(2);
+    assertThat(resolved.containsKey("regionserver.Server.writeRequestCount")).isTrue();
+
+    // metrics first posted after the time range don't match
+    resolved = manager.resolvePatterns(
+      condition(functions, null, "hbase", day(10) + 3 * HOUR, day(11)), functions);
+    assertThat(resolved.size()).isEqualTo(2);
+    assertThat(resolved.containsKey("regionserver.Server.readRequestCount")).isTrue();
+    assertThat(resolved.containsKey("regionserver.Server.writeRequestCount")).isFalse();
+
+    // nothing matches
+    Map<String, List<Function>> patternOnly =
+      HBaseTimelineMetricStore.parseMetricNamesToAggregationFunctions(
+        Arrays.asList("jvm.%"));
+    assertThat(manager.resolvePatterns(
+      condition(patternOnly, null, "hbase", day(12), day(13)),
+      patternOnly).isEmpty()).isTrue();
+  }
+
+  @Test
+  public void testResolveAppAggregatedPatterns() throws Exception {
+    TestManager manager = createManager();
+    manager.now = day(10);
+    manager.load();
+    manager.now = day(12);
+    manager.update(metrics(
+      metric("dfs.datanode.BytesWritten", "host1", "datanode", day(12)),
+      metric("cpu_user", "host1", "HOST", day(12)),
+      metric("cpu_system", "host1", "HOST", day(12))));
+    manager.now = day(13);
+
+    Map<String, List<Function>> functions =
+      HBaseTimelineMetricStore.parseMetricNamesToAggregationFunctions(
+        Arrays.asList("cpu_%"));
+
+    // the cluster series of datanode include the host metrics of its hosts
+    Map<String, List<Function>> resolved = manager.resolvePatterns(
+      condition(functions, null, "datanode", day(12) - HOUR, day(13)), functions);
+    assertThat(resolved.size()).isEqualTo(2);
+    assertThat(resolved.containsKey("cpu_user")).isTrue();
+    assertThat(resolved.containsKey("cpu_system")).isTrue();
+
+    // but not the series of apps which aren't aggregated, nor host series
+    assertThat(manager.resolvePatterns(
+      condition(functions, null, "kafka_broker", day(12) - HOUR, day(13)),
+      functions).isEmpty()).isTrue();
+    assertThat(manager.resolvePatterns(
+      condition(functions, "host1", "datanode", day(12) - HOUR, day(13)),
+      functions).isEmpty()).isTrue();
+  }
+
+  @Test
+  public void testPatternsBeforeTrackingAreNotResolved() throws Exception {
+    TestManager manager = createManager();
+    manager.now = day(10);
+    manager.load();
+    manager.update(metrics(
+      metric("regionserver.Server.readRequestCount", "host1", "hbase", day(10))));
+    manager.now = day(10) + HOUR;
+
+    Map<String, List<Function>> functions =
+      HBaseTimelineMetricStore.parseMetricNamesToAggregationFunctions(
+        Arrays.asList("regionserver.Server.%"));
+
+    // the registry doesn't know what was posted before it started
+    assertThat(manager.resolvePatterns(
+      condition(functions, null, "hbase", day(9), day(10) + HOUR),
+      functions) == functions).isTrue();
+    // nor which latest values are still in the table
+    assertThat(manager.resolvePatterns(
+      condition(functions, "host1", "hbase", null, null),
+      functions) == functions).isTrue();
+
+    // a day of precision data later
+    manager.now = day(11) + 3 * HOUR;
+    manager.update(metrics(
+      metric("regionserver.Server.readRequestCount", "host1", "hbase", manager.now)));
+    Map<String, List<Function>> resolved = manager.resolvePatterns(
+      condition(functions, "host1", "hbase", null, null), functions);
+    assertThat(resolved.size()).isEqualTo(1);
+    assertThat(resolved.containsKey("regionserver.Server.readRequestCount")).isTrue();
+  }
+
+  @Test
+  public void testPersistAndLoad() throws Exception {
+    File file = new File(folder.getRoot(), "metadata.json");
+    TestManager manager = new TestManager(file);
+    manager.now = day(10);
+    manager.load();
+    manager.update(metrics(
+      metric("regionserver.Server.readRequestCount", "host1", "hbase", day(10)),
+      metric("cpu_user", "host1", "HOST", day(10))));
+    manager.persist(false);
+
+    // not stopped cleanly, the registry is restored but tracking restarts
+    TestManager restarted = new TestManager(file);
+    restarted.now = day(20);
+    restarted.load();
+    assertThat(restarted.size()).isEqualTo(2);
+    assertThat(restarted.getCoverageStart())
+      .isEqualTo(day(20) + TimelineMetricMetadataManager.AGGREGATE_DELAY_MILLIS);
+    TimelineMetricMetadata entry = restarted.getMetadata(
+      "cpu_user", null, null, null).getMetadata().get(0);
+    assertThat(entry.getHostName()).isEqualTo("host1");
+    assertThat(entry.getAppId()).isEqualTo("HOST");
+    assertThat(entry.getInstanceId()).isEqualTo(null);
+    assertThat(entry.getType()).isEqualTo("Long");
+    assertThat(entry.getLastSeen()).isEqualTo(day(10));
+
+    // stopped cleanly, tracking continues
+    manager.persist(true);
+    restarted = new TestManager(file);
+    restarted.now = day(20);
+    restarted.load();
+    assertThat(restarted.getCoverageStart())
+      .isEqualTo(day(10) + TimelineMetricMetadataManager.AGGREGATE_DELAY_MILLIS);
+  }
+
+  @Test
+  public void testExpire() throws Exception {
+    TestManager manager = createManager();
+    manager.now = day(10);
+    manager.load();
+    manager.update(metrics(metric("m1", "host1", "app", day(10))));
+    manager.now = day(20);
+    manager.update(metrics(metric("m2", "host1", "app", day(20))));
+
+    manager.now = day(40) + 1;
+    manager.expire();
+    assertThat(manager.size()).isEqualTo(1);
+    assertThat(manager.getMetadata("m1", null, null, null).getMetadata()).isEmpty();
+    assertThat(manager.getCoverageStart()).isEqualTo(day(10) + 1 +
+      TimelineMetricMetadataManager.AGGREGATE_DELAY_MILLIS);
+  }
+
+  @Test
+  public void testCorruptFileIsIgnored() throws Exception {
+    File file = folder.newFile("metadata.json");
+    FileWriter writer = new FileWriter(file);
+    writer.write("{\"metadata\": [{\"metricname\": ");
+    writer.close();
+
+    TestManager manager = new TestManager(file);
+    manager.load();
+    assertThat(manager.size()).isEqualTo(0);
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private static long day(int days) {
+    return START_TIME + days * DAY;
+  }
+
+  private TestManager createManager() {
+    return new TestManager(new File(folder.getRoot(), "metadata.json"));
+  }
+
+  private static DefaultCondition condition(Map<String, List<Function>> functions,
+      String hostname, String appId, Long startTime, Long endTime) {
+    return new DefaultCondition(new ArrayList<String>(functions.keySet()),
+      hostname, appId, null, startTime, endTime, null, null, true);
+  }
+
+  private static TimelineMetrics metrics(TimelineMetric... metrics) {
+    TimelineMetrics timelineMetrics = new TimelineMetrics();
+    timelineMetrics.setMetrics(new ArrayList<TimelineMetric>(Arrays.asList(metrics)));
+    return timelineMetrics;
+  }
+
+  private static TimelineMetric metric(String metricName, String hostname,
+                                       String appId, long time) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(metricName);
+    metric.setHostName(hostname);
+    metric.setAppId(appId);
+    metric.setType("Long");
+    metric.setStartTime(time);
+    metric.getMetricValues().put(time, 1.0);
+    return metric;
+  }
+
+  private static class TestManager extends TimelineMetricMetadataManager {
+    private long now;
+
+    TestManager(File file) {
+      super(file, 30 * DAY, DAY, 30 * DAY, HOUR,
+        Arrays.asList("datanode", "nodemanager", "hbase"));
+    }
+
+    @Override
+    protected long currentTimeMillis() {
+      return now;
+    }
+  }
+}
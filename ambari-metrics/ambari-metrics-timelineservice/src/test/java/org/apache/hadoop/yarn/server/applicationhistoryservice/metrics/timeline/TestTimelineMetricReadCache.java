@@ -0,0 +1,269 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestTimelineMetricReadCache {
+
+  private static final long MINUTE = 60000L;
+  // times before 9999999999 are taken as seconds by the condition
+  private static final long T0 = 23465000 * MINUTE;
+  private static final long NOW = T0 + 1000 * MINUTE;
+
+  @Test
+  public void testTailIsRead() throws Exception {
+    TimelineMetricReadCache cache = createCache(100000);
+    RecordingReader reader = new RecordingReader();
+
+    TimelineMetrics first = cache.getTimelineMetrics(
+      createCondition(T0 + 800 * MINUTE, T0 + 900 * MINUTE, "m1"),
+      functions("m1"), reader);
+    assertThat(first.getMetrics()).hasSize(1);
+    assertThat(first.getMetrics().get(0).getMetricSeries().size()).isEqualTo(100);
+    assertThat(cache.getMissCount()).isEqualTo(1);
+
+    // window moved by 10 minutes, only the new tail is read
+    TimelineMetrics second = cache.getTimelineMetrics(
+      createCondition(T0 + 810 * MINUTE, T0 + 910 * MINUTE, "m1"),
+      functions("m1"), reader);
+    assertThat(reader.conditions).hasSize(2);
+    assertThat(reader.conditions.get(1).getStartTime())
+      .isEqualTo(T0 + 900 * MINUTE);
+    assertThat(reader.conditions.get(1).getEndTime())
+      .isEqualTo(T0 + 910 * MINUTE);
+    assertThat(cache.getPartialHitCount()).isEqualTo(1);
+
+    TimelineMetricSeries series = second.getMetrics().get(0).getMetricSeries();
+    assertThat(series.size()).isEqualTo(100);
+    assertThat(series.getFirstTimestamp()).isEqualTo(T0 + 810 * MINUTE);
+    assertThat(series.getLastTimestamp()).isEqualTo(T0 + 909 * MINUTE);
+
+    // fully covered
+    cache.getTimelineMetrics(
+      createCondition(T0 + 820 * MINUTE, T0 + 900 * MINUTE, "m1"),
+      functions("m1"), reader);
+    assertThat(reader.conditions).hasSize(2);
+    assertThat(cache.getHitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testRecentValuesAreNotCached() throws Exception {
+    TimelineMetricReadCache cache = createCache(100000);
+    RecordingReader reader = new RecordingReader();
+
+    // values after NOW - 5 minutes may still change
+    cache.getTimelineMetrics(createCondition(T0 + 900 * MINUTE, NOW, "m1"),
+      functions("m1"), reader);
+    cache.getTimelineMetrics(createCondition(T0 + 900 * MINUTE, NOW, "m1"),
+      functions("m1"), reader);
+
+    assertThat(reader.conditions).hasSize(2);
+    assertThat(reader.conditions.get(1).getStartTime())
+      .isEqualTo(T0 + 995 * MINUTE);
+  }
+
+  @Test
+  public void testOnlyUncachedMetricsAreRead() throws Exception {
+    TimelineMetricReadCache cache = createCache(100000);
+    RecordingReader reader = new RecordingReader();
+
+    cache.getTimelineMetrics(
+      createCondition(T0 + 800 * MINUTE, T0 + 900 * MINUTE, "m1"),
+      functions("m1"), reader);
+    TimelineMetrics metrics = cache.getTimelineMetrics(
+      createCondition(T0 + 800 * MINUTE, T0 + 900 * MINUTE, "m1", "m2"),
+      functions("m1", "m2"), reader);
+
+    assertThat(reader.conditions).hasSize(2);
+    assertThat(reader.conditions.get(1).getMetricNames()).containsExactly("m2");
+    assertThat(metrics.getMetrics()).hasSize(2);
+    assertThat(metrics.getMetrics().get(0).getMetricName()).isEqualTo("m1");
+    assertThat(metrics.getMetrics().get(1).getMetricName()).isEqualTo("m2");
+  }
+
+  @Test
+  public void testServedMetricsAreCopies() throws Exception {
+    TimelineMetricReadCache cache = createCache(100000);
+    RecordingReader reader = new RecordingReader();
+
+    TimelineMetrics first = cache.getTimelineMetrics(
+      createCondition(T0 + 800 * MINUTE, T0 + 900 * MINUTE, "m1"),
+      functions("m1"), reader);
+    first.getMetrics().get(0).getMetricSeries().setValue(0, -1.0);
+
+    TimelineMetrics second = cache.getTimelineMetrics(
+      createCondition(T0 + 800 * MINUTE, T0 + 900 * MINUTE, "m1"),
+      functions("m1"), reader);
+    assertThat(second.getMetrics().get(0).getMetricSeries().getValue(0))
+      .isEqualTo(800.0);
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    // room for about one series of 100 points
+    TimelineMetricReadCache cache = createCache(150);
+    RecordingReader reader = new RecordingReader();
+
+    cache.getTimelineMetrics(
+      createCondition(T0 + 800 * MINUTE, T0 + 900 * MINUTE, "m1"),
+      functions("m1"), reader);
+    cache.getTimelineMetrics(
+      createCondition(T0 + 800 * MINUTE, T0 + 900 * MINUTE, "m2"),
+      functions("m2"), reader);
+    assertThat(cache.getCachedPoints()).isLessThanOrEqualTo(150);
+
+    cache.getTimelineMetrics(
+      createCondition(T0 + 800 * MINUTE, T0 + 900 * MINUTE, "m1"),
+      functions("m1"), reader);
+    assertThat(reader.conditions).hasSize(3);
+    assertThat(cache.getMissCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void testLateWrite() throws Exception {
+    TimelineMetricReadCache cache = createCache(100000);
+    RecordingReader reader = new RecordingReader();
+
+    cache.getTimelineMetrics(
+      createCondition(T0 + 800 * MINUTE, T0 + 900 * MINUTE, "m1"),
+      functions("m1"), reader);
+    cache.getTimelineMetrics(
+      createCondition(T0 + 800 * MINUTE, T0 + 900 * MINUTE, "m2"),
+      functions("m2"), reader);
+
+    // on time, and a late value of another metric
+    cache.putMetrics(createMetrics("m1", T0 + 998 * MINUTE));
+    cache.putMetrics(createMetrics("m3", T0 + 850 * MINUTE));
+    cache.getTimelineMetrics(
+      createCondition(T0 + 800 * MINUTE, T0 + 900 * MINUTE, "m1"),
+      functions("m1"), reader);
+    assertThat(reader.conditions).hasSize(2);
+
+    // late, the segment is cut back to the late value
+    cache.putMetrics(createMetrics("m1", T0 + 850 * MINUTE));
+    TimelineMetrics metrics = cache.getTimelineMetrics(
+      createCondition(T0 + 800 * MINUTE, T0 + 900 * MINUTE, "m1"),
+      functions("m1"), reader);
+    assertThat(reader.conditions).hasSize(3);
+    assertThat(reader.conditions.get(2).getStartTime())
+      .isEqualTo(T0 + 850 * MINUTE);
+    assertThat(metrics.getMetrics().get(0).getMetricSeries().size())
+      .isEqualTo(100);
+
+    // before the segment, the segment is dropped
+    cache.putMetrics(createMetrics("m2", T0 + 700 * MINUTE));
+    cache.getTimelineMetrics(
+      createCondition(T0 + 800 * MINUTE, T0 + 900 * MINUTE, "m2"),
+      functions("m2"), reader);
+    assertThat(reader.conditions).hasSize(4);
+    assertThat(reader.conditions.get(3).getStartTime())
+      .isEqualTo(T0 + 800 * MINUTE);
+  }
+
+  @Test
+  public void testIsCacheable() throws Exception {
+    assertThat(TimelineMetricReadCache.isCacheable(
+      createCondition(T0 + 800 * MINUTE, T0 + 900 * MINUTE, "m1"))).isTrue();
+    assertThat(TimelineMetricReadCache.isCacheable(
+      createCondition(T0 + 800 * MINUTE, T0 + 900 * MINUTE, "m%"))).isFalse();
+    assertThat(TimelineMetricReadCache.isCacheable(new DefaultCondition(
+      Arrays.asList("m1"), "h1", "app", null, null, null, Precision.SECONDS,
+      null, true))).isFalse();
+    assertThat(TimelineMetricReadCache.isCacheable(new DefaultCondition(
+      Arrays.asList("m1"), "h1", "app", null, T0 + 800 * MINUTE,
+      T0 + 900 * MINUTE, Precision.SECONDS, null, false))).isFalse();
+  }
+
+  private static TimelineMetricReadCache createCache(long maxPoints) {
+    return new TimelineMetricReadCache(maxPoints, 5 * MINUTE, 60 * MINUTE) {
+      @Override
+      long currentTimeMillis() {
+        return NOW;
+      }
+    };
+  }
+
+  private static Condition createCondition(long startTime, long endTime,
+                                           String... metricNames) {
+    return new DefaultCondition(Arrays.asList(metricNames), "h1", "app", null,
+      startTime, endTime, Precision.SECONDS, null, true);
+  }
+
+  private static TimelineMetrics createMetrics(String metricName, long time) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(metricName);
+    metric.setHostName("h1");
+    metric.setAppId("app");
+    metric.setStartTime(time);
+    metric.setMetricValues(
+      new TimelineMetricSeries.Builder(1).add(time, 1.0).build());
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.getMetrics().add(metric);
+    return metrics;
+  }
+
+  private static Map<String, List<Function>> functions(String... metricNames) {
+    return HBaseTimelineMetricStore.parseMetricNamesToAggregationFunctions(
+      Arrays.asList(metricNames));
+  }
+
+  /**
+   * Returns a value for every minute of the read time range, the value is
+   * the minute.
+   */
+  private static class RecordingReader
+    implements TimelineMetricReadCache.MetricsReader {
+    private final List<Condition> conditions = new ArrayList<Condition>();
+
+    @Override
+    public TimelineMetrics read(Condition condition,
+                                Map<String, List<Function>> metricFunctions) {
+      conditions.add(condition);
+      TimelineMetrics metrics = new TimelineMetrics();
+      for (String metricName : condition.getMetricNames()) {
+        TimelineMetricSeries.Builder builder = new TimelineMetricSeries.Builder();
+        for (long time = condition.getStartTime(); time < condition.getEndTime();
+             time += MINUTE) {
+          builder.add(time, (time - T0) / MINUTE);
+        }
+        TimelineMetric metric = new TimelineMetric();
+        metric.setMetricName(metricName);
+        metric.setHostName(condition.getHostname());
+        metric.setAppId(condition.getAppId());
+        metric.setStartTime(condition.getStartTime());
+        metric.setMetricValues(builder.build());
+        metrics.getMetrics().add(metric);
+      }
+      return metrics;
+    }
+  }
+}
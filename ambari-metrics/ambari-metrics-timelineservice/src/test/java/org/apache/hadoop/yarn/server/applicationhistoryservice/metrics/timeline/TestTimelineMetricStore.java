@@ -18,7 +18,9 @@
 package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
 
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricsMetadata;
 import org.apache.hadoop.yarn.api.records.timeline.TimelinePutResponse;
 import java.io.IOException;
 import java.sql.SQLException;
@@ -78,4 +80,15 @@ public class TestTimelineMetricStore implements TimelineMetricStore {
 
     return new TimelinePutResponse();
   }
+
+  @Override
+  public TimelineMetricsMetadata getTimelineMetricMetadata(String metricName,
+      String applicationId, String instanceId, String hostname) {
+    TimelineMetricsMetadata metadata = new TimelineMetricsMetadata();
+    metadata.getMetadata().add(new TimelineMetricMetadata("cpu_user", "HOST",
+      null, "ambari1.example.com", "Float", 1407949812L, 1407950002L));
+    metadata.getMetadata().add(new TimelineMetricMetadata("mem_free", "HOST",
+      null, "ambari1.example.com", "Float", 1407949812L, 1407950002L));
+    return metadata;
+  }
 }
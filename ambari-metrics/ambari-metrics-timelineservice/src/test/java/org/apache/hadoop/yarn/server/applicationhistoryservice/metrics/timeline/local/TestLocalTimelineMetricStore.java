@@ -0,0 +1,321 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.local;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.Precision;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.LOCAL_STORE_DIR;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.LOCAL_STORE_FLUSH_INTERVAL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.LOCAL_STORE_TYPE;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.STORE_TYPE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestLocalTimelineMetricStore {
+
+  private static final long SECOND = 1000L;
+  private static final long MINUTE = 60 * SECOND;
+  private static final long HOUR = 60 * MINUTE;
+  private static final long DAY = 24 * HOUR;
+
+  // start of an hour, and of a day
+  private static final long T0 = 20000 * DAY;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Configuration metricsConf;
+  private TestStore store;
+
+  @Before
+  public void setUp() throws Exception {
+    metricsConf = new Configuration(false);
+    metricsConf.set(STORE_TYPE, LOCAL_STORE_TYPE);
+    metricsConf.set(LOCAL_STORE_DIR, folder.getRoot().getPath());
+    // maintenance is run by the tests
+    metricsConf.set(LOCAL_STORE_FLUSH_INTERVAL, "86400");
+    store = createStore();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    store.stop();
+  }
+
+  @Test
+  public void testBufferedAndWrittenValuesAreRead() throws Exception {
+    store.now = T0 + HOUR;
+    store.putMetrics(createMetrics("cpu_user", "h1", T0, 10 * SECOND, 360, 1.0));
+
+    TimelineMetrics buffered = store.getTimelineMetrics(list("cpu_user"), "h1",
+      "HOST", null, T0, T0 + HOUR, Precision.SECONDS, null, true);
+    assertThat(buffered.getMetrics()).hasSize(1);
+    assertThat(buffered.getMetrics().get(0).getMetricSeries().size()).isEqualTo(360);
+
+    store.runMaintenance();
+    assertThat(getSegmentFiles(SegmentTable.RECORD, T0)).hasSize(1);
+
+    TimelineMetrics written = store.getTimelineMetrics(list("cpu_user"), "h1",
+      "HOST", null, T0 + MINUTE, T0 + 2 * MINUTE, Precision.SECONDS, null, true);
+    assertThat(written.getMetrics()).hasSize(1);
+    TimelineMetric metric = written.getMetrics().get(0);
+    assertThat(metric.getMetricName()).isEqualTo("cpu_user");
+    assertThat(metric.getHostName()).isEqualTo("h1");
+    assertThat(metric.getAppId()).isEqualTo("HOST");
+    assertThat(metric.getMetricSeries().size()).isEqualTo(6);
+    assertThat(metric.getMetricSeries().getFirstTimestamp()).isEqualTo(T0 + MINUTE);
+    assertThat(metric.getMetricSeries().getValue(0)).isEqualTo(1.0);
+
+    // the limit keeps the latest values
+    TimelineMetrics limited = store.getTimelineMetrics(list("cpu_user"), "h1",
+      "HOST", null, T0, T0 + HOUR, Precision.SECONDS, 10, true);
+    assertThat(limited.getMetrics().get(0).getMetricSeries().getFirstTimestamp())
+      .isEqualTo(T0 + HOUR - 100 * SECOND);
+  }
+
+  @Test
+  public void testRollups() throws Exception {
+    store.putMetrics(createMetrics("cpu_user", "h1", T0, 10 * SECOND, 360, 1.0));
+    store.putMetrics(createMetrics("cpu_user", "h2", T0, 10 * SECOND, 360, 3.0));
+    store.now = T0 + 2 * HOUR;
+    store.runMaintenance();
+
+    TimelineMetrics minutes = store.getTimelineMetrics(
+      list("cpu_user", "cpu_user._max"), "h1", "HOST", null, T0, T0 + HOUR,
+      Precision.MINUTES, null, true);
+    assertThat(minutes.getMetrics()).hasSize(2);
+    for (TimelineMetric metric : minutes.getMetrics()) {
+      assertThat(metric.getMetricSeries().size()).isEqualTo(12);
+      assertThat(metric.getMetricSeries().getValue(11)).isEqualTo(1.0);
+    }
+
+    TimelineMetric hourly = store.getTimelineMetric("cpu_user", "h2", "HOST",
+      null, T0, T0 + HOUR, Precision.HOURS, null);
+    assertThat(hourly.getMetricSeries().size()).isEqualTo(1);
+    assertThat(hourly.getMetricSeries().getValue(0)).isEqualTo(3.0);
+
+    // average across the hosts of every 15 second slice
+    TimelineMetrics cluster = store.getTimelineMetrics(
+      list("cpu_user", "cpu_user._sum"), null, "HOST", null, T0, T0 + HOUR,
+      Precision.SECONDS, null, true);
+    assertThat(cluster.getMetrics()).hasSize(2);
+    TimelineMetricSeries average = getMetric(cluster, "cpu_user").getMetricSeries();
+    assertThat(average.size()).isEqualTo(240);
+    assertThat(average.getValue(0)).isEqualTo(2.0);
+    assertThat(getMetric(cluster, "cpu_user._sum").getMetricSeries().getValue(0))
+      .isEqualTo(4.0);
+
+    TimelineMetrics clusterHourly = store.getTimelineMetrics(list("cpu_user"),
+      null, "HOST", null, T0, T0 + HOUR, Precision.HOURS, null, true);
+    assertThat(clusterHourly.getMetrics()).hasSize(1);
+    assertThat(clusterHourly.getMetrics().get(0).getMetricSeries().getValue(0))
+      .isEqualTo(2.0);
+  }
+
+  @Test
+  public void testLateValuesAreRolledUpAgain() throws Exception {
+    store.putMetrics(createMetrics("cpu_user", "h1", T0, 10 * SECOND, 360, 1.0));
+    store.now = T0 + 2 * HOUR;
+    store.runMaintenance();
+
+    // replaces the first value of the first bucket
+    store.putMetrics(createMetrics("cpu_user", "h1", T0, 10 * SECOND, 1, 31.0));
+    store.runMaintenance();
+
+    TimelineMetrics minutes = store.getTimelineMetrics(list("cpu_user"), "h1",
+      "HOST", null, T0, T0 + HOUR, Precision.MINUTES, null, true);
+    TimelineMetricSeries series = minutes.getMetrics().get(0).getMetricSeries();
+    assertThat(series.getValue(0)).isEqualTo(2.0);
+    assertThat(series.getValue(1)).isEqualTo(1.0);
+  }
+
+  @Test
+  public void testExpiredWindowsAreDeleted() throws Exception {
+    store.putMetrics(createMetrics("cpu_user", "h1", T0, 10 * SECOND, 360, 1.0));
+    store.now = T0 + 2 * HOUR;
+    store.runMaintenance();
+    assertThat(getSegmentFiles(SegmentTable.RECORD, T0)).isNotEmpty();
+
+    // past the retention of the precision table only
+    store.now = T0 + 2 * DAY;
+    store.runMaintenance();
+    assertThat(new File(new File(folder.getRoot(), "record"),
+      Long.toString(T0)).exists()).isFalse();
+
+    TimelineMetrics seconds = store.getTimelineMetrics(list("cpu_user"), "h1",
+      "HOST", null, T0, T0 + HOUR, Precision.SECONDS, null, true);
+    assertThat(seconds.getMetrics()).isEmpty();
+    TimelineMetrics minutes = store.getTimelineMetrics(list("cpu_user"), "h1",
+      "HOST", null, T0, T0 + HOUR, Precision.MINUTES, null, true);
+    assertThat(minutes.getMetrics()).hasSize(1);
+  }
+
+  @Test
+  public void testCompaction() throws Exception {
+    for (int i = 0; i < LocalMetricStorage.COMPACTION_THRESHOLD + 1; i++) {
+      store.now = T0 + i * MINUTE;
+      store.putMetrics(createMetrics("cpu_user", "h1", store.now, SECOND, 1, i));
+      store.runMaintenance();
+    }
+    assertThat(getSegmentFiles(SegmentTable.RECORD, T0)).hasSize(2);
+
+    store.now = T0 + HOUR;
+    store.runMaintenance();
+    assertThat(getSegmentFiles(SegmentTable.RECORD, T0)).hasSize(1);
+
+    TimelineMetrics metrics = store.getTimelineMetrics(list("cpu_user"), "h1",
+      "HOST", null, T0, T0 + HOUR, Precision.SECONDS, null, true);
+    TimelineMetricSeries series = metrics.getMetrics().get(0).getMetricSeries();
+    assertThat(series.size()).isEqualTo(LocalMetricStorage.COMPACTION_THRESHOLD + 1);
+    assertThat(series.getValue(LocalMetricStorage.COMPACTION_THRESHOLD))
+      .isEqualTo((double) LocalMetricStorage.COMPACTION_THRESHOLD);
+  }
+
+  @Test
+  public void testReopen() throws Exception {
+    store.putMetrics(createMetrics("cpu_user", "h1", T0, 10 * SECOND, 360, 1.0));
+    store.now = T0 + 2 * HOUR;
+    store.runMaintenance();
+    store.putMetrics(createMetrics("cpu_user", "h1", T0 + HOUR, 10 * SECOND, 6, 5.0));
+    // buffered values are written on stop
+    store.stop();
+
+    store = createStore();
+    store.now = T0 + 2 * HOUR;
+    TimelineMetrics seconds = store.getTimelineMetrics(list("cpu_user"), "h1",
+      "HOST", null, T0, T0 + 2 * HOUR, Precision.SECONDS, null, true);
+    assertThat(seconds.getMetrics().get(0).getMetricSeries().size()).isEqualTo(366);
+    TimelineMetrics minutes = store.getTimelineMetrics(list("cpu_user"), "h1",
+      "HOST", null, T0, T0 + HOUR, Precision.MINUTES, null, true);
+    assertThat(minutes.getMetrics().get(0).getMetricSeries().size()).isEqualTo(12);
+  }
+
+  @Test
+  public void testPatternsAndLatestValues() throws Exception {
+    store.now = T0 + HOUR;
+    store.putMetrics(createMetrics("disk.read", "h1", T0, MINUTE, 10, 1.0));
+    store.putMetrics(createMetrics("disk.write", "h1", T0, MINUTE, 10, 2.0));
+    store.putMetrics(createMetrics("mem", "h1", T0, MINUTE, 10, 3.0));
+    store.runMaintenance();
+    store.putMetrics(createMetrics("mem", "h1", T0 + 30 * MINUTE, MINUTE, 1, 4.0));
+
+    TimelineMetrics disks = store.getTimelineMetrics(list("disk.%"), "h1",
+      "HOST", null, T0, T0 + HOUR, Precision.SECONDS, null, true);
+    assertThat(disks.getMetrics()).hasSize(2);
+    assertThat(disks.getMetrics().get(0).getMetricName()).isEqualTo("disk.read");
+    assertThat(disks.getMetrics().get(1).getMetricName()).isEqualTo("disk.write");
+
+    TimelineMetrics latest = store.getTimelineMetrics(list("mem", "disk.read"),
+      "h1", "HOST", null, null, null, null, null, true);
+    assertThat(latest.getMetrics()).hasSize(2);
+    TimelineMetricSeries mem = getMetric(latest, "mem").getMetricSeries();
+    assertThat(mem.size()).isEqualTo(1);
+    assertThat(mem.getFirstTimestamp()).isEqualTo(T0 + 30 * MINUTE);
+    assertThat(mem.getValue(0)).isEqualTo(4.0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOpenEndedQuery() throws Exception {
+    store.getTimelineMetrics(list("cpu_user"), "h1", "HOST", null, T0, null,
+      Precision.SECONDS, null, true);
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private TestStore createStore() {
+    TestStore newStore = new TestStore(new TimelineMetricConfiguration() {
+      @Override
+      public Configuration getMetricsConf() {
+        return metricsConf;
+      }
+    });
+    newStore.init(new Configuration(false));
+    return newStore;
+  }
+
+  private List<File> getSegmentFiles(SegmentTable table, long windowStart) {
+    File windowDir = new File(new File(folder.getRoot(),
+      table.getDirectoryName()), Long.toString(windowStart));
+    File[] files = windowDir.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.endsWith(".seg");
+      }
+    });
+    return files == null ? Collections.<File>emptyList() : Arrays.asList(files);
+  }
+
+  private static TimelineMetric getMetric(TimelineMetrics metrics, String metricName) {
+    for (TimelineMetric metric : metrics.getMetrics()) {
+      if (metric.getMetricName().equals(metricName)) {
+        return metric;
+      }
+    }
+    throw new AssertionError("No metric " + metricName);
+  }
+
+  private static List<String> list(String... metricNames) {
+    return new ArrayList<String>(Arrays.asList(metricNames));
+  }
+
+  private static TimelineMetrics createMetrics(String metricName, String hostName,
+                                               long startTime, long interval,
+                                               int count, double value) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(metricName);
+    metric.setHostName(hostName);
+    metric.setAppId("HOST");
+    metric.setStartTime(startTime);
+    for (int i = 0; i < count; i++) {
+      metric.getMetricValues().put(startTime + i * interval, value);
+    }
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.getMetrics().add(metric);
+    return metrics;
+  }
+
+  private static class TestStore extends LocalTimelineMetricStore {
+    private long now = T0;
+
+    TestStore(TimelineMetricConfiguration configuration) {
+      super(configuration);
+    }
+
+    @Override
+    protected long currentTimeMillis() {
+      return now;
+    }
+  }
+}
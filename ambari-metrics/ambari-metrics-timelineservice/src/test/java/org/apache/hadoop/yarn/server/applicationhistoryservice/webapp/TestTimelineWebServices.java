@@ -25,6 +25,7 @@ import javax.ws.rs.core.MediaType;
 import junit.framework.Assert;
 
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricsMetadata;
 import org.apache.hadoop.yarn.api.records.timeline.TimelineEntities;
 import org.apache.hadoop.yarn.api.records.timeline.TimelineEntity;
 import org.apache.hadoop.yarn.api.records.timeline.TimelineEvent;
@@ -388,4 +389,21 @@ public class TestTimelineWebServices extends JerseyTest {
     assertEquals(MediaType.APPLICATION_JSON_TYPE, response.getType());
     verifyMetrics(response.getEntity(TimelineMetrics.class));
   }
+
+  @Test
+  public void testGetMetricMetadata() throws Exception {
+    WebResource r = resource();
+    ClientResponse response = r.path("ws").path("v1").path("timeline")
+      .path("metrics").path("metadata").queryParam("appId", "HOST")
+      .accept(MediaType.APPLICATION_JSON)
+      .get(ClientResponse.class);
+    assertEquals(MediaType.APPLICATION_JSON_TYPE, response.getType());
+    TimelineMetricsMetadata metadata =
+      response.getEntity(TimelineMetricsMetadata.class);
+    Assert.assertEquals(2, metadata.getMetadata().size());
+    Assert.assertEquals("cpu_user", metadata.getMetadata().get(0).getMetricName());
+    Assert.assertEquals("ambari1.example.com",
+      metadata.getMetadata().get(0).getHostName());
+    Assert.assertEquals("mem_free", metadata.getMetadata().get(1).getMetricName());
+  }
 }
@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the JMH command line options given as arguments.
+ * Unless a result format is given, the results are written as JSON to
+ * {@code ambari-<version>-jmh.json} so that runs of different builds can be
+ * compared.
+ * <p/>
+ * Usage: {@code java -jar target/benchmarks.jar [JMH options] [benchmark regexp]}
+ */
+public class BenchmarkRunner {
+
+  private static final String PROPERTIES_FILE = "/benchmarks.properties";
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions);
+    if (!commandLineOptions.getResultFormat().hasValue()) {
+      options.resultFormat(ResultFormatType.JSON);
+      if (!commandLineOptions.getResult().hasValue()) {
+        options.result("ambari-" + getVersion() + "-jmh.json");
+      }
+    }
+    new Runner(options.build()).run();
+  }
+
+  /**
+   * Get the version of the benchmarked build.
+   */
+  private static String getVersion() throws IOException {
+    Properties properties = new Properties();
+    InputStream in = BenchmarkRunner.class.getResourceAsStream(PROPERTIES_FILE);
+    if (in != null) {
+      try {
+        properties.load(in);
+      } finally {
+        in.close();
+      }
+    }
+    return properties.getProperty("version", "unknown");
+  }
+}
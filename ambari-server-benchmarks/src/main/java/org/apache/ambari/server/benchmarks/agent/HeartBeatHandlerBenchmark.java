@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.benchmarks.agent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ambari.server.agent.CommandReport;
+import org.apache.ambari.server.agent.ComponentStatus;
+import org.apache.ambari.server.agent.HeartBeat;
+import org.apache.ambari.server.agent.HeartBeatHandler;
+import org.apache.ambari.server.agent.HeartBeatResponse;
+import org.apache.ambari.server.agent.HostInfo;
+import org.apache.ambari.server.agent.HostStatus;
+import org.apache.ambari.server.agent.Register;
+import org.apache.ambari.server.agent.RegistrationResponse;
+import org.apache.ambari.server.api.services.AmbariMetaInfo;
+import org.apache.ambari.server.benchmarks.fixtures.AbstractClusterBenchmark;
+import org.apache.ambari.server.benchmarks.fixtures.ClusterFixture;
+import org.apache.ambari.server.state.SecurityState;
+import org.apache.ambari.server.state.State;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link HeartBeatHandler#handleHeartBeat} for healthy agents which
+ * report the live status of all of their components.  All of the hosts are
+ * registered during setup and each operation handles the heartbeat of the
+ * next host in turn, keeping the response ids of each agent in sequence.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class HeartBeatHandlerBenchmark extends AbstractClusterBenchmark {
+
+  private HeartBeatHandler handler;
+
+  private List<String> hostNames;
+
+  private final Map<String, Long> responseIds = new HashMap<String, Long>();
+
+  private final Map<String, List<ComponentStatus>> componentStatuses =
+      new HashMap<String, List<ComponentStatus>>();
+
+  private int next = 0;
+
+  @Override
+  protected void setUp() throws Exception {
+    handler   = fixture.getInjector().getInstance(HeartBeatHandler.class);
+    hostNames = fixture.getHostNames();
+
+    String serverVersion = fixture.getInjector().getInstance(AmbariMetaInfo.class).getServerVersion();
+
+    for (String hostName : hostNames) {
+      HostInfo hostInfo = new HostInfo();
+      hostInfo.setHostName(hostName);
+      hostInfo.setOS("CentOS");
+      hostInfo.setOSRelease("6.4");
+
+      Register register = new Register();
+      register.setHostname(hostName);
+      register.setHardwareProfile(hostInfo);
+      register.setAgentVersion(serverVersion);
+      register.setCurrentPingPort(8670);
+      register.setTimestamp(System.currentTimeMillis());
+
+      RegistrationResponse response = handler.handleRegistration(register);
+      responseIds.put(hostName, response.getResponseId());
+
+      List<ComponentStatus> statuses = new ArrayList<ComponentStatus>();
+      for (ClusterFixture.ServiceComponentHostInfo info : fixture.getHostComponents(hostName)) {
+        ComponentStatus status = new ComponentStatus();
+        status.setClusterName(ClusterFixture.CLUSTER_NAME);
+        status.setServiceName(info.getServiceName());
+        status.setComponentName(info.getComponentName());
+        status.setStatus(info.isClient() ? State.INSTALLED.name() : State.STARTED.name());
+        status.setSecurityState(SecurityState.UNSECURED.name());
+        statuses.add(status);
+      }
+      componentStatuses.put(hostName, statuses);
+    }
+  }
+
+  @Benchmark
+  public HeartBeatResponse handleHeartBeat() throws Exception {
+    String hostName = hostNames.get(next);
+    next = (next + 1) % hostNames.size();
+
+    HeartBeat heartBeat = new HeartBeat();
+    heartBeat.setHostname(hostName);
+    heartBeat.setResponseId(responseIds.get(hostName));
+    heartBeat.setTimestamp(System.currentTimeMillis());
+    heartBeat.setNodeStatus(new HostStatus(HostStatus.Status.HEALTHY, ""));
+    heartBeat.setReports(Collections.<CommandReport>emptyList());
+    heartBeat.setComponentStatus(componentStatuses.get(hostName));
+
+    HeartBeatResponse response = handler.handleHeartBeat(heartBeat);
+    responseIds.put(hostName, response.getResponseId());
+    return response;
+  }
+}
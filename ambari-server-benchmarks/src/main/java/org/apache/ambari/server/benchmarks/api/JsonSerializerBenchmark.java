@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.benchmarks.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ambari.server.api.query.Query;
+import org.apache.ambari.server.api.query.QueryImpl;
+import org.apache.ambari.server.api.query.render.DefaultRenderer;
+import org.apache.ambari.server.api.resources.ResourceInstanceFactoryImpl;
+import org.apache.ambari.server.api.services.Result;
+import org.apache.ambari.server.api.services.ResultStatus;
+import org.apache.ambari.server.api.services.serializers.JsonSerializer;
+import org.apache.ambari.server.benchmarks.fixtures.AbstractClusterBenchmark;
+import org.apache.ambari.server.benchmarks.fixtures.ClusterFixture;
+import org.apache.ambari.server.controller.spi.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link JsonSerializer} on the result of a host query including
+ * the host components.  The result is built once during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class JsonSerializerBenchmark extends AbstractClusterBenchmark {
+
+  private Result result;
+
+  private final JsonSerializer prettySerializer  = new JsonSerializer(true);
+  private final JsonSerializer compactSerializer = new JsonSerializer(false);
+
+  @Override
+  protected void setUp() throws Exception {
+    Map<Resource.Type, String> keyValueMap = new HashMap<Resource.Type, String>();
+    keyValueMap.put(Resource.Type.Cluster, ClusterFixture.CLUSTER_NAME);
+    keyValueMap.put(Resource.Type.Host, null);
+
+    Query query = new QueryImpl(keyValueMap,
+        ResourceInstanceFactoryImpl.getResourceDefinition(Resource.Type.Host, keyValueMap),
+        fixture.getClusterController());
+    query.setRenderer(new DefaultRenderer());
+    query.addProperty("Hosts/*", null);
+    query.addProperty("host_components/HostRoles/component_name", null);
+    query.addProperty("host_components/HostRoles/state", null);
+    result = query.execute();
+    result.setResultStatus(new ResultStatus(ResultStatus.STATUS.OK));
+  }
+
+  @Benchmark
+  public Object serializePretty() {
+    return prettySerializer.serialize(result);
+  }
+
+  @Benchmark
+  public Object serializeCompact() {
+    return compactSerializer.serialize(result);
+  }
+
+  @Benchmark
+  public long serializeToStream() throws IOException {
+    CountingOutputStream out = new CountingOutputStream();
+    compactSerializer.serialize(result, out);
+    return out.count;
+  }
+
+
+  // ----- inner class : CountingOutputStream --------------------------------
+
+  /**
+   * Discards the bytes written to it, so that the stream benchmark doesn't
+   * measure buffer growth.
+   */
+  private static class CountingOutputStream extends OutputStream {
+    private long count = 0;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.benchmarks.api;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ambari.server.api.predicate.PredicateCompiler;
+import org.apache.ambari.server.api.predicate.QueryLexer;
+import org.apache.ambari.server.api.predicate.QueryParser;
+import org.apache.ambari.server.api.predicate.Token;
+import org.apache.ambari.server.controller.internal.ResourceImpl;
+import org.apache.ambari.server.controller.spi.Predicate;
+import org.apache.ambari.server.controller.spi.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures lexing, parsing and evaluating the query predicates of API
+ * requests.  The evaluation benchmark applies the compiled predicate to a
+ * batch of host resources, as a resource provider does when filtering.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PredicateBenchmark {
+
+  private static final int RESOURCE_COUNT = 1000;
+
+  private static final Map<String, String> EXPRESSIONS = new HashMap<String, String>();
+
+  static {
+    EXPRESSIONS.put("equals", "Hosts/host_name=host00500.benchmark.local");
+    EXPRESSIONS.put("compound",
+        "(Hosts/host_state=HEALTHY|Hosts/host_state=UNHEALTHY)&Hosts/maintenance_state!=ON" +
+        "&Hosts/cpu_count>=4&Hosts/rack_info=/rack1");
+    EXPRESSIONS.put("in", buildInExpression(100));
+    EXPRESSIONS.put("matches", "Hosts/host_name.matches(host00[1-4].*)");
+  }
+
+  /**
+   * The key of the expression in {@link #EXPRESSIONS}.
+   */
+  @Param({"equals", "compound", "in", "matches"})
+  public String expression;
+
+  private String exp;
+  private Token[] tokens;
+  private Predicate predicate;
+  private List<Resource> resources;
+
+
+  @Setup
+  public void setUp() throws Exception {
+    exp       = EXPRESSIONS.get(expression);
+    tokens    = new QueryLexer().tokens(exp);
+    predicate = new PredicateCompiler().compile(exp);
+
+    resources = new ArrayList<Resource>(RESOURCE_COUNT);
+    for (int i = 0; i < RESOURCE_COUNT; i++) {
+      Resource resource = new ResourceImpl(Resource.Type.Host);
+      resource.setProperty("Hosts/host_name", String.format("host%05d.benchmark.local", i));
+      resource.setProperty("Hosts/host_state", i % 10 == 0 ? "UNHEALTHY" : "HEALTHY");
+      resource.setProperty("Hosts/maintenance_state", i % 50 == 0 ? "ON" : "OFF");
+      resource.setProperty("Hosts/cpu_count", (long) (i % 16));
+      resource.setProperty("Hosts/rack_info", "/rack" + (i % 4));
+      resources.add(resource);
+    }
+  }
+
+  @Benchmark
+  public Token[] lex() throws Exception {
+    return new QueryLexer().tokens(exp);
+  }
+
+  @Benchmark
+  public Predicate parse() throws Exception {
+    return new QueryParser().parse(tokens);
+  }
+
+  @Benchmark
+  public Predicate compile() throws Exception {
+    return new PredicateCompiler().compile(exp);
+  }
+
+  @Benchmark
+  public int evaluate() {
+    int matches = 0;
+    for (Resource resource : resources) {
+      if (predicate.evaluate(resource)) {
+        matches++;
+      }
+    }
+    return matches;
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private static String buildInExpression(int count) {
+    StringBuilder sb = new StringBuilder("Hosts/host_name.in(");
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(String.format("host%05d.benchmark.local", i * 7));
+    }
+    return sb.append(')').toString();
+  }
+}
@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.benchmarks.api;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ambari.server.api.predicate.PredicateCompiler;
+import org.apache.ambari.server.controller.internal.CompactResourceImpl;
+import org.apache.ambari.server.controller.internal.ResourceImpl;
+import org.apache.ambari.server.controller.predicate.CompiledPredicate;
+import org.apache.ambari.server.controller.spi.Predicate;
+import org.apache.ambari.server.controller.spi.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares evaluating the predicates of typical UI host queries against a set
+ * of 10k host resources with the parsed predicate and with a
+ * {@link CompiledPredicate}, as the cluster controller does when filtering
+ * the resources returned by a provider.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PredicateEvaluationBenchmark {
+
+  private static final int RESOURCE_COUNT = 10000;
+
+  private static final Map<String, String> EXPRESSIONS = new HashMap<String, String>();
+
+  static {
+    EXPRESSIONS.put("status",
+        "Hosts/host_status=HEALTHY&Hosts/maintenance_state!=ON");
+    EXPRESSIONS.put("hardware",
+        "Hosts/cpu_count>=8&Hosts/total_mem>=33554432&Hosts/os_type=centos6");
+    EXPRESSIONS.put("combined",
+        "(Hosts/host_status=HEALTHY|Hosts/host_status=UNHEALTHY)&Hosts/maintenance_state!=ON" +
+        "&Hosts/cpu_count>=4&Hosts/rack_info=/rack1&Hosts/host_name.matches(.*host0[0-4].*)");
+    EXPRESSIONS.put("in", buildInExpression(100));
+  }
+
+  /**
+   * The key of the expression in {@link #EXPRESSIONS}.
+   */
+  @Param({"status", "hardware", "combined", "in"})
+  public String expression;
+
+  /**
+   * Whether the resources are {@link CompactResourceImpl}s.
+   */
+  @Param({"false", "true"})
+  public boolean compact;
+
+  private Predicate predicate;
+  private Predicate compiledPredicate;
+  private List<Resource> resources;
+
+
+  @Setup
+  public void setUp() throws Exception {
+    predicate         = new PredicateCompiler().compile(EXPRESSIONS.get(expression));
+    compiledPredicate = CompiledPredicate.compile(predicate);
+
+    resources = new ArrayList<Resource>(RESOURCE_COUNT);
+    for (int i = 0; i < RESOURCE_COUNT; i++) {
+      Resource resource = compact ?
+          new CompactResourceImpl(Resource.Type.Host) : new ResourceImpl(Resource.Type.Host);
+
+      resource.setProperty("Hosts/host_name", String.format("host%05d.benchmark.local", i));
+      resource.setProperty("Hosts/host_status", i % 10 == 0 ? "UNHEALTHY" : "HEALTHY");
+      resource.setProperty("Hosts/maintenance_state", i % 50 == 0 ? "ON" : "OFF");
+      resource.setProperty("Hosts/cpu_count", (long) (4 << (i % 3)));
+      resource.setProperty("Hosts/total_mem", String.valueOf(16777216L << (i % 3)));
+      resource.setProperty("Hosts/os_type", i % 5 == 0 ? "ubuntu12" : "centos6");
+      resource.setProperty("Hosts/rack_info", "/rack" + (i % 4));
+      resources.add(resource);
+    }
+
+    if (evaluate(predicate) != evaluate(compiledPredicate)) {
+      throw new IllegalStateException("The compiled predicate doesn't match the same resources");
+    }
+  }
+
+  @Benchmark
+  public int evaluate() {
+    return evaluate(predicate);
+  }
+
+  @Benchmark
+  public int evaluateCompiled() {
+    return evaluate(compiledPredicate);
+  }
+
+  /**
+   * Compile the predicate for each evaluation, as the cluster controller does
+   * for each page of resources.
+   */
+  @Benchmark
+  public int compileAndEvaluate() {
+    return evaluate(CompiledPredicate.compile(predicate));
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private int evaluate(Predicate predicate) {
+    int matches = 0;
+    for (Resource resource : resources) {
+      if (predicate.evaluate(resource)) {
+        matches++;
+      }
+    }
+    return matches;
+  }
+
+  private static String buildInExpression(int count) {
+    StringBuilder sb = new StringBuilder("Hosts/host_name.in(");
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(String.format("host%05d.benchmark.local", i * 97));
+    }
+    return sb.append(')').toString();
+  }
+}
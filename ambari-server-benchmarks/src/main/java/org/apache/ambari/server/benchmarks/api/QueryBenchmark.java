@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.benchmarks.api;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ambari.server.api.query.Query;
+import org.apache.ambari.server.api.query.QueryImpl;
+import org.apache.ambari.server.api.query.render.DefaultRenderer;
+import org.apache.ambari.server.api.resources.ResourceInstanceFactoryImpl;
+import org.apache.ambari.server.api.services.Result;
+import org.apache.ambari.server.benchmarks.fixtures.AbstractClusterBenchmark;
+import org.apache.ambari.server.benchmarks.fixtures.ClusterFixture;
+import org.apache.ambari.server.controller.spi.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link QueryImpl#execute()} for the hosts of a cluster, as done
+ * for {@code GET /api/v1/clusters/c1/hosts?fields=...}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class QueryBenchmark extends AbstractClusterBenchmark {
+
+  private Map<Resource.Type, String> keyValueMap;
+
+  @Override
+  protected void setUp() {
+    keyValueMap = new HashMap<Resource.Type, String>();
+    keyValueMap.put(Resource.Type.Cluster, ClusterFixture.CLUSTER_NAME);
+    keyValueMap.put(Resource.Type.Host, null);
+  }
+
+  @Benchmark
+  public Result queryHostNames() throws Exception {
+    return execute("Hosts/host_name");
+  }
+
+  @Benchmark
+  public Result queryHosts() throws Exception {
+    return execute("Hosts/*");
+  }
+
+  @Benchmark
+  public Result queryHostsWithComponents() throws Exception {
+    return execute("Hosts/host_name", "host_components/HostRoles/component_name",
+        "host_components/HostRoles/state");
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private Result execute(String... propertyIds) throws Exception {
+    Query query = new QueryImpl(keyValueMap,
+        ResourceInstanceFactoryImpl.getResourceDefinition(Resource.Type.Host, keyValueMap),
+        fixture.getClusterController());
+    query.setRenderer(new DefaultRenderer());
+    for (String propertyId : propertyIds) {
+      query.addProperty(propertyId, null);
+    }
+    return query.execute();
+  }
+}
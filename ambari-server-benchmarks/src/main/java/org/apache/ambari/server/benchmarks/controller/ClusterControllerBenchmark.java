@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.benchmarks.controller;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ambari.server.benchmarks.fixtures.AbstractClusterBenchmark;
+import org.apache.ambari.server.benchmarks.fixtures.ClusterFixture;
+import org.apache.ambari.server.controller.internal.ClusterControllerImpl;
+import org.apache.ambari.server.controller.internal.PageRequestImpl;
+import org.apache.ambari.server.controller.internal.SortRequestImpl;
+import org.apache.ambari.server.controller.spi.ClusterController;
+import org.apache.ambari.server.controller.spi.PageRequest;
+import org.apache.ambari.server.controller.spi.PageResponse;
+import org.apache.ambari.server.controller.spi.Predicate;
+import org.apache.ambari.server.controller.spi.QueryResponse;
+import org.apache.ambari.server.controller.spi.Request;
+import org.apache.ambari.server.controller.spi.Resource;
+import org.apache.ambari.server.controller.spi.SortRequest;
+import org.apache.ambari.server.controller.spi.SortRequestProperty;
+import org.apache.ambari.server.controller.utilities.PredicateBuilder;
+import org.apache.ambari.server.controller.utilities.PropertyHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ClusterControllerImpl#getResources} and
+ * {@link ClusterControllerImpl#getPage} for the hosts of a cluster.  The page
+ * benchmarks reuse a query response built during setup so that they measure
+ * paging and sorting only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class ClusterControllerBenchmark extends AbstractClusterBenchmark {
+
+  private static final int PAGE_SIZE = 100;
+
+  private ClusterController controller;
+  private Request request;
+  private Predicate predicate;
+  private QueryResponse queryResponse;
+  private SortRequest sortRequest;
+
+  @Override
+  protected void setUp() throws Exception {
+    controller    = fixture.getClusterController();
+    request       = PropertyHelper.getReadRequest("Hosts/host_name", "Hosts/cluster_name",
+        "Hosts/ip", "Hosts/rack_info", "Hosts/os_type", "Hosts/host_state");
+    predicate     = new PredicateBuilder().property("Hosts/cluster_name").
+        equals(ClusterFixture.CLUSTER_NAME).toPredicate();
+    queryResponse = controller.getResources(Resource.Type.Host, request, predicate);
+    sortRequest   = new SortRequestImpl(Collections.singletonList(
+        new SortRequestProperty("Hosts/host_name", SortRequest.Order.DESC)));
+  }
+
+  @Benchmark
+  public QueryResponse getResources() throws Exception {
+    return controller.getResources(Resource.Type.Host, request, predicate);
+  }
+
+  @Benchmark
+  public PageResponse getFirstPage() throws Exception {
+    return getPage(new PageRequestImpl(PageRequest.StartingPoint.Beginning, PAGE_SIZE, 0, null, null), null);
+  }
+
+  @Benchmark
+  public PageResponse getMiddlePage() throws Exception {
+    return getPage(new PageRequestImpl(PageRequest.StartingPoint.OffsetStart, PAGE_SIZE,
+        hostCount / 2, null, null), null);
+  }
+
+  @Benchmark
+  public PageResponse getFirstPageSorted() throws Exception {
+    return getPage(new PageRequestImpl(PageRequest.StartingPoint.Beginning, PAGE_SIZE, 0, null, null),
+        sortRequest);
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  /**
+   * Get the page and walk it, since the page iterable may be lazy.
+   */
+  private PageResponse getPage(PageRequest pageRequest, SortRequest sortRequest) throws Exception {
+    PageResponse response = controller.getPage(Resource.Type.Host, queryResponse, request,
+        predicate, pageRequest, sortRequest);
+
+    int count = 0;
+    for (Resource ignored : response.getIterable()) {
+      count++;
+    }
+    if (count > PAGE_SIZE) {
+      throw new IllegalStateException("Page has " + count + " resources");
+    }
+    return response;
+  }
+}
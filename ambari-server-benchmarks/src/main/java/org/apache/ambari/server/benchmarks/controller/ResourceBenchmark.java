@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.benchmarks.controller;
+
+import org.apache.ambari.server.controller.internal.CompactResourceImpl;
+import org.apache.ambari.server.controller.internal.PropertyLayout;
+import org.apache.ambari.server.controller.internal.ResourceImpl;
+import org.apache.ambari.server.controller.spi.Resource;
+import org.apache.ambari.server.controller.utilities.PropertyHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building, reading and rendering host resources with
+ * {@link ResourceImpl} and {@link CompactResourceImpl}.  Each operation
+ * handles one batch of resources, as a provider would for a host query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ResourceBenchmark {
+
+  /**
+   * The number of resources in a batch.
+   */
+  @Param({"100", "1000", "5000"})
+  public int resourceCount;
+
+  /**
+   * The schema property ids of a host.
+   */
+  private String[] propertyIds;
+
+  /**
+   * The value set for each property.
+   */
+  private Object[] values;
+
+  private PropertyLayout layout;
+
+  private List<Resource> resources;
+
+  private List<Resource> compactResources;
+
+
+  @Setup
+  public void setUp() {
+    List<String> ids = new ArrayList<String>();
+    for (String propertyId : PropertyHelper.getPropertyIds(Resource.Type.Host)) {
+      if (!PropertyHelper.containsArguments(propertyId)) {
+        ids.add(propertyId);
+      }
+    }
+    propertyIds = ids.toArray(new String[ids.size()]);
+
+    values = new Object[propertyIds.length];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i % 2 == 0 ? "value-" + i : (Object) (long) i;
+    }
+
+    layout           = PropertyLayout.forType(Resource.Type.Host);
+    resources        = buildResources(false);
+    compactResources = buildResources(true);
+  }
+
+  @Benchmark
+  public List<Resource> buildResourceImpl() {
+    return buildResources(false);
+  }
+
+  @Benchmark
+  public List<Resource> buildCompactResourceImpl() {
+    return buildResources(true);
+  }
+
+  @Benchmark
+  public void getPropertyValueResourceImpl(Blackhole blackhole) {
+    getPropertyValues(resources, blackhole);
+  }
+
+  @Benchmark
+  public void getPropertyValueCompactResourceImpl(Blackhole blackhole) {
+    getPropertyValues(compactResources, blackhole);
+  }
+
+  @Benchmark
+  public void buildAndRenderResourceImpl(Blackhole blackhole) {
+    render(buildResources(false), blackhole);
+  }
+
+  @Benchmark
+  public void buildAndRenderCompactResourceImpl(Blackhole blackhole) {
+    render(buildResources(true), blackhole);
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private List<Resource> buildResources(boolean compact) {
+    List<Resource> list = new ArrayList<Resource>(resourceCount);
+    for (int r = 0; r < resourceCount; r++) {
+      Resource resource = compact ?
+          new CompactResourceImpl(Resource.Type.Host, layout) : new ResourceImpl(Resource.Type.Host);
+
+      for (int i = 0; i < propertyIds.length; i++) {
+        resource.setProperty(propertyIds[i], values[i]);
+      }
+      list.add(resource);
+    }
+    return list;
+  }
+
+  private void getPropertyValues(List<Resource> list, Blackhole blackhole) {
+    for (Resource resource : list) {
+      for (String propertyId : propertyIds) {
+        blackhole.consume(resource.getPropertyValue(propertyId));
+      }
+    }
+  }
+
+  /**
+   * Visit the properties the way the JSON serializer does.
+   */
+  private void render(List<Resource> list, Blackhole blackhole) {
+    for (Resource resource : list) {
+      for (Map.Entry<String, Map<String, Object>> category : resource.getPropertiesMap().entrySet()) {
+        blackhole.consume(category.getKey());
+        for (Map.Entry<String, Object> property : category.getValue().entrySet()) {
+          blackhole.consume(property.getKey());
+          blackhole.consume(property.getValue());
+        }
+      }
+    }
+  }
+}
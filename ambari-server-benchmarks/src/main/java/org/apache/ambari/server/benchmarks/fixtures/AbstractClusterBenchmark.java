@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.benchmarks.fixtures;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Base class of the benchmarks which run against a {@link ClusterFixture}.
+ * The fixture is created once per trial; since each trial runs in a forked
+ * JVM, every parameter combination gets a fresh in-memory database.
+ */
+public abstract class AbstractClusterBenchmark {
+
+  /**
+   * The number of hosts in the cluster.
+   */
+  @Param({"100", "1000", "5000"})
+  public int hostCount;
+
+  /**
+   * The max number of services in the cluster.
+   */
+  @Param({"30"})
+  public int serviceCount;
+
+  protected ClusterFixture fixture;
+
+
+  @Setup(Level.Trial)
+  public void setUpFixture() throws Exception {
+    fixture = new ClusterFixture(hostCount, serviceCount);
+    setUp();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDownFixture() {
+    fixture.tearDown();
+  }
+
+  /**
+   * Prepare the benchmark state once the fixture exists.
+   *
+   * @throws Exception if the state can't be prepared
+   */
+  protected abstract void setUp() throws Exception;
+}
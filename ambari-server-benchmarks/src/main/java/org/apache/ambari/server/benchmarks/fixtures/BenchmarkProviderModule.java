@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.benchmarks.fixtures;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ambari.server.controller.AmbariManagementController;
+import org.apache.ambari.server.controller.internal.AbstractControllerResourceProvider;
+import org.apache.ambari.server.controller.spi.PropertyProvider;
+import org.apache.ambari.server.controller.spi.ProviderModule;
+import org.apache.ambari.server.controller.spi.Resource;
+import org.apache.ambari.server.controller.spi.ResourceProvider;
+import org.apache.ambari.server.controller.utilities.PropertyHelper;
+
+/**
+ * Provider module which creates the controller resource providers but no
+ * property providers, so that benchmarks measure the server code paths
+ * without calls to JMX or metrics collectors.
+ */
+public class BenchmarkProviderModule implements ProviderModule {
+
+  private final AmbariManagementController managementController;
+
+  private final Map<Resource.Type, ResourceProvider> resourceProviders =
+      new ConcurrentHashMap<Resource.Type, ResourceProvider>();
+
+
+  // ----- Constructors ------------------------------------------------------
+
+  public BenchmarkProviderModule(AmbariManagementController managementController) {
+    this.managementController = managementController;
+  }
+
+
+  // ----- ProviderModule ----------------------------------------------------
+
+  @Override
+  public ResourceProvider getResourceProvider(Resource.Type type) {
+    ResourceProvider provider = resourceProviders.get(type);
+    if (provider == null) {
+      provider = AbstractControllerResourceProvider.getResourceProvider(type,
+          PropertyHelper.getPropertyIds(type), PropertyHelper.getKeyPropertyIds(type),
+          managementController);
+      resourceProviders.put(type, provider);
+    }
+    return provider;
+  }
+
+  @Override
+  public List<PropertyProvider> getPropertyProviders(Resource.Type type) {
+    return Collections.emptyList();
+  }
+}
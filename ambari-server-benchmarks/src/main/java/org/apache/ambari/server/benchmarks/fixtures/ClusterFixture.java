@@ -0,0 +1,330 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.benchmarks.fixtures;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.ambari.server.AmbariException;
+import org.apache.ambari.server.api.services.AmbariMetaInfo;
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.controller.AmbariManagementController;
+import org.apache.ambari.server.controller.ControllerModule;
+import org.apache.ambari.server.controller.ResourceProviderFactory;
+import org.apache.ambari.server.controller.internal.AbstractControllerResourceProvider;
+import org.apache.ambari.server.controller.internal.ClusterControllerImpl;
+import org.apache.ambari.server.controller.spi.ClusterController;
+import org.apache.ambari.server.orm.GuiceJpaInitializer;
+import org.apache.ambari.server.orm.dao.RepositoryVersionDAO;
+import org.apache.ambari.server.state.Cluster;
+import org.apache.ambari.server.state.Clusters;
+import org.apache.ambari.server.state.ComponentInfo;
+import org.apache.ambari.server.state.Host;
+import org.apache.ambari.server.state.RepositoryVersionState;
+import org.apache.ambari.server.state.Service;
+import org.apache.ambari.server.state.ServiceComponent;
+import org.apache.ambari.server.state.ServiceInfo;
+import org.apache.ambari.server.state.StackId;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.persist.PersistService;
+
+/**
+ * A synthetic cluster backed by the in-memory Derby database.  The cluster
+ * uses the stack definitions from the ambari-server source tree; master
+ * components are spread across the hosts, slave components are installed on
+ * every host and client components on every tenth host.
+ * <p/>
+ * The following system properties may be used to locate the sources and to
+ * choose the stack:
+ * <ul>
+ * <li>{@code ambari.server.dir} - the ambari-server module directory,
+ * {@code ../ambari-server} by default</li>
+ * <li>{@code ambari.common.dir} - the ambari-common module directory,
+ * {@code ../ambari-common} by default</li>
+ * <li>{@code ambari.benchmarks.stack} - the stack id, {@code HDP-2.3} by
+ * default</li>
+ * </ul>
+ * Benchmarks run in forked JVMs, so the properties should be passed with the
+ * JMH {@code -jvmArgsAppend} option.
+ */
+public class ClusterFixture {
+
+  public static final String CLUSTER_NAME = "c1";
+
+  public static final String OS_TYPE = "centos6";
+
+  /**
+   * Clients are installed on one in this many hosts.
+   */
+  private static final int CLIENT_HOST_RATIO = 10;
+
+  private final Injector injector;
+  private final Clusters clusters;
+  private final Cluster cluster;
+  private final StackId stackId;
+  private final List<String> hostNames = new ArrayList<String>();
+  private final List<String> serviceNames = new ArrayList<String>();
+  private final Map<String, List<ServiceComponentHostInfo>> hostComponents =
+      new HashMap<String, List<ServiceComponentHostInfo>>();
+
+  private ClusterController clusterController;
+
+
+  // ----- Constructors ------------------------------------------------------
+
+  /**
+   * Create the cluster.
+   *
+   * @param hostCount     the number of hosts
+   * @param serviceCount  the max number of services; limited by the number of
+   *                      services in the stack
+   *
+   * @throws Exception if the cluster can't be created
+   */
+  public ClusterFixture(int hostCount, int serviceCount) throws Exception {
+    stackId  = new StackId(System.getProperty("ambari.benchmarks.stack", "HDP-2.3"));
+    injector = Guice.createInjector(new ControllerModule(getProperties()));
+    injector.getInstance(GuiceJpaInitializer.class);
+
+    // normally done by AmbariServer on startup
+    AbstractControllerResourceProvider.init(injector.getInstance(ResourceProviderFactory.class));
+
+    clusters = injector.getInstance(Clusters.class);
+    clusters.addCluster(CLUSTER_NAME);
+    cluster = clusters.getCluster(CLUSTER_NAME);
+    cluster.setDesiredStackVersion(stackId);
+    cluster.setCurrentStackVersion(stackId);
+
+    injector.getInstance(RepositoryVersionDAO.class).create(stackId.getStackId(),
+        stackId.getStackVersion(), "benchmark", "upgrade_pack", "");
+    cluster.createClusterVersion(stackId.getStackId(), stackId.getStackVersion(),
+        "admin", RepositoryVersionState.CURRENT);
+
+    addHosts(hostCount);
+    addServices(serviceCount);
+  }
+
+
+  // ----- ClusterFixture ----------------------------------------------------
+
+  public Injector getInjector() {
+    return injector;
+  }
+
+  public Clusters getClusters() {
+    return clusters;
+  }
+
+  public Cluster getCluster() {
+    return cluster;
+  }
+
+  public StackId getStackId() {
+    return stackId;
+  }
+
+  public List<String> getHostNames() {
+    return hostNames;
+  }
+
+  public List<String> getServiceNames() {
+    return serviceNames;
+  }
+
+  /**
+   * Get the components installed on the given host.
+   *
+   * @param hostName  the host name
+   *
+   * @return the service and component names of the host components
+   */
+  public List<ServiceComponentHostInfo> getHostComponents(String hostName) {
+    List<ServiceComponentHostInfo> components = hostComponents.get(hostName);
+    return components == null ? Collections.<ServiceComponentHostInfo>emptyList() : components;
+  }
+
+  /**
+   * Get a cluster controller for the cluster.  Only resource providers are
+   * registered, so queries don't reach out to metrics systems.
+   *
+   * @return the cluster controller
+   */
+  public synchronized ClusterController getClusterController() {
+    if (clusterController == null) {
+      clusterController = new ClusterControllerImpl(
+          new BenchmarkProviderModule(injector.getInstance(AmbariManagementController.class)));
+    }
+    return clusterController;
+  }
+
+  /**
+   * Stop the persistence service.
+   */
+  public void tearDown() {
+    injector.getInstance(PersistService.class).stop();
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private Properties getProperties() throws IOException {
+    String serverDir = System.getProperty("ambari.server.dir", "../ambari-server");
+    String commonDir = System.getProperty("ambari.common.dir", "../ambari-common");
+
+    File versionFile = File.createTempFile("ambari-benchmarks", ".version");
+    versionFile.deleteOnExit();
+    FileWriter writer = new FileWriter(versionFile);
+    try {
+      writer.write("2.0.0");
+    } finally {
+      writer.close();
+    }
+
+    Properties properties = new Properties();
+    properties.setProperty(Configuration.SERVER_PERSISTENCE_TYPE_KEY, "in-memory");
+    properties.setProperty(Configuration.METADETA_DIR_PATH, serverDir + "/src/main/resources/stacks");
+    properties.setProperty(Configuration.COMMON_SERVICES_DIR_PATH, serverDir + "/src/main/resources/common-services");
+    properties.setProperty(Configuration.RESOURCES_DIR_KEY, serverDir + "/src/main/resources");
+    properties.setProperty(Configuration.SHARED_RESOURCES_DIR_KEY,
+        commonDir + "/src/main/python/ambari_commons/resources");
+    properties.setProperty(Configuration.SERVER_VERSION_FILE, versionFile.getAbsolutePath());
+    properties.setProperty(Configuration.OS_VERSION_KEY, OS_TYPE);
+    return properties;
+  }
+
+  private void addHosts(int hostCount) throws AmbariException {
+    Map<String, String> hostAttributes = new HashMap<String, String>();
+    hostAttributes.put("os_family", "redhat");
+    hostAttributes.put("os_release_version", "6.4");
+
+    for (int i = 0; i < hostCount; i++) {
+      String hostName = String.format("host%05d.benchmark.local", i);
+
+      clusters.addHost(hostName);
+      Host host = clusters.getHost(hostName);
+      host.setIPv4(String.format("10.%d.%d.%d", i >> 16 & 0xff, i >> 8 & 0xff, i & 0xff));
+      host.setOsType(OS_TYPE);
+      host.setRackInfo("/rack" + (i / 40));
+      host.setHostAttributes(hostAttributes);
+      host.persist();
+
+      hostNames.add(hostName);
+    }
+    clusters.mapHostsToCluster(new LinkedHashSet<String>(hostNames), CLUSTER_NAME);
+  }
+
+  private void addServices(int serviceCount) throws AmbariException {
+    AmbariMetaInfo metaInfo = injector.getInstance(AmbariMetaInfo.class);
+
+    List<ServiceInfo> serviceInfos = new ArrayList<ServiceInfo>();
+    for (ServiceInfo serviceInfo : metaInfo.getServices(stackId.getStackName(),
+        stackId.getStackVersion()).values()) {
+      if (!serviceInfo.isDeleted()) {
+        serviceInfos.add(serviceInfo);
+      }
+    }
+    Collections.sort(serviceInfos, new Comparator<ServiceInfo>() {
+      @Override
+      public int compare(ServiceInfo info1, ServiceInfo info2) {
+        return info1.getName().compareTo(info2.getName());
+      }
+    });
+
+    int masterIndex = 0;
+    for (ServiceInfo serviceInfo : serviceInfos.subList(0, Math.min(serviceCount, serviceInfos.size()))) {
+      Service service = cluster.addService(serviceInfo.getName());
+      service.persist();
+      serviceNames.add(serviceInfo.getName());
+
+      for (ComponentInfo componentInfo : serviceInfo.getComponents()) {
+        if (componentInfo.isDeleted()) {
+          continue;
+        }
+        ServiceComponent component = service.addServiceComponent(componentInfo.getName());
+        component.persist();
+
+        List<String> componentHosts;
+        if (componentInfo.isMaster()) {
+          componentHosts = Collections.singletonList(hostNames.get(masterIndex++ % hostNames.size()));
+        } else if (componentInfo.isClient()) {
+          componentHosts = new ArrayList<String>();
+          for (int i = 0; i < hostNames.size(); i += CLIENT_HOST_RATIO) {
+            componentHosts.add(hostNames.get(i));
+          }
+        } else {
+          componentHosts = hostNames;
+        }
+
+        for (String hostName : componentHosts) {
+          component.addServiceComponentHost(hostName).persist();
+
+          List<ServiceComponentHostInfo> components = hostComponents.get(hostName);
+          if (components == null) {
+            components = new ArrayList<ServiceComponentHostInfo>();
+            hostComponents.put(hostName, components);
+          }
+          components.add(new ServiceComponentHostInfo(service.getName(), component.getName(),
+              componentInfo.isClient()));
+        }
+      }
+    }
+  }
+
+
+  // ----- inner class : ServiceComponentHostInfo ----------------------------
+
+  /**
+   * The names of a component installed on a host.
+   */
+  public static class ServiceComponentHostInfo {
+    private final String serviceName;
+    private final String componentName;
+    private final boolean client;
+
+    public ServiceComponentHostInfo(String serviceName, String componentName, boolean client) {
+      this.serviceName   = serviceName;
+      this.componentName = componentName;
+      this.client        = client;
+    }
+
+    public String getServiceName() {
+      return serviceName;
+    }
+
+    public String getComponentName() {
+      return componentName;
+    }
+
+    public boolean isClient() {
+      return client;
+    }
+  }
+}
@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.benchmarks.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.cache.TimelineMetricsCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares {@link TimelineMetricsCache} with the {@code LinkedHashMap} based
+ * cache it replaced.  Each operation is one reporting round of a sink: a
+ * value is put for every metric, ten seconds after the previous round, and
+ * every metric is polled, which evicts the values about once a minute.
+ * <p/>
+ * The concurrent benchmarks run four reporters which share a cache, each
+ * with its own metrics; the legacy cache isn't thread safe, so it is used
+ * under a lock as a sink would have to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TimelineMetricsCacheBenchmark {
+
+  private static final long REPORT_INTERVAL = 10000L;
+
+  private static final int REPORTER_COUNT = 4;
+
+  /**
+   * The number of metrics of a reporter.
+   */
+  @Param({"100", "1000", "10000"})
+  public int metricCount;
+
+  private LegacyTimelineMetricsCache legacyCache;
+
+  private TimelineMetricsCache cache;
+
+  private final Object legacyLock = new Object();
+
+  private final AtomicInteger reporterIds = new AtomicInteger();
+
+
+  @Setup
+  public void setUp() {
+    // room for the metrics of all reporters
+    legacyCache = new LegacyTimelineMetricsCache(REPORTER_COUNT * metricCount,
+        TimelineMetricsCache.MAX_EVICTION_TIME_MILLIS);
+    cache = new TimelineMetricsCache(REPORTER_COUNT * metricCount,
+        TimelineMetricsCache.MAX_EVICTION_TIME_MILLIS);
+  }
+
+  /**
+   * The metrics of one reporter thread.
+   */
+  @State(Scope.Thread)
+  public static class Reporter {
+    private String[] metricNames;
+    private long time = 0;
+
+    @Setup
+    public void setUp(TimelineMetricsCacheBenchmark benchmark) {
+      int id = benchmark.reporterIds.getAndIncrement();
+      metricNames = new String[benchmark.metricCount];
+      for (int i = 0; i < metricNames.length; i++) {
+        metricNames[i] = "reporter" + id + ".metrics.benchmark.metric" + i;
+      }
+    }
+
+    private TimelineMetric nextMetric(String metricName) {
+      TimelineMetric metric = new TimelineMetric();
+      metric.setMetricName(metricName);
+      metric.setHostName("host1.benchmark.local");
+      metric.setAppId("benchmark");
+      metric.setStartTime(time);
+      metric.getMetricValues().put(time, (double) time);
+      return metric;
+    }
+  }
+
+  @Benchmark
+  public void reportLegacy(Reporter reporter, Blackhole blackhole) {
+    reportLegacy(reporter, blackhole, false);
+  }
+
+  @Benchmark
+  public void report(Reporter reporter, Blackhole blackhole) {
+    reporter.time += REPORT_INTERVAL;
+    for (String metricName : reporter.metricNames) {
+      cache.putTimelineMetric(reporter.nextMetric(metricName), true);
+      blackhole.consume(cache.getTimelineMetric(metricName));
+    }
+  }
+
+  @Benchmark
+  @Threads(REPORTER_COUNT)
+  public void reportConcurrentLegacy(Reporter reporter, Blackhole blackhole) {
+    reportLegacy(reporter, blackhole, true);
+  }
+
+  @Benchmark
+  @Threads(REPORTER_COUNT)
+  public void reportConcurrent(Reporter reporter, Blackhole blackhole) {
+    report(reporter, blackhole);
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private void reportLegacy(Reporter reporter, Blackhole blackhole, boolean locked) {
+    reporter.time += REPORT_INTERVAL;
+    for (String metricName : reporter.metricNames) {
+      TimelineMetric metric = reporter.nextMetric(metricName);
+      if (locked) {
+        synchronized (legacyLock) {
+          legacyCache.putTimelineMetric(metric, true);
+          blackhole.consume(legacyCache.getTimelineMetric(metricName));
+        }
+      } else {
+        legacyCache.putTimelineMetric(metric, true);
+        blackhole.consume(legacyCache.getTimelineMetric(metricName));
+      }
+    }
+  }
+}
@@ -110,6 +110,13 @@ public interface ActionDBAccessor {
    */
   void updateHostRoleStates(Collection<CommandReport> reports);
 
+  /**
+   * Discard the in-memory state of the reported tasks, such as the append
+   * position of their output, after the transaction which updated them from
+   * the command reports was rolled back
+   */
+  void onHostRoleStatesRolledBack(Collection<CommandReport> reports);
+
   /**
    * For the given host, update all the tasks based on the command report
    */
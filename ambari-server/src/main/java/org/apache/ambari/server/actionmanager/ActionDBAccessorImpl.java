@@ -46,6 +46,7 @@ import org.apache.ambari.server.orm.entities.RequestEntity;
 import org.apache.ambari.server.orm.entities.RequestScheduleEntity;
 import org.apache.ambari.server.orm.entities.RoleSuccessCriteriaEntity;
 import org.apache.ambari.server.orm.entities.StageEntity;
+import org.apache.ambari.server.orm.entities.TaskOutputChunkEntity.OutputType;
 import org.apache.ambari.server.state.Clusters;
 import org.apache.ambari.server.state.Host;
 import org.apache.ambari.server.utils.StageUtils;
@@ -101,6 +102,9 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
   @Inject
   RequestScheduleDAO requestScheduleDAO;
 
+  @Inject
+  TaskOutputStore taskOutputStore;
+
   private Cache<Long, HostRoleCommand> hostRoleCommandCache;
   private long cacheLimit; //may be exceeded to store tasks from one request
 
@@ -117,6 +121,7 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
   @Inject
   void init() {
     requestId = stageDAO.getLastRequestId();
+    taskOutputStore.sweep();
   }
 
   /* (non-Javadoc)
@@ -166,6 +171,7 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
 
     List<HostRoleCommandEntity> commands =
         hostRoleCommandDAO.findByRequest(requestId);
+    List<HostRoleCommandEntity> abortedCommands = new ArrayList<HostRoleCommandEntity>();
     for (HostRoleCommandEntity command : commands) {
       if (command.getStatus() == HostRoleStatus.QUEUED ||
           command.getStatus() == HostRoleStatus.IN_PROGRESS ||
@@ -173,6 +179,7 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
 
         command.setStatus(HostRoleStatus.ABORTED);
         command.setEndTime(now);
+        abortedCommands.add(command);
         LOG.info("Aborting command. Hostname " + command.getHostName()
             + " role " + command.getRole()
             + " requestId " + command.getRequestId()
@@ -181,6 +188,9 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
       }
     }
 
+    if (taskOutputStore.isEnabled()) {
+      taskOutputStore.flush(abortedCommands);
+    }
     hostRoleCommandDAO.mergeAll(commands);
   }
 
@@ -197,6 +207,9 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
       command.setStatus(command.isRetryAllowed() ? HostRoleStatus.HOLDING_TIMEDOUT : HostRoleStatus.TIMEDOUT);
       command.setEndTime(now);
     }
+    if (taskOutputStore.isEnabled()) {
+      taskOutputStore.flush(commands);
+    }
     hostRoleCommandDAO.mergeAll(commands);
     endRequestIfCompleted(requestId);
   }
@@ -390,10 +403,7 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
       } else {
         abortedCommandUpdates.add(commandEntity.getTaskId());
       }
-      commandEntity.setStdOut(report.getStdOut().getBytes());
-      commandEntity.setStdError(report.getStdErr().getBytes());
-      commandEntity.setStructuredOut(report.getStructuredOut() == null ? null :
-        report.getStructuredOut().getBytes());
+      updateOutput(commandEntity, report);
       commandEntity.setExitcode(report.getExitCode());
 
       if (HostRoleStatus.getCompletedStates().contains(commandEntity.getStatus())) {
@@ -418,6 +428,19 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
     }
   }
 
+  @Override
+  public void onHostRoleStatesRolledBack(Collection<CommandReport> reports) {
+    if (!taskOutputStore.isEnabled()) {
+      return;
+    }
+
+    List<Long> taskIds = new ArrayList<Long>();
+    for (CommandReport report : reports) {
+      taskIds.add(report.getTaskId());
+    }
+    taskOutputStore.invalidate(taskIds);
+  }
+
   @Override
   public void updateHostRoleState(String hostname, long requestId,
                                   long stageId, String role, CommandReport report) {
@@ -437,10 +460,7 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
         status = HostRoleStatus.HOLDING_FAILED;
       }
       command.setStatus(status);
-      command.setStdOut(report.getStdOut().getBytes());
-      command.setStdError(report.getStdErr().getBytes());
-      command.setStructuredOut(report.getStructuredOut() == null ? null :
-        report.getStructuredOut().getBytes());
+      updateOutput(command, report);
       if (HostRoleStatus.getCompletedStates().contains(command.getStatus())) {
         command.setEndTime(now);
         if (requestDAO.getLastStageId(requestId).equals(stageId)) {
@@ -456,6 +476,37 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
     }
   }
 
+  /**
+   * Copies the output of a report to its task. When task output is chunked,
+   * the stdout and stderr of a task which is still in progress are appended
+   * to the {@link TaskOutputStore} instead, and are only written to the task
+   * by the final report. Reports for a task which has already completed, such
+   * as an aborted task, are written to the task as well.
+   *
+   * @param command  the task
+   * @param report  the report for the task
+   */
+  private void updateOutput(HostRoleCommandEntity command, CommandReport report) {
+    boolean completed = HostRoleStatus.getCompletedStates().contains(
+        HostRoleStatus.valueOf(report.getStatus()))
+        || HostRoleStatus.getCompletedStates().contains(command.getStatus());
+
+    if (taskOutputStore.isEnabled() && !completed) {
+      taskOutputStore.append(command.getTaskId(), OutputType.STDOUT, report.getStdOut());
+      taskOutputStore.append(command.getTaskId(), OutputType.STDERR, report.getStdErr());
+    } else {
+      command.setStdOut(report.getStdOut().getBytes());
+      command.setStdError(report.getStdErr().getBytes());
+
+      if (taskOutputStore.isEnabled()) {
+        taskOutputStore.remove(command.getTaskId());
+      }
+    }
+
+    command.setStructuredOut(report.getStructuredOut() == null ? null :
+      report.getStructuredOut().getBytes());
+  }
+
   @Override
   public void abortHostRole(String host, long requestId, long stageId, String role) {
     String reason = "Host Role in invalid state";
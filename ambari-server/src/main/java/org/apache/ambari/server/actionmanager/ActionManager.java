@@ -94,6 +94,7 @@ public class ActionManager {
       }
     }
     db.persistActions(request);
+    scheduler.invalidateStages();
     scheduler.awake();
   }
 
@@ -136,9 +137,70 @@ public class ActionManager {
       return;
     }
 
+    //persist the action response into the db.
+    List<CommandReport> reportsToProcess = getReportsToProcess(reports, commands);
+    db.updateHostRoleStates(reportsToProcess);
+    scheduler.onTaskReports(reportsToProcess);
+  }
+
+  /**
+   * Persists command reports which have already been filtered by
+   * {@link #getReportsToProcess(List, Collection)}. This should be called
+   * inside of the caller's transaction; once it has committed the reports
+   * must be handed to {@link #onTaskResponsesPersisted(Collection)}, or to
+   * {@link #onTaskResponsesRolledBack(Collection)} if it was rolled back.
+   *
+   * @param reports the reports to persist
+   */
+  public void persistTaskResponses(Collection<CommandReport> reports) {
+    if (reports == null || reports.isEmpty()) {
+      return;
+    }
+
+    db.updateHostRoleStates(reports);
+  }
+
+  /**
+   * Notifies the scheduler of command reports which were persisted by
+   * {@link #persistTaskResponses(Collection)}, possibly from several hosts at
+   * once.
+   *
+   * @param reports the committed reports
+   */
+  public void onTaskResponsesPersisted(Collection<CommandReport> reports) {
+    if (reports == null || reports.isEmpty()) {
+      return;
+    }
+
+    scheduler.onTaskReports(reports);
+  }
+
+  /**
+   * Discards what was cached while persisting command reports whose
+   * transaction was rolled back, so that it is reloaded from the db.
+   *
+   * @param reports the reports which were not persisted
+   */
+  public void onTaskResponsesRolledBack(Collection<CommandReport> reports) {
+    if (reports == null || reports.isEmpty()) {
+      return;
+    }
+
+    db.onHostRoleStatesRolledBack(reports);
+  }
+
+  /**
+   * Gets the reports for commands which are still active; reports for
+   * unknown or completed commands are ignored.
+   *
+   * @param reports the reports received from an agent
+   * @param commands the commands for the reports, in the same order
+   * @return the reports that should be persisted
+   */
+  public List<CommandReport> getReportsToProcess(List<CommandReport> reports,
+                                                 Collection<HostRoleCommand> commands) {
     List<CommandReport> reportsToProcess = new ArrayList<CommandReport>();
     Iterator<HostRoleCommand> commandIterator = commands.iterator();
-    //persist the action response into the db.
     for (CommandReport report : reports) {
       HostRoleCommand command = commandIterator.next();
       if (LOG.isDebugEnabled()) {
@@ -159,7 +221,7 @@ public class ActionManager {
       reportsToProcess.add(report);
     }
 
-    db.updateHostRoleStates(reportsToProcess);
+    return reportsToProcess;
   }
 
   /**
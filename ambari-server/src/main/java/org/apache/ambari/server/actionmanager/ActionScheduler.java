@@ -29,6 +29,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.ambari.server.AmbariException;
@@ -39,6 +40,7 @@ import org.apache.ambari.server.ServiceComponentNotFoundException;
 import org.apache.ambari.server.agent.ActionQueue;
 import org.apache.ambari.server.agent.AgentCommand.AgentCommandType;
 import org.apache.ambari.server.agent.CancelCommand;
+import org.apache.ambari.server.agent.CommandReport;
 import org.apache.ambari.server.agent.ExecutionCommand;
 import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.controller.HostsMap;
@@ -125,6 +127,42 @@ class ActionScheduler implements Runnable {
   private Cache<String, Map<String, String>> commandParamsStageCache;
   private Cache<String, Map<String, String>> hostParamsStageCache;
 
+  /**
+   * The maximum time, in milliseconds, that the in-memory model of the stages
+   * in progress is reused before it is reloaded from the database as a
+   * fallback. A value of {@code 0} reloads the stages on every wakeup.
+   */
+  private final long stageModelMaxAge;
+
+  /**
+   * The stages in progress as of the last load, or {@code null} if they have
+   * never been loaded. Only accessed by the scheduler thread.
+   */
+  private List<Stage> stagesInProgress = null;
+
+  /**
+   * The tasks of {@link #stagesInProgress} by task id.
+   */
+  private final Map<Long, HostRoleCommand> tasksInProgress = new HashMap<Long, HostRoleCommand>();
+
+  /**
+   * The time that {@link #stagesInProgress} was loaded.
+   */
+  private long stagesLoadedTime = 0;
+
+  /**
+   * {@code true} if the in-memory stages can no longer be trusted and must be
+   * reloaded on the next wakeup.
+   */
+  private volatile boolean stagesInvalidated = true;
+
+  /**
+   * Command reports received since the last wakeup which have not yet been
+   * applied to the in-memory stages.
+   */
+  private final ConcurrentLinkedQueue<CommandReport> pendingReports =
+      new ConcurrentLinkedQueue<CommandReport>();
+
   public ActionScheduler(long sleepTimeMilliSec, long actionTimeoutMilliSec,
                          ActionDBAccessor db, ActionQueue actionQueue, Clusters fsmObject,
                          int maxAttempts, HostsMap hostsMap,
@@ -150,6 +188,8 @@ class ActionScheduler implements Runnable {
       expireAfterAccess(5, TimeUnit.MINUTES).
       build();
     this.configuration = configuration;
+    stageModelMaxAge = null == configuration ? 0 :
+        configuration.getActionSchedulerStageModelMaxAge();
   }
 
   public void start() {
@@ -182,6 +222,37 @@ class ActionScheduler implements Runnable {
     }
   }
 
+  /**
+   * Forces the stages in progress to be reloaded from the database on the next
+   * wakeup. This should be called whenever tasks are created or their status
+   * is changed outside of {@link #onTaskReports(Collection)}.
+   */
+  public void invalidateStages() {
+    stagesInvalidated = true;
+  }
+
+  /**
+   * Notifies the scheduler of command reports which have just been persisted.
+   * The reports are applied to the in-memory stages on the next wakeup; a
+   * report which completes a task also wakes the scheduler up so that the
+   * next stage can start promptly.
+   *
+   * @param reports the persisted reports
+   */
+  public void onTaskReports(Collection<CommandReport> reports) {
+    boolean completed = false;
+    for (CommandReport report : reports) {
+      pendingReports.add(report);
+      if (HostRoleStatus.valueOf(report.getStatus()).isCompletedState()) {
+        completed = true;
+      }
+    }
+
+    if (completed) {
+      awake();
+    }
+  }
+
   @Override
   public void run() {
     while (shouldRun) {
@@ -199,9 +270,11 @@ class ActionScheduler implements Runnable {
       } catch (Exception ex) {
         LOG.warn("Exception received", ex);
         requestsInProgress.clear();
+        invalidateStages();
       } catch (Throwable t) {
         LOG.warn("ERROR", t);
         requestsInProgress.clear();
+        invalidateStages();
       }
     }
   }
@@ -213,20 +286,8 @@ class ActionScheduler implements Runnable {
       // The first thing to do is to abort requests that are cancelled
       processCancelledRequestsList();
 
-      // !!! getting the stages in progress could be a very expensive call due
-      // to the join being used; there's no need to make it if there are
-      // no commands in progress
-      if (db.getCommandsInProgressCount() == 0) {
-        // Nothing to do
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("There are no stages currently in progress.");
-        }
-
-        return;
-      }
-
       Set<Long> runningRequestIds = new HashSet<Long>();
-      List<Stage> stages = db.getStagesInProgress();
+      List<Stage> stages = getStagesInProgress();
       if (LOG.isDebugEnabled()) {
         LOG.debug("Scheduler wakes up");
         LOG.debug("Processing {} in progress stages ", stages.size());
@@ -302,6 +363,7 @@ class ActionScheduler implements Runnable {
         }
 
         if (failed) {
+          invalidateStages();
           LOG.warn("Operation completely failed, aborting request id:"
               + stage.getRequestId());
           cancelHostRoleCommands(stage.getOrderedHostRoleCommands(), FAILED_TASK_ABORT_REASONING);
@@ -354,6 +416,12 @@ class ActionScheduler implements Runnable {
           }
         }
 
+        // scheduled commands are persisted from the in-memory stage, aborted
+        // ones are not
+        if (!commandsToAbort.isEmpty()) {
+          invalidateStages();
+        }
+
         LOG.debug("==> Scheduling {} tasks...", commandsToUpdate.size());
         db.bulkHostRoleScheduled(stage, commandsToUpdate);
 
@@ -400,6 +468,145 @@ class ActionScheduler implements Runnable {
     }
   }
 
+  /**
+   * Gets the stages in progress. The stages are kept in memory between
+   * wakeups and the command reports received since the last wakeup are
+   * applied to them, dropping the stages which are no longer in progress. The
+   * stages are reloaded from the database when they have been invalidated,
+   * when a report can't be applied, when they contain tasks whose status is
+   * changed without reports, or when they are older than the configured
+   * maximum age.
+   *
+   * @return the stages in progress (never {@code null}).
+   */
+  private List<Stage> getStagesInProgress() {
+    long now = System.currentTimeMillis();
+    boolean reload = stagesInvalidated || null == stagesInProgress
+        || now - stagesLoadedTime >= stageModelMaxAge
+        || !applyPendingReports(now);
+
+    if (!reload) {
+      removeCompletedStages();
+      if (!hasUnreportedTasks()) {
+        LOG.debug("Reusing {} in-memory stages in progress", stagesInProgress.size());
+        return stagesInProgress;
+      }
+    }
+
+    // reset before loading so that any invalidation or report which arrives
+    // during the load is honored on the next wakeup
+    stagesInvalidated = false;
+    pendingReports.clear();
+    tasksInProgress.clear();
+
+    // !!! getting the stages in progress could be a very expensive call due
+    // to the join being used; there's no need to make it if there are
+    // no commands in progress
+    if (db.getCommandsInProgressCount() == 0) {
+      // Nothing to do
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("There are no stages currently in progress.");
+      }
+
+      stagesInProgress = Collections.emptyList();
+    } else {
+      stagesInProgress = new ArrayList<Stage>(db.getStagesInProgress());
+      for (Stage stage : stagesInProgress) {
+        for (Map<String, HostRoleCommand> roleCommands : stage.getHostRoleCommands().values()) {
+          for (HostRoleCommand command : roleCommands.values()) {
+            tasksInProgress.put(command.getTaskId(), command);
+          }
+        }
+      }
+    }
+
+    stagesLoadedTime = now;
+    return stagesInProgress;
+  }
+
+  /**
+   * Applies the command reports received since the last wakeup to the
+   * in-memory stages, mirroring how
+   * {@link ActionDBAccessor#updateHostRoleStates(Collection)} persisted them.
+   *
+   * @param now the current time
+   * @return {@code false} if a report could not be applied and the stages
+   *         must be reloaded.
+   */
+  private boolean applyPendingReports(long now) {
+    CommandReport report;
+    while (null != (report = pendingReports.poll())) {
+      HostRoleCommand command = tasksInProgress.get(report.getTaskId());
+      if (null == command) {
+        return false;
+      }
+
+      // reports received after a task was aborted don't change its status
+      if (command.getStatus() != HostRoleStatus.ABORTED) {
+        HostRoleStatus status = HostRoleStatus.valueOf(report.getStatus());
+        if (status == HostRoleStatus.FAILED && command.isRetryAllowed()) {
+          status = HostRoleStatus.HOLDING_FAILED;
+        }
+        command.setStatus(status);
+      }
+      command.setExitCode(report.getExitCode());
+      if (command.getStatus().isCompletedState()) {
+        command.setEndTime(now);
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Drops the in-memory stages which no longer have any tasks in progress, as
+   * {@link ActionDBAccessor#getStagesInProgress()} would.
+   */
+  private void removeCompletedStages() {
+    for (Iterator<Stage> iterator = stagesInProgress.iterator(); iterator.hasNext(); ) {
+      Stage stage = iterator.next();
+      List<HostRoleCommand> commands = stage.getOrderedHostRoleCommands();
+
+      boolean inProgress = false;
+      for (HostRoleCommand command : commands) {
+        if (HostRoleStatus.IN_PROGRESS_STATUSES.contains(command.getStatus())) {
+          inProgress = true;
+          break;
+        }
+      }
+
+      if (!inProgress) {
+        iterator.remove();
+        for (HostRoleCommand command : commands) {
+          tasksInProgress.remove(command.getTaskId());
+        }
+      }
+    }
+  }
+
+  /**
+   * Determines whether any of the in-memory tasks may have their status
+   * changed without a command report reaching {@link #onTaskReports}; server
+   * actions update their own status and held tasks are released by users.
+   * Stages with such tasks are reloaded on every wakeup.
+   *
+   * @return {@code true} if the stages must be reloaded.
+   */
+  private boolean hasUnreportedTasks() {
+    for (HostRoleCommand command : tasksInProgress.values()) {
+      HostRoleStatus status = command.getStatus();
+      if (status == HostRoleStatus.HOLDING || status == HostRoleStatus.HOLDING_FAILED
+          || status == HostRoleStatus.HOLDING_TIMEDOUT) {
+        return true;
+      }
+      if (command.getRole() == Role.AMBARI_SERVER_ACTION
+          && (status == HostRoleStatus.QUEUED || status == HostRoleStatus.IN_PROGRESS)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Returns filtered list of stages following the rule:
    * 1) remove stages that has the same host. Leave only first stage, the rest that have same host of any operation will be filtered
@@ -579,6 +786,7 @@ class ActionScheduler implements Runnable {
           // Abort the command itself
           // We don't need to send CANCEL_COMMANDs in this case
           db.abortHostRole(host, s.getRequestId(), s.getStageId(), c.getRole(), message);
+          invalidateStages();
           if (c.getRoleCommand().equals(RoleCommand.ACTIONEXECUTE)) {
             processActionDeath(cluster.getClusterName(), c.getHostname(), roleStr);
           }
@@ -589,6 +797,7 @@ class ActionScheduler implements Runnable {
           if (s.getAttemptCount(host, roleStr) >= maxAttempts) {
             LOG.warn("Host:" + host + ", role:" + roleStr + ", actionId:" + s.getActionId() + " expired");
             db.timeoutHostRole(host, s.getRequestId(), s.getStageId(), c.getRole());
+            invalidateStages();
             //Reinitialize status
             status = s.getHostRoleStatus(host, roleStr);
 
@@ -854,6 +1063,7 @@ class ActionScheduler implements Runnable {
     synchronized (requestsToBeCancelled) {
       // Now, cancel stages completely
       for (Long requestId : requestsToBeCancelled) {
+        invalidateStages();
         List<HostRoleCommand> tasksToDequeue = db.getRequestTasks(requestId);
         String reason = requestCancelReasons.get(requestId);
         cancelHostRoleCommands(tasksToDequeue, reason);
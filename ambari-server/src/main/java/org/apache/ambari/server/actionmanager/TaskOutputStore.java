@@ -0,0 +1,530 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.actionmanager;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.orm.dao.TaskOutputChunkDAO;
+import org.apache.ambari.server.orm.entities.HostRoleCommandEntity;
+import org.apache.ambari.server.orm.entities.TaskOutputChunkEntity;
+import org.apache.ambari.server.orm.entities.TaskOutputChunkEntity.OutputType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * The {@link TaskOutputStore} keeps the stdout and stderr of tasks which are
+ * in progress as compressed, append-only chunks. Agents resend output which
+ * the server already has on every report; only the bytes which follow what
+ * was previously stored are written. Once a task completes its full output
+ * is written to the task itself and the chunks are removed.
+ * <p/>
+ * Output is stored and addressed as UTF-8 bytes.
+ */
+@Singleton
+public class TaskOutputStore {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TaskOutputStore.class);
+
+  /**
+   * The number of trailing bytes of each output which are kept in memory to
+   * find where a new report overlaps what was already stored.
+   */
+  static final int TAIL_SIZE = 8192;
+
+  /**
+   * The number of bytes a report which only carries the most recent part of
+   * an output must share with the stored output. Shorter overlaps are too
+   * likely to be a coincidence, so such a report is stored in full.
+   */
+  static final int MIN_OVERLAP = 64;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final TaskOutputChunkDAO chunkDAO;
+  private final boolean enabled;
+  private final int chunkSize;
+
+  /**
+   * The append position of each output of the tasks being written, by task.
+   */
+  private final ConcurrentMap<Long, Map<OutputType, OutputState>> states =
+      new ConcurrentHashMap<Long, Map<OutputType, OutputState>>();
+
+  @Inject
+  public TaskOutputStore(Configuration configuration, TaskOutputChunkDAO chunkDAO) {
+    this.chunkDAO = chunkDAO;
+    enabled = configuration.isTaskOutputChunked();
+    chunkSize = Math.max(1, configuration.getTaskOutputChunkSize());
+  }
+
+  /**
+   * @return {@code true} if the output of in progress tasks is chunked
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Stores the part of the reported output which has not been stored yet.
+   * Reports may either carry the full output so far or a window of its most
+   * recent lines; in both cases only the bytes following the overlap with the
+   * stored output are appended.
+   *
+   * @param taskId  the task ID
+   * @param outputType  the output stream
+   * @param output  the output from the latest report
+   */
+  public void append(long taskId, OutputType outputType, String output) {
+    if (null == output || output.isEmpty()) {
+      return;
+    }
+
+    byte[] reported = output.getBytes(UTF_8);
+    OutputState state = getState(taskId, outputType);
+    synchronized (state) {
+      int start = state.getNewDataStart(reported);
+      for (int offset = start; offset < reported.length; offset += chunkSize) {
+        int length = Math.min(chunkSize, reported.length - offset);
+
+        TaskOutputChunkEntity chunk = new TaskOutputChunkEntity();
+        chunk.setTaskId(taskId);
+        chunk.setOutputType(outputType);
+        chunk.setChunkIndex(state.nextIndex);
+        chunk.setStartOffset(state.length);
+        chunk.setChunkLength(length);
+        chunk.setChunkData(compress(reported, offset, length));
+        chunkDAO.create(chunk);
+
+        state.append(reported, offset, length);
+      }
+    }
+  }
+
+  /**
+   * Forgets the append position of the outputs of tasks so that it is loaded
+   * from the stored chunks the next time they are written. This is invoked
+   * when the transaction which appended to them was rolled back, since the
+   * append position already includes the chunks which were not stored.
+   *
+   * @param taskIds  the task IDs
+   */
+  public void invalidate(Collection<Long> taskIds) {
+    for (Long taskId : taskIds) {
+      states.remove(taskId);
+    }
+  }
+
+  /**
+   * Removes the chunks of a task. This is invoked when the task completes
+   * and its full output has been written to the task.
+   *
+   * @param taskId  the task ID
+   */
+  public void remove(long taskId) {
+    states.remove(taskId);
+    chunkDAO.removeByTask(taskId);
+  }
+
+  /**
+   * Writes the chunked output of tasks to the tasks and removes the chunks.
+   * This is invoked when tasks are aborted or time out, in which case no
+   * final report carries their full output.
+   *
+   * @param commands  the tasks
+   */
+  public void flush(Collection<HostRoleCommandEntity> commands) {
+    Map<Long, HostRoleCommandEntity> commandsById = new HashMap<Long, HostRoleCommandEntity>();
+    for (HostRoleCommandEntity command : commands) {
+      commandsById.put(command.getTaskId(), command);
+      states.remove(command.getTaskId());
+    }
+
+    Map<Long, Map<OutputType, Long>> lengths = getOutputLengths(commandsById.keySet());
+    for (Map.Entry<Long, Map<OutputType, Long>> entry : lengths.entrySet()) {
+      long taskId = entry.getKey();
+      HostRoleCommandEntity command = commandsById.get(taskId);
+      Long stdoutLength = entry.getValue().get(OutputType.STDOUT);
+      if (null != stdoutLength) {
+        command.setStdOut(read(taskId, OutputType.STDOUT, null, stdoutLength, null, null).getBytes());
+      }
+      Long stderrLength = entry.getValue().get(OutputType.STDERR);
+      if (null != stderrLength) {
+        command.setStdError(read(taskId, OutputType.STDERR, null, stderrLength, null, null).getBytes());
+      }
+
+      remove(taskId);
+    }
+  }
+
+  /**
+   * Removes the chunks of all tasks which are no longer in progress, such as
+   * those left behind when the server stopped before a task completed.
+   */
+  public void sweep() {
+    int removed = chunkDAO.removeByTaskNotInProgress();
+    if (removed > 0) {
+      LOG.info("Removed {} output chunks of tasks which are no longer in progress", removed);
+    }
+  }
+
+  /**
+   * Gets the number of bytes stored for each output of the given tasks with
+   * a single query, so that a listing of tasks can be read without looking up
+   * every task.
+   *
+   * @param taskIds  the task IDs
+   * @return the stored length of each output by task; tasks without chunked
+   *         output are not included
+   */
+  public Map<Long, Map<OutputType, Long>> getOutputLengths(Collection<Long> taskIds) {
+    Map<Long, Map<OutputType, Long>> lengths = new HashMap<Long, Map<OutputType, Long>>();
+    if (!enabled || taskIds.isEmpty()) {
+      return lengths;
+    }
+
+    for (Object[] row : chunkDAO.findLengthsByTasks(taskIds)) {
+      Long taskId = ((Number) row[0]).longValue();
+      Map<OutputType, Long> taskLengths = lengths.get(taskId);
+      if (null == taskLengths) {
+        taskLengths = new EnumMap<OutputType, Long>(OutputType.class);
+        lengths.put(taskId, taskLengths);
+      }
+      taskLengths.put((OutputType) row[1], ((Number) row[2]).longValue());
+    }
+
+    return lengths;
+  }
+
+  /**
+   * Reads a range of the output of a task. If the task has chunked output,
+   * the range is read from the chunks; otherwise it is taken from the given
+   * full output.
+   *
+   * @param taskId  the task ID
+   * @param outputType  the output stream
+   * @param fullOutput  the output stored on the task, may be {@code null}
+   * @param offset  the byte offset to start at; a negative value starts that
+   *                many bytes before the end of the output; {@code null} for
+   *                the start of the output
+   * @param length  the max number of bytes to read, {@code null} for all
+   * @return the output in the range
+   */
+  public String read(long taskId, OutputType outputType, String fullOutput,
+                     Long offset, Integer length) {
+    TaskOutputChunkEntity last = enabled ? chunkDAO.findLastByTask(taskId, outputType) : null;
+    return read(taskId, outputType, fullOutput,
+        null == last ? null : last.getEndOffset(), offset, length);
+  }
+
+  /**
+   * Reads a range of the output of a task whose stored length has already
+   * been looked up with {@link #getOutputLengths(Collection)}.
+   *
+   * @param taskId  the task ID
+   * @param outputType  the output stream
+   * @param fullOutput  the output stored on the task, may be {@code null}
+   * @param storedLength  the length of the chunked output, {@code null} if the
+   *                      output is not chunked
+   * @param offset  the byte offset to start at, negative to count from the end
+   * @param length  the max number of bytes to read, {@code null} for all
+   * @return the output in the range
+   */
+  public String read(long taskId, OutputType outputType, String fullOutput,
+                     Long storedLength, Long offset, Integer length) {
+    if (null == storedLength) {
+      return slice(fullOutput, offset, length);
+    }
+
+    long[] range = getRange(storedLength, offset, length);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (TaskOutputChunkEntity chunk : chunkDAO.findByTaskFromOffset(taskId, outputType, range[0])) {
+      if (chunk.getStartOffset() >= range[1]) {
+        break;
+      }
+
+      byte[] data = decompress(chunk);
+      int from = (int) Math.max(0, range[0] - chunk.getStartOffset());
+      int to = (int) Math.min(data.length, range[1] - chunk.getStartOffset());
+      if (from < to) {
+        out.write(data, from, to - from);
+      }
+    }
+
+    byte[] bytes = out.toByteArray();
+    return decode(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Takes a range of bytes from an output which is held in full.
+   *
+   * @param output  the output, may be {@code null}
+   * @param offset  the byte offset to start at, negative to count from the end
+   * @param length  the max number of bytes, {@code null} for all
+   * @return the output in the range
+   */
+  public static String slice(String output, Long offset, Integer length) {
+    if (null == output || (null == offset && null == length)) {
+      return output;
+    }
+
+    byte[] bytes = output.getBytes(UTF_8);
+    long[] range = getRange(bytes.length, offset, length);
+    return decode(bytes, (int) range[0], (int) range[1]);
+  }
+
+  /**
+   * Decodes a range of UTF-8 bytes which may start or end part way through a
+   * character. The partial characters at either end of the range are dropped
+   * rather than decoded as replacement characters.
+   *
+   * @param bytes  the bytes
+   * @param from  the start of the range (inclusive)
+   * @param to  the end of the range (exclusive)
+   * @return the whole characters in the range
+   */
+  static String decode(byte[] bytes, int from, int to) {
+    // skip the continuation bytes of a character which started earlier
+    while (from < to && isContinuation(bytes[from])) {
+      from++;
+    }
+
+    // drop a trailing character whose bytes extend past the end
+    int lead = to - 1;
+    while (lead > from && isContinuation(bytes[lead])) {
+      lead--;
+    }
+    if (lead >= from && lead + getSequenceLength(bytes[lead]) > to) {
+      to = lead;
+    }
+
+    return new String(bytes, from, to - from, UTF_8);
+  }
+
+  private static boolean isContinuation(byte b) {
+    return (b & 0xC0) == 0x80;
+  }
+
+  private static int getSequenceLength(byte lead) {
+    if ((lead & 0xE0) == 0xC0) {
+      return 2;
+    }
+    if ((lead & 0xF0) == 0xE0) {
+      return 3;
+    }
+    if ((lead & 0xF8) == 0xF0) {
+      return 4;
+    }
+    return 1;
+  }
+
+  /**
+   * Resolves the requested range against the length of an output.
+   *
+   * @return the start (inclusive) and end (exclusive) offsets
+   */
+  static long[] getRange(long total, Long offset, Integer length) {
+    long start = 0;
+    if (null != offset) {
+      start = offset < 0 ? Math.max(0, total + offset) : Math.min(offset, total);
+    }
+
+    long end = total;
+    if (null != length && length >= 0) {
+      end = Math.min(total, start + length);
+    }
+
+    return new long[] { start, end };
+  }
+
+  /**
+   * Gets the append position of an output, loading it from the last stored
+   * chunk if the output has not been written since the server started.
+   */
+  private OutputState getState(long taskId, OutputType outputType) {
+    Map<OutputType, OutputState> taskStates = states.get(taskId);
+    if (null == taskStates) {
+      taskStates = new EnumMap<OutputType, OutputState>(OutputType.class);
+      Map<OutputType, OutputState> existing = states.putIfAbsent(taskId, taskStates);
+      if (null != existing) {
+        taskStates = existing;
+      }
+    }
+
+    synchronized (taskStates) {
+      OutputState state = taskStates.get(outputType);
+      if (null == state) {
+        state = new OutputState();
+        TaskOutputChunkEntity last = chunkDAO.findLastByTask(taskId, outputType);
+        if (null != last) {
+          byte[] data = decompress(last);
+          state.nextIndex = last.getChunkIndex();
+          state.length = last.getStartOffset();
+          state.append(data, 0, data.length);
+        }
+
+        taskStates.put(outputType, state);
+      }
+
+      return state;
+    }
+  }
+
+  private static byte[] compress(byte[] data, int offset, int length) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(data, offset, length);
+      deflater.finish();
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, length / 4));
+      byte[] buffer = new byte[4096];
+      while (!deflater.finished()) {
+        int count = deflater.deflate(buffer);
+        out.write(buffer, 0, count);
+      }
+      return out.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] decompress(TaskOutputChunkEntity chunk) {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(chunk.getChunkData());
+      byte[] data = new byte[chunk.getChunkLength()];
+      int count = 0;
+      while (count < data.length && !inflater.finished()) {
+        int inflated = inflater.inflate(data, count, data.length - count);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        count += inflated;
+      }
+      return data;
+    } catch (DataFormatException e) {
+      LOG.error("Unable to decompress chunk {} of the {} of task {}",
+          chunk.getChunkIndex(), chunk.getOutputType(), chunk.getTaskId(), e);
+      return new byte[chunk.getChunkLength()];
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * The append position and most recent bytes of a single output.
+   */
+  static class OutputState {
+    long length = 0;
+    int nextIndex = 0;
+    byte[] tail = new byte[0];
+
+    /**
+     * Finds the first byte of a report which has not been stored yet.
+     *
+     * @param reported  the reported output
+     * @return the offset into the report of the new bytes
+     */
+    int getNewDataStart(byte[] reported) {
+      // the report carries the full output so far
+      if (reported.length >= length
+          && regionMatches(reported, (int) (length - tail.length), tail, 0, tail.length)) {
+        return (int) length;
+      }
+
+      // the report carries the most recent part of the output
+      int overlap = getOverlap(reported);
+      return overlap >= MIN_OVERLAP ? overlap : 0;
+    }
+
+    /**
+     * Finds the longest end of the tail which the report starts with, in a
+     * single pass over the tail using the prefix function of the report.
+     *
+     * @param reported  the reported output
+     * @return the number of bytes the tail and the report overlap by
+     */
+    int getOverlap(byte[] reported) {
+      int count = Math.min(tail.length, reported.length);
+      if (count == 0) {
+        return 0;
+      }
+
+      // prefix[i] is the length of the longest proper prefix of the first
+      // i + 1 bytes of the report which is also a suffix of them
+      int[] prefix = new int[count];
+      for (int i = 1, k = 0; i < count; i++) {
+        while (k > 0 && reported[i] != reported[k]) {
+          k = prefix[k - 1];
+        }
+        if (reported[i] == reported[k]) {
+          k++;
+        }
+        prefix[i] = k;
+      }
+
+      int matched = 0;
+      for (int i = tail.length - count; i < tail.length; i++) {
+        while (matched > 0 && (matched == count || tail[i] != reported[matched])) {
+          matched = prefix[matched - 1];
+        }
+        if (tail[i] == reported[matched]) {
+          matched++;
+        }
+      }
+
+      return matched;
+    }
+
+    void append(byte[] data, int offset, int count) {
+      length += count;
+      nextIndex++;
+
+      int keep = Math.min(TAIL_SIZE, tail.length + count);
+      byte[] newTail = new byte[keep];
+      int fromData = Math.min(count, keep);
+      int fromTail = keep - fromData;
+      System.arraycopy(tail, tail.length - fromTail, newTail, 0, fromTail);
+      System.arraycopy(data, offset + count - fromData, newTail, fromTail, fromData);
+      tail = newTail;
+    }
+
+    private static boolean regionMatches(byte[] a, int aOffset, byte[] b,
+                                         int bOffset, int count) {
+      for (int i = 0; i < count; i++) {
+        if (a[aOffset + i] != b[bOffset + i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
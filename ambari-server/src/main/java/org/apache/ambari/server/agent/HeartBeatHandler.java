@@ -41,6 +41,9 @@ import org.apache.ambari.server.ServiceNotFoundException;
 import org.apache.ambari.server.actionmanager.ActionManager;
 import org.apache.ambari.server.actionmanager.HostRoleCommand;
 import org.apache.ambari.server.actionmanager.HostRoleStatus;
+import org.apache.ambari.server.agent.HeartbeatProcessor.QueuedHeartbeat;
+import org.apache.ambari.server.agent.HeartbeatProcessor.Stage;
+import org.apache.ambari.server.agent.HeartbeatProcessor.StageMetrics;
 import org.apache.ambari.server.api.services.AmbariMetaInfo;
 import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.controller.MaintenanceStateHelper;
@@ -104,6 +107,7 @@ import com.google.gson.annotations.SerializedName;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import com.google.inject.Singleton;
+import com.google.inject.persist.Transactional;
 
 
 /**
@@ -123,6 +127,12 @@ public class HeartBeatHandler {
   private final ActionManager actionManager;
   private HeartbeatMonitor heartbeatMonitor;
 
+  /**
+   * Applies heartbeat reports in the background when asynchronous heartbeat
+   * processing is enabled; {@code null} otherwise.
+   */
+  private HeartbeatProcessor heartbeatProcessor;
+
   @Inject
   private Injector injector;
 
@@ -180,10 +190,30 @@ public class HeartBeatHandler {
     actionManager = am;
     heartbeatMonitor = new HeartbeatMonitor(fsm, aq, am, 60000, injector);
     injector.injectMembers(this);
+
+    if (null != config && config.isAgentHeartbeatAsync()) {
+      heartbeatProcessor = new HeartbeatProcessor(this,
+          config.getAgentHeartbeatAsyncQueueSize(),
+          config.getAgentHeartbeatAsyncBatchSize());
+    }
   }
 
   public void start() {
     heartbeatMonitor.start();
+
+    if (null != heartbeatProcessor) {
+      heartbeatProcessor.start();
+    }
+  }
+
+  /**
+   * Stops the background processing of heartbeat reports once the queued
+   * heartbeats have been applied.
+   */
+  public void stop() {
+    if (null != heartbeatProcessor) {
+      heartbeatProcessor.shutdown();
+    }
   }
 
   void setHeartbeatMonitor(HeartbeatMonitor heartbeatMonitor) {
@@ -192,6 +222,7 @@ public class HeartBeatHandler {
 
   public HeartBeatResponse handleHeartBeat(HeartBeat heartbeat)
       throws AmbariException {
+    long startNanos = System.nanoTime();
     long now = System.currentTimeMillis();
     if(heartbeat.getAgentEnv() != null && heartbeat.getAgentEnv().getHostHealth() != null) {
       heartbeat.getAgentEnv().getHostHealth().setServerTimeStampAtReporting(now);
@@ -259,18 +290,22 @@ public class HeartBeatHandler {
       return createRegisterCommand();
     }
 
-    // Examine heartbeat for command reports
-    processCommandReports(heartbeat, hostname, clusterFsm, now);
+    // Hand the reports off to the background processor if it is running;
+    // otherwise apply them on this thread
+    if (null == heartbeatProcessor || !heartbeatProcessor.offer(heartbeat, now)) {
+      // Examine heartbeat for command reports
+      processCommandReports(heartbeat, hostname, clusterFsm, now);
 
-    // Examine heartbeart for component live status reports
-    processStatusReports(heartbeat, hostname, clusterFsm);
+      // Examine heartbeart for component live status reports
+      processStatusReports(heartbeat, hostname, clusterFsm);
 
-    // Calculate host status
-    // NOTE: This step must be after processing command/status reports
-    processHostStatus(heartbeat, hostname);
+      // Calculate host status
+      // NOTE: This step must be after processing command/status reports
+      processHostStatus(heartbeat, hostname);
 
-    // Example heartbeat for alerts from the host or its components
-    processAlerts(heartbeat, hostname);
+      // Example heartbeat for alerts from the host or its components
+      processAlerts(heartbeat, hostname);
+    }
 
     // Send commands if node is active
     if (hostObject.getState().equals(HostState.HEALTHY)) {
@@ -278,9 +313,85 @@ public class HeartBeatHandler {
       annotateResponse(hostname, response);
     }
 
+    if (null != heartbeatProcessor) {
+      heartbeatProcessor.getMetrics().record(Stage.ACKNOWLEDGE,
+          System.nanoTime() - startNanos);
+    }
+
     return response;
   }
 
+  /**
+   * Applies the reports of a batch of queued heartbeats, each inside of its
+   * own transaction together with its task status updates. The scheduler is
+   * only told about the task reports of heartbeats which committed. A
+   * heartbeat which cannot be processed is rolled back, logged and skipped so
+   * that it does not affect the rest of the batch.
+   *
+   * @param batch
+   *          the heartbeats to process, in the order they were received.
+   * @param metrics
+   *          the metrics to record stage latencies in.
+   */
+  void processHeartbeatBatch(List<QueuedHeartbeat> batch, StageMetrics metrics) {
+    List<CommandReport> committedReports = new ArrayList<CommandReport>();
+
+    for (QueuedHeartbeat queued : batch) {
+      try {
+        committedReports.addAll(processQueuedHeartbeat(queued, metrics));
+      } catch (Exception e) {
+        LOG.warn("Unable to process heartbeat from host "
+            + queued.heartbeat.getHostname(), e);
+        actionManager.onTaskResponsesRolledBack(queued.heartbeat.getReports());
+      }
+    }
+
+    actionManager.onTaskResponsesPersisted(committedReports);
+  }
+
+  /**
+   * Applies the reports of a queued heartbeat, including its task status
+   * updates, inside of a transaction.
+   *
+   * @param queued
+   *          the heartbeat to process.
+   * @param metrics
+   *          the metrics to record stage latencies in.
+   * @return the command reports of the heartbeat which were persisted.
+   */
+  @Transactional(rollbackOn = Exception.class)
+  List<CommandReport> processQueuedHeartbeat(QueuedHeartbeat queued,
+      StageMetrics metrics) throws AmbariException {
+    HeartBeat heartbeat = queued.heartbeat;
+    String hostname = heartbeat.getHostname();
+    List<CommandReport> reportsToProcess = new ArrayList<CommandReport>();
+
+    long start = System.nanoTime();
+    metrics.record(Stage.QUEUE_WAIT, start - queued.queuedNanos);
+
+    processCommandReports(heartbeat, hostname, clusterFsm,
+        queued.receivedTime, reportsToProcess);
+    actionManager.persistTaskResponses(reportsToProcess);
+    long end = System.nanoTime();
+    metrics.record(Stage.COMMAND_REPORTS, end - start);
+
+    start = end;
+    processStatusReports(heartbeat, hostname, clusterFsm);
+    end = System.nanoTime();
+    metrics.record(Stage.STATUS_REPORTS, end - start);
+
+    start = end;
+    processHostStatus(heartbeat, hostname);
+    end = System.nanoTime();
+    metrics.record(Stage.HOST_STATUS, end - start);
+
+    start = end;
+    processAlerts(heartbeat, hostname);
+    metrics.record(Stage.ALERTS, System.nanoTime() - start);
+
+    return reportsToProcess;
+  }
+
   /**
    * Extracts all of the {@link Alert}s from the heartbeat and fires
    * {@link AlertEvent}s for each one. If there is a problem looking up the
@@ -419,6 +530,20 @@ public class HeartBeatHandler {
   protected void processCommandReports(
       HeartBeat heartbeat, String hostname, Clusters clusterFsm, long now)
       throws AmbariException {
+    processCommandReports(heartbeat, hostname, clusterFsm, now, null);
+  }
+
+  /**
+   * Updates the state machines from the command reports of a heartbeat.
+   *
+   * @param pendingReports
+   *          if not {@code null}, the reports which need to be persisted are
+   *          added to this list instead of being persisted immediately.
+   */
+  private void processCommandReports(
+      HeartBeat heartbeat, String hostname, Clusters clusterFsm, long now,
+      List<CommandReport> pendingReports)
+      throws AmbariException {
     List<CommandReport> reports = heartbeat.getReports();
 
     // Cache HostRoleCommand entities because we will need them few times
@@ -611,7 +736,11 @@ public class HeartBeatHandler {
     }
 
     //Update state machines from reports
-    actionManager.processTaskResponse(hostname, reports, commands);
+    if (null == pendingReports) {
+      actionManager.processTaskResponse(hostname, reports, commands);
+    } else {
+      pendingReports.addAll(actionManager.getReportsToProcess(reports, commands));
+    }
   }
 
   protected void processStatusReports(HeartBeat heartbeat,
@@ -0,0 +1,277 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.agent;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Processes the reports carried by agent heartbeats off of the agent request
+ * threads. Heartbeats are queued by {@link HeartBeatHandler} once the response
+ * has been built and are applied in batches, one transaction per heartbeat, by
+ * a single background thread. Since every heartbeat goes through the one
+ * queue, the reports of a host are applied in the order they were received.
+ * If the queue is full the caller waits for room, which throttles the agents.
+ */
+public class HeartbeatProcessor implements Runnable {
+  private static Log LOG = LogFactory.getLog(HeartbeatProcessor.class);
+
+  /**
+   * How often, in batches, the stage latencies are logged.
+   */
+  private static final int METRICS_LOG_INTERVAL = 100;
+
+  /**
+   * How long, in milliseconds, {@link #shutdown()} waits for the queued
+   * heartbeats to be processed.
+   */
+  private static final long SHUTDOWN_TIMEOUT = 30000L;
+
+  private final HeartBeatHandler heartBeatHandler;
+  private final BlockingQueue<QueuedHeartbeat> queue;
+  private final int batchSize;
+  private final StageMetrics metrics = new StageMetrics();
+  private volatile boolean shouldRun = true;
+  private Thread processorThread = null;
+  private long batchCount = 0;
+
+  public HeartbeatProcessor(HeartBeatHandler heartBeatHandler, int queueSize,
+                            int batchSize) {
+    this.heartBeatHandler = heartBeatHandler;
+    this.batchSize = Math.max(1, batchSize);
+    queue = new ArrayBlockingQueue<QueuedHeartbeat>(Math.max(1, queueSize));
+  }
+
+  public void start() {
+    processorThread = new Thread(this, "ambari-heartbeat-processor");
+    processorThread.setDaemon(true);
+    processorThread.start();
+  }
+
+  /**
+   * Stops the processor once the heartbeats which are already queued have been
+   * processed, waiting a bounded amount of time for them.
+   */
+  public void shutdown() {
+    shouldRun = false;
+    if (null != processorThread) {
+      try {
+        processorThread.join(SHUTDOWN_TIMEOUT);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (processorThread.isAlive()) {
+        LOG.warn("Timed out waiting for queued heartbeats to be processed, "
+            + queue.size() + " heartbeats are dropped");
+        processorThread.interrupt();
+      }
+    }
+  }
+
+  /**
+   * Queues the heartbeat for processing, waiting for room if the queue is
+   * full. Processing a heartbeat inline instead could apply its reports before
+   * the reports of an earlier heartbeat from the same host which is still
+   * queued.
+   *
+   * @param heartbeat  the heartbeat whose reports should be applied
+   * @param receivedTime  the time the heartbeat was received
+   * @return {@code true} if the heartbeat was queued, {@code false} if the
+   *         processor is stopped and the caller must process it inline
+   */
+  public boolean offer(HeartBeat heartbeat, long receivedTime) {
+    QueuedHeartbeat queued = new QueuedHeartbeat(heartbeat, receivedTime);
+    try {
+      while (shouldRun) {
+        if (queue.offer(queued, 1, TimeUnit.SECONDS)) {
+          return true;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return false;
+  }
+
+  /**
+   * @return the number of heartbeats waiting to be processed
+   */
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  /**
+   * @return the per-stage latency metrics for heartbeat handling
+   */
+  public StageMetrics getMetrics() {
+    return metrics;
+  }
+
+  @Override
+  public void run() {
+    List<QueuedHeartbeat> batch = new ArrayList<QueuedHeartbeat>(batchSize);
+    while (shouldRun) {
+      try {
+        QueuedHeartbeat first = queue.poll(1, TimeUnit.SECONDS);
+        if (null == first) {
+          continue;
+        }
+
+        batch.add(first);
+        queue.drainTo(batch, batchSize - 1);
+
+        long start = System.nanoTime();
+        heartBeatHandler.processHeartbeatBatch(batch, metrics);
+        metrics.record(Stage.BATCH, System.nanoTime() - start);
+
+        if (++batchCount % METRICS_LOG_INTERVAL == 0 && LOG.isInfoEnabled()) {
+          LOG.info("Heartbeat processing latencies: " + metrics
+              + ", queued=" + queue.size());
+        }
+      } catch (InterruptedException ex) {
+        LOG.warn("Heartbeat processor thread is interrupted going to stop", ex);
+        shouldRun = false;
+        return;
+      } catch (Exception ex) {
+        LOG.warn("Unable to process heartbeat batch", ex);
+      } catch (Throwable t) {
+        LOG.warn("ERROR", t);
+      } finally {
+        batch.clear();
+      }
+    }
+
+    // apply the heartbeats which were queued before the processor was stopped
+    while (queue.drainTo(batch, batchSize) > 0) {
+      try {
+        heartBeatHandler.processHeartbeatBatch(batch, metrics);
+      } catch (Exception ex) {
+        LOG.warn("Unable to process heartbeat batch", ex);
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  /**
+   * A heartbeat waiting to be processed along with the time it was received.
+   */
+  static class QueuedHeartbeat {
+    final HeartBeat heartbeat;
+    final long receivedTime;
+    final long queuedNanos = System.nanoTime();
+
+    QueuedHeartbeat(HeartBeat heartbeat, long receivedTime) {
+      this.heartbeat = heartbeat;
+      this.receivedTime = receivedTime;
+    }
+  }
+
+  /**
+   * The stages of heartbeat handling which are timed.
+   */
+  public enum Stage {
+    /**
+     * Validating the response id, draining the action queue and building the
+     * response on the agent thread.
+     */
+    ACKNOWLEDGE,
+    /**
+     * Time spent waiting in the queue.
+     */
+    QUEUE_WAIT,
+    COMMAND_REPORTS,
+    STATUS_REPORTS,
+    HOST_STATUS,
+    ALERTS,
+    /**
+     * A full batch, including its transaction commit.
+     */
+    BATCH
+  }
+
+  /**
+   * Counts and cumulative latencies for each {@link Stage}.
+   */
+  public static class StageMetrics {
+    private final Map<Stage, AtomicLong> counts = new EnumMap<Stage, AtomicLong>(Stage.class);
+    private final Map<Stage, AtomicLong> nanos = new EnumMap<Stage, AtomicLong>(Stage.class);
+    private final Map<Stage, AtomicLong> maxNanos = new EnumMap<Stage, AtomicLong>(Stage.class);
+
+    StageMetrics() {
+      for (Stage stage : Stage.values()) {
+        counts.put(stage, new AtomicLong());
+        nanos.put(stage, new AtomicLong());
+        maxNanos.put(stage, new AtomicLong());
+      }
+    }
+
+    void record(Stage stage, long elapsedNanos) {
+      counts.get(stage).incrementAndGet();
+      nanos.get(stage).addAndGet(elapsedNanos);
+
+      AtomicLong max = maxNanos.get(stage);
+      long current = max.get();
+      while (elapsedNanos > current && !max.compareAndSet(current, elapsedNanos)) {
+        current = max.get();
+      }
+    }
+
+    public long getCount(Stage stage) {
+      return counts.get(stage).get();
+    }
+
+    /**
+     * @return the mean latency of the stage in milliseconds
+     */
+    public double getMeanMillis(Stage stage) {
+      long count = getCount(stage);
+      return count == 0 ? 0 : nanos.get(stage).get() / (count * 1000000.0);
+    }
+
+    /**
+     * @return the maximum latency of the stage in milliseconds
+     */
+    public double getMaxMillis(Stage stage) {
+      return maxNanos.get(stage).get() / 1000000.0;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("{");
+      for (Stage stage : Stage.values()) {
+        if (sb.length() > 1) {
+          sb.append(", ");
+        }
+        sb.append(stage).append("=[count=").append(getCount(stage))
+            .append(String.format(", meanMs=%.2f, maxMs=%.2f]",
+                getMeanMillis(stage), getMaxMillis(stage)));
+      }
+      return sb.append("}").toString();
+    }
+  }
+}
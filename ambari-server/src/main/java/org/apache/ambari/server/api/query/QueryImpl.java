@@ -18,11 +18,13 @@
 
 package org.apache.ambari.server.api.query;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -40,6 +42,8 @@ import org.apache.ambari.server.api.util.TreeNodeImpl;
 import org.apache.ambari.server.controller.internal.QueryResponseImpl;
 import org.apache.ambari.server.controller.predicate.AndPredicate;
 import org.apache.ambari.server.controller.predicate.EqualsPredicate;
+import org.apache.ambari.server.controller.predicate.OrPredicate;
+import org.apache.ambari.server.controller.spi.BatchedResourceProvider;
 import org.apache.ambari.server.controller.spi.ClusterController;
 import org.apache.ambari.server.controller.spi.NoSuchParentResourceException;
 import org.apache.ambari.server.controller.spi.NoSuchResourceException;
@@ -157,6 +161,12 @@ public class QueryImpl implements Query, ResourceInstance {
    */
   private Predicate processedPredicate;
 
+  /**
+   * The maximum number of parent resources whose sub-resources are queried
+   * with a single resource provider query.
+   */
+  private static final int MAX_BATCH_SIZE = 1000;
+
   /**
    * The logger.
    */
@@ -345,13 +355,22 @@ public class QueryImpl implements Query, ResourceInstance {
   }
 
   /**
+   * Determine whether the resources must be populated by the property
+   * providers before they can be filtered and sorted, i.e. whether the
+   * predicate or the sort request refers to properties which are not provided
+   * by the resource provider or the predicate refers to sub-resources.
+   *
    * @param type the resource type
-   * @return whether sub-resources is in processed predicate
+   * @return whether the resources must be populated before paging
    */
   private boolean populateResourceRequired(Resource.Type type) {
     ResourceProvider resourceProvider = clusterController.ensureResourceProvider(type);
     Set<String> unsupportedProperties =
       resourceProvider.checkPropertyIds(PredicateHelper.getPropertyIds(processedPredicate));
+    if (unsupportedProperties.isEmpty() && sortRequest != null) {
+      unsupportedProperties =
+        resourceProvider.checkPropertyIds(new HashSet<String>(sortRequest.getPropertyIds()));
+    }
     return !unsupportedProperties.isEmpty() || hasSubResourcePredicate();
   }
 
@@ -392,6 +411,11 @@ public class QueryImpl implements Query, ResourceInstance {
         resourceSet.add(r);
         providerResourceSet.add(r);
       }
+
+      // only the page is populated by the property providers, so keep it as
+      // the sorted and paged result rather than paging the full set again
+      queryResponse = new QueryResponseImpl(resourceSet, true, true,
+          pageResponse.getTotalResourceCount());
     } else {
       resourceSet.addAll(queryResponse.getResources());
       providerResourceSet.addAll(queryResponse.getResources());
@@ -423,33 +447,197 @@ public class QueryImpl implements Query, ResourceInstance {
       Request       request             = subResource.createRequest();
       Set<Resource> providerResourceSet = new HashSet<Resource>();
 
+      List<ParentResource> parents = new ArrayList<ParentResource>();
       for (QueryResult queryResult : populatedQueryResults.values()) {
         for (Resource resource : queryResult.getQueryResponse().getResources()) {
-          Map<Resource.Type, String> map = getKeyValueMap(resource, queryResult.getKeyValueMap());
-
-          Predicate     queryPredicate = subResource.createPredicate(map, subResource.processedPredicate);
-          Set<Resource> resourceSet    = new LinkedHashSet<Resource>();
+          parents.add(new ParentResource(resource, getKeyValueMap(resource, queryResult.getKeyValueMap())));
+        }
+      }
 
-          try {
-            Set<Resource> queryResources =
-                subResource.doQuery(resourceType, request, queryPredicate, false).getResources();
+      int queryCount = 0;
+      if (subResource.isBatchQueryable(resourceType, parents)) {
+        for (int start = 0; start < parents.size(); start += MAX_BATCH_SIZE) {
+          List<ParentResource> batch = parents.subList(start, Math.min(start + MAX_BATCH_SIZE, parents.size()));
 
-            providerResourceSet.addAll(queryResources);
-            resourceSet.addAll(queryResources);
-          } catch (NoSuchResourceException e) {
-            // do nothing ...
+          queryCount++;
+          if (!subResource.queryForBatch(resourceType, request, batch, providerResourceSet, subResourcePredicate)) {
+            // fall back to a query per parent resource
+            queryCount += subResource.queryForParents(resourceType, request, batch, providerResourceSet,
+                subResourcePredicate);
           }
-          subResource.queryResults.put(resource,
-              new QueryResult(request, queryPredicate, subResourcePredicate, map, new QueryResponseImpl(resourceSet)));
-          subResource.populatedQueryResults.put(resource,
-            new QueryResult(request, queryPredicate, subResourcePredicate, map, new QueryResponseImpl(resourceSet)));
         }
+      } else {
+        queryCount = subResource.queryForParents(resourceType, request, parents, providerResourceSet,
+            subResourcePredicate);
       }
+
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Queried " + resourceType + " resources of " + parents.size() + " " +
+            getResourceDefinition().getType() + " resources with " + queryCount + " resource provider queries");
+      }
+
       clusterController.populateResources(resourceType, providerResourceSet, request, null);
       subResource.queryForSubResources();
     }
   }
 
+  /**
+   * Query the cluster controller for the resources of this sub-resource query
+   * with a query per parent resource.
+   *
+   * @param type                  the resource type
+   * @param request               the request information
+   * @param parents               the parent resources
+   * @param providerResourceSet   the set to add the resources returned by the provider to
+   * @param parentUserPredicate   the sub-resource predicate of the parent query
+   *
+   * @return the number of queries
+   */
+  private int queryForParents(Resource.Type type, Request request, List<ParentResource> parents,
+                              Set<Resource> providerResourceSet, Predicate parentUserPredicate)
+      throws UnsupportedPropertyException,
+      SystemException,
+      NoSuchParentResourceException {
+
+    for (ParentResource parent : parents) {
+      Predicate     queryPredicate = createPredicate(parent.getKeyValueMap(), processedPredicate);
+      Set<Resource> resourceSet    = new LinkedHashSet<Resource>();
+
+      try {
+        Set<Resource> queryResources = doQuery(type, request, queryPredicate, false).getResources();
+
+        providerResourceSet.addAll(queryResources);
+        resourceSet.addAll(queryResources);
+      } catch (NoSuchResourceException e) {
+        // do nothing ...
+      }
+      addQueryResult(parent, request, queryPredicate, parentUserPredicate, resourceSet);
+    }
+    return parents.size();
+  }
+
+  /**
+   * Query the cluster controller for the resources of this sub-resource query
+   * with a single query for all of the given parent resources.  The key
+   * property predicates of the parents are ORed, and the returned resources
+   * are grouped back to the parents whose key properties they match.
+   *
+   * @param type                  the resource type
+   * @param request               the request information
+   * @param parents               the parent resources
+   * @param providerResourceSet   the set to add the resources returned by the provider to
+   * @param parentUserPredicate   the sub-resource predicate of the parent query
+   *
+   * @return false if the query failed for a missing resource, in which case
+   *         the parents should be queried one at a time
+   */
+  private boolean queryForBatch(Resource.Type type, Request request, List<ParentResource> parents,
+                                Set<Resource> providerResourceSet, Predicate parentUserPredicate)
+      throws UnsupportedPropertyException,
+      SystemException {
+
+    Schema schema = clusterController.getSchema(type);
+
+    Predicate[] keyPredicates = new Predicate[parents.size()];
+    Map<Map<String, String>, List<Integer>> parentIndexes = new HashMap<Map<String, String>, List<Integer>>();
+    Set<Set<String>> keyPropertyIdSets = new HashSet<Set<String>>();
+
+    for (int i = 0; i < parents.size(); i++) {
+      Map<String, String> keyProperties = getKeyProperties(schema, parents.get(i).getKeyValueMap());
+
+      keyPredicates[i] = createInternalPredicate(parents.get(i).getKeyValueMap());
+      keyPropertyIdSets.add(keyProperties.keySet());
+
+      List<Integer> indexes = parentIndexes.get(keyProperties);
+      if (indexes == null) {
+        indexes = new ArrayList<Integer>();
+        parentIndexes.put(keyProperties, indexes);
+      }
+      indexes.add(i);
+    }
+
+    Predicate keyPredicate   = keyPredicates.length == 1 ? keyPredicates[0] : new OrPredicate(keyPredicates);
+    Predicate queryPredicate = processedPredicate == null ? keyPredicate :
+        new AndPredicate(processedPredicate, keyPredicate);
+
+    Set<Resource> queryResources;
+    try {
+      queryResources = doQuery(type, request, queryPredicate, false).getResources();
+    } catch (NoSuchResourceException e) {
+      return false;
+    } catch (NoSuchParentResourceException e) {
+      return false;
+    }
+    providerResourceSet.addAll(queryResources);
+
+    List<Set<Resource>> resourceSets = new ArrayList<Set<Resource>>(parents.size());
+    for (int i = 0; i < parents.size(); i++) {
+      resourceSets.add(new LinkedHashSet<Resource>());
+    }
+
+    for (Resource resource : queryResources) {
+      for (Set<String> keyPropertyIds : keyPropertyIdSets) {
+        Map<String, String> keyProperties = new HashMap<String, String>();
+        for (String keyPropertyId : keyPropertyIds) {
+          Object value = resource.getPropertyValue(keyPropertyId);
+          if (value != null) {
+            keyProperties.put(keyPropertyId, value.toString());
+          }
+        }
+        List<Integer> indexes = parentIndexes.get(keyProperties);
+        if (indexes != null) {
+          for (Integer index : indexes) {
+            if (keyPredicates[index].evaluate(resource)) {
+              resourceSets.get(index).add(resource);
+            }
+          }
+        }
+      }
+    }
+
+    for (int i = 0; i < parents.size(); i++) {
+      addQueryResult(parents.get(i), request,
+          createPredicate(parents.get(i).getKeyValueMap(), processedPredicate),
+          parentUserPredicate, resourceSets.get(i));
+    }
+    return true;
+  }
+
+  /**
+   * Determine whether the resources of this sub-resource query can be
+   * queried for all of the given parent resources at once.
+   *
+   * @param type     the resource type
+   * @param parents  the parent resources
+   *
+   * @return true if the resources can be queried in batches
+   */
+  private boolean isBatchQueryable(Resource.Type type, List<ParentResource> parents) {
+    if (parents.size() < 2 || pageRequest != null ||
+        !(clusterController.ensureResourceProvider(type) instanceof BatchedResourceProvider)) {
+      return false;
+    }
+    // every parent must be identified by key properties of the resources
+    Schema schema = clusterController.getSchema(type);
+    for (ParentResource parent : parents) {
+      if (getKeyProperties(schema, parent.getKeyValueMap()).isEmpty()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Add the result of a query for the given parent resource.
+  private void addQueryResult(ParentResource parent, Request request, Predicate queryPredicate,
+                              Predicate parentUserPredicate, Set<Resource> resourceSet) {
+    queryResults.put(parent.getResource(),
+        new QueryResult(request, queryPredicate, parentUserPredicate, parent.getKeyValueMap(),
+            new QueryResponseImpl(resourceSet)));
+    populatedQueryResults.put(parent.getResource(),
+        new QueryResult(request, queryPredicate, parentUserPredicate, parent.getKeyValueMap(),
+            new QueryResponseImpl(resourceSet)));
+  }
+
   /**
    * Query the cluster controller for the resources.
    *
@@ -849,13 +1037,8 @@ public class QueryImpl implements Query, ResourceInstance {
     Schema schema = clusterController.getSchema(resourceType);
 
     Set<Predicate> setPredicates = new HashSet<Predicate>();
-    for (Map.Entry<Resource.Type, String> entry : mapResourceIds.entrySet()) {
-      if (entry.getValue() != null) {
-        String keyPropertyId = schema.getKeyPropertyId(entry.getKey());
-        if (keyPropertyId != null) {
-          setPredicates.add(new EqualsPredicate<String>(keyPropertyId, entry.getValue()));
-        }
-      }
+    for (Map.Entry<String, String> entry : getKeyProperties(schema, mapResourceIds).entrySet()) {
+      setPredicates.add(new EqualsPredicate<String>(entry.getKey(), entry.getValue()));
     }
 
     if (setPredicates.size() == 1) {
@@ -867,6 +1050,20 @@ public class QueryImpl implements Query, ResourceInstance {
     }
   }
 
+  // Get the values of the key properties of the given schema from a key value map.
+  private static Map<String, String> getKeyProperties(Schema schema, Map<Resource.Type, String> mapResourceIds) {
+    Map<String, String> keyProperties = new HashMap<String, String>();
+    for (Map.Entry<Resource.Type, String> entry : mapResourceIds.entrySet()) {
+      if (entry.getValue() != null) {
+        String keyPropertyId = schema.getKeyPropertyId(entry.getKey());
+        if (keyPropertyId != null) {
+          keyProperties.put(keyPropertyId, entry.getValue());
+        }
+      }
+    }
+    return keyProperties;
+  }
+
   private Predicate createPredicate() {
     return createPredicate(getKeyValueMap(), userPredicate);
   }
@@ -1012,6 +1209,29 @@ public class QueryImpl implements Query, ResourceInstance {
         resource.getSingularName();
   }
 
+  // ----- inner class : ParentResource --------------------------------------
+
+  /**
+   * A parent resource of a sub-resource query and its key value map.
+   */
+  private static class ParentResource {
+    private final Resource resource;
+    private final Map<Resource.Type, String> keyValueMap;
+
+    private ParentResource(Resource resource, Map<Resource.Type, String> keyValueMap) {
+      this.resource    = resource;
+      this.keyValueMap = keyValueMap;
+    }
+
+    public Resource getResource() {
+      return resource;
+    }
+
+    public Map<Resource.Type, String> getKeyValueMap() {
+      return keyValueMap;
+    }
+  }
+
   // ----- inner class : QueryResult -----------------------------------------
 
   /**
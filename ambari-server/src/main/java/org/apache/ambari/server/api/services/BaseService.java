@@ -26,14 +26,22 @@ import org.apache.ambari.server.api.services.parsers.JsonRequestBodyParser;
 import org.apache.ambari.server.api.services.parsers.RequestBodyParser;
 import org.apache.ambari.server.api.services.serializers.JsonSerializer;
 import org.apache.ambari.server.api.services.serializers.ResultSerializer;
+import org.apache.ambari.server.api.services.serializers.StreamingJsonSerializer;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.controller.spi.Resource;
+import org.apache.ambari.server.security.SecurityHelperImpl;
+import org.apache.ambari.server.state.StateVersion;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.eclipse.jetty.util.ajax.JSON;
 
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -47,11 +55,46 @@ public abstract class BaseService {
    */
   private ResourceInstanceFactory m_resourceFactory = new ResourceInstanceFactoryImpl();
 
+  /**
+   * Whether results are written directly to the response stream.
+   */
+  private static boolean streamingResults = false;
+
+  /**
+   * Whether result JSON is indented.
+   */
+  private static boolean prettyPrintResults = true;
+
+  /**
+   * Whether read results are tagged with an ETag derived from the
+   * {@link StateVersion}.
+   */
+  private static boolean conditionalGet = false;
+
+  /**
+   * The time, in milliseconds, after which an ETag changes even if the state
+   * version has not; 0 for no limit.
+   */
+  private static long conditionalGetMaxAge = 0L;
+
   /**
    * Result serializer.
    */
-  private ResultSerializer m_serializer = new JsonSerializer();
+  private ResultSerializer m_serializer = streamingResults ?
+      new StreamingJsonSerializer(prettyPrintResults) : new JsonSerializer(prettyPrintResults);
+
 
+  /**
+   * Initialize the result serialization settings from the configuration.
+   *
+   * @param configuration  the server configuration
+   */
+  public static void init(Configuration configuration) {
+    streamingResults     = configuration.isApiResponseStreamingEnabled();
+    prettyPrintResults   = configuration.isApiResponsePrettyPrintEnabled();
+    conditionalGet       = configuration.isApiConditionalGetEnabled();
+    conditionalGetMaxAge = configuration.getApiConditionalGetMaxAge();
+  }
 
   /**
    * Requests are funneled through this method so that common logic can be executed.
@@ -75,6 +118,10 @@ public abstract class BaseService {
   /**
    * Requests are funneled through this method so that common logic can be executed.
    * Creates a request instance and invokes it's process method.
+   * <p/>
+   * Read results are tagged with an ETag computed from the state version
+   * before the request is processed, and a read request with a matching
+   * If-None-Match header is answered with 304 without processing it.
    *
    * @param headers      http headers
    * @param body         http body
@@ -89,6 +136,14 @@ public abstract class BaseService {
                                    UriInfo uriInfo, Request.Type requestType,
                                    MediaType mediaType, ResourceInstance resource) {
 
+    EntityTag entityTag = null;
+    if (conditionalGet && requestType == Request.Type.GET) {
+      entityTag = getEntityTag(uriInfo, mediaType);
+      if (entityTag != null && isMatch(headers, entityTag)) {
+        return Response.notModified(entityTag).build();
+      }
+    }
+
     Result result = new ResultImpl(new ResultStatus(ResultStatus.STATUS.OK));
     try {
       Set<RequestBody> requestBodySet = getBodyParser().parse(body);
@@ -104,6 +159,11 @@ public abstract class BaseService {
       }
     } catch (BodyParseException e) {
       result =  new ResultImpl(new ResultStatus(ResultStatus.STATUS.BAD_REQUEST, e.getMessage()));
+    } finally {
+      if (requestType != Request.Type.GET) {
+        // changes which are only held in memory are not seen by the event bus or the database
+        StateVersion.increment();
+      }
     }
 
     ResultSerializer serializer = mediaType == null ? getResultSerializer() : getResultSerializer(mediaType);
@@ -114,10 +174,68 @@ public abstract class BaseService {
     if (mediaType != null) {
       builder.type(mediaType);
     }
+    if (entityTag != null && result.getStatus().getStatus() == ResultStatus.STATUS.OK) {
+      builder.tag(entityTag);
+    }
 
     return builder.build();
   }
 
+  /**
+   * Get the ETag of the result of a read request at the current state
+   * version.  The tag is weak since the result may be compressed and is
+   * specific to the request URI, the media type and the user, whose
+   * privileges may limit the result.
+   *
+   * @param uriInfo    uri information
+   * @param mediaType  the requested media type; may be null
+   *
+   * @return the entity tag; null if the request URI is not known
+   */
+  EntityTag getEntityTag(UriInfo uriInfo, MediaType mediaType) {
+    if (uriInfo == null || uriInfo.getRequestUri() == null) {
+      return null;
+    }
+    long version = StateVersion.get();
+    long period  = conditionalGetMaxAge > 0 ? System.currentTimeMillis() / conditionalGetMaxAge : 0L;
+
+    String request = uriInfo.getRequestUri() + "\n" + mediaType + "\n" +
+        SecurityHelperImpl.getInstance().getCurrentUserName();
+
+    // the version restarts with the server, so the tags of a previous run must not match
+    return new EntityTag(Long.toString(StateVersion.getEpoch(), 36) + "-" + version + "-" + period +
+        "-" + DigestUtils.md5Hex(request), true);
+  }
+
+  /**
+   * Determine whether the If-None-Match header of a request matches the
+   * given ETag.  ETags are compared weakly.
+   *
+   * @param headers    http headers
+   * @param entityTag  the ETag of the result
+   *
+   * @return true if the client already has the result
+   */
+  boolean isMatch(HttpHeaders headers, EntityTag entityTag) {
+    List<String> ifNoneMatch = headers == null ? null : headers.getRequestHeader(HttpHeaders.IF_NONE_MATCH);
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    String value = '"' + entityTag.getValue() + '"';
+    for (String header : ifNoneMatch) {
+      for (String tag : header.split(",")) {
+        tag = tag.trim();
+        if (tag.startsWith("W/")) {
+          tag = tag.substring(2);
+        }
+        if (tag.equals(value)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   /**
    * Obtain the factory from which to create Request instances.
    *
@@ -154,7 +272,9 @@ public abstract class BaseService {
       return new ResultSerializer() {
         @Override
         public Object serialize(Result result) {
-          return serializer.serialize(result).toString();
+          Object serialized = serializer.serialize(result);
+          // streamed results are written as text as they are
+          return serialized instanceof StreamingOutput ? serialized : serialized.toString();
         }
 
         @Override
@@ -26,6 +26,7 @@ import org.apache.ambari.server.api.util.TreeNode;
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.SerializationConfig;
 import org.codehaus.jackson.util.DefaultPrettyPrinter;
 
 import java.io.*;
@@ -51,20 +52,36 @@ public class JsonSerializer implements ResultSerializer {
    */
   JsonGenerator m_generator;
 
+  /**
+   * Whether the JSON is indented.
+   */
+  private final boolean m_prettyPrint;
 
-  @Override
-  public Object serialize(Result result) {
-    try {
-      ByteArrayOutputStream bytesOut = init();
 
-      if (result.getStatus().isErrorState()) {
-        return serializeError(result.getStatus());
-      }
+  /**
+   * Constructor.  The JSON is pretty printed.
+   */
+  public JsonSerializer() {
+    this(true);
+  }
 
-      TreeNode<Resource> treeNode = result.getResultTree();
-      processNode(treeNode);
+  /**
+   * Constructor.
+   *
+   * @param prettyPrint  whether the JSON should be indented
+   */
+  public JsonSerializer(boolean prettyPrint) {
+    m_prettyPrint = prettyPrint;
+    // property values are written through the mapper, which would otherwise
+    // flush the underlying stream after each one
+    m_mapper.configure(SerializationConfig.Feature.FLUSH_AFTER_WRITE_VALUE, false);
+  }
 
-      m_generator.close();
+  @Override
+  public Object serialize(Result result) {
+    try {
+      ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+      serialize(result, bytesOut);
       return bytesOut.toString("UTF-8");
     } catch (IOException e) {
       //todo: exception handling.  Create ResultStatus 500 and call serializeError
@@ -75,13 +92,8 @@ public class JsonSerializer implements ResultSerializer {
   @Override
   public Object serializeError(ResultStatus error) {
     try {
-      ByteArrayOutputStream bytesOut = init();
-      //m_mapper.writeValue(m_generator, error);
-      m_generator.writeStartObject();
-      m_generator.writeNumberField("status", error.getStatus().getStatus());
-      m_generator.writeStringField("message", error.getMessage());
-      m_generator.writeEndObject();
-      m_generator.close();
+      ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+      serializeError(error, bytesOut);
       return bytesOut.toString("UTF-8");
 
     } catch (IOException e) {
@@ -90,15 +102,47 @@ public class JsonSerializer implements ResultSerializer {
     }
   }
 
-  private ByteArrayOutputStream init() throws IOException {
-    ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
-    m_generator = createJsonGenerator(bytesOut);
+  /**
+   * Write the given result as JSON to the given stream.  Each resource is
+   * written as it is visited so the size of the output is not bounded by the
+   * memory needed to hold it.  The stream is not closed.
+   *
+   * @param result  internal result
+   * @param out     the stream to write to
+   *
+   * @throws IOException if the JSON can't be written
+   */
+  public void serialize(Result result, OutputStream out) throws IOException {
+    if (result.getStatus().isErrorState()) {
+      serializeError(result.getStatus(), out);
+      return;
+    }
 
-    DefaultPrettyPrinter p = new DefaultPrettyPrinter();
-    p.indentArraysWith(new DefaultPrettyPrinter.Lf2SpacesIndenter());
-    m_generator.setPrettyPrinter(p);
+    m_generator = createJsonGenerator(out);
 
-    return bytesOut;
+    TreeNode<Resource> treeNode = result.getResultTree();
+    processNode(treeNode);
+
+    m_generator.close();
+  }
+
+  /**
+   * Write the given error result as JSON to the given stream.  The stream is
+   * not closed.
+   *
+   * @param error  the error result
+   * @param out    the stream to write to
+   *
+   * @throws IOException if the JSON can't be written
+   */
+  public void serializeError(ResultStatus error, OutputStream out) throws IOException {
+    m_generator = createJsonGenerator(out);
+    //m_mapper.writeValue(m_generator, error);
+    m_generator.writeStartObject();
+    m_generator.writeNumberField("status", error.getStatus().getStatus());
+    m_generator.writeStringField("message", error.getMessage());
+    m_generator.writeEndObject();
+    m_generator.close();
   }
 
   private void processNode(TreeNode<Resource> node) throws IOException {
@@ -202,13 +246,17 @@ public class JsonSerializer implements ResultSerializer {
     }
   }
 
-  private JsonGenerator createJsonGenerator(ByteArrayOutputStream baos) throws IOException {
-    JsonGenerator generator = m_factory.createJsonGenerator(new OutputStreamWriter(baos,
+  private JsonGenerator createJsonGenerator(OutputStream out) throws IOException {
+    JsonGenerator generator = m_factory.createJsonGenerator(new OutputStreamWriter(out,
         Charset.forName("UTF-8").newEncoder()));
 
-    DefaultPrettyPrinter p = new DefaultPrettyPrinter();
-    p.indentArraysWith(new DefaultPrettyPrinter.Lf2SpacesIndenter());
-    generator.setPrettyPrinter(p);
+    // the stream belongs to the caller
+    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    if (m_prettyPrint) {
+      DefaultPrettyPrinter p = new DefaultPrettyPrinter();
+      p.indentArraysWith(new DefaultPrettyPrinter.Lf2SpacesIndenter());
+      generator.setPrettyPrinter(p);
+    }
 
     return generator;
   }
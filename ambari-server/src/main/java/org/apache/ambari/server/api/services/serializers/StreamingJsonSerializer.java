@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.api.services.serializers;
+
+import org.apache.ambari.server.api.services.Result;
+import org.apache.ambari.server.api.services.ResultStatus;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streaming JSON serializer.
+ * Rather than building the JSON for a result in memory, a result is
+ * serialized to a {@link StreamingOutput} which writes the JSON directly to
+ * the response stream when the response is sent.
+ */
+public class StreamingJsonSerializer implements ResultSerializer {
+
+  /**
+   * Whether the JSON is indented.
+   */
+  private final boolean m_prettyPrint;
+
+
+  /**
+   * Constructor.
+   *
+   * @param prettyPrint  whether the JSON should be indented
+   */
+  public StreamingJsonSerializer(boolean prettyPrint) {
+    m_prettyPrint = prettyPrint;
+  }
+
+  @Override
+  public Object serialize(Result result) {
+    return new JsonStreamingOutput(result, m_prettyPrint);
+  }
+
+  @Override
+  public Object serializeError(ResultStatus error) {
+    // errors are small; no need to stream them
+    return new JsonSerializer(m_prettyPrint).serializeError(error);
+  }
+
+
+  // ----- inner class : JsonStreamingOutput ---------------------------------
+
+  /**
+   * Entity which writes a result as JSON to the response stream.
+   */
+  public static class JsonStreamingOutput implements StreamingOutput {
+
+    /**
+     * The result to write.
+     */
+    private final Result m_result;
+
+    /**
+     * Whether the JSON is indented.
+     */
+    private final boolean m_prettyPrint;
+
+
+    /**
+     * Constructor.
+     *
+     * @param result       the result to write
+     * @param prettyPrint  whether the JSON should be indented
+     */
+    public JsonStreamingOutput(Result result, boolean prettyPrint) {
+      m_result      = result;
+      m_prettyPrint = prettyPrint;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException {
+      new JsonSerializer(m_prettyPrint).serialize(m_result, output);
+    }
+
+    /**
+     * Get the JSON as a string.  This builds the full JSON in memory and is
+     * only intended for callers which need to further process the result.
+     *
+     * @return the JSON for the result
+     */
+    @Override
+    public String toString() {
+      try {
+        ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+        write(bytesOut);
+        return bytesOut.toString("UTF-8");
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to serialize to json: " + e, e);
+      }
+    }
+  }
+}
@@ -84,6 +84,11 @@ public class Configuration {
   public static final String API_AUTHENTICATE = "api.authenticate";
   public static final String API_USE_SSL = "api.ssl";
   public static final String API_CSRF_PREVENTION_KEY = "api.csrfPrevention.enabled";
+  public static final String API_GZIP_COMPRESSION_ENABLED_KEY = "api.gzip.compression.enabled";
+  public static final String API_RESPONSE_STREAMING_KEY = "api.response.streaming.enabled";
+  public static final String API_RESPONSE_PRETTY_PRINT_KEY = "api.response.pretty_print";
+  public static final String API_CONDITIONAL_GET_KEY = "api.conditional_get.enabled";
+  public static final String API_CONDITIONAL_GET_MAX_AGE_KEY = "api.conditional_get.max_age";
   public static final String SRVR_TWO_WAY_SSL_KEY = "security.server.two_way_ssl";
   public static final String SRVR_TWO_WAY_SSL_PORT_KEY = "security.server.two_way_ssl.port";
   public static final String SRVR_ONE_WAY_SSL_PORT_KEY = "security.server.one_way_ssl.port";
@@ -265,6 +270,11 @@ public class Configuration {
   private static final String SRVR_TWO_WAY_SSL_DEFAULT = "false";
   private static final String SRVR_KSTR_DIR_DEFAULT = ".";
   private static final String API_CSRF_PREVENTION_DEFAULT = "true";
+  private static final String API_GZIP_COMPRESSION_ENABLED_DEFAULT = "true";
+  private static final String API_RESPONSE_STREAMING_DEFAULT = "false";
+  private static final String API_RESPONSE_PRETTY_PRINT_DEFAULT = "true";
+  private static final String API_CONDITIONAL_GET_DEFAULT = "true";
+  private static final long API_CONDITIONAL_GET_MAX_AGE_DEFAULT = 10000L;
   private static final String SRVR_CRT_PASS_FILE_DEFAULT = "pass.txt";
   private static final String SRVR_CRT_PASS_LEN_DEFAULT = "50";
   private static final String SRVR_DISABLED_CIPHERS_DEFAULT = "";
@@ -316,6 +326,46 @@ public class Configuration {
   private static final String AGENT_THREADPOOL_SIZE_KEY = "agent.threadpool.size.max";
   private static final int AGENT_THREADPOOL_SIZE_DEFAULT = 25;
 
+  public static final String ACTION_SCHEDULER_STAGE_MODEL_MAX_AGE_KEY = "server.actionscheduler.stages.max_age";
+  private static final long ACTION_SCHEDULER_STAGE_MODEL_MAX_AGE_DEFAULT = 60000L;
+
+  private static final String AGENT_HEARTBEAT_ASYNC_KEY = "agent.heartbeat.async.enabled";
+  private static final String AGENT_HEARTBEAT_ASYNC_DEFAULT = "false";
+  private static final String AGENT_HEARTBEAT_ASYNC_QUEUE_SIZE_KEY = "agent.heartbeat.async.queue.size";
+  private static final int AGENT_HEARTBEAT_ASYNC_QUEUE_SIZE_DEFAULT = 10000;
+  private static final String AGENT_HEARTBEAT_ASYNC_BATCH_SIZE_KEY = "agent.heartbeat.async.batch.size";
+  private static final int AGENT_HEARTBEAT_ASYNC_BATCH_SIZE_DEFAULT = 100;
+
+  private static final String TASK_OUTPUT_CHUNKED_KEY = "server.task.output.chunked.enabled";
+  private static final String TASK_OUTPUT_CHUNKED_DEFAULT = "false";
+  private static final String TASK_OUTPUT_CHUNK_SIZE_KEY = "server.task.output.chunk.size";
+  private static final int TASK_OUTPUT_CHUNK_SIZE_DEFAULT = 65536;
+
+  private static final String RETENTION_INTERVAL_KEY = "server.retention.interval";
+  private static final long RETENTION_INTERVAL_DEFAULT = 0L;
+  private static final String RETENTION_BATCH_SIZE_KEY = "server.retention.batch.size";
+  private static final int RETENTION_BATCH_SIZE_DEFAULT = 100;
+  private static final String RETENTION_ARCHIVE_DIR_KEY = "server.retention.archive.dir";
+  private static final String RETENTION_REQUESTS_MAX_AGE_KEY = "server.retention.requests.max_age_days";
+  private static final String RETENTION_REQUESTS_MAX_COUNT_KEY = "server.retention.requests.max_count";
+  private static final String RETENTION_REQUESTS_STATUSES_KEY = "server.retention.requests.statuses";
+  private static final String RETENTION_ALERTS_MAX_AGE_KEY = "server.retention.alerts.max_age_days";
+  private static final String RETENTION_ALERTS_MAX_COUNT_KEY = "server.retention.alerts.max_count";
+  private static final String RETENTION_ALERTS_STATES_KEY = "server.retention.alerts.states";
+
+  private static final String METRICS_CACHE_ENABLED_KEY = "server.metrics.cache.enabled";
+  private static final String METRICS_CACHE_ENABLED_DEFAULT = "true";
+  private static final String METRICS_CACHE_TTL_KEY = "server.metrics.cache.ttl";
+  private static final long METRICS_CACHE_TTL_DEFAULT = 10L;
+  private static final String METRICS_CACHE_MAX_ENTRIES_KEY = "server.metrics.cache.max_entries";
+  private static final long METRICS_CACHE_MAX_ENTRIES_DEFAULT = 10000L;
+  private static final String PROPERTY_PROVIDER_THREADPOOL_SIZE_KEY = "server.property_provider.threadpool.size.max";
+  private static final int PROPERTY_PROVIDER_THREADPOOL_SIZE_DEFAULT = 32;
+  private static final String PROPERTY_PROVIDER_THREADPOOL_QUEUE_SIZE_KEY = "server.property_provider.threadpool.queue.size";
+  private static final int PROPERTY_PROVIDER_THREADPOOL_QUEUE_SIZE_DEFAULT = 1000;
+  private static final String PROPERTY_PROVIDER_TIMEOUT_KEY = "server.property_provider.timeout";
+  private static final long PROPERTY_PROVIDER_TIMEOUT_DEFAULT = 15000L;
+
   private static final String VIEW_EXTRACTION_THREADPOOL_MAX_SIZE_KEY = "view.extraction.threadpool.size.max";
   private static final int VIEW_EXTRACTION_THREADPOOL_MAX_SIZE_DEFAULT = 20;
   private static final String VIEW_EXTRACTION_THREADPOOL_CORE_SIZE_KEY = "view.extraction.threadpool.size.core";
@@ -325,6 +375,16 @@ public class Configuration {
 
   private static final String SERVER_HTTP_SESSION_INACTIVE_TIMEOUT = "server.http.session.inactive_timeout";
 
+  /**
+   * The interval, in seconds, at which live host and host component state is
+   * flushed to the database. A value of {@code 0} disables write-behind and
+   * persists every change immediately.
+   */
+  private static final String SERVER_STATE_WRITE_BEHIND_INTERVAL_KEY = "server.state.writebehind.interval";
+  private static final long SERVER_STATE_WRITE_BEHIND_INTERVAL_DEFAULT = 0L;
+  private static final String SERVER_STATE_WRITE_BEHIND_BATCH_SIZE_KEY = "server.state.writebehind.batch.size";
+  private static final int SERVER_STATE_WRITE_BEHIND_BATCH_SIZE_DEFAULT = 100;
+
   // database pooling defaults
   private static final String DEFAULT_JDBC_POOL_MIN_CONNECTIONS = "5";
   private static final String DEFAULT_JDBC_POOL_MAX_CONNECTIONS = "32";
@@ -740,6 +800,56 @@ public class Configuration {
     return "true".equalsIgnoreCase(properties.getProperty(API_CSRF_PREVENTION_KEY, API_CSRF_PREVENTION_DEFAULT));
   }
 
+  /**
+   * Checks if API responses should be gzip compressed for clients which
+   * accept it
+   * @return true if the gzip content encoding filter should be enabled
+   */
+  public boolean isApiGzipped() {
+    return "true".equalsIgnoreCase(properties.getProperty(
+        API_GZIP_COMPRESSION_ENABLED_KEY, API_GZIP_COMPRESSION_ENABLED_DEFAULT));
+  }
+
+  /**
+   * Checks if API results should be written directly to the response stream
+   * instead of being built in memory first
+   * @return true if API results should be streamed
+   */
+  public boolean isApiResponseStreamingEnabled() {
+    return "true".equalsIgnoreCase(properties.getProperty(
+        API_RESPONSE_STREAMING_KEY, API_RESPONSE_STREAMING_DEFAULT));
+  }
+
+  /**
+   * Checks if API results should be indented; compact JSON is smaller and
+   * faster to write
+   * @return true if API result JSON should be pretty printed
+   */
+  public boolean isApiResponsePrettyPrintEnabled() {
+    return "true".equalsIgnoreCase(properties.getProperty(
+        API_RESPONSE_PRETTY_PRINT_KEY, API_RESPONSE_PRETTY_PRINT_DEFAULT));
+  }
+
+  /**
+   * Checks if API read results should be tagged with an ETag so that a
+   * request with a matching If-None-Match header is answered with 304
+   * @return true if conditional GET requests are supported
+   */
+  public boolean isApiConditionalGetEnabled() {
+    return "true".equalsIgnoreCase(properties.getProperty(
+        API_CONDITIONAL_GET_KEY, API_CONDITIONAL_GET_DEFAULT));
+  }
+
+  /**
+   * @return the time, in milliseconds, after which an API result ETag
+   *         changes even if the state version has not, default 10000; this
+   *         bounds how stale state which is only held in memory may be
+   */
+  public long getApiConditionalGetMaxAge() {
+    return Long.parseLong(properties.getProperty(
+        API_CONDITIONAL_GET_MAX_AGE_KEY, String.valueOf(API_CONDITIONAL_GET_MAX_AGE_DEFAULT)));
+  }
+
   /**
    * Gets client security type
    * @return appropriate ClientSecurityType
@@ -1282,6 +1392,205 @@ public class Configuration {
         AGENT_THREADPOOL_SIZE_KEY, String.valueOf(AGENT_THREADPOOL_SIZE_DEFAULT)));
   }
 
+  /**
+   * Gets the maximum time, in milliseconds, that the action scheduler reuses
+   * its in-memory model of the stages in progress before reloading them from
+   * the database as a fallback, default 60000. Command reports, including
+   * completions, are applied to the model; it is reloaded when requests are
+   * added or cancelled and when tasks are aborted or time out.
+   *
+   * @return the maximum age, or {@code 0} to reload on every wakeup
+   */
+  public long getActionSchedulerStageModelMaxAge() {
+    return Long.parseLong(properties.getProperty(
+        ACTION_SCHEDULER_STAGE_MODEL_MAX_AGE_KEY,
+        String.valueOf(ACTION_SCHEDULER_STAGE_MODEL_MAX_AGE_DEFAULT)));
+  }
+
+  /**
+   * Gets whether heartbeat reports are applied by a background processor in
+   * batches instead of on the agent request thread.
+   *
+   * @return {@code true} if heartbeat reports are processed asynchronously
+   */
+  public boolean isAgentHeartbeatAsync() {
+    return Boolean.parseBoolean(properties.getProperty(
+        AGENT_HEARTBEAT_ASYNC_KEY, AGENT_HEARTBEAT_ASYNC_DEFAULT));
+  }
+
+  /**
+   * @return max number of heartbeats waiting to be processed asynchronously,
+   *         default 10000; agents wait for room when the queue is full
+   */
+  public int getAgentHeartbeatAsyncQueueSize() {
+    return Integer.parseInt(properties.getProperty(
+        AGENT_HEARTBEAT_ASYNC_QUEUE_SIZE_KEY, String.valueOf(AGENT_HEARTBEAT_ASYNC_QUEUE_SIZE_DEFAULT)));
+  }
+
+  /**
+   * @return max number of heartbeats applied in a single batch, each in its
+   *         own transaction, default 100
+   */
+  public int getAgentHeartbeatAsyncBatchSize() {
+    return Integer.parseInt(properties.getProperty(
+        AGENT_HEARTBEAT_ASYNC_BATCH_SIZE_KEY, String.valueOf(AGENT_HEARTBEAT_ASYNC_BATCH_SIZE_DEFAULT)));
+  }
+
+  /**
+   * Gets whether the output of tasks which are in progress is stored as
+   * compressed, append-only chunks instead of being rewritten in full on the
+   * task on every report.
+   *
+   * @return {@code true} if in progress task output is chunked
+   */
+  public boolean isTaskOutputChunked() {
+    return Boolean.parseBoolean(properties.getProperty(
+        TASK_OUTPUT_CHUNKED_KEY, TASK_OUTPUT_CHUNKED_DEFAULT));
+  }
+
+  /**
+   * @return max number of uncompressed bytes stored in a single task output
+   *         chunk, default 65536
+   */
+  public int getTaskOutputChunkSize() {
+    return Integer.parseInt(properties.getProperty(
+        TASK_OUTPUT_CHUNK_SIZE_KEY, String.valueOf(TASK_OUTPUT_CHUNK_SIZE_DEFAULT)));
+  }
+
+  /**
+   * Gets the interval, in minutes, between runs of the history retention
+   * service.
+   *
+   * @return the interval, or {@code 0} if nothing is ever removed
+   */
+  public long getRetentionInterval() {
+    return Long.parseLong(properties.getProperty(
+        RETENTION_INTERVAL_KEY, String.valueOf(RETENTION_INTERVAL_DEFAULT)));
+  }
+
+  /**
+   * @return max number of requests or alerts removed in a single
+   *         transaction by the retention service, default 100
+   */
+  public int getRetentionBatchSize() {
+    return Integer.parseInt(properties.getProperty(
+        RETENTION_BATCH_SIZE_KEY, String.valueOf(RETENTION_BATCH_SIZE_DEFAULT)));
+  }
+
+  /**
+   * Gets the directory to which rows removed by the retention service are
+   * exported as compressed archives.
+   *
+   * @return the directory, or {@code null} if removed rows are not archived
+   */
+  public String getRetentionArchiveDir() {
+    return properties.getProperty(RETENTION_ARCHIVE_DIR_KEY);
+  }
+
+  /**
+   * @return the age, in days, after which completed requests are removed,
+   *         or {@code 0} to keep requests regardless of age
+   */
+  public int getRequestRetentionMaxAge() {
+    return Integer.parseInt(properties.getProperty(RETENTION_REQUESTS_MAX_AGE_KEY, "0"));
+  }
+
+  /**
+   * @return the number of most recent requests which are kept, or {@code 0}
+   *         to keep requests regardless of count
+   */
+  public int getRequestRetentionMaxCount() {
+    return Integer.parseInt(properties.getProperty(RETENTION_REQUESTS_MAX_COUNT_KEY, "0"));
+  }
+
+  /**
+   * Gets the comma separated task statuses which allow a request to be
+   * removed; a request is only removed if all of its tasks have one of them.
+   *
+   * @return the statuses, or {@code null} for all completed statuses
+   */
+  public String getRequestRetentionStatuses() {
+    return properties.getProperty(RETENTION_REQUESTS_STATUSES_KEY);
+  }
+
+  /**
+   * @return the age, in days, after which historical alerts are removed, or
+   *         {@code 0} to keep alerts regardless of age
+   */
+  public int getAlertRetentionMaxAge() {
+    return Integer.parseInt(properties.getProperty(RETENTION_ALERTS_MAX_AGE_KEY, "0"));
+  }
+
+  /**
+   * @return the number of most recent historical alerts which are kept, or
+   *         {@code 0} to keep alerts regardless of count
+   */
+  public int getAlertRetentionMaxCount() {
+    return Integer.parseInt(properties.getProperty(RETENTION_ALERTS_MAX_COUNT_KEY, "0"));
+  }
+
+  /**
+   * Gets the comma separated alert states which may be removed.
+   *
+   * @return the states, or {@code null} for all states
+   */
+  public String getAlertRetentionStates() {
+    return properties.getProperty(RETENTION_ALERTS_STATES_KEY);
+  }
+
+  /**
+   * @return true if metrics fetched by the JMX, Ganglia and Metrics Service
+   *         property providers should be shared between requests
+   */
+  public boolean isMetricsCacheEnabled() {
+    return "true".equalsIgnoreCase(properties.getProperty(
+        METRICS_CACHE_ENABLED_KEY, METRICS_CACHE_ENABLED_DEFAULT));
+  }
+
+  /**
+   * @return the time, in seconds, for which fetched metrics are served from
+   *         the metrics cache, default 10
+   */
+  public long getMetricsCacheTTL() {
+    return Long.parseLong(properties.getProperty(
+        METRICS_CACHE_TTL_KEY, String.valueOf(METRICS_CACHE_TTL_DEFAULT)));
+  }
+
+  /**
+   * @return the max number of entries in the metrics cache, default 10000
+   */
+  public long getMetricsCacheMaxEntries() {
+    return Long.parseLong(properties.getProperty(
+        METRICS_CACHE_MAX_ENTRIES_KEY, String.valueOf(METRICS_CACHE_MAX_ENTRIES_DEFAULT)));
+  }
+
+  /**
+   * @return the max number of threads used to run the property providers of
+   *         a request concurrently, default 32; 0 runs them one after another
+   */
+  public int getPropertyProviderThreadPoolSize() {
+    return Integer.parseInt(properties.getProperty(
+        PROPERTY_PROVIDER_THREADPOOL_SIZE_KEY, String.valueOf(PROPERTY_PROVIDER_THREADPOOL_SIZE_DEFAULT)));
+  }
+
+  /**
+   * @return the max number of property providers waiting for a thread,
+   *         default 1000; providers beyond this run on the request thread
+   */
+  public int getPropertyProviderThreadPoolQueueSize() {
+    return Integer.parseInt(properties.getProperty(
+        PROPERTY_PROVIDER_THREADPOOL_QUEUE_SIZE_KEY, String.valueOf(PROPERTY_PROVIDER_THREADPOOL_QUEUE_SIZE_DEFAULT)));
+  }
+
+  /**
+   * @return the time, in milliseconds, that a request waits for its property
+   *         providers to populate the resources, default 15000
+   */
+  public long getPropertyProviderTimeout() {
+    return Long.parseLong(properties.getProperty(
+        PROPERTY_PROVIDER_TIMEOUT_KEY, String.valueOf(PROPERTY_PROVIDER_TIMEOUT_DEFAULT)));
+  }
+
   /**
    * Get the view extraction thread pool max size.
    *
@@ -1326,6 +1635,30 @@ public class Configuration {
         "1800"));
   }
 
+  /**
+   * Gets the interval, in seconds, between flushes of in-memory host and host
+   * component state to the database.
+   *
+   * @return the flush interval, or {@code 0} if write-behind is disabled.
+   */
+  public long getStateWriteBehindInterval() {
+    return Long.parseLong(properties.getProperty(
+        SERVER_STATE_WRITE_BEHIND_INTERVAL_KEY,
+        String.valueOf(SERVER_STATE_WRITE_BEHIND_INTERVAL_DEFAULT)));
+  }
+
+  /**
+   * Gets the maximum number of dirty host and host component states written
+   * in a single transaction during a write-behind flush.
+   *
+   * @return the batch size, default 100
+   */
+  public int getStateWriteBehindBatchSize() {
+    return Integer.parseInt(properties.getProperty(
+        SERVER_STATE_WRITE_BEHIND_BATCH_SIZE_KEY,
+        String.valueOf(SERVER_STATE_WRITE_BEHIND_BATCH_SIZE_DEFAULT)));
+  }
+
   /**
    * Gets the location of the XML alert template file which contains the
    * velocity templates for outbound notifications.
@@ -24,6 +24,8 @@ import java.net.Authenticator;
 import java.net.BindException;
 import java.net.PasswordAuthentication;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.crypto.BadPaddingException;
 
@@ -38,6 +40,7 @@ import org.apache.ambari.server.api.AmbariPersistFilter;
 import org.apache.ambari.server.api.MethodOverrideFilter;
 import org.apache.ambari.server.api.rest.BootStrapResource;
 import org.apache.ambari.server.api.services.AmbariMetaInfo;
+import org.apache.ambari.server.api.services.BaseService;
 import org.apache.ambari.server.api.services.KeyService;
 import org.apache.ambari.server.api.services.PersistKeyValueImpl;
 import org.apache.ambari.server.api.services.PersistKeyValueService;
@@ -52,11 +55,13 @@ import org.apache.ambari.server.controller.internal.ClusterPrivilegeResourceProv
 import org.apache.ambari.server.controller.internal.ClusterResourceProvider;
 import org.apache.ambari.server.controller.internal.PermissionResourceProvider;
 import org.apache.ambari.server.controller.internal.PrivilegeResourceProvider;
+import org.apache.ambari.server.controller.internal.PropertyProviderExecutor;
 import org.apache.ambari.server.controller.internal.StackAdvisorResourceProvider;
 import org.apache.ambari.server.controller.internal.StackDefinedPropertyProvider;
 import org.apache.ambari.server.controller.internal.StackDependencyResourceProvider;
 import org.apache.ambari.server.controller.internal.UserPrivilegeResourceProvider;
 import org.apache.ambari.server.controller.internal.ViewPermissionResourceProvider;
+import org.apache.ambari.server.controller.metrics.MetricsCache;
 import org.apache.ambari.server.orm.GuiceJpaInitializer;
 import org.apache.ambari.server.orm.PersistenceType;
 import org.apache.ambari.server.orm.dao.BlueprintDAO;
@@ -385,6 +390,13 @@ public class AmbariServer {
       root.addServlet(resources, "/resources/*");
       resources.setInitOrder(6);
 
+      if (configs.isApiGzipped()) {
+        // compress API responses for clients which send Accept-Encoding: gzip;
+        // the entity is compressed as it is written
+        sh.setInitParameter("com.sun.jersey.spi.container.ContainerResponseFilters",
+                    "com.sun.jersey.api.container.filter.GZIPContentEncodingFilter");
+      }
+
       if (configs.csrfProtectionEnabled()) {
         sh.setInitParameter("com.sun.jersey.spi.container.ContainerRequestFilters",
                     "org.apache.ambari.server.api.AmbariCsrfProtectionFilter");
@@ -487,6 +499,14 @@ public class AmbariServer {
       serviceManager.startAsync();
       LOG.info("********* Started Services **********");
 
+      // stop services on JVM exit so that any write-behind state is flushed
+      Runtime.getRuntime().addShutdownHook(new Thread("ambari-services-shutdown") {
+        @Override
+        public void run() {
+          stopServices();
+        }
+      });
+
       server.join();
       LOG.info("Joined the Server");
     } catch (BadPaddingException bpe){
@@ -598,6 +618,30 @@ public class AmbariServer {
     } catch (Exception e) {
       LOG.error("Error stopping the server", e);
     }
+
+    stopServices();
+  }
+
+  /**
+   * Stops the background heartbeat processing and all registered Ambari
+   * services, waiting a bounded amount of time for them to finish their
+   * shutdown work.
+   */
+  private void stopServices() {
+    // apply the queued heartbeat reports before any write-behind state is flushed
+    if (null != injector) {
+      injector.getInstance(HeartBeatHandler.class).stop();
+    }
+
+    if (null == serviceManager) {
+      return;
+    }
+
+    try {
+      serviceManager.stopAsync().awaitStopped(30, TimeUnit.SECONDS);
+    } catch (TimeoutException e) {
+      LOG.warn("Timed out waiting for services to stop", e);
+    }
   }
 
   /**
@@ -615,6 +659,9 @@ public class AmbariServer {
     CertificateSign.init(injector.getInstance(CertificateManager.class));
     GetResource.init(injector.getInstance(ResourceManager.class));
     PersistKeyValueService.init(injector.getInstance(PersistKeyValueImpl.class));
+    BaseService.init(injector.getInstance(Configuration.class));
+    MetricsCache.init(injector.getInstance(Configuration.class));
+    PropertyProviderExecutor.init(injector.getInstance(Configuration.class));
     KeyService.init(injector.getInstance(PersistKeyValueImpl.class));
     BootStrapResource.init(injector.getInstance(BootStrapImpl.class));
     StackAdvisorResourceProvider.init(injector.getInstance(StackAdvisorHelper.class));
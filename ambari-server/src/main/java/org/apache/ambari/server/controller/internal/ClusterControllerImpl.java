@@ -18,6 +18,8 @@
 
 package org.apache.ambari.server.controller.internal;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -28,9 +30,11 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.ambari.server.controller.predicate.CompiledPredicate;
 import org.apache.ambari.server.controller.spi.ClusterController;
 import org.apache.ambari.server.controller.spi.ExtendedResourceProvider;
 import org.apache.ambari.server.controller.spi.NoSuchParentResourceException;
@@ -89,6 +93,12 @@ public class ClusterControllerImpl implements ClusterController {
   private final Map<Resource.Type, Schema> schemas =
       new HashMap<Resource.Type, Schema>();
 
+  /**
+   * Map of the key property ids used to sort resources keyed by resource type.
+   */
+  private final Map<Resource.Type, String[]> sortKeyPropertyIds =
+      new ConcurrentHashMap<Resource.Type, String[]>();
+
   /**
    * Resource comparator.
    */
@@ -139,14 +149,14 @@ public class ClusterControllerImpl implements ClusterController {
                                          Set<Resource> resources,
                                          Request request,
                                          Predicate predicate) throws SystemException {
-    Set<Resource> keepers = resources;
-    List<PropertyProvider> propertyProviders = ensurePropertyProviders(type);
-    for (PropertyProvider propertyProvider : propertyProviders) {
+    List<PropertyProvider> requestPropertyProviders = new ArrayList<PropertyProvider>();
+    for (PropertyProvider propertyProvider : ensurePropertyProviders(type)) {
       if (providesRequestProperties(propertyProvider, request, predicate)) {
-        keepers = propertyProvider.populateResources(keepers, request, predicate);
+        requestPropertyProviders.add(propertyProvider);
       }
     }
-    return keepers;
+    return PropertyProviderExecutor.getInstance().populateResources(
+        requestPropertyProviders, resources, request, predicate);
   }
 
   @Override
@@ -172,7 +182,7 @@ public class ClusterControllerImpl implements ClusterController {
     ExtendedResourceProviderWrapper provider  = ensureResourceProviderWrapper(type);
 
     int totalCount = 0;
-    Set<Resource> resources = providerResources;
+    Collection<Resource> resources = providerResources;
 
     if (!providerResources.isEmpty()) {
       // determine if the provider has already paged & sorted the results
@@ -180,41 +190,33 @@ public class ClusterControllerImpl implements ClusterController {
       boolean providerAlreadySorted = queryResponse.isSortedResponse();
 
       // conditionally create a comparator if there is a sort
-      Comparator<Resource> resourceComparator = comparator;
+      ResourceComparator resourceComparator = comparator;
       if (null != sortRequest) {
         checkSortRequestProperties(sortRequest, type, provider);
         resourceComparator = new ResourceComparator(sortRequest);
       }
 
-      // if the provider did not already sort the set, then sort it based
-      // on the comparator
-      if (!providerAlreadySorted) {
-        TreeSet<Resource> sortedResources = new TreeSet<Resource>(
-            resourceComparator);
-
-        sortedResources.addAll(providerResources);
-        resources = sortedResources;
+      // if the provider already sorted the set then keep its order
+      if (providerAlreadySorted) {
+        resourceComparator = null;
       }
 
-      // start out assuming that the results are not paged and that
-      // the total count is the size of the provider resources
-      totalCount = resources.size();
-
-      // conditionally page the results
+      // conditionally page the results; only the resources needed for the
+      // page are sorted
       if (null != pageRequest && !providerAlreadyPaged) {
         switch (pageRequest.getStartingPoint()) {
           case Beginning:
             return getPageFromOffset(pageRequest.getPageSize(), 0, resources,
-                predicate, provider);
+                predicate, provider, resourceComparator);
           case End:
             return getPageToOffset(pageRequest.getPageSize(), -1, resources,
-                predicate, provider);
+                predicate, provider, resourceComparator);
           case OffsetStart:
             return getPageFromOffset(pageRequest.getPageSize(),
-                pageRequest.getOffset(), resources, predicate, provider);
+                pageRequest.getOffset(), resources, predicate, provider, resourceComparator);
           case OffsetEnd:
             return getPageToOffset(pageRequest.getPageSize(),
-                pageRequest.getOffset(), resources, predicate, provider);
+                pageRequest.getOffset(), resources, predicate, provider, resourceComparator);
           case PredicateStart:
           case PredicateEnd:
             // TODO : need to support the following cases for pagination
@@ -222,7 +224,18 @@ public class ClusterControllerImpl implements ClusterController {
           default:
             break;
         }
-      } else if (providerAlreadyPaged) {
+      }
+
+      // otherwise sort all of the resources
+      if (resourceComparator != null) {
+        resources = resourceComparator.sort(providerResources);
+      }
+
+      // start out assuming that the results are not paged and that
+      // the total count is the size of the provider resources
+      totalCount = resources.size();
+
+      if (providerAlreadyPaged) {
         totalCount = queryResponse.getTotalResourceCount();
       }
     }
@@ -585,24 +598,30 @@ public class ClusterControllerImpl implements ClusterController {
   /**
    * Get one page of resources from the given set of resources starting at the given offset.
    *
-   * @param pageSize   the page size
-   * @param offset     the offset
-   * @param resources  the set of resources
-   * @param predicate  the predicate
+   * @param pageSize    the page size
+   * @param offset      the offset
+   * @param resources   the set of resources
+   * @param predicate   the predicate
+   * @param comparator  the comparator used to sort the resources; null if the resources are already sorted
    *
    * @return a page response containing a page of resources
    */
   private PageResponse getPageFromOffset(int pageSize, int offset,
-      Set<Resource> resources,
+      Collection<Resource> resources,
                                          Predicate predicate,
-                                         ResourcePredicateEvaluator evaluator) {
+                                         ResourcePredicateEvaluator evaluator,
+                                         ResourceComparator comparator) {
 
     int currentOffset = 0;
     Resource previous      = null;
     Set<Resource> pageResources = new LinkedHashSet<Resource>();
     LinkedList<Resource> filteredResources =
       getEvaluatedResources(new ResourceIterable(resources, predicate, evaluator));
-    Iterator<Resource> iterator = filteredResources.iterator();
+
+    // only sort the resources up to and including the one following the page
+    List<Resource> sortedResources = comparator == null ? filteredResources :
+        comparator.sortFirst(filteredResources, (long) Math.max(offset, 0) + pageSize + 1);
+    Iterator<Resource> iterator = sortedResources.iterator();
 
     // skip till offset
     while (currentOffset < offset && iterator.hasNext()) {
@@ -626,24 +645,33 @@ public class ClusterControllerImpl implements ClusterController {
   /**
    * Get one page of resources from the given set of resources ending at the given offset.
    *
-   * @param pageSize   the page size
-   * @param offset     the offset; -1 indicates the end of the resource set
-   * @param resources  the set of resources
-   * @param predicate  the predicate
+   * @param pageSize    the page size
+   * @param offset      the offset; -1 indicates the end of the resource set
+   * @param resources   the set of resources
+   * @param predicate   the predicate
+   * @param comparator  the comparator used to sort the resources; null if the resources are already sorted
    *
    * @return a page response containing a page of resources
    */
   private PageResponse getPageToOffset(int pageSize, int offset,
-      Set<Resource> resources,
+      Collection<Resource> resources,
                                        Predicate predicate,
-                                       ResourcePredicateEvaluator evaluator) {
+                                       ResourcePredicateEvaluator evaluator,
+                                       ResourceComparator comparator) {
 
     int                currentOffset = resources.size() - 1;
     Resource           next          = null;
     List<Resource>     pageResources = new LinkedList<Resource>();
     LinkedList<Resource> filteredResources =
       getEvaluatedResources(new ResourceIterable(resources, predicate, evaluator));
-    Iterator<Resource> iterator = filteredResources.descendingIterator();
+
+    // only sort the resources from the one preceding the page to the end
+    LinkedList<Resource> sortedResources = filteredResources;
+    if (comparator != null) {
+      long skipped = offset == -1 ? 0 : Math.max(currentOffset - offset, 0);
+      sortedResources = comparator.sortLast(filteredResources, skipped + pageSize + 1);
+    }
+    Iterator<Resource> iterator = sortedResources.descendingIterator();
 
     if (offset != -1) {
       // skip till offset
@@ -684,7 +712,7 @@ public class ClusterControllerImpl implements ClusterController {
     /**
      * The resources to iterate over.
      */
-    private final Set<Resource> resources;
+    private final Collection<Resource> resources;
 
     /**
      * The predicate used to filter the set.
@@ -706,13 +734,25 @@ public class ClusterControllerImpl implements ClusterController {
      * @param predicate  the predicate used to filter the set of resources
      * @param evaluator  the evaluator used to evaluate with the given predicate
      */
-    private ResourceIterable(Set<Resource> resources, Predicate predicate,
+    private ResourceIterable(Collection<Resource> resources, Predicate predicate,
                              ResourcePredicateEvaluator evaluator) {
       this.resources = resources;
-      this.predicate = predicate;
+      this.predicate = isDefaultEvaluator(evaluator) ? CompiledPredicate.compile(predicate) : predicate;
       this.evaluator = evaluator;
     }
 
+    /**
+     * Determine whether the given evaluator simply evaluates the predicate,
+     * in which case the predicate is compiled once for all of the resources.
+     * Other evaluators may depend on the structure of the predicate.
+     */
+    private static boolean isDefaultEvaluator(ResourcePredicateEvaluator evaluator) {
+      if (evaluator instanceof ExtendedResourceProviderWrapper) {
+        evaluator = ((ExtendedResourceProviderWrapper) evaluator).evaluator;
+      }
+      return evaluator == DEFAULT_RESOURCE_PREDICATE_EVALUATOR;
+    }
+
     // ----- Iterable --------------------------------------------------------
 
     @Override
@@ -755,7 +795,7 @@ public class ClusterControllerImpl implements ClusterController {
      * @param predicate  the predicate used to filter the set of resources
      * @param evaluator  the evaluator used to evaluate with the given predicate
      */
-    private ResourceIterator(Set<Resource> resources, Predicate predicate,
+    private ResourceIterator(Collection<Resource> resources, Predicate predicate,
                              ResourcePredicateEvaluator evaluator) {
       iterator     = resources.iterator();
       this.predicate    = predicate;
@@ -807,13 +847,25 @@ public class ClusterControllerImpl implements ClusterController {
 
   // ----- ResourceComparator inner class ------------------------------------
 
+  /**
+   * Compares resources by type, by the properties of the sort request, by the
+   * key properties of the resource type and finally by the resource strings.
+   * To sort many resources the compared values of each resource are read once
+   * into a {@link SortKey}.
+   */
   protected class ResourceComparator implements Comparator<Resource> {
     SortRequest sortRequest;
 
+    /**
+     * The properties to sort by.
+     */
+    private final List<SortRequestProperty> sortProperties;
+
     /**
      * Default comparator
      */
     protected ResourceComparator() {
+      sortProperties = Collections.emptyList();
     }
 
     /**
@@ -821,48 +873,118 @@ public class ClusterControllerImpl implements ClusterController {
      * @param sortRequest @SortRequest to sort by.
      */
     protected ResourceComparator(SortRequest sortRequest) {
-      this.sortRequest = sortRequest;
+      this.sortRequest    = sortRequest;
+      this.sortProperties = new ArrayList<SortRequestProperty>(sortRequest.getProperties());
     }
 
     @Override
     public int compare(Resource resource1, Resource resource2) {
-      Type resourceType = resource1.getType();
+      return new SortKey(resource1).compareTo(new SortKey(resource2));
+    }
 
-      // compare based on resource type
-      int compVal = resourceType.compareTo(resource2.getType());
+    /**
+     * Sort the given resources.  Resources which compare as equal are only
+     * included once.
+     *
+     * @param resources  the resources to sort
+     *
+     * @return the sorted resources
+     */
+    protected LinkedList<Resource> sort(Collection<Resource> resources) {
+      List<SortKey> keys = new ArrayList<SortKey>(resources.size());
+      for (Resource resource : resources) {
+        keys.add(new SortKey(resource));
+      }
+      return getSortedResources(keys);
+    }
 
-      // compare based on requested properties
-      if (compVal == 0 && sortRequest != null) {
-        for (SortRequestProperty property : sortRequest.getProperties()) {
-          compVal = compareValues(
-            resource1.getPropertyValue(property.getPropertyId()),
-            resource2.getPropertyValue(property.getPropertyId()),
-            property.getOrder());
+    /**
+     * Get the given number of lowest resources in sorted order.  Only the
+     * selected resources are sorted; the others are discarded using a bounded
+     * heap.
+     *
+     * @param resources  the resources to select from
+     * @param count      the number of resources to select
+     *
+     * @return the sorted lowest resources
+     */
+    protected LinkedList<Resource> sortFirst(Collection<Resource> resources, long count) {
+      return select(resources, count, Collections.<SortKey>reverseOrder());
+    }
 
-          if (compVal != 0) {
-            return compVal;
-          }
+    /**
+     * Get the given number of highest resources in sorted order.  Only the
+     * selected resources are sorted; the others are discarded using a bounded
+     * heap.
+     *
+     * @param resources  the resources to select from
+     * @param count      the number of resources to select
+     *
+     * @return the sorted highest resources
+     */
+    protected LinkedList<Resource> sortLast(Collection<Resource> resources, long count) {
+      return select(resources, count, null);
+    }
+
+    // select the resources which sort first with the given heap order; the
+    // head of the heap is the selected resource which is discarded next
+    private LinkedList<Resource> select(Collection<Resource> resources, long count,
+                                        Comparator<SortKey> heapOrder) {
+      if (count >= resources.size()) {
+        return sort(resources);
+      }
+      if (count <= 0) {
+        return new LinkedList<Resource>();
+      }
+
+      PriorityQueue<SortKey> heap = new PriorityQueue<SortKey>((int) count + 1, heapOrder);
+      for (Resource resource : resources) {
+        SortKey key = new SortKey(resource);
+        if (heap.size() < count) {
+          heap.add(key);
+        } else if (compareHeapOrder(heapOrder, heap.peek(), key) < 0) {
+          heap.poll();
+          heap.add(key);
         }
       }
+      return getSortedResources(new ArrayList<SortKey>(heap));
+    }
+
+    private int compareHeapOrder(Comparator<SortKey> heapOrder, SortKey key1, SortKey key2) {
+      return heapOrder == null ? key1.compareTo(key2) : heapOrder.compare(key1, key2);
+    }
 
-      // compare based on resource key properties
-      if (compVal == 0) {
-        Schema schema = getSchema(resourceType);
+    private LinkedList<Resource> getSortedResources(List<SortKey> keys) {
+      Collections.sort(keys);
+
+      LinkedList<Resource> sortedResources = new LinkedList<Resource>();
+      SortKey previous = null;
+      for (SortKey key : keys) {
+        if (previous == null || key.compareTo(previous) != 0) {
+          sortedResources.add(key.resource);
+        }
+        previous = key;
+      }
+      return sortedResources;
+    }
+
+    // get the key property ids used to sort resources of the given type
+    private String[] getKeyPropertyIds(Type resourceType) {
+      String[] keyPropertyIds = sortKeyPropertyIds.get(resourceType);
+      if (keyPropertyIds == null) {
+        Schema       schema = getSchema(resourceType);
+        List<String> ids    = new ArrayList<String>();
 
         for (Type type : Type.values()) {
           String keyPropertyId = schema.getKeyPropertyId(type);
           if (keyPropertyId != null) {
-            compVal = compareValues(resource1.getPropertyValue(keyPropertyId),
-                                    resource2.getPropertyValue(keyPropertyId));
-            if (compVal != 0 ) {
-              return compVal;
-            }
+            ids.add(keyPropertyId);
           }
         }
+        keyPropertyIds = ids.toArray(new String[ids.size()]);
+        sortKeyPropertyIds.put(resourceType, keyPropertyIds);
       }
-
-      // compare based on the resource strings
-      return resource1.toString().compareTo(resource2.toString());
+      return keyPropertyIds;
     }
 
     // compare two values and account for null
@@ -891,6 +1013,78 @@ public class ClusterControllerImpl implements ClusterController {
         return -1 * compareValues(val1, val2);
       }
     }
+
+
+    // ----- inner class : SortKey -------------------------------------------
+
+    /**
+     * A resource and the values it is compared by.  The resource string is
+     * only built if the values of two resources are equal.
+     */
+    private class SortKey implements Comparable<SortKey> {
+
+      /**
+       * The resource.
+       */
+      private final Resource resource;
+
+      /**
+       * The values of the sort request properties followed by the values of
+       * the key properties.
+       */
+      private final Object[] values;
+
+      /**
+       * The resource string; null until it is needed.
+       */
+      private String resourceString = null;
+
+      private SortKey(Resource resource) {
+        this.resource = resource;
+
+        String[] keyPropertyIds = getKeyPropertyIds(resource.getType());
+
+        values = new Object[sortProperties.size() + keyPropertyIds.length];
+
+        int i = 0;
+        for (SortRequestProperty property : sortProperties) {
+          values[i++] = resource.getPropertyValue(property.getPropertyId());
+        }
+        for (String keyPropertyId : keyPropertyIds) {
+          values[i++] = resource.getPropertyValue(keyPropertyId);
+        }
+      }
+
+      @Override
+      public int compareTo(SortKey other) {
+        // compare based on resource type
+        int compVal = resource.getType().compareTo(other.resource.getType());
+        if (compVal != 0) {
+          return compVal;
+        }
+
+        // compare based on requested properties and then on resource key properties
+        int sortPropertyCount = sortProperties.size();
+        for (int i = 0; i < values.length; i++) {
+          compVal = i < sortPropertyCount ?
+              compareValues(values[i], other.values[i], sortProperties.get(i).getOrder()) :
+              compareValues(values[i], other.values[i]);
+          if (compVal != 0) {
+            return compVal;
+          }
+        }
+
+        // compare based on the resource strings
+        return getResourceString().compareTo(other.getResourceString());
+      }
+
+      private String getResourceString() {
+        if (resourceString == null) {
+          resourceString = resource.toString();
+        }
+        return resourceString;
+      }
+    }
   }
 
 
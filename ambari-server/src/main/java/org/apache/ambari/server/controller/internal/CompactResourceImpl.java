@@ -0,0 +1,291 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.controller.internal;
+
+import org.apache.ambari.server.controller.spi.Resource;
+import org.apache.ambari.server.controller.utilities.PropertyHelper;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Resource implementation which keeps the values of the properties of its
+ * {@link PropertyLayout} in a flat array of slots.  Properties which are not
+ * part of the layout are kept in category maps, as in {@link ResourceImpl}.
+ * <p/>
+ * A compact resource is not thread safe and, like a {@link ResourceImpl},
+ * must only be used by one thread at a time.  Note that reads are not free of
+ * side effects; the first call to {@link #getPropertiesMap()} moves the slot
+ * values into the category maps.  From then on the resource behaves like a
+ * {@link ResourceImpl} and changes made through the returned map, such as
+ * those made by the minimal renderer, are reflected in the resource.
+ * Property providers which run concurrently read a copy of the properties
+ * taken by their {@link StagedResource} views instead of the resource.
+ */
+public class CompactResourceImpl implements Resource {
+
+  /**
+   * Marks a slot which has been set to null.  Unset slots hold null.
+   */
+  private static final Object NULL_VALUE = new Object();
+
+  /**
+   * The resource type.
+   */
+  private final Type type;
+
+  /**
+   * The layout of the slots.
+   */
+  private final PropertyLayout layout;
+
+  /**
+   * The slot values; null once the properties map has been built.
+   */
+  private Object[] values;
+
+  /**
+   * The map of property maps keyed by property category.  Holds the
+   * properties which have no slot until the properties map is built.
+   */
+  private Map<String, Map<String, Object>> propertiesMap = null;
+
+
+  // ----- Constructors ------------------------------------------------------
+
+  /**
+   * Create a resource of the given type using the layout of the schema
+   * property ids of the type.
+   *
+   * @param type  the resource type
+   */
+  public CompactResourceImpl(Type type) {
+    this(type, PropertyLayout.forType(type));
+  }
+
+  /**
+   * Create a resource of the given type using the given layout.
+   *
+   * @param type    the resource type
+   * @param layout  the property layout
+   */
+  public CompactResourceImpl(Type type, PropertyLayout layout) {
+    this.type   = type;
+    this.layout = layout;
+    this.values = new Object[layout.size()];
+  }
+
+
+  // ----- Resource ----------------------------------------------------------
+
+  @Override
+  public Type getType() {
+    return type;
+  }
+
+  @Override
+  public Map<String, Map<String, Object>> getPropertiesMap() {
+    if (values != null) {
+      Map<String, Map<String, Object>> map = getOverflowMap();
+      for (int slot = 0; slot < values.length; slot++) {
+        Object value = values[slot];
+        if (value != null) {
+          getCategoryMap(map, layout.getCategory(slot)).put(layout.getName(slot),
+              value == NULL_VALUE ? null : value);
+        }
+      }
+      values = null;
+    }
+    return getOverflowMap();
+  }
+
+  @Override
+  public void setProperty(String id, Object value) {
+    int slot = values == null ? -1 : layout.getSlot(id);
+    if (slot == -1) {
+      String categoryKey = getCategoryKey(PropertyHelper.getPropertyCategory(id));
+      getCategoryMap(getOverflowMap(), categoryKey).put(PropertyHelper.getPropertyName(id), value);
+    } else {
+      values[slot] = value == null ? NULL_VALUE : value;
+    }
+  }
+
+  @Override
+  public void addCategory(String id) {
+    Map<String, Map<String, Object>> map = getOverflowMap();
+    String categoryKey = getCategoryKey(id);
+
+    if (!map.containsKey(categoryKey)) {
+      map.put(categoryKey, new HashMap<String, Object>());
+    }
+  }
+
+  @Override
+  public Object getPropertyValue(String id) {
+    if (values != null) {
+      int slot = layout.getSlot(id);
+      if (slot != -1) {
+        Object value = values[slot];
+        return value == NULL_VALUE ? null : value;
+      }
+    }
+
+    if (propertiesMap == null) {
+      return null;
+    }
+    Map<String, Object> properties = propertiesMap.get(getCategoryKey(PropertyHelper.getPropertyCategory(id)));
+
+    return properties == null ?
+        null : properties.get(PropertyHelper.getPropertyName(id));
+  }
+
+
+  // ----- CompactResourceImpl -----------------------------------------------
+
+  /**
+   * Get the layout of the slots of this resource.
+   *
+   * @return the property layout
+   */
+  public PropertyLayout getLayout() {
+    return layout;
+  }
+
+  /**
+   * Get the value of the property with the given slot of the layout.  This
+   * allows callers which look up the same property of many resources to
+   * resolve the slot once.
+   *
+   * @param slot  the slot index
+   *
+   * @return the property value; null if the property is not set
+   */
+  public Object getPropertyValue(int slot) {
+    if (values != null) {
+      Object value = values[slot];
+      return value == NULL_VALUE ? null : value;
+    }
+
+    if (propertiesMap == null) {
+      return null;
+    }
+    Map<String, Object> properties = propertiesMap.get(layout.getCategory(slot));
+
+    return properties == null ?
+        null : properties.get(layout.getName(slot));
+  }
+
+
+  // ----- Object overrides --------------------------------------------------
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+
+    sb.append("Resource : ").append(type).append("\n");
+    sb.append("Properties:\n");
+    sb.append(getSnapshot());
+
+    return sb.toString();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    CompactResourceImpl resource = (CompactResourceImpl) o;
+
+    return type == resource.type && getSnapshot().equals(resource.getSnapshot());
+  }
+
+  @Override
+  public int hashCode() {
+    int result = 0;
+    if (values != null) {
+      for (int slot = 0; slot < values.length; slot++) {
+        Object value = values[slot];
+        if (value != null) {
+          result += getPropertyHash(layout.getCategory(slot), layout.getName(slot),
+              value == NULL_VALUE ? null : value);
+        }
+      }
+    }
+    if (propertiesMap != null) {
+      for (Map.Entry<String, Map<String, Object>> categoryEntry : propertiesMap.entrySet()) {
+        for (Map.Entry<String, Object> propertyEntry : categoryEntry.getValue().entrySet()) {
+          result += getPropertyHash(categoryEntry.getKey(), propertyEntry.getKey(), propertyEntry.getValue());
+        }
+      }
+    }
+    return 31 * type.hashCode() + result;
+  }
+
+
+  // ----- utility methods ---------------------------------------------------
+
+  /**
+   * Get a copy of all of the properties keyed by category without building
+   * the properties map of this resource.
+   */
+  Map<String, Map<String, Object>> getSnapshot() {
+    Map<String, Map<String, Object>> snapshot = new TreeMap<String, Map<String, Object>>();
+    if (values != null) {
+      for (int slot = 0; slot < values.length; slot++) {
+        Object value = values[slot];
+        if (value != null) {
+          getCategoryMap(snapshot, layout.getCategory(slot)).put(layout.getName(slot),
+              value == NULL_VALUE ? null : value);
+        }
+      }
+    }
+    if (propertiesMap != null) {
+      for (Map.Entry<String, Map<String, Object>> entry : propertiesMap.entrySet()) {
+        getCategoryMap(snapshot, entry.getKey()).putAll(entry.getValue());
+      }
+    }
+    return snapshot;
+  }
+
+  private Map<String, Map<String, Object>> getOverflowMap() {
+    if (propertiesMap == null) {
+      propertiesMap = new TreeMap<String, Map<String, Object>>();
+    }
+    return propertiesMap;
+  }
+
+  private static Map<String, Object> getCategoryMap(Map<String, Map<String, Object>> map,
+                                                    String categoryKey) {
+    Map<String, Object> properties = map.get(categoryKey);
+    if (properties == null) {
+      properties = new TreeMap<String, Object>();
+      map.put(categoryKey, properties);
+    }
+    return properties;
+  }
+
+  private static int getPropertyHash(String categoryKey, String name, Object value) {
+    return (31 * categoryKey.hashCode() + name.hashCode()) ^ (value == null ? 0 : value.hashCode());
+  }
+
+  private String getCategoryKey(String category) {
+    return category == null ? "" : category;
+  }
+}
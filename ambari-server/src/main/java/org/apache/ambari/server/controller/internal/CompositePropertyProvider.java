@@ -0,0 +1,48 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.controller.internal;
+
+import org.apache.ambari.server.controller.spi.PropertyProvider;
+import org.apache.ambari.server.controller.spi.Resource;
+import org.apache.ambari.server.controller.spi.SystemException;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A property provider which populates resources with other property
+ * providers.  The {@link PropertyProviderExecutor} runs the delegates of a
+ * composite provider alongside the other providers of a request, rather than
+ * running them one after another on the thread of the composite provider.
+ * A composite provider keeps all of the resources, whichever resources its
+ * delegates keep.
+ */
+interface CompositePropertyProvider extends PropertyProvider {
+
+  /**
+   * Get the providers which populate the given resources.
+   *
+   * @param resources  the resources to populate
+   *
+   * @return the property providers
+   *
+   * @throws SystemException if the providers can't be determined
+   */
+  List<PropertyProvider> getPropertyProviders(Set<Resource> resources) throws SystemException;
+}
@@ -39,6 +39,7 @@ import org.apache.ambari.server.controller.HostRequest;
 import org.apache.ambari.server.controller.HostResponse;
 import org.apache.ambari.server.controller.MaintenanceStateHelper;
 import org.apache.ambari.server.controller.RequestStatusResponse;
+import org.apache.ambari.server.controller.spi.BatchedResourceProvider;
 import org.apache.ambari.server.controller.spi.NoSuchParentResourceException;
 import org.apache.ambari.server.controller.spi.NoSuchResourceException;
 import org.apache.ambari.server.controller.spi.Predicate;
@@ -71,7 +72,7 @@ import com.google.inject.assistedinject.AssistedInject;
 /**
  * Resource provider for host resources.
  */
-public class HostResourceProvider extends BaseBlueprintProcessor {
+public class HostResourceProvider extends BaseBlueprintProcessor implements BatchedResourceProvider {
 
   // ----- Property ID constants ---------------------------------------------
 
@@ -206,7 +207,7 @@ public class HostResourceProvider extends BaseBlueprintProcessor {
     Set<Resource> resources    = new HashSet<Resource>();
 
     for (HostResponse response : responses) {
-      Resource resource = new ResourceImpl(Resource.Type.Host);
+      Resource resource = new CompactResourceImpl(Resource.Type.Host);
 
       // TODO : properly handle more than one cluster
       if (response.getClusterName() != null
@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.controller.internal;
+
+import org.apache.ambari.server.controller.spi.Resource;
+import org.apache.ambari.server.controller.utilities.PropertyHelper;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Assigns a fixed slot to each property id of a resource schema.  The property
+ * ids are split into category and name once, when the layout is created, so
+ * that resources using the layout don't need to split them on every set.
+ * A layout is immutable and may be shared by any number of resources.
+ */
+public class PropertyLayout {
+
+  /**
+   * Layouts built from the property ids of a resource type, keyed by type.
+   */
+  private static final ConcurrentMap<Resource.Type, PropertyLayout> layouts =
+      new ConcurrentHashMap<Resource.Type, PropertyLayout>();
+
+  /**
+   * Slot indexes keyed by property id.
+   */
+  private final Map<String, Integer> slots;
+
+  /**
+   * The category key of each slot; the empty string for properties which
+   * have no category.
+   */
+  private final String[] categories;
+
+  /**
+   * The property name of each slot.
+   */
+  private final String[] names;
+
+
+  // ----- Constructors ------------------------------------------------------
+
+  /**
+   * Create a layout for the given property ids.  Property ids which contain
+   * arguments (e.g. {@code metrics/$1/value}) are not given a slot.
+   *
+   * @param propertyIds  the property ids
+   */
+  public PropertyLayout(Collection<String> propertyIds) {
+    // sort the ids so that equal id sets always give the same slots
+    Collection<String> ids = new TreeSet<String>();
+    for (String propertyId : propertyIds) {
+      if (propertyId != null && !PropertyHelper.containsArguments(propertyId)) {
+        ids.add(propertyId);
+      }
+    }
+
+    Map<String, Integer> slots = new HashMap<String, Integer>(ids.size() * 2);
+    categories = new String[ids.size()];
+    names      = new String[ids.size()];
+
+    int slot = 0;
+    for (String propertyId : ids) {
+      String category  = PropertyHelper.getPropertyCategory(propertyId);
+      categories[slot] = category == null ? "" : category.intern();
+      names[slot]      = PropertyHelper.getPropertyName(propertyId).intern();
+      slots.put(propertyId, slot++);
+    }
+    this.slots = Collections.unmodifiableMap(slots);
+  }
+
+
+  // ----- PropertyLayout ----------------------------------------------------
+
+  /**
+   * Get the layout of the schema property ids of the given resource type.
+   *
+   * @param type  the resource type
+   *
+   * @return the layout for the type
+   */
+  public static PropertyLayout forType(Resource.Type type) {
+    PropertyLayout layout = layouts.get(type);
+    if (layout == null) {
+      layout = new PropertyLayout(PropertyHelper.getPropertyIds(type));
+      PropertyLayout existing = layouts.putIfAbsent(type, layout);
+      if (existing != null) {
+        layout = existing;
+      }
+    }
+    return layout;
+  }
+
+  /**
+   * Get the slot of the given property id.
+   *
+   * @param propertyId  the property id
+   *
+   * @return the slot index or -1 if the property id has no slot
+   */
+  public int getSlot(String propertyId) {
+    Integer slot = slots.get(propertyId);
+    return slot == null ? -1 : slot;
+  }
+
+  /**
+   * Get the number of slots.
+   *
+   * @return the number of slots
+   */
+  public int size() {
+    return names.length;
+  }
+
+  /**
+   * Get the category key of the given slot.
+   *
+   * @param slot  the slot index
+   *
+   * @return the category key; the empty string if the property has no category
+   */
+  public String getCategory(int slot) {
+    return categories[slot];
+  }
+
+  /**
+   * Get the property name of the given slot.
+   *
+   * @param slot  the slot index
+   *
+   * @return the property name
+   */
+  public String getName(int slot) {
+    return names[slot];
+  }
+}
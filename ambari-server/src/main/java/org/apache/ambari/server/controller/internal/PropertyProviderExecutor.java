@@ -0,0 +1,519 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.controller.internal;
+
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.controller.spi.Predicate;
+import org.apache.ambari.server.controller.spi.PropertyProvider;
+import org.apache.ambari.server.controller.spi.Request;
+import org.apache.ambari.server.controller.spi.Resource;
+import org.apache.ambari.server.controller.spi.SystemException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the property providers which populate a set of resources.
+ * <p/>
+ * Without a thread pool the providers run one after another on the calling
+ * thread, each populating the resources kept by the previous one.  With a
+ * thread pool the providers run concurrently, each populating its own
+ * {@link StagedResource} views of all of the resources, and the calling
+ * thread applies the views of each provider as it completes.  All of the
+ * providers share one deadline; the properties of a provider which misses it
+ * are left out and it is cancelled.  The resources kept are those kept by all
+ * of the providers which completed.  Providers are expected to return the
+ * resources they were given.
+ * <p/>
+ * The delegates of a {@link CompositePropertyProvider}, such as the stack
+ * defined property provider, are determined on the calling thread and run
+ * alongside the other providers.  A provider which misses the deadline may
+ * not stop when it is cancelled; its views are detached so that it can't
+ * write to them any more, and it only ever reads the copies of the resources
+ * taken on the calling thread.
+ * <p/>
+ * The time spent by each provider class is exposed over JMX.  The executor
+ * runs the providers one after another until {@link #init(Configuration)} is
+ * called.
+ */
+public class PropertyProviderExecutor implements PropertyProviderExecutorMXBean {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PropertyProviderExecutor.class);
+
+  private static final String MBEAN_NAME = "org.apache.ambari:type=PropertyProviderExecutor";
+
+  private static final long THREAD_POOL_TIMEOUT_MILLIS = 60000L;
+
+  /**
+   * The shared instance.
+   */
+  private static volatile PropertyProviderExecutor instance = new PropertyProviderExecutor(null, 0L);
+
+  /**
+   * Set while a provider runs on a pool thread.  Providers which populate
+   * resources through the executor from a pool thread run their delegates
+   * one after another so that pool threads never wait for queued tasks.
+   */
+  private static final ThreadLocal<Boolean> POOL_THREAD = new ThreadLocal<Boolean>();
+
+  /**
+   * The thread pool; null if the providers run one after another.
+   */
+  private final ExecutorService executorService;
+
+  /**
+   * The time in milliseconds to wait for the providers of a request.
+   */
+  private final long timeout;
+
+  /**
+   * The statistics of each provider class keyed by class name.
+   */
+  private final ConcurrentMap<String, ProviderStats> providerStats =
+      new ConcurrentHashMap<String, ProviderStats>();
+
+
+  // ----- Constructors ------------------------------------------------------
+
+  /**
+   * Create an executor.
+   *
+   * @param executorService  the thread pool; null to run the providers one after another
+   * @param timeout          the time in milliseconds to wait for the providers of a request
+   */
+  PropertyProviderExecutor(ExecutorService executorService, long timeout) {
+    this.executorService = executorService;
+    this.timeout         = timeout;
+  }
+
+
+  // ----- PropertyProviderExecutor ------------------------------------------
+
+  /**
+   * Create the shared instance from the given configuration and register it
+   * with the platform MBean server.
+   *
+   * @param configuration  the configuration
+   */
+  public static synchronized void init(Configuration configuration) {
+    ExecutorService executorService = null;
+
+    int threadPoolSize = configuration.getPropertyProviderThreadPoolSize();
+    if (threadPoolSize > 0) {
+      ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+          threadPoolSize,
+          threadPoolSize,
+          THREAD_POOL_TIMEOUT_MILLIS,
+          TimeUnit.MILLISECONDS,
+          new LinkedBlockingQueue<Runnable>(configuration.getPropertyProviderThreadPoolQueueSize()),
+          new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, "property-provider-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      threadPoolExecutor.allowCoreThreadTimeOut(true);
+      executorService = threadPoolExecutor;
+    }
+
+    PropertyProviderExecutor executor =
+        new PropertyProviderExecutor(executorService, configuration.getPropertyProviderTimeout());
+
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(MBEAN_NAME);
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+      server.registerMBean(new StandardMBean(executor, PropertyProviderExecutorMXBean.class, true), name);
+    } catch (Exception exception) {
+      LOG.warn("Unable to register the property provider metrics", exception);
+    }
+
+    PropertyProviderExecutor previous = instance;
+    instance = executor;
+
+    if (previous.executorService != null) {
+      previous.executorService.shutdown();
+    }
+  }
+
+  /**
+   * Get the shared instance.
+   *
+   * @return the property provider executor
+   */
+  public static PropertyProviderExecutor getInstance() {
+    return instance;
+  }
+
+  /**
+   * Populate the given resources with the given property providers.
+   *
+   * @param providers  the property providers
+   * @param resources  the resources to populate
+   * @param request    the request
+   * @param predicate  the predicate
+   *
+   * @return the populated resources which were kept by the providers
+   *
+   * @throws SystemException if a provider fails or the calling thread is interrupted
+   */
+  public Set<Resource> populateResources(List<PropertyProvider> providers, Set<Resource> resources,
+                                         Request request, Predicate predicate)
+      throws SystemException {
+
+    if (executorService == null || resources.isEmpty() || POOL_THREAD.get() != null) {
+      Set<Resource> keepers = resources;
+      for (PropertyProvider provider : providers) {
+        keepers = populate(provider, keepers, request, predicate);
+      }
+      return keepers;
+    }
+
+    // run the delegates of composite providers instead, they keep all of the resources
+    List<PropertyProvider> flattened = new ArrayList<PropertyProvider>(providers.size());
+    List<Boolean>          keepAll   = new ArrayList<Boolean>(providers.size());
+    for (PropertyProvider provider : providers) {
+      if (provider instanceof CompositePropertyProvider) {
+        for (PropertyProvider delegate : ((CompositePropertyProvider) provider).getPropertyProviders(resources)) {
+          flattened.add(delegate);
+          keepAll.add(Boolean.TRUE);
+        }
+      } else {
+        flattened.add(provider);
+        keepAll.add(Boolean.FALSE);
+      }
+    }
+
+    if (flattened.size() < 2) {
+      Set<Resource> keepers = resources;
+      for (int i = 0; i < flattened.size(); i++) {
+        Set<Resource> providerKeepers = populate(flattened.get(i), keepers, request, predicate);
+        if (!keepAll.get(i)) {
+          keepers = providerKeepers;
+        }
+      }
+      return keepers;
+    }
+    return populateConcurrently(flattened, keepAll, resources, request, predicate);
+  }
+
+
+  // ----- PropertyProviderExecutorMXBean ------------------------------------
+
+  @Override
+  public boolean isConcurrent() {
+    return executorService != null;
+  }
+
+  @Override
+  public long getTimeout() {
+    return timeout;
+  }
+
+  @Override
+  public Map<String, Long> getPopulateCounts() {
+    Map<String, Long> counts = new TreeMap<String, Long>();
+    for (Map.Entry<String, ProviderStats> entry : providerStats.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().count.get());
+    }
+    return counts;
+  }
+
+  @Override
+  public Map<String, Long> getPopulateTimes() {
+    Map<String, Long> times = new TreeMap<String, Long>();
+    for (Map.Entry<String, ProviderStats> entry : providerStats.entrySet()) {
+      times.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue().time.get()));
+    }
+    return times;
+  }
+
+  @Override
+  public Map<String, Long> getMaxPopulateTimes() {
+    Map<String, Long> times = new TreeMap<String, Long>();
+    for (Map.Entry<String, ProviderStats> entry : providerStats.entrySet()) {
+      times.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue().maxTime.get()));
+    }
+    return times;
+  }
+
+  @Override
+  public Map<String, Long> getTimeoutCounts() {
+    Map<String, Long> counts = new TreeMap<String, Long>();
+    for (Map.Entry<String, ProviderStats> entry : providerStats.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().timeouts.get());
+    }
+    return counts;
+  }
+
+  @Override
+  public Map<String, Long> getFailureCounts() {
+    Map<String, Long> counts = new TreeMap<String, Long>();
+    for (Map.Entry<String, ProviderStats> entry : providerStats.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().failures.get());
+    }
+    return counts;
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private Set<Resource> populateConcurrently(List<PropertyProvider> providers, List<Boolean> keepAll,
+                                             Set<Resource> resources, Request request, Predicate predicate)
+      throws SystemException {
+
+    long start    = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+    // the providers read the properties of the resources from copies taken
+    // on this thread, as the resources may not be thread safe
+    Map<Resource, Map<String, Map<String, Object>>> snapshots =
+        new IdentityHashMap<Resource, Map<String, Map<String, Object>>>(resources.size());
+    for (Resource resource : resources) {
+      snapshots.put(resource, StagedResource.getSnapshot(resource));
+    }
+
+    List<PopulateTask> tasks    = new ArrayList<PopulateTask>(providers.size());
+    List<PopulateTask> rejected = new ArrayList<PopulateTask>();
+    for (int i = 0; i < providers.size(); i++) {
+      PopulateTask task = new PopulateTask(providers.get(i), keepAll.get(i), resources, snapshots,
+          request, predicate);
+      try {
+        executorService.execute(task.future);
+      } catch (RejectedExecutionException e) {
+        rejected.add(task);
+      }
+      tasks.add(task);
+    }
+
+    // the pool is saturated; populate on this thread
+    for (PopulateTask task : rejected) {
+      task.future.run();
+    }
+
+    Set<Resource> keepers = resources;
+    try {
+      for (PopulateTask task : tasks) {
+        Set<Resource> providerKeepers;
+        try {
+          providerKeepers = task.future.get(Math.max(deadline - System.nanoTime(), 0L), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+          task.cancel();
+          getProviderStats(task.provider).timeouts.incrementAndGet();
+          LOG.warn("Timed out waiting for " + task.provider.getClass().getName() + " to populate " +
+              resources.size() + " resources; its properties are left out.");
+          continue;
+        }
+        keepers = task.apply(keepers, providerKeepers);
+      }
+    } catch (ExecutionException e) {
+      cancel(tasks);
+      Throwable cause = e.getCause();
+      if (cause instanceof SystemException) {
+        throw (SystemException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new SystemException("Caught exception populating resources.", cause);
+    } catch (InterruptedException e) {
+      cancel(tasks);
+      Thread.currentThread().interrupt();
+      throw new SystemException("Interrupted while populating resources.", e);
+    }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Populated " + resources.size() + " resources with " + providers.size() +
+          " property providers in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+    return keepers;
+  }
+
+  // populate the given resources with the given provider and record the time spent
+  private Set<Resource> populate(PropertyProvider provider, Set<Resource> resources,
+                                 Request request, Predicate predicate)
+      throws SystemException {
+
+    ProviderStats stats  = getProviderStats(provider);
+    boolean       failed = true;
+    long          start  = System.nanoTime();
+    try {
+      Set<Resource> keepers = provider.populateResources(resources, request, predicate);
+      failed = false;
+      return keepers;
+    } finally {
+      stats.record(System.nanoTime() - start, failed);
+    }
+  }
+
+  private ProviderStats getProviderStats(PropertyProvider provider) {
+    String        name  = provider.getClass().getName();
+    ProviderStats stats = providerStats.get(name);
+    if (stats == null) {
+      stats = new ProviderStats();
+      ProviderStats existing = providerStats.putIfAbsent(name, stats);
+      if (existing != null) {
+        stats = existing;
+      }
+    }
+    return stats;
+  }
+
+  private static void cancel(List<PopulateTask> tasks) {
+    for (PopulateTask task : tasks) {
+      task.cancel();
+    }
+  }
+
+
+  // ----- inner class : PopulateTask ----------------------------------------
+
+  /**
+   * Populates views of the resources with one provider.
+   */
+  private class PopulateTask implements Callable<Set<Resource>> {
+    private final PropertyProvider provider;
+    private final boolean keepAll;
+    private final List<StagedResource> views;
+    private final Set<Resource> viewSet;
+    private final Request request;
+    private final Predicate predicate;
+    private final FutureTask<Set<Resource>> future;
+
+    private PopulateTask(PropertyProvider provider, boolean keepAll, Set<Resource> resources,
+                         Map<Resource, Map<String, Map<String, Object>>> snapshots,
+                         Request request, Predicate predicate) {
+      this.provider  = provider;
+      this.keepAll   = keepAll;
+      this.request   = request;
+      this.predicate = predicate;
+      this.views     = new ArrayList<StagedResource>(resources.size());
+      this.viewSet   = new LinkedHashSet<Resource>(resources.size() * 2);
+      this.future    = new FutureTask<Set<Resource>>(this);
+
+      for (Resource resource : resources) {
+        StagedResource view = new StagedResource(resource, snapshots.get(resource));
+        views.add(view);
+        viewSet.add(view);
+      }
+    }
+
+    @Override
+    public Set<Resource> call() throws SystemException {
+      POOL_THREAD.set(Boolean.TRUE);
+      try {
+        return populate(provider, viewSet, request, predicate);
+      } finally {
+        POOL_THREAD.remove();
+      }
+    }
+
+    // cancel the provider and drop whatever it still writes to the views
+    private void cancel() {
+      future.cancel(true);
+      for (StagedResource view : views) {
+        view.detach();
+      }
+    }
+
+    // apply the views to the resources and remove the resources dropped by the provider from the given keepers
+    private Set<Resource> apply(Set<Resource> keepers, Set<Resource> providerKeepers) {
+      Set<Resource> dropped = Collections.newSetFromMap(new IdentityHashMap<Resource, Boolean>());
+      for (StagedResource view : views) {
+        view.apply();
+        if (!keepAll && (providerKeepers == null || !providerKeepers.contains(view))) {
+          dropped.add(view.getResource());
+        }
+      }
+      if (dropped.isEmpty()) {
+        return keepers;
+      }
+
+      Set<Resource> resources = new LinkedHashSet<Resource>();
+      for (Resource resource : keepers) {
+        if (!dropped.contains(resource)) {
+          resources.add(resource);
+        }
+      }
+      return resources;
+    }
+  }
+
+
+  // ----- inner class : ProviderStats ---------------------------------------
+
+  /**
+   * The time spent populating resources by a provider class.
+   */
+  private static class ProviderStats {
+    private final AtomicLong count    = new AtomicLong();
+    private final AtomicLong time     = new AtomicLong();
+    private final AtomicLong maxTime  = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private void record(long nanos, boolean failed) {
+      count.incrementAndGet();
+      time.addAndGet(nanos);
+      if (failed) {
+        failures.incrementAndGet();
+      }
+
+      long max = maxTime.get();
+      while (nanos > max && !maxTime.compareAndSet(max, nanos)) {
+        max = maxTime.get();
+      }
+    }
+  }
+}
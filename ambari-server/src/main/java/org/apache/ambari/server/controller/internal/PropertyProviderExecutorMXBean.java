@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.controller.internal;
+
+import java.util.Map;
+
+/**
+ * The {@link PropertyProviderExecutorMXBean} exposes the time spent by each
+ * property provider class populating resources over JMX.
+ */
+public interface PropertyProviderExecutorMXBean {
+
+  /**
+   * @return {@code true} if the property providers of a request run
+   *         concurrently
+   */
+  boolean isConcurrent();
+
+  /**
+   * @return the time, in milliseconds, that a request waits for its property
+   *         providers
+   */
+  long getTimeout();
+
+  /**
+   * @return the number of times resources were populated, by provider class
+   */
+  Map<String, Long> getPopulateCounts();
+
+  /**
+   * @return the total time, in milliseconds, spent populating resources, by
+   *         provider class
+   */
+  Map<String, Long> getPopulateTimes();
+
+  /**
+   * @return the longest time, in milliseconds, spent populating resources, by
+   *         provider class
+   */
+  Map<String, Long> getMaxPopulateTimes();
+
+  /**
+   * @return the number of times a request stopped waiting for the provider,
+   *         by provider class
+   */
+  Map<String, Long> getTimeoutCounts();
+
+  /**
+   * @return the number of times the provider failed, by provider class
+   */
+  Map<String, Long> getFailureCounts();
+}
@@ -56,7 +56,7 @@ import static org.apache.ambari.server.controller.metrics.MetricsServiceProvider
  * metrics should be fetched.  It's okay to maintain state here since these
  * are done per-request.
  */
-public class StackDefinedPropertyProvider implements PropertyProvider {
+public class StackDefinedPropertyProvider implements CompositePropertyProvider {
   private static final Logger LOG = LoggerFactory.getLogger(StackDefinedPropertyProvider.class);
 
   @Inject
@@ -154,6 +154,18 @@ public class StackDefinedPropertyProvider implements PropertyProvider {
   public Set<Resource> populateResources(Set<Resource> resources,
       Request request, Predicate predicate) throws SystemException {
 
+    List<PropertyProvider> providers = getPropertyProviders(resources);
+
+    // the metrics, JMX and additional providers fetch from different sources,
+    // so they may run concurrently
+    PropertyProviderExecutor.getInstance().populateResources(providers, resources, request, predicate);
+
+    return resources;
+  }
+
+  @Override
+  public List<PropertyProvider> getPropertyProviders(Set<Resource> resources) throws SystemException {
+
     // only arrange for one instance of Ganglia and JMX instantiation
     Map<String, Map<String, PropertyInfo>> gangliaMap = new HashMap<String, Map<String, PropertyInfo>>();
     Map<String, Map<String, PropertyInfo>> jmxMap = new HashMap<String, Map<String, PropertyInfo>>();
@@ -198,6 +210,8 @@ public class StackDefinedPropertyProvider implements PropertyProvider {
         }
       }
 
+      List<PropertyProvider> providers = new ArrayList<PropertyProvider>();
+
       if (gangliaMap.size() > 0) {
         PropertyProvider propertyProvider =
           MetricsPropertyProvider.createInstance(type, gangliaMap,
@@ -205,9 +219,9 @@ public class StackDefinedPropertyProvider implements PropertyProvider {
             metricsServiceProvider, clusterNamePropertyId,
             hostNamePropertyId, componentNamePropertyId);
 
-        propertyProvider.populateResources(resources, request, predicate);
+        providers.add(propertyProvider);
       } else {
-        defaultGanglia.populateResources(resources, request, predicate);
+        providers.add(defaultGanglia);
       }
 
       if (jmxMap.size() > 0) {
@@ -216,21 +230,18 @@ public class StackDefinedPropertyProvider implements PropertyProvider {
             clusterNamePropertyId, hostNamePropertyId,
             componentNamePropertyId, resourceStatePropertyId);
 
-        jpp.populateResources(resources, request, predicate);
+        providers.add(jpp);
       } else {
-        defaultJmx.populateResources(resources, request, predicate);
+        providers.add(defaultJmx);
       }
 
-      for (PropertyProvider pp : additional) {
-        pp.populateResources(resources, request, predicate);
-      }
+      providers.addAll(additional);
+      return providers;
 
     } catch (Exception e) {
       e.printStackTrace();
       throw new SystemException("Error loading deferred resources", e);
     }
-
-    return resources;
   }
 
   @Override
@@ -0,0 +1,253 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.controller.internal;
+
+import org.apache.ambari.server.controller.spi.Resource;
+import org.apache.ambari.server.controller.utilities.PropertyHelper;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A view of a resource which keeps the properties set through it apart from
+ * the resource until they are applied.  Property providers which run
+ * concurrently each populate their own views of the same resources, so that
+ * the resources are only written by the thread which applies the views.
+ * <p/>
+ * Properties which have not been set through the view are read from a copy
+ * of the properties of the resource taken on the thread which creates the
+ * view, so that resources which are not thread safe, such as a
+ * {@link CompactResourceImpl}, are never read by the providers.  A view may
+ * be written by several threads, as the JMX property provider does.  Once a
+ * view is detached the properties set through it are dropped.  Views are
+ * only equal to themselves.
+ */
+class StagedResource implements Resource {
+
+  /**
+   * Marks a property which has been set to null.
+   */
+  private static final Object NULL_VALUE = new Object();
+
+  /**
+   * The underlying resource.
+   */
+  private final Resource resource;
+
+  /**
+   * The properties of the resource when the view was created keyed by
+   * category; not modified.
+   */
+  private final Map<String, Map<String, Object>> snapshot;
+
+  /**
+   * The properties set through this view keyed by property id.
+   */
+  private final Map<String, Object> properties = new ConcurrentHashMap<String, Object>();
+
+  /**
+   * The categories added through this view.
+   */
+  private final Set<String> categories =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  /**
+   * Set once the view is detached.
+   */
+  private volatile boolean detached = false;
+
+
+  // ----- Constructors ------------------------------------------------------
+
+  /**
+   * Create a view of the given resource.
+   *
+   * @param resource  the underlying resource
+   */
+  StagedResource(Resource resource) {
+    this(resource, getSnapshot(resource));
+  }
+
+  /**
+   * Create a view of the given resource which reads the properties of the
+   * resource from the given copy.  Views of the same resource may share a
+   * copy.
+   *
+   * @param resource  the underlying resource
+   * @param snapshot  the copy of the properties of the resource, see {@link #getSnapshot(Resource)}
+   */
+  StagedResource(Resource resource, Map<String, Map<String, Object>> snapshot) {
+    this.resource = resource;
+    this.snapshot = snapshot;
+  }
+
+
+  // ----- Resource ----------------------------------------------------------
+
+  @Override
+  public Type getType() {
+    return resource.getType();
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Returns a copy of the properties of the resource merged with the
+   * properties set through this view.  Changes made to the copy are not
+   * applied.
+   */
+  @Override
+  public Map<String, Map<String, Object>> getPropertiesMap() {
+    Map<String, Map<String, Object>> propertiesMap = new TreeMap<String, Map<String, Object>>();
+
+    for (Map.Entry<String, Map<String, Object>> entry : snapshot.entrySet()) {
+      propertiesMap.put(entry.getKey(), new TreeMap<String, Object>(entry.getValue()));
+    }
+    for (String category : categories) {
+      getCategoryMap(propertiesMap, category);
+    }
+    for (Map.Entry<String, Object> entry : properties.entrySet()) {
+      String propertyId = entry.getKey();
+      Object value      = entry.getValue();
+
+      getCategoryMap(propertiesMap, PropertyHelper.getPropertyCategory(propertyId)).put(
+          PropertyHelper.getPropertyName(propertyId), value == NULL_VALUE ? null : value);
+    }
+    return propertiesMap;
+  }
+
+  @Override
+  public void setProperty(String id, Object value) {
+    if (!detached) {
+      properties.put(id, value == null ? NULL_VALUE : value);
+    }
+  }
+
+  @Override
+  public void addCategory(String id) {
+    if (!detached) {
+      categories.add(id);
+    }
+  }
+
+  @Override
+  public Object getPropertyValue(String id) {
+    Object value = properties.get(id);
+    if (value == null) {
+      String category = PropertyHelper.getPropertyCategory(id);
+      Map<String, Object> categoryProperties = snapshot.get(category == null ? "" : category);
+      return categoryProperties == null ? null : categoryProperties.get(PropertyHelper.getPropertyName(id));
+    }
+    return value == NULL_VALUE ? null : value;
+  }
+
+
+  // ----- StagedResource ----------------------------------------------------
+
+  /**
+   * Get the underlying resource.
+   *
+   * @return the underlying resource
+   */
+  Resource getResource() {
+    return resource;
+  }
+
+  /**
+   * Detach the view from the underlying resource.  The properties set
+   * through the view so far are dropped, as are those set later by a
+   * provider which didn't stop when it was cancelled; they are never
+   * applied.
+   */
+  void detach() {
+    detached = true;
+    properties.clear();
+    categories.clear();
+  }
+
+  /**
+   * Set the categories and properties set through this view on the
+   * underlying resource.  Does nothing once the view is detached.
+   */
+  void apply() {
+    if (detached) {
+      return;
+    }
+    for (String category : categories) {
+      resource.addCategory(category);
+    }
+    for (Map.Entry<String, Object> entry : properties.entrySet()) {
+      Object value = entry.getValue();
+      resource.setProperty(entry.getKey(), value == NULL_VALUE ? null : value);
+    }
+  }
+
+
+  /**
+   * Copy the properties of the given resource.  The copy is not modified by
+   * the views which read it.
+   *
+   * @param resource  the resource
+   *
+   * @return the properties of the resource keyed by category
+   */
+  static Map<String, Map<String, Object>> getSnapshot(Resource resource) {
+    if (resource instanceof CompactResourceImpl) {
+      return ((CompactResourceImpl) resource).getSnapshot();
+    }
+
+    Map<String, Map<String, Object>> snapshot = new TreeMap<String, Map<String, Object>>();
+    for (Map.Entry<String, Map<String, Object>> entry : resource.getPropertiesMap().entrySet()) {
+      snapshot.put(entry.getKey(), new TreeMap<String, Object>(entry.getValue()));
+    }
+    return snapshot;
+  }
+
+
+  // ----- Object overrides --------------------------------------------------
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+
+    sb.append("Resource : ").append(getType()).append("\n");
+    sb.append("Properties:\n");
+    sb.append(getPropertiesMap());
+
+    return sb.toString();
+  }
+
+
+  // ----- utility methods ---------------------------------------------------
+
+  private static Map<String, Object> getCategoryMap(Map<String, Map<String, Object>> map,
+                                                    String category) {
+    String categoryKey = category == null ? "" : category;
+
+    Map<String, Object> properties = map.get(categoryKey);
+    if (properties == null) {
+      properties = new TreeMap<String, Object>();
+      map.put(categoryKey, properties);
+    }
+    return properties;
+  }
+}
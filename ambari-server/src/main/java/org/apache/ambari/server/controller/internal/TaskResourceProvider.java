@@ -18,12 +18,16 @@
 package org.apache.ambari.server.controller.internal;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.ambari.server.AmbariException;
+import org.apache.ambari.server.StaticallyInject;
+import org.apache.ambari.server.actionmanager.HostRoleStatus;
+import org.apache.ambari.server.actionmanager.TaskOutputStore;
 import org.apache.ambari.server.controller.AmbariManagementController;
 import org.apache.ambari.server.controller.TaskStatusRequest;
 import org.apache.ambari.server.controller.TaskStatusResponse;
@@ -36,11 +40,20 @@ import org.apache.ambari.server.controller.spi.Resource;
 import org.apache.ambari.server.controller.spi.SystemException;
 import org.apache.ambari.server.controller.spi.UnsupportedPropertyException;
 import org.apache.ambari.server.controller.utilities.PropertyHelper;
+import org.apache.ambari.server.orm.entities.TaskOutputChunkEntity.OutputType;
 import org.codehaus.jackson.map.ObjectMapper;
 
+import com.google.inject.Inject;
+
 /**
  * Resource provider for task resources.
+ * <p/>
+ * The stdout and stderr of a task may be read in part by adding
+ * {@code Tasks/output_offset} and optionally {@code Tasks/output_length} to
+ * the predicate. A negative offset reads the last bytes of the output, i.e.
+ * {@code Tasks/output_offset=-4096} tails the last 4096 bytes.
  */
+@StaticallyInject
 class TaskResourceProvider extends AbstractControllerResourceProvider {
 
   // ----- Property ID constants ---------------------------------------------
@@ -65,6 +78,8 @@ class TaskResourceProvider extends AbstractControllerResourceProvider {
   protected static final String TASK_ATTEMPT_CNT_PROPERTY_ID  = PropertyHelper.getPropertyId("Tasks", "attempt_cnt");
   protected static final String TASK_COMMAND_DET_PROPERTY_ID  = PropertyHelper.getPropertyId("Tasks", "command_detail");
   protected static final String TASK_CUST_CMD_NAME_PROPERTY_ID  = PropertyHelper.getPropertyId("Tasks", "custom_command_name");
+  protected static final String TASK_OUTPUT_OFFSET_PROPERTY_ID  = PropertyHelper.getPropertyId("Tasks", "output_offset");
+  protected static final String TASK_OUTPUT_LENGTH_PROPERTY_ID  = PropertyHelper.getPropertyId("Tasks", "output_length");
 
   private static Set<String> pkPropertyIds =
       new HashSet<String>(Arrays.asList(new String[]{
@@ -75,6 +90,12 @@ class TaskResourceProvider extends AbstractControllerResourceProvider {
    */
   private static final ObjectMapper mapper = new ObjectMapper();
 
+  /**
+   * Used to read the output of tasks which are in progress.
+   */
+  @Inject
+  private static TaskOutputStore taskOutputStore = null;
+
   // ----- Constructors ----------------------------------------------------
 
   /**
@@ -104,10 +125,24 @@ class TaskResourceProvider extends AbstractControllerResourceProvider {
     Set<String> requestedIds = getRequestPropertyIds(request, predicate);
 
     Map<String, Set<TaskStatusRequest>> requestsMap = new HashMap<String, Set<TaskStatusRequest>>();
+    Long outputOffset = null;
+    Integer outputLength = null;
 
     for (Map<String, Object> propertyMap : getPropertyMaps(predicate)) {
       String clusterName = (String) propertyMap.get(TASK_CLUSTER_NAME_PROPERTY_ID);
 
+      if (propertyMap.containsKey(TASK_OUTPUT_OFFSET_PROPERTY_ID)) {
+        outputOffset = parseOutputRange(propertyMap, TASK_OUTPUT_OFFSET_PROPERTY_ID);
+      }
+      if (propertyMap.containsKey(TASK_OUTPUT_LENGTH_PROPERTY_ID)) {
+        long length = parseOutputRange(propertyMap, TASK_OUTPUT_LENGTH_PROPERTY_ID);
+        if (length < 0 || length > Integer.MAX_VALUE) {
+          throw new IllegalArgumentException("Invalid value for " + TASK_OUTPUT_LENGTH_PROPERTY_ID
+              + ", expected a length between 0 and " + Integer.MAX_VALUE);
+        }
+        outputLength = (int) length;
+      }
+
       Set<TaskStatusRequest> requests = requestsMap.get(clusterName);
       if (requests == null) {
         requests = new HashSet<TaskStatusRequest>();
@@ -137,6 +172,23 @@ class TaskResourceProvider extends AbstractControllerResourceProvider {
         }
       }
 
+      // the stored length of the chunked output of all listed tasks which are
+      // in progress is looked up at once
+      Map<Long, Map<OutputType, Long>> outputLengths = Collections.emptyMap();
+      if (null != taskOutputStore && taskOutputStore.isEnabled()
+          && (isPropertyRequested(TASK_STDERR_PROPERTY_ID, requestedIds)
+          || isPropertyRequested(TASK_STOUT_PROPERTY_ID, requestedIds))) {
+        Set<Long> taskIds = new HashSet<Long>();
+        for (TaskStatusResponse response : responses) {
+          String status = response.getStatus();
+          if (null == status || status.isEmpty()
+              || !HostRoleStatus.valueOf(status).isCompletedState()) {
+            taskIds.add(response.getTaskId());
+          }
+        }
+        outputLengths = taskOutputStore.getOutputLengths(taskIds);
+      }
+
       resources = new HashSet<Resource>();
       for (TaskStatusResponse response : responses) {
         Resource resource = new ResourceImpl(Resource.Type.Task);
@@ -153,8 +205,20 @@ class TaskResourceProvider extends AbstractControllerResourceProvider {
         setResourceProperty(resource, TASK_COMMAND_PROPERTY_ID, response.getCommand(), requestedIds);
         setResourceProperty(resource, TASK_STATUS_PROPERTY_ID, response.getStatus(), requestedIds);
         setResourceProperty(resource, TASK_EXIT_CODE_PROPERTY_ID, response.getExitCode(), requestedIds);
-        setResourceProperty(resource, TASK_STDERR_PROPERTY_ID, response.getStderr(), requestedIds);
-        setResourceProperty(resource, TASK_STOUT_PROPERTY_ID, response.getStdout(), requestedIds);
+        if (isPropertyRequested(TASK_STDERR_PROPERTY_ID, requestedIds)) {
+          setResourceProperty(resource, TASK_STDERR_PROPERTY_ID, readOutput(response.getTaskId(),
+              OutputType.STDERR, response.getStderr(), outputLengths, outputOffset, outputLength), requestedIds);
+        }
+        if (isPropertyRequested(TASK_STOUT_PROPERTY_ID, requestedIds)) {
+          setResourceProperty(resource, TASK_STOUT_PROPERTY_ID, readOutput(response.getTaskId(),
+              OutputType.STDOUT, response.getStdout(), outputLengths, outputOffset, outputLength), requestedIds);
+        }
+        if (null != outputOffset) {
+          setResourceProperty(resource, TASK_OUTPUT_OFFSET_PROPERTY_ID, outputOffset, requestedIds);
+        }
+        if (null != outputLength) {
+          setResourceProperty(resource, TASK_OUTPUT_LENGTH_PROPERTY_ID, outputLength, requestedIds);
+        }
         setResourceProperty(resource, TASK_OUTPUTLOG_PROPERTY_ID, response.getOutputLog(), requestedIds);
         setResourceProperty(resource, TASK_ERRORLOG_PROPERTY_ID, response.getErrorLog(), requestedIds);
         setResourceProperty(resource, TASK_STRUCT_OUT_PROPERTY_ID, parseStructuredOutput(response.getStructuredOut()), requestedIds);
@@ -203,6 +267,49 @@ class TaskResourceProvider extends AbstractControllerResourceProvider {
     return result;
   }
 
+  /**
+   * Reads the requested range of the output of a task. The output of tasks
+   * which are in progress is read from the {@link TaskOutputStore} when it is
+   * chunked; otherwise the range is taken from the output on the task.
+   *
+   * @param taskId  the task ID
+   * @param outputType  the output stream
+   * @param output  the output stored on the task
+   * @param outputLengths  the stored length of the chunked outputs by task
+   * @param offset  the requested offset, or {@code null}
+   * @param length  the requested length, or {@code null}
+   * @return the output in the requested range
+   */
+  private String readOutput(long taskId, OutputType outputType, String output,
+                            Map<Long, Map<OutputType, Long>> outputLengths,
+                            Long offset, Integer length) {
+    Map<OutputType, Long> taskLengths = outputLengths.get(taskId);
+    if (null != taskLengths && null != taskOutputStore) {
+      return taskOutputStore.read(taskId, outputType, output,
+          taskLengths.get(outputType), offset, length);
+    }
+
+    return TaskOutputStore.slice(output, offset, length);
+  }
+
+  /**
+   * Parses a byte offset or length of the requested output.
+   *
+   * @param propertyMap  the properties of the predicate
+   * @param propertyId  the ID of the property to parse
+   * @return the value
+   * @throws IllegalArgumentException if the value is not a number
+   */
+  private static long parseOutputRange(Map<String, Object> propertyMap, String propertyId) {
+    Object value = propertyMap.get(propertyId);
+    try {
+      return Long.parseLong(String.valueOf(value).trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid value for " + propertyId
+          + ", expected a number of bytes: " + value);
+    }
+  }
+
   @Override
   public RequestStatus updateResources(Request request, Predicate predicate)
       throws SystemException, UnsupportedPropertyException, NoSuchResourceException, NoSuchParentResourceException {
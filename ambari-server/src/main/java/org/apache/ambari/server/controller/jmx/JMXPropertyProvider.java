@@ -20,6 +20,8 @@ package org.apache.ambari.server.controller.jmx;
 
 import org.apache.ambari.server.controller.internal.PropertyInfo;
 import org.apache.ambari.server.controller.metrics.MetricHostProvider;
+import org.apache.ambari.server.controller.metrics.MetricsCache;
+import org.apache.ambari.server.controller.metrics.MetricsCacheKey;
 import org.apache.ambari.server.controller.metrics.ThreadPoolEnabledPropertyProvider;
 import org.apache.ambari.server.controller.spi.Predicate;
 import org.apache.ambari.server.controller.spi.Request;
@@ -203,42 +205,66 @@ public class JMXPropertyProvider extends ThreadPoolEnabledPropertyProvider {
       return resource;
     }
 
-    InputStream in = null;
+    for (String hostName : hostNames) {
+      JMXMetricHolder metricHolder = getMetricHolder(getSpec(protocol, hostName, port, "/jmx"),
+          hostName, componentName);
 
-    try {
-      try {
-        for (String hostName : hostNames) {
-          try {
-            in = streamProvider.readFrom(getSpec(protocol, hostName, port, "/jmx"));
-            // if the ticket becomes invalid (timeout) then bail out
-            if (!ticket.isValid()) {
-              return resource;
-            }
-
-            getHadoopMetricValue(in, ids, resource, request, ticket);
+      // if the ticket becomes invalid (timeout) then bail out
+      if (!ticket.isValid()) {
+        return resource;
+      }
 
-          } catch (IOException e) {
-            logException(e);
-          }
-        }
-      } finally {
-        if (in != null) {
-          in.close();
-        }
+      if (metricHolder != null) {
+        getHadoopMetricValue(metricHolder, ids, resource, request, ticket);
       }
-    } catch (IOException e) {
-      logException(e);
     }
     return resource;
   }
 
   /**
-   * Hadoop-specific metrics fetching
+   * Get the JMX beans from the given source.  The beans are shared through
+   * the {@link MetricsCache} and must not be changed.
+   *
+   * @param spec           the JMX URL
+   * @param hostName       the host name
+   * @param componentName  the component name
+   *
+   * @return the beans; null if they could not be read
+   *
+   * @throws SystemException if the beans could not be read
    */
-  private void getHadoopMetricValue(InputStream in, Set<String> ids,
-                       Resource resource, Request request, Ticket ticket) throws IOException {
-    JMXMetricHolder metricHolder = jmxObjectReader.readValue(in);
+  private JMXMetricHolder getMetricHolder(final String spec, String hostName, String componentName)
+      throws SystemException {
 
+    return MetricsCache.getInstance().get(new MetricsCacheKey(spec, hostName, componentName, null, null),
+        new MetricsCache.Loader<JMXMetricHolder>() {
+          @Override
+          public JMXMetricHolder load() {
+            InputStream in = null;
+            try {
+              in = streamProvider.readFrom(spec);
+              return jmxObjectReader.readValue(in);
+            } catch (IOException e) {
+              logException(e);
+              return null;
+            } finally {
+              if (in != null) {
+                try {
+                  in.close();
+                } catch (IOException e) {
+                  logException(e);
+                }
+              }
+            }
+          }
+        });
+  }
+
+  /**
+   * Hadoop-specific metrics fetching
+   */
+  private void getHadoopMetricValue(JMXMetricHolder metricHolder, Set<String> ids,
+                       Resource resource, Request request, Ticket ticket) {
     Map<String, Map<String, Object>> categories = new HashMap<String, Map<String, Object>>();
     String componentName = (String) resource.getPropertyValue(componentNamePropertyId);
 
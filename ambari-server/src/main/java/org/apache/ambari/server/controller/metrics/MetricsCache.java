@@ -0,0 +1,371 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.controller.metrics;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.controller.spi.SystemException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of the metrics fetched by the metrics property providers, shared by
+ * all requests.  Entries expire a fixed time after they are fetched.
+ * Concurrent requests for the same key wait for a single fetch rather than
+ * each calling the metrics source.
+ * <p/>
+ * Time series are cached per source, metric set and host, independent of
+ * the time window.  A request for a window which ends after the cached
+ * series is served by fetching only the newest part of the window and
+ * merging it into the cached series.  Sources which read a window with a
+ * precision that depends on its length must give the precision in the key,
+ * so that a series is only sliced or topped up with values of its own
+ * precision.
+ * <p/>
+ * The cache is disabled until {@link #init(Configuration)} is called.
+ */
+public class MetricsCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MetricsCache.class);
+
+  /**
+   * The shared instance.
+   */
+  private static volatile MetricsCache instance = new MetricsCache(false, 0L, 0L, Ticker.systemTicker());
+
+  /**
+   * Indicates whether or not metrics are cached.
+   */
+  private final boolean enabled;
+
+  /**
+   * The time to live of the cached metrics in nanoseconds.
+   */
+  private final long ttlNanos;
+
+  /**
+   * The time source.
+   */
+  private final Ticker ticker;
+
+  /**
+   * Point in time metrics and time series fetched for a fixed window.
+   */
+  private final Cache<MetricsCacheKey, Object> cache;
+
+  /**
+   * Time series which are topped up with the newest values.
+   */
+  private final LoadingCache<MetricsCacheKey, TimeSeriesEntry> timeSeriesCache;
+
+
+  // ----- Constructors ------------------------------------------------------
+
+  /**
+   * Create a metrics cache.
+   *
+   * @param enabled     true if metrics should be cached
+   * @param ttlMillis   the time to live of cached metrics in milliseconds
+   * @param maxEntries  the max number of entries
+   * @param ticker      the time source
+   */
+  MetricsCache(boolean enabled, long ttlMillis, long maxEntries, Ticker ticker) {
+    this.enabled  = enabled && ttlMillis > 0;
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    this.ticker   = ticker;
+
+    if (this.enabled) {
+      cache = CacheBuilder.newBuilder().
+          expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS).
+          maximumSize(maxEntries).
+          ticker(ticker).
+          build();
+
+      // time series stay cached while they are being polled
+      timeSeriesCache = CacheBuilder.newBuilder().
+          expireAfterAccess(ttlMillis * 10, TimeUnit.MILLISECONDS).
+          maximumSize(maxEntries).
+          ticker(ticker).
+          build(new CacheLoader<MetricsCacheKey, TimeSeriesEntry>() {
+            @Override
+            public TimeSeriesEntry load(MetricsCacheKey key) {
+              return new TimeSeriesEntry();
+            }
+          });
+    } else {
+      cache           = null;
+      timeSeriesCache = null;
+    }
+  }
+
+
+  // ----- MetricsCache ------------------------------------------------------
+
+  /**
+   * Initialize the shared instance from the server configuration.
+   *
+   * @param configuration  the server configuration
+   */
+  public static void init(Configuration configuration) {
+    instance = new MetricsCache(configuration.isMetricsCacheEnabled(),
+        TimeUnit.SECONDS.toMillis(configuration.getMetricsCacheTTL()),
+        configuration.getMetricsCacheMaxEntries(), Ticker.systemTicker());
+  }
+
+  /**
+   * Get the shared instance.
+   *
+   * @return the metrics cache
+   */
+  public static MetricsCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * Determine whether or not metrics are cached.
+   *
+   * @return true if metrics are cached
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Get the metrics for the given key, fetching them with the given loader if
+   * they are not cached.  A null value returned by the loader is not cached.
+   *
+   * @param key     the key
+   * @param loader  fetches the metrics
+   * @param <V>     the type of the metrics
+   *
+   * @return the metrics; null if the loader returned null
+   *
+   * @throws SystemException if the loader throws an exception
+   */
+  @SuppressWarnings("unchecked")
+  public <V> V get(MetricsCacheKey key, final Loader<V> loader) throws SystemException {
+    if (!enabled) {
+      return loader.load();
+    }
+
+    try {
+      return (V) cache.get(key, new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          Object value = loader.load();
+          if (value == null) {
+            throw new NoValueException();
+          }
+          return value;
+        }
+      });
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof NoValueException) {
+        return null;
+      }
+      throw toSystemException(e.getCause());
+    } catch (UncheckedExecutionException e) {
+      throw toSystemException(e.getCause());
+    }
+  }
+
+  /**
+   * Get the time series for the given key and time window.  The series is
+   * fetched for the whole window if nothing is cached for the key or the
+   * window starts before the cached series.  If the window ends after the
+   * cached series and the series is older than the time to live, only the
+   * values from the end of the cached series, less the given overlap, are
+   * fetched.  The overlap allows for values which reach the metrics source
+   * late.
+   *
+   * @param key        the key, without time window but with the precision of
+   *                   the series if it depends on the window
+   * @param startTime  the start of the window
+   * @param endTime    the end of the window
+   * @param overlap    the part of the cached series which is fetched again
+   *                   when topping up, in the units of the window
+   * @param loader     fetches, merges and slices the time series
+   * @param <V>        the type of the time series
+   *
+   * @return the time series for the window; null if it could not be fetched
+   *
+   * @throws SystemException if the loader throws an exception
+   */
+  public <V> V getTimeSeries(MetricsCacheKey key, long startTime, long endTime, long overlap,
+                             TimeSeriesLoader<V> loader) throws SystemException {
+    if (!enabled) {
+      return loader.load(startTime, endTime);
+    }
+
+    TimeSeriesEntry entry = timeSeriesCache.getUnchecked(key);
+
+    // requests for the same series wait here for a single fetch
+    synchronized (entry) {
+      @SuppressWarnings("unchecked")
+      V cached = (V) entry.value;
+      long now = ticker.read();
+
+      if (cached != null && startTime >= entry.startTime) {
+        if (endTime > entry.endTime && now - entry.fetchTime >= ttlNanos) {
+          long topUpStart = Math.max(entry.startTime, entry.endTime - overlap);
+
+          LOG.debug("Topping up cached time series {} from {} to {}", key, topUpStart, endTime);
+          V update = loader.load(topUpStart, endTime);
+          if (update != null) {
+            cached = loader.slice(loader.merge(cached, update), startTime, endTime);
+
+            entry.value     = cached;
+            entry.startTime = startTime;
+            entry.endTime   = endTime;
+            entry.fetchTime = now;
+          }
+        }
+        return loader.slice(cached, startTime, endTime);
+      }
+
+      V value = loader.load(startTime, endTime);
+      if (value != null) {
+        entry.value     = value;
+        entry.startTime = startTime;
+        entry.endTime   = endTime;
+        entry.fetchTime = now;
+        return loader.slice(value, startTime, endTime);
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Remove all cached metrics.
+   */
+  public void invalidateAll() {
+    if (enabled) {
+      cache.invalidateAll();
+      timeSeriesCache.invalidateAll();
+    }
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private static SystemException toSystemException(Throwable throwable) {
+    if (throwable instanceof SystemException) {
+      return (SystemException) throwable;
+    }
+    return new SystemException("Caught exception getting metrics : " + throwable.getMessage(), throwable);
+  }
+
+
+  // ----- inner interface : Loader ------------------------------------------
+
+  /**
+   * Fetches metrics from a metrics source.
+   *
+   * @param <V>  the type of the metrics
+   */
+  public interface Loader<V> {
+    /**
+     * Fetch the metrics.
+     *
+     * @return the metrics; null if they could not be fetched
+     *
+     * @throws SystemException if the metrics could not be fetched
+     */
+    public V load() throws SystemException;
+  }
+
+
+  // ----- inner interface : TimeSeriesLoader --------------------------------
+
+  /**
+   * Fetches, merges and slices time series from a metrics source.  The
+   * values passed to {@link #merge} and {@link #slice} may be shared by other
+   * requests and should not be changed; the cached value is only passed to
+   * {@link #merge} while no other thread can read it.
+   *
+   * @param <V>  the type of the time series
+   */
+  public interface TimeSeriesLoader<V> {
+    /**
+     * Fetch the time series for the given window.
+     *
+     * @param startTime  the start of the window
+     * @param endTime    the end of the window
+     *
+     * @return the time series; null if they could not be fetched
+     *
+     * @throws SystemException if the time series could not be fetched
+     */
+    public V load(long startTime, long endTime) throws SystemException;
+
+    /**
+     * Merge newly fetched values into a cached time series.  Values of the
+     * update replace cached values with the same timestamp.
+     *
+     * @param cached  the cached time series
+     * @param update  the newly fetched values
+     *
+     * @return the merged time series
+     */
+    public V merge(V cached, V update);
+
+    /**
+     * Get the values of the given time series which fall in the given
+     * window.  The result must not share mutable state with the given value.
+     *
+     * @param value      the time series
+     * @param startTime  the start of the window
+     * @param endTime    the end of the window
+     *
+     * @return the time series for the window
+     */
+    public V slice(V value, long startTime, long endTime);
+  }
+
+
+  // ----- inner class : TimeSeriesEntry -------------------------------------
+
+  /**
+   * A cached time series and the window it covers.
+   */
+  private static class TimeSeriesEntry {
+    private Object value;
+    private long startTime;
+    private long endTime;
+    private long fetchTime;
+  }
+
+
+  // ----- inner class : NoValueException ------------------------------------
+
+  /**
+   * Thrown from a cache load to keep null values out of the cache.
+   */
+  private static class NoValueException extends Exception {
+  }
+}
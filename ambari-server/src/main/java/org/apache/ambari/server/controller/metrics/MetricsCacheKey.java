@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.controller.metrics;
+
+import org.apache.ambari.server.controller.spi.TemporalInfo;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Identifies a single fetch of metrics from a metrics source: the request
+ * URL, the host and component the metrics belong to, the requested metric
+ * names and the time window.  Keys of time series which are kept up to date
+ * by the {@link MetricsCache} leave out the time window; they give the
+ * precision of the series instead, if the source has more than one.
+ */
+public class MetricsCacheKey {
+
+  private final String spec;
+  private final String hostName;
+  private final String componentName;
+  private final Set<String> metrics;
+  private final Long startTime;
+  private final Long endTime;
+  private final Long step;
+  private final String precision;
+
+
+  // ----- Constructors ------------------------------------------------------
+
+  /**
+   * Create a key.
+   *
+   * @param spec           the URL of the metrics source without the time window
+   * @param hostName       the host name; may be null
+   * @param componentName  the component name; may be null
+   * @param metrics        the requested metric names; may be null
+   * @param temporalInfo   the time window; null for point in time metrics
+   *                       and for time series kept up to date by the cache
+   */
+  public MetricsCacheKey(String spec, String hostName, String componentName,
+                         Collection<String> metrics, TemporalInfo temporalInfo) {
+    this(spec, hostName, componentName, metrics, temporalInfo, null);
+  }
+
+  /**
+   * Create a key.
+   *
+   * @param spec           the URL of the metrics source without the time window
+   * @param hostName       the host name; may be null
+   * @param componentName  the component name; may be null
+   * @param metrics        the requested metric names; may be null
+   * @param temporalInfo   the time window; null for point in time metrics
+   *                       and for time series kept up to date by the cache
+   * @param precision      the precision of the values; may be null
+   */
+  public MetricsCacheKey(String spec, String hostName, String componentName,
+                         Collection<String> metrics, TemporalInfo temporalInfo, String precision) {
+    this.spec          = spec;
+    this.hostName      = hostName;
+    this.componentName = componentName;
+    this.metrics       = metrics == null ?
+        Collections.<String>emptySet() : Collections.unmodifiableSet(new TreeSet<String>(metrics));
+    this.startTime     = temporalInfo == null ? null : temporalInfo.getStartTime();
+    this.endTime       = temporalInfo == null ? null : temporalInfo.getEndTime();
+    this.step          = temporalInfo == null ? null : temporalInfo.getStep();
+    this.precision     = precision;
+  }
+
+
+  // ----- MetricsCacheKey ---------------------------------------------------
+
+  public String getSpec() {
+    return spec;
+  }
+
+  public String getHostName() {
+    return hostName;
+  }
+
+  public String getComponentName() {
+    return componentName;
+  }
+
+  public Set<String> getMetrics() {
+    return metrics;
+  }
+
+  public String getPrecision() {
+    return precision;
+  }
+
+
+  // ----- Object overrides --------------------------------------------------
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    MetricsCacheKey that = (MetricsCacheKey) o;
+
+    return equals(spec, that.spec) &&
+        equals(hostName, that.hostName) &&
+        equals(componentName, that.componentName) &&
+        metrics.equals(that.metrics) &&
+        equals(startTime, that.startTime) &&
+        equals(endTime, that.endTime) &&
+        equals(step, that.step) &&
+        equals(precision, that.precision);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = spec != null ? spec.hashCode() : 0;
+    result = 31 * result + (hostName != null ? hostName.hashCode() : 0);
+    result = 31 * result + (componentName != null ? componentName.hashCode() : 0);
+    result = 31 * result + metrics.hashCode();
+    result = 31 * result + (startTime != null ? startTime.hashCode() : 0);
+    result = 31 * result + (endTime != null ? endTime.hashCode() : 0);
+    result = 31 * result + (step != null ? step.hashCode() : 0);
+    result = 31 * result + (precision != null ? precision.hashCode() : 0);
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "MetricsCacheKey{" +
+        "spec='" + spec + '\'' +
+        ", hostName='" + hostName + '\'' +
+        ", componentName='" + componentName + '\'' +
+        ", metrics=" + metrics +
+        ", startTime=" + startTime +
+        ", endTime=" + endTime +
+        ", step=" + step +
+        ", precision='" + precision + '\'' +
+        '}';
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private static boolean equals(Object o1, Object o2) {
+    return o1 == null ? o2 == null : o1.equals(o2);
+  }
+}
@@ -18,10 +18,9 @@
 package org.apache.ambari.server.controller.metrics;
 
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
 
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.Map;
 
 public class MetricsDownsamplingMethodFactory {
   private static final MetricsDownsamplingMethod perSecondDownsampling = new MetricsAveragePerSecondDownsampling();
@@ -36,25 +35,22 @@ public class MetricsDownsamplingMethodFactory {
   }
 
   private static boolean mustDownsample(TimelineMetric metric) {
-    //Linear search in Map<K, V>, faster than copying the map in a TreeMap and doing ceilingEntry()
-    for (Long time : metric.getMetricValues().keySet()) {
-      if (time > 9999999999l)
-        return true;
-    }
-    return false;
+    // The timestamps are sorted, so only the last one needs to be checked
+    TimelineMetricSeries metricValues = metric.getMetricSeries();
+    return !metricValues.isEmpty() && metricValues.getLastTimestamp() > 9999999999l;
   }
 }
 
 class MetricNoDownsampling extends MetricsDownsamplingMethod {
   @Override
   public Number[][] reportMetricData(TimelineMetric metricData, MetricsDataTransferMethod dataTransferMethod) {
-    Number[][] datapointsArray = new Number[metricData.getMetricValues().size()][2];
-    int cnt = 0;
+    TimelineMetricSeries metricValues = metricData.getMetricSeries();
+    Number[][] datapointsArray = new Number[metricValues.size()][2];
 
-    for (Map.Entry<Long, Double> metricEntry : metricData.getMetricValues().entrySet()) {
-      datapointsArray[cnt][0] = dataTransferMethod.getData(metricEntry.getValue());
-      datapointsArray[cnt][1] = metricEntry.getKey();
-      cnt++;
+    for (int cnt = 0; cnt < metricValues.size(); cnt++) {
+      double value = metricValues.getValue(cnt);
+      datapointsArray[cnt][0] = dataTransferMethod.getData(Double.isNaN(value) ? null : value);
+      datapointsArray[cnt][1] = metricValues.getTimestamp(cnt);
     }
 
     return datapointsArray;
@@ -75,24 +71,22 @@ class MetricsAveragePerSecondDownsampling extends MetricsDownsamplingMethod {
   public Number[][] reportMetricData(TimelineMetric metricData, MetricsDataTransferMethod dataTransferMethod) {
     ArrayList<Accumulo> cache = new ArrayList<Accumulo>();
 
-    final Iterator<Map.Entry<Long, Double>> ci = metricData.getMetricValues().entrySet().iterator();
-    if (ci.hasNext()) {
-      Map.Entry<Long, Double> e0 = ci.next();
-      long t0 = e0.getKey() / 1000;
-      double s0 = e0.getValue();
+    final TimelineMetricSeries metricValues = metricData.getMetricSeries();
+    if (!metricValues.isEmpty()) {
+      long t0 = metricValues.getTimestamp(0) / 1000;
+      double s0 = metricValues.getValue(0);
       int nSamples = 1;
 
-      while(ci.hasNext()) {
-        e0 = ci.next();
-        long t = e0.getKey() / 1000;
+      for (int i = 1; i < metricValues.size(); i++) {
+        long t = metricValues.getTimestamp(i) / 1000;
 
         if (t != t0) {
           cache.add(new Accumulo(t0, dataTransferMethod.getData(s0 / nSamples)));
           t0 = t;
-          s0 = e0.getValue();
+          s0 = metricValues.getValue(i);
           nSamples = 1;
         } else {
-          s0 += e0.getValue();
+          s0 += metricValues.getValue(i);
           nSamples++;
         }
       }
@@ -21,17 +21,22 @@ package org.apache.ambari.server.controller.metrics.ganglia;
 import org.apache.ambari.server.configuration.ComponentSSLConfiguration;
 import org.apache.ambari.server.controller.internal.PropertyInfo;
 import org.apache.ambari.server.controller.metrics.MetricHostProvider;
+import org.apache.ambari.server.controller.metrics.MetricsCache;
+import org.apache.ambari.server.controller.metrics.MetricsCacheKey;
 import org.apache.ambari.server.controller.metrics.MetricsPropertyProvider;
 import org.apache.ambari.server.controller.spi.Request;
 import org.apache.ambari.server.controller.spi.Resource;
 import org.apache.ambari.server.controller.spi.SystemException;
 import org.apache.ambari.server.controller.spi.TemporalInfo;
 import org.apache.ambari.server.controller.utilities.StreamProvider;
+import org.apache.commons.io.IOUtils;
 import org.apache.http.client.utils.URIBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -405,8 +410,12 @@ public abstract class GangliaPropertyProvider extends MetricsPropertyProvider {
           return Collections.emptySet();
         }
 
-        reader = new BufferedReader(new InputStreamReader(
-            getStreamProvider().readFrom(spec, "POST", params)));
+        InputStream in = MetricsCache.getInstance().isEnabled() ?
+            getCachedFeed(spec, params) : getStreamProvider().readFrom(spec, "POST", params);
+        if (in == null) {
+          return Collections.emptySet();
+        }
+        reader = new BufferedReader(new InputStreamReader(in));
 
         String feedStart = reader.readLine();
         if (feedStart == null || feedStart.isEmpty()) {
@@ -516,6 +525,40 @@ public abstract class GangliaPropertyProvider extends MetricsPropertyProvider {
       return Collections.emptySet();
     }
 
+    /**
+     * Get the feed for the given request from the metrics cache, fetching it
+     * if it isn't cached.
+     *
+     * @param spec    the rrd URL
+     * @param params  the rrd request parameters
+     *
+     * @return a stream over the feed; null if the feed could not be fetched
+     *
+     * @throws SystemException if the feed could not be fetched
+     */
+    private InputStream getCachedFeed(final String spec, final String params) throws SystemException {
+      byte[] feed = MetricsCache.getInstance().get(
+          new MetricsCacheKey(spec + "?" + params, null, null, metrics.keySet(), temporalInfo),
+          new MetricsCache.Loader<byte[]>() {
+            @Override
+            public byte[] load() {
+              InputStream in = null;
+              try {
+                in = getStreamProvider().readFrom(spec, "POST", params);
+                return IOUtils.toByteArray(in);
+              } catch (IOException e) {
+                if (LOG.isErrorEnabled()) {
+                  LOG.error("Caught exception getting Ganglia metrics : spec=" + spec);
+                }
+                return null;
+              } finally {
+                IOUtils.closeQuietly(in);
+              }
+            }
+          });
+      return feed == null ? null : new ByteArrayInputStream(feed);
+    }
+
 
     /**
      * Populate the given resource with the given Ganglia metric.
@@ -20,6 +20,8 @@ package org.apache.ambari.server.controller.metrics.timeline;
 import org.apache.ambari.server.configuration.ComponentSSLConfiguration;
 import org.apache.ambari.server.controller.internal.PropertyInfo;
 import org.apache.ambari.server.controller.metrics.MetricHostProvider;
+import org.apache.ambari.server.controller.metrics.MetricsCache;
+import org.apache.ambari.server.controller.metrics.MetricsCacheKey;
 import org.apache.ambari.server.controller.metrics.MetricsPropertyProvider;
 import org.apache.ambari.server.controller.spi.Request;
 import org.apache.ambari.server.controller.spi.Resource;
@@ -64,6 +66,26 @@ public abstract class AMSPropertyProvider extends MetricsPropertyProvider {
   private static final String METRIC_REGEXP_PATTERN = "\\([^)]*\\)";
   private static final int COLLECTOR_DEFAULT_PORT = 6188;
 
+  /**
+   * The part of a cached time series, in milliseconds, which is fetched
+   * again when a series read with the given precision is topped up.  Covers
+   * two sink reporting periods, or two aggregation periods for aggregated
+   * series, so that values which reach the collector late are picked up.
+   */
+  private static final long SECONDS_TOP_UP_OVERLAP = 120000L;
+  private static final long MINUTES_TOP_UP_OVERLAP = 600000L;
+  private static final long HOURS_TOP_UP_OVERLAP = 7200000L;
+
+  /**
+   * The precisions of the Metrics Service.
+   */
+  static final String PRECISION_SECONDS = "SECONDS";
+  static final String PRECISION_MINUTES = "MINUTES";
+  static final String PRECISION_HOURS = "HOURS";
+
+  private static final long HOUR = 3600000L;
+  private static final long DAY = 86400000L;
+
   static {
     TIMELINE_APPID_MAP.put(HBASE_MASTER.name(), "HBASE");
     TIMELINE_APPID_MAP.put(HBASE_REGIONSERVER.name(), "HBASE");
@@ -90,6 +112,39 @@ public abstract class AMSPropertyProvider extends MetricsPropertyProvider {
       componentNamePropertyId);
   }
 
+  /**
+   * Get the precision which the Metrics Service reads a time series with
+   * when the request does not give one.  Mirrors the collector, which reads
+   * host metrics and cluster aggregates from tables of coarser precision as
+   * the time window grows.
+   *
+   * @param hostMetrics  true for the metrics of a host; false for cluster aggregates
+   * @param startTime    the start of the window in milliseconds
+   * @param endTime      the end of the window in milliseconds
+   *
+   * @return the precision
+   */
+  static String getDefaultPrecision(boolean hostMetrics, long startTime, long endTime) {
+    long timeRange = endTime - startTime;
+    if (timeRange > 5 * DAY) {
+      return PRECISION_HOURS;
+    }
+    if (hostMetrics && timeRange > 10 * HOUR) {
+      return PRECISION_MINUTES;
+    }
+    return PRECISION_SECONDS;
+  }
+
+  private static long getTopUpOverlap(String precision) {
+    if (PRECISION_HOURS.equals(precision)) {
+      return HOURS_TOP_UP_OVERLAP;
+    }
+    if (PRECISION_MINUTES.equals(precision)) {
+      return MINUTES_TOP_UP_OVERLAP;
+    }
+    return SECONDS_TOP_UP_OVERLAP;
+  }
+
   protected String getOverridenComponentName(Resource resource) {
     String componentName = getComponentName(resource);
     // Hack: To allow host queries to succeed
@@ -224,13 +279,13 @@ public abstract class AMSPropertyProvider extends MetricsPropertyProvider {
           // hostcomponent need the HOST appId
           if (hostComponentHostMetrics.isEmpty()) {
             String spec = getSpec(hostname, resource);
-            timelineMetrics = getTimelineMetricsForSpec(spec);
+            timelineMetrics = getTimelineMetrics(spec, hostname, resource);
           } else {
             Set<String> specs = getSpecsForHostComponentMetrics(hostname, resource);
             timelineMetrics = new TimelineMetrics();
             for (String spec : specs) {
               if (!StringUtils.isEmpty(spec)) {
-                TimelineMetrics metrics = getTimelineMetricsForSpec(spec);
+                TimelineMetrics metrics = getTimelineMetrics(spec, hostname, resource);
                 if (metrics != null) {
                   timelineMetrics.getMetrics().addAll(metrics.getMetrics());
                 }
@@ -289,7 +344,7 @@ public abstract class AMSPropertyProvider extends MetricsPropertyProvider {
         uriBuilder.setParameter("metricNames", metricsParam);
       }
 
-      if (hostname != null && !hostname.isEmpty() && !hostname.equals(dummyHostName)) {
+      if (isHostMetrics(hostname)) {
         uriBuilder.setParameter("hostname", hostname);
       }
 
@@ -305,17 +360,76 @@ public abstract class AMSPropertyProvider extends MetricsPropertyProvider {
         }
       }
 
+    }
+
+    /**
+     * Get the metrics for the given spec, which has no time window, through
+     * the metrics cache.  Time series are kept up to date in the cache by
+     * fetching only the newest values of each window.  The precision the
+     * Metrics Service reads a window with depends on its length, so time
+     * series are cached per precision and topped up with values of the same
+     * precision.
+     */
+    private TimelineMetrics getTimelineMetrics(final String spec, String hostname, Resource resource)
+        throws SystemException {
+
+      MetricsCache cache = MetricsCache.getInstance();
+      String componentName = getComponentName(resource);
+
       if (temporalInfo != null) {
         long startTime = temporalInfo.getStartTime();
-        if (startTime != -1) {
-          uriBuilder.setParameter("startTime", String.valueOf(startTime));
-        }
-
         long endTime = temporalInfo.getEndTime();
-        if (endTime != -1) {
-          uriBuilder.setParameter("endTime", String.valueOf(endTime));
+
+        if (startTime != -1 && endTime != -1) {
+          boolean hostMetrics = isHostMetrics(hostname);
+          String precision = getDefaultPrecision(hostMetrics, startTime, endTime);
+
+          return cache.getTimeSeries(
+              new MetricsCacheKey(spec, hostname, componentName, metrics.keySet(), null, precision),
+              startTime, endTime, getTopUpOverlap(precision),
+              new TimelineMetricsLoader(spec, hostMetrics, precision));
         }
       }
+
+      final String specWithWindow = getSpec(spec, temporalInfo);
+      return cache.get(new MetricsCacheKey(spec, hostname, componentName, metrics.keySet(), temporalInfo),
+          new MetricsCache.Loader<TimelineMetrics>() {
+            @Override
+            public TimelineMetrics load() {
+              return getTimelineMetricsForSpec(specWithWindow);
+            }
+          });
+    }
+
+    /**
+     * Add the given time window to the given spec.
+     */
+    private String getSpec(String spec, TemporalInfo temporalInfo) {
+      if (temporalInfo == null) {
+        return spec;
+      }
+      return getSpec(spec, temporalInfo.getStartTime(), temporalInfo.getEndTime());
+    }
+
+    /**
+     * Add the given time window to the given spec.  A time of -1 is left out.
+     */
+    private String getSpec(String spec, long startTime, long endTime) {
+      StringBuilder sb = new StringBuilder(spec);
+      char separator = spec.indexOf('?') == -1 ? '?' : '&';
+
+      if (startTime != -1) {
+        sb.append(separator).append("startTime=").append(startTime);
+        separator = '&';
+      }
+      if (endTime != -1) {
+        sb.append(separator).append("endTime=").append(endTime);
+      }
+      return sb.toString();
+    }
+
+    private boolean isHostMetrics(String hostname) {
+      return hostname != null && !hostname.isEmpty() && !hostname.equals(dummyHostName);
     }
 
     private String getSpec(String hostname, Resource resource) {
@@ -361,6 +475,75 @@ public abstract class AMSPropertyProvider extends MetricsPropertyProvider {
       return result;
     }
 
+    /**
+     * Fetches, merges and slices the time series of a spec for the metrics
+     * cache.  Windows which the Metrics Service would read with a different
+     * precision, such as the short windows used to top up a series, are
+     * fetched with the precision of the series.
+     */
+    private class TimelineMetricsLoader implements MetricsCache.TimeSeriesLoader<TimelineMetrics> {
+      private final String spec;
+      private final boolean hostMetrics;
+      private final String precision;
+
+      private TimelineMetricsLoader(String spec, boolean hostMetrics, String precision) {
+        this.spec        = spec;
+        this.hostMetrics = hostMetrics;
+        this.precision   = precision;
+      }
+
+      @Override
+      public TimelineMetrics load(long startTime, long endTime) {
+        String windowSpec = getSpec(spec, startTime, endTime);
+        if (!precision.equals(getDefaultPrecision(hostMetrics, startTime, endTime))) {
+          windowSpec += "&precision=" + precision.toLowerCase();
+        }
+        return getTimelineMetricsForSpec(windowSpec);
+      }
+
+      @Override
+      public TimelineMetrics merge(TimelineMetrics cached, TimelineMetrics update) {
+        Map<String, TimelineMetric> cachedMetrics = new HashMap<String, TimelineMetric>();
+        for (TimelineMetric metric : cached.getMetrics()) {
+          cachedMetrics.put(getMetricKey(metric), metric);
+        }
+
+        for (TimelineMetric metric : update.getMetrics()) {
+          TimelineMetric cachedMetric = cachedMetrics.get(getMetricKey(metric));
+          if (cachedMetric == null) {
+            cached.getMetrics().add(metric);
+          } else {
+            cachedMetric.getMetricSeries().putAll(metric.getMetricSeries());
+          }
+        }
+        return cached;
+      }
+
+      @Override
+      public TimelineMetrics slice(TimelineMetrics value, long startTime, long endTime) {
+        TimelineMetrics slice = new TimelineMetrics();
+        for (TimelineMetric metric : value.getMetrics()) {
+          TimelineMetric metricSlice = new TimelineMetric();
+          metricSlice.setMetricName(metric.getMetricName());
+          metricSlice.setAppId(metric.getAppId());
+          metricSlice.setInstanceId(metric.getInstanceId());
+          metricSlice.setHostName(metric.getHostName());
+          metricSlice.setTimestamp(metric.getTimestamp());
+          metricSlice.setStartTime(metric.getStartTime());
+          metricSlice.setType(metric.getType());
+
+          metricSlice.setMetricValues(metric.getMetricSeries().subSeries(startTime, endTime));
+          slice.getMetrics().add(metricSlice);
+        }
+        return slice;
+      }
+
+      private String getMetricKey(TimelineMetric metric) {
+        return metric.getMetricName() + '|' + metric.getAppId() + '|' +
+            metric.getHostName() + '|' + metric.getInstanceId();
+      }
+    }
+
     private void populateResource(Resource resource, TimelineMetric metric) {
       String metric_name = metric.getMetricName();
       Set<String> propertyIdSet = metrics.get(metric_name);
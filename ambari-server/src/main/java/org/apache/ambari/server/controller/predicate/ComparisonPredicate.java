@@ -84,7 +84,7 @@ public abstract class ComparisonPredicate<T> extends PropertyPredicate implement
       else if (propertyValue instanceof String) {
         Double doubleFromString = stringToDouble((String) propertyValue);
         if (doubleFromString != null) {
-          return (int) (doubleValue - doubleFromString);
+          return doubleValue.compareTo(doubleFromString);
         }
       }
     }
@@ -95,17 +95,38 @@ public abstract class ComparisonPredicate<T> extends PropertyPredicate implement
     return getValue().compareTo((T) propertyValue);
   }
 
-  private Double stringToDouble(String stringValue) {
+  /**
+   * Parse the given string as a number.
+   *
+   * @param stringValue  the string
+   *
+   * @return the number as a double or null if the string is not a number
+   */
+  static Double stringToDouble(String stringValue) {
     if (stringValue == null || stringValue.isEmpty()) {
       return null;
     }
+    // plain integers are parsed the same way by any number format
+    if (stringValue.length() <= 18 && isDigits(stringValue)) {
+      return (double) Long.parseLong(stringValue);
+    }
     ParsePosition parsePosition = new ParsePosition(0);
     NumberFormat  numberFormat  = NumberFormat.getInstance();
-    Number        parsedNumber  = numberFormat.parse((String) value, parsePosition);
+    Number        parsedNumber  = numberFormat.parse(stringValue, parsePosition);
 
     return parsePosition.getIndex() == stringValue.length() ? parsedNumber.doubleValue() : null;
   }
 
+  private static boolean isDigits(String stringValue) {
+    for (int i = 0; i < stringValue.length(); i++) {
+      char c = stringValue.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
   public abstract String getOperator();
 
   public abstract ComparisonPredicate<T> copy(String propertyId);
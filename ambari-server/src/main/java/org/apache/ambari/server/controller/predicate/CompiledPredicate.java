@@ -0,0 +1,686 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.controller.predicate;
+
+import org.apache.ambari.server.controller.spi.Predicate;
+import org.apache.ambari.server.controller.spi.Resource;
+import org.apache.ambari.server.controller.utilities.PredicateHelper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Predicate which evaluates a compiled form of another predicate.  Compiling
+ * a predicate once and evaluating it against many resources is faster than
+ * evaluating the predicate itself:
+ * <ul>
+ *   <li>property ids are resolved to {@link PropertyAccessor}s, so that the
+ *       slot of a property is found once per resource type;</li>
+ *   <li>the literal operand of each comparison is parsed once, and compared
+ *       with a comparator for its type;</li>
+ *   <li>nested AND and OR predicates are flattened, and the operands are
+ *       ordered so that the ones that are cheap and most likely to decide the
+ *       result are evaluated first;</li>
+ *   <li>ORed equality comparisons of a property to strings (the IN operator
+ *       of the query language) are evaluated with a single set lookup.</li>
+ * </ul>
+ * A compiled predicate evaluates to the same result as the predicate it was
+ * compiled from.  Predicates which are not known to the compiler are
+ * evaluated as they are.  The visitor and the property ids of a compiled
+ * predicate are those of the original predicate.
+ */
+public class CompiledPredicate implements BasePredicate {
+
+  /**
+   * Estimated probability of a property being equal to a value.
+   */
+  private static final double EQUALS_SELECTIVITY = 0.1;
+
+  /**
+   * Estimated probability of a property being in a range.
+   */
+  private static final double RANGE_SELECTIVITY = 0.33;
+
+  /**
+   * Estimated probability of an unknown predicate being true.
+   */
+  private static final double DEFAULT_SELECTIVITY = 0.5;
+
+  /**
+   * Estimated cost of evaluating a comparison.
+   */
+  private static final double COMPARISON_COST = 1.0;
+
+  /**
+   * Estimated cost of evaluating an unknown predicate.
+   */
+  private static final double DEFAULT_COST = 4.0;
+
+  /**
+   * The predicate that was compiled.
+   */
+  private final Predicate predicate;
+
+  /**
+   * The compiled predicate.
+   */
+  private final Node node;
+
+
+  // ----- Constructors ------------------------------------------------------
+
+  private CompiledPredicate(Predicate predicate) {
+    this.predicate = predicate;
+    this.node      = compileNode(predicate);
+  }
+
+  /**
+   * Compile the given predicate.
+   *
+   * @param predicate  the predicate; may be null
+   *
+   * @return the compiled predicate; null if the given predicate is null
+   */
+  public static Predicate compile(Predicate predicate) {
+    if (predicate == null || predicate instanceof CompiledPredicate) {
+      return predicate;
+    }
+    return new CompiledPredicate(predicate);
+  }
+
+
+  // ----- Predicate ---------------------------------------------------------
+
+  @Override
+  public boolean evaluate(Resource resource) {
+    return node.evaluate(resource);
+  }
+
+
+  // ----- BasePredicate -----------------------------------------------------
+
+  @Override
+  public Set<String> getPropertyIds() {
+    return PredicateHelper.getPropertyIds(predicate);
+  }
+
+
+  // ----- PredicateVisitorAcceptor ------------------------------------------
+
+  @Override
+  public void accept(PredicateVisitor visitor) {
+    PredicateHelper.visit(predicate, visitor);
+  }
+
+
+  // ----- accessors ---------------------------------------------------------
+
+  /**
+   * Get the predicate that was compiled.
+   *
+   * @return the original predicate
+   */
+  public Predicate getPredicate() {
+    return predicate;
+  }
+
+
+  // ----- Object overrides --------------------------------------------------
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof CompiledPredicate)) return false;
+
+    return predicate.equals(((CompiledPredicate) o).predicate);
+  }
+
+  @Override
+  public int hashCode() {
+    return predicate.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return predicate.toString();
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  /**
+   * Compile the given predicate.
+   */
+  private static Node compileNode(Predicate predicate) {
+    if (predicate instanceof AlwaysPredicate) {
+      return ConstantNode.TRUE;
+    }
+    if (predicate instanceof NotPredicate) {
+      Node node = compileNode(((NotPredicate) predicate).getPredicate());
+      return node instanceof NotNode ? ((NotNode) node).node : new NotNode(node);
+    }
+    if (predicate instanceof AndPredicate) {
+      return compileAnd(((AndPredicate) predicate).getPredicates());
+    }
+    if (predicate instanceof OrPredicate) {
+      return compileOr(((OrPredicate) predicate).getPredicates());
+    }
+    if (predicate instanceof ComparisonPredicate) {
+      ComparisonNode.Operator operator = ComparisonNode.getOperator((ComparisonPredicate) predicate);
+      if (operator != null) {
+        return new ComparisonNode((ComparisonPredicate) predicate, operator);
+      }
+    }
+    return new PredicateNode(predicate);
+  }
+
+  /**
+   * Compile the operands of an AND predicate.
+   */
+  private static Node compileAnd(Predicate[] predicates) {
+    List<Node> nodes = new ArrayList<Node>();
+    for (Predicate predicate : predicates) {
+      Node node = compileNode(predicate);
+      if (node instanceof AndNode) {
+        nodes.addAll(Arrays.asList(((AndNode) node).nodes));
+      } else if (node == ConstantNode.FALSE) {
+        return ConstantNode.FALSE;
+      } else if (node != ConstantNode.TRUE) {
+        nodes.add(node);
+      }
+    }
+    if (nodes.isEmpty()) {
+      return ConstantNode.TRUE;
+    }
+    return nodes.size() == 1 ? nodes.get(0) : new AndNode(nodes);
+  }
+
+  /**
+   * Compile the operands of an OR predicate.
+   */
+  private static Node compileOr(Predicate[] predicates) {
+    List<Node> nodes = new ArrayList<Node>();
+    for (Predicate predicate : predicates) {
+      Node node = compileNode(predicate);
+      if (node instanceof OrNode) {
+        nodes.addAll(Arrays.asList(((OrNode) node).nodes));
+      } else if (node == ConstantNode.TRUE) {
+        return ConstantNode.TRUE;
+      } else if (node != ConstantNode.FALSE) {
+        nodes.add(node);
+      }
+    }
+
+    // replace the string comparisons of the same property with a set lookup
+    Map<String, List<ComparisonNode>> stringEquals = new LinkedHashMap<String, List<ComparisonNode>>();
+    for (Node node : nodes) {
+      if (node instanceof ComparisonNode && ((ComparisonNode) node).isStringEquals()) {
+        String propertyId = ((ComparisonNode) node).accessor.getPropertyId();
+
+        List<ComparisonNode> propertyNodes = stringEquals.get(propertyId);
+        if (propertyNodes == null) {
+          propertyNodes = new ArrayList<ComparisonNode>();
+          stringEquals.put(propertyId, propertyNodes);
+        }
+        propertyNodes.add((ComparisonNode) node);
+      }
+    }
+    for (List<ComparisonNode> propertyNodes : stringEquals.values()) {
+      if (propertyNodes.size() > 1) {
+        int index = nodes.indexOf(propertyNodes.get(0));
+        nodes.removeAll(propertyNodes);
+        nodes.add(index, new InNode(propertyNodes));
+      }
+    }
+
+    if (nodes.isEmpty()) {
+      return ConstantNode.FALSE;
+    }
+    return nodes.size() == 1 ? nodes.get(0) : new OrNode(nodes);
+  }
+
+
+  // ----- inner class : Node ------------------------------------------------
+
+  /**
+   * A node of a compiled predicate.
+   */
+  private static abstract class Node {
+
+    /**
+     * Evaluate the node for the given resource.
+     */
+    abstract boolean evaluate(Resource resource);
+
+    /**
+     * Get the estimated probability of the node evaluating to true.
+     */
+    abstract double getSelectivity();
+
+    /**
+     * Get the estimated cost of evaluating the node.
+     */
+    abstract double getCost();
+  }
+
+
+  // ----- inner class : ConstantNode ----------------------------------------
+
+  /**
+   * Node which always evaluates to the same result.
+   */
+  private static class ConstantNode extends Node {
+    private static final ConstantNode TRUE  = new ConstantNode(true);
+    private static final ConstantNode FALSE = new ConstantNode(false);
+
+    private final boolean value;
+
+    private ConstantNode(boolean value) {
+      this.value = value;
+    }
+
+    @Override
+    boolean evaluate(Resource resource) {
+      return value;
+    }
+
+    @Override
+    double getSelectivity() {
+      return value ? 1.0 : 0.0;
+    }
+
+    @Override
+    double getCost() {
+      return 0.0;
+    }
+  }
+
+
+  // ----- inner class : PredicateNode ---------------------------------------
+
+  /**
+   * Node which evaluates a predicate the compiler doesn't know.
+   */
+  private static class PredicateNode extends Node {
+    private final Predicate predicate;
+
+    private PredicateNode(Predicate predicate) {
+      this.predicate = predicate;
+    }
+
+    @Override
+    boolean evaluate(Resource resource) {
+      return predicate.evaluate(resource);
+    }
+
+    @Override
+    double getSelectivity() {
+      return DEFAULT_SELECTIVITY;
+    }
+
+    @Override
+    double getCost() {
+      return DEFAULT_COST;
+    }
+  }
+
+
+  // ----- inner class : ComparisonNode --------------------------------------
+
+  /**
+   * Node which compares a property to a literal.  This is the same comparison
+   * as {@link ComparisonPredicate#compareValueTo(Object)} with the literal
+   * parsed ahead.
+   */
+  private static class ComparisonNode extends Node {
+
+    /**
+     * The comparison operators.
+     */
+    private enum Operator {
+      EQUALS,
+      LESS,
+      LESS_EQUALS,
+      GREATER,
+      GREATER_EQUALS
+    }
+
+    private final ComparisonPredicate predicate;
+    private final Operator operator;
+    private final PropertyAccessor accessor;
+
+    /**
+     * The literal; null for a comparison to null.
+     */
+    private final Object value;
+
+    /**
+     * The literal as a string, if it is a string.
+     */
+    private final String stringValue;
+
+    /**
+     * Whether the literal is a number or a string which is a number.
+     */
+    private final boolean numeric;
+
+    /**
+     * The literal as a double, if it is numeric.
+     */
+    private final double doubleValue;
+
+    private ComparisonNode(ComparisonPredicate predicate, Operator operator) {
+      this.predicate = predicate;
+      this.operator  = operator;
+      this.accessor  = new PropertyAccessor(predicate.getPropertyId());
+      this.value     = predicate.getValue();
+
+      Double parsedValue = null;
+      if (value instanceof Number) {
+        parsedValue = ((Number) value).doubleValue();
+      } else if (value instanceof String) {
+        parsedValue = ComparisonPredicate.stringToDouble((String) value);
+      }
+      stringValue = value instanceof String ? (String) value : null;
+      numeric     = parsedValue != null;
+      doubleValue = numeric ? parsedValue : 0.0;
+    }
+
+    /**
+     * Get the operator of the given predicate.
+     *
+     * @return the operator; null if the predicate is not one of the known
+     *         comparison predicates
+     */
+    private static Operator getOperator(ComparisonPredicate predicate) {
+      Class<?> predicateClass = predicate.getClass();
+      if (predicateClass == EqualsPredicate.class) {
+        return Operator.EQUALS;
+      }
+      if (predicateClass == LessPredicate.class) {
+        return Operator.LESS;
+      }
+      if (predicateClass == LessEqualsPredicate.class) {
+        return Operator.LESS_EQUALS;
+      }
+      if (predicateClass == GreaterPredicate.class) {
+        return Operator.GREATER;
+      }
+      if (predicateClass == GreaterEqualsPredicate.class) {
+        return Operator.GREATER_EQUALS;
+      }
+      return null;
+    }
+
+    /**
+     * Determine whether this node compares the property for equality with a
+     * string which is not a number.
+     */
+    private boolean isStringEquals() {
+      return operator == Operator.EQUALS && stringValue != null && !numeric;
+    }
+
+    @Override
+    boolean evaluate(Resource resource) {
+      Object propertyValue = accessor.getValue(resource);
+
+      if (propertyValue == null) {
+        return value == null && operator == Operator.EQUALS;
+      }
+      if (value == null) {
+        return false;
+      }
+
+      switch (operator) {
+        case EQUALS:
+          return isStringEquals() ?
+              stringValue.equals(propertyValue.toString()) : compareTo(propertyValue) == 0;
+        case LESS:
+          return compareTo(propertyValue) > 0;
+        case LESS_EQUALS:
+          return compareTo(propertyValue) >= 0;
+        case GREATER:
+          return compareTo(propertyValue) < 0;
+        case GREATER_EQUALS:
+          return compareTo(propertyValue) <= 0;
+        default:
+          return predicate.evaluate(resource);
+      }
+    }
+
+    /**
+     * Compare the literal to the given property value.
+     */
+    @SuppressWarnings("unchecked")
+    private int compareTo(Object propertyValue) {
+      if (numeric) {
+        if (propertyValue instanceof Number) {
+          return Double.compare(doubleValue, ((Number) propertyValue).doubleValue());
+        }
+        else if (propertyValue instanceof String) {
+          Double doubleFromString = ComparisonPredicate.stringToDouble((String) propertyValue);
+          if (doubleFromString != null) {
+            return Double.compare(doubleValue, doubleFromString);
+          }
+        }
+      }
+      if (stringValue != null) {
+        return stringValue.compareTo(propertyValue.toString());
+      }
+      return predicate.compareValueTo(propertyValue);
+    }
+
+    @Override
+    double getSelectivity() {
+      return operator == Operator.EQUALS ? EQUALS_SELECTIVITY : RANGE_SELECTIVITY;
+    }
+
+    @Override
+    double getCost() {
+      return COMPARISON_COST;
+    }
+  }
+
+
+  // ----- inner class : InNode ----------------------------------------------
+
+  /**
+   * Node which checks whether a property is one of a set of strings.
+   */
+  private static class InNode extends Node {
+    private final PropertyAccessor accessor;
+    private final Set<String> values = new HashSet<String>();
+
+    private InNode(List<ComparisonNode> nodes) {
+      accessor = nodes.get(0).accessor;
+      for (ComparisonNode node : nodes) {
+        values.add(node.stringValue);
+      }
+    }
+
+    @Override
+    boolean evaluate(Resource resource) {
+      Object propertyValue = accessor.getValue(resource);
+      return propertyValue != null && values.contains(propertyValue.toString());
+    }
+
+    @Override
+    double getSelectivity() {
+      return 1.0 - Math.pow(1.0 - EQUALS_SELECTIVITY, values.size());
+    }
+
+    @Override
+    double getCost() {
+      return COMPARISON_COST;
+    }
+  }
+
+
+  // ----- inner class : NotNode ---------------------------------------------
+
+  /**
+   * Node which negates another node.
+   */
+  private static class NotNode extends Node {
+    private final Node node;
+
+    private NotNode(Node node) {
+      this.node = node;
+    }
+
+    @Override
+    boolean evaluate(Resource resource) {
+      return !node.evaluate(resource);
+    }
+
+    @Override
+    double getSelectivity() {
+      return 1.0 - node.getSelectivity();
+    }
+
+    @Override
+    double getCost() {
+      return node.getCost();
+    }
+  }
+
+
+  // ----- inner class : AndNode ---------------------------------------------
+
+  /**
+   * Node which evaluates to true if all of its operands evaluate to true.
+   * The operands which are cheapest for the chance of being false are
+   * evaluated first.
+   */
+  private static class AndNode extends Node {
+    private final Node[] nodes;
+    private final double selectivity;
+    private final double cost;
+
+    private AndNode(List<Node> nodes) {
+      List<Node> orderedNodes = new ArrayList<Node>(nodes);
+      Collections.sort(orderedNodes, new Comparator<Node>() {
+        @Override
+        public int compare(Node node1, Node node2) {
+          return Double.compare(getRank(node1), getRank(node2));
+        }
+
+        private double getRank(Node node) {
+          double falseProbability = 1.0 - node.getSelectivity();
+          return falseProbability == 0.0 ? Double.MAX_VALUE : node.getCost() / falseProbability;
+        }
+      });
+      this.nodes = orderedNodes.toArray(new Node[orderedNodes.size()]);
+
+      double selectivity = 1.0;
+      double cost        = 0.0;
+      for (Node node : this.nodes) {
+        cost        += selectivity * node.getCost();
+        selectivity *= node.getSelectivity();
+      }
+      this.selectivity = selectivity;
+      this.cost        = cost;
+    }
+
+    @Override
+    boolean evaluate(Resource resource) {
+      for (Node node : nodes) {
+        if (!node.evaluate(resource)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    double getSelectivity() {
+      return selectivity;
+    }
+
+    @Override
+    double getCost() {
+      return cost;
+    }
+  }
+
+
+  // ----- inner class : OrNode ----------------------------------------------
+
+  /**
+   * Node which evaluates to true if any of its operands evaluates to true.
+   * The operands which are cheapest for the chance of being true are
+   * evaluated first.
+   */
+  private static class OrNode extends Node {
+    private final Node[] nodes;
+    private final double selectivity;
+    private final double cost;
+
+    private OrNode(List<Node> nodes) {
+      List<Node> orderedNodes = new ArrayList<Node>(nodes);
+      Collections.sort(orderedNodes, new Comparator<Node>() {
+        @Override
+        public int compare(Node node1, Node node2) {
+          return Double.compare(getRank(node1), getRank(node2));
+        }
+
+        private double getRank(Node node) {
+          double trueProbability = node.getSelectivity();
+          return trueProbability == 0.0 ? Double.MAX_VALUE : node.getCost() / trueProbability;
+        }
+      });
+      this.nodes = orderedNodes.toArray(new Node[orderedNodes.size()]);
+
+      double falseProbability = 1.0;
+      double cost             = 0.0;
+      for (Node node : this.nodes) {
+        cost             += falseProbability * node.getCost();
+        falseProbability *= 1.0 - node.getSelectivity();
+      }
+      this.selectivity = 1.0 - falseProbability;
+      this.cost        = cost;
+    }
+
+    @Override
+    boolean evaluate(Resource resource) {
+      for (Node node : nodes) {
+        if (node.evaluate(resource)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    double getSelectivity() {
+      return selectivity;
+    }
+
+    @Override
+    double getCost() {
+      return cost;
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.controller.predicate;
+
+import org.apache.ambari.server.controller.internal.CompactResourceImpl;
+import org.apache.ambari.server.controller.internal.PropertyLayout;
+import org.apache.ambari.server.controller.internal.ResourceImpl;
+import org.apache.ambari.server.controller.spi.Resource;
+import org.apache.ambari.server.controller.utilities.PropertyHelper;
+
+import java.util.Map;
+
+/**
+ * Gets the value of a property from resources.  The property id is split into
+ * category and name once, and the slot of the property is resolved once for
+ * each {@link PropertyLayout}, i.e. once per resource type, instead of on
+ * every lookup.
+ */
+class PropertyAccessor {
+
+  /**
+   * The property id.
+   */
+  private final String propertyId;
+
+  /**
+   * The category key of the property; the empty string if it has no category.
+   */
+  private final String categoryKey;
+
+  /**
+   * The property name.
+   */
+  private final String name;
+
+  /**
+   * The slot of the property in the layout of the last compact resource.
+   */
+  private volatile LayoutSlot layoutSlot = null;
+
+
+  // ----- Constructors ------------------------------------------------------
+
+  /**
+   * Create an accessor for the given property id.
+   *
+   * @param propertyId  the property id
+   */
+  PropertyAccessor(String propertyId) {
+    String category = PropertyHelper.getPropertyCategory(propertyId);
+
+    this.propertyId  = propertyId;
+    this.categoryKey = category == null ? "" : category;
+    this.name        = PropertyHelper.getPropertyName(propertyId);
+  }
+
+
+  // ----- PropertyAccessor --------------------------------------------------
+
+  /**
+   * Get the property id.
+   *
+   * @return the property id
+   */
+  String getPropertyId() {
+    return propertyId;
+  }
+
+  /**
+   * Get the value of the property from the given resource.
+   *
+   * @param resource  the resource
+   *
+   * @return the property value; null if the property is not set
+   */
+  Object getValue(Resource resource) {
+    if (resource instanceof CompactResourceImpl) {
+      CompactResourceImpl compactResource = (CompactResourceImpl) resource;
+
+      int slot = getSlot(compactResource.getLayout());
+      return slot == -1 ? resource.getPropertyValue(propertyId) : compactResource.getPropertyValue(slot);
+    }
+    if (resource.getClass() == ResourceImpl.class) {
+      Map<String, Object> properties = resource.getPropertiesMap().get(categoryKey);
+
+      return properties == null ? null : properties.get(name);
+    }
+    return resource.getPropertyValue(propertyId);
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private int getSlot(PropertyLayout layout) {
+    LayoutSlot cached = layoutSlot;
+    if (cached == null || cached.layout != layout) {
+      cached     = new LayoutSlot(layout, layout.getSlot(propertyId));
+      layoutSlot = cached;
+    }
+    return cached.slot;
+  }
+
+
+  // ----- inner class : LayoutSlot ------------------------------------------
+
+  /**
+   * A property layout and the slot of the property in it.
+   */
+  private static class LayoutSlot {
+    private final PropertyLayout layout;
+    private final int slot;
+
+    private LayoutSlot(PropertyLayout layout, int slot) {
+      this.layout = layout;
+      this.slot   = slot;
+    }
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.controller.spi;
+
+/**
+ * Resource provider that can be queried for the sub-resources of many parent
+ * resources at once.
+ *
+ * When the sub-resources of several parent resources are requested, the
+ * query ORs the key property predicates of all of the parents into a single
+ * predicate and groups the returned resources back to their parents by their
+ * key properties.  A provider should implement
+ * {@link org.apache.ambari.server.controller.spi.BatchedResourceProvider} if it
+ * handles such a predicate in a single call, for example by building one
+ * backend request for each of the property maps of the predicate.  The
+ * sub-resources of providers that don't implement it are queried one parent
+ * at a time.
+ */
+public interface BatchedResourceProvider extends ResourceProvider {
+}
@@ -18,6 +18,7 @@
 package org.apache.ambari.server.events.publishers;
 
 import org.apache.ambari.server.events.AmbariEvent;
+import org.apache.ambari.server.state.StateVersion;
 
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
@@ -45,12 +46,15 @@ public class AmbariEventPublisher {
 
   /**
    * Publishes the specified event to all registered listeners that
-   * {@link Subscribe} to any of the {@link AmbariEvent} instances.
+   * {@link Subscribe} to any of the {@link AmbariEvent} instances. The
+   * {@link StateVersion} is incremented once the listeners have handled the
+   * event.
    *
    * @param event
    */
   public void publish(AmbariEvent event) {
     m_eventBus.post(event);
+    StateVersion.increment();
   }
 
   /**
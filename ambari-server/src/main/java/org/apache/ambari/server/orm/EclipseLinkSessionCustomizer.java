@@ -19,9 +19,15 @@ package org.apache.ambari.server.orm;
 
 import javax.activation.DataSource;
 
+import org.apache.ambari.server.state.StateVersion;
 import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkImpl;
+import org.eclipse.persistence.queries.DatabaseQuery;
 import org.eclipse.persistence.sessions.JNDIConnector;
 import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.changesets.UnitOfWorkChangeSet;
 
 /**
  * The {@link EclipseLinkSessionCustomizer} is used as a way to quickly override
@@ -46,13 +52,59 @@ import org.eclipse.persistence.sessions.Session;
  */
 public class EclipseLinkSessionCustomizer implements SessionCustomizer {
 
+  /**
+   * Set on the thread of a transaction which ran a bulk update or delete or
+   * a native modify query; those changes are not in the change set of the
+   * unit of work.
+   */
+  private static final ThreadLocal<Boolean> s_modifyQueryExecuted = new ThreadLocal<Boolean>();
+
   /**
    * {@inheritDoc}
    * <p/>
-   * Currently a NOOP, this class exists for quick customization purposes.
+   * Increments the {@link StateVersion} after each unit of work which
+   * changed the database is committed.
    */
   @Override
   public void customize(Session session) throws Exception {
-    // NOOP
+    session.getEventManager().addListener(new SessionEventAdapter() {
+      @Override
+      public void postExecuteQuery(SessionEvent event) {
+        DatabaseQuery query = event.getQuery();
+        if (query != null && (query.isModifyAllQuery() || query.isDataModifyQuery())) {
+          s_modifyQueryExecuted.set(Boolean.TRUE);
+        }
+      }
+
+      @Override
+      public void postCommitUnitOfWork(SessionEvent event) {
+        boolean modifyQueryExecuted = s_modifyQueryExecuted.get() != null;
+        s_modifyQueryExecuted.remove();
+        if (modifyQueryExecuted || hasChanges(event.getSession())) {
+          StateVersion.increment();
+        }
+      }
+
+      @Override
+      public void postRollbackTransaction(SessionEvent event) {
+        s_modifyQueryExecuted.remove();
+      }
+    });
+  }
+
+  /**
+   * Determine whether the given committed unit of work changed any entity.
+   *
+   * @param session  the unit of work
+   *
+   * @return true if the change set of the unit of work has changes, or if
+   *         the changes can't be determined
+   */
+  static boolean hasChanges(Session session) {
+    if (!(session instanceof UnitOfWorkImpl)) {
+      return true;
+    }
+    UnitOfWorkChangeSet changeSet = ((UnitOfWorkImpl) session).getUnitOfWorkChangeSet();
+    return changeSet == null || changeSet.hasChanges();
   }
 }
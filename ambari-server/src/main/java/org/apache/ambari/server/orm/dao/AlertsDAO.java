@@ -17,10 +17,13 @@
  */
 package org.apache.ambari.server.orm.dao;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
@@ -636,6 +639,106 @@ public class AlertsDAO {
     return query.executeUpdate();
   }
 
+  /**
+   * Gets the IDs of the oldest historical alerts which may be removed by the
+   * retention service. Alerts which are still referenced as the current
+   * instance of an alert are never returned.
+   *
+   * @param before
+   *          only alerts with a timestamp before this time are returned.
+   * @param maxAlertId
+   *          only alerts with this ID or lower are returned.
+   * @param states
+   *          the alert states which may be removed.
+   * @param limit
+   *          the max number of IDs to return.
+   * @return the alert IDs, oldest first (never {@code null}).
+   */
+  @RequiresSession
+  public List<Long> findHistoryIdsToPrune(long before, long maxAlertId,
+      Collection<AlertState> states, int limit) {
+    TypedQuery<Long> query = entityManagerProvider.get().createQuery(
+        "SELECT history.alertId FROM AlertHistoryEntity history "
+            + "WHERE history.alertTimestamp < :before AND history.alertId <= :maxAlertId "
+            + "AND history.alertState IN :states "
+            + "AND NOT EXISTS (SELECT alertCurrent.alertId FROM AlertCurrentEntity alertCurrent "
+            + "WHERE alertCurrent.alertHistory.alertId = history.alertId) "
+            + "ORDER BY history.alertId", Long.class);
+
+    query.setParameter("before", before);
+    query.setParameter("maxAlertId", maxAlertId);
+    query.setParameter("states", states);
+    query.setMaxResults(limit);
+
+    return daoUtils.selectList(query);
+  }
+
+  /**
+   * Gets the ID of the historical alert at the given position, counting from
+   * the most recent alert.
+   *
+   * @param offset
+   *          the number of newer alerts.
+   * @return the alert ID, or {@code null} if there are not enough alerts.
+   */
+  @RequiresSession
+  public Long findHistoryIdAtOffset(int offset) {
+    TypedQuery<Long> query = entityManagerProvider.get().createQuery(
+        "SELECT history.alertId FROM AlertHistoryEntity history ORDER BY history.alertId DESC",
+        Long.class);
+
+    query.setFirstResult(offset);
+    return daoUtils.selectOne(query);
+  }
+
+  /**
+   * Gets the historical alerts with the given IDs.
+   *
+   * @param alertIds
+   *          the IDs of the alerts.
+   * @return the alerts (never {@code null}).
+   */
+  @RequiresSession
+  public List<AlertHistoryEntity> findHistoryByIds(Collection<Long> alertIds) {
+    if (null == alertIds || alertIds.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    TypedQuery<AlertHistoryEntity> query = entityManagerProvider.get().createQuery(
+        "SELECT history FROM AlertHistoryEntity history WHERE history.alertId IN :alertIds",
+        AlertHistoryEntity.class);
+
+    query.setParameter("alertIds", alertIds);
+    return daoUtils.selectList(query);
+  }
+
+  /**
+   * Removes historical alerts along with their notices using bulk deletes.
+   *
+   * @param alertIds
+   *          the IDs of the alerts to remove.
+   * @return the number of rows removed, by table.
+   */
+  @Transactional
+  public Map<String, Integer> removeHistory(Collection<Long> alertIds) {
+    Map<String, Integer> removed = new LinkedHashMap<String, Integer>();
+    if (null == alertIds || alertIds.isEmpty()) {
+      return removed;
+    }
+
+    EntityManager entityManager = entityManagerProvider.get();
+
+    removed.put("alert_notice", entityManager.createQuery(
+        "DELETE FROM AlertNoticeEntity notice WHERE notice.alertHistory.alertId IN :alertIds")
+        .setParameter("alertIds", alertIds).executeUpdate());
+
+    removed.put("alert_history", entityManager.createQuery(
+        "DELETE FROM AlertHistoryEntity history WHERE history.alertId IN :alertIds")
+        .setParameter("alertIds", alertIds).executeUpdate());
+
+    return removed;
+  }
+
   /**
    * Persists a new alert.
    *
@@ -21,7 +21,9 @@ package org.apache.ambari.server.orm.dao;
 import java.text.MessageFormat;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
@@ -129,6 +131,86 @@ public class RequestDAO {
     return daoUtils.selectSingle(query, requestId);
   }
 
+  /**
+   * Gets the IDs of the oldest requests which may be removed by the retention
+   * service. Only requests whose tasks all have one of the given statuses and
+   * which are not part of an upgrade are returned.
+   *
+   * @param createdBefore  only requests created before this time are returned
+   * @param maxRequestId  only requests with this ID or lower are returned
+   * @param statuses  the task statuses which allow a request to be removed
+   * @param limit  the max number of IDs to return
+   * @return the request IDs, oldest first
+   */
+  @RequiresSession
+  public List<Long> findRequestIdsToPrune(long createdBefore, long maxRequestId,
+      Collection<HostRoleStatus> statuses, int limit) {
+    TypedQuery<Long> query = entityManagerProvider.get().createQuery(
+        "SELECT request.requestId FROM RequestEntity request " +
+          "WHERE request.createTime < ?1 AND request.requestId <= ?2 " +
+          "AND request.requestId NOT IN (SELECT upgrade.requestId FROM UpgradeEntity upgrade) " +
+          "AND NOT EXISTS (SELECT task.taskId FROM HostRoleCommandEntity task " +
+          "WHERE task.requestId = request.requestId AND task.status NOT IN ?3) " +
+          "ORDER BY request.requestId",
+        Long.class);
+    query.setMaxResults(limit);
+
+    return daoUtils.selectList(query, createdBefore, maxRequestId, statuses);
+  }
+
+  /**
+   * Gets the ID of the request at the given position, counting from the most
+   * recent request.
+   *
+   * @param offset  the number of newer requests
+   * @return the request ID, or {@code null} if there are not enough requests
+   */
+  @RequiresSession
+  public Long findRequestIdAtOffset(int offset) {
+    TypedQuery<Long> query = entityManagerProvider.get().createQuery(
+        MessageFormat.format(REQUEST_IDS_SORTED_SQL, "DESC"), Long.class);
+    query.setFirstResult(offset);
+
+    return daoUtils.selectOne(query);
+  }
+
+  /**
+   * Removes requests along with their stages, tasks and execution commands
+   * using bulk deletes.
+   *
+   * @param requestIds  the IDs of the requests to remove
+   * @return the number of rows removed, by table
+   */
+  @Transactional
+  public Map<String, Integer> removeRequests(Collection<Long> requestIds) {
+    Map<String, Integer> removed = new LinkedHashMap<String, Integer>();
+    if (null == requestIds || requestIds.isEmpty()) {
+      return removed;
+    }
+
+    EntityManager entityManager = entityManagerProvider.get();
+    String tasks = "SELECT task.taskId FROM HostRoleCommandEntity task WHERE task.requestId IN ?1";
+
+    removed.put("execution_command", daoUtils.executeUpdate(entityManager.createQuery(
+        "DELETE FROM ExecutionCommandEntity command WHERE command.taskId IN (" + tasks + ")"), requestIds));
+    removed.put("task_output_chunk", daoUtils.executeUpdate(entityManager.createQuery(
+        "DELETE FROM TaskOutputChunkEntity chunk WHERE chunk.taskId IN (" + tasks + ")"), requestIds));
+    removed.put("host_role_command", daoUtils.executeUpdate(entityManager.createQuery(
+        "DELETE FROM HostRoleCommandEntity task WHERE task.requestId IN ?1"), requestIds));
+    removed.put("role_success_criteria", daoUtils.executeUpdate(entityManager.createQuery(
+        "DELETE FROM RoleSuccessCriteriaEntity criteria WHERE criteria.requestId IN ?1"), requestIds));
+    removed.put("stage", daoUtils.executeUpdate(entityManager.createQuery(
+        "DELETE FROM StageEntity stage WHERE stage.requestId IN ?1"), requestIds));
+    removed.put("requestresourcefilter", daoUtils.executeUpdate(entityManager.createQuery(
+        "DELETE FROM RequestResourceFilterEntity filter WHERE filter.requestId IN ?1"), requestIds));
+    removed.put("requestoperationlevel", daoUtils.executeUpdate(entityManager.createQuery(
+        "DELETE FROM RequestOperationLevelEntity level WHERE level.requestId IN ?1"), requestIds));
+    removed.put("request", daoUtils.executeUpdate(entityManager.createQuery(
+        "DELETE FROM RequestEntity request WHERE request.requestId IN ?1"), requestIds));
+
+    return removed;
+  }
+
   @Transactional
   public void create(RequestEntity requestEntity) {
     entityManagerProvider.get().persist(requestEntity);
@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.orm.dao;
+
+import static org.apache.ambari.server.orm.dao.DaoUtils.ORACLE_LIST_LIMIT;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+import org.apache.ambari.server.actionmanager.HostRoleStatus;
+import org.apache.ambari.server.orm.RequiresSession;
+import org.apache.ambari.server.orm.entities.TaskOutputChunkEntity;
+import org.apache.ambari.server.orm.entities.TaskOutputChunkEntity.OutputType;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.google.inject.persist.Transactional;
+
+/**
+ * The {@link TaskOutputChunkDAO} is used to store and read the chunked output
+ * of tasks which are in progress.
+ */
+@Singleton
+public class TaskOutputChunkDAO {
+
+  /**
+   * JPA entity manager
+   */
+  @Inject
+  Provider<EntityManager> entityManagerProvider;
+
+  @Inject
+  DaoUtils daoUtils;
+
+  /**
+   * Gets the chunks of the given output of a task which contain bytes at or
+   * after the specified offset, in order.
+   *
+   * @param taskId
+   *          the task ID
+   * @param outputType
+   *          the output stream
+   * @param offset
+   *          the offset of the first byte needed
+   * @return the chunks, or an empty list if none
+   */
+  @RequiresSession
+  public List<TaskOutputChunkEntity> findByTaskFromOffset(long taskId,
+      OutputType outputType, long offset) {
+    TypedQuery<TaskOutputChunkEntity> query = entityManagerProvider.get().createNamedQuery(
+        "TaskOutputChunkEntity.findByTaskFromOffset", TaskOutputChunkEntity.class);
+
+    query.setParameter("taskId", taskId);
+    query.setParameter("outputType", outputType);
+    query.setParameter("offset", offset);
+
+    return daoUtils.selectList(query);
+  }
+
+  /**
+   * Gets the most recently written chunk of the given output of a task.
+   *
+   * @param taskId
+   *          the task ID
+   * @param outputType
+   *          the output stream
+   * @return the last chunk, or {@code null} if none
+   */
+  @RequiresSession
+  public TaskOutputChunkEntity findLastByTask(long taskId, OutputType outputType) {
+    TypedQuery<TaskOutputChunkEntity> query = entityManagerProvider.get().createNamedQuery(
+        "TaskOutputChunkEntity.findLastByTask", TaskOutputChunkEntity.class);
+
+    query.setParameter("taskId", taskId);
+    query.setParameter("outputType", outputType);
+
+    return daoUtils.selectOne(query);
+  }
+
+  /**
+   * Gets the number of bytes stored for each output of the given tasks. Tasks
+   * without chunks are not included.
+   *
+   * @param taskIds
+   *          the task IDs
+   * @return the task ID, output stream and stored length of each chunked
+   *         output, or an empty list if none
+   */
+  @RequiresSession
+  public List<Object[]> findLengthsByTasks(Collection<Long> taskIds) {
+    if (taskIds.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    TypedQuery<Object[]> query = entityManagerProvider.get().createNamedQuery(
+        "TaskOutputChunkEntity.findLengthsByTasks", Object[].class);
+
+    List<Object[]> result = new ArrayList<Object[]>();
+    for (List<Long> list : Lists.partition(new ArrayList<Long>(taskIds), ORACLE_LIST_LIMIT)) {
+      query.setParameter("taskIds", list);
+      result.addAll(daoUtils.selectList(query));
+    }
+
+    return result;
+  }
+
+  /**
+   * Persists a new chunk.
+   *
+   * @param chunk
+   *          the chunk to persist (not {@code null}).
+   */
+  @Transactional
+  public void create(TaskOutputChunkEntity chunk) {
+    entityManagerProvider.get().persist(chunk);
+  }
+
+  /**
+   * Removes all chunks of all outputs of a task.
+   *
+   * @param taskId
+   *          the task ID
+   * @return the number of chunks removed
+   */
+  @Transactional
+  public int removeByTask(long taskId) {
+    return entityManagerProvider.get().createNamedQuery(
+        "TaskOutputChunkEntity.removeByTask").setParameter("taskId", taskId).executeUpdate();
+  }
+
+  /**
+   * Removes the chunks of all tasks which are no longer in progress, such as
+   * those left behind when the server stopped before a task completed.
+   *
+   * @return the number of chunks removed
+   */
+  @Transactional
+  public int removeByTaskNotInProgress() {
+    return entityManagerProvider.get().createNamedQuery(
+        "TaskOutputChunkEntity.removeByTaskNotInStatus").setParameter(
+        "statuses", HostRoleStatus.IN_PROGRESS_STATUSES).executeUpdate();
+  }
+}
@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.orm.entities;
+
+import java.util.Arrays;
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Lob;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+
+/**
+ * The {@link TaskOutputChunkEntity} class holds a single compressed piece of
+ * the output of a task which is in progress. The chunks of a task are append
+ * only; each one holds the bytes which follow those of the previous chunk.
+ */
+@IdClass(TaskOutputChunkEntityPK.class)
+@Table(name = "task_output_chunk")
+@Entity
+@NamedQueries({
+    @NamedQuery(name = "TaskOutputChunkEntity.findByTaskFromOffset", query = "SELECT chunk FROM TaskOutputChunkEntity chunk WHERE chunk.taskId = :taskId AND chunk.outputType = :outputType AND chunk.startOffset + chunk.chunkLength > :offset ORDER BY chunk.chunkIndex"),
+    @NamedQuery(name = "TaskOutputChunkEntity.findLastByTask", query = "SELECT chunk FROM TaskOutputChunkEntity chunk WHERE chunk.taskId = :taskId AND chunk.outputType = :outputType ORDER BY chunk.chunkIndex DESC"),
+    @NamedQuery(name = "TaskOutputChunkEntity.findLengthsByTasks", query = "SELECT chunk.taskId, chunk.outputType, MAX(chunk.startOffset + chunk.chunkLength) FROM TaskOutputChunkEntity chunk WHERE chunk.taskId IN :taskIds GROUP BY chunk.taskId, chunk.outputType"),
+    @NamedQuery(name = "TaskOutputChunkEntity.removeByTask", query = "DELETE FROM TaskOutputChunkEntity chunk WHERE chunk.taskId = :taskId"),
+    @NamedQuery(name = "TaskOutputChunkEntity.removeByTaskNotInStatus", query = "DELETE FROM TaskOutputChunkEntity chunk WHERE chunk.taskId NOT IN (SELECT task.taskId FROM HostRoleCommandEntity task WHERE task.status IN :statuses)") })
+public class TaskOutputChunkEntity {
+
+  /**
+   * The output streams of a task which can be chunked.
+   */
+  public enum OutputType {
+    STDOUT,
+    STDERR
+  }
+
+  @Id
+  @Column(name = "task_id", nullable = false, insertable = true, updatable = false)
+  private Long taskId;
+
+  @Id
+  @Column(name = "output_type", nullable = false, insertable = true, updatable = false)
+  @Enumerated(EnumType.STRING)
+  private OutputType outputType;
+
+  @Id
+  @Column(name = "chunk_index", nullable = false, insertable = true, updatable = false)
+  private Integer chunkIndex;
+
+  /**
+   * The offset, in uncompressed bytes, of the first byte of this chunk.
+   */
+  @Basic
+  @Column(name = "start_offset", nullable = false)
+  private Long startOffset;
+
+  /**
+   * The number of uncompressed bytes in this chunk.
+   */
+  @Basic
+  @Column(name = "chunk_length", nullable = false)
+  private Integer chunkLength;
+
+  /**
+   * The deflated bytes of this chunk.
+   */
+  @Lob
+  @Basic
+  @Column(name = "chunk_data", nullable = false)
+  private byte[] chunkData;
+
+  public Long getTaskId() {
+    return taskId;
+  }
+
+  public void setTaskId(Long taskId) {
+    this.taskId = taskId;
+  }
+
+  public OutputType getOutputType() {
+    return outputType;
+  }
+
+  public void setOutputType(OutputType outputType) {
+    this.outputType = outputType;
+  }
+
+  public Integer getChunkIndex() {
+    return chunkIndex;
+  }
+
+  public void setChunkIndex(Integer chunkIndex) {
+    this.chunkIndex = chunkIndex;
+  }
+
+  public Long getStartOffset() {
+    return startOffset;
+  }
+
+  public void setStartOffset(Long startOffset) {
+    this.startOffset = startOffset;
+  }
+
+  public Integer getChunkLength() {
+    return chunkLength;
+  }
+
+  public void setChunkLength(Integer chunkLength) {
+    this.chunkLength = chunkLength;
+  }
+
+  public byte[] getChunkData() {
+    return chunkData;
+  }
+
+  public void setChunkData(byte[] chunkData) {
+    this.chunkData = chunkData;
+  }
+
+  /**
+   * @return the offset just past the last uncompressed byte of this chunk
+   */
+  public long getEndOffset() {
+    return startOffset + chunkLength;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    TaskOutputChunkEntity that = (TaskOutputChunkEntity) o;
+
+    if (taskId != null ? !taskId.equals(that.taskId) : that.taskId != null) {
+      return false;
+    }
+    if (outputType != that.outputType) {
+      return false;
+    }
+    if (chunkIndex != null ? !chunkIndex.equals(that.chunkIndex) : that.chunkIndex != null) {
+      return false;
+    }
+    return Arrays.equals(chunkData, that.chunkData);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = taskId != null ? taskId.hashCode() : 0;
+    result = 31 * result + (outputType != null ? outputType.hashCode() : 0);
+    result = 31 * result + (chunkIndex != null ? chunkIndex.hashCode() : 0);
+    return result;
+  }
+}
@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.orm.entities;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+
+import org.apache.ambari.server.orm.entities.TaskOutputChunkEntity.OutputType;
+
+/**
+ * Composite primary key for {@link TaskOutputChunkEntity}.
+ */
+@SuppressWarnings("serial")
+public class TaskOutputChunkEntityPK implements Serializable {
+
+  @Id
+  @Column(name = "task_id", nullable = false, insertable = true, updatable = false)
+  private Long taskId;
+
+  @Id
+  @Column(name = "output_type", nullable = false, insertable = true, updatable = false)
+  @Enumerated(EnumType.STRING)
+  private OutputType outputType;
+
+  @Id
+  @Column(name = "chunk_index", nullable = false, insertable = true, updatable = false)
+  private Integer chunkIndex;
+
+  public Long getTaskId() {
+    return taskId;
+  }
+
+  public void setTaskId(Long taskId) {
+    this.taskId = taskId;
+  }
+
+  public OutputType getOutputType() {
+    return outputType;
+  }
+
+  public void setOutputType(OutputType outputType) {
+    this.outputType = outputType;
+  }
+
+  public Integer getChunkIndex() {
+    return chunkIndex;
+  }
+
+  public void setChunkIndex(Integer chunkIndex) {
+    this.chunkIndex = chunkIndex;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    TaskOutputChunkEntityPK that = (TaskOutputChunkEntityPK) o;
+
+    if (taskId != null ? !taskId.equals(that.taskId) : that.taskId != null) {
+      return false;
+    }
+    if (outputType != that.outputType) {
+      return false;
+    }
+    return chunkIndex != null ? chunkIndex.equals(that.chunkIndex) : that.chunkIndex == null;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = taskId != null ? taskId.hashCode() : 0;
+    result = 31 * result + (outputType != null ? outputType.hashCode() : 0);
+    result = 31 * result + (chunkIndex != null ? chunkIndex.hashCode() : 0);
+    return result;
+  }
+}
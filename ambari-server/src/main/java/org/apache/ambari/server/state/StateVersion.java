@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.state;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@link StateVersion} is a server wide counter which is incremented
+ * after the state of the server changes; when Ambari events are published,
+ * when changes are committed to the database and when the REST API is used
+ * to change resources.  A REST API result read at one version is the same
+ * while the version stays the same, other than for state which is only held
+ * in memory, such as heartbeat times and metrics.
+ * <p/>
+ * The version must be incremented after the change so that a result read at
+ * the new version includes the change.
+ * <p/>
+ * The version restarts at 0 with the server, so it is only comparable with
+ * versions of the same {@link #getEpoch() epoch}.
+ */
+public final class StateVersion {
+
+  /**
+   * The current version.
+   */
+  private static final AtomicLong s_version = new AtomicLong(0L);
+
+  /**
+   * The time the version started counting at.
+   */
+  private static final long s_epoch = System.currentTimeMillis();
+
+  /**
+   * Constructor.
+   */
+  private StateVersion() {
+  }
+
+  /**
+   * Get the current version.
+   *
+   * @return the current version
+   */
+  public static long get() {
+    return s_version.get();
+  }
+
+  /**
+   * Get the epoch of the version, which differs each time the server starts.
+   *
+   * @return the epoch
+   */
+  public static long getEpoch() {
+    return s_epoch;
+  }
+
+  /**
+   * Increment the version after a change of state.
+   *
+   * @return the new version
+   */
+  public static long increment() {
+    return s_version.incrementAndGet();
+  }
+}
@@ -62,6 +62,8 @@ import org.apache.ambari.server.state.fsm.InvalidStateTransitionException;
 import org.apache.ambari.server.state.fsm.SingleArcTransition;
 import org.apache.ambari.server.state.fsm.StateMachine;
 import org.apache.ambari.server.state.fsm.StateMachineFactory;
+import org.apache.ambari.server.state.services.StateWriteBehindService;
+import org.apache.ambari.server.state.services.StateWriteBehindService.WriteBehindState;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -72,7 +74,7 @@ import com.google.inject.Injector;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.persist.Transactional;
 
-public class HostImpl implements Host {
+public class HostImpl implements Host, WriteBehindState {
 
   private static final Log LOG = LogFactory.getLog(HostImpl.class);
   private static final String HARDWAREISA = "hardware_isa";
@@ -115,6 +117,7 @@ public class HostImpl implements Host {
   private ClusterDAO clusterDAO;
   private Clusters clusters;
   private HostConfigMappingDAO hostConfigMappingDAO;
+  private StateWriteBehindService stateWriteBehindService;
 
   private long lastHeartbeatTime = 0L;
   private AgentEnv lastAgentEnv = null;
@@ -128,6 +131,11 @@ public class HostImpl implements Host {
   // In-memory status, based on host components states
   private String status = HealthStatus.UNKNOWN.name();
 
+  // In-memory copies of the live state stored as JSON in the host state entity;
+  // loaded on first access and kept current by the setters
+  private volatile HostHealthStatus healthStatus;
+  private volatile AgentVersion agentVersion;
+
   // In-memory prefix of log file paths that is retrieved when the agent registers with the server
   private String prefix;
 
@@ -239,13 +247,15 @@ public class HostImpl implements Host {
     clusterDAO = injector.getInstance(ClusterDAO.class);
     clusters = injector.getInstance(Clusters.class);
     hostConfigMappingDAO = injector.getInstance(HostConfigMappingDAO.class);
+    stateWriteBehindService = injector.getInstance(StateWriteBehindService.class);
 
     hostStateEntity = hostEntity.getHostStateEntity();
     if (hostStateEntity == null) {
       hostStateEntity = new HostStateEntity();
       hostStateEntity.setHostEntity(hostEntity);
       hostEntity.setHostStateEntity(hostStateEntity);
-      setHealthStatus(new HostHealthStatus(HealthStatus.UNKNOWN, ""));
+      healthStatus = new HostHealthStatus(HealthStatus.UNKNOWN, "");
+      hostStateEntity.setHealthStatus(gson.toJson(healthStatus));
       if (persisted) {
         persist();
       }
@@ -857,8 +867,11 @@ public class HostImpl implements Host {
   public HostHealthStatus getHealthStatus() {
     try {
       readLock.lock();
-      return gson.fromJson(getHostStateEntity().getHealthStatus(),
-          HostHealthStatus.class);
+      if (null == healthStatus) {
+        healthStatus = gson.fromJson(getHostStateEntity().getHealthStatus(),
+            HostHealthStatus.class);
+      }
+      return healthStatus;
     } finally {
       readLock.unlock();
     }
@@ -868,13 +881,18 @@ public class HostImpl implements Host {
   public void setHealthStatus(HostHealthStatus healthStatus) {
     try {
       writeLock.lock();
-      getHostStateEntity().setHealthStatus(gson.toJson(healthStatus));
+      this.healthStatus = healthStatus;
 
       if (healthStatus.getHealthStatus().equals(HealthStatus.UNKNOWN)) {
         setStatus(HealthStatus.UNKNOWN.name());
       }
 
-      saveIfPersisted();
+      if (isWriteBehind()) {
+        stateWriteBehindService.markDirty(this);
+      } else {
+        getHostStateEntity().setHealthStatus(gson.toJson(healthStatus));
+        saveIfPersisted();
+      }
     } finally {
       writeLock.unlock();
     }
@@ -991,8 +1009,11 @@ public class HostImpl implements Host {
   public AgentVersion getAgentVersion() {
     try {
       readLock.lock();
-      return gson.fromJson(getHostStateEntity().getAgentVersion(),
-          AgentVersion.class);
+      if (null == agentVersion) {
+        agentVersion = gson.fromJson(getHostStateEntity().getAgentVersion(),
+            AgentVersion.class);
+      }
+      return agentVersion;
     }
     finally {
       readLock.unlock();
@@ -1003,8 +1024,14 @@ public class HostImpl implements Host {
   public void setAgentVersion(AgentVersion agentVersion) {
     try {
       writeLock.lock();
-      getHostStateEntity().setAgentVersion(gson.toJson(agentVersion));
-      saveIfPersisted();
+      this.agentVersion = agentVersion;
+
+      if (isWriteBehind()) {
+        stateWriteBehindService.markDirty(this);
+      } else {
+        getHostStateEntity().setAgentVersion(gson.toJson(agentVersion));
+        saveIfPersisted();
+      }
     }
     finally {
       writeLock.unlock();
@@ -1145,6 +1172,49 @@ public class HostImpl implements Host {
     }
   }
 
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Writes the in-memory health status and agent version to the host state
+   * entity. Hosts which have been removed since they were marked dirty are
+   * skipped.
+   */
+  @Override
+  @Transactional
+  public void flushState() {
+    try {
+      writeLock.lock();
+      if (!isPersisted()) {
+        return;
+      }
+
+      HostEntity entity = hostDAO.findByName(hostEntity.getHostName());
+      if (null == entity || null == entity.getHostStateEntity()) {
+        return;
+      }
+
+      HostStateEntity stateEntity = entity.getHostStateEntity();
+      if (null != healthStatus) {
+        stateEntity.setHealthStatus(gson.toJson(healthStatus));
+      }
+      if (null != agentVersion) {
+        stateEntity.setAgentVersion(gson.toJson(agentVersion));
+      }
+
+      hostEntity = entity;
+      hostStateEntity = hostStateDAO.merge(stateEntity);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  // Live state is deferred to the write-behind service only once the host has
+  // been persisted; until then the entities are written as a whole by persist()
+  private boolean isWriteBehind() {
+    return isPersisted() && null != stateWriteBehindService
+        && stateWriteBehindService.isEnabled();
+  }
+
   @Transactional
   void saveIfPersisted() {
     if (isPersisted()) {
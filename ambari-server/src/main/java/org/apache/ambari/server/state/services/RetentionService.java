@@ -0,0 +1,559 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state.services;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.ambari.server.AmbariService;
+import org.apache.ambari.server.actionmanager.HostRoleStatus;
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.orm.dao.AlertsDAO;
+import org.apache.ambari.server.orm.dao.HostRoleCommandDAO;
+import org.apache.ambari.server.orm.dao.RequestDAO;
+import org.apache.ambari.server.orm.entities.AlertHistoryEntity;
+import org.apache.ambari.server.orm.entities.HostRoleCommandEntity;
+import org.apache.ambari.server.orm.entities.RequestEntity;
+import org.apache.ambari.server.state.AlertState;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.gson.Gson;
+import com.google.inject.Inject;
+
+/**
+ * The {@link RetentionService} periodically removes old request and alert
+ * history. Requests are removed along with their stages, tasks and execution
+ * commands; historical alerts are removed along with their notices. Each
+ * policy may limit rows by age and by count, and only considers rows in
+ * particular statuses. Rows are removed in small batches, one transaction per
+ * batch, so that tables are never locked for long. Removed rows may
+ * optionally be exported to gzipped JSON files before they are deleted.
+ */
+@AmbariService
+public class RetentionService extends AbstractScheduledService implements
+    RetentionServiceMXBean {
+
+  /**
+   * Logger.
+   */
+  private final static Logger LOG = LoggerFactory.getLogger(RetentionService.class);
+
+  /**
+   * The name under which the retention metrics are registered.
+   */
+  private static final String MBEAN_NAME = "org.apache.ambari:type=RetentionService";
+
+  private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+  /**
+   * Used to read the retention policies.
+   */
+  @Inject
+  private Configuration m_configuration;
+
+  /**
+   * Used to find and remove requests.
+   */
+  @Inject
+  private RequestDAO m_requestDAO;
+
+  /**
+   * Used to read the tasks of requests being archived.
+   */
+  @Inject
+  private HostRoleCommandDAO m_hostRoleCommandDAO;
+
+  /**
+   * Used to find and remove historical alerts.
+   */
+  @Inject
+  private AlertsDAO m_alertsDAO;
+
+  /**
+   * Used to serialize archived rows.
+   */
+  private final Gson m_gson = new Gson();
+
+  /**
+   * Total rows removed since startup, by table.
+   */
+  private final Map<String, AtomicLong> m_rowsRemoved = new ConcurrentHashMap<String, AtomicLong>();
+
+  private final AtomicLong m_lastRunRowsRemoved = new AtomicLong();
+  private volatile boolean m_pruning = false;
+  private volatile String m_currentPolicy = null;
+  private volatile long m_runCount = 0;
+  private volatile long m_lastRunStartTime = 0;
+  private volatile long m_lastRunDuration = 0;
+
+  /**
+   * Constructor.
+   */
+  public RetentionService() {
+  }
+
+  /**
+   * Gets whether any rows are ever removed.
+   *
+   * @return {@code true} if a positive interval is configured.
+   */
+  public boolean isEnabled() {
+    return null != m_configuration && m_configuration.getRetentionInterval() > 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected Scheduler scheduler() {
+    long interval = m_configuration.getRetentionInterval();
+    if (interval <= 0) {
+      // nothing will be removed; keep the service idle
+      interval = TimeUnit.DAYS.toMinutes(1);
+    }
+
+    return Scheduler.newFixedDelaySchedule(interval, interval, TimeUnit.MINUTES);
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Registers the retention metrics with the platform MBean server.
+   */
+  @Override
+  protected void startUp() throws Exception {
+    if (!isEnabled()) {
+      return;
+    }
+
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(MBEAN_NAME);
+      if (!server.isRegistered(name)) {
+        server.registerMBean(new StandardMBean(this, RetentionServiceMXBean.class, true), name);
+      }
+    } catch (Exception exception) {
+      LOG.warn("Unable to register the retention metrics", exception);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void shutDown() throws Exception {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(MBEAN_NAME);
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+    } catch (Exception exception) {
+      LOG.debug("Unable to unregister the retention metrics", exception);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void runOneIteration() throws Exception {
+    if (!isEnabled()) {
+      return;
+    }
+
+    m_pruning = true;
+    m_lastRunStartTime = System.currentTimeMillis();
+    m_lastRunRowsRemoved.set(0);
+    try {
+      pruneRequests();
+      pruneAlerts();
+    } catch (Exception exception) {
+      LOG.error("Unable to apply the history retention policies", exception);
+    } finally {
+      m_lastRunDuration = System.currentTimeMillis() - m_lastRunStartTime;
+      m_currentPolicy = null;
+      m_pruning = false;
+      m_runCount++;
+    }
+
+    LOG.info("Removed {} rows of request and alert history in {}ms, totals {}",
+        m_lastRunRowsRemoved.get(), m_lastRunDuration, getRowsRemoved());
+  }
+
+  /**
+   * Removes completed requests which are older than the max age or which fall
+   * outside of the max count.
+   */
+  void pruneRequests() throws IOException {
+    int maxAge = m_configuration.getRequestRetentionMaxAge();
+    int maxCount = m_configuration.getRequestRetentionMaxCount();
+    if (maxAge <= 0 && maxCount <= 0) {
+      return;
+    }
+
+    m_currentPolicy = "requests";
+    Set<HostRoleStatus> statuses = getRequestStatuses();
+    int batchSize = Math.max(1, m_configuration.getRetentionBatchSize());
+    Archive archive = createArchive("requests");
+
+    try {
+      if (maxAge > 0) {
+        long cutoff = System.currentTimeMillis() - maxAge * DAY_MILLIS;
+        pruneRequests(cutoff, Long.MAX_VALUE, statuses, batchSize, archive);
+      }
+
+      if (maxCount > 0) {
+        Long maxRequestId = m_requestDAO.findRequestIdAtOffset(maxCount);
+        if (null != maxRequestId) {
+          pruneRequests(Long.MAX_VALUE, maxRequestId, statuses, batchSize, archive);
+        }
+      }
+    } finally {
+      if (null != archive) {
+        archive.close();
+      }
+    }
+  }
+
+  private void pruneRequests(long createdBefore, long maxRequestId,
+      Set<HostRoleStatus> statuses, int batchSize, Archive archive) throws IOException {
+    List<Long> requestIds;
+    do {
+      requestIds = m_requestDAO.findRequestIdsToPrune(createdBefore,
+          maxRequestId, statuses, batchSize);
+      if (requestIds.isEmpty()) {
+        break;
+      }
+
+      if (null != archive) {
+        archiveRequests(requestIds, archive);
+      }
+
+      recordRemoved(m_requestDAO.removeRequests(requestIds));
+    } while (requestIds.size() == batchSize && isRunning());
+  }
+
+  /**
+   * Removes historical alerts which are older than the max age or which fall
+   * outside of the max count.
+   */
+  void pruneAlerts() throws IOException {
+    int maxAge = m_configuration.getAlertRetentionMaxAge();
+    int maxCount = m_configuration.getAlertRetentionMaxCount();
+    if (maxAge <= 0 && maxCount <= 0) {
+      return;
+    }
+
+    m_currentPolicy = "alerts";
+    Set<AlertState> states = getAlertStates();
+    int batchSize = Math.max(1, m_configuration.getRetentionBatchSize());
+    Archive archive = createArchive("alerts");
+
+    try {
+      if (maxAge > 0) {
+        long cutoff = System.currentTimeMillis() - maxAge * DAY_MILLIS;
+        pruneAlerts(cutoff, Long.MAX_VALUE, states, batchSize, archive);
+      }
+
+      if (maxCount > 0) {
+        Long maxAlertId = m_alertsDAO.findHistoryIdAtOffset(maxCount);
+        if (null != maxAlertId) {
+          pruneAlerts(Long.MAX_VALUE, maxAlertId, states, batchSize, archive);
+        }
+      }
+    } finally {
+      if (null != archive) {
+        archive.close();
+      }
+    }
+  }
+
+  private void pruneAlerts(long before, long maxAlertId, Set<AlertState> states,
+      int batchSize, Archive archive) throws IOException {
+    List<Long> alertIds;
+    do {
+      alertIds = m_alertsDAO.findHistoryIdsToPrune(before, maxAlertId, states, batchSize);
+      if (alertIds.isEmpty()) {
+        break;
+      }
+
+      if (null != archive) {
+        archiveAlerts(alertIds, archive);
+      }
+
+      recordRemoved(m_alertsDAO.removeHistory(alertIds));
+    } while (alertIds.size() == batchSize && isRunning());
+  }
+
+  /**
+   * Gets the task statuses which allow a request to be removed. Statuses
+   * which are not completed are ignored so that active requests are never
+   * removed.
+   */
+  Set<HostRoleStatus> getRequestStatuses() {
+    Set<HostRoleStatus> statuses = EnumSet.noneOf(HostRoleStatus.class);
+    String configured = m_configuration.getRequestRetentionStatuses();
+    if (StringUtils.isBlank(configured)) {
+      statuses.addAll(HostRoleStatus.getCompletedStates());
+      return statuses;
+    }
+
+    for (String status : configured.split(",")) {
+      HostRoleStatus hostRoleStatus = HostRoleStatus.valueOf(status.trim().toUpperCase());
+      if (HostRoleStatus.getCompletedStates().contains(hostRoleStatus)) {
+        statuses.add(hostRoleStatus);
+      }
+    }
+    return statuses;
+  }
+
+  /**
+   * Gets the alert states which may be removed.
+   */
+  Set<AlertState> getAlertStates() {
+    String configured = m_configuration.getAlertRetentionStates();
+    if (StringUtils.isBlank(configured)) {
+      return EnumSet.allOf(AlertState.class);
+    }
+
+    Set<AlertState> states = EnumSet.noneOf(AlertState.class);
+    for (String state : configured.split(",")) {
+      states.add(AlertState.valueOf(state.trim().toUpperCase()));
+    }
+    return states;
+  }
+
+  private void archiveRequests(Collection<Long> requestIds, Archive archive)
+      throws IOException {
+    Map<Long, List<Map<String, Object>>> tasksByRequest = new HashMap<Long, List<Map<String, Object>>>();
+    for (HostRoleCommandEntity task : m_hostRoleCommandDAO.findByRequestIds(requestIds)) {
+      Map<String, Object> row = new LinkedHashMap<String, Object>();
+      row.put("task_id", task.getTaskId());
+      row.put("stage_id", task.getStageId());
+      row.put("host_name", task.getHostName());
+      row.put("role", task.getRole());
+      row.put("role_command", task.getRoleCommand());
+      row.put("status", task.getStatus());
+      row.put("exitcode", task.getExitcode());
+      row.put("start_time", task.getStartTime());
+      row.put("end_time", task.getEndTime());
+      row.put("std_out", toString(task.getStdOut()));
+      row.put("std_error", toString(task.getStdError()));
+      row.put("structured_out", toString(task.getStructuredOut()));
+
+      List<Map<String, Object>> tasks = tasksByRequest.get(task.getRequestId());
+      if (null == tasks) {
+        tasks = new ArrayList<Map<String, Object>>();
+        tasksByRequest.put(task.getRequestId(), tasks);
+      }
+      tasks.add(row);
+    }
+
+    for (RequestEntity request : m_requestDAO.findByPks(requestIds)) {
+      Map<String, Object> row = new LinkedHashMap<String, Object>();
+      row.put("request_id", request.getRequestId());
+      row.put("cluster_id", request.getClusterId());
+      row.put("command_name", request.getCommandName());
+      row.put("request_context", request.getRequestContext());
+      row.put("create_time", request.getCreateTime());
+      row.put("start_time", request.getStartTime());
+      row.put("end_time", request.getEndTime());
+      row.put("tasks", tasksByRequest.get(request.getRequestId()));
+      archive.write(row);
+    }
+
+    archive.flush();
+  }
+
+  private void archiveAlerts(Collection<Long> alertIds, Archive archive)
+      throws IOException {
+    for (AlertHistoryEntity alert : m_alertsDAO.findHistoryByIds(alertIds)) {
+      Map<String, Object> row = new LinkedHashMap<String, Object>();
+      row.put("alert_id", alert.getAlertId());
+      row.put("cluster_id", alert.getClusterId());
+      row.put("definition_name", alert.getAlertDefinition().getDefinitionName());
+      row.put("service_name", alert.getServiceName());
+      row.put("component_name", alert.getComponentName());
+      row.put("host_name", alert.getHostName());
+      row.put("alert_instance", alert.getAlertInstance());
+      row.put("alert_state", alert.getAlertState());
+      row.put("alert_timestamp", alert.getAlertTimestamp());
+      row.put("alert_label", alert.getAlertLabel());
+      row.put("alert_text", alert.getAlertText());
+      archive.write(row);
+    }
+
+    archive.flush();
+  }
+
+  /**
+   * Opens a new archive for the given policy if archiving is configured.
+   *
+   * @return the archive, or {@code null} if removed rows are not archived
+   */
+  private Archive createArchive(String policy) throws IOException {
+    String directory = m_configuration.getRetentionArchiveDir();
+    if (StringUtils.isBlank(directory)) {
+      return null;
+    }
+
+    File dir = new File(directory);
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Unable to create the retention archive directory " + dir);
+    }
+
+    String timestamp = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
+    return new Archive(new File(dir, policy + "-" + timestamp + ".json.gz"), m_gson);
+  }
+
+  private static String toString(byte[] bytes) {
+    return null == bytes ? null : new String(bytes);
+  }
+
+  private void recordRemoved(Map<String, Integer> removed) {
+    for (Map.Entry<String, Integer> entry : removed.entrySet()) {
+      AtomicLong total = m_rowsRemoved.get(entry.getKey());
+      if (null == total) {
+        total = new AtomicLong();
+        m_rowsRemoved.put(entry.getKey(), total);
+      }
+
+      total.addAndGet(entry.getValue());
+      m_lastRunRowsRemoved.addAndGet(entry.getValue());
+    }
+
+    LOG.debug("Removed {} by the {} retention policy", removed, m_currentPolicy);
+  }
+
+  // ----- RetentionServiceMXBean --------------------------------------------
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isPruning() {
+    return m_pruning;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getCurrentPolicy() {
+    return m_currentPolicy;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getRunCount() {
+    return m_runCount;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getLastRunStartTime() {
+    return m_lastRunStartTime;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getLastRunDuration() {
+    return m_lastRunDuration;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getLastRunRowsRemoved() {
+    return m_lastRunRowsRemoved.get();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Map<String, Long> getRowsRemoved() {
+    Map<String, Long> rowsRemoved = new TreeMap<String, Long>();
+    for (Map.Entry<String, AtomicLong> entry : m_rowsRemoved.entrySet()) {
+      rowsRemoved.put(entry.getKey(), entry.getValue().get());
+    }
+    return rowsRemoved;
+  }
+
+  /**
+   * A gzipped file of removed rows, one JSON object per line.
+   */
+  private static final class Archive {
+    private final Writer m_writer;
+    private final Gson m_gson;
+
+    private Archive(File file, Gson gson) throws IOException {
+      m_gson = gson;
+      m_writer = new BufferedWriter(new OutputStreamWriter(
+          new GZIPOutputStream(new FileOutputStream(file)), "UTF-8"));
+    }
+
+    private void write(Map<String, Object> row) throws IOException {
+      m_writer.write(m_gson.toJson(row));
+      m_writer.write('\n');
+    }
+
+    private void flush() throws IOException {
+      m_writer.flush();
+    }
+
+    private void close() throws IOException {
+      m_writer.close();
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state.services;
+
+import java.util.Map;
+
+/**
+ * The {@link RetentionServiceMXBean} exposes the progress and results of the
+ * {@link RetentionService} over JMX.
+ */
+public interface RetentionServiceMXBean {
+
+  /**
+   * @return {@code true} if a retention run is in progress
+   */
+  boolean isPruning();
+
+  /**
+   * @return the name of the policy being applied, or {@code null} if idle
+   */
+  String getCurrentPolicy();
+
+  /**
+   * @return the number of completed retention runs
+   */
+  long getRunCount();
+
+  /**
+   * @return the time the last run started, or {@code 0} if none
+   */
+  long getLastRunStartTime();
+
+  /**
+   * @return the duration, in milliseconds, of the last completed run
+   */
+  long getLastRunDuration();
+
+  /**
+   * @return the number of rows removed by the run in progress, or by the last
+   *         run if none is in progress
+   */
+  long getLastRunRowsRemoved();
+
+  /**
+   * @return the total number of rows removed since startup, by table
+   */
+  Map<String, Long> getRowsRemoved();
+}
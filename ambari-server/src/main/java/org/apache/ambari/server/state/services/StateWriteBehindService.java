@@ -0,0 +1,224 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+
+import org.apache.ambari.server.AmbariService;
+import org.apache.ambari.server.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.persist.UnitOfWork;
+
+/**
+ * The {@link StateWriteBehindService} is used to periodically flush live host
+ * and host component state which is held in memory between heartbeats. When
+ * write-behind is enabled, objects such as {@code HostImpl} and
+ * {@code ServiceComponentHostImpl} no longer merge their state entities on
+ * every change; instead they register themselves as dirty and are written out
+ * in batches, one transaction per batch, on the configured interval and once
+ * more when the service is stopped.
+ */
+@AmbariService
+public class StateWriteBehindService extends AbstractScheduledService {
+
+  /**
+   * Logger.
+   */
+  private final static Logger LOG = LoggerFactory.getLogger(StateWriteBehindService.class);
+
+  /**
+   * The {@link WriteBehindState} interface is implemented by objects which
+   * keep live state in memory and can write it to their backing entities on
+   * demand.
+   */
+  public interface WriteBehindState {
+    /**
+     * Writes any in-memory state to the backing entities. This is invoked
+     * inside of an active transaction.
+     */
+    void flushState();
+  }
+
+  /**
+   * Used to determine the flush interval and batch size.
+   */
+  @Inject
+  private Configuration m_configuration;
+
+  /**
+   * Used to wrap each batch in a single transaction.
+   */
+  @Inject
+  private Provider<EntityManager> m_entityManagerProvider;
+
+  /**
+   * Used to scope the {@link EntityManager} to the flushing thread.
+   */
+  @Inject
+  private Provider<UnitOfWork> m_unitOfWork;
+
+  /**
+   * All state objects which have changed since the last flush.
+   */
+  private final Set<WriteBehindState> m_dirty = Collections.newSetFromMap(
+      new ConcurrentHashMap<WriteBehindState, Boolean>());
+
+  /**
+   * Constructor.
+   */
+  public StateWriteBehindService() {
+  }
+
+  /**
+   * Gets whether live state should be deferred to this service instead of
+   * being written immediately.
+   *
+   * @return {@code true} if a positive flush interval is configured.
+   */
+  public boolean isEnabled() {
+    return null != m_configuration
+        && m_configuration.getStateWriteBehindInterval() > 0;
+  }
+
+  /**
+   * Registers the specified state as needing to be flushed. Registering the
+   * same state multiple times before a flush results in a single write.
+   *
+   * @param state
+   *          the changed state (not {@code null}).
+   */
+  public void markDirty(WriteBehindState state) {
+    m_dirty.add(state);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected Scheduler scheduler() {
+    long interval = m_configuration.getStateWriteBehindInterval();
+    if (interval <= 0) {
+      // nothing will ever be marked dirty; keep the service idle
+      interval = TimeUnit.MINUTES.toSeconds(5);
+    }
+
+    return Scheduler.newFixedDelaySchedule(interval, interval, TimeUnit.SECONDS);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void runOneIteration() throws Exception {
+    flush();
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Flushes any remaining dirty state so that nothing is lost on shutdown.
+   */
+  @Override
+  protected void shutDown() throws Exception {
+    flush();
+  }
+
+  /**
+   * Writes all dirty state to the database in batches. State which changes
+   * while a flush is in progress is either picked up by this flush or by the
+   * next one.
+   */
+  void flush() {
+    if (m_dirty.isEmpty()) {
+      return;
+    }
+
+    int batchSize = Math.max(1, m_configuration.getStateWriteBehindBatchSize());
+    List<WriteBehindState> batch = new ArrayList<WriteBehindState>(batchSize);
+    int flushed = 0;
+
+    UnitOfWork unitOfWork = m_unitOfWork.get();
+    unitOfWork.begin();
+    try {
+      Iterator<WriteBehindState> iterator = m_dirty.iterator();
+      while (iterator.hasNext()) {
+        batch.add(iterator.next());
+        iterator.remove();
+
+        if (batch.size() == batchSize) {
+          flushed += flushBatch(batch);
+          batch.clear();
+        }
+      }
+
+      if (!batch.isEmpty()) {
+        flushed += flushBatch(batch);
+      }
+    } finally {
+      unitOfWork.end();
+    }
+
+    LOG.debug("Flushed {} dirty host and host component states", flushed);
+  }
+
+  /**
+   * Flushes the given states inside of a single transaction. If the
+   * transaction fails, the states are re-queued for the next flush.
+   *
+   * @param batch
+   *          the states to write.
+   * @return the number of states written.
+   */
+  private int flushBatch(List<WriteBehindState> batch) {
+    EntityManager entityManager = m_entityManagerProvider.get();
+    EntityTransaction transaction = entityManager.getTransaction();
+    transaction.begin();
+    try {
+      for (WriteBehindState state : batch) {
+        state.flushState();
+      }
+
+      transaction.commit();
+      return batch.size();
+    } catch (RuntimeException exception) {
+      LOG.error("Unable to flush {} host and host component states, they will be retried",
+          batch.size(), exception);
+
+      if (transaction.isActive()) {
+        transaction.rollback();
+      }
+
+      m_dirty.addAll(batch);
+      return 0;
+    }
+  }
+}
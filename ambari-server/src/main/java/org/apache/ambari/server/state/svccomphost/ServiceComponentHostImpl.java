@@ -74,6 +74,8 @@ import org.apache.ambari.server.state.fsm.InvalidStateTransitionException;
 import org.apache.ambari.server.state.fsm.SingleArcTransition;
 import org.apache.ambari.server.state.fsm.StateMachine;
 import org.apache.ambari.server.state.fsm.StateMachineFactory;
+import org.apache.ambari.server.state.services.StateWriteBehindService;
+import org.apache.ambari.server.state.services.StateWriteBehindService.WriteBehindState;
 import org.apache.ambari.server.state.stack.upgrade.RepositoryVersionHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -85,7 +87,7 @@ import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 import com.google.inject.persist.Transactional;
 
-public class ServiceComponentHostImpl implements ServiceComponentHost {
+public class ServiceComponentHostImpl implements ServiceComponentHost, WriteBehindState {
 
   private static final Logger LOG =
       LoggerFactory.getLogger(ServiceComponentHostImpl.class);
@@ -135,6 +137,12 @@ public class ServiceComponentHostImpl implements ServiceComponentHost {
   @Inject
   private AmbariEventPublisher eventPublisher;
 
+  /**
+   * Used to defer writes of the current state when write-behind is enabled.
+   */
+  @Inject
+  private StateWriteBehindService stateWriteBehindService;
+
   // TODO : caching the JPA entities here causes issues if they become stale and get re-merged.
   private HostComponentStateEntity stateEntity;
   private HostComponentDesiredStateEntity desiredStateEntity;
@@ -149,6 +157,11 @@ public class ServiceComponentHostImpl implements ServiceComponentHost {
    */
   private final HostComponentDesiredStateEntityPK desiredStateEntityPK;
 
+  /**
+   * In-memory copy of the reported version; loaded on first access.
+   */
+  private volatile String version;
+
   private long lastOpStartTime;
   private long lastOpEndTime;
   private long lastOpLastUpdateTime;
@@ -779,8 +792,7 @@ public class ServiceComponentHostImpl implements ServiceComponentHost {
     writeLock.lock();
     try {
       stateMachine.setCurrentState(state);
-      getStateEntity().setCurrentState(state);
-      saveIfPersisted();
+      saveCurrentState();
     } finally {
       writeLock.unlock();
     }
@@ -790,7 +802,10 @@ public class ServiceComponentHostImpl implements ServiceComponentHost {
   public String getVersion() {
     readLock.lock();
     try {
-      return getStateEntity().getVersion();
+      if (null == version) {
+        version = getStateEntity().getVersion();
+      }
+      return version;
     } finally {
       readLock.unlock();
     }
@@ -800,6 +815,9 @@ public class ServiceComponentHostImpl implements ServiceComponentHost {
   public void setVersion(String version) {
     writeLock.lock();
     try {
+      // the version is always written through since cluster version
+      // calculations query it directly from the database
+      this.version = version;
       getStateEntity().setVersion(version);
       saveIfPersisted();
     } finally {
@@ -889,8 +907,7 @@ public class ServiceComponentHostImpl implements ServiceComponentHost {
         writeLock.lock();
         try {
           stateMachine.doTransition(event.getType(), event);
-          getStateEntity().setCurrentState(stateMachine.getCurrentState());
-          saveIfPersisted();
+          saveCurrentState();
           // TODO Audit logs
         } catch (InvalidStateTransitionException e) {
           LOG.debug("Can't handle ServiceComponentHostEvent event at"
@@ -1249,6 +1266,48 @@ public class ServiceComponentHostImpl implements ServiceComponentHost {
     }
   }
 
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Writes the current state of the state machine to the component state
+   * entity. Components which have been removed since they were marked dirty
+   * are skipped.
+   */
+  @Override
+  @Transactional
+  public void flushState() {
+    writeLock.lock();
+    try {
+      if (!isPersisted()) {
+        return;
+      }
+
+      HostComponentStateEntity entity = hostComponentStateDAO.findByPK(stateEntityPK);
+      if (null == entity) {
+        return;
+      }
+
+      entity.setCurrentState(stateMachine.getCurrentState());
+      stateEntity = hostComponentStateDAO.merge(entity);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  // Writes the current state of the state machine, either immediately or on
+  // the next write-behind flush once this component has been persisted.
+  // Callers must hold the write lock.
+  private void saveCurrentState() {
+    if (isPersisted() && null != stateWriteBehindService
+        && stateWriteBehindService.isEnabled()) {
+      stateWriteBehindService.markDirty(this);
+      return;
+    }
+
+    getStateEntity().setCurrentState(stateMachine.getCurrentState());
+    saveIfPersisted();
+  }
+
   @Transactional
   private void saveIfPersisted() {
     if (isPersisted()) {
@@ -47,6 +47,7 @@ public class UpgradeCatalog210 extends AbstractUpgradeCatalog {
   private static final String HOST_STATE_TABLE = "hoststate";
   private static final String HOST_VERSION_TABLE = "host_version";
   private static final String HOST_ROLE_COMMAND_TABLE = "host_role_command";
+  private static final String TASK_OUTPUT_CHUNK_TABLE = "task_output_chunk";
   private static final String HOST_CONFIG_MAPPING_TABLE = "hostconfigmapping";
   private static final String CONFIG_GROUP_HOST_MAPPING_TABLE = "configgrouphostmapping";
   private static final String KERBEROS_PRINCIPAL_HOST_TABLE = "kerberos_principal_host";
@@ -111,6 +112,7 @@ public class UpgradeCatalog210 extends AbstractUpgradeCatalog {
     executeHostsDDLUpdates();
     executeWidgetDDLUpdates();
     executeStackDDLUpdates();
+    executeTaskOutputDDLUpdates();
   }
 
   /**
@@ -336,6 +338,23 @@ public class UpgradeCatalog210 extends AbstractUpgradeCatalog {
     dbAccessor.addFKConstraint(WIDGET_LAYOUT_USER_WIDGET_TABLE, "FK_user_widget_id", "user_widget_id", "user_widget", "id", true, false);
   }
 
+  /**
+   * Adds the table which holds the chunked output of in progress tasks.
+   */
+  private void executeTaskOutputDDLUpdates() throws AmbariException, SQLException {
+    List<DBColumnInfo> columns = new ArrayList<DBColumnInfo>();
+    columns.add(new DBColumnInfo("task_id", Long.class, null, null, false));
+    columns.add(new DBColumnInfo("output_type", String.class, 32, null, false));
+    columns.add(new DBColumnInfo("chunk_index", Integer.class, null, null, false));
+    columns.add(new DBColumnInfo("start_offset", Long.class, null, null, false));
+    columns.add(new DBColumnInfo("chunk_length", Integer.class, null, null, false));
+    columns.add(new DBColumnInfo("chunk_data", byte[].class, null, null, false));
+    dbAccessor.createTable(TASK_OUTPUT_CHUNK_TABLE, columns, "task_id", "output_type", "chunk_index");
+
+    dbAccessor.addFKConstraint(TASK_OUTPUT_CHUNK_TABLE, "FK_task_output_chunk_task_id",
+        "task_id", HOST_ROLE_COMMAND_TABLE, "task_id", false);
+  }
+
   /**
    * Adds the stack table and constraints.
    */
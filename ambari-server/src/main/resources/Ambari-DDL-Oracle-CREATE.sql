@@ -219,6 +219,15 @@ CREATE TABLE host_role_command (
   custom_command_name VARCHAR2(255) NULL,
   PRIMARY KEY (task_id));
 
+CREATE TABLE task_output_chunk (
+  task_id NUMBER(19) NOT NULL,
+  output_type VARCHAR2(32) NOT NULL,
+  chunk_index NUMBER(10) NOT NULL,
+  start_offset NUMBER(19) NOT NULL,
+  chunk_length NUMBER(10) NOT NULL,
+  chunk_data BLOB NOT NULL,
+  PRIMARY KEY (task_id, output_type, chunk_index));
+
 CREATE TABLE role_success_criteria (
   role VARCHAR2(255) NOT NULL,
   request_id NUMBER(19) NOT NULL,
@@ -597,6 +606,7 @@ ALTER TABLE host_version ADD CONSTRAINT FK_host_version_repovers_id FOREIGN KEY
 ALTER TABLE servicecomponentdesiredstate ADD CONSTRAINT srvccmponentdesiredstatesrvcnm FOREIGN KEY (service_name, cluster_id) REFERENCES clusterservices (service_name, cluster_id);
 ALTER TABLE servicedesiredstate ADD CONSTRAINT servicedesiredstateservicename FOREIGN KEY (service_name, cluster_id) REFERENCES clusterservices (service_name, cluster_id);
 ALTER TABLE execution_command ADD CONSTRAINT FK_execution_command_task_id FOREIGN KEY (task_id) REFERENCES host_role_command (task_id);
+ALTER TABLE task_output_chunk ADD CONSTRAINT FK_task_output_chunk_task_id FOREIGN KEY (task_id) REFERENCES host_role_command (task_id);
 ALTER TABLE host_role_command ADD CONSTRAINT FK_host_role_command_stage_id FOREIGN KEY (stage_id, request_id) REFERENCES stage (stage_id, request_id);
 ALTER TABLE host_role_command ADD CONSTRAINT FK_host_role_command_host_name FOREIGN KEY (host_name) REFERENCES hosts (host_name);
 --ALTER TABLE host_role_command ADD CONSTRAINT FK_host_role_command_host_id FOREIGN KEY (host_id) REFERENCES hosts (host_id);
@@ -263,6 +263,16 @@ CREATE TABLE ambari.host_role_command (
   PRIMARY KEY (task_id));
 GRANT ALL PRIVILEGES ON TABLE ambari.host_role_command TO :username;
 
+CREATE TABLE ambari.task_output_chunk (
+  task_id BIGINT NOT NULL,
+  output_type VARCHAR(32) NOT NULL,
+  chunk_index INTEGER NOT NULL,
+  start_offset BIGINT NOT NULL,
+  chunk_length INTEGER NOT NULL,
+  chunk_data BYTEA NOT NULL,
+  PRIMARY KEY (task_id, output_type, chunk_index));
+GRANT ALL PRIVILEGES ON TABLE ambari.task_output_chunk TO :username;
+
 CREATE TABLE ambari.role_success_criteria (
   role VARCHAR(255) NOT NULL,
   request_id BIGINT NOT NULL,
@@ -670,6 +680,7 @@ ALTER TABLE ambari.host_version ADD CONSTRAINT FK_host_version_repovers_id FOREI
 ALTER TABLE ambari.servicecomponentdesiredstate ADD CONSTRAINT srvccmponentdesiredstatesrvcnm FOREIGN KEY (service_name, cluster_id) REFERENCES ambari.clusterservices (service_name, cluster_id);
 ALTER TABLE ambari.servicedesiredstate ADD CONSTRAINT servicedesiredstateservicename FOREIGN KEY (service_name, cluster_id) REFERENCES ambari.clusterservices (service_name, cluster_id);
 ALTER TABLE ambari.execution_command ADD CONSTRAINT FK_execution_command_task_id FOREIGN KEY (task_id) REFERENCES ambari.host_role_command (task_id);
+ALTER TABLE ambari.task_output_chunk ADD CONSTRAINT FK_task_output_chunk_task_id FOREIGN KEY (task_id) REFERENCES ambari.host_role_command (task_id);
 ALTER TABLE ambari.host_role_command ADD CONSTRAINT FK_host_role_command_stage_id FOREIGN KEY (stage_id, request_id) REFERENCES ambari.stage (stage_id, request_id);
 ALTER TABLE ambari.host_role_command ADD CONSTRAINT FK_host_role_command_host_name FOREIGN KEY (host_name) REFERENCES ambari.hosts (host_name);
 --ALTER TABLE ambari.host_role_command ADD CONSTRAINT FK_host_role_command_host_id FOREIGN KEY (host_id) REFERENCES ambari.hosts (host_id);
@@ -117,6 +117,8 @@ IF OBJECT_ID('ClusterHostMapping', 'U') IS NOT NULL DROP TABLE ClusterHostMappin
 GO
 IF OBJECT_ID('role_success_criteria', 'U') IS NOT NULL DROP TABLE role_success_criteria
 GO
+IF OBJECT_ID('task_output_chunk', 'U') IS NOT NULL DROP TABLE task_output_chunk
+GO
 IF OBJECT_ID('execution_command', 'U') IS NOT NULL DROP TABLE execution_command
 GO
 IF OBJECT_ID('host_role_command', 'U') IS NOT NULL DROP TABLE host_role_command
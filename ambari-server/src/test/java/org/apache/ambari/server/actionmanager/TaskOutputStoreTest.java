@@ -0,0 +1,299 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.actionmanager;
+
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.orm.dao.TaskOutputChunkDAO;
+import org.apache.ambari.server.orm.entities.HostRoleCommandEntity;
+import org.apache.ambari.server.orm.entities.TaskOutputChunkEntity;
+import org.apache.ambari.server.orm.entities.TaskOutputChunkEntity.OutputType;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link TaskOutputStore}.
+ */
+public class TaskOutputStoreTest {
+
+  private Configuration configuration;
+  private TaskOutputChunkDAO chunkDAO;
+  private Capture<TaskOutputChunkEntity> chunks;
+
+  @Before
+  public void setup() {
+    configuration = createNiceMock(Configuration.class);
+    expect(configuration.isTaskOutputChunked()).andReturn(true).anyTimes();
+    expect(configuration.getTaskOutputChunkSize()).andReturn(4).anyTimes();
+
+    chunks = new Capture<TaskOutputChunkEntity>(CaptureType.ALL);
+    chunkDAO = createNiceMock(TaskOutputChunkDAO.class);
+    chunkDAO.create(capture(chunks));
+    expectLastCall().anyTimes();
+  }
+
+  @Test
+  public void testAppendCumulativeOutput() {
+    replay(configuration, chunkDAO);
+
+    TaskOutputStore store = new TaskOutputStore(configuration, chunkDAO);
+    store.append(1L, OutputType.STDERR, "abcdef");
+    store.append(1L, OutputType.STDERR, "abcdef");
+    store.append(1L, OutputType.STDERR, "abcdefgh");
+
+    verify(chunkDAO);
+
+    // 6 bytes in chunks of 4, nothing for the repeated report, then 2 bytes
+    List<TaskOutputChunkEntity> values = chunks.getValues();
+    Assert.assertEquals(3, values.size());
+    Assert.assertEquals(0L, values.get(0).getStartOffset().longValue());
+    Assert.assertEquals(4, values.get(0).getChunkLength().intValue());
+    Assert.assertEquals(4L, values.get(1).getStartOffset().longValue());
+    Assert.assertEquals(2, values.get(1).getChunkLength().intValue());
+    Assert.assertEquals(6L, values.get(2).getStartOffset().longValue());
+    Assert.assertEquals(2, values.get(2).getChunkLength().intValue());
+    Assert.assertEquals(2, values.get(2).getChunkIndex().intValue());
+  }
+
+  @Test
+  public void testAppendWindowedOutput() {
+    replay(configuration, chunkDAO);
+
+    String line1 = line('1');
+    String line2 = line('2');
+    String line3 = line('3');
+
+    TaskOutputStore store = new TaskOutputStore(configuration, chunkDAO);
+    store.append(1L, OutputType.STDOUT, line1 + line2);
+    store.append(1L, OutputType.STDOUT, line2 + line3);
+
+    // only the third line follows the stored output
+    Assert.assertEquals(line1 + line2 + line3, join(chunks.getValues()));
+  }
+
+  @Test
+  public void testAppendShortOverlapIsNotTrimmed() {
+    replay(configuration, chunkDAO);
+
+    String line1 = line('1');
+
+    TaskOutputStore store = new TaskOutputStore(configuration, chunkDAO);
+    store.append(1L, OutputType.STDOUT, line1 + "l2\n");
+    store.append(1L, OutputType.STDOUT, "l2\nl3\n");
+
+    // a 3 byte overlap may be a coincidence, so the report is kept in full
+    Assert.assertEquals(line1 + "l2\nl2\nl3\n", join(chunks.getValues()));
+  }
+
+  @Test
+  public void testAppendRepetitiveWindowedOutput() {
+    replay(configuration, chunkDAO);
+
+    StringBuilder output = new StringBuilder();
+    for (int i = 0; i < TaskOutputStore.TAIL_SIZE * 2; i++) {
+      output.append('a');
+    }
+    String window = output.substring(output.length() - TaskOutputStore.TAIL_SIZE) + "b";
+
+    TaskOutputStore store = new TaskOutputStore(configuration, chunkDAO);
+    store.append(1L, OutputType.STDOUT, output.toString());
+    store.append(1L, OutputType.STDOUT, window);
+
+    Assert.assertEquals(output + "b", join(chunks.getValues()));
+  }
+
+  @Test
+  public void testInvalidateAfterRollback() {
+    replay(configuration, chunkDAO);
+
+    TaskOutputStore writer = new TaskOutputStore(configuration, chunkDAO);
+    writer.append(1L, OutputType.STDOUT, "0123456789");
+    TaskOutputChunkEntity committed = chunks.getValues().get(2);
+
+    Capture<TaskOutputChunkEntity> written = new Capture<TaskOutputChunkEntity>(CaptureType.ALL);
+    TaskOutputChunkDAO writeDAO = createNiceMock(TaskOutputChunkDAO.class);
+    expect(writeDAO.findLastByTask(1L, OutputType.STDOUT)).andReturn(committed).once();
+    writeDAO.create(capture(written));
+    expectLastCall().anyTimes();
+    replay(writeDAO);
+
+    TaskOutputStore store = new TaskOutputStore(configuration, writeDAO);
+    store.append(1L, OutputType.STDOUT, "0123456789ab");
+
+    // the chunk of the first report was rolled back; the report is resent
+    store.invalidate(Collections.singleton(1L));
+    store.append(1L, OutputType.STDOUT, "0123456789ab");
+
+    verify(writeDAO);
+    List<TaskOutputChunkEntity> values = written.getValues();
+    Assert.assertEquals(2, values.size());
+    Assert.assertEquals(3, values.get(1).getChunkIndex().intValue());
+    Assert.assertEquals(10L, values.get(1).getStartOffset().longValue());
+    Assert.assertEquals(2, values.get(1).getChunkLength().intValue());
+  }
+
+  @Test
+  public void testReadRange() {
+    replay(configuration, chunkDAO);
+
+    TaskOutputStore writer = new TaskOutputStore(configuration, chunkDAO);
+    writer.append(1L, OutputType.STDOUT, "0123456789");
+
+    List<TaskOutputChunkEntity> values = new ArrayList<TaskOutputChunkEntity>(chunks.getValues());
+    TaskOutputChunkDAO readDAO = createNiceMock(TaskOutputChunkDAO.class);
+    expect(readDAO.findLastByTask(1L, OutputType.STDOUT)).andReturn(
+        values.get(values.size() - 1)).anyTimes();
+    expect(readDAO.findByTaskFromOffset(eq(1L), eq(OutputType.STDOUT), anyLong())).andReturn(
+        values).anyTimes();
+    replay(readDAO);
+
+    TaskOutputStore store = new TaskOutputStore(configuration, readDAO);
+    Assert.assertEquals("0123456789", store.read(1L, OutputType.STDOUT, "", null, null));
+    Assert.assertEquals("3456", store.read(1L, OutputType.STDOUT, "", 3L, 4));
+    Assert.assertEquals("789", store.read(1L, OutputType.STDOUT, "", -3L, null));
+  }
+
+  @Test
+  public void testReadLengthsOnce() {
+    replay(configuration, chunkDAO);
+
+    TaskOutputStore writer = new TaskOutputStore(configuration, chunkDAO);
+    writer.append(1L, OutputType.STDOUT, "0123456789");
+
+    List<TaskOutputChunkEntity> values = new ArrayList<TaskOutputChunkEntity>(chunks.getValues());
+    List<Object[]> lengths = new ArrayList<Object[]>();
+    lengths.add(new Object[] { 1L, OutputType.STDOUT, 10L });
+
+    TaskOutputChunkDAO readDAO = createMock(TaskOutputChunkDAO.class);
+    expect(readDAO.findLengthsByTasks(Arrays.asList(1L, 2L))).andReturn(lengths).once();
+    expect(readDAO.findByTaskFromOffset(1L, OutputType.STDOUT, 7L)).andReturn(values).once();
+    replay(readDAO);
+
+    TaskOutputStore store = new TaskOutputStore(configuration, readDAO);
+    Map<Long, Map<OutputType, Long>> outputLengths = store.getOutputLengths(Arrays.asList(1L, 2L));
+    Assert.assertEquals(1, outputLengths.size());
+    Assert.assertEquals(10L, outputLengths.get(1L).get(OutputType.STDOUT).longValue());
+    Assert.assertEquals("789", store.read(1L, OutputType.STDOUT, "", 10L, -3L, null));
+
+    // tasks without chunks are sliced from the full output without a query
+    Assert.assertEquals("ab", store.read(2L, OutputType.STDOUT, "abc", null, 0L, 2));
+
+    verify(readDAO);
+  }
+
+  @Test
+  public void testFlush() {
+    replay(configuration, chunkDAO);
+
+    TaskOutputStore writer = new TaskOutputStore(configuration, chunkDAO);
+    writer.append(1L, OutputType.STDERR, "err");
+
+    List<Object[]> lengths = new ArrayList<Object[]>();
+    lengths.add(new Object[] { 1L, OutputType.STDERR, 3L });
+
+    TaskOutputChunkDAO flushDAO = createNiceMock(TaskOutputChunkDAO.class);
+    expect(flushDAO.findLengthsByTasks(Collections.singleton(1L))).andReturn(lengths).once();
+    expect(flushDAO.findByTaskFromOffset(1L, OutputType.STDERR, 0L)).andReturn(
+        new ArrayList<TaskOutputChunkEntity>(chunks.getValues())).once();
+    expect(flushDAO.removeByTask(1L)).andReturn(1).once();
+    replay(flushDAO);
+
+    HostRoleCommandEntity command = new HostRoleCommandEntity();
+    command.setTaskId(1L);
+    command.setStdOut("out".getBytes());
+
+    TaskOutputStore store = new TaskOutputStore(configuration, flushDAO);
+    store.flush(Collections.singletonList(command));
+
+    verify(flushDAO);
+    Assert.assertEquals("out", new String(command.getStdOut()));
+    Assert.assertEquals("err", new String(command.getStdError()));
+  }
+
+  @Test
+  public void testSliceMultiByte() throws Exception {
+    // each of these characters is 2 bytes in UTF-8
+    String output = "\u00e9\u00e8\u00ea";
+    Assert.assertEquals(output, TaskOutputStore.slice(output, null, null));
+    Assert.assertEquals("\u00e8", TaskOutputStore.slice(output, 2L, 2));
+
+    // ranges which split a character drop the partial character
+    Assert.assertEquals("\u00e8", TaskOutputStore.slice(output, 1L, 4));
+    Assert.assertEquals("\u00ea", TaskOutputStore.slice(output, -3L, null));
+    Assert.assertEquals("", TaskOutputStore.slice(output, 0L, 1));
+
+    byte[] bytes = "a\u20acb".getBytes("UTF-8");
+    Assert.assertEquals("a", TaskOutputStore.decode(bytes, 0, 3));
+    Assert.assertEquals("b", TaskOutputStore.decode(bytes, 2, bytes.length));
+  }
+
+  @Test
+  public void testSlice() {
+    Assert.assertEquals("abc", TaskOutputStore.slice("abc", null, null));
+    Assert.assertEquals("bc", TaskOutputStore.slice("abc", 1L, null));
+    Assert.assertEquals("b", TaskOutputStore.slice("abc", 1L, 1));
+    Assert.assertEquals("bc", TaskOutputStore.slice("abc", -2L, null));
+    Assert.assertEquals("", TaskOutputStore.slice("abc", 10L, null));
+    Assert.assertNull(TaskOutputStore.slice(null, 1L, 1));
+  }
+
+  /**
+   * Builds a line of output which is longer than the overlap a windowed
+   * report must share with the stored output.
+   */
+  private static String line(char c) {
+    StringBuilder line = new StringBuilder();
+    for (int i = 0; i < TaskOutputStore.MIN_OVERLAP; i++) {
+      line.append(c);
+    }
+    return line.append('\n').toString();
+  }
+
+  /**
+   * Decompresses and joins the stored chunks.
+   */
+  private String join(List<TaskOutputChunkEntity> values) {
+    TaskOutputChunkDAO readDAO = createNiceMock(TaskOutputChunkDAO.class);
+    expect(readDAO.findByTaskFromOffset(eq(1L), eq(OutputType.STDOUT), anyLong())).andReturn(
+        new ArrayList<TaskOutputChunkEntity>(values)).anyTimes();
+    replay(readDAO);
+
+    TaskOutputChunkEntity last = values.get(values.size() - 1);
+    return new TaskOutputStore(configuration, readDAO).read(1L, OutputType.STDOUT, "",
+        last.getEndOffset(), null, null);
+  }
+}
@@ -190,6 +190,87 @@ public class TestActionScheduler {
     ac = waitForQueueSize(hostname, aq, 0, scheduler);
   }
 
+  /**
+   * Verifies that, by default, the stages in progress are kept in memory
+   * between wakeups and updated from command reports, including completions,
+   * without being reloaded from the database.
+   */
+  @Test
+  public void testStagesReusedBetweenWakeups() throws Exception {
+    ActionQueue aq = new ActionQueue();
+    Properties properties = new Properties();
+    Configuration conf = new Configuration(properties);
+    Clusters fsm = mock(Clusters.class);
+    Cluster oneClusterMock = mock(Cluster.class);
+    Service serviceObj = mock(Service.class);
+    ServiceComponent scomp = mock(ServiceComponent.class);
+    ServiceComponentHost sch = mock(ServiceComponentHost.class);
+    UnitOfWork unitOfWork = mock(UnitOfWork.class);
+    when(fsm.getCluster(anyString())).thenReturn(oneClusterMock);
+    when(oneClusterMock.getService(anyString())).thenReturn(serviceObj);
+    when(serviceObj.getServiceComponent(anyString())).thenReturn(scomp);
+    when(scomp.getServiceComponentHost(anyString())).thenReturn(sch);
+
+    Host host = mock(Host.class);
+    HashMap<String, ServiceComponentHost> hosts =
+            new HashMap<String, ServiceComponentHost>();
+    hosts.put(hostname, sch);
+    when(scomp.getServiceComponentHosts()).thenReturn(hosts);
+
+    when(fsm.getHost(anyString())).thenReturn(host);
+    when(host.getState()).thenReturn(HostState.HEALTHY);
+    when(host.getHostName()).thenReturn(hostname);
+
+    ActionDBAccessor db = mock(ActionDBAccessorImpl.class);
+    List<Stage> stages = new ArrayList<Stage>();
+    Stage s = StageUtils.getATestStage(1, 977, hostname, CLUSTER_HOST_INFO,
+      "{\"host_param\":\"param_value\"}", "{\"stage_param\":\"param_value\"}");
+    s.setHostRoleStatus(hostname, "NAMENODE", HostRoleStatus.QUEUED);
+    s.setLastAttemptTime(hostname, "NAMENODE", System.currentTimeMillis());
+    stages.add(s);
+
+    when(db.getCommandsInProgressCount()).thenReturn(stages.size());
+    when(db.getStagesInProgress()).thenReturn(stages);
+
+    RequestEntity request = mock(RequestEntity.class);
+    when(request.isExclusive()).thenReturn(false);
+    when(db.getRequestEntity(anyLong())).thenReturn(request);
+
+    ActionScheduler scheduler = new ActionScheduler(100, 600000, db, aq, fsm,
+        3, new HostsMap((String) null), unitOfWork, null, conf);
+    scheduler.setTaskTimeoutAdjustment(false);
+
+    scheduler.doWork();
+    scheduler.doWork();
+    verify(db, times(1)).getStagesInProgress();
+
+    // an in progress report is applied to the in-memory stage
+    CommandReport report = new CommandReport();
+    report.setTaskId(s.getHostRoleCommand(hostname, "NAMENODE").getTaskId());
+    report.setStatus(HostRoleStatus.IN_PROGRESS.toString());
+    scheduler.onTaskReports(Collections.singletonList(report));
+
+    scheduler.doWork();
+    verify(db, times(1)).getStagesInProgress();
+    assertEquals(HostRoleStatus.IN_PROGRESS, s.getHostRoleStatus(hostname, "NAMENODE"));
+
+    // a completed report is applied as well and the completed stage dropped
+    report.setStatus(HostRoleStatus.COMPLETED.toString());
+    report.setExitCode(0);
+    scheduler.onTaskReports(Collections.singletonList(report));
+
+    aq.dequeueAll(hostname);
+    scheduler.doWork();
+    verify(db, times(1)).getStagesInProgress();
+    assertEquals(HostRoleStatus.COMPLETED, s.getHostRoleStatus(hostname, "NAMENODE"));
+    assertEquals(0, aq.size(hostname));
+
+    // a new request forces a reload
+    scheduler.invalidateStages();
+    scheduler.doWork();
+    verify(db, times(2)).getStagesInProgress();
+  }
+
   private List<AgentCommand> waitForQueueSize(String hostname, ActionQueue aq,
       int expectedQueueSize, ActionScheduler scheduler) {
     int cycleCount = 0;
@@ -1662,6 +1743,8 @@ public class TestActionScheduler {
 
     ActionQueue aq = new ActionQueue();
     Properties properties = new Properties();
+    // the stages in progress are swapped in the database between wakeups
+    properties.put(Configuration.ACTION_SCHEDULER_STAGE_MODEL_MAX_AGE_KEY, "0");
     Configuration conf = new Configuration(properties);
     Clusters fsm = mock(Clusters.class);
     Cluster oneClusterMock = mock(Cluster.class);
@@ -2192,6 +2275,8 @@ public class TestActionScheduler {
     when(db.getRequestEntity(requestId3)).thenReturn(request3);
 
     Properties properties = new Properties();
+    // stages are removed from the database between wakeups
+    properties.put(Configuration.ACTION_SCHEDULER_STAGE_MODEL_MAX_AGE_KEY, "0");
     Configuration conf = new Configuration(properties);
 
     ActionScheduler scheduler = new ActionScheduler(100, 50, db, aq, fsm, 3,
@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.agent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.ambari.server.agent.HeartbeatProcessor.QueuedHeartbeat;
+import org.apache.ambari.server.agent.HeartbeatProcessor.Stage;
+import org.apache.ambari.server.agent.HeartbeatProcessor.StageMetrics;
+import org.junit.Test;
+
+public class TestHeartbeatProcessor {
+
+  @Test
+  public void testQueueIsBounded() throws Exception {
+    HeartBeatHandler handler = mock(HeartBeatHandler.class);
+    final HeartbeatProcessor processor = new HeartbeatProcessor(handler, 2, 10);
+
+    assertTrue(processor.offer(new HeartBeat(), 1L));
+    assertTrue(processor.offer(new HeartBeat(), 2L));
+
+    // a full queue makes the agent wait instead of processing its heartbeat
+    // ahead of the queued ones
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Boolean> offered = executor.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          return processor.offer(new HeartBeat(), 3L);
+        }
+      });
+      try {
+        offered.get(500, TimeUnit.MILLISECONDS);
+        fail("Expected the offer to wait for room in the queue");
+      } catch (TimeoutException e) {
+        // expected
+      }
+      assertEquals(2, processor.getQueueSize());
+
+      processor.start();
+      assertTrue(offered.get(5, TimeUnit.SECONDS));
+    } finally {
+      processor.shutdown();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testShutdownProcessesQueuedHeartbeats() throws Exception {
+    HeartBeatHandler handler = mock(HeartBeatHandler.class);
+    HeartbeatProcessor processor = new HeartbeatProcessor(handler, 10, 1);
+
+    processor.offer(new HeartBeat(), 1L);
+    processor.offer(new HeartBeat(), 2L);
+    processor.offer(new HeartBeat(), 3L);
+    processor.start();
+    processor.shutdown();
+
+    assertEquals(0, processor.getQueueSize());
+    verify(handler, times(3)).processHeartbeatBatch(
+        anyListOf(QueuedHeartbeat.class), any(StageMetrics.class));
+
+    // once stopped the caller processes its heartbeat inline
+    assertFalse(processor.offer(new HeartBeat(), 4L));
+  }
+
+  @Test
+  public void testBatchesAreProcessed() throws Exception {
+    HeartBeatHandler handler = mock(HeartBeatHandler.class);
+    HeartbeatProcessor processor = new HeartbeatProcessor(handler, 10, 10);
+
+    processor.offer(new HeartBeat(), 1L);
+    processor.offer(new HeartBeat(), 2L);
+    processor.start();
+    try {
+      verify(handler, timeout(5000)).processHeartbeatBatch(
+          anyListOf(QueuedHeartbeat.class), any(StageMetrics.class));
+    } finally {
+      processor.shutdown();
+    }
+
+    assertEquals(0, processor.getQueueSize());
+  }
+
+  @Test
+  public void testStageMetrics() {
+    StageMetrics metrics = new StageMetrics();
+    metrics.record(Stage.ACKNOWLEDGE, 2000000L);
+    metrics.record(Stage.ACKNOWLEDGE, 4000000L);
+
+    assertEquals(2, metrics.getCount(Stage.ACKNOWLEDGE));
+    assertEquals(3.0, metrics.getMeanMillis(Stage.ACKNOWLEDGE), 0.001);
+    assertEquals(4.0, metrics.getMaxMillis(Stage.ACKNOWLEDGE), 0.001);
+    assertEquals(0, metrics.getCount(Stage.BATCH));
+  }
+}
@@ -36,6 +36,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -50,21 +51,32 @@ import org.apache.ambari.server.api.resources.SubResourceDefinition;
 import org.apache.ambari.server.api.services.Result;
 import org.apache.ambari.server.api.util.TreeNode;
 import org.apache.ambari.server.api.util.TreeNodeImpl;
+import org.apache.ambari.server.controller.internal.AbstractResourceProvider;
 import org.apache.ambari.server.controller.internal.ClusterControllerImpl;
 import org.apache.ambari.server.controller.internal.ClusterControllerImplTest;
 import org.apache.ambari.server.controller.internal.PageRequestImpl;
+import org.apache.ambari.server.controller.internal.ResourceImpl;
+import org.apache.ambari.server.controller.internal.SortRequestImpl;
+import org.apache.ambari.server.controller.spi.BatchedResourceProvider;
 import org.apache.ambari.server.controller.spi.ClusterController;
 import org.apache.ambari.server.controller.spi.NoSuchParentResourceException;
 import org.apache.ambari.server.controller.spi.NoSuchResourceException;
 import org.apache.ambari.server.controller.spi.PageRequest;
 import org.apache.ambari.server.controller.spi.Predicate;
+import org.apache.ambari.server.controller.spi.PropertyProvider;
+import org.apache.ambari.server.controller.spi.ProviderModule;
 import org.apache.ambari.server.controller.spi.QueryResponse;
+import org.apache.ambari.server.controller.spi.Request;
+import org.apache.ambari.server.controller.spi.RequestStatus;
 import org.apache.ambari.server.controller.spi.Resource;
+import org.apache.ambari.server.controller.spi.ResourceProvider;
 import org.apache.ambari.server.controller.spi.Schema;
 import org.apache.ambari.server.controller.spi.SortRequest;
+import org.apache.ambari.server.controller.spi.SortRequestProperty;
 import org.apache.ambari.server.controller.spi.SystemException;
 import org.apache.ambari.server.controller.spi.UnsupportedPropertyException;
 import org.apache.ambari.server.controller.utilities.PredicateBuilder;
+import org.apache.ambari.server.controller.utilities.PropertyHelper;
 import org.easymock.Capture;
 import org.junit.Assert;
 import org.junit.Test;
@@ -769,6 +781,155 @@ public class QueryImplTest {
     Assert.assertNotNull(hostNode.getObject().getPropertyValue("c1/p3"));
   }
 
+  @Test
+  public void testExecute__Host_collection_batchedSubResources() throws Exception {
+    TestHostComponentResourceProvider resourceProvider = new TestBatchedHostComponentResourceProvider();
+
+    Result result = executeHostComponentsQuery(resourceProvider);
+
+    // the host components of all of the hosts are queried at once
+    Assert.assertEquals(1, resourceProvider.getQueryCount());
+    assertHostComponents(result);
+  }
+
+  @Test
+  public void testExecute__Host_collection_subResourcesPerParent() throws Exception {
+    TestHostComponentResourceProvider resourceProvider = new TestHostComponentResourceProvider();
+
+    Result result = executeHostComponentsQuery(resourceProvider);
+
+    // the provider doesn't support batched queries, so it is queried once per host
+    Assert.assertEquals(4, resourceProvider.getQueryCount());
+    assertHostComponents(result);
+  }
+
+  @Test
+  public void testExecute__Host_collection_pagePopulated() throws Exception {
+    PopulatedResourcesPropertyProvider propertyProvider = new PopulatedResourcesPropertyProvider();
+
+    QueryImpl instance = createHostQuery(propertyProvider);
+    instance.setPageRequest(new PageRequestImpl(PageRequest.StartingPoint.Beginning, 2, 0, null, null));
+
+    TreeNode<Resource> tree = instance.execute().getResultTree();
+
+    // only the hosts of the page are populated by the property provider
+    Assert.assertEquals(2, propertyProvider.getPopulatedResources().size());
+    Assert.assertEquals("4", tree.getProperty("count"));
+    Assert.assertEquals(2, tree.getChildren().size());
+    Assert.assertEquals("host:0", tree.getChild("Host:1").getObject().getPropertyValue("Hosts/host_name"));
+    Assert.assertEquals("host:1", tree.getChild("Host:2").getObject().getPropertyValue("Hosts/host_name"));
+  }
+
+  @Test
+  public void testExecute__Host_collection_sortedByPopulatedProperty() throws Exception {
+    PopulatedResourcesPropertyProvider propertyProvider = new PopulatedResourcesPropertyProvider();
+
+    QueryImpl instance = createHostQuery(propertyProvider);
+    instance.setPageRequest(new PageRequestImpl(PageRequest.StartingPoint.Beginning, 2, 0, null, null));
+    instance.setSortRequest(new SortRequestImpl(Collections.singletonList(
+        new SortRequestProperty("c3/p5", SortRequest.Order.DESC))));
+
+    TreeNode<Resource> tree = instance.execute().getResultTree();
+
+    // the sort property is provided by the property provider, so all of the hosts are populated before sorting
+    Assert.assertEquals(4, propertyProvider.getPopulatedResources().size());
+    Assert.assertEquals("4", tree.getProperty("count"));
+    Assert.assertEquals(2, tree.getChildren().size());
+    Assert.assertEquals("host:3", tree.getChild("Host:1").getObject().getPropertyValue("Hosts/host_name"));
+    Assert.assertEquals("host:2", tree.getChild("Host:2").getObject().getPropertyValue("Hosts/host_name"));
+  }
+
+  private QueryImpl createHostQuery(final PropertyProvider propertyProvider) {
+    ResourceDefinition resourceDefinition = createNiceMock(ResourceDefinition.class);
+
+    Map<Resource.Type, String> mapIds = new HashMap<Resource.Type, String>();
+    mapIds.put(Resource.Type.Cluster, "cluster");
+    mapIds.put(Resource.Type.Host, null);
+
+    // expectations
+    expect(resourceDefinition.getType()).andReturn(Resource.Type.Host).anyTimes();
+    expect(resourceDefinition.getSubResourceDefinitions()).andReturn(
+        Collections.<SubResourceDefinition>emptySet()).anyTimes();
+
+    replay(resourceDefinition);
+
+    final ProviderModule providerModule = new ClusterControllerImplTest.TestProviderModule();
+
+    ClusterController clusterController = new ClusterControllerImpl(new ProviderModule() {
+      @Override
+      public ResourceProvider getResourceProvider(Resource.Type type) {
+        return providerModule.getResourceProvider(type);
+      }
+
+      @Override
+      public List<PropertyProvider> getPropertyProviders(Resource.Type type) {
+        return Collections.singletonList(propertyProvider);
+      }
+    });
+
+    QueryImpl instance = new TestQuery(mapIds, resourceDefinition, clusterController);
+    instance.addProperty("c3/p5", null);
+
+    return instance;
+  }
+
+  private Result executeHostComponentsQuery(final ResourceProvider hostComponentProvider) throws Exception {
+    ResourceDefinition resourceDefinition = createNiceMock(ResourceDefinition.class);
+
+    Map<Resource.Type, String> mapIds = new HashMap<Resource.Type, String>();
+    mapIds.put(Resource.Type.Cluster, "cluster");
+    mapIds.put(Resource.Type.Host, null);
+
+    // expectations
+    expect(resourceDefinition.getType()).andReturn(Resource.Type.Host).anyTimes();
+    Set<SubResourceDefinition> setChildren = new HashSet<SubResourceDefinition>();
+    setChildren.add(new SubResourceDefinition(Resource.Type.HostComponent));
+
+    expect(resourceDefinition.getSubResourceDefinitions()).andReturn(setChildren).anyTimes();
+
+    replay(resourceDefinition);
+
+    final ProviderModule providerModule = new ClusterControllerImplTest.TestProviderModule();
+
+    ClusterController clusterController = new ClusterControllerImpl(new ProviderModule() {
+      @Override
+      public ResourceProvider getResourceProvider(Resource.Type type) {
+        return type == Resource.Type.HostComponent ? hostComponentProvider : providerModule.getResourceProvider(type);
+      }
+
+      @Override
+      public List<PropertyProvider> getPropertyProviders(Resource.Type type) {
+        return providerModule.getPropertyProviders(type);
+      }
+    });
+
+    //test
+    QueryImpl instance = new TestQuery(mapIds, resourceDefinition, clusterController);
+
+    instance.addProperty("host_components/*", null);
+
+    Result result = instance.execute();
+
+    verify(resourceDefinition);
+
+    return result;
+  }
+
+  private void assertHostComponents(Result result) {
+    TreeNode<Resource> tree = result.getResultTree();
+
+    Assert.assertEquals(4, tree.getChildren().size());
+    for (TreeNode<Resource> hostNode : tree.getChildren()) {
+      Object hostName = hostNode.getObject().getPropertyValue("Hosts/host_name");
+
+      TreeNode<Resource> hostComponentsNode = hostNode.getChild("host_components");
+      Assert.assertEquals(2, hostComponentsNode.getChildren().size());
+      for (TreeNode<Resource> hostComponentNode : hostComponentsNode.getChildren()) {
+        Assert.assertEquals(hostName, hostComponentNode.getObject().getPropertyValue("HostRoles/host_name"));
+      }
+    }
+  }
+
   public static class TestQuery extends QueryImpl {
     public TestQuery(Map<Resource.Type, String> mapIds, ResourceDefinition resourceDefinition) {
       super(mapIds, resourceDefinition, new ClusterControllerImpl(new ClusterControllerImplTest.TestProviderModule()));
@@ -780,5 +941,84 @@ public class QueryImplTest {
       setRenderer(new DefaultRenderer());
     }
   }
-}
 
+  private static class PopulatedResourcesPropertyProvider implements PropertyProvider {
+    private final Set<Resource> populatedResources = new HashSet<Resource>();
+
+    @Override
+    public Set<Resource> populateResources(Set<Resource> resources, Request request, Predicate predicate) {
+      for (Resource resource : resources) {
+        String hostName = (String) resource.getPropertyValue("Hosts/host_name");
+        resource.setProperty("c3/p5", Integer.valueOf(hostName.substring(hostName.indexOf(':') + 1)));
+        populatedResources.add(resource);
+      }
+      return resources;
+    }
+
+    @Override
+    public Set<String> checkPropertyIds(Set<String> propertyIds) {
+      Set<String> unsupportedPropertyIds = new HashSet<String>(propertyIds);
+      unsupportedPropertyIds.remove("c3/p5");
+      return unsupportedPropertyIds;
+    }
+
+    public Set<Resource> getPopulatedResources() {
+      return populatedResources;
+    }
+  }
+
+  private static class TestHostComponentResourceProvider extends AbstractResourceProvider {
+    private int queryCount = 0;
+
+    private TestHostComponentResourceProvider() {
+      super(PropertyHelper.getPropertyIds(Resource.Type.HostComponent),
+          PropertyHelper.getKeyPropertyIds(Resource.Type.HostComponent));
+    }
+
+    @Override
+    public RequestStatus createResources(Request request) {
+      throw new UnsupportedOperationException(); // not needed for testing
+    }
+
+    @Override
+    public Set<Resource> getResources(Request request, Predicate predicate) throws SystemException, UnsupportedPropertyException, NoSuchResourceException, NoSuchParentResourceException {
+      queryCount++;
+
+      Set<Resource> resources = new HashSet<Resource>();
+      for (Map<String, Object> propertyMap : getPropertyMaps(predicate)) {
+        for (String componentName : new String[] {"DATANODE", "NODEMANAGER"}) {
+          ResourceImpl resource = new ResourceImpl(Resource.Type.HostComponent);
+
+          resource.setProperty("HostRoles/cluster_name", propertyMap.get("HostRoles/cluster_name"));
+          resource.setProperty("HostRoles/host_name", propertyMap.get("HostRoles/host_name"));
+          resource.setProperty("HostRoles/component_name", componentName);
+          resources.add(resource);
+        }
+      }
+      return resources;
+    }
+
+    @Override
+    public RequestStatus updateResources(Request request, Predicate predicate) {
+      throw new UnsupportedOperationException(); // not needed for testing
+    }
+
+    @Override
+    public RequestStatus deleteResources(Predicate predicate) {
+      throw new UnsupportedOperationException(); // not needed for testing
+    }
+
+    @Override
+    protected Set<String> getPKPropertyIds() {
+      return Collections.emptySet();
+    }
+
+    public int getQueryCount() {
+      return queryCount;
+    }
+  }
+
+  private static class TestBatchedHostComponentResourceProvider extends TestHostComponentResourceProvider
+      implements BatchedResourceProvider {
+  }
+}
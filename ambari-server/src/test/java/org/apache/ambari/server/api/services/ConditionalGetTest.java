@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.api.services;
+
+import org.apache.ambari.server.api.resources.ResourceInstance;
+import org.apache.ambari.server.api.services.parsers.RequestBodyParser;
+import org.apache.ambari.server.api.services.serializers.ResultSerializer;
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.state.StateVersion;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Properties;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Conditional GET tests for BaseService.
+ */
+public class ConditionalGetTest {
+
+  private TestService service;
+  private UriInfo uriInfo;
+
+  @Before
+  public void setUp() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty(Configuration.API_CONDITIONAL_GET_KEY, "true");
+    properties.setProperty(Configuration.API_CONDITIONAL_GET_MAX_AGE_KEY, "0");
+    BaseService.init(new Configuration(properties));
+
+    uriInfo = createNiceMock(UriInfo.class);
+    expect(uriInfo.getRequestUri()).andReturn(new URI("http://localhost:8080/api/v1/hosts?fields=*")).anyTimes();
+    replay(uriInfo);
+
+    service = new TestService();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty(Configuration.API_CONDITIONAL_GET_KEY, "false");
+    BaseService.init(new Configuration(properties));
+  }
+
+  @Test
+  public void testGetNotModified() throws Exception {
+    Response response = service.get(null);
+    assertEquals(200, response.getStatus());
+    EntityTag entityTag = (EntityTag) response.getMetadata().getFirst("ETag");
+    assertNotNull(entityTag);
+    assertTrue(entityTag.isWeak());
+    assertEquals(1, service.processed);
+
+    response = service.get(entityTag.toString());
+    assertEquals(304, response.getStatus());
+    assertEquals(entityTag, response.getMetadata().getFirst("ETag"));
+    assertNull(response.getEntity());
+    assertEquals(1, service.processed);
+
+    // the tag may be one of several
+    response = service.get("\"other\", " + entityTag);
+    assertEquals(304, response.getStatus());
+    assertEquals(1, service.processed);
+  }
+
+  @Test
+  public void testGetModified() throws Exception {
+    Response response = service.get(null);
+    EntityTag entityTag = (EntityTag) response.getMetadata().getFirst("ETag");
+
+    StateVersion.increment();
+
+    response = service.get(entityTag.toString());
+    assertEquals(200, response.getStatus());
+    assertFalse(entityTag.equals(response.getMetadata().getFirst("ETag")));
+    assertEquals(2, service.processed);
+  }
+
+  @Test
+  public void testGetOtherEpoch() throws Exception {
+    Response response = service.get(null);
+    EntityTag entityTag = (EntityTag) response.getMetadata().getFirst("ETag");
+    assertTrue(entityTag.getValue().startsWith(Long.toString(StateVersion.getEpoch(), 36) + "-"));
+
+    // a tag of the same version from before a restart
+    String value = entityTag.getValue();
+    String previous = Long.toString(StateVersion.getEpoch() - 1, 36) + value.substring(value.indexOf('-'));
+
+    response = service.get(new EntityTag(previous, true).toString());
+    assertEquals(200, response.getStatus());
+    assertEquals(2, service.processed);
+  }
+
+  @Test
+  public void testGetOtherRequest() throws Exception {
+    Response response = service.get(null);
+    EntityTag entityTag = (EntityTag) response.getMetadata().getFirst("ETag");
+
+    UriInfo otherUriInfo = createNiceMock(UriInfo.class);
+    expect(otherUriInfo.getRequestUri()).andReturn(new URI("http://localhost:8080/api/v1/hosts")).anyTimes();
+    replay(otherUriInfo);
+
+    assertFalse(entityTag.equals(service.getEntityTag(otherUriInfo, null)));
+  }
+
+  @Test
+  public void testUpdateIncrementsVersion() throws Exception {
+    long version = StateVersion.get();
+
+    Response response = service.handleRequest(createHeaders(null), "", uriInfo, Request.Type.PUT, null);
+    assertEquals(200, response.getStatus());
+    assertNull(response.getMetadata().getFirst("ETag"));
+    assertTrue(StateVersion.get() > version);
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private static HttpHeaders createHeaders(String ifNoneMatch) {
+    HttpHeaders headers = createNiceMock(HttpHeaders.class);
+    expect(headers.getRequestHeader(HttpHeaders.IF_NONE_MATCH)).andReturn(
+        ifNoneMatch == null ? null : Collections.singletonList(ifNoneMatch)).anyTimes();
+    replay(headers);
+    return headers;
+  }
+
+  /**
+   * A service which counts the requests it processes.
+   */
+  private class TestService extends BaseService {
+    private int processed = 0;
+
+    private Response get(String ifNoneMatch) {
+      return handleRequest(createHeaders(ifNoneMatch), null, uriInfo, Request.Type.GET, null);
+    }
+
+    @Override
+    RequestFactory getRequestFactory() {
+      Request request = createNiceMock(Request.class);
+      expect(request.process()).andReturn(new ResultImpl(new ResultStatus(ResultStatus.STATUS.OK)));
+      replay(request);
+
+      RequestFactory requestFactory = createNiceMock(RequestFactory.class);
+      expect(requestFactory.createRequest(anyObject(HttpHeaders.class), anyObject(RequestBody.class),
+          eq(uriInfo), anyObject(Request.Type.class), anyObject(ResourceInstance.class))).andReturn(request);
+      replay(requestFactory);
+
+      processed++;
+      return requestFactory;
+    }
+
+    @Override
+    protected RequestBodyParser getBodyParser() {
+      RequestBodyParser bodyParser = createNiceMock(RequestBodyParser.class);
+      try {
+        expect(bodyParser.parse(anyObject(String.class))).andReturn(
+            Collections.singleton(new RequestBody()));
+      } catch (Exception e) {
+        // needed for compiler
+      }
+      replay(bodyParser);
+      return bodyParser;
+    }
+
+    @Override
+    protected ResultSerializer getResultSerializer() {
+      ResultSerializer serializer = createNiceMock(ResultSerializer.class);
+      expect(serializer.serialize(anyObject(Result.class))).andReturn("result");
+      replay(serializer);
+      return serializer;
+    }
+  }
+}
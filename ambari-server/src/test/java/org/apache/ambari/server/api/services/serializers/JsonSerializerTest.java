@@ -27,7 +27,9 @@ import org.junit.Test;
 
 import javax.ws.rs.core.UriInfo;
 
+import java.io.ByteArrayOutputStream;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import static org.easymock.EasyMock.*;
@@ -207,6 +209,50 @@ public class JsonSerializerTest {
 
     verify(uriInfo, resource/*, resource2*/);
   }
+
+  @Test
+  public void testSerializeCompact() throws Exception {
+    Resource resource = createMock(Resource.class);
+
+    Result result = new ResultImpl(true);
+    result.setResultStatus(new ResultStatus(ResultStatus.STATUS.OK));
+    TreeNode<Resource> tree = result.getResultTree();
+    TreeNode<Resource> child = tree.addChild(resource, "resource1");
+    child.setProperty("href", "this is an href");
+
+    Map<String, Object> mapRootProps = new LinkedHashMap<String, Object>();
+    mapRootProps.put("prop1", "value1");
+
+    Map<String, Object> mapCategoryProps = new LinkedHashMap<String, Object>();
+    mapCategoryProps.put("catProp1", 1);
+
+    Map<String, Map<String, Object>> propertyMap = new LinkedHashMap<String, Map<String, Object>>();
+    propertyMap.put(null, mapRootProps);
+    propertyMap.put("category", mapCategoryProps);
+
+    expect(resource.getPropertiesMap()).andReturn(propertyMap).anyTimes();
+
+    replay(resource);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new JsonSerializer(false).serialize(result, out);
+
+    assertEquals("{\"href\":\"this is an href\",\"prop1\":\"value1\",\"category\":{\"catProp1\":1}}",
+        out.toString("UTF-8"));
+
+    verify(resource);
+  }
+
+  @Test
+  public void testSerializeErrorState() throws Exception {
+    Result result = new ResultImpl(new ResultStatus(ResultStatus.STATUS.NOT_FOUND, "missing"));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new JsonSerializer(false).serialize(result, out);
+
+    assertEquals("{\"status\":404,\"message\":\"missing\"}", out.toString("UTF-8"));
+  }
+
     
   
 }
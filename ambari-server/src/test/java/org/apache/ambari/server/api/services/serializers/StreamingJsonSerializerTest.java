@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.api.services.serializers;
+
+import org.apache.ambari.server.api.services.Result;
+import org.apache.ambari.server.api.services.ResultImpl;
+import org.apache.ambari.server.api.services.ResultStatus;
+import org.apache.ambari.server.api.util.TreeNode;
+import org.apache.ambari.server.controller.spi.Resource;
+import org.junit.Test;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * StreamingJsonSerializer unit tests
+ */
+public class StreamingJsonSerializerTest {
+
+  @Test
+  public void testSerialize() throws Exception {
+    Resource resource = createMock(Resource.class);
+
+    Result result = new ResultImpl(true);
+    result.setResultStatus(new ResultStatus(ResultStatus.STATUS.OK));
+    TreeNode<Resource> tree = result.getResultTree();
+    TreeNode<Resource> resourcesNode = tree.addChild(null, "items");
+    resourcesNode.addChild(resource, "resource1");
+    resourcesNode.addChild(resource, "resource2");
+
+    Map<String, Object> mapCategoryProps = new LinkedHashMap<String, Object>();
+    mapCategoryProps.put("host_name", "h1");
+
+    Map<String, Map<String, Object>> propertyMap = new LinkedHashMap<String, Map<String, Object>>();
+    propertyMap.put("Hosts", mapCategoryProps);
+
+    expect(resource.getPropertiesMap()).andReturn(propertyMap).anyTimes();
+
+    replay(resource);
+
+    Object o = new StreamingJsonSerializer(false).serialize(result);
+    assertTrue(o instanceof StreamingOutput);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ((StreamingOutput) o).write(out);
+
+    assertEquals("{\"items\":[{\"Hosts\":{\"host_name\":\"h1\"}},{\"Hosts\":{\"host_name\":\"h1\"}}]}",
+        out.toString("UTF-8"));
+
+    verify(resource);
+  }
+
+  @Test
+  public void testSerializeMatchesJsonSerializer() throws Exception {
+    Resource resource = createMock(Resource.class);
+
+    Result result = new ResultImpl(true);
+    result.setResultStatus(new ResultStatus(ResultStatus.STATUS.OK));
+    TreeNode<Resource> child = result.getResultTree().addChild(resource, "resource1");
+    child.setProperty("href", "this is an href");
+
+    Map<String, Map<String, Object>> propertyMap = new LinkedHashMap<String, Map<String, Object>>();
+    propertyMap.put("category", Collections.<String, Object>singletonMap("prop1", "value1"));
+
+    expect(resource.getPropertiesMap()).andReturn(propertyMap).anyTimes();
+
+    replay(resource);
+
+    String expected = new JsonSerializer().serialize(result).toString();
+    assertEquals(expected, new StreamingJsonSerializer(true).serialize(result).toString());
+
+    verify(resource);
+  }
+
+  @Test
+  public void testSerializeError() throws Exception {
+    ResultStatus status = new ResultStatus(ResultStatus.STATUS.BAD_REQUEST, "bad");
+
+    assertEquals("{\"status\":400,\"message\":\"bad\"}",
+        new StreamingJsonSerializer(false).serializeError(status));
+  }
+}
@@ -808,6 +808,71 @@ public class ClusterControllerImplTest {
     Assert.assertTrue(keyPropertyIds.containsAll(predicatePropertyIds));
   }
 
+  @Test
+  public void testGetPageSelectsSortedPage() throws Exception {
+    ClusterControllerImpl controller = new ClusterControllerImpl(new TestProviderModule());
+
+    Set<Resource> resources = new HashSet<Resource>();
+    for (int cnt = 0; cnt < 50; ++cnt) {
+      ResourceImpl resource = new ResourceImpl(Resource.Type.Host);
+
+      resource.setProperty(PropertyHelper.getPropertyId("Hosts", "cluster_name"), "cluster");
+      resource.setProperty(PropertyHelper.getPropertyId("Hosts", "host_name"), "host:" + cnt);
+      resource.setProperty(PropertyHelper.getPropertyId("c1", "p1"), (cnt * 7) % 11);
+      resource.setProperty(PropertyHelper.getPropertyId("c1", "p2"), cnt % 3);
+      resources.add(resource);
+    }
+    QueryResponseImpl queryResponse = new QueryResponseImpl(resources);
+
+    Request request = PropertyHelper.getReadRequest(Collections.<String>emptySet());
+    Predicate predicate = new PredicateBuilder().property("c1/p2").lessThan(2).toPredicate();
+    List<SortRequestProperty> sortRequestProperties =
+      Collections.singletonList(new SortRequestProperty("c1/p1", SortRequest.Order.DESC));
+    SortRequest sortRequest = new SortRequestImpl(sortRequestProperties);
+
+    // all of the matching resources sorted
+    List<Resource> sortedResources = new ArrayList<Resource>();
+    for (Resource resource : controller.getPage(Resource.Type.Host, queryResponse, request, predicate,
+        null, sortRequest).getIterable()) {
+      sortedResources.add(resource);
+    }
+    Assert.assertEquals(34, sortedResources.size());
+    for (int i = 1; i < sortedResources.size(); ++i) {
+      Assert.assertTrue(controller.new ResourceComparator(sortRequest).compare(
+          sortedResources.get(i - 1), sortedResources.get(i)) < 0);
+    }
+
+    for (int offset = 0; offset < sortedResources.size(); offset += 5) {
+      PageRequest pageRequest = new PageRequestImpl(PageRequest.StartingPoint.OffsetStart, 4, offset, null, null);
+      PageResponse pageResponse = controller.getPage(Resource.Type.Host, queryResponse, request, predicate,
+          pageRequest, sortRequest);
+
+      int end = Math.min(offset + 4, sortedResources.size());
+      assertPage(sortedResources.subList(offset, end), pageResponse);
+      Assert.assertEquals(offset, pageResponse.getOffset());
+      Assert.assertEquals(offset == 0 ? null : sortedResources.get(offset - 1), pageResponse.getPreviousResource());
+      Assert.assertEquals(end == sortedResources.size() ? null : sortedResources.get(end), pageResponse.getNextResource());
+      Assert.assertEquals(34, pageResponse.getTotalResourceCount().intValue());
+    }
+
+    PageRequest pageRequest = new PageRequestImpl(PageRequest.StartingPoint.End, 4, 0, null, null);
+    PageResponse pageResponse = controller.getPage(Resource.Type.Host, queryResponse, request, predicate,
+        pageRequest, sortRequest);
+
+    assertPage(sortedResources.subList(30, 34), pageResponse);
+    Assert.assertEquals(sortedResources.get(29), pageResponse.getPreviousResource());
+    Assert.assertNull(pageResponse.getNextResource());
+    Assert.assertEquals(34, pageResponse.getTotalResourceCount().intValue());
+  }
+
+  private void assertPage(List<Resource> expected, PageResponse pageResponse) {
+    List<Resource> list = new LinkedList<Resource>();
+    for (Resource resource : pageResponse.getIterable()) {
+      list.add(resource);
+    }
+    Assert.assertEquals(expected, list);
+  }
+
   @Test
   public void testComparator() {
 
@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.controller.internal;
+
+import junit.framework.Assert;
+import org.apache.ambari.server.controller.spi.Resource;
+import org.apache.ambari.server.controller.utilities.PropertyHelper;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * CompactResourceImpl tests.
+ */
+public class CompactResourceImplTest {
+
+  private static final PropertyLayout LAYOUT = new PropertyLayout(Arrays.asList(
+      "Hosts/host_name", "Hosts/cluster_name", "Hosts/disk_info", "top_level", "metrics/$1/value"));
+
+  @Test
+  public void testLayout() {
+    Assert.assertEquals(4, LAYOUT.size());
+    Assert.assertEquals(-1, LAYOUT.getSlot("metrics/$1/value"));
+    Assert.assertEquals(-1, LAYOUT.getSlot("Hosts/unknown"));
+
+    int slot = LAYOUT.getSlot("Hosts/host_name");
+    Assert.assertEquals("Hosts", LAYOUT.getCategory(slot));
+    Assert.assertEquals("host_name", LAYOUT.getName(slot));
+
+    slot = LAYOUT.getSlot("top_level");
+    Assert.assertEquals("", LAYOUT.getCategory(slot));
+    Assert.assertEquals("top_level", LAYOUT.getName(slot));
+  }
+
+  @Test
+  public void testForType() {
+    PropertyLayout layout = PropertyLayout.forType(Resource.Type.Host);
+    Assert.assertSame(layout, PropertyLayout.forType(Resource.Type.Host));
+    Assert.assertTrue(layout.getSlot("Hosts/host_name") >= 0);
+  }
+
+  @Test
+  public void testSetGetProperty() {
+    Resource resource = new CompactResourceImpl(Resource.Type.Host, LAYOUT);
+    Assert.assertEquals(Resource.Type.Host, resource.getType());
+
+    resource.setProperty("Hosts/host_name", "h1");
+    resource.setProperty("Hosts/unknown", 1L);
+    resource.setProperty("metrics/cpu/cpu_user", 2.5);
+    resource.setProperty("Hosts/cluster_name", null);
+
+    Assert.assertEquals("h1", resource.getPropertyValue("Hosts/host_name"));
+    Assert.assertEquals(1L, resource.getPropertyValue("Hosts/unknown"));
+    Assert.assertEquals(2.5, resource.getPropertyValue("metrics/cpu/cpu_user"));
+    Assert.assertNull(resource.getPropertyValue("Hosts/cluster_name"));
+    Assert.assertNull(resource.getPropertyValue("Hosts/disk_info"));
+
+    resource.setProperty("Hosts/host_name", "h2");
+    Assert.assertEquals("h2", resource.getPropertyValue("Hosts/host_name"));
+  }
+
+  @Test
+  public void testGetPropertiesMap() {
+    Resource compact = new CompactResourceImpl(Resource.Type.Host, LAYOUT);
+    Resource resource = new ResourceImpl(Resource.Type.Host);
+
+    for (Resource r : Arrays.asList(compact, resource)) {
+      r.setProperty("Hosts/host_name", "h1");
+      r.setProperty("Hosts/cluster_name", null);
+      r.setProperty("Hosts/unknown", 1L);
+      r.setProperty("top_level", true);
+      r.setProperty("metrics/cpu/cpu_user", 2.5);
+      r.addCategory("empty");
+    }
+
+    Map<String, Map<String, Object>> expected = resource.getPropertiesMap();
+    Map<String, Map<String, Object>> map = compact.getPropertiesMap();
+    Assert.assertEquals(expected, map);
+    Assert.assertEquals(PropertyHelper.getProperties(resource), PropertyHelper.getProperties(compact));
+
+    // the returned map is live
+    map.get("Hosts").remove("host_name");
+    Assert.assertNull(compact.getPropertyValue("Hosts/host_name"));
+
+    compact.setProperty("Hosts/host_name", "h3");
+    Assert.assertEquals("h3", map.get("Hosts").get("host_name"));
+    Assert.assertEquals("h3", compact.getPropertyValue("Hosts/host_name"));
+  }
+
+  @Test
+  public void testEquals() {
+    Resource resource1 = new CompactResourceImpl(Resource.Type.Host, LAYOUT);
+    Resource resource2 = new CompactResourceImpl(Resource.Type.Host, LAYOUT);
+
+    resource1.setProperty("Hosts/host_name", "h1");
+    resource1.setProperty("Hosts/unknown", 1L);
+    resource2.setProperty("Hosts/unknown", 1L);
+    resource2.setProperty("Hosts/host_name", "h1");
+
+    Assert.assertEquals(resource1, resource2);
+    Assert.assertEquals(resource1.hashCode(), resource2.hashCode());
+
+    // building the properties map doesn't change equality
+    resource2.getPropertiesMap();
+    Assert.assertEquals(resource1, resource2);
+    Assert.assertEquals(resource1.hashCode(), resource2.hashCode());
+
+    resource2.setProperty("Hosts/host_name", "h2");
+    Assert.assertFalse(resource1.equals(resource2));
+  }
+}
@@ -0,0 +1,307 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.controller.internal;
+
+import junit.framework.Assert;
+import org.apache.ambari.server.controller.spi.Predicate;
+import org.apache.ambari.server.controller.spi.PropertyProvider;
+import org.apache.ambari.server.controller.spi.Request;
+import org.apache.ambari.server.controller.spi.Resource;
+import org.apache.ambari.server.controller.spi.SystemException;
+import org.apache.ambari.server.controller.utilities.PropertyHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PropertyProviderExecutor tests.
+ */
+public class PropertyProviderExecutorTest {
+
+  private ExecutorService executorService;
+
+  @Before
+  public void setUp() {
+    executorService = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    executorService.shutdownNow();
+  }
+
+  @Test
+  public void testPopulateResourcesConcurrently() throws Exception {
+    PropertyProviderExecutor executor = new PropertyProviderExecutor(executorService, 10000L);
+
+    // each provider waits for the other to start
+    CountDownLatch latch = new CountDownLatch(2);
+    TestPropertyProvider provider1 = new TestPropertyProvider("c1/p1", latch, 0L);
+    TestPropertyProvider provider2 = new TestPropertyProvider("c2/p1", latch, 0L);
+
+    Set<Resource> resources = createResources(3);
+    Set<Resource> keepers = executor.populateResources(Arrays.<PropertyProvider>asList(provider1, provider2),
+        resources, PropertyHelper.getReadRequest(), null);
+
+    Assert.assertEquals(resources, keepers);
+    for (Resource resource : resources) {
+      Object hostName = resource.getPropertyValue("Hosts/host_name");
+      Assert.assertEquals(hostName, resource.getPropertyValue("c1/p1"));
+      Assert.assertEquals(hostName, resource.getPropertyValue("c2/p1"));
+    }
+    Assert.assertEquals(Long.valueOf(2L), executor.getPopulateCounts().get(TestPropertyProvider.class.getName()));
+  }
+
+  @Test
+  public void testPopulateResourcesTimeout() throws Exception {
+    PropertyProviderExecutor executor = new PropertyProviderExecutor(executorService, 200L);
+
+    TestPropertyProvider provider1 = new TestPropertyProvider("c1/p1", null, 0L);
+    TestPropertyProvider provider2 = new TestPropertyProvider("c2/p1", null, 60000L);
+
+    Set<Resource> resources = createResources(3);
+    Set<Resource> keepers = executor.populateResources(Arrays.<PropertyProvider>asList(provider1, provider2),
+        resources, PropertyHelper.getReadRequest(), null);
+
+    // the properties of the slow provider are left out, even once it has been cancelled
+    Assert.assertTrue(provider2.finished.await(10, TimeUnit.SECONDS));
+    Assert.assertEquals(resources, keepers);
+    for (Resource resource : resources) {
+      Assert.assertNotNull(resource.getPropertyValue("c1/p1"));
+      Assert.assertNull(resource.getPropertyValue("c2/p1"));
+    }
+    Assert.assertEquals(Long.valueOf(1L), executor.getTimeoutCounts().get(TestPropertyProvider.class.getName()));
+  }
+
+  @Test
+  public void testPopulateResourcesComposite() throws Exception {
+    PropertyProviderExecutor executor = new PropertyProviderExecutor(executorService, 10000L);
+
+    // the delegates of the composite provider run concurrently with the other provider
+    CountDownLatch latch = new CountDownLatch(3);
+    TestPropertyProvider provider1 = new TestPropertyProvider("c1/p1", latch, 0L);
+    TestPropertyProvider delegate1 = new TestPropertyProvider("c2/p1", latch, 0L);
+    TestPropertyProvider delegate2 = new TestPropertyProvider("c3/p1", latch, 0L);
+    delegate2.dropped = "host1";
+    TestCompositePropertyProvider composite =
+        new TestCompositePropertyProvider(Arrays.<PropertyProvider>asList(delegate1, delegate2));
+
+    Set<Resource> resources = createResources(3);
+    Set<Resource> keepers = executor.populateResources(Arrays.<PropertyProvider>asList(provider1, composite),
+        resources, PropertyHelper.getReadRequest(), null);
+
+    // the composite provider keeps all of the resources
+    Assert.assertEquals(resources, keepers);
+    for (Resource resource : resources) {
+      Object hostName = resource.getPropertyValue("Hosts/host_name");
+      Assert.assertEquals(hostName, resource.getPropertyValue("c1/p1"));
+      Assert.assertEquals(hostName, resource.getPropertyValue("c2/p1"));
+      Assert.assertEquals(hostName, resource.getPropertyValue("c3/p1"));
+    }
+    Assert.assertEquals(Long.valueOf(3L), executor.getPopulateCounts().get(TestPropertyProvider.class.getName()));
+    Assert.assertNull(executor.getPopulateCounts().get(TestCompositePropertyProvider.class.getName()));
+  }
+
+  @Test
+  public void testDetachedView() throws Exception {
+    Resource resource = new ResourceImpl(Resource.Type.Host);
+    resource.setProperty("Hosts/host_name", "host1");
+
+    StagedResource view = new StagedResource(resource);
+    view.setProperty("c1/p1", "v1");
+    view.detach();
+    view.setProperty("c1/p2", "v2");
+    view.addCategory("c2");
+    view.apply();
+
+    Assert.assertNull(view.getPropertyValue("c1/p1"));
+    Assert.assertNull(view.getPropertyValue("c1/p2"));
+    Assert.assertEquals("host1", view.getPropertyValue("Hosts/host_name"));
+    Assert.assertNull(resource.getPropertyValue("c1/p1"));
+    Assert.assertNull(resource.getPropertiesMap().get("c2"));
+  }
+
+  @Test
+  public void testPopulateResourcesKeepers() throws Exception {
+    PropertyProviderExecutor executor = new PropertyProviderExecutor(executorService, 10000L);
+
+    TestPropertyProvider provider1 = new TestPropertyProvider("c1/p1", null, 0L);
+    TestPropertyProvider provider2 = new TestPropertyProvider("c2/p1", null, 0L);
+    provider2.dropped = "host1";
+
+    Set<Resource> resources = createResources(3);
+    Set<Resource> keepers = executor.populateResources(Arrays.<PropertyProvider>asList(provider1, provider2),
+        resources, PropertyHelper.getReadRequest(), null);
+
+    Assert.assertEquals(2, keepers.size());
+    for (Resource resource : keepers) {
+      Assert.assertFalse("host1".equals(resource.getPropertyValue("Hosts/host_name")));
+    }
+  }
+
+  @Test
+  public void testPopulateResourcesFailure() throws Exception {
+    PropertyProviderExecutor executor = new PropertyProviderExecutor(executorService, 10000L);
+
+    TestPropertyProvider provider1 = new TestPropertyProvider("c1/p1", null, 0L);
+    TestPropertyProvider provider2 = new TestPropertyProvider("c2/p1", null, 0L);
+    provider2.failure = new SystemException("Failed.");
+
+    try {
+      executor.populateResources(Arrays.<PropertyProvider>asList(provider1, provider2),
+          createResources(3), PropertyHelper.getReadRequest(), null);
+      Assert.fail("Expected SystemException.");
+    } catch (SystemException e) {
+      Assert.assertSame(provider2.failure, e);
+    }
+    Assert.assertEquals(Long.valueOf(1L), executor.getFailureCounts().get(TestPropertyProvider.class.getName()));
+  }
+
+  @Test
+  public void testPopulateResourcesSequentially() throws Exception {
+    PropertyProviderExecutor executor = new PropertyProviderExecutor(null, 0L);
+
+    TestPropertyProvider provider1 = new TestPropertyProvider("c1/p1", null, 0L);
+    TestPropertyProvider provider2 = new TestPropertyProvider("c2/p1", null, 0L);
+    provider1.dropped = "host1";
+
+    Set<Resource> resources = createResources(3);
+    Set<Resource> keepers = executor.populateResources(Arrays.<PropertyProvider>asList(provider1, provider2),
+        resources, PropertyHelper.getReadRequest(), null);
+
+    // the second provider only populates the resources kept by the first
+    Assert.assertFalse(executor.isConcurrent());
+    Assert.assertEquals(2, keepers.size());
+    for (Resource resource : resources) {
+      boolean dropped = "host1".equals(resource.getPropertyValue("Hosts/host_name"));
+      Assert.assertNotNull(resource.getPropertyValue("c1/p1"));
+      Assert.assertEquals(dropped, resource.getPropertyValue("c2/p1") == null);
+    }
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private static Set<Resource> createResources(int count) {
+    Set<Resource> resources = new LinkedHashSet<Resource>();
+    for (int i = 0; i < count; ++i) {
+      Resource resource = i % 2 == 0 ?
+          new ResourceImpl(Resource.Type.Host) : new CompactResourceImpl(Resource.Type.Host);
+      resource.setProperty("Hosts/host_name", "host" + i);
+      resources.add(resource);
+    }
+    return resources;
+  }
+
+  /**
+   * Populates the resources with the given delegates.
+   */
+  private static class TestCompositePropertyProvider implements CompositePropertyProvider {
+    private final List<PropertyProvider> delegates;
+
+    private TestCompositePropertyProvider(List<PropertyProvider> delegates) {
+      this.delegates = delegates;
+    }
+
+    @Override
+    public List<PropertyProvider> getPropertyProviders(Set<Resource> resources) {
+      return delegates;
+    }
+
+    @Override
+    public Set<Resource> populateResources(Set<Resource> resources, Request request, Predicate predicate)
+        throws SystemException {
+      throw new SystemException("Expected the delegates to be run.");
+    }
+
+    @Override
+    public Set<String> checkPropertyIds(Set<String> propertyIds) {
+      return Collections.emptySet();
+    }
+  }
+
+  /**
+   * Sets a property of each resource to the host name.
+   */
+  private static class TestPropertyProvider implements PropertyProvider {
+    private final String propertyId;
+    private final CountDownLatch latch;
+    private final long delay;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private String dropped = null;
+    private SystemException failure = null;
+
+    private TestPropertyProvider(String propertyId, CountDownLatch latch, long delay) {
+      this.propertyId = propertyId;
+      this.latch      = latch;
+      this.delay      = delay;
+    }
+
+    @Override
+    public Set<Resource> populateResources(Set<Resource> resources, Request request, Predicate predicate)
+        throws SystemException {
+      try {
+        if (failure != null) {
+          throw failure;
+        }
+        if (latch != null) {
+          latch.countDown();
+          Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        }
+        if (delay > 0) {
+          try {
+            Thread.sleep(delay);
+          } catch (InterruptedException e) {
+            // cancelled
+          }
+        }
+
+        Set<Resource> keepers = new HashSet<Resource>();
+        for (Resource resource : resources) {
+          Object hostName = resource.getPropertyValue("Hosts/host_name");
+          resource.setProperty(propertyId, hostName);
+          if (!hostName.equals(dropped)) {
+            keepers.add(resource);
+          }
+        }
+        return keepers;
+      } catch (InterruptedException e) {
+        throw new SystemException("Interrupted.", e);
+      } finally {
+        finished.countDown();
+      }
+    }
+
+    @Override
+    public Set<String> checkPropertyIds(Set<String> propertyIds) {
+      return Collections.emptySet();
+    }
+  }
+}
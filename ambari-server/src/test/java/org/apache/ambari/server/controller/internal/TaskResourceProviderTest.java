@@ -138,6 +138,44 @@ public class TaskResourceProviderTest {
     verify(managementController);
   }
 
+  @Test
+  public void testGetResourcesInvalidOutputRange() throws Exception {
+    Resource.Type type = Resource.Type.Task;
+
+    AmbariManagementController managementController = createMock(AmbariManagementController.class);
+    replay(managementController);
+
+    ResourceProvider provider = AbstractControllerResourceProvider.getResourceProvider(
+        type,
+        PropertyHelper.getPropertyIds(type),
+        PropertyHelper.getKeyPropertyIds(type),
+        managementController);
+
+    Set<String> propertyIds = new HashSet<String>();
+    propertyIds.add(TaskResourceProvider.TASK_STOUT_PROPERTY_ID);
+    Request request = PropertyHelper.getReadRequest(propertyIds);
+
+    Predicate predicate = new PredicateBuilder().property(TaskResourceProvider.TASK_ID_PROPERTY_ID).equals("100").
+        and().property(TaskResourceProvider.TASK_OUTPUT_OFFSET_PROPERTY_ID).equals("abc").toPredicate();
+    try {
+      provider.getResources(request, predicate);
+      Assert.fail("Expected an IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+    predicate = new PredicateBuilder().property(TaskResourceProvider.TASK_ID_PROPERTY_ID).equals("100").
+        and().property(TaskResourceProvider.TASK_OUTPUT_LENGTH_PROPERTY_ID).equals("-1").toPredicate();
+    try {
+      provider.getResources(request, predicate);
+      Assert.fail("Expected an IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+    verify(managementController);
+  }
+
   @Test
   public void testUpdateResources() throws Exception {
     Resource.Type type = Resource.Type.Task;
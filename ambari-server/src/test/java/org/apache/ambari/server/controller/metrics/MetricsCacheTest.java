@@ -0,0 +1,297 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.controller.metrics;
+
+import com.google.common.base.Ticker;
+import org.apache.ambari.server.controller.internal.TemporalInfoImpl;
+import org.apache.ambari.server.controller.spi.SystemException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MetricsCache tests.
+ */
+public class MetricsCacheTest {
+
+  private static final MetricsCacheKey KEY = new MetricsCacheKey("http://h1:50070/jmx", "h1", "NAMENODE",
+      null, null);
+
+  @Test
+  public void testDisabled() throws Exception {
+    MetricsCache cache = new MetricsCache(false, 10000L, 100L, new TestTicker());
+    CountingLoader loader = new CountingLoader("value");
+
+    Assert.assertFalse(cache.isEnabled());
+    Assert.assertEquals("value", cache.get(KEY, loader));
+    Assert.assertEquals("value", cache.get(KEY, loader));
+    Assert.assertEquals(2, loader.count.get());
+
+    // a zero ttl also disables the cache
+    Assert.assertFalse(new MetricsCache(true, 0L, 100L, new TestTicker()).isEnabled());
+  }
+
+  @Test
+  public void testGet() throws Exception {
+    TestTicker ticker = new TestTicker();
+    MetricsCache cache = new MetricsCache(true, 10000L, 100L, ticker);
+    CountingLoader loader = new CountingLoader("value");
+
+    Assert.assertEquals("value", cache.get(KEY, loader));
+    Assert.assertEquals("value", cache.get(KEY, loader));
+    Assert.assertEquals(1, loader.count.get());
+
+    // a different window is a different fetch
+    MetricsCacheKey temporalKey = new MetricsCacheKey("http://h1:50070/jmx", "h1", "NAMENODE", null,
+        new TemporalInfoImpl(100L, 200L, 1L));
+    Assert.assertEquals("value", cache.get(temporalKey, loader));
+    Assert.assertEquals(2, loader.count.get());
+
+    ticker.advance(10000L);
+    Assert.assertEquals("value", cache.get(KEY, loader));
+    Assert.assertEquals(3, loader.count.get());
+
+    cache.invalidateAll();
+    Assert.assertEquals("value", cache.get(KEY, loader));
+    Assert.assertEquals(4, loader.count.get());
+  }
+
+  @Test
+  public void testGetNullNotCached() throws Exception {
+    MetricsCache cache = new MetricsCache(true, 10000L, 100L, new TestTicker());
+    CountingLoader loader = new CountingLoader(null);
+
+    Assert.assertNull(cache.get(KEY, loader));
+    Assert.assertNull(cache.get(KEY, loader));
+    Assert.assertEquals(2, loader.count.get());
+  }
+
+  @Test
+  public void testGetException() throws Exception {
+    MetricsCache cache = new MetricsCache(true, 10000L, 100L, new TestTicker());
+    final SystemException exception = new SystemException("failed");
+
+    try {
+      cache.get(KEY, new MetricsCache.Loader<String>() {
+        @Override
+        public String load() throws SystemException {
+          throw exception;
+        }
+      });
+      Assert.fail("Expected SystemException");
+    } catch (SystemException e) {
+      Assert.assertSame(exception, e);
+    }
+  }
+
+  @Test
+  public void testGetCoalescesConcurrentFetches() throws Exception {
+    final MetricsCache cache = new MetricsCache(true, 10000L, 100L, new TestTicker());
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger count = new AtomicInteger();
+
+    final MetricsCache.Loader<String> loader = new MetricsCache.Loader<String>() {
+      @Override
+      public String load() {
+        count.incrementAndGet();
+        started.countDown();
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return "value";
+      }
+    };
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String>> futures = new ArrayList<Future<String>>();
+      for (int i = 0; i < 4; i++) {
+        futures.add(executor.submit(new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            return cache.get(KEY, loader);
+          }
+        }));
+      }
+      Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+      // give the other requests time to reach the cache
+      Thread.sleep(100);
+      release.countDown();
+
+      for (Future<String> future : futures) {
+        Assert.assertEquals("value", future.get(10, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    Assert.assertEquals(1, count.get());
+  }
+
+  @Test
+  public void testGetTimeSeries() throws Exception {
+    TestTicker ticker = new TestTicker();
+    MetricsCache cache = new MetricsCache(true, 10000L, 100L, ticker);
+    SeriesLoader loader = new SeriesLoader();
+
+    // full fetch
+    Map<Long, Double> series = cache.getTimeSeries(KEY, 100L, 200L, 20L, loader);
+    Assert.assertEquals(Collections.singletonList("100-200"), loader.windows);
+    Assert.assertEquals(101, series.size());
+
+    // covered by the cached series
+    series = cache.getTimeSeries(KEY, 150L, 200L, 20L, loader);
+    Assert.assertEquals(1, loader.windows.size());
+    Assert.assertEquals(51, series.size());
+    Assert.assertEquals(150L, (long) ((TreeMap<Long, Double>) series).firstKey());
+
+    // the cached series is recent enough to stand in for a later window
+    series = cache.getTimeSeries(KEY, 160L, 210L, 20L, loader);
+    Assert.assertEquals(1, loader.windows.size());
+    Assert.assertEquals(200L, (long) ((TreeMap<Long, Double>) series).lastKey());
+
+    // top up with the overlap once the cached series is stale
+    ticker.advance(10000L);
+    series = cache.getTimeSeries(KEY, 160L, 210L, 20L, loader);
+    Assert.assertEquals("180-210", loader.windows.get(1));
+    Assert.assertEquals(51, series.size());
+    Assert.assertEquals(160L, (long) ((TreeMap<Long, Double>) series).firstKey());
+    Assert.assertEquals(210L, (long) ((TreeMap<Long, Double>) series).lastKey());
+
+    // a window starting before the cached series needs a full fetch
+    series = cache.getTimeSeries(KEY, 100L, 210L, 20L, loader);
+    Assert.assertEquals("100-210", loader.windows.get(2));
+    Assert.assertEquals(111, series.size());
+  }
+
+  @Test
+  public void testGetTimeSeriesPrecision() throws Exception {
+    TestTicker ticker = new TestTicker();
+    MetricsCache cache = new MetricsCache(true, 10000L, 100L, ticker);
+    SeriesLoader loader = new SeriesLoader();
+
+    MetricsCacheKey minutesKey = new MetricsCacheKey("http://h1:6188/ws/v1/timeline/metrics", "h1", "HOST",
+        Collections.singleton("cpu_user"), null, "MINUTES");
+    MetricsCacheKey secondsKey = new MetricsCacheKey("http://h1:6188/ws/v1/timeline/metrics", "h1", "HOST",
+        Collections.singleton("cpu_user"), null, "SECONDS");
+
+    // a long window read with a coarse precision
+    cache.getTimeSeries(minutesKey, 100L, 1000L, 20L, loader);
+    Assert.assertEquals(Collections.singletonList("100-1000"), loader.windows);
+
+    // a short window inside it is read with a fine precision, so the coarse
+    // series is not sliced for it
+    Map<Long, Double> series = cache.getTimeSeries(secondsKey, 900L, 1000L, 20L, loader);
+    Assert.assertEquals("900-1000", loader.windows.get(1));
+    Assert.assertEquals(101, series.size());
+
+    // and each series is topped up on its own
+    ticker.advance(10000L);
+    cache.getTimeSeries(secondsKey, 950L, 1050L, 20L, loader);
+    Assert.assertEquals("980-1050", loader.windows.get(2));
+    series = cache.getTimeSeries(minutesKey, 150L, 1050L, 20L, loader);
+    Assert.assertEquals("980-1050", loader.windows.get(3));
+    Assert.assertEquals(4, loader.windows.size());
+    Assert.assertEquals(901, series.size());
+  }
+
+  @Test
+  public void testGetTimeSeriesDisabled() throws Exception {
+    MetricsCache cache = new MetricsCache(false, 10000L, 100L, new TestTicker());
+    SeriesLoader loader = new SeriesLoader();
+
+    cache.getTimeSeries(KEY, 100L, 200L, 20L, loader);
+    cache.getTimeSeries(KEY, 100L, 200L, 20L, loader);
+    Assert.assertEquals(2, loader.windows.size());
+  }
+
+
+  // ----- inner classes -----------------------------------------------------
+
+  private static class TestTicker extends Ticker {
+    private long nanos = 0L;
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+
+    public void advance(long millis) {
+      nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+  }
+
+  private static class CountingLoader implements MetricsCache.Loader<String> {
+    private final String value;
+    private final AtomicInteger count = new AtomicInteger();
+
+    private CountingLoader(String value) {
+      this.value = value;
+    }
+
+    @Override
+    public String load() {
+      count.incrementAndGet();
+      return value;
+    }
+  }
+
+  /**
+   * Loads a value for each time unit of the window.
+   */
+  private static class SeriesLoader implements MetricsCache.TimeSeriesLoader<Map<Long, Double>> {
+    private final List<String> windows = new ArrayList<String>();
+
+    @Override
+    public Map<Long, Double> load(long startTime, long endTime) {
+      windows.add(startTime + "-" + endTime);
+
+      Map<Long, Double> series = new TreeMap<Long, Double>();
+      for (long time = startTime; time <= endTime; time++) {
+        series.put(time, (double) time);
+      }
+      return series;
+    }
+
+    @Override
+    public Map<Long, Double> merge(Map<Long, Double> cached, Map<Long, Double> update) {
+      cached.putAll(update);
+      return cached;
+    }
+
+    @Override
+    public Map<Long, Double> slice(Map<Long, Double> value, long startTime, long endTime) {
+      return new TreeMap<Long, Double>(((TreeMap<Long, Double>) value).subMap(startTime, true, endTime, true));
+    }
+  }
+}
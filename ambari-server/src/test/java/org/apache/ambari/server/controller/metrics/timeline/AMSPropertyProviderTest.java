@@ -62,6 +62,20 @@ public class AMSPropertyProviderTest {
   private static final String MULTIPLE_COMPONENT_REGEXP_METRICS_FILE_PATH = FILE_PATH_PREFIX + "multiple_component_regexp_metrics.json";
   private static final String EMBEDDED_METRICS_FILE_PATH = FILE_PATH_PREFIX + "embedded_host_metric.json";
 
+  @Test
+  public void testGetDefaultPrecision() {
+    long hour = 3600000L;
+    long day = 24 * hour;
+
+    Assert.assertEquals("SECONDS", AMSPropertyProvider.getDefaultPrecision(true, 0L, hour));
+    Assert.assertEquals("MINUTES", AMSPropertyProvider.getDefaultPrecision(true, 0L, day));
+    Assert.assertEquals("HOURS", AMSPropertyProvider.getDefaultPrecision(true, 0L, 7 * day));
+
+    // cluster aggregates have no minute precision
+    Assert.assertEquals("SECONDS", AMSPropertyProvider.getDefaultPrecision(false, 0L, day));
+    Assert.assertEquals("HOURS", AMSPropertyProvider.getDefaultPrecision(false, 0L, 7 * day));
+  }
+
   @Test
   public void testPopulateResourcesForSingleHostMetric() throws Exception {
     TestStreamProvider streamProvider = new TestStreamProvider(SINGLE_HOST_METRICS_FILE_PATH);
@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.controller.predicate;
+
+import junit.framework.Assert;
+import org.apache.ambari.server.controller.internal.CompactResourceImpl;
+import org.apache.ambari.server.controller.internal.PropertyLayout;
+import org.apache.ambari.server.controller.internal.ResourceImpl;
+import org.apache.ambari.server.controller.spi.Predicate;
+import org.apache.ambari.server.controller.spi.Resource;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * CompiledPredicate tests.
+ */
+public class CompiledPredicateTest {
+
+  private static final PropertyLayout LAYOUT = new PropertyLayout(Arrays.asList(
+      "Hosts/host_name", "Hosts/host_state", "Hosts/cpu_count", "Hosts/total_mem"));
+
+  @Test
+  public void testEvaluate() {
+    List<Predicate> predicates = new ArrayList<Predicate>();
+    predicates.add(new EqualsPredicate<String>("Hosts/host_name", "host2"));
+    predicates.add(new EqualsPredicate<String>("Hosts/host_name", null));
+    predicates.add(new EqualsPredicate<String>("Hosts/cpu_count", "4"));
+    predicates.add(new EqualsPredicate<Integer>("Hosts/cpu_count", 4));
+    predicates.add(new LessPredicate<String>("Hosts/cpu_count", "4"));
+    predicates.add(new LessEqualsPredicate<String>("Hosts/total_mem", "2048"));
+    predicates.add(new GreaterPredicate<String>("Hosts/total_mem", "1,024"));
+    predicates.add(new GreaterEqualsPredicate<Double>("Hosts/cpu_count", 2.5));
+    predicates.add(new GreaterPredicate<String>("Hosts/host_name", "host1"));
+    predicates.add(new FilterPredicate("Hosts/host_name", "host[13]"));
+    predicates.add(new CategoryIsEmptyPredicate("Hosts"));
+    predicates.add(new NotPredicate(new EqualsPredicate<String>("Hosts/host_state", "HEALTHY")));
+    predicates.add(new NotPredicate(new NotPredicate(new EqualsPredicate<String>("Hosts/host_state", "HEALTHY"))));
+    predicates.add(new AndPredicate(
+        new AndPredicate(new EqualsPredicate<String>("Hosts/host_state", "HEALTHY"),
+            new GreaterEqualsPredicate<String>("Hosts/cpu_count", "2")),
+        new NotPredicate(new EqualsPredicate<String>("Hosts/host_name", "host4"))));
+    predicates.add(new OrPredicate(
+        new OrPredicate(new EqualsPredicate<String>("Hosts/host_name", "host1"),
+            new EqualsPredicate<String>("Hosts/host_name", "host3")),
+        new EqualsPredicate<String>("Hosts/host_name", "2"),
+        new LessPredicate<String>("Hosts/cpu_count", "2"),
+        new EqualsPredicate<String>("Hosts/host_state", "UNHEALTHY")));
+    predicates.add(new AndPredicate(AlwaysPredicate.INSTANCE, new EqualsPredicate<String>("Hosts/host_name", "host1")));
+    predicates.add(new OrPredicate(AlwaysPredicate.INSTANCE, new EqualsPredicate<String>("Hosts/host_name", "host1")));
+    predicates.add(new AndPredicate());
+    predicates.add(new OrPredicate());
+
+    List<Resource> resources = new ArrayList<Resource>();
+    for (int i = 0; i < 5; i++) {
+      resources.add(createResource(new ResourceImpl(Resource.Type.Host), i));
+      resources.add(createResource(new CompactResourceImpl(Resource.Type.Host, LAYOUT), i));
+    }
+    // a compact resource which has built its properties map
+    Resource resource = createResource(new CompactResourceImpl(Resource.Type.Host, LAYOUT), 3);
+    resource.getPropertiesMap();
+    resources.add(resource);
+    resources.add(new ResourceImpl(Resource.Type.Host));
+
+    for (Predicate predicate : predicates) {
+      Predicate compiledPredicate = CompiledPredicate.compile(predicate);
+      for (Resource r : resources) {
+        Assert.assertEquals(predicate + " : " + r, predicate.evaluate(r), compiledPredicate.evaluate(r));
+      }
+    }
+  }
+
+  @Test
+  public void testEvaluateIn() {
+    Predicate predicate = new OrPredicate(
+        new EqualsPredicate<String>("Hosts/host_name", "host1"),
+        new EqualsPredicate<String>("Hosts/host_name", "host3"),
+        new EqualsPredicate<String>("Hosts/host_name", "host5"));
+    Predicate compiledPredicate = CompiledPredicate.compile(predicate);
+
+    int matches = 0;
+    for (int i = 0; i < 5; i++) {
+      Resource resource = createResource(new CompactResourceImpl(Resource.Type.Host, LAYOUT), i);
+      Assert.assertEquals(predicate.evaluate(resource), compiledPredicate.evaluate(resource));
+      if (compiledPredicate.evaluate(resource)) {
+        matches++;
+      }
+    }
+    Assert.assertEquals(2, matches);
+  }
+
+  @Test
+  public void testCompareNumericStrings() {
+    Resource resource = new ResourceImpl(Resource.Type.Host);
+    resource.setProperty("Hosts/cpu_count", "20");
+
+    Predicate[] predicates = {
+        new EqualsPredicate<String>("Hosts/cpu_count", "10"),
+        new GreaterPredicate<String>("Hosts/cpu_count", "4"),
+        new LessPredicate<String>("Hosts/cpu_count", "20.5")
+    };
+    boolean[] expected = {false, true, true};
+
+    for (int i = 0; i < predicates.length; i++) {
+      Assert.assertEquals(expected[i], predicates[i].evaluate(resource));
+      Assert.assertEquals(expected[i], CompiledPredicate.compile(predicates[i]).evaluate(resource));
+    }
+  }
+
+  @Test
+  public void testCompile() {
+    Predicate predicate = new EqualsPredicate<String>("Hosts/host_name", "host1");
+    Predicate compiledPredicate = CompiledPredicate.compile(predicate);
+
+    Assert.assertNull(CompiledPredicate.compile(null));
+    Assert.assertSame(compiledPredicate, CompiledPredicate.compile(compiledPredicate));
+    Assert.assertEquals(predicate.toString(), compiledPredicate.toString());
+
+    Set<String> propertyIds = ((BasePredicate) compiledPredicate).getPropertyIds();
+    Assert.assertEquals(1, propertyIds.size());
+    Assert.assertTrue(propertyIds.contains("Hosts/host_name"));
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private static Resource createResource(Resource resource, int i) {
+    resource.setProperty("Hosts/host_name", "host" + i);
+    resource.setProperty("Hosts/host_state", i % 2 == 0 ? "HEALTHY" : "UNHEALTHY");
+    resource.setProperty("Hosts/cpu_count", i % 2 == 0 ? (Object) (long) i : String.valueOf(i));
+    resource.setProperty("Hosts/total_mem", i * 512 + ".0");
+    return resource;
+  }
+}
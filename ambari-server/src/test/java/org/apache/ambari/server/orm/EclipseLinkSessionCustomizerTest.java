@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.orm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import javax.persistence.EntityManager;
+
+import org.apache.ambari.server.orm.entities.ResourceTypeEntity;
+import org.apache.ambari.server.state.StateVersion;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.persist.PersistService;
+
+/**
+ * Tests that {@link EclipseLinkSessionCustomizer} only increments the
+ * {@link StateVersion} for transactions which change the database.
+ */
+public class EclipseLinkSessionCustomizerTest {
+
+  private Injector m_injector;
+  private EntityManager m_entityManager;
+
+  @Before
+  public void setup() throws Exception {
+    m_injector = Guice.createInjector(new InMemoryDefaultTestModule());
+    m_injector.getInstance(GuiceJpaInitializer.class);
+    m_entityManager = m_injector.getProvider(EntityManager.class).get();
+  }
+
+  @After
+  public void teardown() throws Exception {
+    m_injector.getInstance(PersistService.class).stop();
+  }
+
+  @Test
+  public void testNoOpTransaction() throws Exception {
+    long version = StateVersion.get();
+
+    m_entityManager.getTransaction().begin();
+    m_entityManager.getTransaction().commit();
+    assertEquals(version, StateVersion.get());
+
+    // reading doesn't change the version either
+    m_entityManager.getTransaction().begin();
+    m_entityManager.createQuery("SELECT type FROM ResourceTypeEntity type").getResultList();
+    m_entityManager.getTransaction().commit();
+    assertEquals(version, StateVersion.get());
+  }
+
+  @Test
+  public void testChangingTransaction() throws Exception {
+    long version = StateVersion.get();
+
+    ResourceTypeEntity entity = new ResourceTypeEntity();
+    entity.setName("TEST_TYPE");
+    m_entityManager.getTransaction().begin();
+    m_entityManager.persist(entity);
+    m_entityManager.getTransaction().commit();
+    assertTrue(StateVersion.get() > version);
+
+    // changes flushed before the commit
+    version = StateVersion.get();
+    m_entityManager.getTransaction().begin();
+    entity.setName("TEST_TYPE");
+    ResourceTypeEntity other = new ResourceTypeEntity();
+    other.setName("OTHER_TYPE");
+    m_entityManager.persist(other);
+    m_entityManager.flush();
+    m_entityManager.getTransaction().commit();
+    assertTrue(StateVersion.get() > version);
+
+    // bulk changes are not in the change set
+    version = StateVersion.get();
+    m_entityManager.getTransaction().begin();
+    m_entityManager.createQuery(
+        "DELETE FROM ResourceTypeEntity type WHERE type.name = 'TEST_TYPE'").executeUpdate();
+    m_entityManager.getTransaction().commit();
+    assertTrue(StateVersion.get() > version);
+  }
+}
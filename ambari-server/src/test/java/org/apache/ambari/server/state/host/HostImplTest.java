@@ -20,16 +20,22 @@ package org.apache.ambari.server.state.host;
 import com.google.gson.Gson;
 import com.google.inject.Injector;
 import org.apache.ambari.server.orm.dao.HostDAO;
+import org.apache.ambari.server.orm.dao.HostStateDAO;
 import org.apache.ambari.server.orm.entities.HostEntity;
 import org.apache.ambari.server.orm.entities.HostStateEntity;
 import org.apache.ambari.server.state.Clusters;
 import org.apache.ambari.server.state.HostHealthStatus;
+import org.apache.ambari.server.state.HostHealthStatus.HealthStatus;
+import org.apache.ambari.server.state.services.StateWriteBehindService;
 import org.junit.Test;
 
 import java.util.Map;
 
 import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.createStrictMock;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.isA;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.*;
@@ -97,4 +103,45 @@ public class HostImplTest {
 
     verify(hostEntity, hostStateEntity, injector, hostDAO);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testWriteBehindHealthStatus() throws Exception {
+
+    HostEntity hostEntity = createNiceMock(HostEntity.class);
+    HostStateEntity hostStateEntity = createNiceMock(HostStateEntity.class);
+    HostDAO hostDAO  = createNiceMock(HostDAO.class);
+    HostStateDAO hostStateDAO = createStrictMock(HostStateDAO.class);
+    StateWriteBehindService writeBehindService = createNiceMock(StateWriteBehindService.class);
+    Injector injector = createNiceMock(Injector.class);
+
+    Gson gson = new Gson();
+    HostHealthStatus healthStatus = new HostHealthStatus(HealthStatus.HEALTHY, "report");
+
+    expect(injector.getInstance(Gson.class)).andReturn(gson).anyTimes();
+    expect(injector.getInstance(HostDAO.class)).andReturn(hostDAO).anyTimes();
+    expect(injector.getInstance(HostStateDAO.class)).andReturn(hostStateDAO).anyTimes();
+    expect(injector.getInstance(StateWriteBehindService.class)).andReturn(writeBehindService).anyTimes();
+    expect(writeBehindService.isEnabled()).andReturn(true).anyTimes();
+    expect(hostEntity.getHostName()).andReturn("host1").anyTimes();
+    expect(hostEntity.getHostStateEntity()).andReturn(hostStateEntity).anyTimes();
+    expect(hostDAO.findByName("host1")).andReturn(hostEntity).once();
+
+    // the health status is only written when the service flushes
+    hostStateEntity.setHealthStatus(gson.toJson(healthStatus));
+    expect(hostStateDAO.merge(hostStateEntity)).andReturn(hostStateEntity);
+
+    writeBehindService.markDirty(isA(HostImpl.class));
+    expectLastCall().once();
+
+    replay(hostEntity, hostStateEntity, injector, hostDAO, hostStateDAO, writeBehindService);
+
+    HostImpl host = new HostImpl(hostEntity, true, injector);
+
+    host.setHealthStatus(healthStatus);
+    assertSame(healthStatus, host.getHealthStatus());
+
+    host.flushState();
+
+    verify(hostEntity, hostStateEntity, injector, hostDAO, hostStateDAO, writeBehindService);
+  }
+}
@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state.services;
+
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.createStrictMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.ambari.server.actionmanager.HostRoleStatus;
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.orm.dao.AlertsDAO;
+import org.apache.ambari.server.orm.dao.HostRoleCommandDAO;
+import org.apache.ambari.server.orm.dao.RequestDAO;
+import org.apache.ambari.server.orm.entities.AlertDefinitionEntity;
+import org.apache.ambari.server.orm.entities.AlertHistoryEntity;
+import org.apache.ambari.server.state.AlertState;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+
+/**
+ * Tests the {@link RetentionService}.
+ */
+public class RetentionServiceTest {
+
+  @Rule
+  public TemporaryFolder m_folder = new TemporaryFolder();
+
+  private Configuration m_configuration;
+  private RequestDAO m_requestDAO;
+  private AlertsDAO m_alertsDAO;
+  private RetentionService m_service;
+
+  @Before
+  public void before() {
+    m_configuration = createNiceMock(Configuration.class);
+    m_requestDAO = createStrictMock(RequestDAO.class);
+    m_alertsDAO = createStrictMock(AlertsDAO.class);
+
+    m_service = new RetentionService();
+    Guice.createInjector(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(Configuration.class).toInstance(m_configuration);
+        bind(RequestDAO.class).toInstance(m_requestDAO);
+        bind(AlertsDAO.class).toInstance(m_alertsDAO);
+        bind(HostRoleCommandDAO.class).toInstance(createNiceMock(HostRoleCommandDAO.class));
+      }
+    }).injectMembers(m_service);
+  }
+
+  /**
+   * Tests that requests older than the max age are removed in batches and
+   * that the removed rows are counted by table.
+   */
+  @Test
+  public void testPruneRequestsByAge() throws Exception {
+    expect(m_configuration.getRequestRetentionMaxAge()).andReturn(30).anyTimes();
+    expect(m_configuration.getRetentionBatchSize()).andReturn(2).anyTimes();
+
+    Map<String, Integer> removed = new LinkedHashMap<String, Integer>();
+    removed.put("host_role_command", 5);
+    removed.put("request", 2);
+
+    expect(m_requestDAO.findRequestIdsToPrune(anyLong(), eq(Long.MAX_VALUE),
+        eq(EnumSet.copyOf(HostRoleStatus.getCompletedStates())), eq(2))).andReturn(
+        Arrays.asList(1L, 2L));
+    expect(m_requestDAO.removeRequests(Arrays.asList(1L, 2L))).andReturn(removed);
+
+    replay(m_configuration, m_requestDAO, m_alertsDAO);
+
+    m_service.pruneRequests();
+    m_service.pruneAlerts();
+
+    verify(m_requestDAO, m_alertsDAO);
+    assertEquals(Long.valueOf(5), m_service.getRowsRemoved().get("host_role_command"));
+    assertEquals(Long.valueOf(2), m_service.getRowsRemoved().get("request"));
+    assertEquals(7, m_service.getLastRunRowsRemoved());
+  }
+
+  /**
+   * Tests that statuses of active tasks never allow a request to be removed.
+   */
+  @Test
+  public void testRequestStatusesExcludeActiveTasks() throws Exception {
+    expect(m_configuration.getRequestRetentionStatuses()).andReturn(
+        "completed, IN_PROGRESS").anyTimes();
+    replay(m_configuration);
+
+    assertEquals(EnumSet.of(HostRoleStatus.COMPLETED), m_service.getRequestStatuses());
+  }
+
+  /**
+   * Tests that alerts outside of the max count are archived before they are
+   * removed.
+   */
+  @Test
+  public void testPruneAlertsByCountWithArchive() throws Exception {
+    File archiveDir = m_folder.newFolder();
+    expect(m_configuration.getAlertRetentionMaxCount()).andReturn(10).anyTimes();
+    expect(m_configuration.getAlertRetentionStates()).andReturn("OK").anyTimes();
+    expect(m_configuration.getRetentionBatchSize()).andReturn(100).anyTimes();
+    expect(m_configuration.getRetentionArchiveDir()).andReturn(
+        archiveDir.getAbsolutePath()).anyTimes();
+
+    AlertDefinitionEntity definition = new AlertDefinitionEntity();
+    definition.setDefinitionName("datanode_process");
+
+    AlertHistoryEntity history = new AlertHistoryEntity();
+    history.setAlertId(5L);
+    history.setAlertDefinition(definition);
+    history.setAlertState(AlertState.OK);
+
+    Map<String, Integer> removed = new LinkedHashMap<String, Integer>();
+    removed.put("alert_notice", 0);
+    removed.put("alert_history", 1);
+
+    expect(m_alertsDAO.findHistoryIdAtOffset(10)).andReturn(100L);
+    expect(m_alertsDAO.findHistoryIdsToPrune(Long.MAX_VALUE, 100L,
+        EnumSet.of(AlertState.OK), 100)).andReturn(Collections.singletonList(5L));
+    expect(m_alertsDAO.findHistoryByIds(Collections.singletonList(5L))).andReturn(
+        Collections.singletonList(history));
+    expect(m_alertsDAO.removeHistory(Collections.singletonList(5L))).andReturn(removed);
+
+    replay(m_configuration, m_requestDAO, m_alertsDAO);
+
+    m_service.pruneAlerts();
+
+    verify(m_alertsDAO);
+    assertEquals(Long.valueOf(1), m_service.getRowsRemoved().get("alert_history"));
+
+    File[] archives = archiveDir.listFiles();
+    assertEquals(1, archives.length);
+    assertTrue(archives[0].getName().startsWith("alerts-"));
+
+    BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(new FileInputStream(archives[0])), "UTF-8"));
+    try {
+      String line = reader.readLine();
+      assertTrue(line.contains("\"alert_id\":5"));
+      assertTrue(line.contains("\"definition_name\":\"datanode_process\""));
+    } finally {
+      reader.close();
+    }
+  }
+}